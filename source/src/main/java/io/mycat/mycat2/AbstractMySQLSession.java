@@ -89,6 +89,20 @@ public abstract class AbstractMySQLSession extends AbstractSession {
 		this.curBufOwner = curBufOwner;
 	}
 
+	/**
+	 * 会话状态指纹, 由字符集、隔离级别、提交方式组成, 指纹相同的前后端连接不需要同步状态
+	 *
+	 * @param withTransactionState
+	 *            是否包含隔离级别和提交方式. 从节点不同步事务相关状态
+	 */
+	public int stateFingerprint(boolean withTransactionState) {
+		int fingerprint = charSet.charsetIndex << 8;
+		if (withTransactionState) {
+			fingerprint |= isolation.ordinal() << 1 | autoCommit.ordinal();
+		}
+		return fingerprint;
+	}
+
 	/**
 	 * 回应客户端（front或Sever）OK 报文。
 	 *
@@ -280,15 +294,32 @@ public abstract class AbstractMySQLSession extends AbstractSession {
 		}
 	}
 
+	/**
+	 * 重新填充 buffer 之前确保容量足够, 容量不够时换成更大的 buffer, 原有的数据不保留
+	 *
+	 * @param capacity
+	 */
+	public void ensureBufferCapacity(int capacity) {
+		ByteBuffer buffer = proxyBuffer.getBuffer();
+		if (buffer.capacity() >= capacity) {
+			return;
+		}
+		lastLargeMessageTime = TimeUtil.currentTimeMillis();
+		bufPool.recycle(buffer);
+		proxyBuffer.resetBuffer(bufPool.allocate(capacity));
+	}
+
 	/**
 	 * 重置buffer
 	 * 
 	 * @param newBuffer
 	 */
 	private void resetBuffer(ByteBuffer newBuffer) {
+		ByteBuffer oldBuffer = proxyBuffer.getBuffer();
 		newBuffer.put(proxyBuffer.getBytes(proxyBuffer.readIndex, proxyBuffer.writeIndex - proxyBuffer.readIndex));
 		proxyBuffer.resetBuffer(newBuffer);
-		recycleAllocedBuffer(proxyBuffer);
+		// 回收原来的 buffer, 新 buffer 继续使用
+		bufPool.recycle(oldBuffer);
 		curMSQLPackgInf.endPos = curMSQLPackgInf.endPos - curMSQLPackgInf.startPos;
 		curMSQLPackgInf.startPos = 0;
 	}
@@ -42,6 +42,7 @@ public class ConfigLoader {
         loadConfig(ConfigEnum.REPLICA_INDEX, GlobalBean.INIT_VERSION);
         loadConfig(ConfigEnum.DATASOURCE, GlobalBean.INIT_VERSION);
         loadConfig(ConfigEnum.SCHEMA, GlobalBean.INIT_VERSION);
+        loadConfig(ConfigEnum.SHARDING_RULE, GlobalBean.INIT_VERSION);
 
         // 清空prepare文件夹
         YamlUtil.clearDirectory(DIR_PREPARE, null);
@@ -4,12 +4,21 @@ import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
 import io.mycat.mycat2.cmds.pkgread.CommQueryHandler;
 import io.mycat.mycat2.cmds.pkgread.CommandHandler;
-import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.proxy.ConfigEnum;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyReactorThread;
+import io.mycat.proxy.ProxyRuntime;
+import io.mycat.proxy.TimerWheel;
 import io.mycat.proxy.buffer.BufferPool;
+import io.mycat.proxy.man.NodeLoadReporter;
 
 /**
  * 后端MySQL连接
@@ -19,6 +28,10 @@ import io.mycat.proxy.buffer.BufferPool;
  */
 public class MySQLSession extends AbstractMySQLSession {
 
+	private static final byte IDLE_UNKNOWN = 0;
+	private static final byte IDLE_YES = 1;
+	private static final byte IDLE_BUSY = 2;
+
 	private String database;
 	/**
 	 * 当前所从属的mycat sesssion
@@ -28,6 +41,34 @@ public class MySQLSession extends AbstractMySQLSession {
 	// 记录当前后端连接所属的MetaBean，用于后端连接归还使用
 	private MySQLMetaBean mysqlMetaBean;
 
+	// 归还到reactor空闲队列的时间,用于空闲超时回收
+	private long idleSince;
+
+	// 握手包中后端分配的连接id, 用于 KILL QUERY
+	private long threadId;
+
+	// 当前语句的发送时间, 没有执行中的语句时为0
+	private long queryStartNanos;
+
+	// 前端语句的执行超时任务
+	private TimerWheel.Timeout queryTimer;
+
+	// 连接上已经预处理的语句, 语句标识 -> 后端的 statement id, 按访问顺序排列. 连接归还后继续保留, 供其他前端复用
+	private LinkedHashMap<String, Long> preparedStatements;
+
+	// 连接的闲置状态, 没有标识时按闲置处理
+	private byte idleState;
+
+	// 发往后端还未完成的 KILL QUERY 数量, 不为0时连接不能执行新的语句, 也不能归还
+	private int pendingKills;
+
+	// 等待 KILL QUERY 完成后执行的任务, 例如归还连接或者执行新的语句
+	private Runnable afterKill;
+
+	// 在reactor登记的空闲连接链表中的位置, 由 MycatReactorThread 维护
+	public boolean cachedIdle;
+	public MySQLSession cachedIdlePrev;
+	public MySQLSession cachedIdleNext;
 
 	public MySQLSession(BufferPool bufferPool, Selector selector, SocketChannel channel) throws IOException {
 		super(bufferPool, selector, channel, SelectionKey.OP_CONNECT);
@@ -52,20 +93,218 @@ public class MySQLSession extends AbstractMySQLSession {
 			this.mycatSession.clearBeckend(this);
 		}
 		this.mycatSession = null;
-		this.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+		this.clearIdle();
+		endQuery(false);
 	}
 
 	/**
 	 * 用来判断该连接是否空闲.
 	 */
 	public boolean isIDLE() {
-		Boolean flag = (Boolean) this.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
-		return (flag == null) ? true : flag;
+		return idleState != IDLE_BUSY;
+	}
+
+	/**
+	 * 设置连接的闲置状态, 发送请求后为 false, 响应读取完成后为 true
+	 */
+	public void setIdle(boolean idle) {
+		idleState = idle ? IDLE_YES : IDLE_BUSY;
+		updateCachedIdle();
+	}
+
+	/**
+	 * 清除闲置状态标识, 连接与当前请求解除关联时调用
+	 */
+	public void clearIdle() {
+		idleState = IDLE_UNKNOWN;
+		updateCachedIdle();
+	}
+
+	/**
+	 * 绑定在前端会话上的空闲连接登记到当前reactor, 连接数已满时转给其他前端会话使用.
+	 * 连接忙碌, 解除绑定或者关闭时取消登记
+	 */
+	private void updateCachedIdle() {
+		Thread thread = Thread.currentThread();
+		if (mysqlMetaBean == null || !(thread instanceof MycatReactorThread)) {
+			return;
+		}
+		MycatReactorThread reactor = (MycatReactorThread) thread;
+		if (idleState == IDLE_YES && mycatSession != null && !isClosed() && pendingKills == 0) {
+			reactor.addCachedIdleSession(mysqlMetaBean, this);
+		} else {
+			reactor.removeCachedIdleSession(mysqlMetaBean, this);
+		}
+	}
+
+	/**
+	 * 当前请求的响应是否已经读取完成, 没有标识时为 false
+	 */
+	public boolean isIdleMarked() {
+		return idleState == IDLE_YES;
+	}
+
+	/**
+	 * 语句发送到后端, 计入节点执行中的语句数
+	 */
+	public void beginQuery() {
+		if (queryStartNanos == 0 && mysqlMetaBean != null) {
+			queryStartNanos = System.nanoTime();
+			mysqlMetaBean.queryStarted();
+			startQueryTimer();
+		}
+	}
+
+	/**
+	 * 前端发起的语句超时后在后端执行 KILL QUERY, 被中止的语句返回错误给前端, 连接继续可用
+	 */
+	private void startQueryTimer() {
+		TimerWheel timerWheel = ProxyReactorThread.currentTimerWheel();
+		if (mycatSession == null || timerWheel == null) {
+			return;
+		}
+		ProxyConfig proxyConfig = ProxyRuntime.INSTANCE.getConfig().getConfig(ConfigEnum.PROXY);
+		long queryTimeout = proxyConfig.getProxy().getQueryTimeout();
+		if (queryTimeout > 0) {
+			queryTimer = timerWheel.schedule(this::onQueryTimeout, queryTimeout);
+		}
+	}
+
+	private void onQueryTimeout() {
+		queryTimer = null;
+		if (queryStartNanos == 0 || isClosed() || !(Thread.currentThread() instanceof MycatReactorThread)) {
+			return;
+		}
+		logger.warn("query timeout, kill query {} on {}", threadId, mysqlMetaBean);
+		((MycatReactorThread) Thread.currentThread()).killQuery(this);
+	}
+
+	/**
+	 * 连接上是否有还未完成的 KILL QUERY. KILL 可能在语句结束之后才到达后端, 这期间连接上的新语句会被中止
+	 */
+	public boolean isKillPending() {
+		return pendingKills > 0;
+	}
+
+	public void killStarted() {
+		pendingKills++;
+	}
+
+	/**
+	 * KILL QUERY 完成, 不管成功与否. 全部完成后执行等待中的任务
+	 */
+	public void killFinished() {
+		if (pendingKills == 0 || --pendingKills > 0) {
+			return;
+		}
+		updateCachedIdle();
+		Runnable task = afterKill;
+		afterKill = null;
+		if (task != null && !isClosed()) {
+			task.run();
+		}
+	}
+
+	/**
+	 * 设置 KILL QUERY 完成后执行的任务, 只在 {@link #isKillPending()} 时有效
+	 */
+	public void runAfterKill(Runnable task) {
+		afterKill = task;
+	}
+
+	/**
+	 * 语句执行结束, 响应时间计入节点的平均响应时间
+	 * @param sample 为false时只扣减执行中的语句数, 例如连接异常关闭
+	 */
+	public void endQuery(boolean sample) {
+		if (queryStartNanos == 0) {
+			return;
+		}
+		if (queryTimer != null) {
+			queryTimer.cancel();
+			queryTimer = null;
+		}
+		long elapsed = sample ? System.nanoTime() - queryStartNanos : -1;
+		mysqlMetaBean.queryFinished(elapsed);
+		if (sample && mycatSession != null) {
+			// 心跳等内部语句不计入节点的响应时间
+			NodeLoadReporter.INSTANCE.recordLatency(elapsed);
+		}
+		queryStartNanos = 0;
 	}
 
 	@Override
 	public void close(boolean normal, String hint) {
+		endQuery(false);
+		if (!isClosed() && mysqlMetaBean != null) {
+			// 释放连接名额
+			mysqlMetaBean.releaseConnection();
+		}
 		super.close(normal, hint);
+		updateCachedIdle();
+	}
+
+	public long getThreadId() {
+		return threadId;
+	}
+
+	public void setThreadId(long threadId) {
+		this.threadId = threadId;
+	}
+
+	/**
+	 * @return 语句在该连接上的 statement id, 没有预处理过时返回 -1
+	 */
+	public long getPreparedStatementId(String key) {
+		Long statementId = preparedStatements == null ? null : preparedStatements.get(key);
+		return statementId == null ? -1 : statementId;
+	}
+
+	public void putPreparedStatement(String key, long statementId) {
+		if (preparedStatements == null) {
+			preparedStatements = new LinkedHashMap<>(16, 0.75f, true);
+		}
+		preparedStatements.put(key, statementId);
+	}
+
+	/**
+	 * 移除语句, 由调用者在后端关闭
+	 *
+	 * @return 语句在该连接上的 statement id, 没有预处理过时返回 -1
+	 */
+	public long removePreparedStatement(String key) {
+		Long statementId = preparedStatements == null ? null : preparedStatements.remove(key);
+		return statementId == null ? -1 : statementId;
+	}
+
+	/**
+	 * 连接上的语句数达到上限时移除最久未使用的语句, 由调用者在后端关闭
+	 *
+	 * @return 需要关闭的 statement id, 没有达到上限时返回 -1
+	 */
+	public long evictPreparedStatement(int maxCount) {
+		if (preparedStatements == null || preparedStatements.isEmpty() || preparedStatements.size() < maxCount) {
+			return -1;
+		}
+		Iterator<Map.Entry<String, Long>> it = preparedStatements.entrySet().iterator();
+		long statementId = it.next().getValue();
+		it.remove();
+		return statementId;
+	}
+
+	/**
+	 * 后端重置了连接状态, 例如 COM_RESET_CONNECTION, 连接上的语句都已经失效
+	 */
+	public void clearPreparedStatements() {
+		preparedStatements = null;
+	}
+
+	public long getIdleSince() {
+		return idleSince;
+	}
+
+	public void setIdleSince(long idleSince) {
+		this.idleSince = idleSince;
 	}
 
 	public String getDatabase() {
@@ -8,6 +8,8 @@ import io.mycat.mycat2.beans.MySQLRepBean;
 import io.mycat.mycat2.beans.conf.DatasourceConfig;
 import io.mycat.mycat2.beans.conf.SchemaBean;
 import io.mycat.mycat2.beans.conf.SchemaConfig;
+import io.mycat.mycat2.beans.conf.ShardingRuleConfig;
+import io.mycat.mycat2.route.ShardingRouter;
 import io.mycat.proxy.ConfigEnum;
 import io.mycat.proxy.Configurable;
 
@@ -29,6 +31,10 @@ public class MycatConfig {
      * 默认Schema,取配置文件种第一个Schema
      */
     private SchemaBean defaultSchemaBean;
+    /**
+     * DB_IN_MULTI_SERVER 类型schema编译后的分片路由
+     */
+    private Map<String, ShardingRouter> shardingRouterMap = new HashMap<String, ShardingRouter>();
 
     public void initRepMap() {
         DatasourceConfig dsConfig = getConfig(ConfigEnum.DATASOURCE);
@@ -49,6 +55,25 @@ public class MycatConfig {
         });
     }
 
+    /**
+     * 编译DB_IN_MULTI_SERVER类型schema中配置的表和分片规则, 需要在initRepMap和initSchemaMap之后调用
+     */
+    public void initShardingRouters() {
+        ShardingRuleConfig ruleConfig = getConfig(ConfigEnum.SHARDING_RULE);
+        mycatSchemaMap.values().forEach(schema -> {
+            if (schema.getSchemaType() == SchemaBean.SchemaTypeEnum.DB_IN_MULTI_SERVER) {
+                ShardingRouter router = ShardingRouter.build(schema, ruleConfig, mysqlRepMap);
+                if (router != null) {
+                    shardingRouterMap.put(schema.getName(), router);
+                }
+            }
+        });
+    }
+
+    public ShardingRouter getShardingRouter(String schemaName) {
+        return shardingRouterMap.get(schemaName);
+    }
+
     public MySQLRepBean getMySQLRepBean(String repName) {
         return mysqlRepMap.get(repName);
     }
@@ -1,12 +1,18 @@
 package io.mycat.mycat2;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
@@ -14,12 +20,20 @@ import org.slf4j.LoggerFactory;
 
 import io.mycat.mycat2.beans.MySQLMetaBean;
 import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
 import io.mycat.mycat2.beans.conf.SchemaBean;
+import io.mycat.mycat2.cmds.interceptor.SQLAnnotationChain;
+import io.mycat.mycat2.cmds.multinode.MultiDNExecution;
+import io.mycat.mycat2.cmds.pkgread.CommQueryHandler;
+import io.mycat.mycat2.cmds.stmt.ClientStatement;
+import io.mycat.mycat2.cmds.stmt.PreparedStatementMeta;
 import io.mycat.mycat2.cmds.strategy.AnnotateRouteCmdStrategy;
 import io.mycat.mycat2.cmds.strategy.DBINMultiServerCmdStrategy;
 import io.mycat.mycat2.cmds.strategy.DBInOneServerCmdStrategy;
 import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mycat2.route.ShardingRouter;
 import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.BufferSQLParser;
 import io.mycat.mycat2.sqlparser.NewSQLContext;
 import io.mycat.mycat2.sqlparser.TokenHash;
 import io.mycat.mycat2.tasks.AsynTaskCallBack;
@@ -27,12 +41,17 @@ import io.mycat.mysql.AutoCommit;
 import io.mycat.mysql.Capabilities;
 import io.mycat.mysql.packet.ErrorPacket;
 import io.mycat.mysql.packet.HandshakePacket;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.ConfigEnum;
 import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyReactorThread;
 import io.mycat.proxy.ProxyRuntime;
+import io.mycat.proxy.TimerWheel;
 import io.mycat.proxy.buffer.BufferPool;
 import io.mycat.util.ErrorCode;
 import io.mycat.util.ParseUtil;
 import io.mycat.util.RandomUtil;
+import io.mycat.util.TimeUtil;
 
 /**
  * 前端连接会话
@@ -51,6 +70,11 @@ public class MycatSession extends AbstractMySQLSession {
 
 	public BufferSQLContext sqlContext = new BufferSQLContext();
 
+	/**
+	 * 命令与注解链, 每条sql执行前 reset 后复用
+	 */
+	public final SQLAnnotationChain sqlAnnotationChain = new SQLAnnotationChain();
+
 	/**
 	 * Mycat Schema
 	 */
@@ -58,6 +82,46 @@ public class MycatSession extends AbstractMySQLSession {
 
 	private ConcurrentHashMap<MySQLRepBean, List<MySQLSession>> backendMap = new ConcurrentHashMap<>();
 
+	/**
+	 * 全双工透传时,还没有写到前端的数据. 后端把写不完的 buffer 转交到这里,由前端可写事件写出
+	 */
+	private final ArrayDeque<ByteBuffer> pendingWriteBuffers = new ArrayDeque<>();
+	private ByteBuffer[] gatheringBuffers = new ByteBuffer[0];
+	// 积压过多时暂停了后端读取
+	private boolean backendReadPaused = false;
+
+	/**
+	 * 正在直接写往前端的文件区域, 见 transferFile
+	 */
+	private FileChannel transferChannel;
+	/* 空闲检查的定时器, 到期时才根据最后读取时间决定关闭还是再次检查 */
+	private TimerWheel.Timeout idleTimer;
+	private long transferPosition;
+	private long transferEnd;
+	private Runnable transferCallback;
+
+	/**
+	 * 流水线模式下,当前响应之后还需要透传的后续语句的响应数量
+	 */
+	private int pipelinedResponses = 0;
+	// 解析流水线中后续语句使用, 不影响当前语句的 sqlContext
+	private BufferSQLContext pipelineSqlContext;
+	/**
+	 * 分库时当前语句的路由结果, 为 null 时使用默认节点
+	 */
+	private MySQLRepBean shardingTarget;
+
+	/**
+	 * 前端的预处理语句, statement id 由 mycat 分配, 不依赖后端连接
+	 */
+	private final Map<Long, ClientStatement> preparedStatements = new HashMap<>();
+	private long nextStatementId = 1;
+
+	/**
+	 * 最近一次发往后端执行的预处理语句, 后端返回 ER_NEED_REPREPARE 时使其失效
+	 */
+	private ClientStatement executingStatement;
+
 	private static List<Byte> masterSqlList = new ArrayList<>();
 	
 	static{
@@ -82,13 +146,14 @@ public class MycatSession extends AbstractMySQLSession {
 	 * @return
 	 */
 	public boolean matchMySqlCommand(){
+		shardingTarget = null;
 		switch(schema.schemaType){
 			case DB_IN_ONE_SERVER:
 				return DBInOneServerCmdStrategy.INSTANCE.matchMySqlCommand(this);
 			case DB_IN_MULTI_SERVER:
-				DBINMultiServerCmdStrategy.INSTANCE.matchMySqlCommand(this);
+				return DBINMultiServerCmdStrategy.INSTANCE.matchMySqlCommand(this);
 			case ANNOTATION_ROUTE:
-				AnnotateRouteCmdStrategy.INSTANCE.matchMySqlCommand(this);
+				return AnnotateRouteCmdStrategy.INSTANCE.matchMySqlCommand(this);
 //			case SQL_PARSE_ROUTE:
 //				AnnotateRouteCmdStrategy.INSTANCE.matchMySqlCommand(this);
 			default:
@@ -98,7 +163,52 @@ public class MycatSession extends AbstractMySQLSession {
 
 	public MycatSession(BufferPool bufPool, Selector nioSelector, SocketChannel frontChannel) throws IOException {
 		super(bufPool, nioSelector, frontChannel);
+		lastReadTime = TimeUtil.currentTimeMillis();
+	}
 
+	/**
+	 * 开始前端连接的空闲检查, 只能在会话所在的 reactor 线程中调用.
+	 * 读取报文时不重新设置定时器, 到期时距最后一次读取不足 timeout 则按剩余时间再次检查
+	 */
+	public void startIdleCheck(long timeout) {
+		TimerWheel timerWheel = ProxyReactorThread.currentTimerWheel();
+		if (timeout <= 0 || timerWheel == null) {
+			return;
+		}
+		idleTimer = timerWheel.schedule(() -> checkIdle(timeout), timeout);
+	}
+
+	private void checkIdle(long timeout) {
+		idleTimer = null;
+		if (isClosed()) {
+			return;
+		}
+		long idle = TimeUtil.currentTimeMillis() - lastReadTime;
+		if (idle >= timeout && !isExecuting()) {
+			logger.info("front connection idle timeout, close it. sessionId = {}, idle {} ms", getSessionId(), idle);
+			close(true, "front connection idle timeout");
+			return;
+		}
+		long delay = isExecuting() ? timeout : timeout - idle;
+		idleTimer = ProxyReactorThread.currentTimerWheel().schedule(() -> checkIdle(timeout), delay);
+	}
+
+	/**
+	 * 是否有语句正在执行或者结果还没有写完, 执行中的会话不按空闲关闭
+	 */
+	public boolean isExecuting() {
+		if (hasPendingWrites() || transferChannel != null
+				|| getAttr(SessionKeyEnum.SESSION_KEY_MULTI_DN_EXECUTION) != null) {
+			return true;
+		}
+		for (List<MySQLSession> backends : backendMap.values()) {
+			for (MySQLSession backend : backends) {
+				if (!backend.isIDLE()) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	protected int getServerCapabilities() {
@@ -230,7 +340,7 @@ public class MycatSession extends AbstractMySQLSession {
 		backend.setMycatSession(this);
 		backend.useSharedBuffer(this.proxyBuffer);
 		backend.setCurNIOHandler(this.getCurNIOHandler());
-		backend.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+		backend.setIdle(false);
 		logger.debug(" {} bind backConnection  for {}",
 				this,
 				backend.toString());
@@ -290,6 +400,9 @@ public class MycatSession extends AbstractMySQLSession {
 	}
 	
 	public void takeBufferOwnerOnly(){
+		// 接下来要响应错误信息,积压的结果集数据与流水线中的后续响应不再发送
+		recyclePendingWrites();
+		pipelinedResponses = 0;
 		this.curBufOwner = true;
 		if (this.curBackend != null) {
 			curBackend.setCurBufOwner(false);
@@ -345,8 +458,275 @@ public class MycatSession extends AbstractMySQLSession {
 		writeToChannel();
 	}
 
+	/**
+	 * 流水线模式下,计算 buffer 中紧随当前 COM_QUERY 之后,可以不经过路由一起发往当前后端连接的语句数量.
+	 * 只有 buffer 中剩余数据全部是完整的,且不需要 mycat 特殊处理的 COM_QUERY 时才进行流水线处理
+	 *
+	 * @return 随当前语句一起发送的后续语句数量, 0 表示不进行流水线处理
+	 * @throws IOException
+	 */
+	public int countPipelinedQueries() throws IOException {
+		if (SchemaBean.SchemaTypeEnum.DB_IN_ONE_SERVER != schema.schemaType
+				|| MySQLPacket.COM_QUERY != (byte) curMSQLPackgInf.pkgType
+				|| BufferSQLContext.LOAD_SQL == sqlContext.getSQLType()) {
+			return 0;
+		}
+		ByteBuffer buffer = proxyBuffer.getBuffer();
+		int offset = curMSQLPackgInf.endPos;
+		int limit = proxyBuffer.writeIndex;
+		// 当前语句走从节点时,后续语句不能是需要走主节点的语句
+		boolean firstOnSlave = canRunOnSlave();
+		if (pipelineSqlContext == null) {
+			pipelineSqlContext = new BufferSQLContext();
+		}
+		BufferSQLParser parser = MycatReactorThread.currentSQLParser();
+		int count = 0;
+		while (offset < limit) {
+			if (!ParseUtil.validateHeader(offset, limit)) {
+				return 0;
+			}
+			int pkgLength = ParseUtil.getPacketLength(buffer, offset);
+			if (offset + pkgLength > limit
+					|| MySQLPacket.COM_QUERY != buffer.get(offset + MySQLPacket.packetHeaderSize)) {
+				return 0;
+			}
+			parser.parse(buffer, offset + MySQLPacket.packetHeaderSize + 1, pkgLength - MySQLPacket.packetHeaderSize - 1,
+					pipelineSqlContext);
+			if (!DBInOneServerCmdStrategy.INSTANCE.isPipelineable(this, pipelineSqlContext)
+					|| (firstOnSlave && masterSqlList.contains(pipelineSqlContext.getSQLType()))) {
+				return 0;
+			}
+			offset += pkgLength;
+			count++;
+		}
+		return count;
+	}
+
+	public void setPipelinedResponses(int pipelinedResponses) {
+		this.pipelinedResponses = pipelinedResponses;
+	}
+
+	public int getPipelinedResponses() {
+		return pipelinedResponses;
+	}
+
+	/**
+	 * 流水线模式下,一个响应结束后如果还有后续语句的响应,按传输未结束处理,继续解析后端数据
+	 *
+	 * @param backend
+	 * @return 是否需要继续解析 buffer 中剩余的数据
+	 */
+	public boolean nextPipelinedResponse(MySQLSession backend) {
+		if (pipelinedResponses == 0
+				|| hasFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG)) {
+			return false;
+		}
+		pipelinedResponses--;
+		backend.setIdle(false);
+		setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, true);
+		commandHandler = CommQueryHandler.INSTANCE;
+		// 上一个响应的结束包可能没有完整读取,从包的结束位置继续
+		backend.proxyBuffer.readIndex = backend.curMSQLPackgInf.endPos;
+		return backend.proxyBuffer.readIndex < backend.proxyBuffer.writeIndex;
+	}
+
+	/**
+	 * 新增一个预处理语句, 分配前端使用的 statement id
+	 */
+	public ClientStatement addPreparedStatement(PreparedStatementMeta meta) {
+		ClientStatement statement = new ClientStatement(nextStatementId++, meta);
+		preparedStatements.put(statement.getId(), statement);
+		return statement;
+	}
+
+	public ClientStatement getPreparedStatement(long statementId) {
+		return preparedStatements.get(statementId);
+	}
+
+	public ClientStatement removePreparedStatement(long statementId) {
+		return preparedStatements.remove(statementId);
+	}
+
+	public void clearPreparedStatements() {
+		preparedStatements.clear();
+	}
+
+	public ClientStatement getExecutingStatement() {
+		return executingStatement;
+	}
+
+	public void setExecutingStatement(ClientStatement executingStatement) {
+		this.executingStatement = executingStatement;
+	}
+
+	public boolean hasPendingWrites() {
+		return !pendingWriteBuffers.isEmpty();
+	}
+
+	public int getPendingWriteCount() {
+		return pendingWriteBuffers.size();
+	}
+
+	/**
+	 * 后端读到的数据前端没有写完时,把 buffer 转交给前端,前端写完后负责回收
+	 *
+	 * @param buffer position 到 limit 为待写出的数据
+	 */
+	public void addPendingWrite(ByteBuffer buffer) {
+		pendingWriteBuffers.addLast(buffer);
+	}
+
+	/**
+	 * 积压的数据与 current 一起 gathering write 到前端, 已写完的积压 buffer 立即回收
+	 *
+	 * @param current 本次需要写出的数据,可以为 null
+	 * @return 积压数据与 current 是否全部写完
+	 * @throws IOException
+	 */
+	public boolean writePendingToChannel(ByteBuffer current) throws IOException {
+		int count = pendingWriteBuffers.size() + (current == null ? 0 : 1);
+		if (gatheringBuffers.length < count) {
+			gatheringBuffers = new ByteBuffer[count];
+		}
+		int i = 0;
+		for (ByteBuffer pending : pendingWriteBuffers) {
+			gatheringBuffers[i++] = pending;
+		}
+		if (current != null) {
+			gatheringBuffers[i] = current;
+		}
+		channel.write(gatheringBuffers, 0, count);
+		Arrays.fill(gatheringBuffers, 0, count, null);
+		while (!pendingWriteBuffers.isEmpty() && !pendingWriteBuffers.peekFirst().hasRemaining()) {
+			bufPool.recycle(pendingWriteBuffers.pollFirst());
+		}
+		return pendingWriteBuffers.isEmpty() && (current == null || !current.hasRemaining());
+	}
+
+	/**
+	 * 全双工透传时,前端等待可写事件写出积压数据,后端继续读取. 积压达到上限时暂停后端读取
+	 *
+	 * @param maxPending 最多积压的 buffer 数量
+	 * @param backendDone 后端结果集是否已经读完
+	 */
+	public void waitPendingWritable(int maxPending, boolean backendDone) {
+		this.curBufOwner = false;
+		this.channelKey.interestOps(SelectionKey.OP_WRITE);
+		if (curBackend == null) {
+			return;
+		}
+		curBackend.setCurBufOwner(true);
+		backendReadPaused = backendDone || pendingWriteBuffers.size() >= maxPending;
+		if (backendReadPaused) {
+			curBackend.clearReadWriteOpts();
+		} else {
+			curBackend.change2ReadOpts();
+		}
+	}
+
+	/**
+	 * 把文件的 [position, position + count) 区域通过 FileChannel.transferTo 直接写往前端, 数据不经过 ProxyBuffer.
+	 * 一次没有写完时等待可写事件继续写, 全部写完后执行 onTransferred, 再按正常的写完成流程通知当前命令
+	 *
+	 * @param onTransferred 写完或会话关闭时执行, 用于释放文件
+	 */
+	public void transferFile(FileChannel file, long position, long count, Runnable onTransferred) throws IOException {
+		this.transferChannel = file;
+		this.transferPosition = position;
+		this.transferEnd = position + count;
+		this.transferCallback = onTransferred;
+		// buffer 中没有需要写出的数据, 文件写完后直接走写完成流程
+		proxyBuffer.reset();
+		proxyBuffer.flip();
+		takeOwner(SelectionKey.OP_WRITE);
+		writeToChannel();
+	}
+
+	/**
+	 * @return 文件区域是否全部写完
+	 */
+	private boolean transferFileToChannel() throws IOException {
+		while (transferPosition < transferEnd) {
+			long transferred = transferChannel.transferTo(transferPosition, transferEnd - transferPosition, channel);
+			if (transferred <= 0) {
+				return false;
+			}
+			transferPosition += transferred;
+		}
+		releaseTransfer();
+		return true;
+	}
+
+	private void releaseTransfer() {
+		Runnable callback = transferCallback;
+		transferChannel = null;
+		transferCallback = null;
+		if (callback != null) {
+			callback.run();
+		}
+	}
+
+	/**
+	 * 前端可写时先写出文件区域和积压的数据. 积压写完后, 结果集未结束则恢复后端读取, 否则按正常的写完成流程结束本次命令
+	 */
+	@Override
+	public void writeToChannel() throws IOException {
+		if (transferChannel != null && !transferFileToChannel()) {
+			// 等待可写事件继续写出文件
+			change2WriteOpts();
+			return;
+		}
+		if (pendingWriteBuffers.isEmpty()) {
+			super.writeToChannel();
+			return;
+		}
+		boolean drained = writePendingToChannel(null);
+		boolean transferOver = !hasFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG);
+		if (!transferOver && curBackend != null && backendReadPaused) {
+			ProxyConfig config = ProxyRuntime.INSTANCE.getConfig().getConfig(ConfigEnum.PROXY);
+			if (pendingWriteBuffers.size() < config.getProxy().getMaxPendingWriteBuffers()) {
+				backendReadPaused = false;
+				curBackend.change2ReadOpts();
+			}
+		}
+		if (!drained) {
+			return;
+		}
+		if (!transferOver) {
+			// 等待后端数据
+			clearReadWriteOpts();
+			return;
+		}
+		// 此时 buffer 中已经没有需要写出的数据, 切换为读状态后走写完成流程
+		proxyBuffer.flip();
+		proxyBuffer.readIndex = proxyBuffer.writeIndex;
+		proxyBuffer.readMark = proxyBuffer.writeIndex;
+		takeOwner(SelectionKey.OP_WRITE);
+		super.writeToChannel();
+	}
+
+	private void recyclePendingWrites() {
+		ByteBuffer pending;
+		while ((pending = pendingWriteBuffers.pollFirst()) != null) {
+			bufPool.recycle(pending);
+		}
+		backendReadPaused = false;
+	}
+
 	public void close(boolean normal, String hint) {
 		super.close(normal, hint);
+		if (idleTimer != null) {
+			idleTimer.cancel();
+			idleTimer = null;
+		}
+		recyclePendingWrites();
+		if (transferChannel != null) {
+			releaseTransfer();
+		}
+		MultiDNExecution multiDNExecution = (MultiDNExecution) removeAttr(SessionKeyEnum.SESSION_KEY_MULTI_DN_EXECUTION);
+		if (multiDNExecution != null) {
+			multiDNExecution.onFrontClosed();
+		}
 		//TODO 清理前后端资源
 		this.unbindAllBackend();
 	}
@@ -366,6 +746,10 @@ public class MycatSession extends AbstractMySQLSession {
 			case ANNOTATION_ROUTE:
 				break;
 			case DB_IN_MULTI_SERVER:
+				// 不涉及配置的表的语句发往默认节点
+				if (schema.getDefaultDN() != null) {
+					backendName = schema.getDefaultDN().getReplica();
+				}
 				break;
 //			case SQL_PARSE_ROUTE:
 //				break;
@@ -399,12 +783,34 @@ public class MycatSession extends AbstractMySQLSession {
 	 * @return
 	 */
 	public void getBackend(AsynTaskCallBack<MySQLSession> callback) throws IOException {
+		getBackend(getTargetRepBean(), callback, false);
+	}
+
+	/**
+	 * 获取一个空闲的后端连接, 不使用正在执行请求的连接.
+	 * 用于在多个后端连接上同时执行请求, 例如 HBT join 的多个批次
+	 *
+	 * @param callback
+	 */
+	public void getIdleBackend(AsynTaskCallBack<MySQLSession> callback) throws IOException {
+		getBackend(getTargetRepBean(), callback, true);
+	}
+
+	/**
+	 * 获取指定复制组的一个空闲的后端连接, 用于同一条语句在多个分片上执行
+	 *
+	 * @param repBean
+	 * @param callback
+	 */
+	public void getIdleBackend(MySQLRepBean repBean, AsynTaskCallBack<MySQLSession> callback) throws IOException {
+		getBackend(repBean, callback, true);
+	}
+
+	private void getBackend(MySQLRepBean repBean, AsynTaskCallBack<MySQLSession> callback, boolean onlyIdle) throws IOException {
 		MycatReactorThread reactorThread = (MycatReactorThread) Thread.currentThread();
 		
 		final boolean runOnSlave = canRunOnSlave();
 		
-		MySQLRepBean repBean = getMySQLRepBean(getbackendName());
-		
 		/**
 		 * 本次根据读写分离策略要使用的metaBean
 		 */
@@ -432,6 +838,7 @@ public class MycatSession extends AbstractMySQLSession {
 		//1. 当前正在使用的 backend
 		// 当前连接如果本次不被使用,会被自动放入 currSessionMap 中
 		if (curBackend != null
+				&& (!onlyIdle || curBackend.isIDLE())
 				&& canUseforCurrent(curBackend,targetMetaBean,runOnSlave)){
 			logger.debug("Using cached backend connections for {}。{}"
 						,(runOnSlave ? "read" : "write"),
@@ -474,6 +881,35 @@ public class MycatSession extends AbstractMySQLSession {
     	}
     }
     
+    /**
+     * 分库时按分片规则路由 sqlContext 中的语句, 结果在之后获取后端连接时使用.
+     * 语句中没有配置的表时发往默认节点
+     * @return 语句涉及配置的表, 但是不能路由到唯一的节点时返回 false
+     */
+    public boolean routeSharding(){
+    	shardingTarget = null;
+    	if (SchemaBean.SchemaTypeEnum.DB_IN_MULTI_SERVER != schema.schemaType) {
+    		return true;
+    	}
+    	ShardingRouter router = ProxyRuntime.INSTANCE.getConfig().getShardingRouter(schema.getName());
+    	if (router == null) {
+    		return true;
+    	}
+    	shardingTarget = router.route(sqlContext);
+    	return shardingTarget != null || !router.containsTable(sqlContext);
+    }
+
+    /**
+     * 当前语句的目标复制组. 分库时为 {@link #routeSharding()} 的路由结果, 没有路由结果时使用默认节点
+     * @return
+     */
+    private MySQLRepBean getTargetRepBean(){
+    	if (shardingTarget != null) {
+    		return shardingTarget;
+    	}
+    	return getMySQLRepBean(getbackendName());
+    }
+
     /**
      * 获取指定的复制组
      * @param replicaName
@@ -527,8 +963,6 @@ public class MycatSession extends AbstractMySQLSession {
 				
 				if (isOnlyIdle) {
 					return f.isIDLE();
-//					Boolean flag = (Boolean) f.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
-//					return (flag == null) ? false : flag;
 				}
 				return true;
 			})
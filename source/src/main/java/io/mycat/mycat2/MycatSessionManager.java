@@ -9,8 +9,11 @@ import java.util.Collection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.mycat.mycat2.beans.conf.ProxyConfig;
 import io.mycat.mycat2.net.MySQLClientAuthHandler;
+import io.mycat.proxy.ConfigEnum;
 import io.mycat.proxy.NIOHandler;
+import io.mycat.proxy.ProxyRuntime;
 import io.mycat.proxy.Session;
 import io.mycat.proxy.SessionManager;
 import io.mycat.proxy.buffer.BufferPool;
@@ -38,6 +41,8 @@ public class MycatSessionManager implements SessionManager<MycatSession> {
 		session.sendAuthPackge();
 		session.setSessionManager(this);
 		allSessions.add(session);
+		ProxyConfig proxyConfig = ProxyRuntime.INSTANCE.getConfig().getConfig(ConfigEnum.PROXY);
+		session.startIdleCheck(proxyConfig.getProxy().getFrontIdleTimeout());
 		return session;
 	}
 
@@ -16,10 +16,11 @@ import io.mycat.proxy.MycatReactorThread;
 import io.mycat.proxy.NIOAcceptor;
 import io.mycat.proxy.NIOAcceptor.ServerType;
 import io.mycat.proxy.ProxyRuntime;
-import io.mycat.proxy.buffer.DirectByteBufferPool;
+import io.mycat.proxy.buffer.BufferPooLFactory;
 import io.mycat.proxy.man.AdminCommandResovler;
 import io.mycat.proxy.man.ClusterNode;
 import io.mycat.proxy.man.MyCluster;
+import io.mycat.proxy.man.NodeLoadReporter;
 
 public class ProxyStarter {
 	private static final Logger LOGGER = LoggerFactory.getLogger(ProxyStarter.class);
@@ -35,9 +36,7 @@ public class ProxyStarter {
 		ProxyConfig proxyConfig = conf.getConfig(ConfigEnum.PROXY);
 		ProxyBean proxybean = proxyConfig.getProxy();
 		// 启动NIO Acceptor
-		NIOAcceptor acceptor = new NIOAcceptor(new DirectByteBufferPool(proxybean.getBufferPoolPageSize(),
-				proxybean.getBufferPoolChunkSize(),
-				proxybean.getBufferPoolPageNumber()));
+		NIOAcceptor acceptor = new NIOAcceptor(BufferPooLFactory.createBufferPool(proxybean));
 		acceptor.start();
 		runtime.setAcceptor(acceptor);
 
@@ -81,19 +80,23 @@ public class ProxyStarter {
 
 		ProxyConfig proxyConfig = conf.getConfig(ConfigEnum.PROXY);
 		ProxyBean proxyBean = proxyConfig.getProxy();
+		acceptor.setReactorAccept(proxyBean.isReactorAccept());
 		if (acceptor.startServerChannel(proxyBean.getIp(), proxyBean.getPort(), ServerType.MYCAT)){
 			startReactor();
+			acceptor.startReactorAccept(MycatRuntime.INSTANCE.getReactorThreads());
 
 			// 加载配置文件信息
 			ConfigLoader.INSTANCE.loadAll();
 
 			ProxyRuntime.INSTANCE.getConfig().initRepMap();
 			ProxyRuntime.INSTANCE.getConfig().initSchemaMap();
+			ProxyRuntime.INSTANCE.getConfig().initShardingRouters();
 
 			conf.getMysqlRepMap().forEach((repName, repBean) -> {
 				repBean.initMaster();
 				repBean.getMetaBeans().forEach(metaBean -> metaBean.prepareHeartBeat(repBean, repBean.getDataSourceInitStatus()));
 			});
+			runtime.startBackendIdleCheck();
 		}
 
 		ClusterConfig clusterConfig = conf.getConfig(ConfigEnum.CLUSTER);
@@ -105,6 +108,11 @@ public class ProxyStarter {
 
 		BalancerConfig balancerConfig = conf.getConfig(ConfigEnum.BALANCER);
 		BalancerBean balancerBean = balancerConfig.getBalancer();
+		// 集群模式下定期向其他节点上报负载, 供负载均衡器选择节点
+		if (clusterBean.isEnable()) {
+			NodeLoadReporter.INSTANCE.start(clusterBean.getLoadReportPeriod(), acceptor);
+		}
+
 		// 集群模式下才开启负载均衡服务
         if (clusterBean.isEnable() && balancerBean.isEnable()) {
 			runtime.getAcceptor().startServerChannel(balancerBean.getIp(), balancerBean.getPort(), ServerType.LOAD_BALANCER);
@@ -28,6 +28,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
 import org.slf4j.Logger;
@@ -65,6 +67,35 @@ public class MySQLMetaBean {
     /** charsetName 到 默认collationIndex 的映射 */
     public final Map<String, Integer> CHARSET_TO_INDEX = new HashMap<>();
 
+    /**
+     * 连接池统计信息, 由各reactor线程并发修改.
+     * connectionCount 包含已建立和正在创建中的连接, 用于maxCon限制,不再遍历所有session统计
+     */
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    /** 各reactor空闲队列中的连接数 */
+    private final AtomicInteger idleCount = new AtomicInteger();
+    /** 从reactor空闲队列中直接获取到连接的次数 */
+    private final AtomicLong poolHits = new AtomicLong();
+    /** 需要新建连接的次数 */
+    private final AtomicLong poolMisses = new AtomicLong();
+    /** 连接数达到maxCon被拒绝的次数 */
+    private final AtomicLong poolRejects = new AtomicLong();
+    /** 空闲超时被回收的连接数 */
+    private final AtomicLong poolEvictions = new AtomicLong();
+    /** 新建连接累计等待时间 */
+    private final AtomicLong poolWaitMillis = new AtomicLong();
+    /** 状态指纹一致,不需要同步状态的次数 */
+    private final AtomicLong stateSyncSkipped = new AtomicLong();
+    /** 同步状态需要等待一次往返的次数 */
+    private final AtomicLong stateSyncRoundTrips = new AtomicLong();
+    /**
+     * 响应时间的指数加权移动平均(纳秒), 由透传语句的完成和心跳往返更新, 每个样本的权重为 1/8.
+     * 和执行中的语句数一起作为读节点负载均衡的依据
+     */
+    private final AtomicLong latencyEwma = new AtomicLong();
+    /** 已发送还未返回的语句数 */
+    private final AtomicInteger inflightQueries = new AtomicInteger();
+
     public void prepareHeartBeat(MySQLRepBean repBean, int status) {
 		logger.info("prepare heart beat for MySQLMetaBean {} ", this);
 		this.repBean = repBean;
@@ -132,6 +163,137 @@ public class MySQLMetaBean {
 		Arrays.stream(reactorThreads).forEach(f -> f.clearMySQLMetaBeanSession(this,reason));
 	}
 	
+	/**
+	 * 占用一个连接名额,连接数已达到maxCon时返回false
+	 * @return
+	 */
+	public boolean tryAcquireConnection() {
+		int maxCon = dsMetaBean.getMaxCon();
+		for (;;) {
+			int count = connectionCount.get();
+			if (count >= maxCon) {
+				poolRejects.incrementAndGet();
+				return false;
+			}
+			if (connectionCount.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 释放连接名额, 后端连接关闭或者创建失败时调用
+	 */
+	public void releaseConnection() {
+		connectionCount.decrementAndGet();
+	}
+
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	public AtomicInteger getIdleCount() {
+		return idleCount;
+	}
+
+	public void poolHit() {
+		poolHits.incrementAndGet();
+	}
+
+	public void poolMiss() {
+		poolMisses.incrementAndGet();
+	}
+
+	public void poolEvict() {
+		poolEvictions.incrementAndGet();
+	}
+
+	public void addPoolWaitMillis(long millis) {
+		poolWaitMillis.addAndGet(millis);
+	}
+
+	public void stateSyncSkipped() {
+		stateSyncSkipped.incrementAndGet();
+	}
+
+	public void stateSyncRoundTrip() {
+		stateSyncRoundTrips.incrementAndGet();
+	}
+
+	public long getStateSyncSkipped() {
+		return stateSyncSkipped.get();
+	}
+
+	public long getStateSyncRoundTrips() {
+		return stateSyncRoundTrips.get();
+	}
+
+	public void queryStarted() {
+		inflightQueries.incrementAndGet();
+	}
+
+	/**
+	 * 语句执行结束
+	 * @param elapsedNanos 响应时间, 小于0时只扣减执行中的语句数, 不作为样本
+	 */
+	public void queryFinished(long elapsedNanos) {
+		inflightQueries.decrementAndGet();
+		if (elapsedNanos >= 0) {
+			updateLatency(elapsedNanos);
+		}
+	}
+
+	public void updateLatency(long elapsedNanos) {
+		for (;;) {
+			long old = latencyEwma.get();
+			long ewma = old == 0 ? Math.max(elapsedNanos, 1) : old + ((elapsedNanos - old) >> 3);
+			if (latencyEwma.compareAndSet(old, Math.max(ewma, 1))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 作为读节点的负载, 值越小越优先.
+	 * 平均响应时间乘以执行中的语句数加一, 从节点有复制延迟时按 延迟/slaveThreshold 的比例增加
+	 */
+	public long getLoadScore() {
+		long score = Math.max(latencyEwma.get(), 1) * (Math.max(inflightQueries.get(), 0) + 1);
+		int behind = heartbeat == null ? 0 : heartbeat.getSlaveBehindMaster();
+		if (slaveNode && slaveThreshold > 0 && behind > 0) {
+			score += score * behind / slaveThreshold;
+		}
+		return score;
+	}
+
+	public long getLatencyEwma() {
+		return latencyEwma.get();
+	}
+
+	public int getInflightQueries() {
+		return inflightQueries.get();
+	}
+
+	public long getPoolHits() {
+		return poolHits.get();
+	}
+
+	public long getPoolMisses() {
+		return poolMisses.get();
+	}
+
+	public long getPoolRejects() {
+		return poolRejects.get();
+	}
+
+	public long getPoolEvictions() {
+		return poolEvictions.get();
+	}
+
+	public long getPoolWaitMillis() {
+		return poolWaitMillis.get();
+	}
+
 	/**
 	 * 检查当前是否可用
 	 * @return
@@ -158,6 +320,7 @@ public class MySQLMetaBean {
 
 	public void setDsMetaBean(DatasourceMetaBean dsMetaBean) {
 		this.dsMetaBean = dsMetaBean;
+		this.slaveThreshold = dsMetaBean.getSlaveThreshold();
 	}
 
 	public boolean isSlaveNode() {
@@ -25,11 +25,11 @@ package io.mycat.mycat2.beans;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
 
 import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
 import io.mycat.mycat2.beans.conf.ReplicaBean;
@@ -65,6 +65,12 @@ public class MySQLRepBean {
     private long lastSwitchTime;
     private long lastInitTime;  //最后一次初始化时间
 
+    private static final MySQLMetaBean[] NO_NODES = new MySQLMetaBean[0];
+    /* 可以承担读负载的节点, 只在节点健康状态变化时重建, 选择读节点时不再过滤 */
+    private volatile MySQLMetaBean[] readWriteNodes = NO_NODES;
+    /* 可以承担读负载的从节点 */
+    private volatile MySQLMetaBean[] readNodes = NO_NODES;
+
     public void initMaster() {
         // 根据配置replica-index的配置文件修改主节点
         MycatConfig conf = ProxyRuntime.INSTANCE.getConfig();
@@ -197,6 +203,7 @@ public class MySQLRepBean {
 				writeIndex = newIndex;
 				oldMetaBean.setSlaveNode(true);
 				newWriteBean.setSlaveNode(false);
+				refreshReadNodes();
 
 				lastInitTime = System.currentTimeMillis();
 			} else {
@@ -266,10 +273,7 @@ public class MySQLRepBean {
      * 当前读写节点都承担负载
      */
     private MySQLMetaBean getLBReadWriteMetaBean() {
-    	List<MySQLMetaBean> result = metaBeans.stream()
-    			.filter(f -> f.canSelectAsReadNode())
-    			.collect(Collectors.toList());
-        return result.isEmpty()?null:result.get(ThreadLocalRandom.current().nextInt(result.size()));
+        return chooseByLoad(readWriteNodes);
     }
 
     /**
@@ -277,10 +281,49 @@ public class MySQLRepBean {
      * @return
      */
     private MySQLMetaBean getLBReadMetaBean(){
-    	List<MySQLMetaBean> result = metaBeans.stream()
-    			.filter(f -> f.isSlaveNode() && f.canSelectAsReadNode())
-    			.collect(Collectors.toList());
-    	return result.isEmpty() ? null : result.get(ThreadLocalRandom.current().nextInt(result.size()));
+    	return chooseByLoad(readNodes);
+    }
+
+    /**
+     * 随机取两个节点, 选择负载较小的一个(power of two choices), 不需要比较所有节点, 也不会让所有请求同时涌向同一个节点
+     */
+    static MySQLMetaBean chooseByLoad(MySQLMetaBean[] nodes) {
+    	int size = nodes.length;
+    	if (size <= 1) {
+    		return size == 0 ? null : nodes[0];
+    	}
+    	ThreadLocalRandom random = ThreadLocalRandom.current();
+    	int first = random.nextInt(size);
+    	int second = random.nextInt(size - 1);
+    	if (second >= first) {
+    		second++;
+    	}
+    	return nodes[first].getLoadScore() <= nodes[second].getLoadScore() ? nodes[first] : nodes[second];
+    }
+
+    /**
+     * 节点心跳结果或者主从关系变化后重新计算可以承担读负载的节点
+     */
+    public synchronized void refreshReadNodes() {
+    	List<MySQLMetaBean> readWrite = new ArrayList<>(metaBeans.size());
+    	List<MySQLMetaBean> read = new ArrayList<>(metaBeans.size());
+    	for (MySQLMetaBean metaBean : metaBeans) {
+    		if (metaBean.getHeartbeat() == null || !metaBean.canSelectAsReadNode()) {
+    			continue;
+    		}
+    		readWrite.add(metaBean);
+    		if (metaBean.isSlaveNode()) {
+    			read.add(metaBean);
+    		}
+    	}
+    	MySQLMetaBean[] newReadWrite = readWrite.toArray(NO_NODES);
+    	MySQLMetaBean[] newRead = read.toArray(NO_NODES);
+    	if (!Arrays.equals(newReadWrite, readWriteNodes)) {
+    		readWriteNodes = newReadWrite;
+    	}
+    	if (!Arrays.equals(newRead, readNodes)) {
+    		readNodes = newRead;
+    	}
     }
 
 	public ReplicaBean getReplicaBean() {
@@ -3,6 +3,8 @@ package io.mycat.mycat2.beans;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
+
 /**
  * 用于进行缓存的实体信息
  * 
@@ -22,6 +24,21 @@ public class SqlCacheBean {
 	 */
 	private String sql;
 
+	/**
+	 * 缓存的key
+	 */
+	private SQLFingerprint key;
+
+	/**
+	 * sql读取的表, 这些表被修改时缓存失效
+	 */
+	private String[] tables;
+
+	/**
+	 * 已经计入缓存总大小的字节数
+	 */
+	private long cacheBytes;
+
 	/**
 	 * 到期时间配制,计算为毫秒
 	 */
@@ -30,7 +47,7 @@ public class SqlCacheBean {
 	/**
 	 * 过期的具体时间
 	 */
-	private long timeOut;
+	private volatile long timeOut;
 
 	/**
 	 * 缓存读取次数
@@ -45,7 +62,7 @@ public class SqlCacheBean {
 	/**
 	 * 缓存的内存映射文件信息 ，则内存映射创建完成后返回
 	 */
-	private SqlCacheMapFileBean cacheMapFile;
+	private volatile SqlCacheMapFileBean cacheMapFile;
 
 	/**
 	 * 写入锁，确保只能一个结果集进行更新操作
@@ -60,6 +77,30 @@ public class SqlCacheBean {
 		this.sql = sql;
 	}
 
+	public SQLFingerprint getKey() {
+		return key;
+	}
+
+	public void setKey(SQLFingerprint key) {
+		this.key = key;
+	}
+
+	public String[] getTables() {
+		return tables;
+	}
+
+	public void setTables(String[] tables) {
+		this.tables = tables;
+	}
+
+	public long getCacheBytes() {
+		return cacheBytes;
+	}
+
+	public void setCacheBytes(long cacheBytes) {
+		this.cacheBytes = cacheBytes;
+	}
+
 	public long getTimeOut() {
 		return timeOut;
 	}
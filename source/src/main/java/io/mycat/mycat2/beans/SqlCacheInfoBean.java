@@ -22,7 +22,7 @@ public class SqlCacheInfoBean {
 	/**
 	 * 写入文件的位置
 	 */
-	private long putOption;
+	private volatile long putOption;
 
 	public long getMemoryAddress() {
 		return memoryAddress;
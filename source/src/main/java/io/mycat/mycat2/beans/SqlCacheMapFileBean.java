@@ -5,6 +5,7 @@ import java.io.RandomAccessFile;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 实例内存文件映射的缓存
@@ -41,10 +42,15 @@ public class SqlCacheMapFileBean extends SqlCacheInfoBean {
 	 */
 	private Semaphore semap = new Semaphore(1);
 
+	/**
+	 * 引用计数, 缓存持有一个引用, 读取数据时临时持有一个引用, 计数为0时关闭并删除文件
+	 */
+	private final AtomicInteger refCount = new AtomicInteger(1);
+
 	/**
 	 * 当前缓存是否可用
 	 */
-	private boolean cacheAvailable = false;
+	private volatile boolean cacheAvailable = false;
 
 	/**
 	 * 内存缓冲控制
@@ -97,6 +103,10 @@ public class SqlCacheMapFileBean extends SqlCacheInfoBean {
 		this.semap = semap;
 	}
 
+	public AtomicInteger getRefCount() {
+		return refCount;
+	}
+
 	public boolean isCacheAvailable() {
 		return cacheAvailable;
 	}
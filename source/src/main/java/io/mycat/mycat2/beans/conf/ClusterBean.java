@@ -16,6 +16,10 @@ public class ClusterBean {
      * 用于集群中发送prepare报文等待确认的时间
      */
     private int prepareDelaySeconds = 30;
+    /**
+     * 向集群中其他节点上报负载的间隔秒数
+     */
+    private int loadReportPeriod = 2;
 
     public boolean isEnable() {
         return enable;
@@ -65,9 +69,18 @@ public class ClusterBean {
         this.prepareDelaySeconds = prepareDelaySeconds;
     }
 
+    public int getLoadReportPeriod() {
+        return loadReportPeriod;
+    }
+
+    public void setLoadReportPeriod(int loadReportPeriod) {
+        this.loadReportPeriod = loadReportPeriod;
+    }
+
     @Override
     public String toString() {
         return "ClusterBean{" + "enable=" + enable + ", ip='" + ip + '\'' + ", port=" + port + ", myNodeId='" + myNodeId + '\'' + ", allNodes='"
-                + allNodes + '\'' + ", prepareDelaySeconds=" + prepareDelaySeconds + '}';
+                + allNodes + '\'' + ", prepareDelaySeconds=" + prepareDelaySeconds
+                + ", loadReportPeriod=" + loadReportPeriod + '}';
     }
 }
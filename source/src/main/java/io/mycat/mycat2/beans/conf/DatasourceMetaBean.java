@@ -17,6 +17,8 @@ public class DatasourceMetaBean {
     private int maxCon = 1000;
     private int minCon = 1;
     private int maxRetryCount = GlobalBean.MAX_RETRY_COUNT;
+    // 从节点复制延迟(秒)的阈值, 超过时不再作为读节点, 未超过时按延迟比例降低读负载, 小于0时不检查
+    private int slaveThreshold = -1;
 
     public String getHostName() {
         return hostName;
@@ -82,9 +84,18 @@ public class DatasourceMetaBean {
         this.maxRetryCount = maxRetryCount;
     }
 
+    public int getSlaveThreshold() {
+        return slaveThreshold;
+    }
+
+    public void setSlaveThreshold(int slaveThreshold) {
+        this.slaveThreshold = slaveThreshold;
+    }
+
     @Override
     public String toString() {
         return "DatasourceMetaBean{" + "hostName='" + hostName + '\'' + ", ip='" + ip + '\'' + ", port=" + port + ", user='" + user + '\''
-                + ", password='" + password + '\'' + ", maxCon=" + maxCon + ", minCon=" + minCon + ", maxRetryCount=" + maxRetryCount + '}';
+                + ", password='" + password + '\'' + ", maxCon=" + maxCon + ", minCon=" + minCon + ", maxRetryCount=" + maxRetryCount
+                + ", slaveThreshold=" + slaveThreshold + '}';
     }
 }
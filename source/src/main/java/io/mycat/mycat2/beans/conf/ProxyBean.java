@@ -9,12 +9,24 @@ import io.mycat.mycat2.beans.GlobalBean;
  * @author: gaozhiwen
  */
 public class ProxyBean {
+    public enum BufferPoolTypeEnum {
+        PAGE, BUDDY;
+    }
+
 	
     private static final short DEFAULT_BUFFER_CHUNK_SIZE = 1024*4*2;
     private static final int DEFAULT_BUFFER_POOL_PAGE_SIZE = 1024*1024*4;
     private static final short DEFAULT_BUFFER_POOL_PAGE_NUMBER = 64;
     
     private static final int MAX_ALLOWED_PACKET  = 16 * 1024 * 1024;
+    private static final int DEFAULT_MAX_PENDING_WRITE_BUFFERS = 4;
+    public static final long DEFAULT_SORT_MEMORY_LIMIT = 1024 * 1024 * 64L;
+    public static final int DEFAULT_JOIN_BATCH_WINDOW = 4;
+    public static final long DEFAULT_RESULT_CACHE_LIMIT = 1024 * 1024 * 256L;
+    public static final long DEFAULT_FRONT_IDLE_TIMEOUT = 8 * 3600 * 1000L;
+    public static final long DEFAULT_BACKEND_CONNECT_TIMEOUT = 10 * 1000L;
+    public static final int DEFAULT_STMT_CACHE_SIZE = 1024;
+    public static final int DEFAULT_HBT_PLAN_CACHE_SIZE = 1024;
 	
     /**
      * 绑定的数据传输IP地址
@@ -35,6 +47,67 @@ public class ProxyBean {
  	
     // buffer pool page number 
  	private short bufferPoolPageNumber = DEFAULT_BUFFER_POOL_PAGE_NUMBER;
+
+    // buffer pool implementation, PAGE: DirectByteBufferPool, BUDDY: BuddyByteBufferPool
+ 	private BufferPoolTypeEnum bufferPoolType = BufferPoolTypeEnum.BUDDY;
+
+    /**
+     * 透传结果集时,前端写不完的数据转交给前端写出,后端继续读取下一段数据
+     */
+    private boolean fullDuplexPassthrough = false;
+
+    // 全双工透传时,前端最多积压的buffer数量,超过后暂停读取后端
+    private int maxPendingWriteBuffers = DEFAULT_MAX_PENDING_WRITE_BUFFERS;
+
+    /**
+     * 客户端连续发送的多条 COM_QUERY 一起发往同一个后端连接,响应依次透传
+     */
+    private boolean pipelineQuery = false;
+
+    /**
+     * HBT 排序在内存中缓存的数据上限(字节), 超过后排好序的数据写入临时文件
+     */
+    private long sortMemoryLimit = DEFAULT_SORT_MEMORY_LIMIT;
+
+    /**
+     * HBT join 同时在多个后端连接上执行的批次数量上限, 达到上限后暂停读取上游数据
+     */
+    private int joinBatchWindow = DEFAULT_JOIN_BATCH_WINDOW;
+
+    /**
+     * 结果集缓存文件的总大小上限(字节), 超过后淘汰最久未访问的缓存
+     */
+    private long resultCacheLimit = DEFAULT_RESULT_CACHE_LIMIT;
+
+    /**
+     * 前端连接由各 reactor 直接接受, 不经过 acceptor 线程转交. 支持 SO_REUSEPORT 时每个 reactor 绑定自己的监听端口
+     */
+    private boolean reactorAccept = false;
+
+    /**
+     * 前端连接空闲超时(毫秒), 超时后关闭连接, 0 表示不检查
+     */
+    private long frontIdleTimeout = DEFAULT_FRONT_IDLE_TIMEOUT;
+
+    /**
+     * 后端语句执行超时(毫秒), 超时后在后端执行 KILL QUERY, 0 表示不检查
+     */
+    private long queryTimeout = 0;
+
+    /**
+     * 创建后端连接并完成认证的超时(毫秒), 0 表示不检查
+     */
+    private long backendConnectTimeout = DEFAULT_BACKEND_CONNECT_TIMEOUT;
+
+    /**
+     * 每个 reactor 缓存的预处理语句元数据数量, 0 表示不缓存
+     */
+    private int stmtCacheSize = DEFAULT_STMT_CACHE_SIZE;
+
+    /**
+     * 每个 reactor 缓存的跨节点查询(HBT)执行计划数量, 0 表示不缓存
+     */
+    private int hbtPlanCacheSize = DEFAULT_HBT_PLAN_CACHE_SIZE;
  	
     /**
      * 是否使用动态配置的开关
@@ -94,6 +167,110 @@ public class ProxyBean {
 		this.bufferPoolPageNumber = bufferPoolPageNumber;
 	}
 
+	public BufferPoolTypeEnum getBufferPoolType() {
+		return bufferPoolType;
+	}
+
+	public void setBufferPoolType(BufferPoolTypeEnum bufferPoolType) {
+		this.bufferPoolType = bufferPoolType;
+	}
+
+	public boolean isFullDuplexPassthrough() {
+		return fullDuplexPassthrough;
+	}
+
+	public void setFullDuplexPassthrough(boolean fullDuplexPassthrough) {
+		this.fullDuplexPassthrough = fullDuplexPassthrough;
+	}
+
+	public int getMaxPendingWriteBuffers() {
+		return maxPendingWriteBuffers;
+	}
+
+	public void setMaxPendingWriteBuffers(int maxPendingWriteBuffers) {
+		this.maxPendingWriteBuffers = maxPendingWriteBuffers;
+	}
+
+	public boolean isPipelineQuery() {
+		return pipelineQuery;
+	}
+
+	public void setPipelineQuery(boolean pipelineQuery) {
+		this.pipelineQuery = pipelineQuery;
+	}
+
+	public long getSortMemoryLimit() {
+		return sortMemoryLimit;
+	}
+
+	public void setSortMemoryLimit(long sortMemoryLimit) {
+		this.sortMemoryLimit = sortMemoryLimit;
+	}
+
+	public int getJoinBatchWindow() {
+		return joinBatchWindow;
+	}
+
+	public void setJoinBatchWindow(int joinBatchWindow) {
+		this.joinBatchWindow = joinBatchWindow;
+	}
+
+	public long getResultCacheLimit() {
+		return resultCacheLimit;
+	}
+
+	public void setResultCacheLimit(long resultCacheLimit) {
+		this.resultCacheLimit = resultCacheLimit;
+	}
+
+	public boolean isReactorAccept() {
+		return reactorAccept;
+	}
+
+	public void setReactorAccept(boolean reactorAccept) {
+		this.reactorAccept = reactorAccept;
+	}
+
+	public long getFrontIdleTimeout() {
+		return frontIdleTimeout;
+	}
+
+	public void setFrontIdleTimeout(long frontIdleTimeout) {
+		this.frontIdleTimeout = frontIdleTimeout;
+	}
+
+	public long getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	public void setQueryTimeout(long queryTimeout) {
+		this.queryTimeout = queryTimeout;
+	}
+
+	public long getBackendConnectTimeout() {
+		return backendConnectTimeout;
+	}
+
+	public void setBackendConnectTimeout(long backendConnectTimeout) {
+		this.backendConnectTimeout = backendConnectTimeout;
+	}
+
+	public int getStmtCacheSize() {
+		return stmtCacheSize;
+	}
+
+	public void setStmtCacheSize(int stmtCacheSize) {
+		this.stmtCacheSize = stmtCacheSize;
+	}
+
+	public int getHbtPlanCacheSize() {
+		return hbtPlanCacheSize;
+	}
+
+	public void setHbtPlanCacheSize(int hbtPlanCacheSize) {
+		this.hbtPlanCacheSize = hbtPlanCacheSize;
+	}
+
 	public int getMax_allowed_packet() {
 		return max_allowed_packet;
 	}
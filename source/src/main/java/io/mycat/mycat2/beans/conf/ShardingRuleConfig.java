@@ -1,5 +1,7 @@
 package io.mycat.mycat2.beans.conf;
 
+import io.mycat.proxy.Configurable;
+
 import java.util.List;
 
 /**
@@ -8,7 +10,7 @@ import java.util.List;
  * @date: 23/09/2017
  * @author: gaozhiwen
  */
-public class ShardingRuleConfig {
+public class ShardingRuleConfig implements Configurable {
     private List<ShardingRuleBean> shardingRules;
 
     public List<ShardingRuleBean> getShardingRules() {
@@ -16,6 +16,10 @@ public class TableDefBean {
     private String shardingKey;
     private String shardingRule;
     private String store;
+    /**
+     * 估算的行数, 跨节点查询(HBT)按估算行数决定关联顺序, 0 表示未知
+     */
+    private long estimatedRows;
 
     public String getName() {
         return name;
@@ -57,9 +61,17 @@ public class TableDefBean {
         this.store = store;
     }
 
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public void setEstimatedRows(long estimatedRows) {
+        this.estimatedRows = estimatedRows;
+    }
+
     @Override
     public String toString() {
         return "TableDefBean [name=" + name + ", tableType=" + tableType + ", store=" + store + ", shardingKey=" + shardingKey + ", shardingRule="
-                + shardingRule + "]";
+                + shardingRule + ", estimatedRows=" + estimatedRows + "]";
     }
 }
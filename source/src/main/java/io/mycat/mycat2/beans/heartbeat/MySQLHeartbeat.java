@@ -37,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import io.mycat.mycat2.MycatConfig;
 import io.mycat.mycat2.beans.CheckResult;
 import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.MySQLRepBean;
 import io.mycat.mycat2.beans.conf.HeartbeatConfig;
 import io.mycat.proxy.ConfigEnum;
 import io.mycat.proxy.ProxyRuntime;
@@ -96,6 +97,13 @@ public class MySQLHeartbeat extends DBHeartbeat {
 		} finally {
 			lock.unlock();
 		}
+		refreshReadNodes();
+	}
+
+	@Override
+	public void setStatus(int status) {
+		super.setStatus(status);
+		refreshReadNodes();
 	}
 
 	public void stop() {
@@ -178,6 +186,17 @@ public class MySQLHeartbeat extends DBHeartbeat {
 	//			System.exit(0);
 				break;
 		}
+		refreshReadNodes();
+	}
+
+	/**
+	 * 心跳结果可能改变节点是否可读, 通知复制组重建读节点列表
+	 */
+	private void refreshReadNodes() {
+		MySQLRepBean repBean = source.getRepBean();
+		if (repBean != null) {
+			repBean.refreshReadNodes();
+		}
 	}
 
 	private void setOk(MySQLDetector detector) {
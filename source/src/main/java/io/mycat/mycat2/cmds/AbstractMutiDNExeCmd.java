@@ -1,61 +1,87 @@
 package io.mycat.mycat2.cmds;
 
 import java.io.IOException;
+import java.nio.channels.SelectionKey;
 
 
 import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.cmds.multinode.MergeSpec;
+import io.mycat.mycat2.cmds.multinode.MultiDNExecution;
+import io.mycat.mycat2.console.SessionKeyEnum;
 import io.mycat.mycat2.MySQLCommand;
+import io.mycat.util.ErrorCode;
 /**
  * 多节点执行SQL的抽象MySQLCommand类。
- * 需要修改SQLCommand接口，
- *  改为 public boolean procssSQL(MyCatSession session）
- *       public boolean onResponse(MySQLSession session)
+ * 同一条语句同时发送到多个节点，各节点的响应由 {@link MultiDNExecution} 边到达边合并后写回前端，
+ * 子类只需要确定语句要在哪些节点上执行。
  * @author wuzhihui
  *
  */
-public class AbstractMutiDNExeCmd implements MySQLCommand{
+public abstract class AbstractMutiDNExeCmd implements MySQLCommand{
+
+	/**
+	 * 语句要执行的节点
+	 */
+	protected abstract MySQLRepBean[] getTargetNodes(MycatSession session);
 
 	@Override
 	public boolean procssSQL(MycatSession session) throws IOException {
-		// TODO Auto-generated method stub
+		MergeSpec spec = MergeSpec.parse(session.sqlContext);
+		MySQLRepBean[] nodes = getTargetNodes(session);
+		if (spec == null || nodes == null || nodes.length == 0) {
+			session.sendErrorMsg(ErrorCode.ER_UNKNOWN_ERROR, "unsupported multi-node query");
+			return false;
+		}
+		// 各节点响应之前前端不读写
+		session.clearReadWriteOpts();
+		MultiDNExecution execution = new MultiDNExecution(session, nodes, spec);
+		session.setAttr(SessionKeyEnum.SESSION_KEY_MULTI_DN_EXECUTION, execution);
+		execution.start();
 		return false;
 	}
 
 	@Override
 	public boolean onBackendResponse(MySQLSession session) throws IOException {
-		// TODO Auto-generated method stub
+		// 各节点的响应由各自的 ShardStream 读取
 		return false;
 	}
 
 	@Override
 	public boolean onBackendClosed(MySQLSession session, boolean normal) throws IOException {
-		// TODO Auto-generated method stub
-		return false;
+		return true;
 	}
 
 	@Override
 	public boolean onFrontWriteFinished(MycatSession session) throws IOException {
-		// TODO Auto-generated method stub
-		return false;
+		MultiDNExecution execution = (MultiDNExecution) session.getAttr(SessionKeyEnum.SESSION_KEY_MULTI_DN_EXECUTION);
+		if (execution != null && execution.onFrontWriteFinished()) {
+			return false;
+		}
+		// 错误信息写完
+		session.proxyBuffer.flip();
+		session.takeOwner(SelectionKey.OP_READ);
+		return true;
 	}
 
 	@Override
 	public boolean onBackendWriteFinished(MySQLSession session) throws IOException {
-		// TODO Auto-generated method stub
 		return false;
 	}
 
 	@Override
 	public void clearFrontResouces(MycatSession session, boolean sessionCLosed) {
-		// TODO Auto-generated method stub
-		
+		if (sessionCLosed) {
+			MultiDNExecution execution = (MultiDNExecution) session.removeAttr(SessionKeyEnum.SESSION_KEY_MULTI_DN_EXECUTION);
+			if (execution != null) {
+				execution.onFrontClosed();
+			}
+		}
 	}
 
 	@Override
 	public void clearBackendResouces(MySQLSession session, boolean sessionCLosed) {
-		// TODO Auto-generated method stub
-		
 	}
 
 }
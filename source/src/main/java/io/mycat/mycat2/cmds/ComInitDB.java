@@ -12,6 +12,7 @@ import io.mycat.mycat2.sqlparser.BufferSQLParser;
 import io.mycat.mysql.packet.ErrorPacket;
 import io.mycat.mysql.packet.MySQLPacket;
 import io.mycat.mysql.packet.OKPacket;
+import io.mycat.proxy.MycatReactorThread;
 import io.mycat.proxy.ProxyRuntime;
 import io.mycat.util.ErrorCode;
 import io.mycat.util.ParseUtil;
@@ -26,7 +27,7 @@ public class ComInitDB extends DirectPassthrouhCmd{
 	@Override
 	public boolean procssSQL(MycatSession session) throws IOException {
 		
-		BufferSQLParser parser = new BufferSQLParser();
+		BufferSQLParser parser = MycatReactorThread.currentSQLParser();
 		int offset = session.curMSQLPackgInf.startPos+MySQLPacket.packetHeaderSize+1;
 		int len = session.curMSQLPackgInf.pkgLength - MySQLPacket.packetHeaderSize - 1;
 		parser.parse(session.proxyBuffer.getBuffer(),offset ,len, session.sqlContext);
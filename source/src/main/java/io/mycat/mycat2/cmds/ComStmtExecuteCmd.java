@@ -0,0 +1,192 @@
+package io.mycat.mycat2.cmds;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLPackageInf;
+import io.mycat.mycat2.beans.conf.SchemaBean;
+import io.mycat.mycat2.cmds.stmt.ClientStatement;
+import io.mycat.mycat2.cmds.stmt.PreparedStatementMeta;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mycat2.tasks.BackendStmtPrepareTask;
+import io.mycat.mysql.packet.ErrorPacket;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.util.ErrorCode;
+
+/**
+ * COM_STMT_EXECUTE 和 COM_STMT_FETCH.
+ * 前端的 statement id 换成执行所在的后端连接上的 id, 连接上还没有预处理过该语句时先预处理,
+ * 等待发送的 long data 与执行报文一起发往后端, 之后的响应按透传处理.
+ * COM_STMT_FETCH 读取的游标只存在于执行语句的连接上, 不重新预处理.
+ * 返回 ER_NEED_REPREPARE 后语句失效, 前端需要重新预处理
+ */
+public class ComStmtExecuteCmd extends DirectPassthrouhCmd {
+
+	private static final Logger logger = LoggerFactory.getLogger(ComStmtExecuteCmd.class);
+
+	public static final ComStmtExecuteCmd INSTANCE = new ComStmtExecuteCmd();
+
+	static final String UNROUTABLE_MESSAGE = "cannot route prepared statement in sharded schema";
+
+	static final String NEED_REPREPARE_MESSAGE = "Prepared statement needs to be re-prepared";
+
+	@Override
+	public boolean procssSQL(MycatSession session) throws IOException {
+		MySQLPackageInf packageInf = session.curMSQLPackgInf;
+		int payloadStart = packageInf.startPos + MySQLPacket.packetHeaderSize;
+		byte[] payload = session.proxyBuffer.getBytes(payloadStart, packageInf.endPos - payloadStart);
+		boolean fetch = payload[0] == MySQLPacket.COM_STMT_FETCH;
+		long statementId = payload.length > 4 ? ClientStatement.statementId(payload) : -1;
+		ClientStatement statement = session.getPreparedStatement(statementId);
+		if (statement == null) {
+			session.sendErrorMsg(ErrorCode.ER_UNKNOWN_STMT_HANDLER, "Unknown prepared statement handler ("
+					+ statementId + ") given to " + (fetch ? "mysqld_stmt_fetch" : "mysqld_stmt_execute"));
+			return false;
+		}
+		if (statement.isInvalid()) {
+			session.sendErrorMsg(ErrorCode.ER_NEED_REPREPARE, NEED_REPREPARE_MESSAGE);
+			return false;
+		}
+		/*
+		 * 获取后端连接可能涉及到异步处理,这里需要先取消前端读写事件
+		 */
+		if (!parseForRoute(session, statement.getMeta().getSql())) {
+			session.sendErrorMsg(ErrorCode.ER_NOT_SUPPORTED_YET, UNROUTABLE_MESSAGE);
+			return false;
+		}
+		session.clearReadWriteOpts();
+		session.setPipelinedResponses(0);
+		session.getBackend((mysqlSession, sender, success, result) -> {
+			if (!success) {
+				session.closeBackendAndResponseError(mysqlSession, success, (ErrorPacket) result);
+				return;
+			}
+			executeOn(session, mysqlSession, statement, payload);
+		});
+		return false;
+	}
+
+	/**
+	 * 在取得的后端连接上执行, statement id 换成语句在该连接上的 id. 连接上还没有预处理过该语句时先预处理
+	 *
+	 * @param payload
+	 *            前端的 COM_STMT_EXECUTE 或者 COM_STMT_FETCH 报文内容, 不包含报文头
+	 */
+	public void executeOn(MycatSession session, MySQLSession mysqlSession, ClientStatement statement, byte[] payload)
+			throws IOException {
+		PreparedStatementMeta meta = statement.getMeta();
+		long backendId = mysqlSession.getPreparedStatementId(meta.getKey());
+		if (backendId >= 0) {
+			execute(session, mysqlSession, statement, payload, backendId);
+			return;
+		}
+		if (payload[0] == MySQLPacket.COM_STMT_FETCH) {
+			responseError(session, ErrorCode.ER_UNKNOWN_STMT_HANDLER,
+					"Unknown prepared statement handler (" + statement.getId() + ") given to mysqld_stmt_fetch");
+			return;
+		}
+		BackendStmtPrepareTask task = new BackendStmtPrepareTask(mysqlSession, meta.getKey(), meta.getSql());
+		task.setCallback((optSession, sder, prepared, rv) -> {
+			optSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+			if (!prepared) {
+				session.closeBackendAndResponseError(optSession, false, (ErrorPacket) rv);
+			} else if (rv != null) {
+				session.takeBufferOwnerOnly();
+				session.responseOKOrError((ErrorPacket) rv);
+			} else if (!meta.sameShape(task.getMeta())) {
+				// 表结构变化后参数或者列的数量不同, 前端需要重新预处理
+				MycatReactorThread.currentStatementCache().put(task.getMeta());
+				statement.invalidate();
+				responseError(session, ErrorCode.ER_NEED_REPREPARE, NEED_REPREPARE_MESSAGE);
+			} else {
+				execute(session, optSession, statement, payload, task.getStatementId());
+			}
+		});
+		task.prepare();
+	}
+
+	/**
+	 * 后端执行语句返回 ER_NEED_REPREPARE, 表结构在执行期间发生了变化.
+	 * 前端的语句和缓存的元数据都已经过期, 前端重新预处理时从后端取得新的元数据
+	 */
+	public static void onNeedReprepare(MycatSession session) {
+		ClientStatement statement = session.getExecutingStatement();
+		if (statement != null) {
+			statement.invalidate();
+			MycatReactorThread.currentStatementCache().remove(statement.getMeta().getKey());
+		}
+	}
+
+	/**
+	 * 解析预处理语句并路由. 分库时语句中的参数不参与路由, 不能路由到唯一的节点时返回 false
+	 */
+	static boolean parseForRoute(MycatSession session, byte[] sql) {
+		try {
+			MycatReactorThread.currentSQLParser().parse(sql, session.sqlContext);
+		} catch (Exception e) {
+			logger.debug("parse prepared statement error, route to default node. {}", e.getMessage());
+			return SchemaBean.SchemaTypeEnum.DB_IN_MULTI_SERVER != session.schema.getSchemaType();
+		}
+		return session.routeSharding();
+	}
+
+	private void responseError(MycatSession session, int errno, String message) throws IOException {
+		ErrorPacket error = new ErrorPacket();
+		error.packetId = 1;
+		error.errno = errno;
+		error.message = message;
+		session.takeBufferOwnerOnly();
+		session.responseOKOrError(error);
+	}
+
+	private void execute(MycatSession session, MySQLSession mysqlSession, ClientStatement statement, byte[] payload,
+			long backendId) throws IOException {
+		byte[] backendPayload = payload[0] == MySQLPacket.COM_STMT_FETCH
+				? ClientStatement.replaceStatementId(payload, backendId)
+				: statement.toBackendExecute(payload, backendId);
+		List<byte[]> longData = payload[0] == MySQLPacket.COM_STMT_FETCH ? null : statement.pollLongData();
+		int size = MySQLPacket.packetHeaderSize + backendPayload.length;
+		if (longData != null) {
+			for (byte[] data : longData) {
+				size += MySQLPacket.packetHeaderSize + 5 + data.length;
+			}
+		}
+		session.ensureBufferCapacity(size);
+		ProxyBuffer buffer = session.proxyBuffer;
+		buffer.reset();
+		if (longData != null) {
+			// COM_STMT_SEND_LONG_DATA 没有响应
+			for (byte[] data : longData) {
+				buffer.writeFixInt(3, 5 + data.length);
+				buffer.writeByte((byte) 0);
+				buffer.writeByte(MySQLPacket.COM_STMT_SEND_LONG_DATA);
+				buffer.writeFixInt(4, backendId);
+				buffer.writeBytes(data);
+			}
+		}
+		buffer.writeFixInt(3, backendPayload.length);
+		buffer.writeByte((byte) 0);
+		buffer.writeBytes(backendPayload);
+		buffer.flip();
+		buffer.readIndex = buffer.writeIndex;
+		// 改变 owner，对端Session获取，并且感兴趣写事件
+		session.giveupOwner(SelectionKey.OP_WRITE);
+		session.setExecutingStatement(statement);
+		// 刚刚预处理完成时连接标记为空闲, 执行语句的响应读取完成后才是空闲
+		mysqlSession.setIdle(false);
+		mysqlSession.beginQuery();
+		try {
+			mysqlSession.writeToChannel();
+		} catch (IOException e) {
+			session.closeBackendAndResponseError(mysqlSession, false, ErrorCode.ERR_CONNECT_SOCKET, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package io.mycat.mycat2.cmds;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+import io.mycat.mycat2.MySQLCommand;
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLPackageInf;
+import io.mycat.mycat2.cmds.stmt.ClientStatement;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.mysql.packet.OKPacket;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.util.ErrorCode;
+
+/**
+ * 在 mycat 本地处理的预处理语句命令, 不访问后端.
+ * 1. COM_STMT_CLOSE 只移除前端的语句, 后端连接上的语句保留给其他前端复用. 没有响应
+ * 2. COM_STMT_SEND_LONG_DATA 保存数据, 执行时一起发往后端. 没有响应
+ * 3. COM_STMT_RESET 清除保存的数据
+ * 没有响应的命令后面经常紧跟着下一条命令, buffer 中剩余的报文继续处理
+ */
+public class ComStmtLocalCmd implements MySQLCommand {
+
+	public static final ComStmtLocalCmd INSTANCE = new ComStmtLocalCmd();
+
+	@Override
+	public boolean procssSQL(MycatSession session) throws IOException {
+		MySQLPackageInf packageInf = session.curMSQLPackgInf;
+		int payloadStart = packageInf.startPos + MySQLPacket.packetHeaderSize;
+		byte[] payload = session.proxyBuffer.getBytes(payloadStart, packageInf.endPos - payloadStart);
+		long statementId = payload.length > 4 ? ClientStatement.statementId(payload) : -1;
+		switch (payload[0]) {
+		case MySQLPacket.COM_STMT_CLOSE:
+			session.removePreparedStatement(statementId);
+			nextPackage(session);
+			break;
+		case MySQLPacket.COM_STMT_SEND_LONG_DATA:
+			ClientStatement statement = session.getPreparedStatement(statementId);
+			// 语句不存在时在执行时报错
+			if (statement != null && payload.length >= 7) {
+				statement.addLongData(payload);
+			}
+			nextPackage(session);
+			break;
+		default:
+			statement = session.getPreparedStatement(statementId);
+			if (statement == null) {
+				session.sendErrorMsg(ErrorCode.ER_UNKNOWN_STMT_HANDLER,
+						"Unknown prepared statement handler (" + statementId + ") given to mysqld_stmt_reset");
+			} else {
+				statement.pollLongData();
+				session.responseOKOrError(OKPacket.OK);
+			}
+			break;
+		}
+		return false;
+	}
+
+	/**
+	 * 当前报文处理完成, buffer 中还有数据时继续处理, 否则等待读取下一个报文
+	 */
+	private void nextPackage(MycatSession session) throws IOException {
+		ProxyBuffer buffer = session.proxyBuffer;
+		int endPos = session.curMSQLPackgInf.endPos;
+		if (endPos >= buffer.writeIndex) {
+			buffer.reset();
+			return;
+		}
+		buffer.readMark = endPos;
+		buffer.readIndex = endPos;
+		buffer.compact();
+		DefaultMycatSessionHandler.INSTANCE.onFrontPackage(session);
+	}
+
+	@Override
+	public boolean onBackendResponse(MySQLSession session) throws IOException {
+		return false;
+	}
+
+	@Override
+	public boolean onBackendClosed(MySQLSession session, boolean normal) throws IOException {
+		return true;
+	}
+
+	@Override
+	public boolean onFrontWriteFinished(MycatSession session) throws IOException {
+		session.proxyBuffer.flip();
+		session.takeOwner(SelectionKey.OP_READ);
+		return true;
+	}
+
+	@Override
+	public boolean onBackendWriteFinished(MySQLSession session) throws IOException {
+		return false;
+	}
+
+	@Override
+	public void clearFrontResouces(MycatSession session, boolean sessionCLosed) {
+	}
+
+	@Override
+	public void clearBackendResouces(MySQLSession session, boolean sessionCLosed) {
+	}
+}
@@ -0,0 +1,114 @@
+package io.mycat.mycat2.cmds;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+import io.mycat.mycat2.MySQLCommand;
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLPackageInf;
+import io.mycat.mycat2.cmds.stmt.ClientStatement;
+import io.mycat.mycat2.cmds.stmt.PreparedStatementMeta;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mycat2.tasks.BackendStmtPrepareTask;
+import io.mycat.mysql.packet.ErrorPacket;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.util.ErrorCode;
+
+/**
+ * COM_STMT_PREPARE, 预处理语句由 mycat 管理.
+ * 语句的元数据已经缓存时直接回复前端, 不访问后端; 否则在后端连接上预处理, 缓存元数据并记录语句在该连接上的 id.
+ * 前端拿到的 statement id 由 mycat 分配, 执行时再换成实际执行的后端连接上的 id
+ */
+public class ComStmtPrepareCmd implements MySQLCommand {
+
+	public static final ComStmtPrepareCmd INSTANCE = new ComStmtPrepareCmd();
+
+	@Override
+	public boolean procssSQL(MycatSession session) throws IOException {
+		MySQLPackageInf packageInf = session.curMSQLPackgInf;
+		int sqlStart = packageInf.startPos + MySQLPacket.packetHeaderSize + 1;
+		byte[] sql = session.proxyBuffer.getBytes(sqlStart, packageInf.endPos - sqlStart);
+		String key = PreparedStatementMeta.key(session.schema.getName(), sql);
+		PreparedStatementMeta meta = MycatReactorThread.currentStatementCache().get(key);
+		if (meta != null) {
+			writePrepareOk(session, meta);
+			return false;
+		}
+		/*
+		 * 获取后端连接可能涉及到异步处理,这里需要先取消前端读写事件
+		 */
+		if (!ComStmtExecuteCmd.parseForRoute(session, sql)) {
+			session.sendErrorMsg(ErrorCode.ER_NOT_SUPPORTED_YET, ComStmtExecuteCmd.UNROUTABLE_MESSAGE);
+			return false;
+		}
+		session.clearReadWriteOpts();
+		session.getBackend((mysqlSession, sender, success, result) -> {
+			if (!success) {
+				session.closeBackendAndResponseError(mysqlSession, success, (ErrorPacket) result);
+				return;
+			}
+			BackendStmtPrepareTask task = new BackendStmtPrepareTask(mysqlSession, key, sql);
+			task.setCallback((optSession, sder, prepared, rv) -> {
+				optSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+				if (!prepared) {
+					session.closeBackendAndResponseError(optSession, false, (ErrorPacket) rv);
+				} else if (rv != null) {
+					// 语句本身有错误, 连接继续可用
+					session.takeBufferOwnerOnly();
+					session.responseOKOrError((ErrorPacket) rv);
+				} else {
+					MycatReactorThread.currentStatementCache().put(task.getMeta());
+					session.takeBufferOwnerOnly();
+					writePrepareOk(session, task.getMeta());
+				}
+			});
+			task.prepare();
+		});
+		return false;
+	}
+
+	private void writePrepareOk(MycatSession session, PreparedStatementMeta meta) throws IOException {
+		ClientStatement statement = session.addPreparedStatement(meta);
+		session.ensureBufferCapacity(meta.getResponseSize());
+		ProxyBuffer buffer = session.proxyBuffer;
+		buffer.reset();
+		meta.writeResponse(buffer, statement.getId());
+		buffer.flip();
+		buffer.readIndex = buffer.writeIndex;
+		session.writeToChannel();
+	}
+
+	@Override
+	public boolean onBackendResponse(MySQLSession session) throws IOException {
+		// 后端响应由 BackendStmtPrepareTask 读取
+		return false;
+	}
+
+	@Override
+	public boolean onBackendClosed(MySQLSession session, boolean normal) throws IOException {
+		return true;
+	}
+
+	@Override
+	public boolean onFrontWriteFinished(MycatSession session) throws IOException {
+		session.proxyBuffer.flip();
+		session.takeOwner(SelectionKey.OP_READ);
+		return true;
+	}
+
+	@Override
+	public boolean onBackendWriteFinished(MySQLSession session) throws IOException {
+		return false;
+	}
+
+	@Override
+	public void clearFrontResouces(MycatSession session, boolean sessionCLosed) {
+	}
+
+	@Override
+	public void clearBackendResouces(MySQLSession session, boolean sessionCLosed) {
+	}
+}
@@ -1,6 +1,7 @@
 package io.mycat.mycat2.cmds;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.util.HashMap;
 import java.util.Map;
@@ -11,13 +12,18 @@ import org.slf4j.LoggerFactory;
 import io.mycat.mycat2.MySQLCommand;
 import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.conf.ProxyBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
 import io.mycat.mycat2.cmds.judge.DirectTransJudge;
 import io.mycat.mycat2.cmds.judge.ErrorJudge;
 import io.mycat.mycat2.cmds.judge.OkJudge;
 import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mycat2.tasks.AsynTaskCallBack;
 import io.mycat.mysql.packet.ErrorPacket;
 import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.ConfigEnum;
 import io.mycat.proxy.ProxyBuffer;
+import io.mycat.proxy.ProxyRuntime;
 import io.mycat.util.ErrorCode;
 
 /**
@@ -51,7 +57,49 @@ public class DirectPassthrouhCmd implements MySQLCommand {
 		 */
 		session.clearReadWriteOpts();
 
-		session.getBackend((mysqlsession, sender, success, result) -> {
+		// 流水线模式下,buffer 中紧随其后的 COM_QUERY 一起透传到同一个后端连接, 响应按顺序依次透传
+		ProxyConfig config = ProxyRuntime.INSTANCE.getConfig().getConfig(ConfigEnum.PROXY);
+		if (config.getProxy().isPipelineQuery() && session.curSQLCommand == this) {
+			session.setPipelinedResponses(session.countPipelinedQueries());
+		} else {
+			session.setPipelinedResponses(0);
+		}
+		// 重置连接后前端和后端的预处理语句都失效
+		boolean resetConnection = MySQLPacket.COM_RESET_CONNECTION == (byte) session.curMSQLPackgInf.pkgType;
+		if (resetConnection) {
+			session.clearPreparedStatements();
+		}
+
+		// 回调按会话复用, 透传每条语句时不再创建新的回调对象
+		BackendCallback callback = (BackendCallback) session.getAttr(SessionKeyEnum.SESSION_KEY_PASSTHROUGH_CALLBACK);
+		if (callback == null) {
+			callback = new BackendCallback(session);
+			session.setAttr(SessionKeyEnum.SESSION_KEY_PASSTHROUGH_CALLBACK, callback);
+		}
+		callback.resetConnection = resetConnection;
+		session.getBackend(callback);
+		return false;
+	}
+
+	/**
+	 * 取得后端连接后, 将前端 buffer 中的报文透传给后端
+	 */
+	private static final class BackendCallback implements AsynTaskCallBack<MySQLSession> {
+
+		private final MycatSession session;
+
+		private boolean resetConnection;
+
+		BackendCallback(MycatSession session) {
+			this.session = session;
+		}
+
+		@Override
+		public void finished(MySQLSession mysqlsession, Object sender, boolean success, Object result)
+				throws IOException {
+			if (resetConnection && mysqlsession != null) {
+				mysqlsession.clearPreparedStatements();
+			}
 
 			ProxyBuffer curBuffer = session.proxyBuffer;
 			// 切换 buffer 读写状态
@@ -61,6 +109,7 @@ public class DirectPassthrouhCmd implements MySQLCommand {
 				curBuffer.readIndex = curBuffer.writeIndex;
 				// 改变 owner，对端Session获取，并且感兴趣写事件
 				session.giveupOwner(SelectionKey.OP_WRITE);
+				mysqlsession.beginQuery();
 				try {
 					mysqlsession.writeToChannel();
 				} catch (IOException e) {
@@ -69,8 +118,7 @@ public class DirectPassthrouhCmd implements MySQLCommand {
 			} else {
 				session.closeBackendAndResponseError(mysqlsession, success, ((ErrorPacket) result));
 			}
-		});
-		return false;
+		}
 	}
 
 	@Override
@@ -84,19 +132,30 @@ public class DirectPassthrouhCmd implements MySQLCommand {
 		// 进行报文处理的流程化
 		boolean nextReadFlag = false;
 		do {
-			// 进行报文的处理流程
-			nextReadFlag = session.getMycatSession().commandHandler.procss(session);
-		} while (nextReadFlag);
+			do {
+				// 进行报文的处理流程
+				nextReadFlag = session.getMycatSession().commandHandler.procss(session);
+			} while (nextReadFlag);
+			// 流水线中还有后续响应时继续处理
+		} while (session.getMycatSession().nextPipelinedResponse(session));
 
 		// 获取当前是否结束标识
-		Boolean check = (Boolean) session.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+		boolean check = session.isIdleMarked();
+
+		if (check) {
+			// 后端响应已经全部读取
+			session.endQuery(true);
+		}
 
 		MycatSession mycatSession = session.getMycatSession();
 		ProxyBuffer buffer = session.getProxyBuffer();
 
 		buffer.flip();
+		if (forwardFullDuplex(session, mycatSession, buffer)) {
+			return false;
+		}
 		// 检查到当前已经完成,执行添加操作
-		if (null != check && check) {
+		if (check) {
 			// 当知道操作完成后，前段的注册感兴趣事件为读取
 			mycatSession.takeOwner(SelectionKey.OP_READ);
 		}
@@ -111,12 +170,66 @@ public class DirectPassthrouhCmd implements MySQLCommand {
 		return false;
 	}
 
+	/**
+	 * 全双工透传. 结果集传输过程中,前端写不完的数据连同 ByteBuffer 一起转交给前端的积压队列(不拷贝),
+	 * 后端换一个新的 buffer 继续读取,前端由可写事件 gathering write 写出积压数据
+	 *
+	 * @return true 已经按全双工处理, false 走原有的单工流程
+	 * @throws IOException
+	 */
+	private boolean forwardFullDuplex(MySQLSession session, MycatSession mycatSession, ProxyBuffer buffer)
+			throws IOException {
+		ProxyConfig config = ProxyRuntime.INSTANCE.getConfig().getConfig(ConfigEnum.PROXY);
+		ProxyBean proxyBean = config.getProxy();
+		if (!proxyBean.isFullDuplexPassthrough()) {
+			return false;
+		}
+		boolean transferOver = !mycatSession.hasFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG);
+		if (transferOver && !mycatSession.hasPendingWrites()) {
+			return false;
+		}
+		ByteBuffer bytebuffer = buffer.getBuffer();
+		bytebuffer.limit(buffer.readIndex);
+		bytebuffer.position(buffer.readMark);
+		boolean allWrited = mycatSession.writePendingToChannel(bytebuffer);
+		buffer.readMark = bytebuffer.position();
+		bytebuffer.limit(bytebuffer.capacity());
+		if (allWrited) {
+			// 积压与本次数据都已写完,由原有流程切换状态
+			return false;
+		}
+		if (buffer.readMark < buffer.readIndex) {
+			mycatSession.addPendingWrite(swapBuffer(mycatSession, buffer));
+		}
+		// 切换回写入状态,继续读取后端数据
+		buffer.flip();
+		mycatSession.waitPendingWritable(proxyBean.getMaxPendingWriteBuffers(), transferOver);
+		return true;
+	}
+
+	/**
+	 * 当前 buffer 中[readMark, readIndex) 的数据转交给前端,未解析完的半包拷贝到新分配的 buffer 中
+	 *
+	 * @return 待前端写出的 buffer
+	 */
+	private ByteBuffer swapBuffer(MycatSession mycatSession, ProxyBuffer buffer) {
+		ByteBuffer ready = buffer.getBuffer();
+		ByteBuffer next = mycatSession.bufPool.allocate(ready.capacity());
+		ready.limit(buffer.writeIndex);
+		ready.position(buffer.readIndex);
+		next.put(ready);
+		ready.limit(buffer.readIndex);
+		ready.position(buffer.readMark);
+		buffer.resetBuffer(next);
+		return ready;
+	}
+
 	@Override
 	public boolean onFrontWriteFinished(MycatSession session) throws IOException {
 		// 判断是否结果集传输完成，决定命令是否结束，切换到前端读取数据
 		// 检查当前已经结束，进行切换
 		// 检查如果存在传输的标识，说明后传数据向前传传输未完成,注册后端的读取事件
-		if (session.getSessionAttrMap().containsKey(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG.getKey())) {
+		if (session.hasFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG)) {
 			session.proxyBuffer.flip();
 			session.giveupOwner(SelectionKey.OP_READ);
 			return false;
@@ -21,11 +21,10 @@ import io.mycat.mycat2.hbt.OutFunction;
 import io.mycat.mycat2.hbt.ResultSetMeta;
 import io.mycat.mycat2.hbt.RowMeta;
 import io.mycat.mycat2.hbt.SqlMeta;
-import io.mycat.mycat2.hbt.TableMeta;
 import io.mycat.mycat2.hbt.pipeline.HBTEngine;
+import io.mycat.mycat2.hbt.pipeline.OutPipeline;
 import io.mycat.mycat2.sqlparser.NewSQLContext;
 import io.mycat.mysql.Fields;
-import io.mycat.proxy.ProxyBuffer;
 
 /**
  * 直接透传命令报文
@@ -103,27 +102,13 @@ public class HBTDemoCmd2 implements MySQLCommand {
 
 	@Override
 	public boolean onFrontWriteFinished(MycatSession session) throws IOException {
-		TableMeta tableMeta = (TableMeta)session.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_HBT_TABLE_META.getKey());
-		
-		if(null != tableMeta && !tableMeta.isWriteFinish()) {
-			ProxyBuffer buffer = session.proxyBuffer;
-			buffer.reset();
-			tableMeta.writeRowData(buffer);
-			buffer.flip();
-			buffer.readIndex = buffer.writeIndex; 
-			session.takeOwner(SelectionKey.OP_WRITE);
-			try {
-				session.writeToChannel();
-			} catch (IOException e) {
-				e.printStackTrace();
-			} 
-			return false;
-		} else {
-			session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_HBT_TABLE_META.getKey());
-			session.proxyBuffer.flip();
-			session.takeOwner(SelectionKey.OP_READ);
-			return true;
+		OutPipeline out = (OutPipeline)session.getAttr(SessionKeyEnum.SESSION_KEY_HBT_OUT_PIPELINE);
+		if(null != out) {
+			return out.onFrontWriteFinished();
 		}
+		session.proxyBuffer.flip();
+		session.takeOwner(SelectionKey.OP_READ);
+		return true;
 		
 	}
 
@@ -0,0 +1,72 @@
+package io.mycat.mycat2.cmds;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+import io.mycat.mycat2.MySQLCommand;
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mycat2.hbt.pipeline.OutPipeline;
+import io.mycat.mycat2.hbt.planner.HBTPlan;
+
+/**
+ * 执行 {@link io.mycat.mycat2.hbt.planner.HBTPlanner} 规划的 select, 计划由路由时放在会话属性中
+ */
+public class HBTQueryCmd implements MySQLCommand {
+
+	public static final HBTQueryCmd INSTANCE = new HBTQueryCmd();
+
+	@Override
+	public boolean procssSQL(MycatSession session) throws IOException {
+		HBTPlan plan = (HBTPlan) session.removeAttr(SessionKeyEnum.SESSION_KEY_HBT_PLAN);
+		/*
+		 * 获取后端连接可能涉及到异步处理,这里需要先取消前端读写事件
+		 */
+		session.clearReadWriteOpts();
+		plan.execute(session);
+		return true;
+	}
+
+	@Override
+	public boolean onBackendResponse(MySQLSession session) throws IOException {
+		return false;
+	}
+
+	@Override
+	public boolean onFrontWriteFinished(MycatSession session) throws IOException {
+		OutPipeline out = (OutPipeline) session.getAttr(SessionKeyEnum.SESSION_KEY_HBT_OUT_PIPELINE);
+		if (null != out) {
+			return out.onFrontWriteFinished();
+		}
+		session.proxyBuffer.flip();
+		session.takeOwner(SelectionKey.OP_READ);
+		return true;
+	}
+
+	@Override
+	public boolean onBackendWriteFinished(MySQLSession session) throws IOException {
+		return false;
+	}
+
+	@Override
+	public boolean onBackendClosed(MySQLSession session, boolean normal) throws IOException {
+		return true;
+	}
+
+	@Override
+	public void clearFrontResouces(MycatSession session, boolean sessionCLosed) {
+		if (sessionCLosed) {
+			session.recycleAllocedBuffer(session.getProxyBuffer());
+			session.unbindAllBackend();
+		}
+	}
+
+	@Override
+	public void clearBackendResouces(MySQLSession mysqlSession, boolean sessionCLosed) {
+		if (sessionCLosed) {
+			mysqlSession.recycleAllocedBuffer(mysqlSession.getProxyBuffer());
+			mysqlSession.unbindMycatSession();
+		}
+	}
+}
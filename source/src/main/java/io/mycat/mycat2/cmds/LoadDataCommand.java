@@ -46,9 +46,9 @@ public class LoadDataCommand implements MySQLCommand {
 		this.readOverByte(session, curBuffer);
 		//检查是否传输完成
 		if (checkOver(session)) {
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_LOAD_DATA_FINISH_KEY.getKey(), true);
+			session.setFlag(SessionKeyEnum.SESSION_KEY_LOAD_DATA_FINISH_KEY, true);
 		} else {
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_LOAD_DATA_FINISH_KEY.getKey(), false);
+			session.setFlag(SessionKeyEnum.SESSION_KEY_LOAD_DATA_FINISH_KEY, false);
 		}
 		
 		/*
@@ -75,12 +75,12 @@ public class LoadDataCommand implements MySQLCommand {
 
 	/*获取结束flag标识的数组*/
 	private byte[] getOverFlag(MycatSession session) {
-		byte[] overFlag = (byte[])session.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_LOAD_OVER_FLAG_ARRAY.getKey());
+		byte[] overFlag = (byte[])session.getAttr(SessionKeyEnum.SESSION_KEY_LOAD_OVER_FLAG_ARRAY);
 		if(overFlag != null) {
 			return overFlag;
 		}
 		overFlag = new byte[FLAGLENGTH];
-		session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_LOAD_OVER_FLAG_ARRAY.getKey(), overFlag);
+		session.setAttr(SessionKeyEnum.SESSION_KEY_LOAD_OVER_FLAG_ARRAY, overFlag);
 		return overFlag; 
 	}
 	/**
@@ -172,15 +172,15 @@ public class LoadDataCommand implements MySQLCommand {
 
 	@Override
 	public boolean onBackendWriteFinished(MySQLSession session) throws IOException {
-		Boolean flag =  (Boolean)session.getMycatSession().getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_LOAD_DATA_FINISH_KEY.getKey());
+		boolean flag = session.getMycatSession().hasFlag(SessionKeyEnum.SESSION_KEY_LOAD_DATA_FINISH_KEY);
 		//前段数据透传完成
 		if(flag) {
 			logger.debug("load data finish!!!");
 			//session.getMycatSession().curSQLCommand = DirectPassthrouhCmd.INSTANCE;
 			// 当load data的包完成后，则又重新打开包完整性检查
-			session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_PKG_READ_FLAG.getKey());
+			session.setFlag(SessionKeyEnum.SESSION_PKG_READ_FLAG, false);
 			//清除临时数组
-			session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_LOAD_OVER_FLAG_ARRAY.getKey());
+			session.removeAttr(SessionKeyEnum.SESSION_KEY_LOAD_OVER_FLAG_ARRAY);
 			//读取后端的数据，然后进行透传
 			session.getMycatSession().giveupOwner(SelectionKey.OP_READ);
 			session.proxyBuffer.flip();
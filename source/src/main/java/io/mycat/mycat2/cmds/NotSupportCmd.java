@@ -17,15 +17,29 @@ public class NotSupportCmd implements MySQLCommand{
 	
 	private static final Logger logger = LoggerFactory.getLogger(NotSupportCmd.class);
 
-	public static final NotSupportCmd INSTANCE = new NotSupportCmd();
+	public static final NotSupportCmd INSTANCE = new NotSupportCmd(ErrorCode.ER_BAD_DB_ERROR, " command  is not supported");
+
+	/**
+	 * 分库时不能路由到唯一分片, 也不能在多个分片上执行的语句
+	 */
+	public static final NotSupportCmd UNROUTABLE = new NotSupportCmd(ErrorCode.ER_NOT_SUPPORTED_YET,
+			"cannot route statement in sharded schema");
+
+	private final int errno;
+	private final String message;
+
+	private NotSupportCmd(int errno, String message) {
+		this.errno = errno;
+		this.message = message;
+	}
 
 	@Override
 	public boolean procssSQL(MycatSession session) throws IOException {
 		ErrorPacket error = new ErrorPacket();
-        error.errno = ErrorCode.ER_BAD_DB_ERROR;
+        error.errno = errno;
         error.packetId = (byte)(session.proxyBuffer.getByte(session.curMSQLPackgInf.startPos 
 				+ ParseUtil.mysql_packetHeader_length)+1);
-        error.message = " command  is not supported";
+        error.message = message;
         session.responseOKOrError(error);
         return false;
 	}
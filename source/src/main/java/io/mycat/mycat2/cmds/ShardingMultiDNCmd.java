@@ -0,0 +1,20 @@
+package io.mycat.mycat2.cmds;
+
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.route.ShardingRouter;
+import io.mycat.proxy.ProxyRuntime;
+
+/**
+ * 分库时不能路由到唯一分片的语句, 按分片规则在表所在的所有分片上执行
+ */
+public class ShardingMultiDNCmd extends AbstractMutiDNExeCmd {
+
+	public static final ShardingMultiDNCmd INSTANCE = new ShardingMultiDNCmd();
+
+	@Override
+	protected MySQLRepBean[] getTargetNodes(MycatSession session) {
+		ShardingRouter router = ProxyRuntime.INSTANCE.getConfig().getShardingRouter(session.schema.getName());
+		return router == null ? null : router.scatterNodes(session.sqlContext);
+	}
+}
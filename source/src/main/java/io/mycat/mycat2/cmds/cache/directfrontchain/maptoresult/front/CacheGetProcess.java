@@ -4,6 +4,7 @@ import java.nio.channels.SelectionKey;
 
 import io.mycat.mycat2.MycatSession;
 import io.mycat.mycat2.cmds.cache.mapcache.CacheManager;
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
 import io.mycat.mycat2.common.ChainExecInf;
 import io.mycat.mycat2.common.SeqContextList;
 import io.mycat.mycat2.console.SessionKeyEnum;
@@ -30,38 +31,31 @@ public class CacheGetProcess implements ChainExecInf {
 
 		// 首先检查当前否为获取数据标识
 		// 首先检查当前是否存在从缓存中获取数据的标识
-		if (session.getSessionAttrMap().containsKey(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG.getKey())) {
+		if (session.hasFlag(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG)) {
 
-			ProxyBuffer curBuffer = session.proxyBuffer;
-			long offset = 0;
-			if (session.getSessionAttrMap().containsKey(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG.getKey())) {
-				offset = (long) session.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG.getKey());
-			}
-
-			String sql = (String) session.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR.getKey());
-
-			// 从缓存中获取数据
-			offset = CacheManager.INSTANCE.getCacheValue(curBuffer, sql, offset);
+			SQLFingerprint cacheKey = (SQLFingerprint) session.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_KEY);
 
-			// 将当前的偏移放入到会话中
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG.getKey(), offset);
+			// 结果集在缓存文件中是完整的, 整个文件直接写往前端, 写完后由 ResultOverFlag 结束本次查询
+			session.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER, true);
+			if (CacheManager.INSTANCE.transferTo(session, cacheKey)) {
+				return false;
+			}
 
-			// 获取到数据后
-			return seqList.nextExec();
+			// 缓存已经失效, 改为向后端查询
+			session.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER, false);
+			session.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG, false);
 		}
+
 		// 当不存在标识时，直接将SQL写入数据库请求
-		else {
-			// 将查询的数据写入至mysql
-			ProxyBuffer curBuffer = session.proxyBuffer;
-			// 切换 buffer 读写状态
-			curBuffer.flip();
-			// 没有读取,直接透传时,需要指定 透传的数据 截止位置
-			curBuffer.readIndex = curBuffer.writeIndex;
-			// 改变 owner，对端Session获取，并且感兴趣写事件
-			session.giveupOwner(SelectionKey.OP_WRITE);
-			// 后数进行写入
-			session.curBackend.writeToChannel();
-		}
+		ProxyBuffer curBuffer = session.proxyBuffer;
+		// 切换 buffer 读写状态
+		curBuffer.flip();
+		// 没有读取,直接透传时,需要指定 透传的数据 截止位置
+		curBuffer.readIndex = curBuffer.writeIndex;
+		// 改变 owner，对端Session获取，并且感兴趣写事件
+		session.giveupOwner(SelectionKey.OP_WRITE);
+		// 后数进行写入
+		session.curBackend.writeToChannel();
 
 		return false;
 	}
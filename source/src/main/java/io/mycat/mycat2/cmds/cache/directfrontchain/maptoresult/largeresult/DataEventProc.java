@@ -30,13 +30,12 @@ public class DataEventProc implements ChainExecInf {
 		session.proxyBuffer.readMark = 0;
 
 		// 获取当前是否结束标识
-		Boolean check = (Boolean) session.curBackend.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+		boolean check = session.curBackend.isIdleMarked();
 
 		// 当前完成，注册读取事件
-		if (null != check && check) {
+		if (check) {
 			// 获取当前是否结束标识
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER.getKey(), true);
+			session.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER, true);
 		}
 
 		// 完成之后将再次注册写入事件
@@ -5,6 +5,7 @@ import java.nio.channels.SelectionKey;
 import io.mycat.mycat2.MycatSession;
 import io.mycat.mycat2.cmds.DirectPassthrouhCmd;
 import io.mycat.mycat2.cmds.cache.mapcache.CacheManager;
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
 import io.mycat.mycat2.common.ChainExecInf;
 import io.mycat.mycat2.common.SeqContextList;
 import io.mycat.mycat2.console.SessionKeyEnum;
@@ -28,32 +29,29 @@ public class ResultOverFlag implements ChainExecInf {
 
 		MycatSession session = (MycatSession) seqList.getSession();
 
-		Boolean readOver = (Boolean) session.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER.getKey());
+		boolean readOver = session.hasFlag(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER);
 
 		// 首先检查读取是否完成
-		if (null != readOver && readOver) {
+		if (readOver) {
 			session.proxyBuffer.reset();
 
 			// 获取SQL
-			String selectSql = (String) session.getSessionAttrMap()
-					.get(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR.getKey());
+			SQLFingerprint cacheKey = (SQLFingerprint) session.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_KEY);
 			
 			//提交缓存修改操作
-			CacheManager.INSTANCE.commit(selectSql);
+			CacheManager.INSTANCE.commit(cacheKey);
 			// session.proxyBuffer.flip();
 			// 完成后，切换为读取
 			// session.takeOwner(SelectionKey.OP_READ);
 			session.change2ReadOpts();
-			session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG.getKey());
-			session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG.getKey());
+			session.removeAttr(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG);
+			session.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG, false);
 			// 移除数据缓存的偏移信息
-			session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG.getKey());
+			session.removeAttr(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG);
 
 			// 检查是否需要更新缓存缓存操作
 			// 打上标识，当响应前段完成后，进行缓存的清理
-			if (session.getSessionAttrMap()
-					.containsKey(SessionKeyEnum.SESSION_KEY_CACHE_DELETE_QUERY_FLAG_KEY.getKey())) {
+			if (session.hasFlag(SessionKeyEnum.SESSION_KEY_CACHE_DELETE_QUERY_FLAG_KEY)) {
 				// 添加标识当前
 				// 检查标识是否需要向后端发送缓存更新的SQL语句
 				return seqList.nextExec();
@@ -63,7 +61,7 @@ public class ResultOverFlag implements ChainExecInf {
 			else {
 
 				// 清理结束标识
-				session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER.getKey());
+				session.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER, false);
 				// 当完成之后，切换回透传流程处理
 				session.curSQLCommand = DirectPassthrouhCmd.INSTANCE;
 				return true;
@@ -73,29 +71,28 @@ public class ResultOverFlag implements ChainExecInf {
 
 			// 未完成，则检查偏移
 			long offset = 0;
-			if (session.getSessionAttrMap().containsKey(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG.getKey())) {
-				offset = (long) session.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG.getKey());
+			if (session.getAttr(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG) != null) {
+				offset = (long) session.getAttr(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG);
 			}
 
 			if (offset > 0) {
 				// 标识当前从缓存中提取数据
-				session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG.getKey(), true);
+				session.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG, true);
 
 				return seqList.nextExec();
 
 			} else {
 
-				Boolean check = (Boolean) session.curBackend.getSessionAttrMap()
-						.get(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+				boolean check = session.curBackend.isIdleMarked();
 
 				// 检查到当前已经完成,执行添加操作
-				if (null != check && check) {
-					session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG.getKey());
-					session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG.getKey());
+				if (check) {
+					session.removeAttr(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG);
+					session.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG, false);
 					// 移除数据缓存的偏移信息
-					session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG.getKey());
+					session.removeAttr(SessionKeyEnum.SESSION_KEY_GET_OFFSET_FLAG);
 					// 清理结束标识
-					session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER.getKey());
+					session.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_READY_OVER, false);
 
 				}
 
@@ -3,6 +3,7 @@ package io.mycat.mycat2.cmds.cache.directfrontchain.resulttomap.back;
 import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.beans.SqlCacheBean;
 import io.mycat.mycat2.cmds.cache.mapcache.CacheManager;
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
 import io.mycat.mycat2.common.ChainExecInf;
 import io.mycat.mycat2.common.SeqContextList;
 import io.mycat.mycat2.console.SessionKeyEnum;
@@ -28,27 +29,28 @@ public class BackEventProc implements ChainExecInf {
 		MySQLSession mysqlSession = (MySQLSession) seqList.getSession();
 
 		// 获取当前是否结束标识
-		Boolean check = (Boolean) mysqlSession.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+		boolean check = mysqlSession.isIdleMarked();
 
 		// 检查到当前已经完成
-		if (null != check && check) {
+		if (check) {
 			// 首先清除持端的事件
 			mysqlSession.clearReadWriteOpts();
 
-			String cacheSql = (String) mysqlSession.getMycatSession().getSessionAttrMap()
-					.get(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR.getKey());
-			// 获取缓存的的信息
-			SqlCacheBean sqlCache = CacheManager.INSTANCE.getCacheBean(cacheSql);
-			//设置过期时间
-			sqlCache.setTimeOut(System.currentTimeMillis() + sqlCache.getTimeOutCfg());
-			// 设置可用为true
-			sqlCache.getCacheMapFile().setCacheAvailable(true);
+			SQLFingerprint cacheKey = (SQLFingerprint) mysqlSession.getMycatSession().getAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_KEY);
+			// 获取缓存的的信息, 写入过程中缓存可能已经被淘汰或失效
+			SqlCacheBean sqlCache = CacheManager.INSTANCE.getCacheBean(cacheKey);
+			if (sqlCache != null) {
+				//设置过期时间
+				sqlCache.setTimeOut(System.currentTimeMillis() + sqlCache.getTimeOutCfg());
+				// 设置可用为true
+				sqlCache.getCacheMapFile().setCacheAvailable(true);
+			}
 
 			// 移除从缓存中获取数据的标识
-			mysqlSession.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG.getKey());
+			mysqlSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG, false);
 			// 移除SQL信息
-			mysqlSession.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR.getKey());
+			mysqlSession.removeAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR);
+			mysqlSession.removeAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_KEY);
 
 			// 同时修改缓存数据可用
 
@@ -31,8 +31,7 @@ public class CacheFlowCheck implements ChainExecInf {
 		MySQLSession mysqlSession = (MySQLSession) seqList.getSession();
 
 		// 1,检查是否进行缓存添加的流程
-		if (mysqlSession.getMycatSession().getSessionAttrMap()
-				.containsKey(SessionKeyEnum.SESSION_KEY_CACHE_ADD_FLAG_KEY.getKey())) {
+		if (mysqlSession.getMycatSession().hasFlag(SessionKeyEnum.SESSION_KEY_CACHE_ADD_FLAG_KEY)) {
 			// 继续进行下一个流程
 			return seqList.nextExec();
 		} else {
@@ -58,14 +57,13 @@ public class CacheFlowCheck implements ChainExecInf {
 		} while (nextReadFlag);
 
 		// 获取当前是否结束标识
-		Boolean check = (Boolean) mysqlSession.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+		boolean check = mysqlSession.isIdleMarked();
 
 		MycatSession mycatSession = mysqlSession.getMycatSession();
 
 		buffer.flip();
 		// 检查到当前已经完成,执行添加操作
-		if (null != check && check) {
+		if (check) {
 			// 当知道操作完成后，前段的注册感兴趣事件为读取
 			mycatSession.takeOwner(SelectionKey.OP_READ);
 		}
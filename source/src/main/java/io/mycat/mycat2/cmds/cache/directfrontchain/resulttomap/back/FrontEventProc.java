@@ -28,8 +28,7 @@ public class FrontEventProc implements ChainExecInf {
 		MySQLSession mysqlSession = (MySQLSession) seqList.getSession();
 
 		// 1,检查当前是否需写入前端
-		boolean rspFront = (boolean) mysqlSession.getMycatSession().getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY.getKey());
+		boolean rspFront = mysqlSession.getMycatSession().hasFlag(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY);
 
 		if (rspFront) {
 			ProxyBuffer curBuffer = mysqlSession.proxyBuffer;
@@ -52,11 +51,10 @@ public class FrontEventProc implements ChainExecInf {
 		}
 
 		// 获取当前是否结束标识
-		Boolean check = (Boolean) mysqlSession.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+		boolean check = mysqlSession.isIdleMarked();
 
 		// 检查到当前已经完成
-		if (null != check && check) {
+		if (check) {
 			// 注册前段的读取事件
 			mysqlSession.getMycatSession().change2ReadOpts();
 			// 当检查到已经完成时，前段需要获得控制权
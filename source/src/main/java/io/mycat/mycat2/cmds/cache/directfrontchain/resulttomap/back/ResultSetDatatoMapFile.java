@@ -2,6 +2,7 @@ package io.mycat.mycat2.cmds.cache.directfrontchain.resulttomap.back;
 
 import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.cmds.cache.mapcache.CacheManager;
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
 import io.mycat.mycat2.common.ChainExecInf;
 import io.mycat.mycat2.common.SeqContextList;
 import io.mycat.mycat2.console.SessionKeyEnum;
@@ -29,18 +30,17 @@ public class ResultSetDatatoMapFile implements ChainExecInf {
 		MySQLSession mysqlSession = (MySQLSession) seqList.getSession();
 
 		// 如果当前为结果集结存
-		int type = (int) mysqlSession.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_PKG_TYPE_KEY.getKey());
+		int type = (int) mysqlSession.getAttr(SessionKeyEnum.SESSION_KEY_PKG_TYPE_KEY);
 
 		// 如果为查询则放入
 		if (MySQLPacket.RESULTSET_PACKET == type) {
 
-			String cacheSql = (String) mysqlSession.getMycatSession().getSessionAttrMap()
-					.get(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR.getKey());
+			SQLFingerprint cacheKey = (SQLFingerprint) mysqlSession.getMycatSession().getAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_KEY);
 
-			// 此处需要进行加锁操作，以防止 多个连接同时进行缓存的更新操作
+			// 只有开始更新缓存的线程可以写入, 见 CacheManager.begin
 			ProxyBuffer buffer = mysqlSession.getProxyBuffer();
 			// 进行缓存数据的写入
-			CacheManager.INSTANCE.putCacheData(cacheSql, buffer);
+			CacheManager.INSTANCE.putCacheData(cacheKey, buffer);
 
 			return seqList.nextExec();
 		}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import io.mycat.mycat2.MycatSession;
 import io.mycat.mycat2.beans.SqlCacheBean;
 import io.mycat.mycat2.cmds.cache.mapcache.CacheManager;
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
 import io.mycat.mycat2.cmds.sqlCmds.CacheMapFileCommand;
 import io.mycat.mycat2.common.ChainExecInf;
 import io.mycat.mycat2.common.SeqContextList;
@@ -31,47 +32,45 @@ public class CacheExistsCheck implements ChainExecInf {
 
 		MycatSession mycatSession = (MycatSession) seqList.getSession();
 
-		String sql = (String) mycatSession.getSessionAttrMap().get(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR.getKey());
+		SQLFingerprint cacheKey = (SQLFingerprint) mycatSession.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_KEY);
 
 		// 检查缓存是否存在
-		boolean exists = CacheManager.INSTANCE.cacheExists(sql);
+		boolean exists = CacheManager.INSTANCE.cacheExists(cacheKey);
 
 		// 当缓存不存在时，创建缓存
 		if (!exists) {
 
-			long cacheTime = (long) mycatSession.getSessionAttrMap()
-					.get(SessionKeyEnum.SESSION_KEY_CACHE_TIMEOUT.getKey());
+			long cacheTime = (long) mycatSession.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_TIMEOUT);
 
 			// 标识当前缓存放入开始
-			boolean upd = CacheManager.INSTANCE.begin(sql);
+			boolean upd = CacheManager.INSTANCE.begin(cacheKey);
 
 			if (upd) {
 				// 添加缓存操作
-				addCache(mycatSession, sql, true, (int) cacheTime);
+				addCache(mycatSession, cacheKey, true, (int) cacheTime);
 			}
 
 			return true;
 		}
 		// 如果缓存已经存在，则检查可用性
 		else {
-			SqlCacheBean sqlBean = CacheManager.INSTANCE.getCacheBean(sql);
+			SqlCacheBean sqlBean = CacheManager.INSTANCE.getCacheBean(cacheKey);
 
 			// 检查当前是否可用
 			if (sqlBean != null && sqlBean.getCacheMapFile().isCacheAvailable()) {
 				// 获取临近过期时间的配制
-				long cacheTimeOut = (long) mycatSession.getSessionAttrMap()
-						.get(SessionKeyEnum.SESSION_KEY_CACHE_TIMEOUT_CRITICAL.getKey());
+				long cacheTimeOut = (long) mycatSession.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_TIMEOUT_CRITICAL);
 
 				long currTime = System.currentTimeMillis();
 
 				// 如果当前缓存已经过期,重新加载数据，返回前段
 				if (currTime >= sqlBean.getTimeOut()) {
 					// 标识当前缓存放入开始
-					boolean upd = CacheManager.INSTANCE.begin(sql);
+					boolean upd = CacheManager.INSTANCE.begin(cacheKey);
 
 					if (upd) {
 						// 先将数据进行清理，再进行将缓存更新
-						CacheManager.INSTANCE.cleanCacheData(sql);
+						CacheManager.INSTANCE.cleanCacheData(cacheKey);
 						// 再添加缓存据据,返回响应给前段
 						timeOueryCache(mycatSession);
 					}
@@ -80,15 +79,13 @@ public class CacheExistsCheck implements ChainExecInf {
 				else if (currTime + cacheTimeOut >= sqlBean.getTimeOut()) {
 
 					// 标识当前响应前段
-					mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY.getKey(),
-							true);
+					mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY, true);
 
 					// 标识当前需要从缓存中获取的标识
-					mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG.getKey(), true);
+					mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG, true);
 
 					// 打上标识，当响应前段完成后，进行缓存的清理
-					mycatSession.getSessionAttrMap()
-							.put(SessionKeyEnum.SESSION_KEY_CACHE_DELETE_QUERY_FLAG_KEY.getKey(), true);
+					mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_DELETE_QUERY_FLAG_KEY, true);
 
 					// 进行数据的读取流程
 					mycatSession.curSQLCommand = CacheMapFileCommand.INSTANCE;
@@ -99,11 +96,10 @@ public class CacheExistsCheck implements ChainExecInf {
 				// 未过期，直接从缓存中读取
 				else {
 					// 标识当前响应前段
-					mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY.getKey(),
-							true);
+					mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY, true);
 
 					// 标识当前需要从缓存中获取的标识
-					mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG.getKey(), true);
+					mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_GET_FLAG, true);
 
 					// 进行数据的读取流程
 					mycatSession.curSQLCommand = CacheMapFileCommand.INSTANCE;
@@ -121,14 +117,14 @@ public class CacheExistsCheck implements ChainExecInf {
 	 * 
 	 * @param mycatSession
 	 *            session信息
-	 * @param sql
-	 *            缓存的SQL
+	 * @param cacheKey
+	 *            缓存的key
 	 * @param rspFront
 	 *            是否响应前段
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
-	private void addCache(MycatSession mycatSession, String sql, boolean rspFront, int timeOut)
+	private void addCache(MycatSession mycatSession, SQLFingerprint cacheKey, boolean rspFront, int timeOut)
 			throws IOException, InterruptedException {
 		// 过期时间为2分钟
 		// int timeOut = 2 * 60;
@@ -136,13 +132,16 @@ public class CacheExistsCheck implements ChainExecInf {
 		int mapMemory = mycatSession.getProxyBuffer().getBuffer().capacity();
 
 		// 创建一个SQL缓存,当这个缓存不存在时
-		CacheManager.INSTANCE.createCache(sql, timeOut, mapMemory);
+		String sql = (String) mycatSession.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR);
+		String schema = mycatSession.schema == null ? null : mycatSession.schema.getName();
+		CacheManager.INSTANCE.createCache(cacheKey, sql, CacheManager.getTables(mycatSession.sqlContext, schema), timeOut,
+				mapMemory);
 
 		// 标识当前添加缓存操作
-		mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_ADD_FLAG_KEY.getKey(), true);
+		mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_ADD_FLAG_KEY, true);
 
 		// 标识当前缓存需要响应前端
-		mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY.getKey(), rspFront);
+		mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY, rspFront);
 
 		// // 将当前的SQLcommand切换到缓存数据响应的写入
 		// mycatSession.curSQLCommand = CacheMapFileCommand.INSTANCE;
@@ -176,10 +175,10 @@ public class CacheExistsCheck implements ChainExecInf {
 	 */
 	private void timeOueryCache(MycatSession mycatSession) throws IOException {
 		// 标识当前添加缓存操作
-		mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_ADD_FLAG_KEY.getKey(), true);
+		mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_ADD_FLAG_KEY, true);
 
 		// 标识当前缓存需要响应前端
-		mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY.getKey(), true);
+		mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_CACHE_WRITE_FRONT_FLAG_KEY, true);
 
 		// 将当前的SQLcommand切换到缓存数据响应的写入
 		// mycatSession.curSQLCommand = CacheMapFileCommand.INSTANCE;
@@ -204,8 +203,7 @@ public class CacheExistsCheck implements ChainExecInf {
 
 	private void queryBufferPkg(MycatSession mycatSession) {
 		// 将当前的SQL信息放入到session中
-		String selectSql = (String) mycatSession.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR.getKey());
+		String selectSql = (String) mycatSession.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR);
 
 		// buffer查询
 		ProxyBuffer proxyBuf = mycatSession.proxyBuffer;
@@ -1,14 +1,30 @@
 package io.mycat.mycat2.cmds.cache.mapcache;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import io.mycat.mycat2.MycatConfig;
+import io.mycat.mycat2.MycatSession;
 import io.mycat.mycat2.beans.SqlCacheBean;
+import io.mycat.mycat2.beans.SqlCacheMapFileBean;
+import io.mycat.mycat2.beans.conf.ProxyBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.proxy.ConfigEnum;
 import io.mycat.proxy.ProxyBuffer;
+import io.mycat.proxy.ProxyRuntime;
 
 /**
  * 用于进行缓存的管理操作
- * 
+ * 1. 缓存以 {@link SQLFingerprint} 为key, 空白、注释、关键字大小写不同的sql共用缓存
+ * 2. 所有缓存文件的总大小超过上限时, 淘汰最久未访问的缓存
+ * 3. 解析到 insert/update/delete/replace 等修改数据的sql时, 读取了被修改表的缓存立即失效.
+ *    表按 schema.table 区分, 没有指定 schema 的表使用会话当前的 schema
+ *
  * @since 2017年9月12日 上午12:56:20
  * @version 0.0.1
  * @author liujun
@@ -18,40 +34,86 @@ public class CacheManager {
 	/**
 	 * 缓存管理的实例对象
 	 */
-	public static final CacheManager INSTANCE = new CacheManager();
+	public static final CacheManager INSTANCE = new CacheManager(0);
 
 	/**
 	 * 缓存管理mapbean信息
 	 */
-	private static final ConcurrentHashMap<String, SqlCacheBean> CACHEBEANMAP = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<SQLFingerprint, SqlCacheBean> cacheBeanMap = new ConcurrentHashMap<>();
+
+	/**
+	 * schema.table 与读取了该表的缓存
+	 */
+	private final ConcurrentHashMap<String, Set<SQLFingerprint>> tableIndex = new ConcurrentHashMap<>();
+
+	/**
+	 * 放入缓存并登记表的过程与表的失效互斥, 以免失效时漏掉正在放入的缓存
+	 */
+	private final Object indexLock = new Object();
+
+	/**
+	 * 按访问顺序排列的缓存, 头部为最久未访问的缓存, 由 indexLock 保护
+	 */
+	private final LinkedHashMap<SQLFingerprint, SqlCacheBean> lru = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * 所有缓存文件的总大小
+	 */
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	/**
+	 * 同时只有一个线程进行淘汰
+	 */
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	/**
+	 * 缓存文件总大小的上限, 小于等于0时使用配置的值
+	 */
+	private final long cacheLimit;
+
+	CacheManager(long cacheLimit) {
+		this.cacheLimit = cacheLimit;
+	}
+
+	private long cacheLimit() {
+		if (cacheLimit > 0) {
+			return cacheLimit;
+		}
+		MycatConfig config = ProxyRuntime.INSTANCE.getConfig();
+		ProxyConfig proxyConfig = config == null ? null : config.getConfig(ConfigEnum.PROXY);
+		return proxyConfig == null ? ProxyBean.DEFAULT_RESULT_CACHE_LIMIT : proxyConfig.getProxy().getResultCacheLimit();
+	}
 
 	/**
 	 * 检查缓存是否存在
-	 * 
-	 * @param cacheSql
+	 *
+	 * @param cacheKey
 	 * @return true 缓存已经存 false 缓存 不存在
 	 */
-	public boolean cacheExists(String cacheSql) {
-		return CACHEBEANMAP.containsKey(cacheSql);
+	public boolean cacheExists(SQLFingerprint cacheKey) {
+		return cacheBeanMap.containsKey(cacheKey);
 	}
 
 	/**
 	 * 创建一个缓存对象
-	 * 
+	 *
+	 * @param cacheKey
+	 *            缓存的key
 	 * @param cacheSql
+	 *            缓存的SQL
+	 * @param tables
+	 *            sql读取的表, 见 {@link #getTables(BufferSQLContext, String)}
 	 * @param timeout
 	 *            过期时间以秒为单位
-	 * @param buffer
-	 *            读取的buffer信息
 	 * @param size
 	 *            内存映射的大小
-	 * @return 返回映射的hash码
 	 * @throws InterruptedException
 	 * @throws IOException
 	 */
-	public void createCache(String cacheSql, int timeout, int size) throws IOException, InterruptedException {
+	public void createCache(SQLFingerprint cacheKey, String cacheSql, String[] tables, int timeout, int size)
+			throws IOException, InterruptedException {
 
-		if (!CACHEBEANMAP.contains(cacheSql)) {
+		if (!cacheBeanMap.containsKey(cacheKey)) {
 			SqlCacheBean cacheBean = new SqlCacheBean();
 
 			cacheBean.setProcTime(System.currentTimeMillis());
@@ -59,36 +121,42 @@ public class CacheManager {
 			cacheBean.setTimeOut(System.currentTimeMillis() + timeout * 1000);
 			cacheBean.setSqlReadNum(0);
 			cacheBean.setSql(cacheSql);
+			cacheBean.setKey(cacheKey);
+			cacheBean.setTables(tables);
 
 			// 初始化内存块影射
 			cacheBean.setCacheMapFile(MapFileCacheImp.INSTANCE.createCacheFile(cacheSql.getBytes(), size));
 
-			SqlCacheBean result = CACHEBEANMAP.putIfAbsent(cacheSql, cacheBean);
+			// 先放入缓存再登记表与缓存的关系, 失效在这之前或之后完成, 不会只看到其中一半
+			SqlCacheBean result;
+			synchronized (indexLock) {
+				result = cacheBeanMap.putIfAbsent(cacheKey, cacheBean);
+				if (result == null) {
+					lru.put(cacheKey, cacheBean);
+					for (String table : tables) {
+						tableIndex.computeIfAbsent(table, k -> ConcurrentHashMap.newKeySet()).add(cacheKey);
+					}
+				}
+			}
 
 			// 当发现已经存在相同的,进行缓存的清理操作
-			if (result != cacheBean && result != null) {
+			if (result != null) {
 				MapFileCacheImp.INSTANCE.close(cacheBean.getCacheMapFile());
-				cacheBean = null;
 			}
 		}
 	}
 
 	/**
 	 * 将线程id锁定的表中
-	 * 
-	 * @param cacheSql
+	 *
+	 * @param cacheKey
 	 * @return
 	 */
-	public boolean begin(String cacheSql) {
-		if (CACHEBEANMAP.containsKey(cacheSql)) {
-
-			// 获取当前线程的
-			long id = Thread.currentThread().getId();
-
-			SqlCacheBean cacheBean = CACHEBEANMAP.get(cacheSql);
-
+	public boolean begin(SQLFingerprint cacheKey) {
+		SqlCacheBean cacheBean = cacheBeanMap.get(cacheKey);
+		if (cacheBean != null) {
 			// 返回将线程的更新的结果
-			return cacheBean.getCacheThreadId().compareAndSet(0, id);
+			return cacheBean.getCacheThreadId().compareAndSet(0, Thread.currentThread().getId());
 		}
 
 		return false;
@@ -96,145 +164,323 @@ public class CacheManager {
 
 	/**
 	 * 完成将状态修改为完成
-	 * 
-	 * @param cacheSql
+	 *
+	 * @param cacheKey
 	 * @return
 	 */
-	public boolean commit(String cacheSql) {
-		if (CACHEBEANMAP.containsKey(cacheSql)) {
-
-			// 获取当前线程的
-			long id = Thread.currentThread().getId();
-
-			SqlCacheBean cacheBean = CACHEBEANMAP.get(cacheSql);
-
+	public boolean commit(SQLFingerprint cacheKey) {
+		SqlCacheBean cacheBean = cacheBeanMap.get(cacheKey);
+		if (cacheBean != null) {
 			// 返回将线程的更新的结果
-			return cacheBean.getCacheThreadId().compareAndSet(id, 0);
+			return cacheBean.getCacheThreadId().compareAndSet(Thread.currentThread().getId(), 0);
 		}
 
 		return false;
 	}
 
 	/**
-	 * 向缓存中放入数据
-	 * 
-	 * @param cacheSql
-	 *            缓存的SQL信息
+	 * 向缓存中放入数据, 只有 {@link #begin(SQLFingerprint)} 成功的线程可以写入
+	 *
+	 * @param cacheKey
+	 *            缓存的key
 	 * @param buffer
 	 *            buffer信息
-	 * @throws InterruptedException
-	 * @throws IOException
+	 * @throws Exception
 	 */
-	public void putCacheData(String cacheSql, ProxyBuffer buffer) throws Exception {
-		if (CACHEBEANMAP.containsKey(cacheSql)) {
-
-			// 获取当前线程的
-			long id = Thread.currentThread().getId();
-
-			SqlCacheBean cacheBean = CACHEBEANMAP.get(cacheSql);
-
-			// 限制放入线程的数据将数据放入完成
-			if (cacheBean.getCacheThreadId().get() == id) {
-				// 向缓存中写入数据
-				MapFileCacheImp.INSTANCE.putCacheData(buffer, cacheBean.getCacheMapFile());
+	public void putCacheData(SQLFingerprint cacheKey, ProxyBuffer buffer) throws Exception {
+		SqlCacheBean cacheBean = cacheBeanMap.get(cacheKey);
+
+		// 限制放入线程的数据将数据放入完成
+		if (cacheBean != null && cacheBean.getCacheThreadId().get() == Thread.currentThread().getId()) {
+			SqlCacheMapFileBean mapFile = cacheBean.getCacheMapFile();
+			// 写入过程中缓存可能被淘汰或失效, 持有引用以免文件被关闭
+			if (!MapFileCacheImp.INSTANCE.retain(mapFile)) {
+				return;
+			}
+			try {
+				long before = mapFile.getPutOption();
+				MapFileCacheImp.INSTANCE.putCacheData(buffer, mapFile);
+				addCacheBytes(cacheBean, mapFile.getPutOption() - before);
+			} finally {
+				MapFileCacheImp.INSTANCE.release(mapFile);
+			}
+			if (usedBytes.get() > cacheLimit()) {
+				evict();
 			}
 		}
 	}
 
 	/**
 	 * 清理缓存中的数据
-	 * 
-	 * @param cacheSql
-	 *            缓存的SQL信息
-	 * @param buffer
-	 *            buffer信息
+	 *
+	 * @param cacheKey
+	 *            缓存的key
 	 * @throws Exception
 	 */
-	public void cleanCacheData(String cacheSql) throws Exception {
-
-		if (CACHEBEANMAP.containsKey(cacheSql)) {
-
-			// 获取当前线程的
-			long id = Thread.currentThread().getId();
-
-			SqlCacheBean cacheBean = CACHEBEANMAP.get(cacheSql);
-
-			// 限制放入线程的数据将数据放入完成
-			if (cacheBean.getCacheThreadId().get() == id) {
-				// 向缓存中写入数据
-				// MapFileCacheImp.INSTANCE.putCacheData(buffer,
-				// cacheBean.getCacheMapFile());
-				// 重新设置新的缓存文件映射对象
-				cacheBean.setCacheMapFile(MapFileCacheImp.INSTANCE.clean(cacheBean.getCacheMapFile()));
+	public void cleanCacheData(SQLFingerprint cacheKey) throws Exception {
+		SqlCacheBean cacheBean = cacheBeanMap.get(cacheKey);
+
+		// 限制放入线程的数据将数据放入完成
+		if (cacheBean != null && cacheBean.getCacheThreadId().get() == Thread.currentThread().getId()) {
+			SqlCacheMapFileBean mapFile = MapFileCacheImp.INSTANCE.createCacheFile(null,
+					cacheBean.getCacheMapFile().getCacheSize());
+			synchronized (cacheBean) {
+				if (cacheBeanMap.get(cacheKey) == cacheBean) {
+					// 重新设置新的缓存文件映射对象, 旧文件在正在进行的读取完成后关闭
+					MapFileCacheImp.INSTANCE.release(cacheBean.getCacheMapFile());
+					cacheBean.setCacheMapFile(mapFile);
+					usedBytes.addAndGet(-cacheBean.getCacheBytes());
+					cacheBean.setCacheBytes(0);
+					return;
+				}
 			}
+			MapFileCacheImp.INSTANCE.close(mapFile);
 		}
 	}
 
 	/**
 	 * 设置缓存可以或者失效
-	 * 
-	 * @param cacheSql
+	 *
+	 * @param cacheKey
 	 * @param flag
 	 */
-	public void setCacheAvailable(String cacheSql, boolean flag) {
-		if (CACHEBEANMAP.containsKey(cacheSql)) {
-
-			// 获取当前线程的
-			long id = Thread.currentThread().getId();
+	public void setCacheAvailable(SQLFingerprint cacheKey, boolean flag) {
+		SqlCacheBean cacheBean = cacheBeanMap.get(cacheKey);
 
-			SqlCacheBean cacheBean = CACHEBEANMAP.get(cacheSql);
-
-			// 限制放入线程的数据将数据放入完成
-			if (cacheBean.getCacheThreadId().get() == id) {
-				// 向缓存中写入数据
-				// MapFileCacheImp.INSTANCE.putCacheData(buffer,
-				// cacheBean.getCacheMapFile());
-				// 重新设置新的缓存文件映射对象
-				cacheBean.getCacheMapFile().setCacheAvailable(flag);
-			}
+		// 限制放入线程的数据将数据放入完成
+		if (cacheBean != null && cacheBean.getCacheThreadId().get() == Thread.currentThread().getId()) {
+			cacheBean.getCacheMapFile().setCacheAvailable(flag);
 		}
 	}
 
 	/**
 	 * 获取缓存信息
-	 * 
-	 * @param cacheSql
-	 *            缓存的SQL信息
-	 * @return 缓存的状态，true 有效 false 失效
+	 *
+	 * @param cacheKey
+	 *            缓存的key
+	 * @return 缓存信息, 不存在时返回null
 	 */
-	public SqlCacheBean getCacheBean(String cacheSql) {
-		if (CACHEBEANMAP.containsKey(cacheSql)) {
-			return CACHEBEANMAP.get(cacheSql);
-		}
-
-		return null;
+	public SqlCacheBean getCacheBean(SQLFingerprint cacheKey) {
+		return cacheBeanMap.get(cacheKey);
 	}
 
 	/**
 	 * 获取缓存的数据
-	 * 
+	 *
 	 * @param buffer
 	 *            偏移的对象信息
-	 * @param cacheSql
-	 *            缓存的SQL信息
+	 * @param cacheKey
+	 *            缓存的key
 	 * @param offset
 	 *            偏移量
-	 * @return 当前的偏移量
+	 * @return 当前的偏移量, 缓存不存在时返回-1
 	 * @throws IOException
 	 *             异常信息
 	 */
-	public long getCacheValue(ProxyBuffer buffer, String cacheSql, long offset) throws IOException {
-		if (CACHEBEANMAP.containsKey(cacheSql)) {
-			SqlCacheBean cacheBean = CACHEBEANMAP.get(cacheSql);
+	public long getCacheValue(ProxyBuffer buffer, SQLFingerprint cacheKey, long offset) throws IOException {
+		SqlCacheMapFileBean mapFile = retainCacheFile(cacheKey);
+		if (mapFile != null) {
+			try {
+				return MapFileCacheImp.INSTANCE.getByte(buffer, mapFile, offset);
+			} finally {
+				MapFileCacheImp.INSTANCE.release(mapFile);
+			}
+		}
+		return -1;
+	}
 
-			// 设置当前的时间
-			cacheBean.setProcTime(System.currentTimeMillis());
-			// 读取次数加1
-			cacheBean.setSqlReadNum(cacheBean.getSqlReadNum() + 1);
+	/**
+	 * 把缓存的结果集通过 FileChannel.transferTo 直接写往前端, 不再逐块复制到 ProxyBuffer.
+	 * 写出期间持有缓存文件的引用, 缓存被清理或淘汰时旧文件在写完后才删除, 各个会话的读取互不阻塞
+	 *
+	 * @return 缓存不存在时返回false
+	 */
+	public boolean transferTo(MycatSession session, SQLFingerprint cacheKey) throws IOException {
+		SqlCacheMapFileBean mapFile = retainCacheFile(cacheKey);
+		if (mapFile == null) {
+			return false;
+		}
+		session.transferFile(mapFile.getChannel(), 0, mapFile.getPutOption(),
+				() -> MapFileCacheImp.INSTANCE.release(mapFile));
+		return true;
+	}
 
-			return MapFileCacheImp.INSTANCE.getByte(buffer, cacheBean.getCacheMapFile(), offset);
+	/**
+	 * 记录访问并持有缓存文件的引用, 使用完后需要调用 {@link MapFileCacheImp#release}
+	 *
+	 * @return 缓存不存在或文件已经关闭时返回null
+	 */
+	SqlCacheMapFileBean retainCacheFile(SQLFingerprint cacheKey) {
+		SqlCacheBean cacheBean = cacheBeanMap.get(cacheKey);
+		if (cacheBean == null) {
+			return null;
 		}
-		return -1;
+		// 设置当前的时间
+		cacheBean.setProcTime(System.currentTimeMillis());
+		// 移到访问顺序的尾部
+		synchronized (indexLock) {
+			lru.get(cacheKey);
+		}
+		// 读取次数加1
+		cacheBean.setSqlReadNum(cacheBean.getSqlReadNum() + 1);
+
+		SqlCacheMapFileBean mapFile = cacheBean.getCacheMapFile();
+		return MapFileCacheImp.INSTANCE.retain(mapFile) ? mapFile : null;
+	}
+
+	/**
+	 * 解析到修改数据的sql时, 使读取了被修改表的缓存失效
+	 *
+	 * @param schema
+	 *            会话当前的 schema, 用于没有指定 schema 的表
+	 */
+	public void invalidate(BufferSQLContext context, String schema) {
+		if (cacheBeanMap.isEmpty()) {
+			return;
+		}
+		for (int i = 0, sqlCount = context.getSQLCount(); i < sqlCount; i++) {
+			if (isModifySQL(context.getSQLType(i))) {
+				for (int j = 0, tblCount = context.getSQLTblCount(i); j < tblCount; j++) {
+					invalidate(tableKey(context, i, j, schema));
+				}
+			}
+		}
+	}
+
+	/**
+	 * 使读取了该表的缓存失效
+	 */
+	public void invalidate(String schema, String table) {
+		invalidate(tableKey(schema, table));
+	}
+
+	private void invalidate(String tableKey) {
+		Set<SQLFingerprint> cacheKeys;
+		synchronized (indexLock) {
+			cacheKeys = tableIndex.remove(tableKey);
+		}
+		if (cacheKeys != null) {
+			for (SQLFingerprint cacheKey : cacheKeys) {
+				SqlCacheBean cacheBean = cacheBeanMap.get(cacheKey);
+				if (cacheBean != null) {
+					remove(cacheBean);
+				}
+			}
+		}
+	}
+
+	private static boolean isModifySQL(byte sqlType) {
+		switch (sqlType) {
+		case BufferSQLContext.INSERT_SQL:
+		case BufferSQLContext.UPDATE_SQL:
+		case BufferSQLContext.DELETE_SQL:
+		case BufferSQLContext.REPLACE_SQL:
+		case BufferSQLContext.LOAD_SQL:
+		case BufferSQLContext.TRUNCATE_SQL:
+		case BufferSQLContext.ALTER_SQL:
+		case BufferSQLContext.DROP_SQL:
+		case BufferSQLContext.RENAME_SQL:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * 第一条sql读取的表, 格式为 schema.table
+	 *
+	 * @param schema
+	 *            会话当前的 schema, 用于没有指定 schema 的表
+	 */
+	public static String[] getTables(BufferSQLContext context, String schema) {
+		int count = context.getSQLTblCount(0);
+		String[] tables = new String[count];
+		for (int i = 0; i < count; i++) {
+			tables[i] = tableKey(context, 0, i, schema);
+		}
+		return tables;
+	}
+
+	private static String tableKey(BufferSQLContext context, int sqlIdx, int tblIdx, String schema) {
+		String tableSchema = context.getSQLSchemaName(sqlIdx, tblIdx);
+		return tableKey(tableSchema == null ? schema : tableSchema, context.getSQLTableName(sqlIdx, tblIdx));
+	}
+
+	private static String tableKey(String schema, String table) {
+		String name = table.replace("`", "").toLowerCase();
+		return schema == null ? name : schema.replace("`", "").toLowerCase() + '.' + name;
+	}
+
+	/**
+	 * 从访问顺序的头部淘汰最久未访问的缓存, 直到总大小不超过上限
+	 */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			long limit = cacheLimit();
+			while (usedBytes.get() > limit) {
+				SqlCacheBean eldest;
+				synchronized (indexLock) {
+					if (lru.isEmpty()) {
+						break;
+					}
+					eldest = lru.values().iterator().next();
+				}
+				remove(eldest);
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	private void remove(SqlCacheBean cacheBean) {
+		SQLFingerprint cacheKey = cacheBean.getKey();
+		synchronized (indexLock) {
+			if (!cacheBeanMap.remove(cacheKey, cacheBean)) {
+				return;
+			}
+			lru.remove(cacheKey);
+			for (String table : cacheBean.getTables()) {
+				Set<SQLFingerprint> cacheKeys = tableIndex.get(table);
+				if (cacheKeys != null) {
+					cacheKeys.remove(cacheKey);
+				}
+			}
+		}
+		synchronized (cacheBean) {
+			usedBytes.addAndGet(-cacheBean.getCacheBytes());
+			cacheBean.setCacheBytes(0);
+			// 正在读取的数据完成后才关闭文件
+			MapFileCacheImp.INSTANCE.release(cacheBean.getCacheMapFile());
+		}
+	}
+
+	/**
+	 * 累计缓存文件的大小, 缓存已经移除时不再累计
+	 */
+	private void addCacheBytes(SqlCacheBean cacheBean, long bytes) {
+		synchronized (cacheBean) {
+			if (cacheBeanMap.get(cacheBean.getKey()) == cacheBean) {
+				usedBytes.addAndGet(bytes);
+				cacheBean.setCacheBytes(cacheBean.getCacheBytes() + bytes);
+			}
+		}
+	}
+
+	/**
+	 * 缓存的数量
+	 */
+	public int size() {
+		return cacheBeanMap.size();
+	}
+
+	/**
+	 * 所有缓存文件的总大小
+	 */
+	public long getUsedBytes() {
+		return usedBytes.get();
 	}
 
 }
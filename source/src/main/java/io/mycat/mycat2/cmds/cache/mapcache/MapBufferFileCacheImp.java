@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -193,6 +192,10 @@ public class MapBufferFileCacheImp implements CacheInf<SqlCacheMapFileBean> {
 
 	}
 
+	/**
+	 * 读取数据. 每次读取使用映射区域的独立视图(duplicate), 不修改共享的 position/limit,
+	 * 多个读取者之间以及与写入之间互不阻塞, 按块批量复制, 不再逐字节读取
+	 */
 	public long getByte(ProxyBuffer proBuffer, SqlCacheMapFileBean cacheResult, long offset) throws IOException {
 
 		long length = cacheResult.getPutOption();
@@ -204,38 +207,19 @@ public class MapBufferFileCacheImp implements CacheInf<SqlCacheMapFileBean> {
 
 		ByteBuffer buffer = proBuffer.getBuffer();
 
-		MappedByteBuffer mapbuffer = cacheResult.getMappedBuffer();
+		// 本次最多读取到 buffer 剩余的空间
+		long endPosition = Math.min(length, offset + buffer.capacity() - proBuffer.writeIndex);
 
-		// 检查结果集是否需要多次的返回
-		if (buffer.limit() > length) {
+		ByteBuffer slice = cacheResult.getMappedBuffer().duplicate();
+		slice.limit((int) endPosition);
+		slice.position((int) offset);
 
-			mapbuffer.position(0);
-			for (int i = 0; i < length; i++) {
-				proBuffer.writeByte(mapbuffer.get());
-				// proBuffer.writeByte(unsafe.getByte(getIndex(cacheResult,
-				// i)));
-			}
-		} else {
-			int startPosition = (int) offset;
-			long endPosition = offset;
-			// 如果最后一次数据，则以最长的标识为准备，不能超过
-			if (offset + buffer.limit() >= length) {
-				endPosition = length;
-			}
-			// 中间的数据按依稀进行读取
-			else {
-				endPosition = offset + buffer.limit();
-			}
-
-			mapbuffer.position(startPosition);
-			// 进行数据填充
-			for (int i = startPosition; i < endPosition; i++) {
-				proBuffer.writeByte(mapbuffer.get());
-			}
-
-		}
+		buffer.limit(buffer.capacity());
+		buffer.position(proBuffer.writeIndex);
+		buffer.put(slice);
+		proBuffer.writeIndex = buffer.position();
 
-		return length;
+		return endPosition;
 
 	}
 
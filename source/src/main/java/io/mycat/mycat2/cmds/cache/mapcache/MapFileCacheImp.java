@@ -6,6 +6,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -109,16 +110,11 @@ public class MapFileCacheImp implements CacheInf<SqlCacheMapFileBean> {
 		return sqlCahce;
 	}
 
+	/**
+	 * 写入数据, 同一个缓存同时只有一个线程写入(见 {@link CacheManager#begin}), 无需加锁
+	 */
 	public void putCacheData(ProxyBuffer proBuffer, SqlCacheMapFileBean cacheResult) throws Exception {
-
-		// 进行加锁操作
-		boolean lock = false;
-
 		try {
-			cacheResult.getSemap().acquire();
-
-			lock = true;
-
 			ByteBuffer buffer = proBuffer.getBuffer();
 			buffer.limit(proBuffer.readIndex);
 			buffer.position(proBuffer.readMark);
@@ -131,85 +127,82 @@ public class MapFileCacheImp implements CacheInf<SqlCacheMapFileBean> {
 
 		} catch (IOException e) {
 			logger.error("MapFileCacheImp putCacheData IOException", e);
-			e.printStackTrace();
 			throw e;
-		} finally {
-			// 仅当加锁成功后才释放许可
-			if (lock) {
-				// 释放加锁的许可
-				cacheResult.getSemap().release();
-			}
-
 		}
-
 	}
 
+	/**
+	 * 按位置读取数据, 不修改通道的位置, 可以与写入及其他读取并发执行
+	 */
 	public long getByte(ProxyBuffer proBuffer, SqlCacheMapFileBean cacheResult, long offset) throws IOException {
 
-		// 进行加锁操作
-		boolean lock = false;
-		try {
-			cacheResult.getSemap().acquire();
-			lock = true;
+		long length = cacheResult.getPutOption();
 
-			long length = cacheResult.getPutOption();
+		// 如果当前领移的数据超过了大小，则不处理
+		if (offset > length) {
+			return -1;
+		}
 
-			// 如果当前领移的数据超过了大小，则不处理
-			if (offset > length) {
-				return -1;
-			}
+		ByteBuffer valueBuff = proBuffer.getBuffer();
 
-			ByteBuffer valueBuff = proBuffer.getBuffer();
+		// 计算空间
+		int limit = 0;
 
-			// 计算空间
-			int limit = 0;
+		// 标识出上一次写入的位置
+		proBuffer.readMark = proBuffer.writeIndex;
 
-			// 标识出上一次写入的位置
-			proBuffer.readMark = proBuffer.writeIndex;
+		if (limit == proBuffer.readMark) {
+			limit = valueBuff.limit();
+		} else {
+			limit = valueBuff.limit() - proBuffer.readMark;
+		}
 
-			if (limit == proBuffer.readMark) {
-				limit = valueBuff.limit();
-			} else {
-				limit = valueBuff.limit() - proBuffer.readMark;
-			}
+		long endPosition = 0;
 
-			long endPosition = 0;
-
-			// 检查结果集是否需要多次的返回
-			if (limit > length) {
-				cacheResult.getChannel().position(offset);
-				cacheResult.getChannel().read(valueBuff);
-				endPosition = offset + length;
-			} else {
-				long startPosition = offset;
-				endPosition = offset;
-				// 如果最后一次数据，则以最长的标识为准备，不能超过
-				if (offset + limit >= length) {
-					endPosition = length;
-				}
-				// 中间的数据按依稀进行读取
-				else {
-					endPosition = offset + limit;
-				}
-
-				cacheResult.getChannel().position(startPosition);
-
-				cacheResult.getChannel().read(valueBuff);
+		// 检查结果集是否需要多次的返回
+		if (limit > length) {
+			cacheResult.getChannel().read(valueBuff, offset);
+			endPosition = offset + length;
+		} else {
+			// 如果最后一次数据，则以最长的标识为准备，不能超过
+			if (offset + limit >= length) {
+				endPosition = length;
 			}
-			return endPosition;
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		} finally {
-			// 仅当加锁成功后才释放许可
-			if (lock) {
-				// 释放加锁的许可
-				cacheResult.getSemap().release();
+			// 中间的数据按依稀进行读取
+			else {
+				endPosition = offset + limit;
 			}
 
+			cacheResult.getChannel().read(valueBuff, offset);
 		}
+		return endPosition;
+	}
 
-		return 0;
+	/**
+	 * 读取数据前持有文件的引用
+	 * 
+	 * @return false 文件已经关闭
+	 */
+	public boolean retain(SqlCacheMapFileBean cacheInfo) {
+		AtomicInteger refCount = cacheInfo.getRefCount();
+		for (;;) {
+			int count = refCount.get();
+			if (count <= 0) {
+				return false;
+			}
+			if (refCount.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
 
+	/**
+	 * 释放文件的引用, 没有引用后关闭并删除文件
+	 */
+	public void release(SqlCacheMapFileBean cacheInfo) {
+		if (null != cacheInfo && cacheInfo.getRefCount().decrementAndGet() == 0) {
+			close(cacheInfo);
+		}
 	}
 
 	public void close(SqlCacheMapFileBean cacheInfo) {
@@ -238,37 +231,9 @@ public class MapFileCacheImp implements CacheInf<SqlCacheMapFileBean> {
 		SqlCacheMapFileBean result = null;
 
 		if (null != cacheResult) {
-			// 进行加锁操作
-			boolean lock = false;
-
-			try {
-				cacheResult.getSemap().acquire();
-				lock = true;
-
-				// // 重新标识出通道的大小
-				// cacheResult.getChannel().position(cacheResult.getCacheSize());
-				// // 进行缓存 数据重置写入
-				// cacheResult.setPutOption(0);
-				// // 重新建立映射通道
-				// this.unmap(cacheResult);
-				// // 内存通道映射加大
-				// this.mmapMapFile(cacheResult, 0, cacheResult.getCacheSize());
-
-				close(cacheResult);
-				// 重新创建文件缓存
-				result = this.createCacheFile(null, cacheResult.getCacheSize());
-
-			} catch (Exception e) {
-				logger.error("MapFileCacheImp clean IOException", e);
-				e.printStackTrace();
-				throw e;
-			} finally {
-				// 仅当加锁成功后才释放许可
-				if (lock) {
-					// 释放加锁的许可
-					cacheResult.getSemap().release();
-				}
-			}
+			// 重新创建文件缓存, 旧文件在正在进行的读取完成后关闭
+			result = this.createCacheFile(null, cacheResult.getCacheSize());
+			release(cacheResult);
 		}
 
 		return result;
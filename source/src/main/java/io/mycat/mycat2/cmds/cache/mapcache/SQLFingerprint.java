@@ -0,0 +1,197 @@
+package io.mycat.mycat2.cmds.cache.mapcache;
+
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.SQLParseUtils.HashArray;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.Tokenizer2;
+
+/**
+ * 结果集缓存的key, 由解析器的 HashArray 计算出的 sql 指纹.
+ * 1. 关键字、标识符使用解析器计算的不区分大小写的 hash
+ * 2. 字符串、数字常量的值不同结果集也不同, 按原始字节计算
+ * 3. 忽略 token 之间的空白和注释, 仅空白、注释、关键字大小写不同的 sql 共用同一个缓存
+ * 同时计算两个独立的64位 hash, 第一个作为 hashCode, 两个都相同才认为是同一条 sql.
+ * {@link #normalized(BufferSQLContext, String)} 不计算常量的值, 只有常量不同的 sql 指纹相同, 用于缓存执行计划
+ */
+public final class SQLFingerprint {
+
+	private static final long SEED = 0x6A09E667F3BCC909L;
+	private static final long SEED_CHECK = 0xBB67AE8584CAA73BL;
+	/* 不属于任何 token 的字符(如 ! % | 等运算符)的标识 */
+	private static final long GAP_MARK = 0x100;
+
+	private final long hash;
+	private final long checkHash;
+
+	SQLFingerprint(long hash, long checkHash) {
+		this.hash = hash;
+		this.checkHash = checkHash;
+	}
+
+	/**
+	 * 计算第一条sql(不含注解)的指纹
+	 *
+	 * @param schema
+	 *            当前的schema, 相同的sql在不同的schema下结果不同
+	 */
+	public static SQLFingerprint of(BufferSQLContext context, String schema) {
+		return of(context, schema, true);
+	}
+
+	/**
+	 * 计算第一条sql(不含注解)去掉常量值之后的指纹
+	 */
+	public static SQLFingerprint normalized(BufferSQLContext context, String schema) {
+		return of(context, schema, false);
+	}
+
+	private static SQLFingerprint of(BufferSQLContext context, String schema, boolean literalValues) {
+		Builder builder = new Builder();
+		if (schema != null) {
+			for (int i = 0; i < schema.length(); i++) {
+				builder.add(schema.charAt(i));
+			}
+		}
+		builder.add(-1);
+
+		ByteArrayInterface buffer = context.getBuffer();
+		HashArray hashArray = context.getHashArray();
+		int start = context.getRealSQLOffset(0);
+		// 解析器记录的字符串长度没有计入转义字符, 最后一个 token 的结束位置可能不准确, 只有一条sql时取到末尾
+		int end = context.getSQLCount() > 1 ? context.getRealSQLSize(0) : buffer.getOffset() + buffer.length();
+		int prevEnd = start;
+		for (int i = 0, count = hashArray.getCount(); i < count; i++) {
+			int pos = hashArray.getPos(i);
+			if (pos < prevEnd) {
+				continue;
+			}
+			if (pos >= end) {
+				break;
+			}
+			builder.addGap(buffer, prevEnd, pos);
+			int type = hashArray.getType(i);
+			builder.add(type);
+			if (type == Tokenizer2.STRINGS) {
+				prevEnd = stringEnd(buffer, pos, end);
+				if (literalValues) {
+					builder.addBytes(buffer, pos, prevEnd);
+				}
+			} else if (type == Tokenizer2.DIGITS) {
+				prevEnd = Math.min(pos + hashArray.getSize(i), end);
+				if (literalValues) {
+					builder.addBytes(buffer, pos, prevEnd);
+				}
+			} else {
+				builder.add(hashArray.getHash(i));
+				int size = hashArray.getSize(i);
+				prevEnd = size <= 0 ? pos + 1 : Math.min(pos + size, end);
+			}
+		}
+		builder.addGap(buffer, prevEnd, end);
+		return builder.build();
+	}
+
+	/**
+	 * 字符串常量的结束位置. 解析器记录的长度没有计入转义字符, 这里重新查找结束的引号
+	 */
+	public static int stringEnd(ByteArrayInterface buffer, int pos, int end) {
+		byte quote = buffer.get(pos);
+		int i = pos + 1;
+		while (i < end) {
+			byte c = buffer.get(i++);
+			if (c == '\\') {
+				i++;
+			} else if (c == quote) {
+				break;
+			}
+		}
+		return Math.min(i, end);
+	}
+
+	public long getHash() {
+		return hash;
+	}
+
+	public long getCheckHash() {
+		return checkHash;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SQLFingerprint)) {
+			return false;
+		}
+		SQLFingerprint other = (SQLFingerprint) obj;
+		return hash == other.hash && checkHash == other.checkHash;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toHexString(hash);
+	}
+
+	private static class Builder {
+		private long h1 = SEED;
+		private long h2 = SEED_CHECK;
+
+		void add(long value) {
+			h1 = (h1 ^ value) * 0x9E3779B97F4A7C15L;
+			h1 ^= h1 >>> 29;
+			h2 = Long.rotateLeft(h2 + value * 0xC2B2AE3D27D4EB4FL, 31) * 0x165667B19E3779F9L;
+		}
+
+		void addBytes(ByteArrayInterface buffer, int start, int end) {
+			add(end - start);
+			for (int i = start; i < end; i++) {
+				add(buffer.get(i));
+			}
+		}
+
+		/**
+		 * token 之间的字符, 跳过空白和注释, 保留 /*! 形式的可执行注释
+		 */
+		void addGap(ByteArrayInterface buffer, int start, int end) {
+			int i = start;
+			while (i < end) {
+				byte c = buffer.get(i);
+				if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+					i++;
+				} else if (c == '/' && i + 2 < end && buffer.get(i + 1) == '*' && buffer.get(i + 2) != '!') {
+					i += 2;
+					while (i < end && !(buffer.get(i) == '*' && i + 1 < end && buffer.get(i + 1) == '/')) {
+						i++;
+					}
+					i += 2;
+				} else if (c == '#' || (c == '-' && i + 1 < end && buffer.get(i + 1) == '-')) {
+					while (i < end && buffer.get(i) != '\n') {
+						i++;
+					}
+				} else {
+					add(GAP_MARK | (c & 0xFF));
+					i++;
+				}
+			}
+		}
+
+		SQLFingerprint build() {
+			return new SQLFingerprint(fmix(h1), fmix(h2));
+		}
+
+		private static long fmix(long h) {
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			h *= 0xC4CEB9F34E7BB2A3L;
+			h ^= h >>> 33;
+			return h;
+		}
+	}
+}
@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import io.mycat.mycat2.MySQLCommand;
 import io.mycat.mycat2.MycatSession;
@@ -32,6 +31,49 @@ public class SQLAnnotationChain {
 	 * queue 列表当前索引值
 	 */
 	private int cmdIndex = 0;
+
+	/**
+	 * 动态注解匹配结果, 复用避免每条sql创建列表
+	 */
+	private final List<SQLAnnotation> dynamicActions = new ArrayList<>(30);
+
+	/**
+	 * 动态注解匹配时使用的表名hash, 表的数量不变时复用
+	 */
+	private int[] tableHashes = new int[0];
+
+	/**
+	 * 存在注解时返回给session的命令
+	 */
+	private final SQLAnnotationCmd chainCmd = new SQLAnnotationCmd();
+
+	public SQLAnnotationChain() {
+		chainCmd.setSqlAnnotationChain(this);
+	}
+
+	/**
+	 * 返回长度为 size 的表名hash数组, 内容由调用者填充
+	 * @param size
+	 * @return
+	 */
+	public int[] tableHashes(int size) {
+		if (tableHashes.length != size) {
+			tableHashes = new int[size];
+		}
+		return tableHashes;
+	}
+
+	/**
+	 * 0. 清除上一条sql的命令与注解, chain 由session复用
+	 */
+	public SQLAnnotationChain reset() {
+		target = null;
+		queueMap.clear();
+		queue.clear();
+		dynamicActions.clear();
+		cmdIndex = 0;
+		return this;
+	}
 		
 	/**
 	 * 1. 设置原始命令
@@ -46,13 +88,12 @@ public class SQLAnnotationChain {
 	 * 2. 处理动态注解
 	 */
 	public SQLAnnotationChain processDynamicAnno(MycatSession session){
-		List<SQLAnnotation> actions = new ArrayList<>(30);
+		List<SQLAnnotation> actions = dynamicActions;
 		if(AnnotationProcessor.getInstance().parse(session.sqlContext, session, actions)){
-			if(!actions.isEmpty()){
-				for(SQLAnnotation f:actions){
-					if(!f.apply(session,this)){
-						break;
-					}
+			int size = actions.size();
+			for (int i = 0; i < size; i++) {
+				if (!actions.get(i).apply(session, this)) {
+					break;
 				}
 			}
 		}
@@ -89,10 +130,9 @@ public class SQLAnnotationChain {
 			return target;
 		}
 		
-		queue = queueMap.values().stream().collect(Collectors.toList());
-		SQLAnnotationCmd annoCmd = new SQLAnnotationCmd();
-		annoCmd.setSqlAnnotationChain(this);
-		return annoCmd;
+		queue.clear();
+		queue.addAll(queueMap.values());
+		return chainCmd;
 	}
 	
 	public void addCmdChain(SQLAnnotation sqlanno,SQLAnnotationCmd command){
@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 
 import io.mycat.mycat2.MycatSession;
 import io.mycat.mycat2.cmds.cache.directfrontchain.resulttomap.front.CacheExistsCheck;
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
 import io.mycat.mycat2.common.SeqContextList;
 import io.mycat.mycat2.console.SessionKeyEnum;
 import io.mycat.mycat2.sqlparser.BufferSQLContext;
@@ -44,24 +45,24 @@ public class SQLCachCmd extends SQLAnnotationCmd {
 		logger.debug(" current sql  cacheTime is {},cacheTimeOut is {}",cacheTime,cacheTimeOut);
 
 		// 放入缓存过期时间
-		session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_TIMEOUT.getKey(), cacheTime);
+		session.setAttr(SessionKeyEnum.SESSION_KEY_CACHE_TIMEOUT, cacheTime);
 		// 放入临近的过期时间
-		session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_TIMEOUT_CRITICAL.getKey(), cacheTimeOut);
+		session.setAttr(SessionKeyEnum.SESSION_KEY_CACHE_TIMEOUT_CRITICAL, cacheTimeOut);
 		// 放入sql语句
-		session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR.getKey(),
-				session.sqlContext.getRealSQL(0));
+		session.setAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_STR, session.sqlContext.getRealSQL(0));
+		// 放入sql指纹
+		session.setAttr(SessionKeyEnum.SESSION_KEY_CACHE_SQL_KEY, SQLFingerprint.of(context, session.schema == null ? null : session.schema.getName()));
 
 		if (null != session.curBackend) {
 			// 设置后端为使用中
-			session.curBackend.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+			session.curBackend.setIdle(false);
 		}
 
-		SeqContextList seqcontext = (SeqContextList) session.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ.getKey());
+		SeqContextList seqcontext = (SeqContextList) session.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ);
 
 		if (null == seqcontext) {
 			seqcontext = new SeqContextList();
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ.getKey(), seqcontext);
+			session.setAttr(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ, seqcontext);
 		}
 
 		seqcontext.clear();
@@ -34,7 +34,7 @@ public class EofJudge implements DirectTransJudge {
 
 		if (multQuery || multResult) {
 			// 标识当前处于使用中
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+			session.setIdle(false);
 			// 需要继续读取结果集中的数据
 			return true;
 		}
@@ -44,7 +44,7 @@ public class EofJudge implements DirectTransJudge {
 
 		if (cusorExists) {
 			// 标识当前处于使用中
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+			session.setIdle(false);
 			// 读取此标识，需要等等下一次fatch请求执行
 			return false;
 		}
@@ -55,16 +55,16 @@ public class EofJudge implements DirectTransJudge {
 		// 如果当前事务状态被设置，连接标识为不能结束
 		if (trans) {
 			// 标识当前处于使用中
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+			session.setIdle(false);
 			// 标识当前处于事物中
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG.getKey(), true);
+			session.setFlag(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG, true);
 		}
 		// 当连接使用完毕，则标识为可以结束
 		else {
 			// 标识当前处于闲置中,
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), true);
+			session.setIdle(true);
 			// 当发现完毕后，将标识移除
-			session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG.getKey());
+			session.setFlag(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG, false);
 		}
 
 		return false;
@@ -21,9 +21,9 @@ public class ErrorJudge implements DirectTransJudge {
 	public boolean judge(MySQLSession session) {
 		// 进行当前
 		// 首先检查是否处于事务中，如果非事务中，将结识连接结束
-		if (!session.getSessionAttrMap().containsKey(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG.getKey())) {
+		if (!session.hasFlag(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG)) {
 			// 标识当前处于闲置中,
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), true);
+			session.setIdle(true);
 		}
 
 		return false;
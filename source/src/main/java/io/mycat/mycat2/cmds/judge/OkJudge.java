@@ -34,7 +34,7 @@ public class OkJudge implements DirectTransJudge {
 
 		if (multQuery || multResult) {
 			// 标识当前处于使用中,不能结束
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+			session.setIdle(false);
 			return true;
 		}
 
@@ -44,16 +44,16 @@ public class OkJudge implements DirectTransJudge {
 		// 如果当前事务状态被设置，连接标识为不能结束
 		if (trans) {
 			// 标识当前处于使用中，不能结束,
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+			session.setIdle(false);
 			// 如果发现事务标识，则标识当前处于会话中
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG.getKey(), true);
+			session.setFlag(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG, true);
 		}
 		// 当连接使用完毕，则标识为可以结束
 		else {
 			// 标识当前处于闲置中,
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), true);
+			session.setIdle(true);
 			// 当发现完毕后，将标识移除
-			session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG.getKey());
+			session.setFlag(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG, false);
 		}
 
 		return false;
@@ -0,0 +1,176 @@
+package io.mycat.mycat2.cmds.manager.show;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.mycat.mycat2.MySQLCommand;
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mysql.Fields;
+import io.mycat.mysql.packet.EOFPacket;
+import io.mycat.mysql.packet.FieldPacket;
+import io.mycat.mysql.packet.ResultSetHeaderPacket;
+import io.mycat.mysql.packet.RowDataPacket;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.proxy.ProxyRuntime;
+import io.mycat.util.PacketUtil;
+
+/**
+ * 查询每个datasource的后端连接池使用情况
+ */
+public class MycatShowBackendPoolCmd implements MySQLCommand {
+    public static final MycatShowBackendPoolCmd INSTANCE = new MycatShowBackendPoolCmd();
+
+    private static final int FIELD_COUNT = 15;
+    private static final ResultSetHeaderPacket header = PacketUtil.getHeader(FIELD_COUNT);
+    private static final FieldPacket[] fields = new FieldPacket[FIELD_COUNT];
+    private static final EOFPacket eof = new EOFPacket();
+    static {
+        int i = 0;
+        byte packetId = 0;
+        header.packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("REPLICA", Fields.FIELD_TYPE_VAR_STRING);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("DATASOURCE", Fields.FIELD_TYPE_VAR_STRING);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("MAX_CON", Fields.FIELD_TYPE_LONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("MIN_CON", Fields.FIELD_TYPE_LONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("TOTAL", Fields.FIELD_TYPE_LONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("IDLE", Fields.FIELD_TYPE_LONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("HITS", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("MISSES", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("REJECTS", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("EVICTIONS", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("WAIT_MILLIS", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("SYNC_SKIPPED", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("SYNC_ROUND_TRIPS", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("LATENCY_MICROS", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("INFLIGHT", Fields.FIELD_TYPE_LONG);
+        fields[i++].packetId = ++packetId;
+
+        eof.packetId = ++packetId;
+    }
+
+    @Override
+    public boolean procssSQL(MycatSession session) throws IOException {
+        ProxyBuffer buffer = session.proxyBuffer;
+        buffer.reset();
+        // write header
+        header.write(buffer);
+
+        // write fields
+        for (FieldPacket field : fields) {
+            field.write(buffer);
+        }
+
+        // write eof
+        eof.write(buffer);
+
+        // write rows
+        byte packetId = eof.packetId;
+        for (RowDataPacket row : getRows()) {
+            row.packetId = ++packetId;
+            row.write(buffer);
+        }
+
+        // write last eof
+        EOFPacket lastEof = new EOFPacket();
+        lastEof.packetId = ++packetId;
+        lastEof.write(buffer);
+
+        buffer.flip();
+        buffer.readIndex = buffer.writeIndex;
+        session.writeToChannel();
+        return false;
+    }
+
+    private List<RowDataPacket> getRows() {
+        List<RowDataPacket> list = new ArrayList<>();
+        ProxyRuntime.INSTANCE.getConfig().getMysqlRepMap().forEach((repName, repBean) -> {
+            repBean.getMetaBeans().forEach(metaBean -> list.add(getRow(repName, metaBean)));
+        });
+        return list;
+    }
+
+    private RowDataPacket getRow(String repName, MySQLMetaBean metaBean) {
+        RowDataPacket row = new RowDataPacket(FIELD_COUNT);
+        row.add(repName.getBytes());
+        row.add((metaBean.getDsMetaBean().getIp() + ":" + metaBean.getDsMetaBean().getPort()).getBytes());
+        row.add(Integer.toString(metaBean.getDsMetaBean().getMaxCon()).getBytes());
+        row.add(Integer.toString(metaBean.getDsMetaBean().getMinCon()).getBytes());
+        row.add(Integer.toString(metaBean.getConnectionCount()).getBytes());
+        row.add(Integer.toString(metaBean.getIdleCount().get()).getBytes());
+        row.add(Long.toString(metaBean.getPoolHits()).getBytes());
+        row.add(Long.toString(metaBean.getPoolMisses()).getBytes());
+        row.add(Long.toString(metaBean.getPoolRejects()).getBytes());
+        row.add(Long.toString(metaBean.getPoolEvictions()).getBytes());
+        row.add(Long.toString(metaBean.getPoolWaitMillis()).getBytes());
+        row.add(Long.toString(metaBean.getStateSyncSkipped()).getBytes());
+        row.add(Long.toString(metaBean.getStateSyncRoundTrips()).getBytes());
+        row.add(Long.toString(metaBean.getLatencyEwma() / 1000).getBytes());
+        row.add(Integer.toString(metaBean.getInflightQueries()).getBytes());
+        return row;
+    }
+
+    @Override
+    public boolean onBackendResponse(MySQLSession session) throws IOException {
+        return false;
+    }
+
+    @Override
+    public boolean onBackendClosed(MySQLSession session, boolean normal) throws IOException {
+        return false;
+    }
+
+    @Override
+    public boolean onFrontWriteFinished(MycatSession session) throws IOException {
+        session.proxyBuffer.flip();
+        session.takeOwner(SelectionKey.OP_READ);
+        return false;
+    }
+
+    @Override
+    public boolean onBackendWriteFinished(MySQLSession session) throws IOException {
+        return false;
+    }
+
+    @Override
+    public void clearFrontResouces(MycatSession session, boolean sessionCLosed) {
+
+    }
+
+    @Override
+    public void clearBackendResouces(MySQLSession session, boolean sessionCLosed) {
+
+    }
+}
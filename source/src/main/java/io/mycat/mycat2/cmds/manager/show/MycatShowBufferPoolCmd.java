@@ -0,0 +1,149 @@
+package io.mycat.mycat2.cmds.manager.show;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.mycat.mycat2.MySQLCommand;
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mysql.Fields;
+import io.mycat.mysql.packet.EOFPacket;
+import io.mycat.mysql.packet.FieldPacket;
+import io.mycat.mysql.packet.ResultSetHeaderPacket;
+import io.mycat.mysql.packet.RowDataPacket;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.proxy.ProxyReactorThread;
+import io.mycat.proxy.ProxyRuntime;
+import io.mycat.proxy.buffer.BufferPool;
+import io.mycat.util.PacketUtil;
+
+/**
+ * 查询每个reactor线程独占的bufferpool使用情况
+ */
+public class MycatShowBufferPoolCmd implements MySQLCommand {
+    public static final MycatShowBufferPoolCmd INSTANCE = new MycatShowBufferPoolCmd();
+
+    private static final int FIELD_COUNT = 6;
+    private static final ResultSetHeaderPacket header = PacketUtil.getHeader(FIELD_COUNT);
+    private static final FieldPacket[] fields = new FieldPacket[FIELD_COUNT];
+    private static final EOFPacket eof = new EOFPacket();
+    static {
+        int i = 0;
+        byte packetId = 0;
+        header.packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("THREAD_NAME", Fields.FIELD_TYPE_VAR_STRING);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("CAPACITY", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("USED", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("ALLOCATE_TIMES", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("HEAP_ALLOCATE_TIMES", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        fields[i] = PacketUtil.getField("REMOTE_RECYCLE_TIMES", Fields.FIELD_TYPE_LONGLONG);
+        fields[i++].packetId = ++packetId;
+
+        eof.packetId = ++packetId;
+    }
+
+    @Override
+    public boolean procssSQL(MycatSession session) throws IOException {
+        ProxyBuffer buffer = session.proxyBuffer;
+        buffer.reset();
+        // write header
+        header.write(buffer);
+
+        // write fields
+        for (FieldPacket field : fields) {
+            field.write(buffer);
+        }
+
+        // write eof
+        eof.write(buffer);
+
+        // write rows
+        byte packetId = eof.packetId;
+        for (ProxyReactorThread<?> reactor : getReactors()) {
+            RowDataPacket row = getRow(reactor);
+            row.packetId = ++packetId;
+            row.write(buffer);
+        }
+
+        // write last eof
+        EOFPacket lastEof = new EOFPacket();
+        lastEof.packetId = ++packetId;
+        lastEof.write(buffer);
+
+        buffer.flip();
+        buffer.readIndex = buffer.writeIndex;
+        session.writeToChannel();
+        return false;
+    }
+
+    private RowDataPacket getRow(ProxyReactorThread<?> reactor) {
+        BufferPool pool = reactor.getBufPool();
+        RowDataPacket row = new RowDataPacket(FIELD_COUNT);
+        row.add(reactor.getName().getBytes());
+        row.add(Long.toString(pool.capacity()).getBytes());
+        row.add(Long.toString(pool.size()).getBytes());
+        row.add(Long.toString(pool.getAllocateTimes()).getBytes());
+        row.add(Long.toString(pool.getHeapAllocateTimes()).getBytes());
+        row.add(Long.toString(pool.getRemoteRecycleTimes()).getBytes());
+        return row;
+    }
+
+    private List<ProxyReactorThread<?>> getReactors() {
+        List<ProxyReactorThread<?>> list = new ArrayList<>();
+        ProxyRuntime runtime = ProxyRuntime.INSTANCE;
+        if (runtime.getAcceptor() != null) {
+            list.add(runtime.getAcceptor());
+        }
+        for (ProxyReactorThread<?> reactor : runtime.getReactorThreads()) {
+            if (reactor != null) {
+                list.add(reactor);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public boolean onBackendResponse(MySQLSession session) throws IOException {
+        return false;
+    }
+
+    @Override
+    public boolean onBackendClosed(MySQLSession session, boolean normal) throws IOException {
+        return false;
+    }
+
+    @Override
+    public boolean onFrontWriteFinished(MycatSession session) throws IOException {
+        session.proxyBuffer.flip();
+        session.takeOwner(SelectionKey.OP_READ);
+        return false;
+    }
+
+    @Override
+    public boolean onBackendWriteFinished(MySQLSession session) throws IOException {
+        return false;
+    }
+
+    @Override
+    public void clearFrontResouces(MycatSession session, boolean sessionCLosed) {
+
+    }
+
+    @Override
+    public void clearBackendResouces(MySQLSession session, boolean sessionCLosed) {
+
+    }
+}
@@ -23,6 +23,8 @@ public class MycatShowCmdProcessor extends MycatCmdProcssor {
         cmdMaps.put("PROCESSLIST", MycatShowSessionsCmd.INSTANCE);
         cmdMaps.put("THREADPOOL", MycatShowThreadPoolCmd.INSTANCE);
         cmdMaps.put("HEARTBEAT", MycatShowHeartbeatCmd.INSTANCE);
+        cmdMaps.put("BUFFERPOOL", MycatShowBufferPoolCmd.INSTANCE);
+        cmdMaps.put("BACKENDPOOL", MycatShowBackendPoolCmd.INSTANCE);
         
         descMaps.put("HELP", "show help information");
         descMaps.put("CONFIGS", "show config information");
@@ -30,5 +32,7 @@ public class MycatShowCmdProcessor extends MycatCmdProcssor {
         descMaps.put("PROCESSLIST", "show current process information");
         descMaps.put("THREADPOOL", "Report threadPool status");
         descMaps.put("HEARTBEAT", "Report heartbeat status");
+        descMaps.put("BUFFERPOOL", "Report buffer pool usage of each reactor thread");
+        descMaps.put("BACKENDPOOL", "Report backend connection pool status of each datasource");
     }
 }
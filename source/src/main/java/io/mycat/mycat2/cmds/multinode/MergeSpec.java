@@ -0,0 +1,273 @@
+package io.mycat.mycat2.cmds.multinode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SortOrder;
+
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.SQLParseUtils.HashArray;
+import io.mycat.mycat2.sqlparser.TokenHash;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.Tokenizer2;
+
+/**
+ * 多节点执行的语句如何合并结果.
+ * 1. select: 各节点的结果集按 order by 归并, limit m,n 改写为 limit m+n 下发, 合并时再跳过 m 行.
+ *    含聚合函数、distinct、group by、having、union、子查询时各节点的结果不能直接合并, 不支持
+ * 2. update/delete: 合并各节点的 OK 包, 含 order by、limit 时不支持
+ */
+public class MergeSpec {
+
+	private static final long[] UNMERGEABLE = { TokenHash.DISTINCT, TokenHash.DISTINCTROW, TokenHash.GROUP,
+			TokenHash.HAVING, TokenHash.UNION, TokenHash.INTO, TokenHash.PROCEDURE };
+
+	private static final long[] AGGREGATE = { TokenHash.COUNT, TokenHash.SUM, TokenHash.MIN, TokenHash.MAX,
+			TokenHash.AVG, TokenHash.GROUP_CONCAT, TokenHash.STD, TokenHash.STDDEV, TokenHash.VARIANCE,
+			TokenHash.BIT_AND, TokenHash.BIT_OR };
+
+	/* 下发到各节点的 sql, 直接从原始报文中复制, 不经过字符集转换 */
+	private final byte[] sql;
+	/* order by 的列名, 按位置排序时为 null */
+	private final List<String> orderNames = new ArrayList<>();
+	/* order by 的列下标(从0开始), 按列名排序时为 -1 */
+	private final List<Integer> orderIndexes = new ArrayList<>();
+	private final List<SortOrder> sortOrders = new ArrayList<>();
+	private long offset;
+	/* limit 的行数, 没有 limit 时为 -1 */
+	private long count = -1;
+
+	private MergeSpec(byte[] sql) {
+		this.sql = sql;
+	}
+
+	/**
+	 * 解析第一条 sql, 结果不能合并时返回 null
+	 */
+	public static MergeSpec parse(BufferSQLContext context) {
+		if (context.getSQLCount() != 1) {
+			return null;
+		}
+		HashArray hashArray = context.getHashArray();
+		int start = context.getSQLHashArrayStart(0);
+		int end = Math.min(context.getSQLHashArrayEnd(0), hashArray.getCount());
+		byte sqlType = context.getSQLType(0);
+		boolean select = sqlType == BufferSQLContext.SELECT_SQL;
+		if (!select && sqlType != BufferSQLContext.UPDATE_SQL && sqlType != BufferSQLContext.DELETE_SQL) {
+			return null;
+		}
+		int orderStart = -1;
+		int limitStart = -1;
+		int depth = 0;
+		boolean first = true;
+		for (int i = start; i < end; i++) {
+			int type = hashArray.getType(i);
+			if (type == Tokenizer2.LEFT_PARENTHESES) {
+				depth++;
+				continue;
+			} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+				depth--;
+				continue;
+			} else if (type == Tokenizer2.SEMICOLON) {
+				end = i;
+				break;
+			} else if (!isWordType(type)) {
+				continue;
+			}
+			long hash = hashArray.getHash(i);
+			if (hash == TokenHash.SELECT) {
+				// 只允许最外层的一个 select
+				if (!first || !select) {
+					return null;
+				}
+				first = false;
+			} else if (contains(UNMERGEABLE, hash)
+					|| (contains(AGGREGATE, hash) && i + 1 < end && hashArray.getType(i + 1) == Tokenizer2.LEFT_PARENTHESES)) {
+				return null;
+			} else if (depth == 0 && hash == TokenHash.ORDER && orderStart < 0) {
+				orderStart = i;
+			} else if (depth == 0 && hash == TokenHash.LIMIT) {
+				limitStart = i;
+			}
+		}
+		if (!select) {
+			return orderStart < 0 && limitStart < 0 ? new MergeSpec(realSQL(context, null, 0, 0)) : null;
+		}
+		long[] limit = { 0, -1 };
+		int limitEnd = limitStart;
+		if (limitStart >= 0) {
+			limitEnd = parseLimit(hashArray, limitStart + 1, end, limit);
+			if (limitEnd < 0) {
+				return null;
+			}
+		}
+		MergeSpec spec;
+		if (limit[0] > 0) {
+			// limit m,n 改写为 limit m+n
+			int valueStart = hashArray.getPos(limitStart + 1);
+			int valueEnd = hashArray.getPos(limitEnd - 1) + hashArray.getSize(limitEnd - 1);
+			byte[] rowCount = String.valueOf(limit[0] + limit[1]).getBytes(StandardCharsets.US_ASCII);
+			spec = new MergeSpec(realSQL(context, rowCount, valueStart, valueEnd));
+		} else {
+			spec = new MergeSpec(realSQL(context, null, 0, 0));
+		}
+		spec.offset = limit[0];
+		spec.count = limit[1];
+		if (orderStart >= 0 && !spec.parseOrder(context, hashArray, orderStart + 1, limitStart < 0 ? end : limitStart)) {
+			return null;
+		}
+		return spec;
+	}
+
+	/**
+	 * 去掉注解的 sql, replacement 不为空时替换其中 [replaceStart, replaceEnd) 的内容
+	 */
+	private static byte[] realSQL(BufferSQLContext context, byte[] replacement, int replaceStart, int replaceEnd) {
+		ByteArrayInterface buffer = context.getBuffer();
+		int start = context.getRealSQLOffset(0);
+		int end = context.getRealSQLSize(0);
+		if (replacement == null) {
+			replacement = new byte[0];
+			replaceStart = end;
+			replaceEnd = end;
+		}
+		byte[] sql = new byte[end - start - (replaceEnd - replaceStart) + replacement.length];
+		int pos = 0;
+		for (int i = start; i < replaceStart; i++) {
+			sql[pos++] = buffer.get(i);
+		}
+		System.arraycopy(replacement, 0, sql, pos, replacement.length);
+		pos += replacement.length;
+		for (int i = replaceEnd; i < end; i++) {
+			sql[pos++] = buffer.get(i);
+		}
+		return sql;
+	}
+
+	/**
+	 * limit n, limit m,n, limit n offset m, 返回 limit 之后的下标, 不支持的写法返回 -1
+	 */
+	private static int parseLimit(HashArray hashArray, int i, int end, long[] limit) {
+		if (i >= end || !isNumber(hashArray, i)) {
+			return -1;
+		}
+		long first = hashArray.getHash(i++);
+		if (i + 1 < end && hashArray.getType(i) == Tokenizer2.COMMA && isNumber(hashArray, i + 1)) {
+			limit[0] = first;
+			limit[1] = hashArray.getHash(i + 1);
+			return i + 2;
+		}
+		if (i + 1 < end && isWord(hashArray, i, TokenHash.OFFSET) && isNumber(hashArray, i + 1)) {
+			limit[0] = hashArray.getHash(i + 1);
+			limit[1] = first;
+			return i + 2;
+		}
+		limit[1] = first;
+		return i;
+	}
+
+	/**
+	 * order by 列名 [asc|desc], 表名.列名 [asc|desc], 列序号 [asc|desc]
+	 */
+	private boolean parseOrder(BufferSQLContext context, HashArray hashArray, int i, int end) {
+		if (i >= end || !isWord(hashArray, i, TokenHash.BY)) {
+			return false;
+		}
+		for (i++; i < end;) {
+			int type = hashArray.getType(i);
+			if (type == Tokenizer2.DIGITS) {
+				long pos = hashArray.getHash(i);
+				if (pos < 1 || hashArray.getSize(i) > 9) {
+					return false;
+				}
+				orderNames.add(null);
+				orderIndexes.add((int) pos - 1);
+				i++;
+			} else if (isWordType(type)) {
+				// 表名.列名 取列名
+				while (i + 2 < end && hashArray.getType(i + 1) == Tokenizer2.DOT && isWordType(hashArray.getType(i + 2))) {
+					i += 2;
+				}
+				String name = context.getBuffer().getString(hashArray.getPos(i), hashArray.getSize(i));
+				if (name.length() > 1 && name.charAt(0) == '`' && name.charAt(name.length() - 1) == '`') {
+					name = name.substring(1, name.length() - 1);
+				}
+				orderNames.add(name);
+				orderIndexes.add(-1);
+				i++;
+			} else {
+				return false;
+			}
+			SortOrder order = SortOrder.ASCENDING;
+			if (i < end && isWord(hashArray, i, TokenHash.DESC)) {
+				order = SortOrder.DESCENDING;
+				i++;
+			} else if (i < end && isWord(hashArray, i, TokenHash.ASC)) {
+				i++;
+			}
+			sortOrders.add(order);
+			if (i < end && hashArray.getType(i) == Tokenizer2.COMMA) {
+				i++;
+			} else if (i < end && !isWord(hashArray, i, TokenHash.FOR) && !isWord(hashArray, i, TokenHash.LOCK)) {
+				// order by 表达式
+				return false;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 解析器已经把不超过18位的数字转换为数值
+	 */
+	private static boolean isNumber(HashArray hashArray, int i) {
+		return hashArray.getType(i) == Tokenizer2.DIGITS && hashArray.getSize(i) <= 18;
+	}
+
+	private static boolean contains(long[] hashes, long hash) {
+		for (long h : hashes) {
+			if (h == hash) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isWord(HashArray hashArray, int i, long hash) {
+		return isWordType(hashArray.getType(i)) && hashArray.getHash(i) == hash;
+	}
+
+	private static boolean isWordType(int type) {
+		return type < 0 || type > Tokenizer2.GREATER_GREATER;
+	}
+
+	public byte[] getSql() {
+		return sql;
+	}
+
+	public boolean isOrdered() {
+		return !sortOrders.isEmpty();
+	}
+
+	public List<String> getOrderNames() {
+		return orderNames;
+	}
+
+	public List<Integer> getOrderIndexes() {
+		return orderIndexes;
+	}
+
+	public List<SortOrder> getSortOrders() {
+		return sortOrders;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public long getCount() {
+		return count;
+	}
+}
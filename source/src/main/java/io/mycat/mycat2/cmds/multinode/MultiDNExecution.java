@@ -0,0 +1,321 @@
+package io.mycat.mycat2.cmds.multinode;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.util.ErrorCode;
+
+/**
+ * 一条语句在多个节点上的执行过程.
+ * 各节点的连接都在前端会话所在的 reactor 上, 依次获取连接并立即发送语句, 之后各节点并行执行, 谁的响应先到就先处理谁的,
+ * 合并后的报文放入输出队列, 由前端连接的 buffer 分批写出.
+ * 1. 输出队列积压过多时暂停读取所有节点, 写出后恢复; 有序合并时某个节点缓存的行过多, 暂停读取该节点
+ * 2. 出现第一个错误后, 在其他未结束的节点上执行 KILL QUERY, 被中止的节点返回后连接继续可用
+ * 3. 记录首行输出时间和最慢节点的结束时间
+ */
+public class MultiDNExecution implements ResultMerger.PacketSink {
+
+	private static Logger logger = LoggerFactory.getLogger(MultiDNExecution.class);
+
+	/* 输出队列积压的字节数超过该值时暂停读取各节点, 低于一半时恢复 */
+	private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+	private final MycatSession mycatSession;
+	private final MySQLRepBean[] nodes;
+	private final MergeSpec spec;
+	private final ResultMerger merger;
+	private final ShardStream[] streams;
+
+	private final ArrayDeque<byte[]> outQueue = new ArrayDeque<>();
+	/* 队首报文已经写出的字节数 */
+	private int headOffset;
+	private long pendingBytes;
+
+	private boolean acquiring = true;
+	private boolean frontWriting;
+	private boolean flushing;
+	private boolean paused;
+	private boolean cancelled;
+	private boolean completed;
+
+	private final long startNanos = System.nanoTime();
+
+	public MultiDNExecution(MycatSession mycatSession, MySQLRepBean[] nodes, MergeSpec spec) {
+		this.mycatSession = mycatSession;
+		this.nodes = nodes;
+		this.spec = spec;
+		this.merger = new ResultMerger(nodes.length, spec, this);
+		this.streams = new ShardStream[nodes.length];
+	}
+
+	/**
+	 * 依次获取各节点的连接, 获取到就发送语句. 获取连接的过程会使用前端的 buffer, 全部获取完成之前不向前端写出
+	 */
+	public void start() throws IOException {
+		acquire(0);
+	}
+
+	void acquire(int shard) throws IOException {
+		mycatSession.getIdleBackend(nodes[shard],
+				(mysqlSession, sender, success, result) -> onBackend(shard, mysqlSession, success));
+	}
+
+	/**
+	 * 获取到一个节点的连接后发送语句
+	 */
+	void onBackend(int shard, MySQLSession mysqlSession, boolean success) throws IOException {
+		if (success && completed) {
+			// 已经放弃执行, 连接上还没有发送语句, 直接归还
+			mycatSession.unbindBeckend(mysqlSession);
+			mysqlSession.unbindMycatSession();
+			((MycatReactorThread) Thread.currentThread()).addMySQLSession(mysqlSession.getMySQLMetaBean(), mysqlSession);
+			return;
+		}
+		if (!success || completed) {
+			merger.onShardFailed(shard, ErrorCode.ERR_CONNECT_SOCKET, "get backend connection error");
+			onAcquired(shard);
+			return;
+		}
+		ShardStream stream = new ShardStream(this, shard, mysqlSession);
+		streams[shard] = stream;
+		try {
+			stream.send(spec.getSql());
+		} catch (IOException e) {
+			onShardFailed(shard, ErrorCode.ERR_CONNECT_SOCKET, "send query to data node error. " + e.getMessage());
+		}
+		onAcquired(shard);
+	}
+
+	private void onAcquired(int shard) throws IOException {
+		if (shard + 1 < nodes.length && !merger.hasError()) {
+			acquire(shard + 1);
+			return;
+		}
+		// 出错后剩余的节点不再执行
+		for (int i = shard + 1; i < nodes.length; i++) {
+			merger.onShardFailed(i, ErrorCode.ERR_CONNECT_SOCKET, "cancelled");
+		}
+		acquiring = false;
+		if (merger.hasError()) {
+			cancel();
+		}
+		flush();
+	}
+
+	void onPacket(int shard, byte[] packet) throws IOException {
+		boolean hadError = merger.hasError();
+		merger.onPacket(shard, packet);
+		if (merger.isFinished(shard)) {
+			streams[shard].release();
+		}
+		if (!hadError && merger.hasError()) {
+			cancel();
+		}
+	}
+
+	/**
+	 * 一次读取的报文处理完成后写出, 并根据缓存情况暂停或恢复读取
+	 */
+	void onShardRead(int shard) throws IOException {
+		if (!merger.isFinished(shard) && merger.isBufferFull(shard)) {
+			streams[shard].pause(true);
+		}
+		flush();
+	}
+
+	void onShardFailed(int shard, int errno, String message) throws IOException {
+		boolean hadError = merger.hasError();
+		merger.onShardFailed(shard, errno, message);
+		ShardStream stream = streams[shard];
+		if (stream != null && !stream.isReleased()) {
+			// 连接状态未知, 不再使用
+			stream.release();
+			MySQLSession mysqlSession = stream.getSession();
+			mycatSession.unbindBeckend(mysqlSession);
+			mysqlSession.close(false, message);
+		}
+		if (!hadError) {
+			cancel();
+		}
+		flush();
+	}
+
+	@Override
+	public void write(byte[] packet) {
+		outQueue.addLast(packet);
+		pendingBytes += packet.length;
+		if (!paused && pendingBytes > MAX_PENDING_BYTES) {
+			paused = true;
+			for (ShardStream stream : streams) {
+				if (stream != null) {
+					stream.pause(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 把输出队列中的报文写入前端 buffer 并发送, 一次写不完时等待前端可写后继续
+	 */
+	private void flush() throws IOException {
+		if (acquiring || frontWriting || flushing || completed) {
+			return;
+		}
+		flushing = true;
+		try {
+			while (!outQueue.isEmpty() && !frontWriting) {
+				ProxyBuffer buffer = mycatSession.proxyBuffer;
+				buffer.reset();
+				fill(buffer);
+				buffer.flip();
+				buffer.readIndex = buffer.writeIndex;
+				mycatSession.takeBufferOwnerOnly();
+				frontWriting = true;
+				mycatSession.writeToChannel();
+			}
+		} catch (IOException e) {
+			logger.warn("write multi-node result to front error. {}", e.getMessage());
+			mycatSession.close(false, e.getMessage());
+			return;
+		} finally {
+			flushing = false;
+		}
+		if (frontWriting) {
+			return;
+		}
+		resume();
+		if (merger.isAllFinished() && outQueue.isEmpty()) {
+			complete();
+		}
+	}
+
+	/**
+	 * 按 buffer 剩余空间填充报文, 大报文可以分多次写出
+	 */
+	private void fill(ProxyBuffer buffer) {
+		int capacity = buffer.getBuffer().capacity();
+		byte[] packet;
+		while (buffer.writeIndex < capacity && (packet = outQueue.peekFirst()) != null) {
+			int length = Math.min(packet.length - headOffset, capacity - buffer.writeIndex);
+			buffer.getBuffer().position(buffer.writeIndex);
+			buffer.getBuffer().put(packet, headOffset, length);
+			buffer.writeIndex += length;
+			headOffset += length;
+			pendingBytes -= length;
+			if (headOffset == packet.length) {
+				outQueue.pollFirst();
+				headOffset = 0;
+			}
+		}
+	}
+
+	private void resume() {
+		if (paused && pendingBytes <= MAX_PENDING_BYTES / 2) {
+			paused = false;
+		}
+		for (int i = 0; i < streams.length; i++) {
+			if (streams[i] != null && !merger.isFinished(i)) {
+				streams[i].pause(paused || merger.isBufferFull(i));
+			}
+		}
+	}
+
+	/**
+	 * 前端写完一批数据
+	 *
+	 * @return 写出的是否为本次执行的数据. 获取连接失败时直接向前端写出了错误信息, 此时放弃执行并返回 false
+	 */
+	public boolean onFrontWriteFinished() throws IOException {
+		if (acquiring) {
+			mycatSession.removeAttr(SessionKeyEnum.SESSION_KEY_MULTI_DN_EXECUTION);
+			onFrontClosed();
+			return false;
+		}
+		frontWriting = false;
+		// 中间批次写完后取消前端的可写事件, 避免重复触发
+		mycatSession.clearReadWriteOpts();
+		if (!flushing) {
+			flush();
+		}
+		return true;
+	}
+
+	/**
+	 * 所有节点结束并且全部写出, 切换到前端读取下一个请求
+	 */
+	private void complete() {
+		completed = true;
+		mycatSession.removeAttr(SessionKeyEnum.SESSION_KEY_MULTI_DN_EXECUTION);
+		mycatSession.proxyBuffer.reset();
+		mycatSession.takeOwner(SelectionKey.OP_READ);
+		if (logger.isDebugEnabled()) {
+			long slowest = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				slowest = Math.max(slowest, merger.getFinishNanos(i) - startNanos);
+			}
+			long firstRow = merger.getFirstRowNanos() == 0 ? -1 : merger.getFirstRowNanos() - startNanos;
+			logger.debug("multi-node query on {} nodes, {} rows, first row {} us, slowest node {} us, total {} us",
+					nodes.length, merger.getSentRows(), TimeUnit.NANOSECONDS.toMicros(firstRow),
+					TimeUnit.NANOSECONDS.toMicros(slowest), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+		}
+	}
+
+	/**
+	 * 某个节点出错后, 在其他未结束的节点上执行 KILL QUERY
+	 */
+	private void cancel() {
+		if (cancelled) {
+			return;
+		}
+		cancelled = true;
+		for (int i = 0; i < streams.length; i++) {
+			ShardStream stream = streams[i];
+			if (stream == null || merger.isFinished(i) || stream.isReleased()) {
+				continue;
+			}
+			// 已经不需要的结果直接丢弃, 不再受暂停影响
+			stream.pause(false);
+			killQuery(stream.getSession());
+		}
+	}
+
+	/**
+	 * 使用 reactor 中另外的连接发送 KILL QUERY
+	 */
+	void killQuery(MySQLSession mysqlSession) {
+		MycatReactorThread reactor = (MycatReactorThread) Thread.currentThread();
+		reactor.killQuery(mysqlSession);
+	}
+
+	/**
+	 * 前端会话关闭或者放弃执行, 未结束节点上的连接直接关闭, 不能归还
+	 */
+	public void onFrontClosed() {
+		completed = true;
+		for (int i = 0; i < streams.length; i++) {
+			ShardStream stream = streams[i];
+			if (stream != null && !stream.isReleased()) {
+				stream.release();
+				MySQLSession mysqlSession = stream.getSession();
+				mycatSession.unbindBeckend(mysqlSession);
+				mysqlSession.close(false, "front session closed");
+			}
+		}
+		outQueue.clear();
+	}
+
+	public ResultMerger getMerger() {
+		return merger;
+	}
+}
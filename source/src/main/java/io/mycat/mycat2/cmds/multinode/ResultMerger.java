@@ -0,0 +1,552 @@
+package io.mycat.mycat2.cmds.multinode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import io.mycat.mycat2.hbt.OrderMeta;
+import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mycat2.hbt.RowComparator;
+import io.mycat.mysql.Fields;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.util.ErrorCode;
+
+/**
+ * 合并多个节点对同一条语句的响应, 按到达顺序逐个处理各节点的报文, 不等待最慢的节点.
+ * 1. 结果集: 只输出最先完整返回列定义的节点的列定义, 其他节点的列定义丢弃.
+ *    没有 order by 时行数据到达即输出; 有 order by 时各节点的结果已经有序, 用各节点当前行组成的堆做多路归并,
+ *    所有未结束的节点都有当前行时输出堆顶, 堆的大小不超过节点数. offset/limit 在输出时处理, 达到 limit 后丢弃后续行.
+ *    归并按字段的字节比较, 字符串只有二进制排序规则(如 utf8mb4_bin)与节点上的顺序一致,
+ *    排序字段为非二进制排序规则的字符串、enum 或者 set 时返回 ER_NOT_SUPPORTED_YET, 可以在语句中用 COLLATE 指定 _bin 排序规则
+ * 2. OK 包: 所有节点都返回 OK 包时合并为一个, 影响行数和警告数相加
+ * 3. 错误: 第一个错误包输出后不再输出任何报文, 只跟踪各节点是否结束
+ * 输出的报文序号从1开始重新编号.
+ */
+public class ResultMerger {
+
+	/**
+	 * 合并后的报文输出, 报文含4字节包头
+	 */
+	public interface PacketSink {
+		void write(byte[] packet);
+	}
+
+	private static final int STATE_COL_COUNT = 0;
+	private static final int STATE_COL_DEF = 1;
+	private static final int STATE_ROW = 2;
+	private static final int STATE_FINISHED = 3;
+
+	/* 有序合并时每个节点最多缓存的行数, 超过后暂停读取该节点 */
+	public static final int MAX_BUFFERED_ROWS = 256;
+
+	private final int shardCount;
+	private final MergeSpec spec;
+	private final PacketSink sink;
+
+	private final int[] states;
+	/* 各节点列定义完成之前缓存的列数包和列定义包 */
+	private final List<List<byte[]>> headers;
+	private final long[] finishNanos;
+	private int finishedCount;
+
+	private byte packetId = 1;
+	private int fieldCount = -1;
+	private boolean headerSent;
+	private boolean errorSent;
+
+	/* 合并 OK 包 */
+	private int okCount;
+	private long affectedRows;
+	private long insertId;
+	private int serverStatus;
+	private int warningCount;
+
+	private long skipped;
+	private long sent;
+	private long firstRowNanos;
+
+	/* 有序合并 */
+	private PriorityQueue<Row> heads;
+	private List<ArrayDeque<Row>> pending;
+	private boolean[] hasHead;
+	/* 未结束并且没有当前行的节点数, 为0时可以输出堆顶 */
+	private int missingHeads;
+
+	@SuppressWarnings("unchecked")
+	public ResultMerger(int shardCount, MergeSpec spec, PacketSink sink) {
+		this.shardCount = shardCount;
+		this.spec = spec;
+		this.sink = sink;
+		this.states = new int[shardCount];
+		this.finishNanos = new long[shardCount];
+		this.headers = new ArrayList<>(shardCount);
+		for (int i = 0; i < shardCount; i++) {
+			headers.add(new ArrayList<>());
+		}
+		if (spec.isOrdered()) {
+			this.pending = new ArrayList<>(shardCount);
+			for (int i = 0; i < shardCount; i++) {
+				pending.add(new ArrayDeque<>());
+			}
+			this.hasHead = new boolean[shardCount];
+			this.missingHeads = shardCount;
+		}
+	}
+
+	/**
+	 * 处理节点返回的一个完整报文
+	 */
+	public void onPacket(int shard, byte[] packet) {
+		int type = packet[MySQLPacket.packetHeaderSize] & 0xFF;
+		switch (states[shard]) {
+		case STATE_COL_COUNT:
+			if (type == (MySQLPacket.OK_PACKET & 0xFF)) {
+				onOk(shard, packet);
+			} else if (type == (MySQLPacket.ERROR_PACKET & 0xFF)) {
+				onError(shard, packet);
+			} else {
+				states[shard] = STATE_COL_DEF;
+				headers.get(shard).add(packet);
+			}
+			break;
+		case STATE_COL_DEF:
+			if (type == (MySQLPacket.ERROR_PACKET & 0xFF)) {
+				onError(shard, packet);
+			} else if (isEof(packet)) {
+				states[shard] = STATE_ROW;
+				onHeader(shard, packet);
+			} else {
+				headers.get(shard).add(packet);
+			}
+			break;
+		case STATE_ROW:
+			if (type == (MySQLPacket.ERROR_PACKET & 0xFF)) {
+				onError(shard, packet);
+			} else if (isEof(packet)) {
+				warningCount += readUB2(packet, MySQLPacket.packetHeaderSize + 1);
+				serverStatus = readUB2(packet, MySQLPacket.packetHeaderSize + 3);
+				finish(shard);
+			} else if (!errorSent) {
+				onRow(shard, packet);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * 节点连接断开或者发送失败
+	 */
+	public void onShardFailed(int shard, int errno, String message) {
+		if (isFinished(shard)) {
+			return;
+		}
+		sendError(errorPacket(errno, message));
+		finish(shard);
+	}
+
+	private void onOk(int shard, byte[] packet) {
+		int[] pos = { MySQLPacket.packetHeaderSize + 1 };
+		long rows = readLength(packet, pos);
+		long id = readLength(packet, pos);
+		int status = readUB2(packet, pos[0]);
+		int warnings = readUB2(packet, pos[0] + 2);
+		okCount++;
+		affectedRows += rows;
+		if (insertId == 0) {
+			insertId = id;
+		}
+		serverStatus = status;
+		warningCount += warnings;
+		finish(shard);
+	}
+
+	private void onError(int shard, byte[] packet) {
+		sendError(packet);
+		finish(shard);
+	}
+
+	private void onHeader(int shard, byte[] eof) {
+		List<byte[]> header = headers.get(shard);
+		int count = (int) readLength(header.get(0), new int[] { MySQLPacket.packetHeaderSize });
+		if (headerSent || errorSent) {
+			if (count != fieldCount) {
+				sendError(errorPacket(ErrorCode.ER_UNKNOWN_ERROR,
+						"column count of data nodes are different, " + count + " and " + fieldCount));
+			}
+			header.clear();
+			return;
+		}
+		fieldCount = count;
+		if (spec.isOrdered() && !initOrder(header)) {
+			header.clear();
+			return;
+		}
+		for (byte[] packet : header) {
+			send(packet);
+		}
+		send(eof);
+		header.clear();
+		headerSent = true;
+	}
+
+	/**
+	 * 按列定义确定排序字段的位置, 排序字段不在结果集中时输出错误
+	 */
+	private boolean initOrder(List<byte[]> header) {
+		List<String> names = new ArrayList<>(fieldCount);
+		int[] types = new int[fieldCount];
+		int[] flags = new int[fieldCount];
+		List<String> orderColumns = new ArrayList<>();
+		for (int i = 1; i < header.size(); i++) {
+			int[] pos = { MySQLPacket.packetHeaderSize };
+			byte[] packet = header.get(i);
+			// catalog, schema, table, org_table
+			for (int j = 0; j < 4; j++) {
+				int length = (int) readLength(packet, pos);
+				pos[0] += length;
+			}
+			int nameLength = (int) readLength(packet, pos);
+			String name = new String(packet, pos[0], nameLength, StandardCharsets.UTF_8);
+			pos[0] += nameLength;
+			int orgNameLength = (int) readLength(packet, pos);
+			pos[0] += orgNameLength;
+			// 0x0c, charset, column_length, type, flags
+			types[i - 1] = packet[pos[0] + 7] & 0xFF;
+			flags[i - 1] = (packet[pos[0] + 8] & 0xFF) | (packet[pos[0] + 9] & 0xFF) << 8;
+			names.add(name);
+		}
+		List<String> orderNames = spec.getOrderNames();
+		List<Integer> orderIndexes = spec.getOrderIndexes();
+		for (int i = 0; i < orderNames.size(); i++) {
+			int index = orderIndexes.get(i);
+			if (index < 0) {
+				for (int j = 0; j < names.size(); j++) {
+					if (names.get(j).equalsIgnoreCase(orderNames.get(i))) {
+						index = j;
+						break;
+					}
+				}
+			}
+			if (index < 0 || index >= fieldCount) {
+				String column = index < 0 ? orderNames.get(i) : String.valueOf(index + 1);
+				sendError(errorPacket(ErrorCode.ER_UNKNOWN_ERROR,
+						"order by column " + column + " must be in the select list of a multi-node query"));
+				return false;
+			}
+			if (!isByteOrdered(types[index], flags[index])) {
+				sendError(errorPacket(ErrorCode.ER_NOT_SUPPORTED_YET, "order by column " + names.get(index)
+						+ " with a non-binary collation cannot be merged across data nodes, use a _bin collation"));
+				return false;
+			}
+			orderColumns.add(String.valueOf(index));
+		}
+		// 用列下标作为列名, 结果集中有同名列时也能准确定位
+		List<String> positions = new ArrayList<>(fieldCount);
+		for (int i = 0; i < fieldCount; i++) {
+			positions.add(String.valueOf(i));
+		}
+		RowComparator comparator = new RowComparator(new ResultSetMeta(positions, types),
+				new OrderMeta(orderColumns, spec.getSortOrders()));
+		heads = new PriorityQueue<>(shardCount, (r1, r2) -> {
+			int result = comparator.compare(r1.values, r2.values);
+			// 值相同时按节点顺序输出, 结果稳定
+			return result != 0 ? result : r1.shard - r2.shard;
+		});
+		return true;
+	}
+
+	/**
+	 * 字段按字节比较的顺序是否与节点上的排序一致.
+	 * 字符串的二进制排序规则按 code point 排序, 与 utf8 编码的字节序相同; 其他排序规则忽略大小写等, 按字节归并会乱序.
+	 * enum 和 set 按定义中的序号排序
+	 */
+	static boolean isByteOrdered(int type, int flags) {
+		if ((flags & (Fields.ENUM_FLAG | Fields.SET_FLAG)) != 0) {
+			return false;
+		}
+		switch (type) {
+		case Fields.FIELD_TYPE_ENUM:
+		case Fields.FIELD_TYPE_SET:
+			return false;
+		case Fields.FIELD_TYPE_VARCHAR:
+		case Fields.FIELD_TYPE_VAR_STRING:
+		case Fields.FIELD_TYPE_STRING:
+		case Fields.FIELD_TYPE_TINY_BLOB:
+		case Fields.FIELD_TYPE_MEDIUM_BLOB:
+		case Fields.FIELD_TYPE_LONG_BLOB:
+		case Fields.FIELD_TYPE_BLOB:
+			return (flags & Fields.BINARY_FLAG) != 0;
+		default:
+			return true;
+		}
+	}
+
+	private void onRow(int shard, byte[] packet) {
+		if (!spec.isOrdered()) {
+			sendRow(packet);
+			return;
+		}
+		if (isLimitReached()) {
+			return;
+		}
+		Row row = new Row(shard, packet, decodeRow(packet, fieldCount));
+		if (hasHead[shard]) {
+			pending.get(shard).addLast(row);
+		} else {
+			hasHead[shard] = true;
+			missingHeads--;
+			heads.add(row);
+		}
+		drain();
+	}
+
+	/**
+	 * 所有未结束的节点都有当前行时, 输出堆顶并用同一节点的下一行补充
+	 */
+	private void drain() {
+		while (missingHeads == 0 && !heads.isEmpty() && !errorSent && !isLimitReached()) {
+			Row row = heads.poll();
+			Row next = pending.get(row.shard).pollFirst();
+			if (next != null) {
+				heads.add(next);
+			} else {
+				hasHead[row.shard] = false;
+				if (states[row.shard] != STATE_FINISHED) {
+					missingHeads++;
+				}
+			}
+			sendRow(row.packet);
+		}
+	}
+
+	private void finish(int shard) {
+		if (states[shard] == STATE_FINISHED) {
+			return;
+		}
+		if (spec.isOrdered() && !hasHead[shard]) {
+			missingHeads--;
+		}
+		states[shard] = STATE_FINISHED;
+		finishNanos[shard] = System.nanoTime();
+		finishedCount++;
+		if (errorSent) {
+			return;
+		}
+		if (spec.isOrdered() && heads != null) {
+			drain();
+		}
+		if (finishedCount < shardCount) {
+			return;
+		}
+		if (okCount == shardCount) {
+			sendOk();
+		} else if (okCount > 0) {
+			sendError(errorPacket(ErrorCode.ER_UNKNOWN_ERROR, "data nodes return both result set and ok packet"));
+		} else {
+			sendEof();
+		}
+	}
+
+	private void sendRow(byte[] packet) {
+		if (skipped < spec.getOffset()) {
+			skipped++;
+			return;
+		}
+		if (isLimitReached()) {
+			return;
+		}
+		if (sent++ == 0) {
+			firstRowNanos = System.nanoTime();
+		}
+		send(packet);
+	}
+
+	private void sendOk() {
+		byte[] payload = new byte[1 + 9 + 9 + 4];
+		int pos = 1;
+		pos = writeLength(payload, pos, affectedRows);
+		pos = writeLength(payload, pos, insertId);
+		pos = writeUB2(payload, pos, serverStatus);
+		pos = writeUB2(payload, pos, warningCount);
+		send(packet(payload, pos));
+	}
+
+	private void sendEof() {
+		byte[] payload = new byte[5];
+		payload[0] = MySQLPacket.EOF_PACKET;
+		writeUB2(payload, 1, warningCount);
+		writeUB2(payload, 3, serverStatus);
+		send(packet(payload, payload.length));
+	}
+
+	private void sendError(byte[] packet) {
+		if (errorSent) {
+			return;
+		}
+		errorSent = true;
+		send(packet);
+		if (heads != null) {
+			heads.clear();
+		}
+	}
+
+	private void send(byte[] packet) {
+		packet[3] = packetId++;
+		sink.write(packet);
+	}
+
+	static byte[] errorPacket(int errno, String message) {
+		byte[] msg = message.getBytes(StandardCharsets.UTF_8);
+		byte[] payload = new byte[9 + msg.length];
+		payload[0] = MySQLPacket.ERROR_PACKET;
+		writeUB2(payload, 1, errno);
+		payload[3] = '#';
+		System.arraycopy("HY000".getBytes(StandardCharsets.US_ASCII), 0, payload, 4, 5);
+		System.arraycopy(msg, 0, payload, 9, msg.length);
+		return packet(payload, payload.length);
+	}
+
+	private static byte[] packet(byte[] payload, int length) {
+		byte[] packet = new byte[MySQLPacket.packetHeaderSize + length];
+		packet[0] = (byte) length;
+		packet[1] = (byte) (length >>> 8);
+		packet[2] = (byte) (length >>> 16);
+		System.arraycopy(payload, 0, packet, MySQLPacket.packetHeaderSize, length);
+		return packet;
+	}
+
+	/**
+	 * EOF 包的类型为0xFE并且长度小于9, 行数据第一个字段长度为8字节时也以0xFE开始
+	 */
+	static boolean isEof(byte[] packet) {
+		return packet[MySQLPacket.packetHeaderSize] == MySQLPacket.EOF_PACKET
+				&& packet.length < MySQLPacket.packetHeaderSize + 9;
+	}
+
+	static List<byte[]> decodeRow(byte[] packet, int fieldCount) {
+		List<byte[]> row = new ArrayList<>(fieldCount);
+		int[] pos = { MySQLPacket.packetHeaderSize };
+		for (int i = 0; i < fieldCount; i++) {
+			if ((packet[pos[0]] & 0xFF) == 0xFB) {
+				pos[0]++;
+				row.add(null);
+				continue;
+			}
+			int length = (int) readLength(packet, pos);
+			byte[] value = new byte[length];
+			System.arraycopy(packet, pos[0], value, 0, length);
+			pos[0] += length;
+			row.add(value);
+		}
+		return row;
+	}
+
+	private static long readLength(byte[] data, int[] pos) {
+		int first = data[pos[0]++] & 0xFF;
+		int bytes;
+		switch (first) {
+		case 0xFC:
+			bytes = 2;
+			break;
+		case 0xFD:
+			bytes = 3;
+			break;
+		case 0xFE:
+			bytes = 8;
+			break;
+		default:
+			return first;
+		}
+		long value = 0;
+		for (int i = 0; i < bytes; i++) {
+			value |= (long) (data[pos[0]++] & 0xFF) << (i * 8);
+		}
+		return value;
+	}
+
+	private static int writeLength(byte[] data, int pos, long value) {
+		if (value < 251) {
+			data[pos++] = (byte) value;
+			return pos;
+		}
+		int bytes;
+		if (value < 0x10000L) {
+			data[pos++] = (byte) 0xFC;
+			bytes = 2;
+		} else if (value < 0x1000000L) {
+			data[pos++] = (byte) 0xFD;
+			bytes = 3;
+		} else {
+			data[pos++] = (byte) 0xFE;
+			bytes = 8;
+		}
+		for (int i = 0; i < bytes; i++) {
+			data[pos++] = (byte) (value >>> (i * 8));
+		}
+		return pos;
+	}
+
+	private static int readUB2(byte[] data, int pos) {
+		return (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8;
+	}
+
+	private static int writeUB2(byte[] data, int pos, int value) {
+		data[pos] = (byte) value;
+		data[pos + 1] = (byte) (value >>> 8);
+		return pos + 2;
+	}
+
+	public boolean isLimitReached() {
+		return spec.getCount() >= 0 && sent >= spec.getCount();
+	}
+
+	/**
+	 * 有序合并时节点缓存的行过多, 需要暂停读取
+	 */
+	public boolean isBufferFull(int shard) {
+		return pending != null && pending.get(shard).size() >= MAX_BUFFERED_ROWS;
+	}
+
+	public boolean isFinished(int shard) {
+		return states[shard] == STATE_FINISHED;
+	}
+
+	public boolean isAllFinished() {
+		return finishedCount == shardCount;
+	}
+
+	public boolean hasError() {
+		return errorSent;
+	}
+
+	public long getSentRows() {
+		return sent;
+	}
+
+	/**
+	 * 输出第一行的时间, 没有输出行时为0
+	 */
+	public long getFirstRowNanos() {
+		return firstRowNanos;
+	}
+
+	public long getFinishNanos(int shard) {
+		return finishNanos[shard];
+	}
+
+	private static class Row {
+		final int shard;
+		final byte[] packet;
+		final List<byte[]> values;
+
+		Row(int shard, byte[] packet, List<byte[]> values) {
+			this.shard = shard;
+			this.packet = packet;
+			this.values = values;
+		}
+	}
+}
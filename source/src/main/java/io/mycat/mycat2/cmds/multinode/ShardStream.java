@@ -0,0 +1,143 @@
+package io.mycat.mycat2.cmds.multinode;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.mycat.mycat2.AbstractMySQLSession;
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.beans.MySQLPackageInf;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mycat2.tasks.AbstractBackendIOTask;
+import io.mycat.mysql.packet.CommandPacket;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.util.ErrorCode;
+
+/**
+ * 一个节点上的语句执行. 使用独立的 buffer 读取响应, 每个完整的报文复制后交给 {@link ResultMerger},
+ * 多个节点的读取互不影响
+ */
+public class ShardStream extends AbstractBackendIOTask<MySQLSession> {
+
+	private static Logger logger = LoggerFactory.getLogger(ShardStream.class);
+
+	private final MultiDNExecution execution;
+	private final int shard;
+	private boolean paused;
+	private boolean released;
+
+	public ShardStream(MultiDNExecution execution, int shard, MySQLSession session) {
+		super(session, true);
+		this.execution = execution;
+		this.shard = shard;
+	}
+
+	public void send(byte[] sql) throws IOException {
+		/*设置为忙*/
+		session.setIdle(false);
+		ProxyBuffer proxyBuf = session.proxyBuffer;
+		proxyBuf.reset();
+		CommandPacket packet = new CommandPacket();
+		packet.packetId = 0;
+		packet.command = MySQLPacket.COM_QUERY;
+		packet.arg = sql;
+		packet.write(proxyBuf);
+		proxyBuf.flip();
+		proxyBuf.readIndex = proxyBuf.writeIndex;
+		session.beginQuery();
+		session.writeToChannel();
+	}
+
+	@Override
+	public void onSocketRead(MySQLSession session) throws IOException {
+		// 前端写出数据时会取得 buffer 控制权, 节点使用的是独立的 buffer, 直接取回
+		session.setCurBufOwner(true);
+		try {
+			if (!session.readFromChannel()) {
+				return;
+			}
+		} catch (IOException e) {
+			logger.warn("read data node {} response error. {}", session.getMySQLMetaBean(), e.getMessage());
+			execution.onShardFailed(shard, ErrorCode.ERR_CONNECT_SOCKET, "read data node response error. " + e.getMessage());
+			return;
+		}
+		ProxyBuffer proxyBuf = session.proxyBuffer;
+		MySQLPackageInf packageInf = session.curMSQLPackgInf;
+		for (;;) {
+			AbstractMySQLSession.CurrPacketType packetType = session.resolveMySQLPackage(proxyBuf, packageInf, true);
+			if (packetType == AbstractMySQLSession.CurrPacketType.Full) {
+				execution.onPacket(shard, proxyBuf.getBytes(packageInf.startPos, packageInf.pkgLength));
+				if (released) {
+					// 已经结束, buffer 已归还
+					execution.onShardRead(shard);
+					return;
+				}
+			} else {
+				if (packetType == AbstractMySQLSession.CurrPacketType.LongHalfPacket
+						&& packageInf.pkgLength > proxyBuf.getBuffer().capacity()) {
+					// 报文大于 buffer, 换成能容纳整个报文的 buffer
+					proxyBuf.readMark = packageInf.startPos;
+					proxyBuf.readIndex = packageInf.startPos;
+					try {
+						session.ensureFreeSpaceOfReadBuffer();
+					} catch (IllegalArgumentException e) {
+						execution.onShardFailed(shard, ErrorCode.ER_NET_PACKET_TOO_LARGE, e.getMessage());
+						return;
+					}
+				}
+				break;
+			}
+		}
+		//设置读取过的指针
+		proxyBuf.readMark = proxyBuf.readIndex;
+		execution.onShardRead(shard);
+	}
+
+	@Override
+	public void onSocketClosed(MySQLSession session, boolean normal) {
+		try {
+			execution.onShardFailed(shard, ErrorCode.ERR_CONNECT_SOCKET, "data node connection closed");
+		} catch (IOException e) {
+			logger.warn("data node {} closed, write error to front error. {}", session.getMySQLMetaBean(), e.getMessage());
+		}
+	}
+
+	/**
+	 * 暂停或者恢复读取, 等待前端或者其他节点
+	 */
+	void pause(boolean pause) {
+		if (released || paused == pause) {
+			return;
+		}
+		paused = pause;
+		if (pause) {
+			session.clearReadWriteOpts();
+		} else {
+			session.change2ReadOpts();
+		}
+	}
+
+	/**
+	 * 语句执行结束, 恢复连接共享的 buffer 和默认的 handler, 连接继续绑定在前端会话上
+	 */
+	void release() {
+		if (released) {
+			return;
+		}
+		released = true;
+		session.endQuery(true);
+		revertPreBuffer();
+		session.clearIdle();
+		session.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+	}
+
+	public MySQLSession getSession() {
+		return session;
+	}
+
+	public boolean isReleased() {
+		return released;
+	}
+}
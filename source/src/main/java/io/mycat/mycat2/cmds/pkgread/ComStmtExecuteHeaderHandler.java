@@ -5,11 +5,13 @@ import java.io.IOException;
 import io.mycat.mycat2.AbstractMySQLSession.CurrPacketType;
 import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.beans.MySQLPackageInf;
+import io.mycat.mycat2.cmds.ComStmtExecuteCmd;
 import io.mycat.mycat2.cmds.judge.ErrorJudge;
 import io.mycat.mycat2.cmds.judge.OkJudge;
 import io.mycat.mycat2.console.SessionKeyEnum;
 import io.mycat.mysql.packet.MySQLPacket;
 import io.mycat.proxy.ProxyBuffer;
+import io.mycat.util.ErrorCode;
 
 /**
  * 
@@ -40,6 +42,11 @@ public class ComStmtExecuteHeaderHandler implements CommandHandler {
 		if (null != pkgTypeEnum && CurrPacketType.Full == pkgTypeEnum) {
 			// 如果当前为错误包，则进交给错误包处理
 			if (session.curMSQLPackgInf.pkgType == MySQLPacket.ERROR_PACKET) {
+				// 错误包: 标识, 2 字节错误码
+				int errno = (int) curBuffer.getFixInt(curMSQLPackgInf.startPos + MySQLPacket.packetHeaderSize + 1, 2);
+				if (errno == ErrorCode.ER_NEED_REPREPARE) {
+					ComStmtExecuteCmd.onNeedReprepare(session.getMycatSession());
+				}
 				boolean runFlag = ErrorJudge.INSTANCE.judge(session);
 
 				if (runFlag) {
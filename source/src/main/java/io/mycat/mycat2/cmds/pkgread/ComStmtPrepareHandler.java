@@ -48,7 +48,7 @@ public class ComStmtPrepareHandler implements CommandHandler {
 				// 检查当前是否为eof包,并且为整包 ,解析eof包
 				if (session.curMSQLPackgInf.pkgType == MySQLPacket.EOF_PACKET) {
 					// 进行标识重置
-					session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_COLUMN_OVER.getKey());
+					session.setFlag(SessionKeyEnum.SESSION_KEY_COLUMN_OVER, false);
 					isFinish = true;
 					// 如果当前的eof包大于1说明已经为eof结束包,切换到解析器进行解析
 					boolean gotoRead = EofJudge.INSTANCE.judge(session);
@@ -100,11 +100,11 @@ public class ComStmtPrepareHandler implements CommandHandler {
 
 		if (!isFinish) {
 			// 在stmt的处理中分为两阶段，首先进行SQL的预编译，然后进行值的执行,所以不能标识结束
-			mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG.getKey(), true);
+			mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, true);
 		}
 		// 完成传输，则移除标识
 		else {
-			mycatSession.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG.getKey());
+			mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, false);
 		}
 
 		/**
@@ -45,17 +45,17 @@ public class ComStmtResetHandler implements CommandHandler {
 			// 如果当前为错误包，则进交给错误包处理
 			if (session.curMSQLPackgInf.pkgType == MySQLPacket.ERROR_PACKET) {
 				// 标识连接当前非闲置
-				session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+				session.setIdle(false);
 				// 标识当后端向前端响应已经结束
-				mycatSession.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG.getKey());
+				mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, false);
 				return false;
 			}
 			// 如果是ok报文
 			else if (session.curMSQLPackgInf.pkgType == MySQLPacket.OK_PACKET) {
 				// 标识连接当前非闲置
-				session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+				session.setIdle(false);
 				// 标识当后端向前端响应已经结束
-				mycatSession.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG.getKey());
+				mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, false);
 				return false;
 			}
 		}
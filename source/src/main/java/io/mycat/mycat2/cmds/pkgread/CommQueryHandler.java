@@ -83,8 +83,7 @@ public class CommQueryHandler implements CommandHandler {
 			if (QUERY_PKG_START <= pkgType) {
 
 				// 标识当前为查询
-				session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_PKG_TYPE_KEY.getKey(),
-						MySQLPacket.RESULTSET_PACKET);
+				session.setAttr(SessionKeyEnum.SESSION_KEY_PKG_TYPE_KEY, MySQLPacket.RESULTSET_PACKET);
 
 				// 当前确认查询包，则切换至查询的读取操作
 				session.getMycatSession().commandHandler = CommQueryHandlerResultSet.INSTANCE;
@@ -94,12 +93,11 @@ public class CommQueryHandler implements CommandHandler {
 			else if (session.curMSQLPackgInf.pkgType == MySQLPacket.LOAD_DATA_PACKET) {
 
 				// 标识当前为loaddata操作
-				session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_PKG_TYPE_KEY.getKey(),
-						MySQLPacket.LOAD_DATA_PACKET);
+				session.setAttr(SessionKeyEnum.SESSION_KEY_PKG_TYPE_KEY, MySQLPacket.LOAD_DATA_PACKET);
 
 				session.getMycatSession().curSQLCommand = LoadDataCommand.INSTANCE;
 				// 将前端的包检查关闭
-				session.getMycatSession().getSessionAttrMap().put(SessionKeyEnum.SESSION_PKG_READ_FLAG.getKey(), true);
+				session.getMycatSession().setFlag(SessionKeyEnum.SESSION_PKG_READ_FLAG, true);
 
 				// 切换buffer 读状态
 				curBuffer.flip();
@@ -115,12 +113,10 @@ public class CommQueryHandler implements CommandHandler {
 				if (null != judge) {
 
 					// 标识当前为成功或者失败的类型
-					session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_PKG_TYPE_KEY.getKey(),
-							session.curMSQLPackgInf.pkgType);
+					session.setAttr(SessionKeyEnum.SESSION_KEY_PKG_TYPE_KEY, session.curMSQLPackgInf.pkgType);
 
 					// 当检查到完毕后，直接结束
-					session.getMycatSession().getSessionAttrMap()
-							.remove(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG.getKey());
+					session.getMycatSession().setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, false);
 
 					boolean runFlag = judge.judge(session);
 
@@ -135,7 +131,7 @@ public class CommQueryHandler implements CommandHandler {
 		else {
 			MycatSession mycatSession = session.getMycatSession();
 			// 标识当前传输未结束
-			mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG.getKey(), true);
+			mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, true);
 
 		}
 
@@ -52,13 +52,13 @@ public class CommQueryHandlerResultSet implements CommandHandler {
 				// 检查当前是否为eof包,并且为整包 ,解析eof包
 				if (session.curMSQLPackgInf.pkgType == MySQLPacket.EOF_PACKET) {
 					// 首先检查当前列标识结果
-					if (!session.getSessionAttrMap().containsKey(SessionKeyEnum.SESSION_KEY_COLUMN_OVER.getKey())) {
-						session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_COLUMN_OVER.getKey(), true);
+					if (!session.hasFlag(SessionKeyEnum.SESSION_KEY_COLUMN_OVER)) {
+						session.setFlag(SessionKeyEnum.SESSION_KEY_COLUMN_OVER, true);
 					}
 					// 如果当前列列结束，则进行结束标识验证
 					else {
 						// 进行标识重置
-						session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_COLUMN_OVER.getKey());
+						session.setFlag(SessionKeyEnum.SESSION_KEY_COLUMN_OVER, false);
 						isFinish = true;
 
 						// 如果当前的eof包大于1说明已经为eof结束包,切换到解析器进行解析
@@ -75,7 +75,8 @@ public class CommQueryHandlerResultSet implements CommandHandler {
 					}
 				}
 
-				if (curBuffer.readIndex == curBuffer.writeIndex) {
+				// 结果集结束后的数据属于下一个响应(流水线模式),交给首包处理
+				if (isFinish || curBuffer.readIndex == curBuffer.writeIndex) {
 					isContinue = false;
 				} else {
 					isContinue = true;
@@ -120,10 +121,10 @@ public class CommQueryHandlerResultSet implements CommandHandler {
 
 		if (!isFinish) {
 			// 标识当前传输未结束
-			mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG.getKey(), true);
+			mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, true);
 		} else {
 			// 结束移除标识
-			mycatSession.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG.getKey());
+			mycatSession.setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, false);
 		}
 
 		// mycatSession.writeToChannel();
@@ -31,7 +31,8 @@ public class HandlerParse {
 		HANDLERS[0x16] = ComStmtPrepareHeaderHandler.INSTANCE;
 		// 0x17 COM_STMT_EXECUTE 执行预处理语句
 		HANDLERS[0x17] = ComStmtExecuteHeaderHandler.INSTANCE;
-		// 0x18 COM_STMT_SEND_LONG_DATA 发送BLOB类型的数据
+		// 0x18 COM_STMT_SEND_LONG_DATA 发送BLOB类型的数据, 没有响应
+		HANDLERS[0x18] = CommQueryHandler.INSTANCE;
 		// 0x19 COM_STMT_CLOSE 销毁预处理语句
 		HANDLERS[0x19] = CommQueryHandler.INSTANCE;
 		// 0x1A COM_STMT_RESET 清除预处理语句参数缓存
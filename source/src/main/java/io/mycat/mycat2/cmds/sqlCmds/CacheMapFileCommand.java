@@ -10,7 +10,6 @@ import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.MycatSession;
 import io.mycat.mycat2.cmds.cache.directfrontchain.maptoresult.front.CacheGetProcess;
 import io.mycat.mycat2.cmds.cache.directfrontchain.maptoresult.front.CacheQueryResultSetProc;
-import io.mycat.mycat2.cmds.cache.directfrontchain.maptoresult.front.CacheResultProc;
 import io.mycat.mycat2.cmds.cache.directfrontchain.maptoresult.front.FrontDataOverCheck;
 import io.mycat.mycat2.cmds.cache.directfrontchain.maptoresult.largeresult.DataEventProc;
 import io.mycat.mycat2.cmds.cache.directfrontchain.maptoresult.largeresult.ResultOverFlag;
@@ -41,23 +40,18 @@ public class CacheMapFileCommand implements MySQLCommand {
 	@Override
 	public boolean procssSQL(MycatSession session) throws IOException {
 
-		SeqContextList seqcontext = (SeqContextList) session.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ.getKey());
+		SeqContextList seqcontext = (SeqContextList) session.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ);
 
 		if (null == seqcontext) {
 			seqcontext = new SeqContextList();
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ.getKey(), seqcontext);
+			session.setAttr(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ, seqcontext);
 		}
 
 		seqcontext.clear();
 
 		seqcontext.setSession(session);
-		// 检查当前的缓存标识
+		// 检查当前的缓存标识, 命中时把缓存文件直接写往前端, 否则向后端查询
 		seqcontext.addExec(CacheGetProcess.INSTANCE);
-		// 如果需要走缓存，则先进行当前数据集是否结束的检查
-		seqcontext.addExec(FrontDataOverCheck.INSTANCE);
-		// 进发当前buffer读取完成后的事件处理
-		seqcontext.addExec(CacheResultProc.INSTANCE);
 
 		try {
 			seqcontext.nextExec();
@@ -76,12 +70,11 @@ public class CacheMapFileCommand implements MySQLCommand {
 			return false;
 		}
 
-		SeqContextList seqcontext = (SeqContextList) session.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ.getKey());
+		SeqContextList seqcontext = (SeqContextList) session.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ);
 
 		if (null == seqcontext) {
 			seqcontext = new SeqContextList();
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ.getKey(), seqcontext);
+			session.setAttr(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ, seqcontext);
 		}
 
 		seqcontext.clear();
@@ -116,12 +109,11 @@ public class CacheMapFileCommand implements MySQLCommand {
 	@Override
 	public boolean onFrontWriteFinished(MycatSession session) throws IOException {
 
-		SeqContextList seqcontext = (SeqContextList) session.getSessionAttrMap()
-				.get(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ.getKey());
+		SeqContextList seqcontext = (SeqContextList) session.getAttr(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ);
 
 		if (null == seqcontext) {
 			seqcontext = new SeqContextList();
-			session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ.getKey(), seqcontext);
+			session.setAttr(SessionKeyEnum.SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ, seqcontext);
 		}
 
 		seqcontext.clear();
@@ -0,0 +1,116 @@
+package io.mycat.mycat2.cmds.stmt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 前端连接上的一个预处理语句. statement id 由 mycat 分配, 与后端连接无关,
+ * 每次执行时换成执行所在后端连接上的 id.
+ * 1. 记录最近一次绑定的参数类型, 前端不再发送类型时补上, 后端连接上的语句可能由其他前端绑定过
+ * 2. COM_STMT_SEND_LONG_DATA 的数据先保存下来, 执行时和 COM_STMT_EXECUTE 一起发往后端
+ * 3. 返回 ER_NEED_REPREPARE 后元数据已经过期, 语句失效, 前端需要重新预处理
+ */
+public class ClientStatement {
+
+	/* COM_STMT_EXECUTE: 命令, statement id, flags, iteration count */
+	private static final int EXECUTE_HEADER_SIZE = 1 + 4 + 1 + 4;
+
+	private final long id;
+	private final PreparedStatementMeta meta;
+	private byte[] paramTypes;
+	/* COM_STMT_SEND_LONG_DATA 去掉命令和 statement id 之后的内容: 参数序号和数据 */
+	private List<byte[]> longData;
+	private boolean invalid;
+
+	public ClientStatement(long id, PreparedStatementMeta meta) {
+		this.id = id;
+		this.meta = meta;
+	}
+
+	/**
+	 * 转换前端的 COM_STMT_EXECUTE 报文内容, statement id 换成后端的 id, 没有绑定参数类型时补上最近一次的类型
+	 *
+	 * @param payload
+	 *            不包含报文头
+	 * @return 发往后端的报文内容
+	 */
+	public byte[] toBackendExecute(byte[] payload, long backendStatementId) {
+		int paramCount = meta.getParamCount();
+		int boundFlagPos = EXECUTE_HEADER_SIZE + (paramCount + 7) / 8;
+		byte[] result = payload;
+		if (paramCount > 0 && payload.length > boundFlagPos) {
+			if (payload[boundFlagPos] == 1) {
+				int typesEnd = boundFlagPos + 1 + paramCount * 2;
+				if (payload.length >= typesEnd) {
+					paramTypes = Arrays.copyOfRange(payload, boundFlagPos + 1, typesEnd);
+				}
+			} else if (paramTypes != null) {
+				result = new byte[payload.length + paramTypes.length];
+				System.arraycopy(payload, 0, result, 0, boundFlagPos);
+				result[boundFlagPos] = 1;
+				System.arraycopy(paramTypes, 0, result, boundFlagPos + 1, paramTypes.length);
+				System.arraycopy(payload, boundFlagPos + 1, result, boundFlagPos + 1 + paramTypes.length,
+						payload.length - boundFlagPos - 1);
+			}
+		}
+		if (result == payload) {
+			result = payload.clone();
+		}
+		PreparedStatementMeta.putInt(result, 1, 4, backendStatementId);
+		return result;
+	}
+
+	/**
+	 * 转换 COM_STMT_FETCH 等只带 statement id 的报文内容
+	 */
+	public static byte[] replaceStatementId(byte[] payload, long backendStatementId) {
+		byte[] result = payload.clone();
+		PreparedStatementMeta.putInt(result, 1, 4, backendStatementId);
+		return result;
+	}
+
+	/**
+	 * 报文内容中的 statement id, 报文内容不包含报文头
+	 */
+	public static long statementId(byte[] payload) {
+		return PreparedStatementMeta.getInt(payload, 1, 4);
+	}
+
+	public void addLongData(byte[] payload) {
+		if (longData == null) {
+			longData = new ArrayList<>();
+		}
+		longData.add(Arrays.copyOfRange(payload, 5, payload.length));
+	}
+
+	/**
+	 * 取出等待发送的 long data, 执行或者 COM_STMT_RESET 之后清除
+	 */
+	public List<byte[]> pollLongData() {
+		List<byte[]> data = longData;
+		longData = null;
+		return data;
+	}
+
+	/**
+	 * 表结构变化后语句的元数据已经过期, 之后的执行都返回 ER_NEED_REPREPARE
+	 */
+	public void invalidate() {
+		invalid = true;
+		paramTypes = null;
+		longData = null;
+	}
+
+	public boolean isInvalid() {
+		return invalid;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public PreparedStatementMeta getMeta() {
+		return meta;
+	}
+}
@@ -0,0 +1,47 @@
+package io.mycat.mycat2.cmds.stmt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 预处理语句元数据的缓存, 每个 reactor 一个, 只在 reactor 线程中访问. 按访问顺序淘汰
+ */
+public class PreparedStatementCache {
+
+	private final int maxSize;
+	private final LinkedHashMap<String, PreparedStatementMeta> cache;
+
+	/**
+	 * @param maxSize
+	 *            最多缓存的语句数, 不大于0时不缓存
+	 */
+	public PreparedStatementCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.cache = new LinkedHashMap<String, PreparedStatementMeta>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatementMeta> eldest) {
+				return size() > PreparedStatementCache.this.maxSize;
+			}
+		};
+	}
+
+	public PreparedStatementMeta get(String key) {
+		return cache.get(key);
+	}
+
+	public void put(PreparedStatementMeta meta) {
+		if (maxSize > 0) {
+			cache.put(meta.getKey(), meta);
+		}
+	}
+
+	public void remove(String key) {
+		cache.remove(key);
+	}
+
+	public int size() {
+		return cache.size();
+	}
+}
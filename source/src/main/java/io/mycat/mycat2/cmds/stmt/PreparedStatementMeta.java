@@ -0,0 +1,129 @@
+package io.mycat.mycat2.cmds.stmt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.util.ParseUtil;
+
+/**
+ * 预处理语句的元数据, 即后端 COM_STMT_PREPARE 的完整响应: PREPARE_OK、参数定义和列定义.
+ * 与具体的后端连接无关, 同一条语句再次预处理时直接用缓存的响应回复前端, 只替换 statement id
+ */
+public final class PreparedStatementMeta {
+
+	/* PREPARE_OK 中 statement id、列数、参数数的位置 */
+	static final int STATEMENT_ID_POS = MySQLPacket.packetHeaderSize + 1;
+	private static final int COLUMN_COUNT_POS = STATEMENT_ID_POS + 4;
+	private static final int PARAM_COUNT_POS = COLUMN_COUNT_POS + 2;
+
+	private final String key;
+	private final byte[] sql;
+	private final int paramCount;
+	private final int columnCount;
+	/* 包含报文头的完整报文, 第一个为 PREPARE_OK */
+	private final byte[][] packets;
+	private final int responseSize;
+
+	public PreparedStatementMeta(String key, byte[] sql, List<byte[]> packets) {
+		this.key = key;
+		this.sql = sql;
+		this.packets = packets.toArray(new byte[packets.size()][]);
+		this.columnCount = columnCount(this.packets[0]);
+		this.paramCount = paramCount(this.packets[0]);
+		int size = 0;
+		for (byte[] packet : this.packets) {
+			size += packet.length;
+		}
+		this.responseSize = size;
+	}
+
+	/**
+	 * 语句在缓存和后端连接上的标识, 相同的语句在不同的 schema 下是不同的语句
+	 */
+	public static String key(String schema, byte[] sql) {
+		return schema + '\n' + new String(sql, StandardCharsets.ISO_8859_1);
+	}
+
+	public static long statementId(byte[] prepareOk) {
+		return getInt(prepareOk, STATEMENT_ID_POS, 4);
+	}
+
+	public static int columnCount(byte[] prepareOk) {
+		return (int) getInt(prepareOk, COLUMN_COUNT_POS, 2);
+	}
+
+	public static int paramCount(byte[] prepareOk) {
+		return (int) getInt(prepareOk, PARAM_COUNT_POS, 2);
+	}
+
+	/**
+	 * PREPARE_OK 之后还有参数定义和列定义, 各自以 EOF 结束
+	 *
+	 * @return 完整响应的报文数量
+	 */
+	public static int packetCount(byte[] prepareOk) {
+		int params = paramCount(prepareOk);
+		int columns = columnCount(prepareOk);
+		return 1 + (params > 0 ? params + 1 : 0) + (columns > 0 ? columns + 1 : 0);
+	}
+
+	static long getInt(byte[] bytes, int offset, int length) {
+		long value = 0;
+		for (int i = length - 1; i >= 0; i--) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+	static void putInt(byte[] bytes, int offset, int length, long value) {
+		for (int i = 0; i < length; i++) {
+			bytes[offset + i] = (byte) (value >>> (8 * i));
+		}
+	}
+
+	/**
+	 * 把缓存的响应写入 buffer, 报文序号从 1 开始, statement id 换成前端的 id
+	 */
+	public void writeResponse(ProxyBuffer buffer, long statementId) {
+		for (int i = 0; i < packets.length; i++) {
+			int start = buffer.writeIndex;
+			buffer.writeBytes(packets[i]);
+			buffer.putFixInt(start + ParseUtil.mysql_packetHeader_length, 1, i + 1);
+			if (i == 0) {
+				buffer.putFixInt(start + STATEMENT_ID_POS, 4, statementId);
+			}
+		}
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public byte[] getSql() {
+		return sql;
+	}
+
+	public int getParamCount() {
+		return paramCount;
+	}
+
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * 缓存的响应的总字节数
+	 */
+	public int getResponseSize() {
+		return responseSize;
+	}
+
+	/**
+	 * 参数和列的定义是否相同, 不同时前端持有的定义已经过期
+	 */
+	public boolean sameShape(PreparedStatementMeta other) {
+		return paramCount == other.paramCount && columnCount == other.columnCount;
+	}
+}
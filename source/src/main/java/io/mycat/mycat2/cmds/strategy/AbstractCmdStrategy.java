@@ -11,8 +11,10 @@ import io.mycat.mycat2.MySQLCommand;
 import io.mycat.mycat2.MycatSession;
 import io.mycat.mycat2.cmds.CmdStrategy;
 import io.mycat.mycat2.cmds.DirectPassthrouhCmd;
+import io.mycat.mycat2.cmds.cache.mapcache.CacheManager;
 import io.mycat.mycat2.cmds.interceptor.SQLAnnotationChain;
 import io.mycat.mycat2.cmds.manager.MyCatCmdDispatcher;
+import io.mycat.mycat2.sqlannotations.AnnotationProcessor;
 import io.mycat.mycat2.sqlannotations.CacheResult;
 import io.mycat.mycat2.sqlannotations.CacheResultMeta;
 import io.mycat.mycat2.sqlannotations.CatletMeta;
@@ -21,6 +23,7 @@ import io.mycat.mycat2.sqlannotations.SQLAnnotation;
 import io.mycat.mycat2.sqlparser.BufferSQLContext;
 import io.mycat.mycat2.sqlparser.BufferSQLParser;
 import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.MycatReactorThread;
 import io.mycat.util.ErrorCode;
 
 public abstract class AbstractCmdStrategy implements CmdStrategy {
@@ -40,14 +43,24 @@ public abstract class AbstractCmdStrategy implements CmdStrategy {
 	private Map<Byte,SQLAnnotation> staticAnnontationMap = new HashMap<>();
 
 	/**
-	 * sqlparser
+	 * 按sql类型记录能否进入流水线, 命令注册完成后计算一次. 只有直接透传的语句类型可以进入流水线
 	 */
-	protected BufferSQLParser parser = new BufferSQLParser();
+	private final boolean[] pipelineableTypes = new boolean[256];
 
 	public AbstractCmdStrategy(){
 		initMyCmdHandler();
 		initMySqlCmdHandler();
 		initStaticAnnotation();
+		initPipelineableTypes();
+	}
+
+	private void initPipelineableTypes(){
+		for (int i = 0; i < pipelineableTypes.length; i++) {
+			byte sqltype = (byte) i;
+			MySQLCommand command = MYSQLCOMMANDMAP.get(sqltype);
+			pipelineableTypes[i] = BufferSQLContext.MYCAT_SQL != sqltype && BufferSQLContext.LOAD_SQL != sqltype
+					&& (command == null || command == DirectPassthrouhCmd.INSTANCE);
+		}
 	}
 	
 	private void initStaticAnnotation(){
@@ -63,6 +76,31 @@ public abstract class AbstractCmdStrategy implements CmdStrategy {
 		staticAnnontationMap.put(BufferSQLContext.ANNOTATION_CATLET, catlet );
 	}
 	
+	/**
+	 * 流水线模式下,判断语句能否不经过路由直接跟随前一条语句透传到同一个后端连接.
+	 * mycat 命令、带注解的语句以及需要特殊命令处理的语句都不能进入流水线
+	 *
+	 * @param session
+	 * @param context 语句的解析结果
+	 * @return
+	 */
+	public boolean isPipelineable(MycatSession session, BufferSQLContext context) {
+		byte sqltype = context.getSQLType() != 0 ? context.getSQLType() : context.getCurSQLType();
+		return pipelineableTypes[sqltype & 0xff] && !context.hasAnnotation()
+				&& !AnnotationProcessor.getInstance().mayMatch(context);
+	}
+
+	/**
+	 * 按路由结果调整查询语句的处理命令, 例如需要在多个节点上执行的语句
+	 *
+	 * @param session
+	 * @param command 按语句类型选择的命令, 可能为 null
+	 * @return
+	 */
+	protected MySQLCommand routeQueryCommand(MycatSession session, MySQLCommand command) {
+		return command;
+	}
+
 	protected abstract void initMyCmdHandler();
 	
 	protected abstract void initMySqlCmdHandler();
@@ -75,7 +113,7 @@ public abstract class AbstractCmdStrategy implements CmdStrategy {
 			/**
 			 * sqlparser
 			 */
-			BufferSQLParser parser = new BufferSQLParser();
+			BufferSQLParser parser = MycatReactorThread.currentSQLParser();
 			int rowDataIndex = session.curMSQLPackgInf.startPos + MySQLPacket.packetHeaderSize +1 ;
 			int length = session.curMSQLPackgInf.pkgLength -  MySQLPacket.packetHeaderSize - 1 ;
 			try {
@@ -90,6 +128,9 @@ public abstract class AbstractCmdStrategy implements CmdStrategy {
 				return false;
 			}
 			
+			// 修改数据的sql使相关表的结果集缓存失效
+			CacheManager.INSTANCE.invalidate(session.sqlContext, session.schema == null ? null : session.schema.getName());
+			
 			byte sqltype = session.sqlContext.getSQLType()!=0?session.sqlContext.getSQLType():session.sqlContext.getCurSQLType();
 			
 			if(BufferSQLContext.MYCAT_SQL==sqltype){
@@ -97,7 +138,7 @@ public abstract class AbstractCmdStrategy implements CmdStrategy {
 				return true;
 			}
 			
-			command = MYSQLCOMMANDMAP.get(sqltype);
+			command = routeQueryCommand(session, MYSQLCOMMANDMAP.get(sqltype));
 		}else{
 			command = MYCOMMANDMAP.get((byte)session.curMSQLPackgInf.pkgType);
 		}
@@ -112,7 +153,7 @@ public abstract class AbstractCmdStrategy implements CmdStrategy {
 		 * 3. 处理静态注解
 		 * 4. 构建命令或者注解链。    如果没有注解链，直接返回目标命令
 		 */
-		SQLAnnotationChain chain = new SQLAnnotationChain();
+		SQLAnnotationChain chain = session.sqlAnnotationChain.reset();
 		session.curSQLCommand = chain.setTarget(command) 
 			 .processDynamicAnno(session)
 			 .processStaticAnno(session, staticAnnontationMap)
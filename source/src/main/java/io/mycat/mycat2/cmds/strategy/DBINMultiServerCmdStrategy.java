@@ -1,19 +1,48 @@
 package io.mycat.mycat2.cmds.strategy;
 
-public class DBINMultiServerCmdStrategy extends AbstractCmdStrategy {
+import io.mycat.mycat2.MySQLCommand;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.cmds.DirectPassthrouhCmd;
+import io.mycat.mycat2.cmds.HBTQueryCmd;
+import io.mycat.mycat2.cmds.NotSupportCmd;
+import io.mycat.mycat2.cmds.ShardingMultiDNCmd;
+import io.mycat.mycat2.cmds.multinode.MergeSpec;
+import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mycat2.hbt.planner.HBTPlan;
+import io.mycat.mycat2.hbt.planner.HBTPlanner;
+import io.mycat.mycat2.route.ShardingRouter;
+import io.mycat.mysql.AutoCommit;
+import io.mycat.proxy.ProxyRuntime;
+
+/**
+ * 分库的命令处理与单库相同, 差别只在于 {@link io.mycat.mycat2.MycatSession#getBackend} 按分片路由选择复制组.
+ * 不能路由到唯一分片、结果可以合并的 select/update/delete 在所有分片上执行,
+ * 其他跨复制组的 select(关联、聚合)由 {@link HBTPlanner} 规划为 HBT 管道执行.
+ * 以上都不能执行的语句, 以及事务中不能路由到唯一分片的语句, 返回错误, 不发往默认节点
+ */
+public class DBINMultiServerCmdStrategy extends DBInOneServerCmdStrategy {
 	
 	public static final DBINMultiServerCmdStrategy INSTANCE = new DBINMultiServerCmdStrategy();
 
 	@Override
-	protected void initMyCmdHandler() {
-		// TODO Auto-generated method stub
-		
+	protected MySQLCommand routeQueryCommand(MycatSession session, MySQLCommand command) {
+		if (session.routeSharding()) {
+			return command;
+		}
+		// 事务中的语句需要在同一个连接上执行, 不能分发到多个节点
+		if ((command == null || command == DirectPassthrouhCmd.INSTANCE) && session.autoCommit == AutoCommit.ON) {
+			ShardingRouter router = ProxyRuntime.INSTANCE.getConfig().getShardingRouter(session.schema.getName());
+			MySQLRepBean[] nodes = router.scatterNodes(session.sqlContext);
+			if (nodes != null && nodes.length >= 2 && MergeSpec.parse(session.sqlContext) != null) {
+				return ShardingMultiDNCmd.INSTANCE;
+			}
+			HBTPlan plan = HBTPlanner.INSTANCE.plan(session);
+			if (plan != null) {
+				session.setAttr(SessionKeyEnum.SESSION_KEY_HBT_PLAN, plan);
+				return HBTQueryCmd.INSTANCE;
+			}
+		}
+		return NotSupportCmd.UNROUTABLE;
 	}
-
-	@Override
-	protected void initMySqlCmdHandler() {
-		// TODO Auto-generated method stub
-		
-	}
-
 }
@@ -6,6 +6,9 @@ import io.mycat.mycat2.cmds.ComInitDB;
 import io.mycat.mycat2.cmds.ComPingCmd;
 import io.mycat.mycat2.cmds.ComQuitCmd;
 import io.mycat.mycat2.cmds.ComStatisticsCmd;
+import io.mycat.mycat2.cmds.ComStmtExecuteCmd;
+import io.mycat.mycat2.cmds.ComStmtLocalCmd;
+import io.mycat.mycat2.cmds.ComStmtPrepareCmd;
 import io.mycat.mycat2.cmds.DirectPassthrouhCmd;
 import io.mycat.mycat2.cmds.NotSupportCmd;
 import io.mycat.mycat2.cmds.sqlCmds.SqlComBeginCmd;
@@ -43,13 +46,13 @@ public class DBInOneServerCmdStrategy extends AbstractCmdStrategy{
 		MYCOMMANDMAP.put(MySQLPacket.COM_TABLE_DUMP,               DirectPassthrouhCmd.INSTANCE);
 		MYCOMMANDMAP.put(MySQLPacket.COM_CONNECT_OUT,              NotSupportCmd.INSTANCE);
 		MYCOMMANDMAP.put(MySQLPacket.COM_REGISTER_SLAVE,           NotSupportCmd.INSTANCE);
-		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_PREPARE,             DirectPassthrouhCmd.INSTANCE);
-		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_EXECUTE,             DirectPassthrouhCmd.INSTANCE);
-		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_SEND_LONG_DATA,      DirectPassthrouhCmd.INSTANCE);
-		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_CLOSE,      		   DirectPassthrouhCmd.INSTANCE);
-		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_RESET,      		   DirectPassthrouhCmd.INSTANCE);
+		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_PREPARE,             ComStmtPrepareCmd.INSTANCE);
+		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_EXECUTE,             ComStmtExecuteCmd.INSTANCE);
+		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_SEND_LONG_DATA,      ComStmtLocalCmd.INSTANCE);
+		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_CLOSE,      		   ComStmtLocalCmd.INSTANCE);
+		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_RESET,      		   ComStmtLocalCmd.INSTANCE);
 		MYCOMMANDMAP.put(MySQLPacket.COM_SET_OPTION,      		   DirectPassthrouhCmd.INSTANCE);
-		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_FETCH,      		   DirectPassthrouhCmd.INSTANCE);
+		MYCOMMANDMAP.put(MySQLPacket.COM_STMT_FETCH,      		   ComStmtExecuteCmd.INSTANCE);
 		MYCOMMANDMAP.put(MySQLPacket.COM_DAEMON,      			   NotSupportCmd.INSTANCE);
 		MYCOMMANDMAP.put(MySQLPacket.COM_BINLOG_DUMP_GTID,         DirectPassthrouhCmd.INSTANCE);
 		MYCOMMANDMAP.put(MySQLPacket.COM_RESET_CONNECTION,         DirectPassthrouhCmd.INSTANCE);
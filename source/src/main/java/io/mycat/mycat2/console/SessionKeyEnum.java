@@ -24,11 +24,6 @@ public enum SessionKeyEnum {
 	 */
 	SESSION_KEY_TRANSACTION_FLAG("session_key_transaction_flag"),
 
-	/**
-	 * 标识当前连接的闲置状态标识 ，true，闲置，false，未闲置,即在使用中
-	 */
-	SESSION_KEY_CONN_IDLE_FLAG("session_key_conn_idle_flag"),
-
 	/**
 	 * 标识当前后端数据透传是否结束的标识，存在此标识，标识未结束，否则即为结束
 	 */
@@ -72,6 +67,11 @@ public enum SessionKeyEnum {
 	 */
 	SESSION_KEY_CACHE_SQL_STR("session_key_cache_sql_str"),
 
+	/**
+	 * 当前需要缓存的SQL的指纹, 作为缓存的key
+	 */
+	SESSION_KEY_CACHE_SQL_KEY("session_key_cache_sql_key"),
+
 	/**
 	 * 获取数据时的偏移量
 	 */
@@ -99,9 +99,24 @@ public enum SessionKeyEnum {
 	SESSION_KEY_CACHE_MYCAT_CHAIN_SEQ("session_key_cache_mycat_chain_seq"),
 	
 	/**
-	 * 前端输出的对象table
+	 * 正在向前端输出结果的HBT管道
+	 */
+	SESSION_KEY_HBT_OUT_PIPELINE("session_key_hbt_out_pipeline"),
+
+	/**
+	 * 路由时生成的跨节点查询执行计划, 由执行命令取出
+	 */
+	SESSION_KEY_HBT_PLAN("session_key_hbt_plan"),
+
+	/**
+	 * 正在执行的多节点语句
+	 */
+	SESSION_KEY_MULTI_DN_EXECUTION("session_key_multi_dn_execution"),
+
+	/**
+	 * 透传命令取得后端连接后的回调, 每个会话复用一个
 	 */
-	SESSION_KEY_HBT_TABLE_META("session_key_hbt_table_meta"),
+	SESSION_KEY_PASSTHROUGH_CALLBACK("session_key_passthrough_callback"),
 
 	;
 
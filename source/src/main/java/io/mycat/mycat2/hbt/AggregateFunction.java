@@ -0,0 +1,22 @@
+package io.mycat.mycat2.hbt;
+
+/**
+ * group 的时候对每个分组进行的操作, 例如 count sum 或者输出某个字段.
+ * 每个分组只保存聚合的中间状态 {@link AggregateState}, 不保存分组中的行
+ * */
+public interface AggregateFunction {
+	/**
+	 * 通过上游的字段信息找到需要聚合的字段的位置
+	 * */
+	default void init(ResultSetMeta header) {};
+
+	/**
+	 * 输出字段的类型, 在 init 之后调用. 没有事先给出分组结果的字段信息时, 由各个函数的输出类型组成
+	 * */
+	int[] outputTypes(ResultSetMeta header);
+
+	/**
+	 * 创建一个分组的聚合状态
+	 * */
+	AggregateState newState();
+}
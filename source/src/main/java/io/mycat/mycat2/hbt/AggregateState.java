@@ -0,0 +1,18 @@
+package io.mycat.mycat2.hbt;
+
+import java.util.List;
+
+/**
+ * 一个分组的聚合中间状态
+ * */
+public interface AggregateState {
+	/**
+	 * 累加分组中的一行
+	 * */
+	void add(List<byte[]> row);
+
+	/**
+	 * 把聚合结果按顺序追加到输出的行中
+	 * */
+	void output(List<byte[]> result);
+}
@@ -0,0 +1,66 @@
+package io.mycat.mycat2.hbt;
+
+import java.util.List;
+/**
+ *  group 的时候进行avg 某个字段, 全部为null时结果为null.
+ *  合并各个分片的结果时, 分片需要返回 sum 与 count 两个字段, 使用 {@link #AvgFunction(String, String)}
+ * */
+public class AvgFunction implements AggregateFunction {
+	private String fieldName;
+	/* 分片返回的 count 字段, null 表示直接对 fieldName 求平均值 */
+	private String countFieldName;
+	private int index;
+	private int countIndex = -1;
+	private int fieldType;
+
+	public AvgFunction(String fieldName) {
+		this.fieldName = fieldName;
+	}
+
+	public AvgFunction(String sumFieldName, String countFieldName) {
+		this.fieldName = sumFieldName;
+		this.countFieldName = countFieldName;
+	}
+
+	@Override
+	public void init(ResultSetMeta header) {
+		index = header.getFieldPos(fieldName);
+		fieldType = header.getFiledType(index);
+		if (countFieldName != null) {
+			countIndex = header.getFieldPos(countFieldName);
+		}
+	}
+
+	@Override
+	public int[] outputTypes(ResultSetMeta header) {
+		return new int[] { NumericSum.resultType(fieldType) };
+	}
+
+	@Override
+	public AggregateState newState() {
+		return new AggregateState() {
+			private final NumericSum sum = new NumericSum(fieldType);
+			private long count;
+
+			@Override
+			public void add(List<byte[]> row) {
+				byte[] value = row.get(index);
+				if (value == null) {
+					return;
+				}
+				sum.add(value);
+				if (countIndex < 0) {
+					count++;
+				} else {
+					byte[] countValue = row.get(countIndex);
+					count += countValue == null ? 0 : NumericSum.parseLong(countValue);
+				}
+			}
+
+			@Override
+			public void output(List<byte[]> result) {
+				result.add(sum.avg(count));
+			}
+		};
+	}
+}
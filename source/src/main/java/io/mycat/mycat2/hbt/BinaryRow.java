@@ -0,0 +1,202 @@
+package io.mycat.mycat2.hbt;
+
+import java.util.AbstractList;
+
+import io.mycat.proxy.ProxyBuffer;
+
+/**
+ * 引用 {@link RowBatch} 内存块的一行数据, 内容为文本协议的行报文内容.
+ * 作为只读的 List 在各个管道之间传递, 只有通过 {@link #get(int)} 读取的列才拷贝为 byte[], 每次读取都拷贝;
+ * 关联字段的哈希/比较、排序字段的比较直接在内存块上进行, 见 {@link #hashColumn(int)}、{@link #compareColumn}.
+ * 输出给前端时整行原样写入, 不重新编码
+ */
+public class BinaryRow extends AbstractList<byte[]> {
+
+	private final byte[] data;
+	private final int start;
+	private final int length;
+	private final int fieldCount;
+
+	public BinaryRow(byte[] data, int start, int length, int fieldCount) {
+		this.data = data;
+		this.start = start;
+		this.length = length;
+		this.fieldCount = fieldCount;
+	}
+
+	@Override
+	public byte[] get(int index) {
+		if (index < 0 || index >= fieldCount) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + fieldCount);
+		}
+		int pos = columnOffset(index);
+		int len = lenencValue(data, pos);
+		if (len < 0) {
+			return null;
+		}
+		byte[] value = new byte[len];
+		System.arraycopy(data, pos + lenencLength(data[pos]), value, 0, len);
+		return value;
+	}
+
+	@Override
+	public int size() {
+		return fieldCount;
+	}
+
+	/**
+	 * 列在 data 中的位置, 从 lenenc 长度开始. 每次从行首跳过前面的列, 不保存位置
+	 */
+	public int columnOffset(int index) {
+		int pos = start;
+		for (int i = 0; i < index; i++) {
+			pos += lenencLength(data[pos]) + Math.max(lenencValue(data, pos), 0);
+		}
+		return pos;
+	}
+
+	/**
+	 * 列内容的长度, NULL 为 -1
+	 */
+	public int columnLength(int index) {
+		return lenencValue(data, columnOffset(index));
+	}
+
+	/**
+	 * 列内容的哈希值, 与 {@link java.util.Arrays#hashCode(byte[])} 相同, NULL 为 0
+	 */
+	public int hashColumn(int index) {
+		int pos = columnOffset(index);
+		int len = lenencValue(data, pos);
+		if (len < 0) {
+			return 0;
+		}
+		pos += lenencLength(data[pos]);
+		int h = 1;
+		for (int i = 0; i < len; i++) {
+			h = 31 * h + data[pos + i];
+		}
+		return h;
+	}
+
+	/**
+	 * 列内容与 value 是否相同, 都为 NULL 时也相同
+	 */
+	public boolean columnEquals(int index, byte[] value) {
+		int pos = columnOffset(index);
+		int len = lenencValue(data, pos);
+		if (len < 0 || value == null) {
+			return len < 0 && value == null;
+		}
+		if (len != value.length) {
+			return false;
+		}
+		pos += lenencLength(data[pos]);
+		for (int i = 0; i < len; i++) {
+			if (data[pos + i] != value[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 与另一行的某一列内容是否相同, 都为 NULL 时也相同
+	 */
+	public boolean columnEquals(int index, BinaryRow other, int otherIndex) {
+		int pos1 = columnOffset(index);
+		int pos2 = other.columnOffset(otherIndex);
+		int len = lenencValue(data, pos1);
+		if (len != lenencValue(other.data, pos2)) {
+			return false;
+		}
+		pos1 += lenencLength(data[pos1]);
+		pos2 += lenencLength(other.data[pos2]);
+		for (int i = 0; i < len; i++) {
+			if (data[pos1 + i] != other.data[pos2 + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 与另一行的同一列比较, 比较方式见 {@link RowComparator}
+	 */
+	int compareColumn(int index, BinaryRow other, int compareType) {
+		int pos1 = columnOffset(index);
+		int pos2 = other.columnOffset(index);
+		int len1 = lenencValue(data, pos1);
+		int len2 = lenencValue(other.data, pos2);
+		if (len1 < 0 || len2 < 0) {
+			return len1 < 0 ? (len2 < 0 ? 0 : -1) : 1;
+		}
+		return RowComparator.compareValue(data, pos1 + lenencLength(data[pos1]), len1,
+				other.data, pos2 + lenencLength(other.data[pos2]), len2, compareType);
+	}
+
+	/**
+	 * 与一个字段值比较, value 为 null 表示 NULL
+	 */
+	int compareColumn(int index, byte[] value, int compareType) {
+		int pos = columnOffset(index);
+		int len = lenencValue(data, pos);
+		if (len < 0 || value == null) {
+			return len < 0 ? (value == null ? 0 : -1) : 1;
+		}
+		return RowComparator.compareValue(data, pos + lenencLength(data[pos]), len, value, 0, value.length,
+				compareType);
+	}
+
+	/**
+	 * 行报文内容的长度, 不包括报文头
+	 */
+	public int payloadLength() {
+		return length;
+	}
+
+	/**
+	 * 行报文内容原样写入 buffer
+	 */
+	public void writePayload(ProxyBuffer buffer) {
+		buffer.writeBytes(data, start, length);
+	}
+
+	/**
+	 * 行中的内存占用估算, 共用的内存块按行长度计算
+	 */
+	public int memorySize() {
+		return length;
+	}
+
+	private static int lenencLength(byte first) {
+		switch (first & 0xff) {
+		case 0xfc:
+			return 3;
+		case 0xfd:
+			return 4;
+		case 0xfe:
+			return 9;
+		default:
+			return 1;
+		}
+	}
+
+	private static int lenencValue(byte[] data, int pos) {
+		int first = data[pos] & 0xff;
+		switch (first) {
+		case 0xfb:
+			return -1;
+		case 0xfc:
+			return (data[pos + 1] & 0xff) | (data[pos + 2] & 0xff) << 8;
+		case 0xfd:
+			return (data[pos + 1] & 0xff) | (data[pos + 2] & 0xff) << 8 | (data[pos + 3] & 0xff) << 16;
+		case 0xfe:
+			// 行报文中的列不会超过 int 范围
+			return (data[pos + 1] & 0xff) | (data[pos + 2] & 0xff) << 8 | (data[pos + 3] & 0xff) << 16
+					| (data[pos + 4] & 0xff) << 24;
+		default:
+			return first;
+		}
+	}
+}
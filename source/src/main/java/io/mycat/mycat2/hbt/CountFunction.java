@@ -1,22 +1,66 @@
 package io.mycat.mycat2.hbt;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
+
+import io.mycat.mysql.Fields;
 /**
  *  group 的时候进行count 某个字段
+ *  不指定字段时为 count(*), 指定字段时只统计不为null的行.
+ *  {@link #partial(String)} 用于合并各个分片返回的 count 结果
  * */
-public class CountFunction  implements Function<List<List<byte[]>>, List<byte[]>>{
-	
-	public List<byte[]> apply(List<List<byte[]>> list) {
-		int n = 0;
-		if(list != null) {
-			n = 0;
+public class CountFunction implements AggregateFunction {
+	/* 统计的字段名称, null 表示 count(*) */
+	private String fieldName;
+	/* 字段中是各个分片的 count 结果, 需要累加 */
+	private boolean partial;
+	private int index = -1;
+
+	public CountFunction() {
+	}
+
+	public CountFunction(String fieldName) {
+		this.fieldName = fieldName;
+	}
+
+	public static CountFunction partial(String fieldName) {
+		CountFunction function = new CountFunction(fieldName);
+		function.partial = true;
+		return function;
+	}
+
+	@Override
+	public void init(ResultSetMeta header) {
+		if (fieldName != null) {
+			index = header.getFieldPos(fieldName);
 		}
-		n = list.size();
-		String v = String.valueOf(n);
-		ArrayList<byte[]> arrayList = new ArrayList<>();
-		arrayList.add( v.getBytes());
-		return arrayList;
+	}
+
+	@Override
+	public int[] outputTypes(ResultSetMeta header) {
+		return new int[] { Fields.FIELD_TYPE_LONGLONG };
+	}
+
+	@Override
+	public AggregateState newState() {
+		return new AggregateState() {
+			private long count;
+
+			@Override
+			public void add(List<byte[]> row) {
+				if (index < 0) {
+					count++;
+					return;
+				}
+				byte[] value = row.get(index);
+				if (value != null) {
+					count += partial ? NumericSum.parseLong(value) : 1;
+				}
+			}
+
+			@Override
+			public void output(List<byte[]> result) {
+				result.add(Long.toString(count).getBytes());
+			}
+		};
 	}
 }
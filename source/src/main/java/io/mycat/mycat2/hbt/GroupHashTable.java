@@ -0,0 +1,166 @@
+package io.mycat.mycat2.hbt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * group 使用的开放寻址(线性探测)哈希表.
+ * key 为 group 字段的原始字节拼接而成, value 为每个聚合函数的中间状态, 不保存分组中的行.
+ * 按分组第一次出现的顺序输出
+ * */
+public class GroupHashTable {
+	private static final int NULL_LENGTH = -1;
+	private static final int INIT_CAPACITY = 16;
+
+	/* group 字段的位置 */
+	private final int[] keyIndexes;
+	private final List<AggregateFunction> functions;
+
+	/* 哈希槽, 保存分组的序号 + 1, 0 表示空 */
+	private int[] slots;
+	private int mask;
+	/* 以下按分组的序号保存 */
+	private int[] hashes;
+	private byte[][] keys;
+	private AggregateState[][] states;
+	private int size;
+
+	/* 拼接 key 的缓冲, 只有新的分组才复制 */
+	private byte[] keyBuffer = new byte[64];
+	private int keyLength;
+
+	public GroupHashTable(int[] keyIndexes, List<AggregateFunction> functions) {
+		this.keyIndexes = keyIndexes;
+		this.functions = functions;
+		this.slots = new int[INIT_CAPACITY];
+		this.mask = INIT_CAPACITY - 1;
+		this.hashes = new int[INIT_CAPACITY / 2];
+		this.keys = new byte[INIT_CAPACITY / 2][];
+		this.states = new AggregateState[INIT_CAPACITY / 2][];
+	}
+
+	/**
+	 * 找到行所在的分组, 累加到每个聚合状态中
+	 * */
+	public void add(List<byte[]> row) {
+		encodeKey(row);
+		int hash = hash(keyBuffer, keyLength);
+		int slot = hash & mask;
+		int entry;
+		while ((entry = slots[slot] - 1) >= 0) {
+			if (hashes[entry] == hash && keyEquals(keys[entry])) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (entry < 0) {
+			entry = insert(slot, hash);
+		}
+		for (AggregateState state : states[entry]) {
+			state.add(row);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 输出每个分组的聚合结果
+	 * */
+	public void forEach(Consumer<List<byte[]>> consumer) {
+		for (int i = 0; i < size; i++) {
+			List<byte[]> result = new ArrayList<>();
+			for (AggregateState state : states[i]) {
+				state.output(result);
+			}
+			consumer.accept(result);
+		}
+	}
+
+	private int insert(int slot, int hash) {
+		int entry = size++;
+		if (entry == hashes.length) {
+			int capacity = hashes.length << 1;
+			hashes = Arrays.copyOf(hashes, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+			states = Arrays.copyOf(states, capacity);
+		}
+		hashes[entry] = hash;
+		keys[entry] = Arrays.copyOf(keyBuffer, keyLength);
+		AggregateState[] entryStates = new AggregateState[functions.size()];
+		for (int i = 0; i < entryStates.length; i++) {
+			entryStates[i] = functions.get(i).newState();
+		}
+		states[entry] = entryStates;
+		slots[slot] = entry + 1;
+		// 负载因子 0.5
+		if (size << 1 > slots.length) {
+			resize();
+		}
+		return entry;
+	}
+
+	private void resize() {
+		slots = new int[slots.length << 1];
+		mask = slots.length - 1;
+		for (int entry = 0; entry < size; entry++) {
+			int slot = hashes[entry] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = entry + 1;
+		}
+	}
+
+	/**
+	 * 每个字段拼接为 4字节长度 + 字段内容, 长度为 -1 表示 null
+	 * */
+	private void encodeKey(List<byte[]> row) {
+		keyLength = 0;
+		for (int index : keyIndexes) {
+			byte[] value = row.get(index);
+			int length = value == null ? 0 : value.length;
+			ensureKeyBuffer(keyLength + 4 + length);
+			int header = value == null ? NULL_LENGTH : length;
+			keyBuffer[keyLength++] = (byte) (header >>> 24);
+			keyBuffer[keyLength++] = (byte) (header >>> 16);
+			keyBuffer[keyLength++] = (byte) (header >>> 8);
+			keyBuffer[keyLength++] = (byte) header;
+			if (length > 0) {
+				System.arraycopy(value, 0, keyBuffer, keyLength, length);
+				keyLength += length;
+			}
+		}
+	}
+
+	private void ensureKeyBuffer(int capacity) {
+		if (capacity > keyBuffer.length) {
+			keyBuffer = Arrays.copyOf(keyBuffer, Math.max(capacity, keyBuffer.length << 1));
+		}
+	}
+
+	private boolean keyEquals(byte[] key) {
+		if (key.length != keyLength) {
+			return false;
+		}
+		for (int i = 0; i < keyLength; i++) {
+			if (key[i] != keyBuffer[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(byte[] bytes, int length) {
+		int h = 1;
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + bytes[i];
+		}
+		// 线性探测使用低位, 把高位混合进来
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -52,7 +52,6 @@ public class GroupPairKeyMeta implements Function<List<byte[]>,GroupPairKey>{
 	public  void init(ResultSetMeta header) {
 		indexList = new int[fieldNameList.length];
 		for(int index = 0 ; index < fieldNameList.length; index ++) {
-			System.out.println(fieldNameList[index]);
 			indexList[index] = header.getFieldPos(fieldNameList[index]);
 		}
 	}
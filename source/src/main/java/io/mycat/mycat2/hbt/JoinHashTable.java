@@ -0,0 +1,202 @@
+package io.mycat.mycat2.hbt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * join 的 build 端哈希表, 使用开放寻址(线性探测), key 为关联字段的原始字节.
+ * 相同 key 的行通过 nextRow 串成链表, 保持加入的顺序.
+ * key 不单独保存, 取该 key 第一行的关联字段; {@link BinaryRow} 的关联字段直接在内存块上计算哈希和比较
+ * */
+public class JoinHashTable {
+	private static final int INIT_CAPACITY = 16;
+	/* 每行数据除字段内容外的内存开销估算 */
+	private static final int ROW_OVERHEAD = 56;
+	private static final int FIELD_OVERHEAD = 24;
+
+	/* 哈希槽, 保存 key 的序号 + 1, 0 表示空 */
+	private int[] slots = new int[INIT_CAPACITY];
+	private int mask = INIT_CAPACITY - 1;
+
+	/* 关联字段在行中的位置 */
+	private final int keyPos;
+
+	/* 以下按 key 的序号保存 */
+	private int[] hashes = new int[INIT_CAPACITY / 2];
+	private int[] firstRows = new int[INIT_CAPACITY / 2];
+	private int[] lastRows = new int[INIT_CAPACITY / 2];
+	private int keyCount;
+
+	/* 以下按行的序号保存 */
+	private List<List<byte[]>> rows = new ArrayList<>();
+	private int[] nextRows = new int[INIT_CAPACITY];
+
+	private long memoryUsed;
+
+	public JoinHashTable(int keyPos) {
+		this.keyPos = keyPos;
+	}
+
+	/**
+	 * @return 关联字段为 null 时不加入, 返回 false. null 与任何值都不相等
+	 * */
+	public boolean add(List<byte[]> row) {
+		if (isNull(row, keyPos)) {
+			return false;
+		}
+		int hash = hash(row, keyPos);
+		int slot = hash & mask;
+		int keyIndex;
+		while ((keyIndex = slots[slot] - 1) >= 0) {
+			if (hashes[keyIndex] == hash && columnEquals(rows.get(firstRows[keyIndex]), keyPos, row, keyPos)) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int rowIndex = rows.size();
+		rows.add(row);
+		if (rowIndex == nextRows.length) {
+			nextRows = Arrays.copyOf(nextRows, rowIndex << 1);
+		}
+		nextRows[rowIndex] = -1;
+		memoryUsed += ROW_OVERHEAD + FIELD_OVERHEAD * row.size();
+		if (row instanceof BinaryRow) {
+			// 不为了估算内存把所有列拷贝出来
+			memoryUsed += ((BinaryRow) row).memorySize();
+		} else {
+			for (byte[] value : row) {
+				memoryUsed += value == null ? 0 : value.length;
+			}
+		}
+		if (keyIndex >= 0) {
+			nextRows[lastRows[keyIndex]] = rowIndex;
+			lastRows[keyIndex] = rowIndex;
+			return true;
+		}
+		keyIndex = keyCount++;
+		if (keyIndex == hashes.length) {
+			int capacity = hashes.length << 1;
+			hashes = Arrays.copyOf(hashes, capacity);
+			firstRows = Arrays.copyOf(firstRows, capacity);
+			lastRows = Arrays.copyOf(lastRows, capacity);
+		}
+		hashes[keyIndex] = hash;
+		firstRows[keyIndex] = rowIndex;
+		lastRows[keyIndex] = rowIndex;
+		slots[slot] = keyIndex + 1;
+		// 负载因子 0.5
+		if (keyCount << 1 > slots.length) {
+			resize();
+		}
+		return true;
+	}
+
+	/**
+	 * 遍历 key 对应的所有行
+	 *
+	 * @return 是否有对应的行
+	 * */
+	public boolean forEachMatch(byte[] key, Consumer<List<byte[]>> consumer) {
+		return forEachMatch(Collections.singletonList(key), 0, consumer);
+	}
+
+	/**
+	 * 遍历与 probe 行第 probePos 个字段相等的所有行
+	 *
+	 * @return 是否有对应的行
+	 * */
+	public boolean forEachMatch(List<byte[]> probe, int probePos, Consumer<List<byte[]>> consumer) {
+		if (isNull(probe, probePos)) {
+			return false;
+		}
+		int hash = hash(probe, probePos);
+		int slot = hash & mask;
+		int keyIndex;
+		while ((keyIndex = slots[slot] - 1) >= 0) {
+			if (hashes[keyIndex] == hash && columnEquals(rows.get(firstRows[keyIndex]), keyPos, probe, probePos)) {
+				forEachRow(keyIndex, consumer);
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * 遍历第 keyIndex 个 key 对应的所有行
+	 * */
+	public void forEachRow(int keyIndex, Consumer<List<byte[]>> consumer) {
+		for (int row = firstRows[keyIndex]; row >= 0; row = nextRows[row]) {
+			consumer.accept(rows.get(row));
+		}
+	}
+
+	public byte[] getKey(int keyIndex) {
+		return rows.get(firstRows[keyIndex]).get(keyPos);
+	}
+
+	/**
+	 * @return 所有 key, 按第一次加入的顺序
+	 * */
+	public List<byte[]> getKeys() {
+		List<byte[]> keys = new ArrayList<>(keyCount);
+		for (int keyIndex = 0; keyIndex < keyCount; keyIndex++) {
+			keys.add(getKey(keyIndex));
+		}
+		return keys;
+	}
+
+	public int keyCount() {
+		return keyCount;
+	}
+
+	public int rowCount() {
+		return rows.size();
+	}
+
+	/**
+	 * @return 缓存的行占用的内存估算(字节)
+	 * */
+	public long memoryUsed() {
+		return memoryUsed;
+	}
+
+	private void resize() {
+		slots = new int[slots.length << 1];
+		mask = slots.length - 1;
+		for (int keyIndex = 0; keyIndex < keyCount; keyIndex++) {
+			int slot = hashes[keyIndex] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = keyIndex + 1;
+		}
+	}
+
+	private static boolean isNull(List<byte[]> row, int pos) {
+		return row instanceof BinaryRow ? ((BinaryRow) row).columnLength(pos) < 0 : row.get(pos) == null;
+	}
+
+	private static boolean columnEquals(List<byte[]> row1, int pos1, List<byte[]> row2, int pos2) {
+		if (row1 instanceof BinaryRow) {
+			if (row2 instanceof BinaryRow) {
+				return ((BinaryRow) row1).columnEquals(pos1, (BinaryRow) row2, pos2);
+			}
+			return ((BinaryRow) row1).columnEquals(pos1, row2.get(pos2));
+		}
+		if (row2 instanceof BinaryRow) {
+			return ((BinaryRow) row2).columnEquals(pos2, row1.get(pos1));
+		}
+		return Arrays.equals(row1.get(pos1), row2.get(pos2));
+	}
+
+	private static int hash(List<byte[]> row, int pos) {
+		int h = row instanceof BinaryRow ? ((BinaryRow) row).hashColumn(pos) : Arrays.hashCode(row.get(pos));
+		// 线性探测使用低位, 把高位混合进来
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
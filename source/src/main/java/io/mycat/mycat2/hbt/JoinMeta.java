@@ -1,8 +1,10 @@
 package io.mycat.mycat2.hbt;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 
+import io.mycat.mycat2.hbt.pipeline.HBTEngine;
 import io.mycat.mysql.Fields;
 
 /**
@@ -10,14 +12,20 @@ import io.mycat.mysql.Fields;
  *
  * */
 public class JoinMeta extends Meta {
+	private static final Pattern WHERE = Pattern.compile("\\bwhere\\b", Pattern.CASE_INSENSITIVE);
+
 	public String lJoinKey;
 	public String rJoinKey;
+	/* b表語句中關聯字段的寫法, 默認與 rJoinKey 相同 */
+	public String rJoinColumn;
 	public String lTable;
 
 	/*  rTable b表*/
 	public String rTable;
 	/*  limit 多少個id發起一個後端請求*/
     private int limit; 
+    /* a表数据不超过该内存上限时使用 hash join, 0 表示不使用 */
+    private long hashJoinMemoryLimit;
 	/**
 	 * @param lJoinKey a表關聯所對應的字段
 	 * @param rJoinKey b表關聯所對應的字段
@@ -30,8 +38,24 @@ public class JoinMeta extends Meta {
 		this.lTable = parseTable(lJoinKey);
 		this.rTable = parseTable(rJoinKey);
 		this.rJoinKey = parseField(rJoinKey);
+		this.rJoinColumn = this.rJoinKey;
 		this.limit = limit;
 	}
+
+	/**
+	 * 字段名稱中可能含有 . 時直接指定, 不按 表.字段 拆分
+	 * @param lJoinKey a表關聯字段在上游結果中的名稱
+	 * @param rJoinKey b表關聯字段在b表結果中的名稱
+	 * @param rJoinColumn b表語句中關聯字段的寫法, 用於拼接 in 條件
+	 * @param limit 多少個id發起一個後端請求
+	 * */
+	public static JoinMeta of(String lJoinKey, String rJoinKey, String rJoinColumn, int limit) {
+		JoinMeta joinMeta = new JoinMeta("", "", HBTEngine.MEM, limit);
+		joinMeta.lJoinKey = lJoinKey;
+		joinMeta.rJoinKey = rJoinKey;
+		joinMeta.rJoinColumn = rJoinColumn;
+		return joinMeta;
+	}
 	
 	public int getLimit() {
 	    return limit;
@@ -54,26 +78,62 @@ public class JoinMeta extends Meta {
 	}
 	
 	/**
-	 *  joinKeyList 一系列的ljoinKey的值
+	 *  joinKeyList 一系列的ljoinKey的值, 直接使用字段的原始字节
 	 *  
 	 *  @return 組成sql進行返回 
 	 *   	    e.g select key1,key2 from table where xx = 'xx' and rJoinKey in ('id1','id2') 
 	 * */
-	public String getSql(List<String> joinKeyList, int fieldType, SqlMeta sqlMeta) {
+	public String getSql(List<byte[]> joinKeyList, int fieldType, SqlMeta sqlMeta) {
 		StringBuilder sb = new StringBuilder(sqlMeta.sql) ;
-	    String values ;
-		if(fieldType == Fields.FIELD_TYPE_STRING) {
-		    values = joinKeyList.stream().collect(Collectors.joining("','","'","'"));
-		} else {
-	        values = joinKeyList.stream().collect(Collectors.joining(","));
-		} 
-		if(sb.indexOf("where") > 0) {
-			sb.append(String.format(" and %s in (%s) ", rJoinKey, values));
+		StringBuilder values = new StringBuilder();
+		boolean numeric = isNumeric(fieldType);
+		for(byte[] key : joinKeyList) {
+			if(values.length() > 0) {
+				values.append(',');
+			}
+			String value = new String(key, StandardCharsets.UTF_8);
+			if(numeric) {
+				values.append(value);
+			} else {
+				values.append('\'').append(value.replace("\\", "\\\\").replace("'", "\\'")).append('\'');
+			}
+		}
+		if(WHERE.matcher(sqlMeta.sql).find()) {
+			sb.append(String.format(" and %s in (%s) ", rJoinColumn, values));
 		} else {
-			sb.append(String.format(" where %s in (%s) " , rJoinKey, values));
+			sb.append(String.format(" where %s in (%s) " , rJoinColumn, values));
 		}
 		return sb.toString();
 	}
+	
+	private static boolean isNumeric(int fieldType) {
+		switch (fieldType) {
+		case Fields.FIELD_TYPE_TINY:
+		case Fields.FIELD_TYPE_SHORT:
+		case Fields.FIELD_TYPE_LONG:
+		case Fields.FIELD_TYPE_LONGLONG:
+		case Fields.FIELD_TYPE_INT24:
+		case Fields.FIELD_TYPE_YEAR:
+		case Fields.FIELD_TYPE_FLOAT:
+		case Fields.FIELD_TYPE_DOUBLE:
+		case Fields.FIELD_TYPE_DECIMAL:
+		case Fields.FIELD_TYPE_NEW_DECIMAL:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	public long getHashJoinMemoryLimit() {
+		return hashJoinMemoryLimit;
+	}
+	
+	/**
+	 * @param hashJoinMemoryLimit a表的数据在该内存上限(字节)内时全部缓存, 结束后一次扫描b表进行hash join, 0 表示不使用
+	 * */
+	public void setHashJoinMemoryLimit(long hashJoinMemoryLimit) {
+		this.hashJoinMemoryLimit = hashJoinMemoryLimit;
+	}
 
 
 
@@ -0,0 +1,47 @@
+package io.mycat.mycat2.hbt;
+
+import java.util.List;
+/**
+ *  group 的时候取某个字段的最大值, 按字段类型比较原始字节, 见 {@link RowComparator#compare(byte[], byte[], int)}.
+ *  各个分片返回的 max 结果同样使用该函数合并
+ * */
+public class MaxFunction implements AggregateFunction {
+	private String fieldName;
+	private int index;
+	private int fieldType;
+
+	public MaxFunction(String fieldName) {
+		this.fieldName = fieldName;
+	}
+
+	@Override
+	public void init(ResultSetMeta header) {
+		index = header.getFieldPos(fieldName);
+		fieldType = header.getFiledType(index);
+	}
+
+	@Override
+	public int[] outputTypes(ResultSetMeta header) {
+		return new int[] { fieldType };
+	}
+
+	@Override
+	public AggregateState newState() {
+		return new AggregateState() {
+			private byte[] max;
+
+			@Override
+			public void add(List<byte[]> row) {
+				byte[] value = row.get(index);
+				if (value != null && (max == null || RowComparator.compare(value, max, fieldType) > 0)) {
+					max = value;
+				}
+			}
+
+			@Override
+			public void output(List<byte[]> result) {
+				result.add(max);
+			}
+		};
+	}
+}
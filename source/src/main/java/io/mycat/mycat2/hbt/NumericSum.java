@@ -0,0 +1,129 @@
+package io.mycat.mycat2.hbt;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+import io.mycat.mysql.Fields;
+
+/**
+ * sum 与 avg 的累加值. 整数类型使用long累加, 溢出后转为BigDecimal, 浮点类型使用double, 其他类型使用BigDecimal
+ * */
+class NumericSum {
+	private static final int SUM_LONG = 0;
+	private static final int SUM_DECIMAL = 1;
+	private static final int SUM_DOUBLE = 2;
+	/* avg 结果比输入多保留的小数位数, 与 mysql 一致 */
+	private static final int AVG_EXTRA_SCALE = 4;
+
+	private int mode;
+	private long longSum;
+	private BigDecimal decimalSum;
+	private double doubleSum;
+
+	NumericSum(int fieldType) {
+		switch (fieldType) {
+		case Fields.FIELD_TYPE_TINY:
+		case Fields.FIELD_TYPE_SHORT:
+		case Fields.FIELD_TYPE_LONG:
+		case Fields.FIELD_TYPE_LONGLONG:
+		case Fields.FIELD_TYPE_INT24:
+		case Fields.FIELD_TYPE_YEAR:
+			mode = SUM_LONG;
+			break;
+		case Fields.FIELD_TYPE_FLOAT:
+		case Fields.FIELD_TYPE_DOUBLE:
+			mode = SUM_DOUBLE;
+			break;
+		default:
+			mode = SUM_DECIMAL;
+			decimalSum = BigDecimal.ZERO;
+		}
+	}
+
+	/**
+	 * sum 与 avg 结果的字段类型, 与 mysql 一致: 浮点类型为 double, 其他为 decimal
+	 * */
+	static int resultType(int fieldType) {
+		switch (fieldType) {
+		case Fields.FIELD_TYPE_FLOAT:
+		case Fields.FIELD_TYPE_DOUBLE:
+			return Fields.FIELD_TYPE_DOUBLE;
+		default:
+			return Fields.FIELD_TYPE_NEW_DECIMAL;
+		}
+	}
+
+	void add(byte[] value) {
+		switch (mode) {
+		case SUM_LONG:
+			try {
+				longSum = Math.addExact(longSum, parseLong(value));
+				return;
+			} catch (ArithmeticException e) {
+				// 溢出后按 BigDecimal 累加
+				mode = SUM_DECIMAL;
+				decimalSum = BigDecimal.valueOf(longSum);
+			}
+			decimalAdd(value);
+			return;
+		case SUM_DECIMAL:
+			decimalAdd(value);
+			return;
+		default:
+			doubleSum += Double.parseDouble(new String(value, StandardCharsets.US_ASCII));
+		}
+	}
+
+	private void decimalAdd(byte[] value) {
+		decimalSum = decimalSum.add(new BigDecimal(new String(value, StandardCharsets.US_ASCII)));
+	}
+
+	byte[] sum() {
+		switch (mode) {
+		case SUM_LONG:
+			return Long.toString(longSum).getBytes();
+		case SUM_DECIMAL:
+			return decimalSum.toPlainString().getBytes();
+		default:
+			return Double.toString(doubleSum).getBytes();
+		}
+	}
+
+	byte[] avg(long count) {
+		if (count == 0) {
+			return null;
+		}
+		switch (mode) {
+		case SUM_LONG:
+			return BigDecimal.valueOf(longSum).divide(BigDecimal.valueOf(count), AVG_EXTRA_SCALE, RoundingMode.HALF_UP)
+					.toPlainString().getBytes();
+		case SUM_DECIMAL:
+			return decimalSum.divide(BigDecimal.valueOf(count), Math.max(decimalSum.scale(), 0) + AVG_EXTRA_SCALE,
+					RoundingMode.HALF_UP).toPlainString().getBytes();
+		default:
+			return Double.toString(doubleSum / count).getBytes();
+		}
+	}
+
+	/**
+	 * 解析文本格式的整数, 超出 long 的范围时抛出 ArithmeticException
+	 * */
+	static long parseLong(byte[] value) {
+		boolean negative = value.length > 0 && value[0] == '-';
+		int i = negative || (value.length > 0 && value[0] == '+') ? 1 : 0;
+		if (i == value.length) {
+			throw new NumberFormatException("invalid integer " + new String(value));
+		}
+		long result = 0;
+		for (; i < value.length; i++) {
+			int digit = value[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("invalid integer " + new String(value));
+			}
+			// 按负数累加, 可以表示 Long.MIN_VALUE
+			result = Math.subtractExact(Math.multiplyExact(result, 10), digit);
+		}
+		return negative ? result : Math.negateExact(result);
+	}
+}
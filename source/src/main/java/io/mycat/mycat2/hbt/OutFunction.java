@@ -1,13 +1,11 @@
 package io.mycat.mycat2.hbt;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
 /**
  * group by的時候需要獲取哪些字段進行輸出到下一個管道
- * 
+ * 輸出的是分組中第一行的字段
  * */
-public class OutFunction implements Function<List<List<byte[]>>, List<byte[]>>{
+public class OutFunction implements AggregateFunction {
 	private int[] indexList;
 	
 	public OutFunction(int... indexList) {
@@ -15,14 +13,42 @@ public class OutFunction implements Function<List<List<byte[]>>, List<byte[]>>{
 	}
 	
 	@Override
-	public List<byte[]> apply(List<List<byte[]>> list) {
-		ArrayList<byte[]> rowList = new ArrayList<>();
-		if(indexList != null) {
-			for(int i : indexList) {
-				rowList.add(list.get(0).get(i));
+	public int[] outputTypes(ResultSetMeta header) {
+		int[] types = new int[indexList == null ? 0 : indexList.length];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = header.getFiledType(indexList[i]);
+		}
+		return types;
+	}
+
+	@Override
+	public AggregateState newState() {
+		return new AggregateState() {
+			private byte[][] values;
+
+			@Override
+			public void add(List<byte[]> row) {
+				if (values == null && indexList != null) {
+					values = new byte[indexList.length][];
+					for (int i = 0; i < indexList.length; i++) {
+						values[i] = row.get(indexList[i]);
+					}
+				}
+			}
+
+			@Override
+			public void output(List<byte[]> result) {
+				if (values != null) {
+					for (byte[] value : values) {
+						result.add(value);
+					}
+				} else if (indexList != null) {
+					// 没有任何行的分组(不分组的聚合)输出 null
+					for (int i = 0; i < indexList.length; i++) {
+						result.add(null);
+					}
+				}
 			}
-			return rowList;
-		} 
-		return rowList;
+		};
 	}
 }
@@ -0,0 +1,53 @@
+package io.mycat.mycat2.hbt;
+
+import io.mycat.proxy.ProxyBuffer;
+
+/**
+ * 一批行数据共用的内存块. 后端返回的行报文内容(文本协议, 每列为 lenenc 字符串)原样依次拷贝到内存块中,
+ * 每行只是内存块上的一段, 见 {@link BinaryRow}. 内存块写满后换新的, 旧的内存块在其中的行都不再使用后回收.
+ * 每个读取结果集的流一个, 只在 reactor 线程中使用
+ */
+public class RowBatch {
+
+	public static final int DEFAULT_SLAB_SIZE = 64 * 1024;
+
+	private final int slabSize;
+	private byte[] slab;
+	private int writeIndex;
+
+	public RowBatch() {
+		this(DEFAULT_SLAB_SIZE);
+	}
+
+	public RowBatch(int slabSize) {
+		this.slabSize = slabSize;
+	}
+
+	/**
+	 * 拷贝一行的报文内容
+	 *
+	 * @param start
+	 *            报文内容在 buffer 中的开始位置, 不包括报文头
+	 * @param length
+	 *            报文内容的长度
+	 */
+	public BinaryRow copyRow(ProxyBuffer buffer, int start, int length, int fieldCount) {
+		byte[] data;
+		int offset;
+		if (length > slabSize / 4) {
+			// 大行单独分配, 不浪费内存块剩余的空间
+			data = new byte[length];
+			offset = 0;
+		} else {
+			if (slab == null || slab.length - writeIndex < length) {
+				slab = new byte[slabSize];
+				writeIndex = 0;
+			}
+			data = slab;
+			offset = writeIndex;
+			writeIndex += length;
+		}
+		buffer.getBytes(start, data, offset, length);
+		return new BinaryRow(data, offset, length, fieldCount);
+	}
+}
@@ -0,0 +1,223 @@
+package io.mycat.mycat2.hbt;
+
+import java.util.Comparator;
+import java.util.List;
+
+import javax.swing.SortOrder;
+
+import io.mycat.mysql.Fields;
+
+/**
+ * 按排序字段比较两行数据.
+ * 直接比较文本协议中的字段原始字节, 数值类型按数值大小比较, 其他类型按无符号字节序比较, 不生成中间对象.
+ * {@link BinaryRow} 的字段在内存块上比较, 不拷贝出来.
+ * null 小于任何非 null 值.
+ */
+public class RowComparator implements Comparator<List<byte[]>> {
+
+	static final int COMPARE_BYTES = 0;
+	static final int COMPARE_DECIMAL = 1;
+	static final int COMPARE_FLOAT = 2;
+
+	/* 排序字段的位置 */
+	private final int[] posList;
+	/* 排序字段的比较方式 */
+	private final int[] compareTypes;
+	/* 是否降序 */
+	private final boolean[] descList;
+
+	public RowComparator(ResultSetMeta resultSetMeta, OrderMeta orderMeta) {
+		List<String> columnsList = orderMeta.getColumnsList();
+		List<SortOrder> sortOrderList = orderMeta.getSortOrderList();
+		int size = columnsList.size();
+		posList = new int[size];
+		compareTypes = new int[size];
+		descList = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			posList[i] = resultSetMeta.getFieldPos(columnsList.get(i));
+			compareTypes[i] = compareTypeOf(resultSetMeta.getFiledType(posList[i]));
+			descList[i] = SortOrder.DESCENDING.equals(sortOrderList.get(i));
+		}
+	}
+
+	private static int compareTypeOf(int fieldType) {
+		switch (fieldType) {
+		case Fields.FIELD_TYPE_TINY:
+		case Fields.FIELD_TYPE_SHORT:
+		case Fields.FIELD_TYPE_LONG:
+		case Fields.FIELD_TYPE_LONGLONG:
+		case Fields.FIELD_TYPE_INT24:
+		case Fields.FIELD_TYPE_YEAR:
+		case Fields.FIELD_TYPE_DECIMAL:
+		case Fields.FIELD_TYPE_NEW_DECIMAL:
+			return COMPARE_DECIMAL;
+		case Fields.FIELD_TYPE_FLOAT:
+		case Fields.FIELD_TYPE_DOUBLE:
+			return COMPARE_FLOAT;
+		default:
+			return COMPARE_BYTES;
+		}
+	}
+
+	@Override
+	public int compare(List<byte[]> row1, List<byte[]> row2) {
+		for (int i = 0; i < posList.length; i++) {
+			int result = compareColumn(row1, row2, posList[i], compareTypes[i]);
+			if (result != 0) {
+				return descList[i] ? -result : result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * {@link BinaryRow} 直接在内存块上比较, 不拷贝字段
+	 */
+	private static int compareColumn(List<byte[]> row1, List<byte[]> row2, int pos, int compareType) {
+		if (row1 instanceof BinaryRow) {
+			if (row2 instanceof BinaryRow) {
+				return ((BinaryRow) row1).compareColumn(pos, (BinaryRow) row2, compareType);
+			}
+			return ((BinaryRow) row1).compareColumn(pos, row2.get(pos), compareType);
+		}
+		if (row2 instanceof BinaryRow) {
+			return -((BinaryRow) row2).compareColumn(pos, row1.get(pos), compareType);
+		}
+		byte[] val1 = row1.get(pos);
+		byte[] val2 = row2.get(pos);
+		if (val1 == null || val2 == null) {
+			return val1 == val2 ? 0 : (val1 == null ? -1 : 1);
+		}
+		return compareValue(val1, 0, val1.length, val2, 0, val2.length, compareType);
+	}
+
+	/**
+	 * 按字段类型比较两个字段的值
+	 */
+	public static int compare(byte[] val1, byte[] val2, int fieldType) {
+		if (val1 == null || val2 == null) {
+			return val1 == val2 ? 0 : (val1 == null ? -1 : 1);
+		}
+		return compareValue(val1, 0, val1.length, val2, 0, val2.length, compareTypeOf(fieldType));
+	}
+
+	/**
+	 * 比较 data1[off1, off1 + len1) 与 data2[off2, off2 + len2) 两段非 null 的字段内容
+	 */
+	static int compareValue(byte[] data1, int off1, int len1, byte[] data2, int off2, int len2, int compareType) {
+		switch (compareType) {
+		case COMPARE_DECIMAL:
+			return compareDecimal(data1, off1, len1, data2, off2, len2);
+		case COMPARE_FLOAT:
+			if (hasExponent(data1, off1, len1) || hasExponent(data2, off2, len2)) {
+				return Double.compare(Double.parseDouble(new String(data1, off1, len1)),
+						Double.parseDouble(new String(data2, off2, len2)));
+			}
+			return compareDecimal(data1, off1, len1, data2, off2, len2);
+		default:
+			return compareBytes(data1, off1, len1, data2, off2, len2);
+		}
+	}
+
+	/**
+	 * 无符号字节序比较, utf8 编码下与字符的 code point 顺序一致
+	 */
+	public static int compareBytes(byte[] val1, byte[] val2) {
+		return compareBytes(val1, 0, val1.length, val2, 0, val2.length);
+	}
+
+	private static int compareBytes(byte[] data1, int off1, int len1, byte[] data2, int off2, int len2) {
+		int len = Math.min(len1, len2);
+		for (int i = 0; i < len; i++) {
+			int result = (data1[off1 + i] & 0xff) - (data2[off2 + i] & 0xff);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return len1 - len2;
+	}
+
+	/**
+	 * 比较文本格式的十进制数, 如 -12.50 与 3
+	 */
+	public static int compareDecimal(byte[] val1, byte[] val2) {
+		return compareDecimal(val1, 0, val1.length, val2, 0, val2.length);
+	}
+
+	private static int compareDecimal(byte[] data1, int off1, int len1, byte[] data2, int off2, int len2) {
+		int end1 = off1 + len1;
+		int end2 = off2 + len2;
+		boolean negative1 = len1 > 0 && data1[off1] == '-';
+		boolean negative2 = len2 > 0 && data2[off2] == '-';
+		if (negative1 != negative2) {
+			// -0 与 0 相等
+			if (isZero(data1, off1, end1) && isZero(data2, off2, end2)) {
+				return 0;
+			}
+			return negative1 ? -1 : 1;
+		}
+		int result = compareAbsDecimal(data1, negative1 ? off1 + 1 : off1, end1, data2, negative2 ? off2 + 1 : off2, end2);
+		return negative1 ? -result : result;
+	}
+
+	private static int compareAbsDecimal(byte[] val1, int start1, int end1, byte[] val2, int start2, int end2) {
+		// 跳过整数部分的前导0
+		while (start1 < end1 - 1 && val1[start1] == '0' && val1[start1 + 1] != '.') {
+			start1++;
+		}
+		while (start2 < end2 - 1 && val2[start2] == '0' && val2[start2 + 1] != '.') {
+			start2++;
+		}
+		int intLen1 = integerLength(val1, start1, end1);
+		int intLen2 = integerLength(val2, start2, end2);
+		if (intLen1 != intLen2) {
+			return intLen1 - intLen2;
+		}
+		// 整数部分长度相同, 按位比较
+		for (int i = 0; i < intLen1; i++) {
+			int result = val1[start1 + i] - val2[start2 + i];
+			if (result != 0) {
+				return result;
+			}
+		}
+		// 比较小数部分, 较短的一方补0
+		int frac1 = start1 + intLen1 + 1;
+		int frac2 = start2 + intLen2 + 1;
+		int fracLen = Math.max(end1 - frac1, end2 - frac2);
+		for (int i = 0; i < fracLen; i++) {
+			int d1 = frac1 + i < end1 ? val1[frac1 + i] : '0';
+			int d2 = frac2 + i < end2 ? val2[frac2 + i] : '0';
+			if (d1 != d2) {
+				return d1 - d2;
+			}
+		}
+		return 0;
+	}
+
+	private static int integerLength(byte[] val, int start, int end) {
+		int i = start;
+		while (i < end && val[i] != '.') {
+			i++;
+		}
+		return i - start;
+	}
+
+	private static boolean isZero(byte[] val, int start, int end) {
+		for (int i = start; i < end; i++) {
+			byte b = val[i];
+			if (b != '-' && b != '0' && b != '.') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasExponent(byte[] val, int start, int len) {
+		for (int i = start; i < start + len; i++) {
+			if (val[i] == 'e' || val[i] == 'E') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
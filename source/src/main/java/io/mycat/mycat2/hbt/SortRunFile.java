@@ -0,0 +1,120 @@
+package io.mycat.mycat2.hbt;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 排序时写入临时文件的一段有序数据, 通过内存映射读写.
+ * 每个字段存储为 4字节长度 + 字段内容, 长度为 -1 表示 null.
+ * 与结果集缓存文件一样不主动解除映射, 关闭后映射的内存在 SortRunFile 被回收时释放.
+ */
+public class SortRunFile implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(SortRunFile.class);
+
+	private static final int NULL_LENGTH = -1;
+
+	private final File file;
+	private final RandomAccessFile randomFile;
+	private final MappedByteBuffer mappedBuffer;
+	private final int fieldCount;
+
+	/**
+	 * @param fieldCount 每行的字段数
+	 * @param size 所有行写入后的字节数, 见 {@link #sizeOf(List)}
+	 */
+	public SortRunFile(int fieldCount, long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("sort run is too large " + size);
+		}
+		this.fieldCount = fieldCount;
+		this.file = File.createTempFile("mycat_sort_", ".run");
+		this.randomFile = new RandomAccessFile(file, "rw");
+		try {
+			this.mappedBuffer = randomFile.getChannel().map(MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			randomFile.close();
+			file.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * 一行数据写入文件后占用的字节数. {@link BinaryRow} 按报文长度估算, 不小于实际的字节数
+	 */
+	public static int sizeOf(List<byte[]> row) {
+		if (row instanceof BinaryRow) {
+			// 每列的 lenenc 长度至少1个字节, 文件中为4个字节
+			return ((BinaryRow) row).payloadLength() + 3 * row.size();
+		}
+		int size = 0;
+		for (byte[] value : row) {
+			size += 4 + (value == null ? 0 : value.length);
+		}
+		return size;
+	}
+
+	public void append(List<byte[]> row) {
+		for (int i = 0; i < fieldCount; i++) {
+			byte[] value = row.get(i);
+			if (value == null) {
+				mappedBuffer.putInt(NULL_LENGTH);
+			} else {
+				mappedBuffer.putInt(value.length);
+				mappedBuffer.put(value);
+			}
+		}
+	}
+
+	/**
+	 * 写入完成, 切换为读取
+	 */
+	public void finishWrite() {
+		mappedBuffer.flip();
+	}
+
+	/**
+	 * 按写入顺序读取下一行
+	 *
+	 * @return 没有数据时返回null
+	 */
+	public List<byte[]> next() {
+		if (!mappedBuffer.hasRemaining()) {
+			return null;
+		}
+		List<byte[]> row = new ArrayList<>(fieldCount);
+		for (int i = 0; i < fieldCount; i++) {
+			int length = mappedBuffer.getInt();
+			if (length == NULL_LENGTH) {
+				row.add(null);
+			} else {
+				byte[] value = new byte[length];
+				mappedBuffer.get(value);
+				row.add(value);
+			}
+		}
+		return row;
+	}
+
+	@Override
+	public void close() {
+		try {
+			randomFile.close();
+		} catch (IOException e) {
+			logger.warn("close sort run file error {}", file, e);
+		}
+		// 映射未释放时部分系统(windows)不能删除文件, 退出时再删除
+		if (!file.delete()) {
+			logger.debug("delete sort run file on exit {}", file);
+			file.deleteOnExit();
+		}
+	}
+}
@@ -1,12 +1,44 @@
 package io.mycat.mycat2.hbt;
 
+import java.util.regex.Pattern;
+
+import io.mycat.mycat2.beans.MySQLRepBean;
+
 public class SqlMeta {
+	/* 已经带有 LIMIT 或者 LIMIT 需要写在其他子句前面的语句, 不再追加 LIMIT */
+	private static final Pattern NO_LIMIT = Pattern.compile(
+			"\\b(limit|for\\s+update|lock\\s+in\\s+share\\s+mode|into|procedure)\\b", Pattern.CASE_INSENSITIVE);
+
 	/*存儲的sql 以及對應對的表的別名*/
 	public String sql ;
 	public String aliasTable;
+	/* 执行语句的复制组, 多个时在每个复制组上执行并合并结果, null 表示按会话的路由选择 */
+	public MySQLRepBean[] nodes;
 	public SqlMeta(String sql, String aliasTable) {
 		this.aliasTable = aliasTable;
 		this.sql = sql;
 	}
 
+	public SqlMeta(String sql, String aliasTable, MySQLRepBean[] nodes) {
+		this(sql, aliasTable);
+		this.nodes = nodes;
+	}
+
+	/**
+	 * 在语句末尾加上 LIMIT, 只读取前 rows 行
+	 *
+	 * @return 不能追加 LIMIT 时返回 null
+	 */
+	public SqlMeta limit(long rows) {
+		String text = sql.trim();
+		while(text.endsWith(";")) {
+			text = text.substring(0, text.length() - 1).trim();
+		}
+		if(NO_LIMIT.matcher(text).find()) {
+			return null;
+		}
+		// 在多个复制组上执行时每个复制组都只需要前 rows 行
+		return new SqlMeta(text + " limit " + rows, aliasTable, nodes);
+	}
+
 }
@@ -0,0 +1,50 @@
+package io.mycat.mycat2.hbt;
+
+import java.util.List;
+/**
+ *  group 的时候进行sum 某个字段, 全部为null时结果为null.
+ *  各个分片返回的 sum 结果同样使用该函数合并
+ * */
+public class SumFunction implements AggregateFunction {
+	private String fieldName;
+	private int index;
+	private int fieldType;
+
+	public SumFunction(String fieldName) {
+		this.fieldName = fieldName;
+	}
+
+	@Override
+	public void init(ResultSetMeta header) {
+		index = header.getFieldPos(fieldName);
+		fieldType = header.getFiledType(index);
+	}
+
+	@Override
+	public int[] outputTypes(ResultSetMeta header) {
+		return new int[] { NumericSum.resultType(fieldType) };
+	}
+
+	@Override
+	public AggregateState newState() {
+		return new AggregateState() {
+			private NumericSum sum;
+
+			@Override
+			public void add(List<byte[]> row) {
+				byte[] value = row.get(index);
+				if (value != null) {
+					if (sum == null) {
+						sum = new NumericSum(fieldType);
+					}
+					sum.add(value);
+				}
+			}
+
+			@Override
+			public void output(List<byte[]> result) {
+				result.add(sum == null ? null : sum.sum());
+			}
+		};
+	}
+}
@@ -1,16 +1,26 @@
 package io.mycat.mycat2.hbt.pipeline;
 
+import java.util.List;
 import java.util.function.Predicate;
 
+/**
+ * 只输出满足条件的行, 例如不能下推到后端语句的关联条件
+ */
 public class FilterPipeline extends ReferenceHBTPipeline {
 	
-	Predicate predicate = null;
+	Predicate<List<byte[]>> predicate = null;
 			
-	public FilterPipeline(ReferenceHBTPipeline upStream, Predicate predicate) {
+	public FilterPipeline(ReferenceHBTPipeline upStream, Predicate<List<byte[]>> predicate) {
 		super(upStream);
 		this.predicate = predicate;
 	}
 
-
+	@Override
+	public List<byte[]> onRowData(List<byte[]> row) {
+		if(!predicate.test(row)) {
+			return null;
+		}
+		return super.onRowData(row);
+	}
 
 }
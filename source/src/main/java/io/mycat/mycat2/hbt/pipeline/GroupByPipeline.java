@@ -1,19 +1,19 @@
 package io.mycat.mycat2.hbt.pipeline;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
-import io.mycat.mycat2.hbt.GroupPairKey;
+import io.mycat.mycat2.hbt.AggregateFunction;
+import io.mycat.mycat2.hbt.GroupHashTable;
 import io.mycat.mycat2.hbt.GroupPairKeyMeta;
 import io.mycat.mycat2.hbt.ResultSetMeta;
 
 
 /**
  * 进行group操作
+ * 每来一行就累加到所在分组的聚合状态中, 分组只保存聚合状态, 不保存行.
+ * 上游是各个分片的部分聚合结果时, 使用对应的合并函数, 例如 {@link io.mycat.mycat2.hbt.CountFunction#partial(String)}
+ * 没有 group 字段时与 mysql 一致, 没有任何数据也输出一行
  * 
  * @author zhangwy
  * */
@@ -21,70 +21,84 @@ public class GroupByPipeline extends ReferenceHBTPipeline {
 	/*
 	 * 对于group之后的数据进行的一系列操作 例如count 或者输出某个字段
 	 * */
-	List<Function< List<List<byte[]>>, List<byte[]> >> opFunction;
+	List<AggregateFunction> opFunction;
 	/* group的字段*/
 	GroupPairKeyMeta keyFunction;
 	
-	/*分组的函数 key为group的字段, value为所有key相同的row*/
-	Map<GroupPairKey, List<List<byte[]>>> groupMap;
+	/*分组的哈希表 key为group的字段, value为每个函数的聚合状态*/
+	GroupHashTable groupTable;
 	/*字段的头信息*/
 	private ResultSetMeta resultSetMeta;
+	/* 没有给出 resultSetMeta 时结果字段的名称, 类型由各个函数的输出类型决定 */
+	private List<String> fieldNames;
 	public GroupByPipeline(ReferenceHBTPipeline upStream, 
-			GroupPairKeyMeta keyFunction , ResultSetMeta resultSetMeta , List<Function<List<List<byte[]>>,List<byte[]>>> opFunction) {
+			GroupPairKeyMeta keyFunction , ResultSetMeta resultSetMeta , List<AggregateFunction> opFunction) {
+		this(upStream, keyFunction, resultSetMeta, null, opFunction);
+	}
+
+	public GroupByPipeline(ReferenceHBTPipeline upStream,
+			GroupPairKeyMeta keyFunction , List<String> fieldNames , List<AggregateFunction> opFunction) {
+		this(upStream, keyFunction, null, fieldNames, opFunction);
+	}
+
+	private GroupByPipeline(ReferenceHBTPipeline upStream, GroupPairKeyMeta keyFunction,
+			ResultSetMeta resultSetMeta, List<String> fieldNames, List<AggregateFunction> opFunction) {
 		super(upStream);
+		if(resultSetMeta == null && fieldNames == null) {
+			throw new IllegalArgumentException("group by needs the result set meta or the result field names");
+		}
 		this.opFunction = opFunction;
 		this.keyFunction = keyFunction;
-		groupMap = new HashMap<>();
 		this.resultSetMeta = resultSetMeta;
+		this.fieldNames = fieldNames;
 	}
 	
 	@Override
 	public ResultSetMeta onHeader(ResultSetMeta header) {
 		
 		keyFunction.init(header);
-		
+		for(AggregateFunction func : opFunction) {
+			func.init(header);
+		}
+		groupTable = new GroupHashTable(keyFunction.getIndexList(), opFunction);
+		if(resultSetMeta == null) {
+			resultSetMeta = outputMeta(header);
+		}
 		
 		return super.onHeader(resultSetMeta);
 	}
 	@Override
 	public List<byte[]> onRowData(List<byte[]> row) {
-		/* 获取key */
-		GroupPairKey pairKey = keyFunction.apply(row);
-		/*整理list 进行group分组*/
-		List<List<byte[]>> rowList = groupMap.get(pairKey);
-		if(rowList == null) {
-			rowList = new ArrayList<>();
-			groupMap.put(pairKey, rowList);
-		}
-		rowList.add(row);
+		groupTable.add(row);
 		return null;
 	}
 	
 	@Override
 	public void onEnd() {
-		List<List<byte[]>> rowLists = groupMap.values().stream().map(rowList -> {
-			List<byte[]> resultList = null;
-			/*
-			 * 对group完的List 分别执行count 或者avg 或者直接输出某几列
-			 * */
-			for(Function<List<List<byte[]>>, List<byte[]>> func : opFunction) {
-				List<byte[]> result = func.apply(rowList);
-				if(null == resultList) {
-					resultList = result;
-				} else {
-					resultList.addAll(result);
-				}
-			}
-			return resultList;
-		}).collect(Collectors.toList());
-		
 		/**
 		 * 管道执行下一个函数
 		 * */
-		for(List<byte[]> rowList : rowLists ) {
-			super.onRowData(rowList);
+		groupTable.forEach(super::onRowData);
+		if(groupTable.size() == 0 && keyFunction.getIndexList().length == 0) {
+			List<byte[]> result = new ArrayList<>();
+			for(AggregateFunction func : opFunction) {
+				func.newState().output(result);
+			}
+			super.onRowData(result);
 		}
+		groupTable = null;
 		
 		super.onEnd();
 	}
+
+	private ResultSetMeta outputMeta(ResultSetMeta header) {
+		int[] types = new int[fieldNames.size()];
+		int pos = 0;
+		for(AggregateFunction func : opFunction) {
+			for(int type : func.outputTypes(header)) {
+				types[pos++] = type;
+			}
+		}
+		return new ResultSetMeta(new ArrayList<>(fieldNames), types);
+	}
 }
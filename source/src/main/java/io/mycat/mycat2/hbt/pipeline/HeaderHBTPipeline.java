@@ -1,18 +1,23 @@
 package io.mycat.mycat2.hbt.pipeline;
 
 import java.io.IOException;
-import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
 
+import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.MycatSession;
-import io.mycat.mycat2.hbt.MyFunction;
+import io.mycat.mycat2.beans.MySQLRepBean;
 import io.mycat.mycat2.hbt.ResultSetMeta;
 import io.mycat.mycat2.hbt.RowMeta;
 import io.mycat.mycat2.hbt.SqlMeta;
+import io.mycat.mycat2.tasks.AsynTaskCallBack;
 import io.mycat.mycat2.tasks.RowStream;
 import io.mycat.mysql.packet.ErrorPacket;
 
+/**
+ * 读取后端数据的头结点. 语句指定了多个复制组时在每个复制组上同时执行,
+ * 第一个到达的字段信息传给下游, 各个复制组的行依次传给下游, 全部结束后结束
+ */
 public class HeaderHBTPipeline extends ReferenceHBTPipeline {
 	
     MycatSession mycatSession = null;
@@ -20,6 +25,14 @@ public class HeaderHBTPipeline extends ReferenceHBTPipeline {
 	SqlMeta sqlMeta = null;
 
 	private RowMeta rowData;
+	/* 正在读取数据的后端连接, 数据读取完成后移除 */
+	private final List<MySQLSession> streamSessions = new ArrayList<>();
+	/* 还没有结束的语句数量 */
+	private int remaining;
+	private boolean headerSent;
+	private int pauseCount;
+	/* 后端语句已经带上了下游需要的 LIMIT */
+	private boolean limitPushed;
 	HeaderHBTPipeline(MycatSession mycatSession, SqlMeta sqlMeta, RowMeta rowData) {
 		super(null);
 		this.sqlMeta = sqlMeta;
@@ -29,38 +42,117 @@ public class HeaderHBTPipeline extends ReferenceHBTPipeline {
 	
 	@Override
 	public void begin(int i)   {
-		System.out.println("开始header执行");
-		Function<ResultSetMeta, ResultSetMeta> onHeader = this::onHeader;
-		Function<List<byte[]>, List<byte[]>> onRowData = this::onRowData;
-		MyFunction onEnd = this::onEnd;
-		
+		MySQLRepBean[] nodes = sqlMeta.nodes;
+		remaining = nodes == null ? 1 : nodes.length;
+		AsynTaskCallBack<MySQLSession> callback = (mysqlsession, sender, success,result) -> {
+            if(success && isCancelled()) {
+                streamEnd();
+            } else if(success){ 
+                RowStream rowStream = new RowStream(mysqlsession, sqlMeta 
+                        ,this::streamHeader, this::onRowData, () -> {});
+                streamSessions.add(mysqlsession);
+                if(pauseCount > 0) {
+                    mysqlsession.clearReadWriteOpts();
+                }
+                rowStream.fetchStream();
+                rowStream.setCallback((optSession, sender1, success1,result1) -> {
+                    streamSessions.remove(optSession);
+                    // 取消后被 KILL QUERY 中止的语句按正常结束处理
+                    if(success1 || isCancelled()) {
+                       //结果回调
+                        streamEnd();
+                    }else{
+                        onError(new IOException(((ErrorPacket)result1).message));
+                    }
+                });
+            } else {
+                onError(new IOException("get backend connection error"));
+            }		    
+        };
 		try {
-            mycatSession.getBackend((mysqlsession, sender, success,result) -> {
-                if(success){ 
-                    RowStream rowStream = new RowStream(mysqlsession, sqlMeta 
-                            ,onHeader, onRowData, onEnd);
-                    rowStream.fetchStream();
-                    rowStream.setCallback((optSession, sender1, success1,result1) -> {
-                        if(success) {
-                           //结果回调
-                            onEnd.apply();
-                        }else{
-                            MycatSession session = optSession.getMycatSession();
-                            session.proxyBuffer.flip();
-                            session.takeOwner(SelectionKey.OP_WRITE);
-                            session.responseOKOrError((ErrorPacket)result1);
-                        }
-                    });
-                } else {
-                    //错误
-                    onEnd.apply();
-                }		    
-            });
+			if(nodes == null) {
+				mycatSession.getBackend(callback);
+			} else {
+				for(MySQLRepBean node : nodes) {
+					mycatSession.getIdleBackend(node, callback);
+				}
+			}
         } catch (IOException e) {
-            e.printStackTrace();
+            onError(e);
         }
 	}
 
+	private ResultSetMeta streamHeader(ResultSetMeta header) {
+		if(headerSent) {
+			return null;
+		}
+		headerSent = true;
+		return onHeader(header);
+	}
+
+	private void streamEnd() {
+		if(--remaining == 0) {
+			onEnd();
+		}
+	}
+
+	/**
+	 * 下游多个管道可能同时要求暂停, 全部恢复后才继续读取
+	 */
+	@Override
+	public void pause() {
+		if(isCancelled()) {
+			return;
+		}
+		if(pauseCount++ == 0) {
+			for(MySQLSession session : streamSessions) {
+				session.clearReadWriteOpts();
+			}
+		}
+	}
+
+	@Override
+	public void resume() {
+		if(pauseCount > 0 && --pauseCount == 0) {
+			for(MySQLSession session : streamSessions) {
+				session.change2ReadOpts();
+			}
+		}
+	}
+
+	/**
+	 * 后端语句带上 LIMIT 时剩余的数据不多, 直接读完; 否则 KILL QUERY 中止语句.
+	 * 剩余的数据都读取后丢弃, 语句结束后连接按正常结束处理
+	 */
+	@Override
+	public void cancel() {
+		if(isCancelled()) {
+			return;
+		}
+		super.cancel();
+		boolean paused = pauseCount > 0;
+		pauseCount = 0;
+		for(MySQLSession session : streamSessions) {
+			if(paused) {
+				session.change2ReadOpts();
+			}
+			if(!limitPushed) {
+				killQuery(session);
+			}
+		}
+	}
+
+	@Override
+	public boolean limitRows(long rows) {
+		SqlMeta limited = sqlMeta.limit(rows);
+		if(limited == null) {
+			return false;
+		}
+		sqlMeta = limited;
+		limitPushed = true;
+		return true;
+	}
+
 //	@Override
 //	public ResultSetMeta onHeader(ResultSetMeta header)  {
 //		return this.nextStream.onHeader(header);
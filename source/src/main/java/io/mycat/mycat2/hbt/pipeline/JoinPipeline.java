@@ -1,28 +1,46 @@
 package io.mycat.mycat2.hbt.pipeline;
 
 import java.io.IOException;
-import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Function;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatConfig;
 import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.ProxyBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
+import io.mycat.mycat2.hbt.JoinHashTable;
 import io.mycat.mycat2.hbt.JoinMeta;
 import io.mycat.mycat2.hbt.MatchCallback;
-import io.mycat.mycat2.hbt.MyFunction;
 import io.mycat.mycat2.hbt.ResultSetMeta;
 import io.mycat.mycat2.hbt.RowMeta;
 import io.mycat.mycat2.hbt.SqlMeta;
+import io.mycat.mycat2.tasks.AsynTaskCallBack;
 import io.mycat.mycat2.tasks.RowStream;
 import io.mycat.mysql.packet.ErrorPacket;
+import io.mycat.proxy.ConfigEnum;
+import io.mycat.proxy.ProxyRuntime;
 
 /**
- * 
+ * a表(上游)与b表进行join
+ * 1. 批量嵌套循环: 每收集 joinMeta.limit 个不同的关联字段值, 以 in 条件向b表发起一次请求.
+ *    每个复制组上最多 window 个批次同时在不同的后端连接上执行, 各复制组分别排队, 互不等待.
+ *    有批次在排队时暂停读取上游, 所有复制组的排队批次都开始执行后恢复.
+ * 2. hash join: 设置了 joinMeta.hashJoinMemoryLimit 且a表数据没有超过该上限时, 缓存a表全部数据,
+ *    上游结束后一次扫描b表. 超过上限时转为批量嵌套循环.
+ * a表的数据按关联字段的原始字节放入 {@link JoinHashTable}, b表的数据到达时查找匹配的行.
+ * b表的语句指定了多个复制组时, 每个批次在每个复制组上分别执行.
+ * 没有给出结果的字段信息时, 输出的行为a表与b表的行拼接而成, 字段信息在第一次读取到b表的字段信息时拼接后传给下游,
+ * 没有读取过b表时使用 rowMeta 中的b表字段信息
  * */
 public class JoinPipeline extends ReferenceHBTPipeline {
-	
+	private static final Logger logger = LoggerFactory.getLogger(JoinPipeline.class);
 
 	private MycatSession mycatSession;
     private SqlMeta sqlMeta;
@@ -31,12 +49,26 @@ public class JoinPipeline extends ReferenceHBTPipeline {
     private ResultSetMeta resultSetMeta;
 
     private JoinMeta joinMeta;
-    private List<String> joinKeyList;
-    
-    private int nextFetchCount = 0;
-    private int nextFetchFinishCount = 0;
+    /* 每个复制组同时执行的批次数量上限 */
+    private final int window;
+    /* 每个复制组的批次窗口 */
+    private final NodeWindow[] nodeWindows;
+
+    private int lJoinKeyPos;
+    private int lJoinKeyType;
+    /* 正在收集的批次 */
+    private JoinHashTable batch;
+    private boolean hashJoin;
+    private boolean paused;
+    /* 下游要求暂停输出 */
+    private boolean downstreamPaused;
+    /* 正在读取b表数据的后端连接 */
+    private final List<MySQLSession> fetchSessions = new ArrayList<>();
+    private boolean upstreamEnd;
+    /* 拼接字段信息时的a表字段信息 */
+    private ResultSetMeta upstreamHeader;
+    private boolean headerSent;
 
-    private Map<String,List<List<byte[]>>> batchRow ;
     public JoinPipeline(ReferenceHBTPipeline upstream, MycatSession mycatSession, SqlMeta sqlMeta,
 	        RowMeta rowMeta, JoinMeta joinMeta, ResultSetMeta resultSetMeta, MatchCallback callback) {
 		super(upstream);
@@ -46,143 +78,334 @@ public class JoinPipeline extends ReferenceHBTPipeline {
 		this.resultSetMeta = resultSetMeta;
 		this.matchCallback = callback;
 		this.joinMeta = joinMeta;
-		joinKeyList = new ArrayList<>();
-		batchRow = new HashMap<>();
-    
+		this.window = Math.max(1, defaultWindow());
+		this.hashJoin = joinMeta.getHashJoinMemoryLimit() > 0;
+		if(sqlMeta.nodes == null) {
+			this.nodeWindows = new NodeWindow[] { new NodeWindow(null) };
+		} else {
+			this.nodeWindows = new NodeWindow[sqlMeta.nodes.length];
+			for(int i = 0; i < nodeWindows.length; i++) {
+				nodeWindows[i] = new NodeWindow(sqlMeta.nodes[i]);
+			}
+		}
     }
-    private ResultSetMeta aResultSetMeta;
-    private ResultSetMeta bResultSetMeta;
+
+	/**
+	 * 一个复制组(null 为默认复制组)上正在执行和等待执行的批次.
+	 * 每个批次占用该复制组的一个后端连接
+	 */
+	static final class NodeWindow {
+		final MySQLRepBean node;
+		final ArrayDeque<Batch> pending = new ArrayDeque<>();
+		int inFlight;
+
+		NodeWindow(MySQLRepBean node) {
+			this.node = node;
+		}
+	}
+
+	/**
+	 * 一个批次与查询b表的语句, 各复制组共用
+	 */
+	static final class Batch {
+		final JoinHashTable table;
+		final String sql;
+
+		Batch(JoinHashTable table, String sql) {
+			this.table = table;
+			this.sql = sql;
+		}
+	}
+
+	private static int defaultWindow() {
+		MycatConfig config = ProxyRuntime.INSTANCE.getConfig();
+		ProxyConfig proxyConfig = config == null ? null : config.getConfig(ConfigEnum.PROXY);
+		return proxyConfig == null ? ProxyBean.DEFAULT_JOIN_BATCH_WINDOW : proxyConfig.getProxy().getJoinBatchWindow();
+	}
 
 	@Override
 	public ResultSetMeta onHeader(ResultSetMeta header) {
-		System.out.println("JoinPipeline onHeader");
-		this.aResultSetMeta = header;
-		
+		this.lJoinKeyPos = header.getFieldPos(joinMeta.lJoinKey);
+		this.lJoinKeyType = header.getFiledType(lJoinKeyPos);
+		this.batch = new JoinHashTable(lJoinKeyPos);
+		if(resultSetMeta == null) {
+			upstreamHeader = header;
+			return null;
+		}
+		headerSent = true;
 		return super.onHeader(resultSetMeta);
 	}
 
+	/**
+	 * a表与b表的字段信息拼接后传给下游, 只传一次
+	 */
+	private void sendHeader(ResultSetMeta bHeader) {
+		if(headerSent) {
+			return;
+		}
+		headerSent = true;
+		int aCount = upstreamHeader.getFiledCount();
+		int bCount = bHeader == null ? 0 : bHeader.getFiledCount();
+		List<String> names = new ArrayList<>(upstreamHeader.getFieldNameList());
+		int[] types = new int[aCount + bCount];
+		for(int i = 0; i < aCount; i++) {
+			types[i] = upstreamHeader.getFiledType(i);
+		}
+		for(int i = 0; i < bCount; i++) {
+			names.add(bHeader.getFieldNameList().get(i));
+			types[aCount + i] = bHeader.getFiledType(i);
+		}
+		super.onHeader(new ResultSetMeta(names, types));
+	}
+
 	@Override
 	public  List<byte[]> onRowData(List<byte[]> row) {
-		System.out.println("JoinPipeline onRowData");
-		addRow(row);
-		
-		row.stream().forEach(value -> {
-			if(null != value) {
-				System.out.print(String.format("             %s", new String(value)));
-			} else {
-				System.out.print(String.format("             null"));
+		if(isCancelled()) {
+			return null;
+		}
+		// null 与任何值都不相等, 不加入批次
+		if(!batch.add(row)) {
+			return null;
+		}
+		if(hashJoin) {
+			if(batch.memoryUsed() > joinMeta.getHashJoinMemoryLimit()) {
+				hashJoin = false;
+				splitBatch();
 			}
-				
-	        
-	    });
-	    System.out.println("        ");
+		} else if(batch.keyCount() >= joinMeta.getLimit()) {
+			submit(batch);
+			batch = new JoinHashTable(lJoinKeyPos);
+		}
 		return null;
 	}
-	private void addRow( List<byte[]> row) {
-        Integer fieldPos = aResultSetMeta.getFieldPos(joinMeta.lJoinKey);
-        String value = new String(row.get(fieldPos));
-        joinKeyList.add(value);
-        
-        List<List<byte[]>> rows = batchRow.get(value);
-        if(null == rows) {
-            rows = new ArrayList<>();
-            batchRow.put(value, rows);
-        }
-        rows.add(row);
-
-        if(joinKeyList.size() == joinMeta.getLimit()) {
-            fetchRequest();
-            joinKeyList.clear();
-        }
-    }
-	
-	
+
 	/**
-    *@desc
-    *@auth zhangwy 
-    *@date 2017年10月17日 下午11:13:24
-    **/
-    private void fetchRequest() {
-        System.out.println("开始fetchRequest执行 请求");
-        nextFetchCount ++;
-        final Map<String, List<List<byte[]>>> tmpBatchRow = batchRow;
-        batchRow = new HashMap<>();
-        
-        Function<ResultSetMeta, ResultSetMeta> onHeader = (ResultSetMeta) ->{
-            this.bResultSetMeta = ResultSetMeta;
+	 * hash join 的数据超过内存上限, 按 limit 拆分为多个批次
+	 * */
+	private void splitBatch() {
+		JoinHashTable all = batch;
+		batch = new JoinHashTable(lJoinKeyPos);
+		for(int i = 0; i < all.keyCount(); i++) {
+			all.forEachRow(i, batch::add);
+			if(batch.keyCount() >= joinMeta.getLimit()) {
+				submit(batch);
+				batch = new JoinHashTable(lJoinKeyPos);
+			}
+		}
+	}
+
+	/**
+	 * 批次带上关联字段值的in条件, 在每个复制组上执行. 复制组的窗口已满时在该复制组排队
+	 */
+	private void submit(JoinHashTable table) {
+		Batch next = new Batch(table, joinMeta.getSql(table.getKeys(), lJoinKeyType, sqlMeta));
+		boolean queued = false;
+		for(NodeWindow nodeWindow : nodeWindows) {
+			if(nodeWindow.inFlight < window && nodeWindow.pending.isEmpty() && !downstreamPaused) {
+				fetchRequest(nodeWindow, next);
+			} else {
+				nodeWindow.pending.add(next);
+				queued = true;
+			}
+		}
+		if(queued && !paused) {
+			paused = true;
+			super.pause();
+		}
+	}
+
+	/**
+	 * 在复制组的一个空闲的后端连接上查询b表, 与批次中的a表数据进行匹配
+	 * */
+    private void fetchRequest(NodeWindow nodeWindow, Batch next) {
+        nodeWindow.inFlight ++;
+        JoinHashTable table = next.table;
+        String sql = next.sql;
+        logger.debug("join fetch {} keys, {} in flight. {}", table.keyCount(), nodeWindow.inFlight, sql);
+
+        int[] rJoinKeyPos = new int[1];
+        Function<ResultSetMeta, ResultSetMeta> onHeader = (bResultSetMeta) -> {
+            rJoinKeyPos[0] = bResultSetMeta.getFieldPos(joinMeta.rJoinKey);
+            sendHeader(bResultSetMeta);
             return null;
-        } ;
-        
+        };
         Function<List<byte[]>, List<byte[]>> onRowData = (bRow) -> {
-            Integer rfieldPos = this.bResultSetMeta.getFieldPos(joinMeta.rJoinKey);
-            String value = new String(bRow.get(rfieldPos));
-            List<List<byte[]>> rows = tmpBatchRow.get(value);
-            for(List<byte[]> aRow : rows) {
+            table.forEachMatch(bRow, rJoinKeyPos[0], aRow -> {
                 List<byte[]> out = new ArrayList<>();
-                this.matchCallback.call(aRow, bRow, out );
+                this.matchCallback.call(aRow, bRow, out);
                 super.onRowData(out);
-            }
+            });
             return null;
         };
-        MyFunction onEnd = () -> {
-            this.nextFetchFinishCount ++;
-            this.onFinish();
-        };
-        
-        try {
-        	Integer fieldPos = aResultSetMeta.getFieldPos(joinMeta.lJoinKey);
-            int fieldType = aResultSetMeta.getFiledType(fieldPos);
-            String sql = joinMeta.getSql(joinKeyList, fieldType, sqlMeta);
-            System.out.println(sql);
-            
-            mycatSession.getBackend((mysqlsession, sender, success,result) -> {
-                if(success){ 
-                    
-                    SqlMeta sqlMetaNew = new SqlMeta(sql, ""); 
-                    RowStream rowStream = new RowStream(mysqlsession, sqlMetaNew
-                            ,onHeader, onRowData, onEnd);
-                    rowStream.fetchStream();
-                    rowStream.setCallback((optSession, sender1, success1,result1) -> {
-                        if(success) {
-                           //结果回调
-                            onEnd.apply();
-                        }else{
-                            MycatSession session = optSession.getMycatSession();
-                            session.proxyBuffer.flip();
-                            session.takeOwner(SelectionKey.OP_WRITE);
-                            session.responseOKOrError((ErrorPacket)result1);
-                            
-                        }
-                    });
+
+        AsynTaskCallBack<MySQLSession> callback = (mysqlsession, sender, success, result) -> {
+            if(!success) {
+                onError(new IOException("get backend connection error for join"));
+                return;
+            }
+            if(isCancelled()) {
+                onBatchFinish(nodeWindow);
+                return;
+            }
+            RowStream rowStream = new RowStream(mysqlsession, new SqlMeta(sql, sqlMeta.aliasTable),
+                    onHeader, onRowData, () -> {});
+            rowStream.setCallback((optSession, sender1, success1, result1) -> {
+                fetchSessions.remove(optSession);
+                // 取消后被 KILL QUERY 中止的批次按正常结束处理
+                if(success1 || isCancelled()) {
+                    onBatchFinish(nodeWindow);
                 } else {
-                    //错误
-                    onEnd.apply();
-                }           
+                    onError(new IOException(((ErrorPacket) result1).message));
+                }
             });
+            rowStream.fetchStream();
+            fetchSessions.add(mysqlsession);
+        };
+        try {
+            acquire(nodeWindow.node, callback);
         } catch (IOException e) {
-            //错误
-            this.onEnd();
-            e.printStackTrace();
+            onError(e);
         }
-    
+    }
+
+    /**
+     * 获取复制组的一个空闲的后端连接
+     *
+     * @param node null 时使用默认复制组
+     */
+    void acquire(MySQLRepBean node, AsynTaskCallBack<MySQLSession> callback) throws IOException {
+        if(node == null) {
+            mycatSession.getIdleBackend(callback);
+        } else {
+            mycatSession.getIdleBackend(node, callback);
+        }
+    }
+
+    void onBatchFinish(NodeWindow nodeWindow) {
+        nodeWindow.inFlight --;
+        if(!canHandle()) {
+            return;
+        }
+        if(!downstreamPaused) {
+            fetchPending();
+        }
+        onFinish();
+    }
+
+    /**
+     * 各复制组在窗口内开始排队的批次, 全部开始后恢复读取上游
+     */
+    private void fetchPending() {
+        boolean queued = false;
+        for(NodeWindow nodeWindow : nodeWindows) {
+            Batch next;
+            while(nodeWindow.inFlight < window && (next = nodeWindow.pending.poll()) != null) {
+                fetchRequest(nodeWindow, next);
+            }
+            queued |= !nodeWindow.pending.isEmpty();
+        }
+        if(paused && !queued) {
+            paused = false;
+            super.resume();
+        }
+    }
+
+    private void clearPending() {
+        for(NodeWindow nodeWindow : nodeWindows) {
+            nodeWindow.pending.clear();
+        }
+    }
+
+    NodeWindow[] getNodeWindows() {
+        return nodeWindows;
+    }
+
+    /**
+     * 下游处理不过来时, 除了暂停上游, 还要暂停正在读取的b表数据, 也不再开始新的批次
+     */
+    @Override
+    public void pause() {
+        if(isCancelled()) {
+            return;
+        }
+        downstreamPaused = true;
+        for(MySQLSession session : fetchSessions) {
+            session.clearReadWriteOpts();
+        }
+        super.pause();
+    }
+
+    @Override
+    public void resume() {
+        downstreamPaused = false;
+        for(MySQLSession session : fetchSessions) {
+            session.change2ReadOpts();
+        }
+        fetchPending();
+        super.resume();
     }
     
+    /**
+     * 下游不再需要数据, 丢弃等待执行的批次, 中止正在执行的批次, 剩余的数据读取后丢弃
+     */
+    @Override
+    public void cancel() {
+        if(isCancelled()) {
+            return;
+        }
+        clearPending();
+        batch = null;
+        paused = false;
+        downstreamPaused = false;
+        for(MySQLSession session : fetchSessions) {
+            session.change2ReadOpts();
+            killQuery(session);
+        }
+        super.cancel();
+        onFinish();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        clearPending();
+        if(paused) {
+            paused = false;
+            super.resume();
+        }
+        super.onError(throwable);
+    }
+
     private void onFinish() {
-        if(nextFetchCount == nextFetchFinishCount ) {
-        	super.onEnd();
-           // this.nextStream.onEnd();
+        if(!upstreamEnd) {
+            return;
+        }
+        for(NodeWindow nodeWindow : nodeWindows) {
+            if(nodeWindow.inFlight > 0 || !nodeWindow.pending.isEmpty()) {
+                return;
+            }
         }
+        if(upstreamHeader != null) {
+            sendHeader(rowMeta.headerResultSetMeta);
+        }
+        super.onEnd();
     }
     
     @Override
 	public void onEnd() {
-		System.out.println("JoinPipeline  onEnd");
-		this.status = Status.SUCCESS;
-		if( joinKeyList.size() != 0) {
-            fetchRequest();
-        } else {
-            onFinish();
-        }
+		upstreamEnd = true;
+		if(!isCancelled() && batch != null && batch.keyCount() > 0) {
+			if(hashJoin) {
+				// 扫描整个b表, 不受窗口限制
+				Batch all = new Batch(batch, sqlMeta.sql);
+				for(NodeWindow nodeWindow : nodeWindows) {
+					fetchRequest(nodeWindow, all);
+				}
+			} else {
+				submit(batch);
+			}
+		}
+		batch = null;
+		onFinish();
 	}
 
 }
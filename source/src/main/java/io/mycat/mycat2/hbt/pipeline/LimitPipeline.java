@@ -2,6 +2,11 @@ package io.mycat.mycat2.hbt.pipeline;
 
 import java.util.List;
 
+import io.mycat.mycat2.hbt.ResultSetMeta;
+
+/**
+ * 只输出前 limit 行. 行数尽量下推给上游限制, 输出够了以后通知上游取消, 不再读取剩余数据
+ */
 public class LimitPipeline extends ReferenceHBTPipeline {
 
 	private int limit;
@@ -9,13 +14,33 @@ public class LimitPipeline extends ReferenceHBTPipeline {
 			int limit) {
 		super(upStream);
 		this.limit = limit;
+		upStream.limitRows(limit);
+	}
+
+	@Override
+	public ResultSetMeta onHeader(ResultSetMeta header) {
+		ResultSetMeta result = super.onHeader(header);
+		if(limit <= 0) {
+			cancel();
+		}
+		return result;
 	}
 
 	@Override
 	public List<byte[]> onRowData(List<byte[]> row) {
-		if(limit -- > 0) {
-			return super.onRowData(row);
+		if(limit <= 0) {
+			return null;
 		}
-		return null;
+		limit --;
+		List<byte[]> result = super.onRowData(row);
+		if(limit == 0) {
+			cancel();
+		}
+		return result;
+	}
+
+	@Override
+	public boolean limitRows(long rows) {
+		return upStreamLimitRows(Math.min(rows, limit));
 	}
 }
@@ -2,9 +2,10 @@
 package io.mycat.mycat2.hbt.pipeline;
 
 import java.util.List;
-import java.util.function.Function;
+import java.util.function.Predicate;
 
 import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.hbt.AggregateFunction;
 import io.mycat.mycat2.hbt.JoinMeta;
 import io.mycat.mycat2.hbt.MatchCallback;
 import io.mycat.mycat2.hbt.OrderMeta;
@@ -20,14 +21,27 @@ import io.mycat.mycat2.hbt.SqlMeta;
 **/
 public interface OpPipeline {
     public OpPipeline group(GroupPairKeyMeta keyFunction,  ResultSetMeta resultSetMeta,
-    		List<Function<List<List<byte[]>>,List<byte[]>>> groupOpFunction
+    		List<AggregateFunction> groupOpFunction
     		) ;
+
+    /**
+     * 分组结果的字段类型由各个函数的输出类型决定
+     */
+    public OpPipeline group(GroupPairKeyMeta keyFunction, List<String> fieldNames,
+    		List<AggregateFunction> groupOpFunction);
     
     public OpPipeline limit(int limit) ;
     public OpPipeline skip(int n) ;
-    public OpPipeline filter() ;
+    public OpPipeline filter(Predicate<List<byte[]>> predicate) ;
     public OpPipeline join(MycatSession session, SqlMeta sqlMeta,
             RowMeta rowMeta, JoinMeta joinMeta, ResultSetMeta resultSetMeta, MatchCallback callback);
+
+    /**
+     * 输出a表的行与b表的行拼接而成的行, 字段信息由两边的字段信息拼接而成
+     */
+    public OpPipeline join(MycatSession session, SqlMeta sqlMeta, RowMeta rowMeta, JoinMeta joinMeta);
+
+    public OpPipeline project(int[] columns, List<String> fieldNames);
     
     public void out(MycatSession session);
 
@@ -1,64 +1,316 @@
 package io.mycat.mycat2.hbt.pipeline;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.PriorityQueue;
 
-import javax.swing.SortOrder;
-
-import io.mycat.mycat2.hbt.OrderKey;
+import io.mycat.mycat2.MycatConfig;
+import io.mycat.mycat2.beans.conf.ProxyBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
 import io.mycat.mycat2.hbt.OrderMeta;
 import io.mycat.mycat2.hbt.ResultSetMeta;
-import io.mycat.util.StringUtil;
+import io.mycat.mycat2.hbt.RowComparator;
+import io.mycat.mycat2.hbt.SortRunFile;
+import io.mycat.proxy.ConfigEnum;
+import io.mycat.proxy.ProxyRuntime;
 
+/**
+ * 排序
+ * 1. 直接比较字段原始字节排序, 见 {@link RowComparator}
+ * 2. 输入由若干段已经有序的数据组成时(如各个分片分别排好序的结果), 多路归并各段, 不再整体排序
+ * 3. 缓存的数据超过内存上限时, 排好序写入临时文件, 结束时与内存中的数据一起多路归并输出
+ * 4. 下游只需要前 N 行时(ORDER BY ... LIMIT N), 用大小为 N 的堆只保留最小的 N 行
+ *
+ * @author zhangwy
+ */
 public class OrderPipeline extends ReferenceHBTPipeline {
 
+	/* 每行数据除字段内容外的内存开销估算 */
+	private static final int ROW_OVERHEAD = 56;
+	private static final int FIELD_OVERHEAD = 24;
+	/* 有序段数量不超过该值时直接多路归并 */
+	private static final int MAX_MERGE_RUNS = 64;
+	/* 单个临时文件通过一次内存映射读写, 不能超过2G */
+	private static final long MAX_MEMORY_LIMIT = Integer.MAX_VALUE / 2;
+
 	private OrderMeta orderMeta;
+	private final long memoryLimit;
+	private RowComparator comparator;
+	private int fieldCount;
+
 	private List<List<byte[]>> rowList;
-	private ResultSetMeta resultSetMeta;
-	public OrderPipeline(ReferenceHBTPipeline upStream, 
+	/* rowList 中各个有序段的起始位置, 超过 MAX_MERGE_RUNS 后不再记录 */
+	private final int[] runStarts = new int[MAX_MERGE_RUNS];
+	private int runCount;
+	private long memoryUsed;
+	private long spillBytes;
+	private final List<SortRunFile> spilledRuns = new ArrayList<>();
+
+	/* 只保留的前 N 行, 小于0表示不限制 */
+	private long topN = -1;
+	/* 排在最后的行在堆顶 */
+	private PriorityQueue<TopRow> topRows;
+	private long rowSeq;
+
+	public OrderPipeline(ReferenceHBTPipeline upStream,
 			OrderMeta orderMeta) {
+		this(upStream, orderMeta, defaultMemoryLimit());
+	}
+
+	public OrderPipeline(ReferenceHBTPipeline upStream, OrderMeta orderMeta, long memoryLimit) {
 		super(upStream);
 		this.orderMeta = orderMeta;
+		this.memoryLimit = Math.min(memoryLimit, MAX_MEMORY_LIMIT);
 		rowList = new ArrayList<>();
 	}
-	
+
+	private static long defaultMemoryLimit() {
+		MycatConfig config = ProxyRuntime.INSTANCE.getConfig();
+		ProxyConfig proxyConfig = config == null ? null : config.getConfig(ConfigEnum.PROXY);
+		return proxyConfig == null ? ProxyBean.DEFAULT_SORT_MEMORY_LIMIT : proxyConfig.getProxy().getSortMemoryLimit();
+	}
+
 	@Override
 	public ResultSetMeta onHeader(ResultSetMeta header) {
-		this.resultSetMeta = header;
+		this.comparator = new RowComparator(header, orderMeta);
+		this.fieldCount = header.getFiledCount();
 		return super.onHeader(header);
 	}
-	
+
+	/**
+	 * 只需要排序后的前 rows 行, 不再缓存全部数据
+	 */
+	@Override
+	public boolean limitRows(long rows) {
+		if (rows >= Integer.MAX_VALUE) {
+			return false;
+		}
+		if (topN < 0 || rows < topN) {
+			topN = rows;
+		}
+		return true;
+	}
+
 	@Override
 	public List<byte[]> onRowData(List<byte[]> row) {
+		if (topN >= 0) {
+			if (topN > 0) {
+				offerTopRow(row);
+			}
+			return null;
+		}
+		int size = rowList.size();
+		if (size == 0) {
+			runStarts[0] = 0;
+			runCount = 1;
+		} else if (runCount <= MAX_MERGE_RUNS && comparator.compare(rowList.get(size - 1), row) > 0) {
+			// 新的有序段
+			if (runCount < MAX_MERGE_RUNS) {
+				runStarts[runCount] = size;
+			}
+			runCount++;
+		}
 		rowList.add(row);
+		int rowBytes = SortRunFile.sizeOf(row);
+		spillBytes += rowBytes;
+		memoryUsed += rowBytes + ROW_OVERHEAD + FIELD_OVERHEAD * row.size();
+		if (memoryUsed > memoryLimit) {
+			spill();
+		}
 		return null;
 	}
-	
+
+	/**
+	 * 内存中的数据排好序写入临时文件
+	 */
+	private void spill() {
+		SortRunFile runFile;
+		try {
+			runFile = new SortRunFile(fieldCount, spillBytes);
+		} catch (IOException e) {
+			throw new RuntimeException("create sort run file error", e);
+		}
+		spilledRuns.add(runFile);
+		merge(memoryCursors(), runFile::append);
+		runFile.finishWrite();
+		rowList = new ArrayList<>();
+		runCount = 0;
+		memoryUsed = 0;
+		spillBytes = 0;
+	}
+
+	/**
+	 * 排序值相同时先到的行排在前面, 与整体排序的结果一致
+	 */
+	private void offerTopRow(List<byte[]> row) {
+		if (topRows == null) {
+			topRows = new PriorityQueue<>((int) Math.min(topN, 1024) + 1, (r1, r2) -> {
+				int result = comparator.compare(r2.row, r1.row);
+				return result != 0 ? result : Long.compare(r2.seq, r1.seq);
+			});
+		}
+		if (topRows.size() < topN) {
+			topRows.add(new TopRow(row, rowSeq++));
+		} else if (comparator.compare(row, topRows.peek().row) < 0) {
+			TopRow last = topRows.poll();
+			last.row = row;
+			last.seq = rowSeq++;
+			topRows.add(last);
+		}
+	}
+
 	@Override
 	public void onEnd() {
-		List<SortOrder> sortOrderList = orderMeta.getSortOrderList();
-		List<String> columnsList = orderMeta.getColumnsList();
-		int[] posList =	columnsList.stream().mapToInt(columns -> resultSetMeta.getFieldPos(columns)).toArray();
-		List<OrderKey> orderKeyList = new ArrayList<>();
-		for(int i = 0 ; i < rowList.size(); i++ ) {
-			List<String> list = new ArrayList<>();
-			List<byte[]> row = rowList.get(i);
-			for(int pos : posList) {
-				String val = StringUtil.parseString(row.get(pos));
-				list.add(val);
+		if (topN >= 0) {
+			List<List<byte[]>> rows = new ArrayList<>(topRows == null ? 0 : topRows.size());
+			if (topRows != null) {
+				TopRow[] sorted = topRows.toArray(new TopRow[topRows.size()]);
+				// 堆的比较器是倒序的, 倒着取出即为正序
+				Arrays.sort(sorted, topRows.comparator());
+				for (int i = sorted.length - 1; i >= 0; i--) {
+					rows.add(sorted[i].row);
+				}
+				topRows = null;
+			}
+			for (List<byte[]> row : rows) {
+				if (isCancelled()) {
+					break;
+				}
+				super.onRowData(row);
 			}
-			orderKeyList.add(new OrderKey(list, sortOrderList, i));
+			super.onEnd();
+			return;
 		}
-		
-		//排序 
-		Collections.sort(orderKeyList);
-		for(OrderKey orderKey : orderKeyList) {
-			int index = orderKey.getIndex();
-			super.onRowData(rowList.get(index));
+		try {
+			List<RowCursor> cursors = new ArrayList<>();
+			for (SortRunFile runFile : spilledRuns) {
+				cursors.add(runFile::next);
+			}
+			cursors.addAll(memoryCursors());
+			merge(cursors, super::onRowData);
+		} finally {
+			releaseRuns();
 		}
 		super.onEnd();
 	}
 
+	@Override
+	public void onError(Throwable throwable) {
+		releaseRuns();
+		super.onError(throwable);
+	}
+
+	private void releaseRuns() {
+		for (SortRunFile runFile : spilledRuns) {
+			runFile.close();
+		}
+		spilledRuns.clear();
+		rowList = new ArrayList<>();
+		topRows = null;
+	}
+
+	/**
+	 * 内存中的数据, 有序段较少时每段作为一路归并输入, 否则整体排序
+	 */
+	private List<RowCursor> memoryCursors() {
+		List<RowCursor> cursors = new ArrayList<>();
+		if (rowList.isEmpty()) {
+			return cursors;
+		}
+		if (runCount > MAX_MERGE_RUNS) {
+			rowList.sort(comparator);
+			cursors.add(new ListCursor(rowList, 0, rowList.size()));
+			return cursors;
+		}
+		for (int i = 0; i < runCount; i++) {
+			int end = i + 1 < runCount ? runStarts[i + 1] : rowList.size();
+			cursors.add(new ListCursor(rowList, runStarts[i], end));
+		}
+		return cursors;
+	}
+
+	/**
+	 * 多路归并, 排序值相同时先输出序号小的输入中的数据
+	 */
+	private void merge(List<RowCursor> cursors, RowConsumer consumer) {
+		if (cursors.size() == 1) {
+			RowCursor cursor = cursors.get(0);
+			List<byte[]> row;
+			while ((row = cursor.next()) != null && !isCancelled()) {
+				consumer.accept(row);
+			}
+			return;
+		}
+		PriorityQueue<MergeHead> queue = new PriorityQueue<>(Math.max(1, cursors.size()), (h1, h2) -> {
+			int result = comparator.compare(h1.row, h2.row);
+			return result != 0 ? result : h1.index - h2.index;
+		});
+		for (int i = 0; i < cursors.size(); i++) {
+			List<byte[]> row = cursors.get(i).next();
+			if (row != null) {
+				queue.add(new MergeHead(cursors.get(i), i, row));
+			}
+		}
+		MergeHead head;
+		while ((head = queue.poll()) != null && !isCancelled()) {
+			consumer.accept(head.row);
+			head.row = head.cursor.next();
+			if (head.row != null) {
+				queue.add(head);
+			}
+		}
+	}
+
+	/**
+	 * 一路有序输入
+	 */
+	private interface RowCursor {
+		/* 没有数据时返回null */
+		List<byte[]> next();
+	}
+
+	private interface RowConsumer {
+		void accept(List<byte[]> row);
+	}
+
+	private static class ListCursor implements RowCursor {
+		private final List<List<byte[]>> rows;
+		private int pos;
+		private final int end;
+
+		ListCursor(List<List<byte[]>> rows, int start, int end) {
+			this.rows = rows;
+			this.pos = start;
+			this.end = end;
+		}
+
+		@Override
+		public List<byte[]> next() {
+			return pos < end ? rows.get(pos++) : null;
+		}
+	}
+
+	private static class TopRow {
+		List<byte[]> row;
+		long seq;
+
+		TopRow(List<byte[]> row, long seq) {
+			this.row = row;
+			this.seq = seq;
+		}
+	}
+
+	private static class MergeHead {
+		final RowCursor cursor;
+		final int index;
+		List<byte[]> row;
+
+		MergeHead(RowCursor cursor, int index, List<byte[]> row) {
+			this.cursor = cursor;
+			this.index = index;
+			this.row = row;
+		}
+	}
 }
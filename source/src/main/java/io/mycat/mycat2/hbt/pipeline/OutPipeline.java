@@ -2,78 +2,320 @@ package io.mycat.mycat2.hbt.pipeline;
 
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
 import java.util.List;
 
 import io.mycat.mycat2.MycatSession;
 import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mycat2.hbt.BinaryRow;
 import io.mycat.mycat2.hbt.ResultSetMeta;
-import io.mycat.mycat2.hbt.TableMeta;
+import io.mycat.mysql.packet.EOFPacket;
 import io.mycat.mysql.packet.ErrorPacket;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.mysql.packet.RowDataPacket;
 import io.mycat.proxy.ProxyBuffer;
 import io.mycat.util.ErrorCode;
+import io.mycat.util.PacketUtil;
 
+/**
+ * 把结果集以流的方式写给前端. 收到列定义时写出结果集头, 之后每行数据直接编码到前端 buffer,
+ * buffer 写满时发送出去. 列定义和行数据一样逐个检查 buffer 剩余空间.
+ * 前端 socket 发送缓冲区满了以后, 后续的行先保存在队列中并暂停上游读取后端数据,
+ * 等前端可写并把队列中的行发送完后再恢复读取.
+ * 输出过程中管道保存在前端 session 中, 命令的 onFrontWriteFinished 交给 {@link #onFrontWriteFinished()} 处理
+ *
+ * @author wuzhihui
+ */
 public class OutPipeline extends ReferenceHBTPipeline {
-	
+
 	private MycatSession mycatSession;
-	
-	private TableMeta tableMeta = new TableMeta();
-	
+
+	private int fieldCount;
+	private byte packetId;
+	private boolean headerWritten;
+	/* 还未写出的列定义, 全部写完并写出 EOF 后置为 null */
+	private ResultSetMeta pendingHeader;
+	private int headerPos;
+	/* 前端 socket 不可写, 等待 onFrontWriteFinished */
+	private boolean blocked;
+	/* 正在 flush 中, writeToChannel 同步回调的 onFrontWriteFinished 不处理 */
+	private boolean flushing;
+	private boolean paused;
+	private boolean ended;
+	/* 前端阻塞期间到达的行 */
+	private final ArrayDeque<List<byte[]>> pendingRows = new ArrayDeque<>();
+	/* 结果集的最后一个报文, 正常结束为 EOF, 出错为错误包 */
+	private MySQLPacket tailPacket;
+
 	public OutPipeline(ReferenceHBTPipeline upstream, MycatSession mycatSession) {
 		super(upstream);
 		this.mycatSession = mycatSession;
+		mycatSession.setAttr(SessionKeyEnum.SESSION_KEY_HBT_OUT_PIPELINE, this);
 	}
 
 	@Override
 	public ResultSetMeta onHeader(ResultSetMeta header) {
-		System.out.println("outPipeline onHeader");
-		tableMeta.init(header);
+		this.fieldCount = header.getFiledCount();
+		this.packetId = 1;
+		// 后端使用各自的 buffer, 前端 buffer 只用于输出结果
+		mycatSession.setCurBufOwner(true);
+		ProxyBuffer buffer = mycatSession.proxyBuffer;
+		buffer.reset();
+		buffer.writeFixInt(3, ProxyBuffer.getLenencLength(fieldCount));
+		buffer.writeByte(packetId++);
+		buffer.writeLenencInt(fieldCount);
+		headerWritten = true;
+		pendingHeader = header;
+		headerPos = 0;
+		try {
+			writeHeader();
+		} catch (IOException e) {
+			closeSession(e);
+		}
 		return null;
 	}
 
 	@Override
-	public  List<byte[]> onRowData(List<byte[]> row) {
-	    row.stream().forEach(value -> {
-	    	if(null != value) {
-				System.out.print(String.format("             %s", new String(value)));
-			} else {
-				System.out.print(String.format("             null"));
-			}
-	    });
-	    System.out.println("        ");
-	    tableMeta.addFieldValues(row);
-	    return null;
+	public List<byte[]> onRowData(List<byte[]> row) {
+		if (mycatSession.isClosed()) {
+			return null;
+		}
+		if (blocked || !pendingRows.isEmpty()) {
+			pendingRows.add(row);
+			return null;
+		}
+		try {
+			writeRow(row);
+		} catch (IOException e) {
+			closeSession(e);
+		}
+		return null;
 	}
 
 	@Override
 	public void onEnd() {
-		
-		ProxyBuffer buffer = mycatSession.proxyBuffer;
-		buffer.reset();
-		tableMeta.writeBegin(buffer);
-		tableMeta.writeRowData(buffer);
-		buffer.flip();
-		buffer.readIndex = buffer.writeIndex; 
-		mycatSession.takeOwner(SelectionKey.OP_WRITE);
-		if(!tableMeta.isWriteFinish()) {
-			mycatSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_HBT_TABLE_META.getKey(), tableMeta);
+		if (mycatSession.isClosed()) {
+			return;
 		}
+		ended = true;
+		EOFPacket eof = new EOFPacket();
+		eof.warningCount = 0;
+		tailPacket = eof;
 		try {
-			mycatSession.writeToChannel();
+			drain();
 		} catch (IOException e) {
-			e.printStackTrace();
-		} 
-		
-		System.out.println("outPipeline onEnd");
+			closeSession(e);
+		}
 	}
-	
+
 	@Override
 	public void onError(Throwable throwable) {
+		if (mycatSession.isClosed()) {
+			return;
+		}
 		String msg = throwable.getMessage();
+		pendingRows.clear();
+		if (paused) {
+			// 上游已经出错, 恢复读取把剩余的数据读完
+			paused = false;
+			resume();
+		}
 		try {
-			mycatSession.takeBufferOwnerOnly();
-			mycatSession.sendErrorMsg(ErrorCode.ERR_FOUND_EXCEPION, msg);
+			if (!headerWritten) {
+				mycatSession.removeAttr(SessionKeyEnum.SESSION_KEY_HBT_OUT_PIPELINE);
+				mycatSession.takeBufferOwnerOnly();
+				mycatSession.sendErrorMsg(ErrorCode.ERR_FOUND_EXCEPION, msg);
+				return;
+			}
+			if (ended) {
+				return;
+			}
+			// 已经发送了部分结果, 错误包接在已发送的报文之后
+			ended = true;
+			ErrorPacket error = new ErrorPacket();
+			error.errno = ErrorCode.ERR_FOUND_EXCEPION;
+			error.message = msg;
+			tailPacket = error;
+			drain();
 		} catch (IOException e) {
-			e.printStackTrace();
+			closeSession(e);
 		}
 	}
+
+	/**
+	 * 前端数据发送完成
+	 *
+	 * @return 结果集是否全部发送完成
+	 */
+	public boolean onFrontWriteFinished() throws IOException {
+		if (flushing) {
+			return false;
+		}
+		blocked = false;
+		mycatSession.proxyBuffer.reset();
+		return drain();
+	}
+
+	/**
+	 * 把等待发送的行写入 buffer, 全部写完后恢复上游读取, 上游结束时写出最后一个报文
+	 *
+	 * @return 结果集是否全部发送完成
+	 */
+	private boolean drain() throws IOException {
+		writeHeader();
+		List<byte[]> row;
+		while (!blocked && (row = pendingRows.poll()) != null) {
+			writeRow(row);
+		}
+		if (blocked) {
+			return false;
+		}
+		if (paused) {
+			paused = false;
+			resume();
+		}
+		if (!ended) {
+			return false;
+		}
+		if (!writePacket(tailPacket)) {
+			return false;
+		}
+		tailPacket = null;
+		if (!flush()) {
+			return false;
+		}
+		finish();
+		return true;
+	}
+
+	/**
+	 * 写出列定义和 EOF, 前端阻塞时停在未写出的列, 可写后由 {@link #drain()} 继续
+	 */
+	private void writeHeader() throws IOException {
+		while (!blocked && pendingHeader != null) {
+			MySQLPacket packet;
+			if (headerPos < fieldCount) {
+				packet = PacketUtil.getField(pendingHeader.getFieldNameList().get(headerPos),
+						pendingHeader.getFiledType(headerPos));
+			} else {
+				EOFPacket eof = new EOFPacket();
+				eof.warningCount = 0;
+				packet = eof;
+			}
+			if (!writePacket(packet)) {
+				return;
+			}
+			if (++headerPos > fieldCount) {
+				pendingHeader = null;
+			}
+		}
+	}
+
+	/**
+	 * buffer 空间不足时先发送, 单个报文大于整个 buffer 时换成更大的 buffer
+	 *
+	 * @return 是否已写入 buffer, 前端阻塞时返回 false
+	 */
+	private boolean writePacket(MySQLPacket packet) throws IOException {
+		int size = packet.calcPacketSize() + MySQLPacket.packetHeaderSize;
+		ProxyBuffer buffer = mycatSession.proxyBuffer;
+		if (size > remaining(buffer)) {
+			if (!flush()) {
+				return false;
+			}
+			if (size > remaining(buffer)) {
+				mycatSession.ensureBufferCapacity(size);
+			}
+		}
+		packet.packetId = packetId++;
+		packet.write(buffer);
+		return true;
+	}
+
+	private void writeRow(List<byte[]> row) throws IOException {
+		RowDataPacket dataPacket = null;
+		int payloadLength;
+		if (row instanceof BinaryRow) {
+			// 后端的行报文内容原样输出
+			payloadLength = ((BinaryRow) row).payloadLength();
+		} else {
+			dataPacket = new RowDataPacket(fieldCount);
+			for (byte[] value : row) {
+				dataPacket.add(value);
+			}
+			payloadLength = dataPacket.calcPacketSize();
+		}
+		int size = payloadLength + MySQLPacket.packetHeaderSize;
+		ProxyBuffer buffer = mycatSession.proxyBuffer;
+		if (size > remaining(buffer)) {
+			if (!flush()) {
+				pendingRows.addFirst(row);
+				return;
+			}
+			if (size > remaining(buffer)) {
+				// 大于整个 buffer 的行, buffer 已经清空, 可以直接换成更大的 buffer
+				mycatSession.ensureBufferCapacity(size);
+			}
+		}
+		if (dataPacket == null) {
+			buffer.writeFixInt(3, payloadLength);
+			buffer.writeByte(packetId++);
+			((BinaryRow) row).writePayload(buffer);
+		} else {
+			dataPacket.packetId = packetId++;
+			dataPacket.write(buffer);
+		}
+	}
+
+	/**
+	 * 发送 buffer 中的数据
+	 *
+	 * @return 是否全部发送完成, 未完成时暂停上游读取, 等待前端可写
+	 */
+	private boolean flush() throws IOException {
+		ProxyBuffer buffer = mycatSession.proxyBuffer;
+		if (buffer.writeIndex == 0) {
+			return true;
+		}
+		buffer.flip();
+		buffer.readIndex = buffer.writeIndex;
+		flushing = true;
+		try {
+			mycatSession.writeToChannel();
+		} finally {
+			flushing = false;
+		}
+		if (buffer.writeFinished()) {
+			buffer.reset();
+			return true;
+		}
+		blocked = true;
+		if (!paused && !ended) {
+			paused = true;
+			pause();
+		}
+		return false;
+	}
+
+	private void finish() {
+		mycatSession.removeAttr(SessionKeyEnum.SESSION_KEY_HBT_OUT_PIPELINE);
+		mycatSession.takeOwner(SelectionKey.OP_READ);
+	}
+
+	private static int remaining(ProxyBuffer buffer) {
+		return buffer.getBuffer().capacity() - buffer.writeIndex;
+	}
+
+	/**
+	 * 前端连接写出错, 关闭连接, 上游剩余的数据不再处理
+	 */
+	private void closeSession(IOException e) {
+		pendingRows.clear();
+		mycatSession.removeAttr(SessionKeyEnum.SESSION_KEY_HBT_OUT_PIPELINE);
+		mycatSession.close(false, e.getMessage());
+	}
+
+	boolean isPaused() {
+		return paused;
+	}
 }
@@ -0,0 +1,52 @@
+package io.mycat.mycat2.hbt.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.mycat.mycat2.hbt.ResultSetMeta;
+
+/**
+ * 按位置选出输出的字段并重新命名, 字段类型与上游相同.
+ * 字段的位置与上游完全相同时只改变字段名称, 行原样传给下游
+ */
+public class ProjectPipeline extends ReferenceHBTPipeline {
+
+	/* 输出的字段在上游中的位置 */
+	private final int[] columns;
+	private final List<String> fieldNames;
+	private boolean identity;
+
+	public ProjectPipeline(ReferenceHBTPipeline upStream, int[] columns, List<String> fieldNames) {
+		super(upStream);
+		this.columns = columns;
+		this.fieldNames = fieldNames;
+	}
+
+	@Override
+	public ResultSetMeta onHeader(ResultSetMeta header) {
+		int[] types = new int[columns.length];
+		identity = columns.length == header.getFiledCount();
+		for(int i = 0; i < columns.length; i++) {
+			types[i] = header.getFiledType(columns[i]);
+			identity &= columns[i] == i;
+		}
+		return super.onHeader(new ResultSetMeta(new ArrayList<>(fieldNames), types));
+	}
+
+	@Override
+	public List<byte[]> onRowData(List<byte[]> row) {
+		if(identity) {
+			return super.onRowData(row);
+		}
+		List<byte[]> result = new ArrayList<>(columns.length);
+		for(int column : columns) {
+			result.add(row.get(column));
+		}
+		return super.onRowData(result);
+	}
+
+	@Override
+	public boolean limitRows(long rows) {
+		return upStreamLimitRows(rows);
+	}
+}
@@ -1,9 +1,11 @@
 package io.mycat.mycat2.hbt.pipeline;
 
 import java.util.List;
-import java.util.function.Function;
+import java.util.function.Predicate;
 
+import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.hbt.AggregateFunction;
 import io.mycat.mycat2.hbt.JoinMeta;
 import io.mycat.mycat2.hbt.MatchCallback;
 import io.mycat.mycat2.hbt.OrderMeta;
@@ -12,6 +14,7 @@ import io.mycat.mycat2.hbt.GroupPairKeyMeta;
 import io.mycat.mycat2.hbt.ResultSetMeta;
 import io.mycat.mycat2.hbt.RowMeta;
 import io.mycat.mycat2.hbt.SqlMeta;
+import io.mycat.proxy.MycatReactorThread;
 
 public class ReferenceHBTPipeline implements AbstractHBTPipeline,OpPipeline{
 	
@@ -20,6 +23,8 @@ public class ReferenceHBTPipeline implements AbstractHBTPipeline,OpPipeline{
 	};
 	
 	Status status = Status.RUNNING;
+	/* 下游已经不需要更多的数据 */
+	private boolean cancelled;
 	private ReferenceHBTPipeline upStream = null;
 	private ReferenceHBTPipeline nextStream = null;
 	
@@ -56,7 +61,7 @@ public class ReferenceHBTPipeline implements AbstractHBTPipeline,OpPipeline{
 
 	@Override
 	public List<byte[]> onRowData(List<byte[]> row) {
-		if(canHandle()) {
+		if(canHandle() && !cancelled) {
 			try{
 				return this.nextStream.onRowData(row);
 			} catch (Exception e) {
@@ -76,23 +81,95 @@ public class ReferenceHBTPipeline implements AbstractHBTPipeline,OpPipeline{
 			}
 		}
 	}
+	/**
+	 * 同时读取多个后端连接时可能多次出错, 只向下游传递第一次
+	 */
 	@Override
 	public void onError(Throwable throwable) {
+		if(Status.ERROR.equals(status)) {
+			return;
+		}
 		this.status = Status.ERROR;
 		this.nextStream.onError(throwable);
 	}
 
+	/**
+	 * 下游处理不过来时暂停上游读取数据, 由读取后端数据的管道实现
+	 */
+	public void pause() {
+		if(upStream != null) {
+			upStream.pause();
+		}
+	}
+
+	/**
+	 * 恢复上游读取数据
+	 */
+	public void resume() {
+		if(upStream != null) {
+			upStream.resume();
+		}
+	}
+
+	/**
+	 * 下游已经拿到需要的数据(如 LIMIT 已经满足), 上游停止产生数据, 之后只丢弃剩余数据并正常结束.
+	 * 由读取后端数据的管道中止后端语句
+	 */
+	public void cancel() {
+		cancelled = true;
+		if(upStream != null) {
+			upStream.cancel();
+		}
+	}
+
+	protected boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * 下游最多只需要前 rows 行数据, 由上游尽量提前限制, 例如排序只保留前 rows 行, 后端语句加上 LIMIT.
+	 * 中间的管道会改变行数或者顺序时不能继续下推
+	 *
+	 * @return 是否已经限制了输出的行数
+	 */
+	public boolean limitRows(long rows) {
+		return false;
+	}
+
+	/**
+	 * 不改变行数和顺序的管道把行数限制继续交给上游
+	 */
+	protected boolean upStreamLimitRows(long rows) {
+		return upStream != null && upStream.limitRows(rows);
+	}
+
+	/**
+	 * 中止后端连接上正在读取的语句, 连接上剩余的数据读取后丢弃, 语句结束后连接继续可用
+	 */
+	static void killQuery(MySQLSession session) {
+		Thread thread = Thread.currentThread();
+		if(thread instanceof MycatReactorThread) {
+			((MycatReactorThread) thread).killQuery(session);
+		}
+	}
+
     /* 
      * 
      */
     @Override
     public  OpPipeline group(
     		GroupPairKeyMeta keyFunction,  ResultSetMeta resultSetMeta,
-    		List<Function<List<List<byte[]>>,List<byte[]>>> opFunction) {
+    		List<AggregateFunction> opFunction) {
     	 return new GroupByPipeline(this, keyFunction, resultSetMeta
     			 ,opFunction);
     }
 
+    @Override
+    public OpPipeline group(GroupPairKeyMeta keyFunction, List<String> fieldNames,
+    		List<AggregateFunction> opFunction) {
+    	return new GroupByPipeline(this, keyFunction, fieldNames, opFunction);
+    }
+
     /* 
      * 
      */
@@ -110,12 +187,25 @@ public class ReferenceHBTPipeline implements AbstractHBTPipeline,OpPipeline{
                 rowMeta,  joinMeta, resultSetMeta, callback);
     }
 
+    @Override
+    public OpPipeline join(MycatSession session, SqlMeta sqlMeta, RowMeta rowMeta, JoinMeta joinMeta) {
+        return new JoinPipeline(this, session, sqlMeta, rowMeta, joinMeta, null, (aRow, bRow, result) -> {
+            result.addAll(aRow);
+            result.addAll(bRow);
+        });
+    }
+
     /* 
      * @see io.mycat.mycat2.HBT.OpPipeline#filter()
      */
     @Override
-    public OpPipeline filter() {
-        return null;
+    public OpPipeline filter(Predicate<List<byte[]>> predicate) {
+        return new FilterPipeline(this, predicate);
+    }
+
+    @Override
+    public OpPipeline project(int[] columns, List<String> fieldNames) {
+        return new ProjectPipeline(this, columns, fieldNames);
     }
 
     /* 
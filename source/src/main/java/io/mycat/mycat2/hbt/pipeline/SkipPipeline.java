@@ -18,4 +18,9 @@ public class SkipPipeline extends ReferenceHBTPipeline {
 		}
 		return super.onRowData(row);
 	}
+
+	@Override
+	public boolean limitRows(long rows) {
+		return upStreamLimitRows(rows + Math.max(n, 0));
+	}
 }
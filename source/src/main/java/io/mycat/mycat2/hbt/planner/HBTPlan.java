@@ -0,0 +1,201 @@
+package io.mycat.mycat2.hbt.planner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.SortOrder;
+
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.hbt.AggregateFunction;
+import io.mycat.mycat2.hbt.AvgFunction;
+import io.mycat.mycat2.hbt.CountFunction;
+import io.mycat.mycat2.hbt.GroupPairKeyMeta;
+import io.mycat.mycat2.hbt.JoinMeta;
+import io.mycat.mycat2.hbt.MaxFunction;
+import io.mycat.mycat2.hbt.MinFunction;
+import io.mycat.mycat2.hbt.OrderMeta;
+import io.mycat.mycat2.hbt.OutFunction;
+import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mycat2.hbt.RowMeta;
+import io.mycat.mycat2.hbt.SqlMeta;
+import io.mycat.mycat2.hbt.SumFunction;
+import io.mycat.mycat2.hbt.pipeline.HBTEngine;
+import io.mycat.mycat2.hbt.pipeline.OpPipeline;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mysql.Fields;
+
+/**
+ * 一条 select 的执行计划, 由 {@link HBTPlanner} 生成:
+ * 按关联顺序读取各个表(各自下发到所在的复制组), 依次关联, 过滤其余的关联条件, 分组聚合, 排序, limit, 输出 select 的列.
+ * 计划中只保存 sql 的结构, 下发的 sql、limit 和输出的字段名在执行时从当前 sql 中取出, 同一个计划用于只有常量不同的 sql
+ */
+public class HBTPlan {
+
+	/**
+	 * 计划中读取的一个表
+	 */
+	static class Leg {
+		String table;
+		String alias;
+		SqlTemplate sql;
+		MySQLRepBean[] nodes;
+		/* 结果集的字段名 */
+		List<String> columns;
+		/* 过滤后的估算行数 */
+		double estimatedRows;
+	}
+
+	/**
+	 * 与下一个表的关联
+	 */
+	static class JoinStep {
+		String leftKey;
+		String rightKey;
+		SqlTemplate rightColumn;
+		boolean hashJoin;
+	}
+
+	/**
+	 * 分组后输出的一列
+	 */
+	static class Aggregate {
+		int function;
+		String field;
+		/* 合并各分片的 avg 时的 count 字段 */
+		String countField;
+		/* 输出列在分组前的位置 */
+		int position;
+		boolean partial;
+	}
+
+	static final int JOIN_BATCH_SIZE = 1000;
+	/* 左边的结果不超过该内存时使用 hash join */
+	static final long HASH_JOIN_MEMORY_LIMIT = 64L * 1024 * 1024;
+
+	final List<Leg> legs = new ArrayList<>();
+	final List<JoinStep> joins = new ArrayList<>();
+	/* 关联之后还需要比较的列位置, 两两一组 */
+	int[] residual = new int[0];
+	/* 各分片先分组计算部分结果, 再合并 */
+	boolean split;
+	/* 不分组时为 null */
+	String[] groupKeys;
+	final List<Aggregate> aggregates = new ArrayList<>();
+	final List<String> groupNames = new ArrayList<>();
+	final List<String> orderNames = new ArrayList<>();
+	final List<SortOrder> sortOrders = new ArrayList<>();
+	int offsetToken = -1;
+	int countToken = -1;
+	int[] projection;
+	final List<SqlTemplate> labels = new ArrayList<>();
+
+	/**
+	 * 按当前 sql 组装并启动管道
+	 */
+	public void execute(MycatSession session) {
+		BufferSQLContext context = session.sqlContext;
+		HBTEngine engine = new HBTEngine();
+		OpPipeline pipeline = engine.streamOf(session, sqlMeta(legs.get(0), context), rowMeta(legs.get(0)));
+		for (int i = 0; i < joins.size(); i++) {
+			Leg leg = legs.get(i + 1);
+			JoinStep step = joins.get(i);
+			JoinMeta joinMeta = JoinMeta.of(step.leftKey, step.rightKey, step.rightColumn.render(context),
+					JOIN_BATCH_SIZE);
+			if (step.hashJoin) {
+				joinMeta.setHashJoinMemoryLimit(HASH_JOIN_MEMORY_LIMIT);
+			}
+			pipeline = pipeline.join(session, sqlMeta(leg, context), rowMeta(leg), joinMeta);
+		}
+		if (residual.length > 0) {
+			int[] pairs = residual;
+			pipeline = pipeline.filter(row -> {
+				for (int i = 0; i < pairs.length; i += 2) {
+					byte[] left = row.get(pairs[i]);
+					if (left == null || !Arrays.equals(left, row.get(pairs[i + 1]))) {
+						return false;
+					}
+				}
+				return true;
+			});
+		}
+		if (groupKeys != null) {
+			pipeline = pipeline.group(new GroupPairKeyMeta(groupKeys), groupNames, functions());
+		}
+		if (!orderNames.isEmpty()) {
+			pipeline = pipeline.order(new OrderMeta(orderNames, sortOrders));
+		}
+		if (offsetToken >= 0) {
+			pipeline = pipeline.skip(limitValue(context, offsetToken));
+		}
+		if (countToken >= 0) {
+			pipeline = pipeline.limit(limitValue(context, countToken));
+		}
+		List<String> names = new ArrayList<>();
+		for (SqlTemplate label : labels) {
+			names.add(label.render(context));
+		}
+		pipeline.project(projection, names).out(session);
+	}
+
+	/**
+	 * 第 i 个表下发的 sql
+	 */
+	String legSql(int i, BufferSQLContext context) {
+		return legs.get(i).sql.render(context);
+	}
+
+	private static SqlMeta sqlMeta(Leg leg, BufferSQLContext context) {
+		return new SqlMeta(leg.sql.render(context), leg.alias, leg.nodes);
+	}
+
+	/**
+	 * 关联的表没有返回字段信息时使用的字段信息
+	 */
+	private static RowMeta rowMeta(Leg leg) {
+		RowMeta rowMeta = new RowMeta(leg.table, leg.alias);
+		int[] types = new int[leg.columns.size()];
+		Arrays.fill(types, Fields.FIELD_TYPE_VAR_STRING);
+		rowMeta.init(new ResultSetMeta(new ArrayList<>(leg.columns), types));
+		return rowMeta;
+	}
+
+	/**
+	 * 聚合函数有状态, 每次执行重新创建
+	 */
+	private List<AggregateFunction> functions() {
+		List<AggregateFunction> functions = new ArrayList<>();
+		for (Aggregate aggregate : aggregates) {
+			switch (aggregate.function) {
+			case SelectQuery.COUNT:
+				if (aggregate.partial) {
+					functions.add(CountFunction.partial(aggregate.field));
+				} else {
+					functions.add(aggregate.field == null ? new CountFunction() : new CountFunction(aggregate.field));
+				}
+				break;
+			case SelectQuery.SUM:
+				functions.add(new SumFunction(aggregate.field));
+				break;
+			case SelectQuery.AVG:
+				functions.add(aggregate.partial ? new AvgFunction(aggregate.field, aggregate.countField)
+						: new AvgFunction(aggregate.field));
+				break;
+			case SelectQuery.MIN:
+				functions.add(new MinFunction(aggregate.field));
+				break;
+			case SelectQuery.MAX:
+				functions.add(new MaxFunction(aggregate.field));
+				break;
+			default:
+				functions.add(new OutFunction(aggregate.position));
+			}
+		}
+		return functions;
+	}
+
+	private static int limitValue(BufferSQLContext context, int token) {
+		return (int) Math.min(context.getHashArray().getHash(token), Integer.MAX_VALUE);
+	}
+}
@@ -0,0 +1,63 @@
+package io.mycat.mycat2.hbt.planner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
+import io.mycat.mycat2.route.ShardingRouter;
+
+/**
+ * 执行计划的缓存, 每个 reactor 一个, 只在 reactor 线程中访问. 按访问顺序淘汰.
+ * 以不含常量的 sql 指纹为 key, 不能规划的语句也缓存, 避免重复解析
+ */
+public class HBTPlanCache {
+
+	/**
+	 * 规划时使用的分片规则和语句的 token 数, 重新加载配置后分片规则改变, 缓存的计划失效
+	 */
+	static class Entry {
+		final ShardingRouter router;
+		final int tokenCount;
+		/* 不能规划时为 null */
+		final HBTPlan plan;
+
+		Entry(ShardingRouter router, int tokenCount, HBTPlan plan) {
+			this.router = router;
+			this.tokenCount = tokenCount;
+			this.plan = plan;
+		}
+	}
+
+	private final int maxSize;
+	private final LinkedHashMap<SQLFingerprint, Entry> cache;
+
+	/**
+	 * @param maxSize
+	 *            最多缓存的语句数, 不大于0时不缓存
+	 */
+	public HBTPlanCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.cache = new LinkedHashMap<SQLFingerprint, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<SQLFingerprint, Entry> eldest) {
+				return size() > HBTPlanCache.this.maxSize;
+			}
+		};
+	}
+
+	Entry get(SQLFingerprint key) {
+		return cache.get(key);
+	}
+
+	void put(SQLFingerprint key, Entry entry) {
+		if (maxSize > 0) {
+			cache.put(key, entry);
+		}
+	}
+
+	public int size() {
+		return cache.size();
+	}
+}
@@ -0,0 +1,383 @@
+package io.mycat.mycat2.hbt.planner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SortOrder;
+
+import io.mycat.mycat2.MycatConfig;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
+import io.mycat.mycat2.hbt.planner.HBTPlan.Aggregate;
+import io.mycat.mycat2.hbt.planner.HBTPlan.JoinStep;
+import io.mycat.mycat2.hbt.planner.HBTPlan.Leg;
+import io.mycat.mycat2.hbt.planner.SelectQuery.ColumnRef;
+import io.mycat.mycat2.hbt.planner.SelectQuery.Condition;
+import io.mycat.mycat2.hbt.planner.SelectQuery.OrderItem;
+import io.mycat.mycat2.hbt.planner.SelectQuery.SelectItem;
+import io.mycat.mycat2.hbt.planner.SelectQuery.TableRef;
+import io.mycat.mycat2.route.ShardingRouter;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyRuntime;
+
+/**
+ * 把不能在单个复制组上执行的 select 规划为 HBT 管道, 代替手写的 catlet.
+ * 1. 每个表的条件下推到该表的 sql 中, 只读取需要的列
+ * 2. 按配置的估算行数和条件的选择率确定关联顺序: 从最小的表开始, 每次关联与已关联的表有关联条件的最小的表.
+ *    右边的表不大于左边时一次读取右边的表做 hash join, 否则按左边的关联字段分批用 in 读取右边的表
+ * 3. 单个分片表的聚合在各分片上分组计算部分结果, 再合并; 其他的聚合在关联之后计算
+ * 不支持的写法(见 {@link SelectQuery})返回 null, 由原来的方式执行
+ */
+public class HBTPlanner {
+
+	public static final HBTPlanner INSTANCE = new HBTPlanner();
+
+	/* 没有配置估算行数的表 */
+	static final long DEFAULT_ESTIMATED_ROWS = 10000;
+
+	/**
+	 * 当前会话第一条 sql 的执行计划, 不能或者不需要规划时返回 null.
+	 * 计划按不含常量的 sql 指纹缓存在当前 reactor 中
+	 */
+	public HBTPlan plan(MycatSession session) {
+		BufferSQLContext context = session.sqlContext;
+		if (context.getSQLCount() != 1 || context.getSQLType(0) != BufferSQLContext.SELECT_SQL) {
+			return null;
+		}
+		MycatConfig config = ProxyRuntime.INSTANCE.getConfig();
+		ShardingRouter router = config.getShardingRouter(session.schema.getName());
+		int tokenCount = SelectQuery.tokenCount(context);
+		SQLFingerprint key = SQLFingerprint.normalized(context, session.schema.getName());
+		HBTPlanCache cache = MycatReactorThread.currentHBTPlanCache();
+		HBTPlanCache.Entry entry = cache.get(key);
+		if (entry != null && entry.router == router && entry.tokenCount == tokenCount) {
+			return entry.plan;
+		}
+		MySQLRepBean defaultNode = session.schema.getDefaultDN() == null ? null
+				: config.getMySQLRepBean(session.schema.getDefaultDN().getReplica());
+		HBTPlan plan = plan(context, router, defaultNode);
+		cache.put(key, new HBTPlanCache.Entry(router, tokenCount, plan));
+		return plan;
+	}
+
+	/**
+	 * @param router
+	 *            没有配置分片规则时为 null
+	 * @param defaultNode
+	 *            没有配置的表所在的复制组, 为 null 时不支持没有配置的表
+	 */
+	HBTPlan plan(BufferSQLContext context, ShardingRouter router, MySQLRepBean defaultNode) {
+		SelectQuery query = SelectQuery.parse(context);
+		if (query == null) {
+			return null;
+		}
+		int tableCount = query.tables.size();
+		MySQLRepBean[][] nodes = new MySQLRepBean[tableCount][];
+		double[] rows = new double[tableCount];
+		boolean distributed = false;
+		for (int i = 0; i < tableCount; i++) {
+			long tableHash = query.tables.get(i).tableHash;
+			nodes[i] = router == null ? null : router.tableNodes(tableHash);
+			if (nodes[i] == null) {
+				if (defaultNode == null) {
+					return null;
+				}
+				nodes[i] = new MySQLRepBean[] { defaultNode };
+			}
+			long estimatedRows = router == null ? 0 : router.estimatedRows(tableHash);
+			rows[i] = estimatedRows > 0 ? estimatedRows : DEFAULT_ESTIMATED_ROWS;
+			distributed |= nodes[i].length > 1 || nodes[i][0] != nodes[0][0];
+		}
+		if (!distributed) {
+			// 整条语句可以在一个复制组上执行
+			return null;
+		}
+
+		List<List<Condition>> filters = new ArrayList<>();
+		for (int i = 0; i < tableCount; i++) {
+			filters.add(new ArrayList<>());
+		}
+		List<Condition> constants = new ArrayList<>();
+		List<Condition> edges = new ArrayList<>();
+		for (Condition condition : query.conditions) {
+			if (condition.isJoin()) {
+				edges.add(condition);
+			} else if (condition.table < 0) {
+				constants.add(condition);
+			} else {
+				filters.get(condition.table).add(condition);
+				rows[condition.table] *= condition.selectivity;
+			}
+		}
+
+		int[] order = joinOrder(tableCount, rows, edges);
+		if (order == null) {
+			return null;
+		}
+		boolean grouped = query.isGrouped();
+		boolean split = tableCount == 1 && grouped && groupedColumnsOnly(query);
+		HBTPlan plan = new HBTPlan();
+		plan.split = split;
+
+		// 每个表需要读取的列
+		List<Map<String, ColumnRef>> columns = new ArrayList<>();
+		for (int i = 0; i < tableCount; i++) {
+			columns.add(new LinkedHashMap<>());
+		}
+		if (split) {
+			for (ColumnRef column : query.groupBy) {
+				columns.get(0).putIfAbsent(column.name, column);
+			}
+		} else {
+			for (SelectItem item : query.items) {
+				if (item.column != null) {
+					columns.get(item.column.table).putIfAbsent(item.column.name, item.column);
+				}
+			}
+			for (ColumnRef column : query.groupBy) {
+				columns.get(column.table).putIfAbsent(column.name, column);
+			}
+			for (Condition edge : edges) {
+				columns.get(edge.left.table).putIfAbsent(edge.left.name, edge.left);
+				columns.get(edge.right.table).putIfAbsent(edge.right.name, edge.right);
+			}
+		}
+
+		// 各个表的 sql 和关联
+		List<String> layout = new ArrayList<>();
+		List<Condition> joinEdges = new ArrayList<>();
+		double joinedRows = 0;
+		for (int step = 0; step < tableCount; step++) {
+			int table = order[step];
+			TableRef tableRef = query.tables.get(table);
+			Leg leg = new Leg();
+			leg.table = SqlTemplate.identifier(context, tableRef.last);
+			leg.alias = tableRef.name;
+			leg.nodes = nodes[table];
+			leg.estimatedRows = rows[table];
+			leg.columns = new ArrayList<>(columns.get(table).keySet());
+			SqlTemplate select = new SqlTemplate().append("select ");
+			boolean first = true;
+			for (ColumnRef column : columns.get(table).values()) {
+				select.append(first ? "" : ", ").append(columnSql(column)).append(" as `" + column.name + "`");
+				first = false;
+			}
+			if (split) {
+				first = appendPartials(query, select, first, leg.columns);
+			}
+			if (first) {
+				return null;
+			}
+			select.append(" from ").appendRange(tableRef.first, tableRef.last);
+			if (tableRef.alias >= 0) {
+				select.append(" ").appendIdentifier(tableRef.alias);
+			}
+			List<Condition> pushed = new ArrayList<>(filters.get(table));
+			pushed.addAll(constants);
+			for (int i = 0; i < pushed.size(); i++) {
+				Condition condition = pushed.get(i);
+				select.append(i == 0 ? " where (" : " and (").appendRange(condition.first, condition.last).append(")");
+			}
+			if (split && !query.groupBy.isEmpty()) {
+				select.append(" group by ");
+				first = true;
+				for (ColumnRef column : columns.get(0).values()) {
+					select.append(first ? "" : ", ").append(columnSql(column));
+					first = false;
+				}
+			}
+			leg.sql = select;
+			plan.legs.add(leg);
+
+			if (step > 0) {
+				Condition edge = edge(edges, order, step);
+				joinEdges.add(edge);
+				ColumnRef left = edge.left.table == table ? edge.right : edge.left;
+				ColumnRef right = edge.left.table == table ? edge.left : edge.right;
+				JoinStep join = new JoinStep();
+				join.leftKey = left.name;
+				join.rightKey = right.name;
+				join.rightColumn = columnSql(right);
+				join.hashJoin = rows[table] <= joinedRows;
+				plan.joins.add(join);
+				joinedRows = Math.max(joinedRows, rows[table]);
+			} else {
+				joinedRows = rows[table];
+			}
+			layout.addAll(leg.columns);
+		}
+		// 没有用于关联的关联条件在关联之后比较
+		List<Integer> residual = new ArrayList<>();
+		for (Condition edge : edges) {
+			if (!joinEdges.contains(edge)) {
+				residual.add(layout.indexOf(edge.left.name));
+				residual.add(layout.indexOf(edge.right.name));
+			}
+		}
+		plan.residual = residual.stream().mapToInt(Integer::intValue).toArray();
+
+		if (grouped) {
+			plan.groupKeys = new String[query.groupBy.size()];
+			for (int i = 0; i < plan.groupKeys.length; i++) {
+				plan.groupKeys[i] = query.groupBy.get(i).name;
+			}
+			for (int i = 0; i < query.items.size(); i++) {
+				SelectItem item = query.items.get(i);
+				Aggregate aggregate = new Aggregate();
+				aggregate.function = item.aggregate;
+				aggregate.partial = split;
+				if (item.aggregate == SelectQuery.COLUMN) {
+					aggregate.position = layout.indexOf(item.column.name);
+				} else if (split) {
+					aggregate.field = "#p" + i;
+					aggregate.countField = "#c" + i;
+				} else {
+					aggregate.field = item.column == null ? null : item.column.name;
+				}
+				plan.aggregates.add(aggregate);
+				plan.groupNames.add("#" + i);
+			}
+		}
+		for (OrderItem orderItem : query.orderBy) {
+			plan.orderNames.add(grouped ? "#" + query.items.indexOf(orderItem.item) : orderItem.item.column.name);
+			plan.sortOrders.add(orderItem.desc ? SortOrder.DESCENDING : SortOrder.ASCENDING);
+		}
+		plan.offsetToken = query.offsetToken;
+		plan.countToken = query.countToken;
+
+		plan.projection = new int[query.visibleCount()];
+		for (int i = 0; i < plan.projection.length; i++) {
+			SelectItem item = query.items.get(i);
+			plan.projection[i] = grouped ? i : layout.indexOf(item.column.name);
+			SqlTemplate label = new SqlTemplate();
+			if (item.label >= 0) {
+				label.appendName(item.label);
+			} else if (item.aggregate == SelectQuery.COLUMN) {
+				label.appendName(item.column.column);
+			} else {
+				label.appendRange(item.first, item.last);
+			}
+			plan.labels.add(label);
+		}
+		return plan;
+	}
+
+	/**
+	 * 从估算行数最小的表开始, 每次选择与已关联的表有关联条件的最小的表. 有不能关联的表时返回 null
+	 */
+	private static int[] joinOrder(int tableCount, double[] rows, List<Condition> edges) {
+		int[] order = new int[tableCount];
+		boolean[] joined = new boolean[tableCount];
+		for (int step = 0; step < tableCount; step++) {
+			int next = -1;
+			for (int i = 0; i < tableCount; i++) {
+				if (joined[i] || (step > 0 && !connected(i, joined, edges))) {
+					continue;
+				}
+				if (next < 0 || rows[i] < rows[next]) {
+					next = i;
+				}
+			}
+			if (next < 0) {
+				return null;
+			}
+			order[step] = next;
+			joined[next] = true;
+		}
+		return order;
+	}
+
+	private static boolean connected(int table, boolean[] joined, List<Condition> edges) {
+		for (Condition edge : edges) {
+			if ((edge.left.table == table && joined[edge.right.table])
+					|| (edge.right.table == table && joined[edge.left.table])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 第 step 个表与之前的表的第一个关联条件
+	 */
+	private static Condition edge(List<Condition> edges, int[] order, int step) {
+		boolean[] joined = new boolean[order.length];
+		for (int i = 0; i < step; i++) {
+			joined[order[i]] = true;
+		}
+		int table = order[step];
+		for (Condition edge : edges) {
+			if ((edge.left.table == table && joined[edge.right.table])
+					|| (edge.right.table == table && joined[edge.left.table])) {
+				return edge;
+			}
+		}
+		throw new IllegalStateException("table " + table + " is not connected");
+	}
+
+	/**
+	 * 分组的结果可以由各分片的部分结果合并: select 中的列都是 group by 的列
+	 */
+	private static boolean groupedColumnsOnly(SelectQuery query) {
+		for (SelectItem item : query.items) {
+			if (item.aggregate != SelectQuery.COLUMN) {
+				continue;
+			}
+			boolean key = false;
+			for (ColumnRef column : query.groupBy) {
+				key |= column.sameAs(item.column);
+			}
+			if (!key) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 各分片计算的部分聚合结果, avg 拆分为 sum 和 count
+	 */
+	private static boolean appendPartials(SelectQuery query, SqlTemplate select, boolean first, List<String> names) {
+		for (int i = 0; i < query.items.size(); i++) {
+			SelectItem item = query.items.get(i);
+			if (item.aggregate == SelectQuery.COLUMN) {
+				continue;
+			}
+			SqlTemplate argument = item.column == null ? new SqlTemplate().append("*") : columnSql(item.column);
+			String function;
+			switch (item.aggregate) {
+			case SelectQuery.COUNT:
+				function = "count(";
+				break;
+			case SelectQuery.MIN:
+				function = "min(";
+				break;
+			case SelectQuery.MAX:
+				function = "max(";
+				break;
+			default:
+				function = "sum(";
+			}
+			select.append(first ? "" : ", ").append(function).append(argument).append(") as `#p" + i + "`");
+			names.add("#p" + i);
+			if (item.aggregate == SelectQuery.AVG) {
+				select.append(", count(").append(argument).append(") as `#c" + i + "`");
+				names.add("#c" + i);
+			}
+			first = false;
+		}
+		return first;
+	}
+
+	private static SqlTemplate columnSql(ColumnRef column) {
+		SqlTemplate sql = new SqlTemplate();
+		if (column.qualifier >= 0) {
+			sql.appendIdentifier(column.qualifier).append(".");
+		}
+		return sql.appendIdentifier(column.column);
+	}
+}
@@ -0,0 +1,760 @@
+package io.mycat.mycat2.hbt.planner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.SQLParseUtils.HashArray;
+import io.mycat.mycat2.sqlparser.TokenHash;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.Tokenizer2;
+
+/**
+ * 按 token 解析的 select 语句, 只支持规划器能够拆分执行的写法:
+ * 1. select 列或者 count/sum/avg/min/max 一个列的聚合函数, 可以有别名
+ * 2. from 逗号或者 [inner|cross] join、straight_join 连接的表, 不支持外连接、using 和子查询
+ * 3. where 和 on 中 and 连接的条件, 每个条件只引用一个表的列, 或者是两个表的列相等
+ * 4. group by、order by 列、别名或者位置, limit n, limit m,n, limit n offset m
+ * 其他写法解析失败, 由原来的方式执行
+ */
+class SelectQuery {
+
+	static final int COLUMN = 0;
+	static final int COUNT = 1;
+	static final int SUM = 2;
+	static final int AVG = 3;
+	static final int MIN = 4;
+	static final int MAX = 5;
+
+	private static final long[] AGGREGATES = { 0, TokenHash.COUNT, TokenHash.SUM, TokenHash.AVG, TokenHash.MIN,
+			TokenHash.MAX };
+
+	/* 语句中出现即不支持 */
+	private static final long[] UNSUPPORTED = { TokenHash.SELECT, TokenHash.UNION, TokenHash.INTO,
+			TokenHash.PROCEDURE, TokenHash.HAVING, TokenHash.DISTINCT, TokenHash.DISTINCTROW, TokenHash.ROLLUP,
+			TokenHash.FOR, TokenHash.LOCK, TokenHash.SQL_CALC_FOUND_ROWS, TokenHash.HIGH_PRIORITY, TokenHash.OUTER,
+			TokenHash.NATURAL, TokenHash.USING, TokenHash.EXISTS };
+
+	/* 条件中不是列名的关键字 */
+	private static final long[] CONDITION_WORDS = { TokenHash.AND, TokenHash.OR, TokenHash.XOR, TokenHash.NOT,
+			TokenHash.NULL, TokenHash.IS, TokenHash.LIKE, TokenHash.IN, TokenHash.BETWEEN, TokenHash.TRUE,
+			TokenHash.FALSE, TokenHash.UNKNOWN, TokenHash.DIV, TokenHash.MOD, TokenHash.BINARY, TokenHash.COLLATE,
+			TokenHash.ESCAPE, TokenHash.SOUNDS, TokenHash.RLIKE, TokenHash.REGEXP, TokenHash.CASE, TokenHash.WHEN,
+			TokenHash.THEN, TokenHash.ELSE, TokenHash.END, TokenHash.INTERVAL };
+
+	/* 表名之后不是别名的关键字 */
+	private static final long[] TABLE_FOLLOW = { TokenHash.JOIN, TokenHash.INNER, TokenHash.CROSS,
+			TokenHash.STRAIGHT_JOIN, TokenHash.LEFT, TokenHash.RIGHT, TokenHash.ON, TokenHash.WHERE,
+			TokenHash.GROUP, TokenHash.ORDER, TokenHash.LIMIT, TokenHash.USE, TokenHash.FORCE, TokenHash.IGNORE,
+			TokenHash.PARTITION };
+
+	/**
+	 * from 中的表
+	 */
+	static class TableRef {
+		/* 表名的 token, 带库名时从库名开始 */
+		int first;
+		int last;
+		int alias = -1;
+		long tableHash;
+		/* 列引用中的限定名, 有别名时为别名, 小写 */
+		String name;
+	}
+
+	/**
+	 * 列引用
+	 */
+	static class ColumnRef {
+		int qualifier = -1;
+		int column;
+		int table;
+		/* 结果集中的字段名, 限定名.列名, 小写 */
+		String name;
+
+		boolean sameAs(ColumnRef other) {
+			return other != null && name.equals(other.name);
+		}
+	}
+
+	/**
+	 * select 中的列或者聚合函数, 排序需要而没有出现在 select 中的为隐藏项, 输出前去掉
+	 */
+	static class SelectItem {
+		int first;
+		int last;
+		int aggregate = COLUMN;
+		/* 列, 或者聚合函数的参数, count(*) 为 null */
+		ColumnRef column;
+		int label = -1;
+		boolean hidden;
+
+		boolean sameAs(SelectItem other) {
+			return aggregate == other.aggregate
+					&& (column == null ? other.column == null : column.sameAs(other.column));
+		}
+	}
+
+	/**
+	 * where 或者 on 中 and 连接的一个条件
+	 */
+	static class Condition {
+		int first;
+		int last;
+		/* 引用的表, 不引用任何表的列时为 -1 */
+		int table = -1;
+		/* 两个表的列相等的关联条件 */
+		ColumnRef left;
+		ColumnRef right;
+		double selectivity;
+
+		boolean isJoin() {
+			return left != null;
+		}
+	}
+
+	static class OrderItem {
+		SelectItem item;
+		boolean desc;
+	}
+
+	final BufferSQLContext context;
+	private final HashArray hashArray;
+	private final int start;
+	private int end;
+
+	final List<TableRef> tables = new ArrayList<>();
+	final List<SelectItem> items = new ArrayList<>();
+	final List<Condition> conditions = new ArrayList<>();
+	final List<ColumnRef> groupBy = new ArrayList<>();
+	final List<OrderItem> orderBy = new ArrayList<>();
+	/* limit 的 token, 没有时为 -1 */
+	int offsetToken = -1;
+	int countToken = -1;
+
+	private SelectQuery(BufferSQLContext context) {
+		this.context = context;
+		this.hashArray = context.getHashArray();
+		this.start = context.getSQLHashArrayStart(0);
+		this.end = Math.min(context.getSQLHashArrayEnd(0), hashArray.getCount());
+	}
+
+	/**
+	 * 解析第一条 sql, 不支持的写法返回 null
+	 */
+	static SelectQuery parse(BufferSQLContext context) {
+		if (context.getSQLCount() != 1 || context.getSQLType(0) != BufferSQLContext.SELECT_SQL) {
+			return null;
+		}
+		SelectQuery query = new SelectQuery(context);
+		return query.parse() ? query : null;
+	}
+
+	/**
+	 * 语句的 token 数, 缓存的计划只用于 token 数相同的语句
+	 */
+	static int tokenCount(BufferSQLContext context) {
+		return Math.min(context.getSQLHashArrayEnd(0), context.getHashArray().getCount())
+				- context.getSQLHashArrayStart(0);
+	}
+
+	private boolean parse() {
+		while (end > start && type(end - 1) == Tokenizer2.SEMICOLON) {
+			end--;
+		}
+		if (start >= end || !isWord(start, TokenHash.SELECT)) {
+			return false;
+		}
+		int depth = 0;
+		int from = -1;
+		for (int i = start + 1; i < end; i++) {
+			int type = type(i);
+			if (type == Tokenizer2.LEFT_PARENTHESES) {
+				depth++;
+			} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+				if (--depth < 0) {
+					return false;
+				}
+			} else if (type == Tokenizer2.SEMICOLON || type == Tokenizer2.AT || type == Tokenizer2.QUESTION_MARK
+					|| type == Tokenizer2.ANNOTATION_BALANCE || type == Tokenizer2.ANNOTATION_START
+					|| type == Tokenizer2.ANNOTATION_END) {
+				return false;
+			} else if (isWordType(type)) {
+				long hash = hashArray.getHash(i);
+				if (contains(UNSUPPORTED, hash)) {
+					return false;
+				} else if (depth == 0 && hash == TokenHash.FROM && from < 0) {
+					from = i;
+				}
+			}
+		}
+		if (depth != 0 || from < 0 || !parseItems(start + 1, from)) {
+			return false;
+		}
+		int i = parseTables(from + 1);
+		if (i < 0) {
+			return false;
+		}
+		if (i < end && isWord(i, TokenHash.WHERE)) {
+			int clauseEnd = clauseEnd(i + 1, false);
+			if (!parseConditions(i + 1, clauseEnd)) {
+				return false;
+			}
+			i = clauseEnd;
+		}
+		if (i < end && isWord(i, TokenHash.GROUP)) {
+			i = parseGroupBy(i + 1);
+		}
+		if (i >= 0 && i < end && isWord(i, TokenHash.ORDER)) {
+			i = parseOrderBy(i + 1);
+		}
+		if (i >= 0 && i < end && isWord(i, TokenHash.LIMIT)) {
+			i = parseLimit(i + 1);
+		}
+		return i == end && resolve();
+	}
+
+	/**
+	 * select 和 from 之间逗号分隔的列
+	 */
+	private boolean parseItems(int i, int from) {
+		while (i < from) {
+			int itemEnd = nextComma(i, from);
+			SelectItem item = new SelectItem();
+			int next = parseItem(i, itemEnd, item);
+			if (next < 0) {
+				return false;
+			}
+			if (next < itemEnd) {
+				// 别名
+				if (isWord(next, TokenHash.AS)) {
+					next++;
+				}
+				if (next + 1 != itemEnd || !isWordType(type(next))) {
+					return false;
+				}
+				item.label = next;
+			}
+			items.add(item);
+			i = itemEnd + 1;
+			if (i == from) {
+				return false;
+			}
+		}
+		return !items.isEmpty();
+	}
+
+	/**
+	 * 列或者聚合函数, 返回之后的下标, 不支持时返回 -1
+	 */
+	private int parseItem(int i, int itemEnd, SelectItem item) {
+		item.first = i;
+		int aggregate = aggregate(i, itemEnd);
+		if (aggregate == COLUMN) {
+			item.column = new ColumnRef();
+			int next = parseColumn(i, itemEnd, item.column);
+			item.last = next - 1;
+			return next;
+		}
+		item.aggregate = aggregate;
+		int close = i + 2;
+		if (close < itemEnd && type(close) == Tokenizer2.STAR) {
+			if (aggregate != COUNT) {
+				return -1;
+			}
+			close++;
+		} else {
+			item.column = new ColumnRef();
+			close = parseColumn(i + 2, itemEnd, item.column);
+		}
+		if (close < 0 || close >= itemEnd || type(close) != Tokenizer2.RIGHT_PARENTHESES) {
+			return -1;
+		}
+		item.last = close;
+		return close + 1;
+	}
+
+	private int aggregate(int i, int itemEnd) {
+		if (i + 1 < itemEnd && isWordType(type(i)) && type(i + 1) == Tokenizer2.LEFT_PARENTHESES) {
+			long hash = hashArray.getHash(i);
+			for (int j = 1; j < AGGREGATES.length; j++) {
+				if (AGGREGATES[j] == hash) {
+					return j;
+				}
+			}
+		}
+		return COLUMN;
+	}
+
+	/**
+	 * 列名 或者 限定名.列名, 返回之后的下标, 不是列引用时返回 -1
+	 */
+	private int parseColumn(int i, int limit, ColumnRef column) {
+		if (i >= limit || !isWordType(type(i))) {
+			return -1;
+		}
+		if (i + 1 < limit && type(i + 1) == Tokenizer2.LEFT_PARENTHESES) {
+			return -1;
+		}
+		if (i + 1 < limit && type(i + 1) == Tokenizer2.DOT) {
+			if (i + 2 >= limit || !isWordType(type(i + 2))
+					|| (i + 3 < limit && type(i + 3) == Tokenizer2.DOT)) {
+				return -1;
+			}
+			column.qualifier = i;
+			column.column = i + 2;
+			return i + 3;
+		}
+		column.column = i;
+		return i + 1;
+	}
+
+	/**
+	 * from 中的表, 返回表之后的下标
+	 */
+	private int parseTables(int i) {
+		i = parseTable(i);
+		while (i >= 0 && i < end) {
+			if (type(i) == Tokenizer2.COMMA) {
+				i = parseTable(i + 1);
+				continue;
+			}
+			if (isWord(i, TokenHash.INNER) || isWord(i, TokenHash.CROSS)) {
+				i++;
+				if (i >= end || !isWord(i, TokenHash.JOIN)) {
+					return -1;
+				}
+			} else if (!isWord(i, TokenHash.JOIN) && !isWord(i, TokenHash.STRAIGHT_JOIN)) {
+				return i;
+			}
+			i = parseTable(i + 1);
+			if (i >= 0 && i < end && isWord(i, TokenHash.ON)) {
+				int onEnd = clauseEnd(i + 1, true);
+				if (!parseConditions(i + 1, onEnd)) {
+					return -1;
+				}
+				i = onEnd;
+			}
+		}
+		return i;
+	}
+
+	private boolean isJoinStart(int i) {
+		return isWord(i, TokenHash.JOIN) || isWord(i, TokenHash.INNER) || isWord(i, TokenHash.CROSS)
+				|| isWord(i, TokenHash.STRAIGHT_JOIN);
+	}
+
+	/**
+	 * [库名.]表名 [[as] 别名]
+	 */
+	private int parseTable(int i) {
+		if (i >= end || !isWordType(type(i)) || contains(TABLE_FOLLOW, hashArray.getHash(i))) {
+			return -1;
+		}
+		TableRef table = new TableRef();
+		table.first = i;
+		if (i + 2 < end && type(i + 1) == Tokenizer2.DOT && isWordType(type(i + 2))) {
+			i += 2;
+		}
+		table.last = i;
+		table.tableHash = hashArray.getHash(i);
+		i++;
+		if (i < end && isWord(i, TokenHash.AS)) {
+			i++;
+			if (i >= end || !isWordType(type(i))) {
+				return -1;
+			}
+			table.alias = i++;
+		} else if (i < end && isWordType(type(i)) && !contains(TABLE_FOLLOW, hashArray.getHash(i))) {
+			table.alias = i++;
+		}
+		if (i < end && isWordType(type(i)) && !isClauseStart(i) && !isJoinStart(i) && !isWord(i, TokenHash.ON)) {
+			// 索引提示, 分区等
+			return -1;
+		}
+		table.name = SqlTemplate.identifier(context, table.alias >= 0 ? table.alias : table.last).toLowerCase();
+		for (TableRef other : tables) {
+			if (other.name.equals(table.name)) {
+				return -1;
+			}
+		}
+		tables.add(table);
+		return i;
+	}
+
+	/**
+	 * where 或者 on 条件的结束位置
+	 */
+	private int clauseEnd(int i, boolean on) {
+		int depth = 0;
+		for (; i < end; i++) {
+			int type = type(i);
+			if (type == Tokenizer2.LEFT_PARENTHESES) {
+				depth++;
+			} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+				depth--;
+			} else if (depth == 0 && (isClauseStart(i) || (on && (type == Tokenizer2.COMMA || isJoinStart(i)
+					|| ((isWord(i, TokenHash.LEFT) || isWord(i, TokenHash.RIGHT))
+							&& (i + 1 >= end || type(i + 1) != Tokenizer2.LEFT_PARENTHESES)))))) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	private boolean isClauseStart(int i) {
+		return isWord(i, TokenHash.WHERE) || isWord(i, TokenHash.GROUP) || isWord(i, TokenHash.ORDER)
+				|| isWord(i, TokenHash.LIMIT);
+	}
+
+	/**
+	 * 按最外层的 and 拆分条件, between ... and ... 中的 and 不拆分
+	 */
+	private boolean parseConditions(int i, int limit) {
+		int depth = 0;
+		boolean between = false;
+		int first = i;
+		for (; i <= limit; i++) {
+			if (i < limit) {
+				int type = type(i);
+				if (type == Tokenizer2.LEFT_PARENTHESES) {
+					depth++;
+					continue;
+				} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+					depth--;
+					continue;
+				} else if (depth != 0) {
+					continue;
+				} else if (isWord(i, TokenHash.BETWEEN)) {
+					between = true;
+					continue;
+				} else if (!isWord(i, TokenHash.AND) && type != Tokenizer2.AND_AND) {
+					continue;
+				} else if (between && type != Tokenizer2.AND_AND) {
+					between = false;
+					continue;
+				}
+			}
+			if (i == first) {
+				return false;
+			}
+			Condition condition = new Condition();
+			condition.first = first;
+			condition.last = i - 1;
+			conditions.add(condition);
+			first = i + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * group by 列、别名或者位置
+	 */
+	private int parseGroupBy(int i) {
+		if (i >= end || !isWord(i, TokenHash.BY)) {
+			return -1;
+		}
+		for (i++; i < end; i++) {
+			ColumnRef column;
+			if (type(i) == Tokenizer2.DIGITS) {
+				SelectItem item = itemAt(i);
+				column = item == null || item.aggregate != COLUMN ? null : item.column;
+				i++;
+			} else {
+				SelectItem item = labeled(i);
+				if (item != null) {
+					column = item.aggregate == COLUMN ? item.column : null;
+					i++;
+				} else {
+					column = new ColumnRef();
+					i = parseColumn(i, end, column);
+				}
+			}
+			if (column == null || i < 0) {
+				return -1;
+			}
+			groupBy.add(column);
+			if (i >= end || type(i) != Tokenizer2.COMMA) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * order by 位置、别名、列或者聚合函数 [asc|desc]
+	 */
+	private int parseOrderBy(int i) {
+		if (i >= end || !isWord(i, TokenHash.BY)) {
+			return -1;
+		}
+		for (i++; i < end; i++) {
+			OrderItem order = new OrderItem();
+			if (type(i) == Tokenizer2.DIGITS) {
+				order.item = itemAt(i);
+				i++;
+			} else if ((order.item = labeled(i)) != null) {
+				i++;
+			} else {
+				SelectItem item = new SelectItem();
+				i = parseItem(i, end, item);
+				if (i < 0) {
+					return -1;
+				}
+				order.item = item;
+			}
+			if (order.item == null) {
+				return -1;
+			}
+			if (i < end && isWord(i, TokenHash.DESC)) {
+				order.desc = true;
+				i++;
+			} else if (i < end && isWord(i, TokenHash.ASC)) {
+				i++;
+			}
+			orderBy.add(order);
+			if (i >= end || type(i) != Tokenizer2.COMMA) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 按位置引用的 select 列
+	 */
+	private SelectItem itemAt(int i) {
+		long pos = hashArray.getHash(i);
+		return hashArray.getSize(i) > 9 || pos < 1 || pos > items.size() ? null : items.get((int) pos - 1);
+	}
+
+	/**
+	 * 按输出的字段名引用的 select 列, 没有别名的列为列名
+	 */
+	private SelectItem labeled(int i) {
+		if (!isWordType(type(i)) || (i + 1 < end && (type(i + 1) == Tokenizer2.DOT
+				|| type(i + 1) == Tokenizer2.LEFT_PARENTHESES))) {
+			return null;
+		}
+		String name = SqlTemplate.identifier(context, i);
+		SelectItem found = null;
+		for (SelectItem item : items) {
+			int nameToken = item.label >= 0 ? item.label : item.aggregate == COLUMN ? item.column.column : -1;
+			if (nameToken >= 0 && SqlTemplate.identifier(context, nameToken).equalsIgnoreCase(name)) {
+				if (found != null && !found.sameAs(item)) {
+					return null;
+				}
+				found = found == null ? item : found;
+			}
+		}
+		return found;
+	}
+
+	private int parseLimit(int i) {
+		if (i >= end || !isNumber(i)) {
+			return -1;
+		}
+		if (i + 2 < end && type(i + 1) == Tokenizer2.COMMA && isNumber(i + 2)) {
+			offsetToken = i;
+			countToken = i + 2;
+			return i + 3;
+		}
+		if (i + 2 < end && isWord(i + 1, TokenHash.OFFSET) && isNumber(i + 2)) {
+			offsetToken = i + 2;
+			countToken = i;
+			return i + 3;
+		}
+		countToken = i;
+		return i + 1;
+	}
+
+	/**
+	 * 确定各个列引用所属的表, 以及条件引用的表, 不能确定时返回 false
+	 */
+	private boolean resolve() {
+		for (SelectItem item : items) {
+			if (item.column != null && !resolve(item.column)) {
+				return false;
+			}
+		}
+		for (ColumnRef column : groupBy) {
+			if (!resolve(column)) {
+				return false;
+			}
+		}
+		for (OrderItem order : orderBy) {
+			if (items.contains(order.item)) {
+				continue;
+			}
+			if (order.item.column != null && !resolve(order.item.column)) {
+				return false;
+			}
+			// 排序的列不在 select 中时作为隐藏项
+			SelectItem same = null;
+			for (SelectItem item : items) {
+				if (item.sameAs(order.item)) {
+					same = item;
+					break;
+				}
+			}
+			if (same == null) {
+				order.item.hidden = true;
+				items.add(order.item);
+			} else {
+				order.item = same;
+			}
+		}
+		for (Condition condition : conditions) {
+			if (!resolve(condition)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean resolve(ColumnRef column) {
+		if (column.qualifier < 0) {
+			if (tables.size() != 1) {
+				return false;
+			}
+			column.table = 0;
+		} else {
+			column.table = table(SqlTemplate.identifier(context, column.qualifier).toLowerCase());
+			if (column.table < 0) {
+				return false;
+			}
+		}
+		column.name = tables.get(column.table).name + "."
+				+ SqlTemplate.identifier(context, column.column).toLowerCase();
+		return true;
+	}
+
+	private int table(String name) {
+		for (int i = 0; i < tables.size(); i++) {
+			if (tables.get(i).name.equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 条件引用的表, 两个表的列相等时为关联条件
+	 */
+	private boolean resolve(Condition condition) {
+		int first = condition.first;
+		int last = condition.last;
+		if (last - first == 6 && type(first + 3) == Tokenizer2.EQUAL) {
+			ColumnRef left = new ColumnRef();
+			ColumnRef right = new ColumnRef();
+			if (parseColumn(first, first + 3, left) == first + 3 && left.qualifier >= 0
+					&& parseColumn(first + 4, last + 1, right) == last + 1 && right.qualifier >= 0
+					&& resolve(left) && resolve(right) && left.table != right.table) {
+				condition.left = left;
+				condition.right = right;
+				return true;
+			}
+		}
+		double selectivity = 0.3;
+		int depth = 0;
+		for (int i = first; i <= last; i++) {
+			int type = type(i);
+			if (type == Tokenizer2.LEFT_PARENTHESES) {
+				depth++;
+				continue;
+			} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+				depth--;
+				continue;
+			}
+			if (depth == 0 && (type == Tokenizer2.EQUAL || isWord(i, TokenHash.IN))) {
+				selectivity = 0.1;
+			}
+			if (!isWordType(type) || contains(CONDITION_WORDS, hashArray.getHash(i))) {
+				continue;
+			}
+			if (i > first && type(i - 1) == Tokenizer2.DOT) {
+				continue;
+			}
+			if (i + 1 <= last && type(i + 1) == Tokenizer2.LEFT_PARENTHESES) {
+				// 函数
+				continue;
+			}
+			ColumnRef column = new ColumnRef();
+			if (parseColumn(i, last + 1, column) < 0 || !resolve(column)) {
+				return false;
+			}
+			if (condition.table >= 0 && condition.table != column.table) {
+				return false;
+			}
+			condition.table = column.table;
+		}
+		condition.selectivity = selectivity;
+		return true;
+	}
+
+	/**
+	 * 从 i 开始的最外层逗号的位置, 没有时为 limit
+	 */
+	private int nextComma(int i, int limit) {
+		int depth = 0;
+		for (; i < limit; i++) {
+			int type = type(i);
+			if (type == Tokenizer2.LEFT_PARENTHESES) {
+				depth++;
+			} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+				depth--;
+			} else if (depth == 0 && type == Tokenizer2.COMMA) {
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	boolean isGrouped() {
+		if (!groupBy.isEmpty()) {
+			return true;
+		}
+		for (SelectItem item : items) {
+			if (item.aggregate != COLUMN) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int visibleCount() {
+		int count = 0;
+		for (SelectItem item : items) {
+			if (!item.hidden) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private int type(int i) {
+		return hashArray.getType(i);
+	}
+
+	/**
+	 * 解析器已经把不超过18位的数字转换为数值
+	 */
+	private boolean isNumber(int i) {
+		return type(i) == Tokenizer2.DIGITS && hashArray.getSize(i) <= 18;
+	}
+
+	private boolean isWord(int i, long hash) {
+		return isWordType(type(i)) && hashArray.getHash(i) == hash;
+	}
+
+	private static boolean isWordType(int type) {
+		return type < 0 || type > Tokenizer2.GREATER_GREATER;
+	}
+
+	private static boolean contains(long[] hashes, long hash) {
+		for (long h : hashes) {
+			if (h == hash) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,117 @@
+package io.mycat.mycat2.hbt.planner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.SQLParseUtils.HashArray;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.Tokenizer2;
+
+/**
+ * 执行计划中的 sql 片段, 由生成的文本和原始 sql 中的 token 组成.
+ * 执行时从当前 sql 中取出对应 token 的内容, 同一个计划可以用于只有常量不同的 sql,
+ * 常量和标识符的写法都以当前 sql 为准
+ */
+class SqlTemplate {
+
+	private static final int TEXT = 0;
+	/* 原始 sql 中 [first, last] 两个 token 之间的全部内容 */
+	private static final int RANGE = 1;
+	/* 加上反引号的标识符 */
+	private static final int IDENTIFIER = 2;
+	/* 不加反引号的标识符, 用于输出的字段名 */
+	private static final int NAME = 3;
+
+	private final List<Object> texts = new ArrayList<>();
+	private final List<int[]> tokens = new ArrayList<>();
+
+	SqlTemplate append(String text) {
+		texts.add(text);
+		tokens.add(new int[] { TEXT });
+		return this;
+	}
+
+	SqlTemplate appendRange(int first, int last) {
+		texts.add(null);
+		tokens.add(new int[] { RANGE, first, last });
+		return this;
+	}
+
+	SqlTemplate appendIdentifier(int token) {
+		texts.add(null);
+		tokens.add(new int[] { IDENTIFIER, token });
+		return this;
+	}
+
+	SqlTemplate appendName(int token) {
+		texts.add(null);
+		tokens.add(new int[] { NAME, token });
+		return this;
+	}
+
+	SqlTemplate append(SqlTemplate other) {
+		texts.addAll(other.texts);
+		tokens.addAll(other.tokens);
+		return this;
+	}
+
+	String render(BufferSQLContext context) {
+		ByteArrayInterface buffer = context.getBuffer();
+		HashArray hashArray = context.getHashArray();
+		StringBuilder sql = new StringBuilder();
+		for (int i = 0; i < tokens.size(); i++) {
+			int[] token = tokens.get(i);
+			switch (token[0]) {
+			case RANGE:
+				int start = tokenStart(buffer, hashArray, token[1]);
+				sql.append(buffer.getString(start, tokenEnd(context, buffer, hashArray, token[2]) - start));
+				break;
+			case IDENTIFIER:
+				sql.append('`').append(identifier(context, token[1])).append('`');
+				break;
+			case NAME:
+				sql.append(identifier(context, token[1]));
+				break;
+			default:
+				sql.append((String) texts.get(i));
+			}
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * 标识符的内容, 不含反引号
+	 */
+	static String identifier(BufferSQLContext context, int token) {
+		HashArray hashArray = context.getHashArray();
+		return context.getBuffer().getString(hashArray.getPos(token), hashArray.getSize(token));
+	}
+
+	/**
+	 * 原始 sql 中 [first, last] 两个 token 之间的全部内容
+	 */
+	static String range(BufferSQLContext context, int first, int last) {
+		return new SqlTemplate().appendRange(first, last).render(context);
+	}
+
+	/**
+	 * 解析器记录的反引号标识符的位置不含反引号
+	 */
+	private static int tokenStart(ByteArrayInterface buffer, HashArray hashArray, int token) {
+		int pos = hashArray.getPos(token);
+		return pos > buffer.getOffset() && buffer.get(pos - 1) == '`' ? pos - 1 : pos;
+	}
+
+	private static int tokenEnd(BufferSQLContext context, ByteArrayInterface buffer, HashArray hashArray, int token) {
+		int pos = hashArray.getPos(token);
+		int limit = buffer.getOffset() + buffer.length();
+		if (hashArray.getType(token) == Tokenizer2.STRINGS) {
+			// 含有转义字符时解析器记录的长度不准确
+			return SQLFingerprint.stringEnd(buffer, pos, limit);
+		}
+		int end = Math.min(pos + Math.max(hashArray.getSize(token), 1), limit);
+		return end < limit && buffer.get(end) == '`' ? end + 1 : end;
+	}
+}
@@ -1,17 +1,18 @@
 package io.mycat.mycat2.loadbalance;
 
-import io.mycat.proxy.man.ClusterNode;
-
-import java.util.Collection;
+import io.mycat.proxy.man.NodeLoad;
 
 /**
  * 基于服务器能力的（如cpu,内存等使用率）均衡策略
+ * <p>
+ * cpu负载越高每个会话的代价越大, reactor积压的任务说明节点已经处理不过来, 按每个任务相当于满负载的一个会话计算
  *
  * Created by ynfeng on 2017/9/12.
  */
-public class CapacityStrategy implements LoadBalanceStrategy{
+public class CapacityStrategy extends NodeLoadStrategy {
     @Override
-    public ClusterNode getNode(Collection<ClusterNode> allNode, Object attachement) {
-        return null;
+    protected double score(NodeLoad load, int assigned) {
+        return (double) (load.getCpuLoad() + 1) * (load.getActiveSessions() + assigned + 1)
+                + 1000.0 * load.getReactorQueueDepth();
     }
 }
@@ -31,6 +31,11 @@ public class LBNIOHandler implements NIOHandler<LBSession> {
         LoadBalanceStrategy loadBalanceStrategy =
                 LBStrategyConfig.getStrategy(balancerConfig.getBalancer().getStrategy());
         ClusterNode clusterNode = loadBalanceStrategy.getNode(cluster.allNodes.values(), null);
+        if (clusterNode == null) {
+            logger.warn("no available node for load balancer connection");
+            session.close(false, "no available node");
+            return;
+        }
         connectToRemoteMycat(clusterNode.ip, clusterNode.proxyPort, runtime.getAcceptor().getSelector(), session);
     }
 
@@ -0,0 +1,60 @@
+package io.mycat.mycat2.loadbalance;
+
+import io.mycat.proxy.man.ClusterNode;
+import io.mycat.proxy.man.ClusterNode.NodeState;
+import io.mycat.proxy.man.NodeLoad;
+import io.mycat.proxy.man.NodeLoadReporter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 根据各节点上报的负载选择得分最低的节点.
+ * 两次上报之间分配到同一节点的连接会计入得分, 避免所有新连接都涌向同一个节点;
+ * 所有在线节点都没有可用的负载信息时随机选择
+ * <p>
+ * Created by ynfeng on 2017/9/12.
+ */
+public abstract class NodeLoadStrategy implements LoadBalanceStrategy {
+
+    /**
+     * 节点的负载得分, 越小越优先
+     *
+     * @param load     节点最近一次上报的负载
+     * @param assigned 上报之后已分配到该节点的连接数
+     */
+    protected abstract double score(NodeLoad load, int assigned);
+
+    @Override
+    public ClusterNode getNode(Collection<ClusterNode> allNode, Object attachement) {
+        long now = System.currentTimeMillis();
+        List<ClusterNode> onlineNodes = new ArrayList<>();
+        ClusterNode best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (ClusterNode node : allNode) {
+            if (NodeState.Online != node.getState()) {
+                continue;
+            }
+            onlineNodes.add(node);
+            NodeLoad load = node.getLoad();
+            if (!NodeLoadReporter.INSTANCE.isFresh(load, now)) {
+                continue;
+            }
+            double score = score(load, node.getAssignedSinceReport());
+            if (score < bestScore) {
+                best = node;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            if (onlineNodes.isEmpty()) {
+                return null;
+            }
+            best = onlineNodes.get(ThreadLocalRandom.current().nextInt(onlineNodes.size()));
+        }
+        best.incAssigned();
+        return best;
+    }
+}
@@ -1,17 +1,17 @@
 package io.mycat.mycat2.loadbalance;
 
-import io.mycat.proxy.man.ClusterNode;
-
-import java.util.Collection;
+import io.mycat.proxy.man.NodeLoad;
 
 /**
  * 基于平均响应时间的均衡策略
+ * <p>
+ * 以节点上报的99分位响应时间乘以会话数估计新连接的等待时间, 响应时间为0(没有语句)时按1微秒计算
  *
  * Created by ynfeng on 2017/9/12.
  */
-public class ResponseTimeStrategy implements LoadBalanceStrategy {
+public class ResponseTimeStrategy extends NodeLoadStrategy {
     @Override
-    public ClusterNode getNode(Collection<ClusterNode> allNode, Object attachement) {
-        return null;
+    protected double score(NodeLoad load, int assigned) {
+        return (double) Math.max(load.getP99LatencyMicros(), 1) * (load.getActiveSessions() + assigned + 1);
     }
 }
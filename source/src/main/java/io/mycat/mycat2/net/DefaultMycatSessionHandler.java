@@ -39,13 +39,22 @@ public class DefaultMycatSessionHandler implements NIOHandler<AbstractMySQLSessi
 
 	private void onFrontRead(final MycatSession session) throws IOException {
 		boolean readed = session.readFromChannel();
-		ProxyBuffer buffer = session.getProxyBuffer();
 		// 在load data的情况下，SESSION_PKG_READ_FLAG会被打开，以不让进行包的完整性检查
-		if (!session.getSessionAttrMap().containsKey(SessionKeyEnum.SESSION_PKG_READ_FLAG.getKey())
+		if (!session.hasFlag(SessionKeyEnum.SESSION_PKG_READ_FLAG)
 				&& readed == false) {
 			return;
 		}
+		onFrontPackage(session);
+	}
 
+	/**
+	 * 处理 buffer 中从 readIndex 开始的前端报文. 没有响应的命令处理完之后, buffer 中剩余的报文也由这里继续处理
+	 *
+	 * @param session
+	 * @throws IOException
+	 */
+	public void onFrontPackage(final MycatSession session) throws IOException {
+		ProxyBuffer buffer = session.getProxyBuffer();
 		switch (session.resolveMySQLPackage(buffer, session.curMSQLPackgInf, false)) {
 		case Full:
 			session.changeToDirectIfNeed();
@@ -72,8 +81,9 @@ public class DefaultMycatSessionHandler implements NIOHandler<AbstractMySQLSessi
 			return;
 		}
 
+		// 流水线模式下前端一次发送多个报文是正常情况
 		if (session.curMSQLPackgInf.endPos < buffer.writeIndex) {
-			logger.warn("front contains multi package ");
+			logger.debug("front contains multi package ");
 		}
 
 		// 进行后端的结束报文处理的绑定
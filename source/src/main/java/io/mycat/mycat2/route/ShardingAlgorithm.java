@@ -0,0 +1,30 @@
+package io.mycat.mycat2.route;
+
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+
+/**
+ * 编译后的分片算法, 直接根据 sql 中分片字段的常量计算分片下标, 不生成中间字符串.
+ * 实现类在加载配置时根据 {@link io.mycat.mycat2.beans.conf.ShardingRuleBean} 的参数创建, 之后只读, 可以在多个线程中使用
+ */
+public interface ShardingAlgorithm {
+
+	/**
+	 * 无法确定分片
+	 */
+	int NO_PARTITION = -1;
+
+	/**
+	 * 整数常量所在的分片
+	 */
+	int calculate(long value);
+
+	/**
+	 * 字符串常量所在的分片
+	 *
+	 * @param start
+	 *            去掉引号后内容的开始位置
+	 * @param end
+	 *            去掉引号后内容的结束位置(不包含)
+	 */
+	int calculate(ByteArrayInterface buffer, int start, int end);
+}
@@ -0,0 +1,630 @@
+package io.mycat.mycat2.route;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.SchemaBean;
+import io.mycat.mycat2.beans.conf.ShardingRuleBean;
+import io.mycat.mycat2.beans.conf.ShardingRuleConfig;
+import io.mycat.mycat2.beans.conf.TableDefBean;
+import io.mycat.mycat2.route.function.PartitionByDate;
+import io.mycat.mycat2.route.function.PartitionByEnum;
+import io.mycat.mycat2.route.function.PartitionByMod;
+import io.mycat.mycat2.route.function.PartitionByMurmurHash;
+import io.mycat.mycat2.route.function.PartitionByRange;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.SQLParseUtils.HashArray;
+import io.mycat.mycat2.sqlparser.TokenHash;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.Tokenizer2;
+
+/**
+ * 一个 schema 的分片路由.
+ * 加载配置时把每个表的 {@link TableDefBean} 和 {@link ShardingRuleBean} 编译为: 表名 hash -> (分片字段 hash, 分片算法, 分片节点),
+ * 路由时直接在解析器的 {@link HashArray} 上查找分片字段的条件, 用常量计算分片, 不生成字符串.
+ * 1. select/update/delete: where 最外层的 key = 常量、key in (常量...), 存在最外层的 or 时无法确定分片.
+ * 分片字段带有表名或别名时只用于对应的表; 不带时只有最外层只有一个表的语句才能确定所属的表
+ * 2. insert/replace: 列清单中分片字段对应的值, 多组 values 需要落在同一个分片; insert ... set key = 常量
+ * 3. 语句中所有配置了分片的表都路由到同一个节点时返回该节点, 否则返回 null
+ */
+public class ShardingRouter {
+
+	/* 表名之后不是别名的关键字 */
+	private static final long[] TABLE_FOLLOW = { TokenHash.JOIN, TokenHash.INNER, TokenHash.CROSS,
+			TokenHash.STRAIGHT_JOIN, TokenHash.LEFT, TokenHash.RIGHT, TokenHash.NATURAL, TokenHash.ON,
+			TokenHash.USING, TokenHash.WHERE, TokenHash.GROUP, TokenHash.ORDER, TokenHash.LIMIT, TokenHash.HAVING,
+			TokenHash.UNION, TokenHash.FOR, TokenHash.LOCK, TokenHash.USE, TokenHash.FORCE, TokenHash.IGNORE,
+			TokenHash.PARTITION, TokenHash.SET, TokenHash.VALUES, TokenHash.VALUE, TokenHash.SELECT };
+
+	private final TableRoute[] routes;
+	private final int mask;
+
+	ShardingRouter(List<TableRoute> tableRoutes) {
+		int capacity = Integer.highestOneBit(Math.max(tableRoutes.size(), 1) * 2 - 1) << 1;
+		routes = new TableRoute[capacity];
+		mask = capacity - 1;
+		for (TableRoute route : tableRoutes) {
+			int slot = slot(route.tableHash);
+			while (routes[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			routes[slot] = route;
+		}
+	}
+
+	/**
+	 * 编译 schema 中配置的表, 没有配置表时返回 null
+	 *
+	 * @param repMap
+	 *            复制组名称到 {@link MySQLRepBean} 的映射, 表的 store 为逗号分隔的复制组名称, 分片下标对应其中的顺序
+	 */
+	public static ShardingRouter build(SchemaBean schema, ShardingRuleConfig ruleConfig, Map<String, MySQLRepBean> repMap) {
+		List<TableDefBean> tables = schema.getTables();
+		if (tables == null || tables.isEmpty()) {
+			return null;
+		}
+		Map<String, ShardingRuleBean> ruleBeans = new HashMap<>();
+		if (ruleConfig != null && ruleConfig.getShardingRules() != null) {
+			ruleConfig.getShardingRules().forEach(rule -> ruleBeans.put(rule.getName(), rule));
+		}
+		Map<String, ShardingAlgorithm> algorithms = new HashMap<>();
+		List<TableRoute> tableRoutes = new java.util.ArrayList<>();
+		for (TableDefBean table : tables) {
+			String[] stores = table.getStore() == null ? new String[0] : table.getStore().split(",");
+			MySQLRepBean[] nodes = new MySQLRepBean[stores.length];
+			for (int i = 0; i < stores.length; i++) {
+				nodes[i] = repMap.get(stores[i].trim());
+				if (nodes[i] == null) {
+					throw new IllegalArgumentException("replica " + stores[i] + " of table " + table.getName() + " not found");
+				}
+			}
+			if (nodes.length == 0) {
+				throw new IllegalArgumentException("store of table " + table.getName() + " is required");
+			}
+			ShardingAlgorithm algorithm = null;
+			long keyHash = 0;
+			int keySize = 0;
+			if (table.getShardingRule() != null) {
+				ShardingRuleBean ruleBean = ruleBeans.get(table.getShardingRule());
+				if (ruleBean == null) {
+					throw new IllegalArgumentException("sharding rule " + table.getShardingRule() + " of table " + table.getName() + " not found");
+				}
+				if (table.getShardingKey() == null) {
+					throw new IllegalArgumentException("sharding key of table " + table.getName() + " is required");
+				}
+				algorithm = algorithms.computeIfAbsent(ruleBean.getName(), name -> compile(ruleBean));
+				keyHash = identifierHash(table.getShardingKey());
+				keySize = table.getShardingKey().length();
+			}
+			tableRoutes.add(new TableRoute(identifierHash(table.getName()), keyHash, keySize, algorithm, nodes,
+					table.getEstimatedRows()));
+		}
+		return new ShardingRouter(tableRoutes);
+	}
+
+	/**
+	 * 按算法名称创建分片算法, 同时支持 1.x 版本的类名
+	 */
+	public static ShardingAlgorithm compile(ShardingRuleBean ruleBean) {
+		String algorithm = ruleBean.getAlgorithm();
+		String name = algorithm.substring(algorithm.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+		switch (name) {
+		case "mod-hash":
+		case "partitionbymod":
+			return new PartitionByMod(ruleBean.getParams());
+		case "range":
+		case "partitionbyrange":
+		case "autopartitionbylong":
+			return new PartitionByRange(ruleBean.getParams());
+		case "date":
+		case "partitionbydate":
+			return new PartitionByDate(ruleBean.getParams());
+		case "enum":
+		case "partitionbyenum":
+		case "partitionbyfilemap":
+			return new PartitionByEnum(ruleBean.getParams());
+		case "consistent-hash":
+		case "partitionbymurmurhash":
+			return new PartitionByMurmurHash(ruleBean.getParams());
+		default:
+			throw new IllegalArgumentException("unsupported sharding algorithm " + algorithm);
+		}
+	}
+
+	/**
+	 * 与解析器计算的标识符 hash 相同, 不区分大小写
+	 */
+	public static long identifierHash(String name) {
+		long hash = 0;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			int value;
+			if (c >= '0' && c <= '9') {
+				value = c - '0' + 2;
+			} else if (c >= 'A' && c <= 'Z') {
+				value = c - 'A' + 12;
+			} else if (c >= 'a' && c <= 'z') {
+				value = c - 'a' + 12;
+			} else if (c == '_') {
+				value = 38;
+			} else if (c == '$') {
+				value = 1;
+			} else {
+				value = 0;
+			}
+			hash = hash * 41 + value;
+		}
+		return hash;
+	}
+
+	/**
+	 * 路由第一条 sql, 不能确定唯一的目标节点时返回 null
+	 */
+	public MySQLRepBean route(BufferSQLContext context) {
+		if (context.getSQLCount() != 1) {
+			return null;
+		}
+		MySQLRepBean target = null;
+		int count = context.getSQLTblCount(0);
+		byte sqlType = context.getSQLType(0);
+		// insert 只有一个目标表, 解析器可能把 set 中的字段记录为表名
+		boolean insert = sqlType == BufferSQLContext.INSERT_SQL || sqlType == BufferSQLContext.REPLACE_SQL;
+		for (int i = 0; i < count; i++) {
+			TableRoute route = find(context.getSQLTableHash(0, i));
+			if (route == null) {
+				continue;
+			}
+			int partition = route.algorithm == null ? 0 : partition(context, route, qualifier(context, i),
+					insert || isOnlyTable(context, i, count));
+			if (partition < 0 || partition >= route.nodes.length) {
+				return null;
+			}
+			MySQLRepBean node = route.nodes[partition];
+			if (target != null && target != node) {
+				return null;
+			}
+			target = node;
+		}
+		return target;
+	}
+
+	/**
+	 * 语句中是否有配置的表
+	 */
+	public boolean containsTable(BufferSQLContext context) {
+		for (int i = 0, sqlCount = context.getSQLCount(); i < sqlCount; i++) {
+			for (int j = 0, count = context.getSQLTblCount(i); j < count; j++) {
+				if (find(context.getSQLTableHash(i, j)) != null) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 不能路由到唯一节点的第一条 select/update/delete 需要在哪些节点上执行.
+	 * 语句中配置的表都是分片表并且分布在相同的节点上时返回这些节点, 否则返回 null
+	 */
+	public MySQLRepBean[] scatterNodes(BufferSQLContext context) {
+		if (context.getSQLCount() != 1) {
+			return null;
+		}
+		byte sqlType = context.getSQLType(0);
+		if (sqlType != BufferSQLContext.SELECT_SQL && sqlType != BufferSQLContext.UPDATE_SQL
+				&& sqlType != BufferSQLContext.DELETE_SQL) {
+			return null;
+		}
+		MySQLRepBean[] nodes = null;
+		for (int i = 0, count = context.getSQLTblCount(0); i < count; i++) {
+			TableRoute route = find(context.getSQLTableHash(0, i));
+			if (route == null) {
+				continue;
+			}
+			if (route.algorithm == null || (nodes != null && !Arrays.equals(nodes, route.nodes))) {
+				return null;
+			}
+			nodes = route.nodes;
+		}
+		return nodes;
+	}
+
+	/**
+	 * 表所在的复制组, 分片表为所有分片的复制组, 没有配置的表返回 null
+	 */
+	public MySQLRepBean[] tableNodes(long tableHash) {
+		TableRoute route = find(tableHash);
+		return route == null ? null : route.nodes;
+	}
+
+	/**
+	 * 配置的表的估算行数, 没有配置时为0
+	 */
+	public long estimatedRows(long tableHash) {
+		TableRoute route = find(tableHash);
+		return route == null ? 0 : route.estimatedRows;
+	}
+
+	private int slot(long hash) {
+		return (int) (hash ^ (hash >>> 32)) * 0x9E3779B9 >>> 16 & mask;
+	}
+
+	private TableRoute find(long tableHash) {
+		int slot = slot(tableHash);
+		TableRoute route;
+		while ((route = routes[slot]) != null) {
+			if (route.tableHash == tableHash) {
+				return route;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	private static int partition(BufferSQLContext context, TableRoute route, long qualifier, boolean bare) {
+		HashArray hashArray = context.getHashArray();
+		int start = context.getSQLHashArrayStart(0);
+		int end = Math.min(context.getSQLHashArrayEnd(0), hashArray.getCount());
+		byte sqlType = context.getSQLType(0);
+		if (sqlType == BufferSQLContext.INSERT_SQL || sqlType == BufferSQLContext.REPLACE_SQL) {
+			return insertPartition(context, hashArray, start, end, route, qualifier, bare);
+		}
+		return wherePartition(context, hashArray, start, end, route, qualifier, bare);
+	}
+
+	/**
+	 * where 最外层 and 连接的条件中的分片字段
+	 */
+	private static int wherePartition(BufferSQLContext context, HashArray hashArray, int start, int end, TableRoute route,
+			long qualifier, boolean bare) {
+		int depth = 0;
+		int i = start;
+		for (; i < end; i++) {
+			int type = hashArray.getType(i);
+			if (type == Tokenizer2.LEFT_PARENTHESES) {
+				depth++;
+			} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+				depth--;
+			} else if (depth == 0 && isWord(hashArray, i, TokenHash.WHERE)) {
+				break;
+			}
+		}
+		int partition = ShardingAlgorithm.NO_PARTITION;
+		for (i++; i < end; i++) {
+			int type = hashArray.getType(i);
+			if (type == Tokenizer2.LEFT_PARENTHESES) {
+				depth++;
+			} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+				depth--;
+			} else if (depth != 0) {
+				continue;
+			} else if (type == Tokenizer2.OR_OR || isWord(hashArray, i, TokenHash.OR)) {
+				return ShardingAlgorithm.NO_PARTITION;
+			} else if (type == Tokenizer2.SEMICOLON || isClauseEnd(hashArray, i)) {
+				break;
+			} else if (partition < 0 && isKey(hashArray, i, start, route, qualifier, bare)) {
+				partition = predicatePartition(context, hashArray, i + 1, end, route.algorithm);
+			}
+		}
+		return partition;
+	}
+
+	/**
+	 * 分片字段之后的 = 常量 或者 in (常量...)
+	 */
+	private static int predicatePartition(BufferSQLContext context, HashArray hashArray, int i, int end,
+			ShardingAlgorithm algorithm) {
+		if (i >= end) {
+			return ShardingAlgorithm.NO_PARTITION;
+		}
+		if (hashArray.getType(i) == Tokenizer2.EQUAL) {
+			int n = literalTokens(hashArray, i + 1, end);
+			if (n == 0 || !isValueEnd(hashArray, i + 1 + n, end)) {
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+			return literalPartition(context, hashArray, i + 1, n, algorithm);
+		}
+		if (!isWord(hashArray, i, TokenHash.IN) || i + 1 >= end
+				|| hashArray.getType(i + 1) != Tokenizer2.LEFT_PARENTHESES) {
+			return ShardingAlgorithm.NO_PARTITION;
+		}
+		// in 中的所有值需要落在同一个分片
+		int partition = ShardingAlgorithm.NO_PARTITION;
+		for (int j = i + 2; j < end;) {
+			int n = literalTokens(hashArray, j, end);
+			if (n == 0 || j + n >= end) {
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+			int p = literalPartition(context, hashArray, j, n, algorithm);
+			if (p < 0 || (partition >= 0 && p != partition)) {
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+			partition = p;
+			int next = hashArray.getType(j + n);
+			if (next == Tokenizer2.RIGHT_PARENTHESES) {
+				return partition;
+			}
+			if (next != Tokenizer2.COMMA) {
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+			j += n + 1;
+		}
+		return ShardingAlgorithm.NO_PARTITION;
+	}
+
+	/**
+	 * insert into tbl (c1, c2) values (v1, v2), (v3, v4) 或者 insert into tbl set c1 = v1
+	 */
+	private static int insertPartition(BufferSQLContext context, HashArray hashArray, int start, int end, TableRoute route,
+			long qualifier, boolean bare) {
+		int i = start;
+		for (; i < end && hashArray.getType(i) != Tokenizer2.LEFT_PARENTHESES; i++) {
+			if (isWord(hashArray, i, TokenHash.SET)) {
+				return assignPartition(context, hashArray, i + 1, end, route, qualifier, bare);
+			}
+			if (isWord(hashArray, i, TokenHash.VALUES) || isWord(hashArray, i, TokenHash.VALUE)
+					|| isWord(hashArray, i, TokenHash.SELECT)) {
+				// 没有列清单
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+		}
+		// 分片字段在列清单中的位置
+		int keyIndex = -1;
+		int column = 0;
+		for (i++; i < end && hashArray.getType(i) != Tokenizer2.RIGHT_PARENTHESES; i++) {
+			if (hashArray.getType(i) == Tokenizer2.COMMA) {
+				column++;
+			} else if (keyIndex < 0 && isKey(hashArray, i, start, route, qualifier, bare)) {
+				keyIndex = column;
+			}
+		}
+		i++;
+		if (keyIndex < 0 || i >= end
+				|| !(isWord(hashArray, i, TokenHash.VALUES) || isWord(hashArray, i, TokenHash.VALUE))) {
+			return ShardingAlgorithm.NO_PARTITION;
+		}
+		int partition = ShardingAlgorithm.NO_PARTITION;
+		for (i++; i < end && hashArray.getType(i) == Tokenizer2.LEFT_PARENTHESES;) {
+			// 本组值中的第 keyIndex 个值
+			int j = i + 1;
+			int depth = 0;
+			for (column = 0; j < end && column < keyIndex; j++) {
+				int type = hashArray.getType(j);
+				if (type == Tokenizer2.LEFT_PARENTHESES) {
+					depth++;
+				} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+					if (depth-- == 0) {
+						return ShardingAlgorithm.NO_PARTITION;
+					}
+				} else if (type == Tokenizer2.COMMA && depth == 0) {
+					column++;
+				}
+			}
+			int n = literalTokens(hashArray, j, end);
+			if (n == 0 || j + n >= end) {
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+			int next = hashArray.getType(j + n);
+			if (next != Tokenizer2.COMMA && next != Tokenizer2.RIGHT_PARENTHESES) {
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+			int p = literalPartition(context, hashArray, j, n, route.algorithm);
+			if (p < 0 || (partition >= 0 && p != partition)) {
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+			partition = p;
+			// 跳到本组值的结束
+			depth = 0;
+			for (j += n; j < end; j++) {
+				int type = hashArray.getType(j);
+				if (type == Tokenizer2.LEFT_PARENTHESES) {
+					depth++;
+				} else if (type == Tokenizer2.RIGHT_PARENTHESES && depth-- == 0) {
+					break;
+				}
+			}
+			i = j + 1;
+			if (i < end && hashArray.getType(i) == Tokenizer2.COMMA) {
+				i++;
+			} else {
+				break;
+			}
+		}
+		return partition;
+	}
+
+	/**
+	 * insert ... set c1 = v1, c2 = v2
+	 */
+	private static int assignPartition(BufferSQLContext context, HashArray hashArray, int i, int end, TableRoute route,
+			long qualifier, boolean bare) {
+		for (int depth = 0, start = i; i < end; i++) {
+			int type = hashArray.getType(i);
+			if (type == Tokenizer2.LEFT_PARENTHESES) {
+				depth++;
+			} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+				depth--;
+			} else if (depth == 0 && isKey(hashArray, i, start, route, qualifier, bare)) {
+				return predicatePartition(context, hashArray, i + 1, end, route.algorithm);
+			}
+		}
+		return ShardingAlgorithm.NO_PARTITION;
+	}
+
+	/**
+	 * 常量占用的 token 数: 数字、字符串为1, 负数为2, 不是常量时为0
+	 */
+	private static int literalTokens(HashArray hashArray, int i, int end) {
+		if (i >= end) {
+			return 0;
+		}
+		int type = hashArray.getType(i);
+		if (type == Tokenizer2.DIGITS || type == Tokenizer2.STRINGS) {
+			return 1;
+		}
+		if (type == Tokenizer2.MINUS && i + 1 < end && hashArray.getType(i + 1) == Tokenizer2.DIGITS) {
+			return 2;
+		}
+		return 0;
+	}
+
+	private static int literalPartition(BufferSQLContext context, HashArray hashArray, int i, int n,
+			ShardingAlgorithm algorithm) {
+		int last = i + n - 1;
+		if (hashArray.getType(last) == Tokenizer2.DIGITS) {
+			// 解析器已经把数字转换为数值
+			if (hashArray.getSize(last) > 18) {
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+			long value = hashArray.getHash(last);
+			return algorithm.calculate(n == 2 ? -value : value);
+		}
+		ByteArrayInterface buffer = context.getBuffer();
+		int pos = hashArray.getPos(i);
+		int size = hashArray.getSize(i);
+		byte quote = buffer.get(pos);
+		if (size < 2 || buffer.get(pos + size - 1) != quote) {
+			return ShardingAlgorithm.NO_PARTITION;
+		}
+		for (int j = pos + 1; j < pos + size - 1; j++) {
+			// 含有转义字符时, 解析器记录的长度不准确, 不做路由
+			if (buffer.get(j) == '\\') {
+				return ShardingAlgorithm.NO_PARTITION;
+			}
+		}
+		return algorithm.calculate(buffer, pos + 1, pos + size - 1);
+	}
+
+	/**
+	 * = 常量之后只能是条件的结束, 不能是运算符或者紧跟的标识符(如 1e5, 0x10)
+	 */
+	private static boolean isValueEnd(HashArray hashArray, int i, int end) {
+		if (i >= end) {
+			return true;
+		}
+		int type = hashArray.getType(i);
+		if (type == Tokenizer2.RIGHT_PARENTHESES || type == Tokenizer2.SEMICOLON || type == Tokenizer2.COMMA) {
+			return true;
+		}
+		return isWordType(type) && hashArray.getPos(i) > hashArray.getPos(i - 1) + hashArray.getSize(i - 1);
+	}
+
+	private static boolean isClauseEnd(HashArray hashArray, int i) {
+		return isWord(hashArray, i, TokenHash.GROUP) || isWord(hashArray, i, TokenHash.ORDER)
+				|| isWord(hashArray, i, TokenHash.LIMIT) || isWord(hashArray, i, TokenHash.HAVING)
+				|| isWord(hashArray, i, TokenHash.UNION) || isWord(hashArray, i, TokenHash.FOR);
+	}
+
+	/**
+	 * 当前表的分片字段: 带表名或别名时需要与当前表一致, 不带时需要语句最外层只有当前表
+	 */
+	private static boolean isKey(HashArray hashArray, int i, int start, TableRoute route, long qualifier, boolean bare) {
+		if (!isWord(hashArray, i, route.keyHash) || hashArray.getSize(i) != route.keySize) {
+			return false;
+		}
+		if (i - 2 >= start && hashArray.getType(i - 1) == Tokenizer2.DOT) {
+			return isWord(hashArray, i - 2, qualifier);
+		}
+		return bare;
+	}
+
+	private static boolean isWord(HashArray hashArray, int i, long hash) {
+		return isWordType(hashArray.getType(i)) && hashArray.getHash(i) == hash;
+	}
+
+	/**
+	 * 关键字和标识符的 type 为解析器计算的 hash, 其他 token 的 type 为 {@link Tokenizer2} 中的常量
+	 */
+	private static boolean isWordType(int type) {
+		return type < 0 || type > Tokenizer2.GREATER_GREATER;
+	}
+
+	/**
+	 * 第 tblIdx 个表的别名的 hash, 没有别名时为表名的 hash
+	 */
+	private static long qualifier(BufferSQLContext context, int tblIdx) {
+		HashArray hashArray = context.getHashArray();
+		int end = Math.min(context.getSQLHashArrayEnd(0), hashArray.getCount());
+		int pos = context.getSQLTablePos(0, tblIdx);
+		int alias = pos + 1;
+		if (alias < end && isWord(hashArray, alias, TokenHash.AS)) {
+			alias++;
+		}
+		if (alias < end && isWordType(hashArray.getType(alias)) && !contains(TABLE_FOLLOW, hashArray.getHash(alias))) {
+			return hashArray.getHash(alias);
+		}
+		return hashArray.getHash(pos);
+	}
+
+	/**
+	 * 第 tblIdx 个表是否是语句最外层唯一的表, 子查询中的表不算
+	 */
+	private static boolean isOnlyTable(BufferSQLContext context, int tblIdx, int tblCount) {
+		if (tblCount == 1) {
+			return true;
+		}
+		HashArray hashArray = context.getHashArray();
+		int start = context.getSQLHashArrayStart(0);
+		if (depth(hashArray, start, context.getSQLTablePos(0, tblIdx)) != 0) {
+			return false;
+		}
+		for (int i = 0; i < tblCount; i++) {
+			if (i != tblIdx && depth(hashArray, start, context.getSQLTablePos(0, i)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * token 所在的括号层数
+	 */
+	private static int depth(HashArray hashArray, int start, int pos) {
+		int depth = 0;
+		for (int i = start; i < pos; i++) {
+			int type = hashArray.getType(i);
+			if (type == Tokenizer2.LEFT_PARENTHESES) {
+				depth++;
+			} else if (type == Tokenizer2.RIGHT_PARENTHESES) {
+				depth--;
+			}
+		}
+		return depth;
+	}
+
+	private static boolean contains(long[] hashes, long hash) {
+		for (long h : hashes) {
+			if (h == hash) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 编译后的表
+	 */
+	static class TableRoute {
+		final long tableHash;
+		final long keyHash;
+		final int keySize;
+		/* 不分片的表为 null */
+		final ShardingAlgorithm algorithm;
+		final MySQLRepBean[] nodes;
+		final long estimatedRows;
+
+		TableRoute(long tableHash, long keyHash, int keySize, ShardingAlgorithm algorithm, MySQLRepBean[] nodes,
+				long estimatedRows) {
+			this.tableHash = tableHash;
+			this.keyHash = keyHash;
+			this.keySize = keySize;
+			this.algorithm = algorithm;
+			this.nodes = nodes;
+			this.estimatedRows = estimatedRows;
+		}
+	}
+}
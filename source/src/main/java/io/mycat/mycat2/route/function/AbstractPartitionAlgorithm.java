@@ -0,0 +1,82 @@
+package io.mycat.mycat2.route.function;
+
+import java.util.Map;
+
+import io.mycat.mycat2.route.ShardingAlgorithm;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.DefaultByteArray;
+
+/**
+ * 分片算法的公共方法. 默认字符串常量是整数时按整数计算
+ */
+public abstract class AbstractPartitionAlgorithm implements ShardingAlgorithm {
+
+	/**
+	 * 不是整数
+	 */
+	protected static final long NOT_NUMBER = Long.MIN_VALUE;
+
+	@Override
+	public int calculate(ByteArrayInterface buffer, int start, int end) {
+		long value = parseLong(buffer, start, end);
+		return value == NOT_NUMBER ? NO_PARTITION : calculate(value);
+	}
+
+	/**
+	 * 解析十进制整数, 不是整数或者超出范围时返回 {@link #NOT_NUMBER}
+	 */
+	protected static long parseLong(ByteArrayInterface buffer, int start, int end) {
+		boolean negative = start < end && buffer.get(start) == '-';
+		int i = negative ? start + 1 : start;
+		if (i >= end || end - i > 18) {
+			return NOT_NUMBER;
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return NOT_NUMBER;
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * 整数的十进制字节, 用于按字符串计算的算法处理整数常量
+	 */
+	protected static ByteArrayInterface digits(long value) {
+		byte[] bytes = new byte[20];
+		int pos = bytes.length;
+		long rest = Math.abs(value);
+		do {
+			bytes[--pos] = (byte) ('0' + rest % 10);
+			rest /= 10;
+		} while (rest > 0);
+		if (value < 0) {
+			bytes[--pos] = '-';
+		}
+		byte[] result = new byte[bytes.length - pos];
+		System.arraycopy(bytes, pos, result, 0, result.length);
+		return new DefaultByteArray(result);
+	}
+
+	protected static String param(Map<String, String> params, String name) {
+		// yaml 中的数字会被解析为 Integer, 这里统一转换为字符串
+		Object value = params == null ? null : ((Map<String, ?>) params).get(name);
+		return value == null ? null : String.valueOf(value).trim();
+	}
+
+	protected static String requiredParam(Map<String, String> params, String name) {
+		String value = param(params, name);
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("sharding rule param " + name + " is required");
+		}
+		return value;
+	}
+
+	protected static int intParam(Map<String, String> params, String name, int defaultValue) {
+		String value = param(params, name);
+		return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+	}
+}
@@ -0,0 +1,118 @@
+package io.mycat.mycat2.route.function;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+
+/**
+ * 按日期分片, 从开始日期起每 partitionDay 天一个分片.
+ * 直接从 'yyyy-MM-dd[ HH:mm:ss]' 格式的字符串常量中读取年月日计算天数, 整数常量按 yyyyMMdd 处理
+ * <pre>
+ * params:
+ *   beginDate: 2017-01-01
+ *   partitionDay: 每个分片的天数, 默认1
+ *   endDate: 可选, 设置后超过结束日期的数据从第一个分片重新开始
+ * </pre>
+ */
+public class PartitionByDate extends AbstractPartitionAlgorithm {
+
+	private final long beginDay;
+	private final int partitionDay;
+	/* 设置了结束日期时的分片数量, 否则为0 */
+	private final int count;
+
+	public PartitionByDate(Map<String, String> params) {
+		this.beginDay = LocalDate.parse(requiredParam(params, "beginDate")).toEpochDay();
+		this.partitionDay = intParam(params, "partitionDay", 1);
+		if (partitionDay <= 0) {
+			throw new IllegalArgumentException("sharding rule param partitionDay must be positive " + partitionDay);
+		}
+		String endDate = param(params, "endDate");
+		if (endDate == null || endDate.isEmpty()) {
+			this.count = 0;
+		} else {
+			long endDay = LocalDate.parse(endDate).toEpochDay();
+			if (endDay < beginDay) {
+				throw new IllegalArgumentException("endDate is before beginDate " + endDate);
+			}
+			this.count = (int) ((endDay - beginDay) / partitionDay) + 1;
+		}
+	}
+
+	@Override
+	public int calculate(long value) {
+		if (value < 10000101L || value > 99991231L) {
+			return NO_PARTITION;
+		}
+		return partition((int) (value / 10000), (int) (value / 100 % 100), (int) (value % 100));
+	}
+
+	@Override
+	public int calculate(ByteArrayInterface buffer, int start, int end) {
+		if (end - start < 10 || !isSeparator(buffer.get(start + 4)) || buffer.get(start + 7) != buffer.get(start + 4)) {
+			return NO_PARTITION;
+		}
+		if (end - start > 10 && buffer.get(start + 10) != ' ' && buffer.get(start + 10) != 'T') {
+			return NO_PARTITION;
+		}
+		int year = readInt(buffer, start, 4);
+		int month = readInt(buffer, start + 5, 2);
+		int day = readInt(buffer, start + 8, 2);
+		if (year < 0 || month < 0 || day < 0) {
+			return NO_PARTITION;
+		}
+		return partition(year, month, day);
+	}
+
+	private int partition(int year, int month, int day) {
+		if (month < 1 || month > 12 || day < 1 || day > 31) {
+			return NO_PARTITION;
+		}
+		long days = epochDay(year, month, day) - beginDay;
+		if (days < 0) {
+			return NO_PARTITION;
+		}
+		long partition = days / partitionDay;
+		return (int) (count > 0 ? partition % count : partition);
+	}
+
+	private static boolean isSeparator(byte c) {
+		return c == '-' || c == '/';
+	}
+
+	private static int readInt(ByteArrayInterface buffer, int start, int length) {
+		int value = 0;
+		for (int i = start; i < start + length; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * 与 LocalDate.toEpochDay 相同的计算, 不创建对象
+	 */
+	static long epochDay(int year, int month, int day) {
+		long y = year;
+		long total = 365 * y;
+		if (y >= 0) {
+			total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+		} else {
+			total -= y / -4 - y / -100 + y / -400;
+		}
+		total += (367 * month - 362) / 12;
+		total += day - 1;
+		if (month > 2) {
+			total--;
+			boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+			if (!leap) {
+				total--;
+			}
+		}
+		return total - 719528;
+	}
+}
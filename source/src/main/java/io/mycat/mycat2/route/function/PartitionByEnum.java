@@ -0,0 +1,177 @@
+package io.mycat.mycat2.route.function;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+
+/**
+ * 枚举分片, 每个值对应一个分片.
+ * 整数类型编译为排序后的数组二分查找, 字符串类型编译为按字节 hash 的开放寻址表, 查找时直接比较 sql 中的字节
+ * <pre>
+ * params:
+ *   mapping: 10000=0,10010=1     或者 mapFile: 每行一个 值=分片下标 的文件
+ *   type: 0 整数(默认), 1 字符串
+ *   defaultNode: 不在枚举中的值对应的分片, 默认无法确定分片
+ * </pre>
+ */
+public class PartitionByEnum extends AbstractPartitionAlgorithm {
+
+	private final boolean stringType;
+	private final int defaultNode;
+
+	/* 整数类型 */
+	private long[] longKeys;
+	private int[] longNodes;
+
+	/* 字符串类型, 开放寻址表, slots 中存放 keys 的下标+1 */
+	private byte[][] keys;
+	private int[] keyNodes;
+	private int[] slots;
+	private int mask;
+
+	public PartitionByEnum(Map<String, String> params) {
+		this.stringType = intParam(params, "type", 0) == 1;
+		this.defaultNode = intParam(params, "defaultNode", NO_PARTITION);
+		Map<String, Integer> mapping = loadMapping(params);
+		if (stringType) {
+			compileStrings(mapping);
+		} else {
+			compileLongs(mapping);
+		}
+	}
+
+	private static Map<String, Integer> loadMapping(Map<String, String> params) {
+		Map<String, Integer> mapping = new LinkedHashMap<>();
+		String inline = param(params, "mapping");
+		if (inline != null && !inline.isEmpty()) {
+			for (String item : inline.split(",")) {
+				addMapping(mapping, item);
+			}
+			return mapping;
+		}
+		String mapFile = requiredParam(params, "mapFile");
+		try (InputStream in = openMapFile(mapFile);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					addMapping(mapping, line);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("read sharding map file error " + mapFile, e);
+		}
+		return mapping;
+	}
+
+	private static InputStream openMapFile(String mapFile) throws IOException {
+		InputStream in = PartitionByEnum.class.getClassLoader().getResourceAsStream(mapFile);
+		return in != null ? in : new FileInputStream(mapFile);
+	}
+
+	private static void addMapping(Map<String, Integer> mapping, String item) {
+		int eq = item.lastIndexOf('=');
+		if (eq <= 0) {
+			throw new IllegalArgumentException("invalid enum mapping " + item);
+		}
+		mapping.put(item.substring(0, eq).trim(), Integer.parseInt(item.substring(eq + 1).trim()));
+	}
+
+	private void compileLongs(Map<String, Integer> mapping) {
+		long[][] entries = new long[mapping.size()][];
+		int i = 0;
+		for (Map.Entry<String, Integer> entry : mapping.entrySet()) {
+			entries[i++] = new long[] { Long.parseLong(entry.getKey()), entry.getValue() };
+		}
+		Arrays.sort(entries, (e1, e2) -> Long.compare(e1[0], e2[0]));
+		longKeys = new long[entries.length];
+		longNodes = new int[entries.length];
+		for (i = 0; i < entries.length; i++) {
+			longKeys[i] = entries[i][0];
+			longNodes[i] = (int) entries[i][1];
+		}
+	}
+
+	private void compileStrings(Map<String, Integer> mapping) {
+		int size = mapping.size();
+		keys = new byte[size][];
+		keyNodes = new int[size];
+		int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+		slots = new int[capacity];
+		mask = capacity - 1;
+		int i = 0;
+		for (Map.Entry<String, Integer> entry : mapping.entrySet()) {
+			byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			keys[i] = key;
+			keyNodes[i] = entry.getValue();
+			int slot = hash(key) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = ++i;
+		}
+	}
+
+	@Override
+	public int calculate(long value) {
+		if (stringType) {
+			ByteArrayInterface bytes = digits(value);
+			return calculate(bytes, 0, bytes.length());
+		}
+		int idx = Arrays.binarySearch(longKeys, value);
+		return idx >= 0 ? longNodes[idx] : defaultNode;
+	}
+
+	@Override
+	public int calculate(ByteArrayInterface buffer, int start, int end) {
+		if (!stringType) {
+			return super.calculate(buffer, start, end);
+		}
+		int slot = hash(buffer, start, end) & mask;
+		int idx;
+		while ((idx = slots[slot]) != 0) {
+			if (matches(keys[idx - 1], buffer, start, end)) {
+				return keyNodes[idx - 1];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return defaultNode;
+	}
+
+	private static boolean matches(byte[] key, ByteArrayInterface buffer, int start, int end) {
+		if (key.length != end - start) {
+			return false;
+		}
+		for (int i = 0; i < key.length; i++) {
+			if (key[i] != buffer.get(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(byte[] key) {
+		int hash = 0x811C9DC5;
+		for (byte b : key) {
+			hash = (hash ^ (b & 0xFF)) * 0x01000193;
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int hash(ByteArrayInterface buffer, int start, int end) {
+		int hash = 0x811C9DC5;
+		for (int i = start; i < end; i++) {
+			hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+		}
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,42 @@
+package io.mycat.mycat2.route.function;
+
+import java.util.Map;
+
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+
+/**
+ * 取模分片. 整数按值取模, 其他字符串按字节 hash 后取模
+ * <pre>
+ * params:
+ *   count: 分片数量
+ * </pre>
+ */
+public class PartitionByMod extends AbstractPartitionAlgorithm {
+
+	private final int count;
+
+	public PartitionByMod(Map<String, String> params) {
+		this.count = Integer.parseInt(requiredParam(params, "count"));
+		if (count <= 0) {
+			throw new IllegalArgumentException("sharding rule param count must be positive " + count);
+		}
+	}
+
+	@Override
+	public int calculate(long value) {
+		return (int) Math.floorMod(value, (long) count);
+	}
+
+	@Override
+	public int calculate(ByteArrayInterface buffer, int start, int end) {
+		long value = parseLong(buffer, start, end);
+		if (value != NOT_NUMBER) {
+			return calculate(value);
+		}
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + (buffer.get(i) & 0xFF);
+		}
+		return Math.floorMod(hash, count);
+	}
+}
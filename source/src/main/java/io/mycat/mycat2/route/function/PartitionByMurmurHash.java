@@ -0,0 +1,144 @@
+package io.mycat.mycat2.route.function;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import io.mycat.mycat2.sqlparser.byteArrayInterface.ByteArrayInterface;
+
+/**
+ * 一致性 hash 分片. 每个分片在 hash 环上有 count * virtualBucketTimes 个虚拟节点,
+ * 编译为排序后的数组, 对常量做 murmur3 hash 后二分查找顺时针方向的第一个虚拟节点. 整数常量按十进制字符串计算.
+ * 虚拟节点和 hash 与 1.x 版本相同(guava murmur3_32 的 hashUnencodedChars, 按 UTF-16 字符计算), 原有数据的分布不变
+ * <pre>
+ * params:
+ *   count: 分片数量
+ *   virtualBucketTimes: 每个分片的虚拟节点数, 默认160
+ *   seed: hash 种子, 默认0
+ * </pre>
+ */
+public class PartitionByMurmurHash extends AbstractPartitionAlgorithm {
+
+	private final int seed;
+	private final int[] ring;
+	private final int[] ringNodes;
+
+	public PartitionByMurmurHash(Map<String, String> params) {
+		int count = Integer.parseInt(requiredParam(params, "count"));
+		int virtualBucketTimes = intParam(params, "virtualBucketTimes", 160);
+		if (count <= 0 || virtualBucketTimes <= 0) {
+			throw new IllegalArgumentException("sharding rule param count and virtualBucketTimes must be positive");
+		}
+		this.seed = intParam(params, "seed", 0);
+		HashFunction hashFunction = Hashing.murmur3_32(seed);
+		long[] points = new long[count * virtualBucketTimes];
+		int n = 0;
+		for (int node = 0; node < count; node++) {
+			// 1.x 的虚拟节点名在同一个 StringBuilder 上追加: SHARD-0-NODE-0, SHARD-0-NODE-0-NODE-1, ...
+			StringBuilder shardName = new StringBuilder("SHARD-").append(node);
+			for (int i = 0; i < virtualBucketTimes; i++) {
+				int hash = hashFunction.hashUnencodedChars(shardName.append("-NODE-").append(i)).asInt();
+				// 高32位为 hash, 低32位为加入的顺序
+				points[n] = ((long) hash << 32) | n;
+				n++;
+			}
+		}
+		Arrays.sort(points);
+		// 1.x 放入 TreeMap, hash 相同时后加入的虚拟节点覆盖先加入的
+		int size = 0;
+		for (int i = 0; i < points.length; i++) {
+			if (i + 1 == points.length || (int) (points[i] >> 32) != (int) (points[i + 1] >> 32)) {
+				points[size++] = points[i];
+			}
+		}
+		ring = new int[size];
+		ringNodes = new int[size];
+		for (int i = 0; i < size; i++) {
+			ring[i] = (int) (points[i] >> 32);
+			ringNodes[i] = (int) points[i] / virtualBucketTimes;
+		}
+	}
+
+	@Override
+	public int calculate(long value) {
+		ByteArrayInterface bytes = digits(value);
+		return calculate(bytes, 0, bytes.length());
+	}
+
+	@Override
+	public int calculate(ByteArrayInterface buffer, int start, int end) {
+		int hash = murmur3(buffer, start, end, seed);
+		// 第一个不小于 hash 的虚拟节点, 超过最后一个时回到环的开始
+		int low = 0;
+		int high = ring.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (ring[mid] < hash) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return ringNodes[low == ring.length ? 0 : low];
+	}
+
+	/**
+	 * 与 guava Hashing.murmur3_32(seed).hashUnencodedChars 相同的 hash.
+	 * utf8 字节直接解码为 UTF-16 字符, 每两个字符组成一个32位的块, 不生成中间的字符串
+	 */
+	static int murmur3(ByteArrayInterface buffer, int start, int end, int seed) {
+		int h = seed;
+		int chars = 0;
+		// 块中还没有配对的第一个字符
+		int first = 0;
+		int i = start;
+		while (i < end) {
+			int b = buffer.get(i) & 0xFF;
+			int size = b < 0x80 ? 1 : b < 0xE0 ? 2 : b < 0xF0 ? 3 : 4;
+			int codePoint = size == 1 ? b : b & (0x7F >>> size);
+			for (int j = 1; j < size && i + j < end; j++) {
+				codePoint = codePoint << 6 | (buffer.get(i + j) & 0x3F);
+			}
+			i += size;
+			if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				// 补充平面的字符为两个代理字符
+				int high = Character.highSurrogate(codePoint);
+				if ((chars++ & 1) == 0) {
+					first = high;
+				} else {
+					h = mixH(h, first | high << 16);
+				}
+				codePoint = Character.lowSurrogate(codePoint);
+			}
+			if ((chars++ & 1) == 0) {
+				first = codePoint;
+			} else {
+				h = mixH(h, first | codePoint << 16);
+			}
+		}
+		if ((chars & 1) == 1) {
+			h ^= mixK(first);
+		}
+		// 长度按字节数计算, 每个字符2个字节
+		h ^= chars * 2;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static int mixH(int h, int k) {
+		h ^= mixK(k);
+		return Integer.rotateLeft(h, 13) * 5 + 0xE6546B64;
+	}
+
+	private static int mixK(int k) {
+		k *= 0xCC9E2D51;
+		k = Integer.rotateLeft(k, 15);
+		return k * 0x1B873593;
+	}
+}
@@ -0,0 +1,66 @@
+package io.mycat.mycat2.route.function;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按整数范围分片, 编译为按开始值排序的数组, 二分查找
+ * <pre>
+ * params:
+ *   ranges: 0-999999=0,1000000-1999999=1   开始值-结束值(包含)=分片下标
+ *   defaultNode: 不在任何范围内时的分片, 默认无法确定分片
+ * </pre>
+ */
+public class PartitionByRange extends AbstractPartitionAlgorithm {
+
+	private final long[] starts;
+	private final long[] ends;
+	private final int[] nodes;
+	private final int defaultNode;
+
+	public PartitionByRange(Map<String, String> params) {
+		List<long[]> ranges = new ArrayList<>();
+		for (String item : requiredParam(params, "ranges").split(",")) {
+			int eq = item.lastIndexOf('=');
+			// 开始值可能是负数, 从第二个字符开始查找分隔的 -
+			int dash = item.indexOf('-', 1);
+			if (eq < 0 || dash < 0 || dash > eq) {
+				throw new IllegalArgumentException("invalid range " + item);
+			}
+			ranges.add(new long[] { Long.parseLong(item.substring(0, dash).trim()),
+					Long.parseLong(item.substring(dash + 1, eq).trim()), Integer.parseInt(item.substring(eq + 1).trim()) });
+		}
+		ranges.sort((r1, r2) -> Long.compare(r1[0], r2[0]));
+		int size = ranges.size();
+		starts = new long[size];
+		ends = new long[size];
+		nodes = new int[size];
+		for (int i = 0; i < size; i++) {
+			long[] range = ranges.get(i);
+			if (range[1] < range[0] || (i > 0 && range[0] <= ends[i - 1])) {
+				throw new IllegalArgumentException("invalid or overlapping range " + range[0] + "-" + range[1]);
+			}
+			starts[i] = range[0];
+			ends[i] = range[1];
+			nodes[i] = (int) range[2];
+		}
+		defaultNode = intParam(params, "defaultNode", NO_PARTITION);
+	}
+
+	@Override
+	public int calculate(long value) {
+		int low = 0;
+		int high = starts.length - 1;
+		// 最后一个开始值不大于 value 的范围
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high >= 0 && value <= ends[high] ? nodes[high] : defaultNode;
+	}
+}
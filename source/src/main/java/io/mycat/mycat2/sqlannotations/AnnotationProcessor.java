@@ -26,6 +26,7 @@ public class AnnotationProcessor {
     private static final AnnotationProcessor ourInstance = new AnnotationProcessor();
     private static final String ACTIONS_PATH = "actions.yml";
     private static final String ANNOTATIONS_PATH = "annotations.yml";
+    private static final int[] EMPTY_TABLES = new int[0];
     private static WatchService watcher;
 
     public static AnnotationProcessor getInstance() {
@@ -45,6 +46,16 @@ public class AnnotationProcessor {
         ProxyRuntime.INSTANCE.addBusinessJob(AnnotationProcessor::listen);//todo 检查这个线程池是否妥当
     }
 
+    /**
+     * 语句是否可能匹配到动态注解. 只按sql类型判断, 不收集匹配结果
+     * @param context
+     * @return 返回false时 parse 不会收集到任何action
+     */
+    public boolean mayMatch(BufferSQLContext context) {
+        DynamicAnnotationManager manager = dynamicAnnotationManager.get();
+        return context.getTableCount() != 0 && manager != null && manager.isAnnotated(context.getSQLType());
+    }
+
     /**
      * 返回false代表没有匹配的action
      * @param context
@@ -59,15 +70,15 @@ public class AnnotationProcessor {
             int[] intHashTables;
             if (sqltype < 15 && sqltype > 10) {   //TODO  这里可能有更多的类型
                 int size = context.getTableCount();
-                intHashTables = new int[size];
+                intHashTables = session.sqlAnnotationChain.tableHashes(size);
                 for (int j = 0; j < size; j++) {
                     intHashTables[j] = context.getTableIntHash(j);
                 }
             }else{
-            	intHashTables = new int[0];
+            	intHashTables = EMPTY_TABLES;
             }
             try {
-                dynamicAnnotationManager.get().collect(schemaName,sqltype, intHashTables, context, collect);
+                dynamicAnnotationManager.get().collect(schemaName,sqltype, intHashTables, context, collect);
             return true;
             } catch (Exception e) {
                 e.printStackTrace();
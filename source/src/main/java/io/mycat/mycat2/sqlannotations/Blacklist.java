@@ -34,8 +34,9 @@ public class Blacklist extends SQLAnnotation{
 
     @Override
     public boolean apply(MycatSession context,SQLAnnotationChain chain) {
-    	for (SQLAnnotation f : sqlAnnotations) {
-    		 if (!f.apply(context,chain)) {
+    	int size = sqlAnnotations.size();
+    	for (int i = 0; i < size; i++) {
+    		 if (!sqlAnnotations.get(i).apply(context,chain)) {
     			 return false;
     		 }
     	}
@@ -234,6 +234,72 @@ public class BufferSQLContext {
 
     }
 
+    /**
+     * sql 在 hash array 中的起始位置, 第一条 sql 跳过开头的注解
+     */
+    public int getSQLHashArrayStart(int sqlIdx) {
+        int start = (int) (sqlInfoArray[sqlIdx] >>> 50) & 0x3FFF;
+        if (sqlIdx <= 0) {
+            start += (int) (sqlInfoArray[sqlIdx] >> 42) & 0xFF;
+        }
+        return start;
+    }
+
+    /**
+     * sql 在 hash array 中的结束位置(不包含)
+     */
+    public int getSQLHashArrayEnd(int sqlIdx) {
+        return ((int) (sqlInfoArray[sqlIdx] >>> 50) & 0x3FFF) + ((int) (sqlInfoArray[sqlIdx] >> 20) & 0x3FFF);
+    }
+
+    /**
+     * sql 中第 tblIdx 个表名前的 schema 名, 没有指定 schema 时返回null
+     */
+    public String getSQLSchemaName(int sqlIdx, int tblIdx) {
+        if (sqlIdx < totalSQLCount) {
+            int sqlInfo = (int)sqlInfoArray[sqlIdx];
+            int tblResultOffset = (sqlInfo >>> 8) & 0xFFF;
+            int tblResultCount = sqlInfo & 0xFF;
+            if (tblIdx < tblResultCount) {
+                int hashArrayIdx = tblResult[tblResultOffset + (tblIdx << 1)];
+                if (hashArrayIdx != 0) {
+                    return buffer.getString(hashArray.getPos(hashArrayIdx), hashArray.getSize(hashArrayIdx));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * sql 中第 tblIdx 个表名的 hash, 不存在时返回0
+     */
+    public long getSQLTableHash(int sqlIdx, int tblIdx) {
+        if (sqlIdx < totalSQLCount) {
+            int sqlInfo = (int)sqlInfoArray[sqlIdx];
+            int tblResultOffset = (sqlInfo >>> 8) & 0xFFF;
+            int tblResultCount = sqlInfo & 0xFF;
+            if (tblIdx < tblResultCount) {
+                return hashArray.getHash(tblResult[tblResultOffset + (tblIdx << 1) + 1]);
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * sql 中第 tblIdx 个表名在 hash array 中的位置, 不存在时返回-1
+     */
+    public int getSQLTablePos(int sqlIdx, int tblIdx) {
+        if (sqlIdx < totalSQLCount) {
+            int sqlInfo = (int)sqlInfoArray[sqlIdx];
+            int tblResultOffset = (sqlInfo >>> 8) & 0xFFF;
+            int tblResultCount = sqlInfo & 0xFF;
+            if (tblIdx < tblResultCount) {
+                return tblResult[tblResultOffset + (tblIdx << 1) + 1];
+            }
+        }
+        return -1;
+    }
+
     public void setSQLFinished(int curHashPos) {
         if (preHashArrayPos < curHashPos - 1) {
             int sqlSize = curHashPos - preHashArrayPos;
@@ -509,7 +509,10 @@ public class BufferSQLParser {
                     long hashValue;
                     if (((hashValue = hashArray.getHash(pos)) == TokenHash.DESC) ||
                             hashValue == TokenHash.DESCRIBE) {
-                        context.setSQLType(BufferSQLContext.DESCRIBE_SQL);
+                        //order by 中的 desc 不改变语句类型
+                        if (context.getCurSQLType() == 0) {
+                            context.setSQLType(BufferSQLContext.DESCRIBE_SQL);
+                        }
                         pos++;
                     }
                     break;
@@ -634,7 +637,9 @@ public class BufferSQLParser {
         this.byteBufferArray.setSrc(src);
         this.byteBufferArray.setOffset(offset);
         this.byteBufferArray.setLength(length);
-        System.out.println("Recieved SQL : "+this.byteBufferArray.getString(offset, length));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Recieved SQL : {}", this.byteBufferArray.getString(offset, length));
+        }
         sql = this.byteBufferArray;
         hashArray = context.getHashArray();
         hashArray.init();
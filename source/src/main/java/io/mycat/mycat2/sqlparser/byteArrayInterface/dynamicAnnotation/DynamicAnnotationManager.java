@@ -16,6 +16,14 @@ public interface DynamicAnnotationManager {
 
     public Runnable process(int schema, int sqltype, int[] tables, BufferSQLContext context) throws Exception;
 
+    /**
+     * 是否有该sql类型可能匹配的动态注解, 为 false 时 collect 不会收集到任何注解
+     *
+     * @param sqltype
+     * @return
+     */
+    public boolean isAnnotated(int sqltype);
+
     /**
      * 动态注解先匹配chema的名字,再sql类型，在匹配表名，在匹配条件
      *
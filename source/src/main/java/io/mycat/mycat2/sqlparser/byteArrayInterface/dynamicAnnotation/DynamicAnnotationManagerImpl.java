@@ -6,7 +6,10 @@ import io.mycat.mycat2.sqlparser.BufferSQLContext;
 import io.mycat.mycat2.sqlparser.BufferSQLParser;
 import io.mycat.mycat2.sqlparser.byteArrayInterface.dynamicAnnotation.impl.ActonFactory;
 import io.mycat.mycat2.sqlparser.byteArrayInterface.dynamicAnnotation.impl.DynamicAnnotation;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.dynamicAnnotation.impl.DynamicAnnotationKey;
 import io.mycat.mycat2.sqlparser.byteArrayInterface.dynamicAnnotation.impl.DynamicAnnotationKeyRoute;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.dynamicAnnotation.impl.SQLType;
+import io.mycat.util.IntObjectHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,7 +17,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -34,19 +36,40 @@ public class DynamicAnnotationManagerImpl implements DynamicAnnotationManager {
     public static final String match_tables = "tables";
     public static final String match_actions = "actions";
     final DynamicAnnotationKeyRoute route;
-    final Map<Integer, DynamicAnnotation[]> cache;
-    final Map<Integer, List<SQLAnnotationList>> schemaWithSQLtypeFunction = new HashMap<>();
+    /**
+     * 各个 reactor 线程共用, 写时复制, 查找时不加锁也不装箱
+     */
+    private volatile IntObjectHashMap<DynamicAnnotation[]> cache = new IntObjectHashMap<>();
+    final IntObjectHashMap<List<SQLAnnotationList>> schemaWithSQLtypeFunction = new IntObjectHashMap<>();
+    /**
+     * 按sql类型记录是否配置了动态注解, 加载时计算
+     */
+    private final boolean[] annotatedSQLTypes = new boolean[256];
     SQLAnnotationList globalSQLAnnotationList = null;
     private static final Logger logger = LoggerFactory.getLogger(DynamicAnnotationManagerImpl.class);
-    public DynamicAnnotationManagerImpl(String actionsPath, String annotationsPath, Map<Integer, DynamicAnnotation[]> cache) throws Exception {
+    public DynamicAnnotationManagerImpl(String actionsPath, String annotationsPath) throws Exception {
        try {
            ActonFactory actonFactory = new ActonFactory(actionsPath);
            Map<String, SQLAnnotation> globalActionList = new HashMap<>();
-           this.route = new DynamicAnnotationKeyRoute(AnnotationsYamlParser.parse(annotationsPath, actonFactory, schemaWithSQLtypeFunction, globalActionList));
+           Map<Integer, List<SQLAnnotationList>> globalFunctions = new HashMap<>();
+           Map<DynamicAnnotationKey, DynamicAnnotation> annotations = AnnotationsYamlParser.parse(annotationsPath, actonFactory, globalFunctions, globalActionList);
+           this.route = new DynamicAnnotationKeyRoute(annotations);
+           globalFunctions.forEach(schemaWithSQLtypeFunction::put);
            SQLAnnotationList global = new SQLAnnotationList();
            global.setSqlAnnotations(globalActionList.values().stream().collect(Collectors.toList()));
            globalSQLAnnotationList = global;
-           this.cache = cache;
+           if (!globalActionList.isEmpty()) {
+               Arrays.fill(annotatedSQLTypes, true);
+           }
+           // schemaWithSQLtypeFunction 的 key 是 schema 与 sql类型的hash, 无法还原, 按所有类型处理
+           if (!globalFunctions.isEmpty()) {
+               for (SQLType type : SQLType.values()) {
+                   annotatedSQLTypes[type.getValue()] = true;
+               }
+           }
+           for (DynamicAnnotationKey key : annotations.keySet()) {
+               annotatedSQLTypes[key.getSqlType() & 0xff] = true;
+           }
        }catch (Exception e){
            e.printStackTrace();
            logger.error("动态注解语法错误");
@@ -54,6 +77,11 @@ public class DynamicAnnotationManagerImpl implements DynamicAnnotationManager {
        }
     }
 
+    @Override
+    public boolean isAnnotated(int sqltype) {
+        return annotatedSQLTypes[sqltype & 0xff];
+    }
+
     public DynamicAnnotation[] getAnnotations(int schema, int sqltype, int[] tables) throws Exception {
         DynamicAnnotation[] proto = route.front(schema, sqltype, tables);
         return proto;
@@ -97,7 +125,7 @@ public class DynamicAnnotationManagerImpl implements DynamicAnnotationManager {
             try {
                 annotation.match.pick(0, context);
                 if (annotation.match.isComplete()) {
-                    list.addAll(annotation.actions.getSqlAnnotations());
+                    addAll(annotation.actions.getSqlAnnotations(), list);
                 }
             } catch (Exception e) {
             	logger.error(annotation.toString());
@@ -115,19 +143,7 @@ public class DynamicAnnotationManagerImpl implements DynamicAnnotationManager {
 
     public Runnable process(int schema, int sqltype, int[] tables, BufferSQLContext context) throws Exception {
         Arrays.sort(tables);
-        DynamicAnnotation[] annotations;
-        int hash = getHash(schema, sqltype, tables);
-        annotations = cache.get(hash);
-        if (annotations == null) {
-            annotations = getAnnotations(schema, sqltype, tables);
-            if (annotations == null) {
-
-            } else {
-                cache.put(hash, annotations);
-            }
-
-        }
-        DynamicAnnotation[] res = annotations;
+        DynamicAnnotation[] res = getCachedAnnotations(schema, sqltype, tables);
         List<SQLAnnotationList> schemaWithSQLtypeFunction = getSchemaWithSQLtypeFunction(schema, sqltype);
         if (res == null && schemaWithSQLtypeFunction == null) {
             return () -> {
@@ -150,19 +166,7 @@ public class DynamicAnnotationManagerImpl implements DynamicAnnotationManager {
 
     public void collectInSQLAnnotationList(int schema, int sqltype, int[] tables, BufferSQLContext context, List<SQLAnnotationList> collect) throws Exception {
         Arrays.sort(tables);
-        DynamicAnnotation[] annotations;
-        int hash = getHash(schema, sqltype, tables);
-        annotations = cache.get(hash);
-        if (annotations == null) {
-            annotations = getAnnotations(schema, sqltype, tables);
-            if (annotations == null) {
-
-            } else {
-                cache.put(hash, annotations);
-            }
-
-        }
-        DynamicAnnotation[] res = annotations;
+        DynamicAnnotation[] res = getCachedAnnotations(schema, sqltype, tables);
         List<SQLAnnotationList> schemaWithSQLtypeFunction = getSchemaWithSQLtypeFunction(schema, sqltype);
         collect.add(globalSQLAnnotationList);
         int size;
@@ -186,19 +190,7 @@ public class DynamicAnnotationManagerImpl implements DynamicAnnotationManager {
     }
     public void collect(int schema, int sqltype, int[] tables, BufferSQLContext context, List<SQLAnnotation> collect) throws Exception {
         Arrays.sort(tables);
-        DynamicAnnotation[] annotations;
-        int hash = getHash(schema, sqltype, tables);
-        annotations = cache.get(hash);
-        if (annotations == null) {
-            annotations = getAnnotations(schema, sqltype, tables);
-            if (annotations == null) {
-
-            } else {
-                cache.put(hash, annotations);
-            }
-
-        }
-        DynamicAnnotation[] res = annotations;
+        DynamicAnnotation[] res = getCachedAnnotations(schema, sqltype, tables);
         int size=globalSQLAnnotationList.getSqlAnnotations().size();
         for (int i = 0; i <size ; i++) {
             collect.add(globalSQLAnnotationList.getSqlAnnotations().get(i));
@@ -211,17 +203,27 @@ public class DynamicAnnotationManagerImpl implements DynamicAnnotationManager {
         } else if (res == null && globalFunction != null) {
             size = globalFunction.size();
             for (int i = 0; i < size; i++) {
-                collect.addAll(globalFunction.get(i).getSqlAnnotations());
+                addAll(globalFunction.get(i).getSqlAnnotations(), collect);
             }
         }else {
             size = globalFunction.size();
             for (int i = 0; i < size; i++) {
-                collect.addAll(globalFunction.get(i).getSqlAnnotations());
+                addAll(globalFunction.get(i).getSqlAnnotations(), collect);
             }
             collectAnnotationsListSQLAnnotation(res, context, collect);
         }
 
     }
+    /**
+     * 按下标逐个添加, 不经过 ArrayList.addAll 的 toArray 复制
+     */
+    private static void addAll(List<SQLAnnotation> from, List<SQLAnnotation> to) {
+        int size = from.size();
+        for (int i = 0; i < size; i++) {
+            to.add(from.get(i));
+        }
+    }
+
     private static void doList(List<SQLAnnotationList> globalFunction, BufferSQLContext args) {
         int size = globalFunction.size();
         for (int i = 0; i < size; i++) {
@@ -249,9 +251,20 @@ public class DynamicAnnotationManagerImpl implements DynamicAnnotationManager {
 //        doAnnotations(res, context);
 //    }
 
-    private DynamicAnnotationManagerImpl(Map<Integer, DynamicAnnotation[]> cache, DynamicAnnotationKeyRoute route) {
-        this.cache = cache;
-        this.route = route;
+    private DynamicAnnotation[] getCachedAnnotations(int schema, int sqltype, int[] tables) throws Exception {
+        int hash = getHash(schema, sqltype, tables);
+        DynamicAnnotation[] annotations = cache.get(hash);
+        if (annotations == null) {
+            annotations = getAnnotations(schema, sqltype, tables);
+            if (annotations != null) {
+                synchronized (this) {
+                    IntObjectHashMap<DynamicAnnotation[]> copy = new IntObjectHashMap<>(cache);
+                    copy.put(hash, annotations);
+                    cache = copy;
+                }
+            }
+        }
+        return annotations;
     }
 
     public static int getHash(int schema, int sqltype, int[] tables) {
@@ -264,15 +277,13 @@ public class DynamicAnnotationManagerImpl implements DynamicAnnotationManager {
     public static int getGlobalFunctionHash(int schema, int sqltype) {
         int hash = schema;
         hash = hash * 31 + sqltype;
-        logger.debug("schema is {},sqltype is {},hash is {}",schema,sqltype,hash);
+        if (logger.isDebugEnabled()) {
+            logger.debug("schema is {},sqltype is {},hash is {}",schema,sqltype,hash);
+        }
         return hash;
     }
 
 
-    public DynamicAnnotationManagerImpl(String actionsPath, String annotationsPath) throws Exception {
-        this(actionsPath, annotationsPath, new ConcurrentHashMap<>());
-    }
-
     public static void main(String[] args) throws Exception {
         DynamicAnnotationManagerImpl manager = new DynamicAnnotationManagerImpl("actions.yml", "annotations.yml");
         BufferSQLContext context = new BufferSQLContext();
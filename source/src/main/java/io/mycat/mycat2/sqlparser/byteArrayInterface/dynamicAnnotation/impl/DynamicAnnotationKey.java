@@ -16,6 +16,10 @@ public class DynamicAnnotationKey{
         this.matchName = matchName;
     }
 
+    public int getSqlType() {
+        return sqlType;
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) return true;
@@ -13,12 +13,17 @@ import org.slf4j.LoggerFactory;
 import io.mycat.mycat2.AbstractMySQLSession.CurrPacketType;
 import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
 import io.mycat.mycat2.beans.conf.SchemaBean;
 import io.mycat.mysql.Capabilities;
 import io.mycat.mysql.packet.AuthPacket;
 import io.mycat.mysql.packet.ErrorPacket;
 import io.mycat.mysql.packet.HandshakePacket;
 import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.ConfigEnum;
+import io.mycat.proxy.ProxyReactorThread;
+import io.mycat.proxy.ProxyRuntime;
+import io.mycat.proxy.TimerWheel;
 import io.mycat.proxy.buffer.BufferPool;
 import io.mycat.util.ErrorCode;
 import io.mycat.util.ParseUtil;
@@ -37,6 +42,8 @@ public class BackendConCreateTask extends AbstractBackendIOTask<MySQLSession> {
 	private MySQLMetaBean mySQLMetaBean;
 	private SchemaBean schema;
 	private MySQLSession session;
+	/* 建立连接和登录认证的超时 */
+	private TimerWheel.Timeout connectTimer;
 
 	public BackendConCreateTask(BufferPool bufPool, Selector nioSelector, MySQLMetaBean mySQLMetaBean, SchemaBean schema,AsynTaskCallBack<MySQLSession> callBack)
 			throws IOException {
@@ -53,6 +60,40 @@ public class BackendConCreateTask extends AbstractBackendIOTask<MySQLSession> {
 		this.mySQLMetaBean = mySQLMetaBean;
 		this.schema = schema;
 		this.callBack = callBack;
+		TimerWheel timerWheel = ProxyReactorThread.currentTimerWheel();
+		if (timerWheel != null) {
+			ProxyConfig proxyConfig = ProxyRuntime.INSTANCE.getConfig().getConfig(ConfigEnum.PROXY);
+			long connectTimeout = proxyConfig.getProxy().getBackendConnectTimeout();
+			if (connectTimeout > 0) {
+				connectTimer = timerWheel.schedule(this::onConnectTimeout, connectTimeout);
+			}
+		}
+	}
+
+	/**
+	 * 超时还未完成认证, 按创建失败处理, 由回调关闭连接
+	 */
+	private void onConnectTimeout() {
+		String serverIP = mySQLMetaBean.getDsMetaBean().getIp();
+		int serverPort = mySQLMetaBean.getDsMetaBean().getPort();
+		logger.warn("backend connect timeout {}:{}, sessionId = {}", serverIP, serverPort, session.getSessionId());
+		errPkg = new ErrorPacket();
+		errPkg.packetId = 1;
+		errPkg.errno = ErrorCode.ERR_CONNECT_SOCKET;
+		errPkg.message = "backend connect timeout " + serverIP + ":" + serverPort;
+		try {
+			finished(false);
+		} catch (IOException e) {
+			logger.warn("backend connect timeout callback error. {}", e.getMessage());
+		}
+	}
+
+	@Override
+	protected void onFinished(boolean success) {
+		if (connectTimer != null) {
+			connectTimer.cancel();
+			connectTimer = null;
+		}
 	}
 
 	@Override
@@ -76,6 +117,7 @@ public class BackendConCreateTask extends AbstractBackendIOTask<MySQLSession> {
 		if (!welcomePkgReceived) {
 			handshake = new HandshakePacket();
 			handshake.read(this.session.proxyBuffer);
+			session.setThreadId(handshake.threadId);
 
 			// 设置字符集编码
 			int charsetIndex = (handshake.serverCharsetIndex & 0xff);
@@ -18,7 +18,6 @@ import io.mycat.mycat2.beans.conf.ReplicaBean;
 import io.mycat.mycat2.beans.heartbeat.DBHeartbeat;
 import io.mycat.mycat2.beans.heartbeat.MySQLDetector;
 import io.mycat.mycat2.beans.heartbeat.MySQLHeartbeat;
-import io.mycat.mycat2.console.SessionKeyEnum;
 import io.mycat.mysql.packet.CommandPacket;
 import io.mycat.mysql.packet.MySQLPacket;
 import io.mycat.proxy.MycatReactorThread;
@@ -57,7 +56,7 @@ public class BackendHeartbeatTask extends BackendIOTaskWithResultSet<MySQLSessio
 		CommandPacket packet = new CommandPacket();
 		packet.packetId = 0;
 		packet.command = MySQLPacket.COM_QUERY;
-		optSession.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+		optSession.setIdle(false);
 
 //		try {
 			packet.arg = repBean.getReplicaBean().getRepType().getHearbeatSQL().getBytes();
@@ -67,6 +66,8 @@ public class BackendHeartbeatTask extends BackendIOTaskWithResultSet<MySQLSessio
 		packet.write(optSession.proxyBuffer);
 		optSession.proxyBuffer.flip();
 		optSession.proxyBuffer.readIndex = optSession.proxyBuffer.writeIndex;
+		// 心跳的往返时间同样计入节点的平均响应时间
+		optSession.beginQuery();
 		try {
 			optSession.writeToChannel();
 		} catch (IOException e) {
@@ -134,8 +135,9 @@ public class BackendHeartbeatTask extends BackendIOTaskWithResultSet<MySQLSessio
 			//归还连接
 			MycatReactorThread reactor = (MycatReactorThread)Thread.currentThread();
 			session.proxyBuffer.reset();
+			session.endQuery(true);
 			
-			optSession.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+			optSession.clearIdle();
 			reactor.addMySQLSession(metaBean, session);
 
 			switch(repBean.getReplicaBean().getRepType()){
@@ -0,0 +1,81 @@
+package io.mycat.mycat2.tasks;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.mycat.mycat2.AbstractMySQLSession;
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mysql.packet.ErrorPacket;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.mysql.packet.QueryPacket;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.util.ErrorCode;
+
+/**
+ * 在另一个后端连接上发送 KILL QUERY, 中止指定连接上正在执行的语句, 被中止的连接本身不关闭.
+ * 任务结束后由回调归还或者关闭执行 KILL QUERY 的连接
+ */
+public class BackendKillQueryTask extends AbstractBackendIOTask<MySQLSession> {
+
+	private static Logger logger = LoggerFactory.getLogger(BackendKillQueryTask.class);
+
+	private final long threadId;
+
+	public BackendKillQueryTask(MySQLSession session, long threadId) {
+		super(session, false);
+		this.threadId = threadId;
+	}
+
+	public void kill() throws IOException {
+		session.setIdle(false);
+		ProxyBuffer proxyBuf = session.proxyBuffer;
+		proxyBuf.reset();
+		QueryPacket queryPacket = new QueryPacket();
+		queryPacket.packetId = 0;
+		queryPacket.sql = "KILL QUERY " + threadId;
+		queryPacket.write(proxyBuf);
+		proxyBuf.flip();
+		proxyBuf.readIndex = proxyBuf.writeIndex;
+		try {
+			session.writeToChannel();
+		} catch (IOException e) {
+			logger.warn("send kill query {} error. {}", threadId, e.getMessage());
+			fail(e.getMessage());
+		}
+	}
+
+	@Override
+	public void onSocketRead(MySQLSession session) throws IOException {
+		try {
+			if (!session.readFromChannel()) {
+				return;
+			}
+		} catch (IOException e) {
+			fail(e.getMessage());
+			return;
+		}
+		if (session.resolveMySQLPackage(session.proxyBuffer, session.curMSQLPackgInf,
+				false) != AbstractMySQLSession.CurrPacketType.Full) {
+			return;
+		}
+		session.clearIdle();
+		if (session.curMSQLPackgInf.pkgType == MySQLPacket.ERROR_PACKET) {
+			// 语句已经执行完成时返回 unknown thread, 不影响连接的使用
+			errPkg = new ErrorPacket();
+			errPkg.read(session.proxyBuffer);
+			logger.debug("kill query {} return error. {}", threadId, errPkg.message);
+		}
+		session.proxyBuffer.reset();
+		finished(true);
+	}
+
+	private void fail(String message) throws IOException {
+		errPkg = new ErrorPacket();
+		errPkg.packetId = 1;
+		errPkg.errno = ErrorCode.ER_UNKNOWN_ERROR;
+		errPkg.message = message;
+		finished(false);
+	}
+}
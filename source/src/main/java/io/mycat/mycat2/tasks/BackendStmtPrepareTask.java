@@ -0,0 +1,173 @@
+package io.mycat.mycat2.tasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.mycat.mycat2.AbstractMySQLSession;
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.beans.MySQLPackageInf;
+import io.mycat.mycat2.cmds.stmt.PreparedStatementMeta;
+import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mysql.packet.CommandPacket;
+import io.mycat.mysql.packet.ErrorPacket;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.util.ErrorCode;
+
+/**
+ * 在后端连接上预处理语句, 读取完整的响应作为语句的元数据, 并记录语句在该连接上的 statement id.
+ * 连接上已经预处理过该语句时先关闭原来的语句, 语句数达到上限时先关闭最久未使用的语句.
+ * 回调的 success 为 false 表示连接不可用; 为 true 时 result 为 null 表示成功, 否则为后端返回的错误
+ */
+public class BackendStmtPrepareTask extends AbstractBackendIOTask<MySQLSession> {
+
+	private static Logger logger = LoggerFactory.getLogger(BackendStmtPrepareTask.class);
+
+	/* 每个后端连接上最多保留的预处理语句数 */
+	public static final int MAX_STATEMENTS_PER_BACKEND = 256;
+
+	private final String key;
+	private final byte[] sql;
+	private final List<byte[]> packets = new ArrayList<>();
+	private int packetCount = 1;
+	private long statementId;
+	private PreparedStatementMeta meta;
+
+	public BackendStmtPrepareTask(MySQLSession session, String key, byte[] sql) {
+		super(session, true);
+		this.key = key;
+		this.sql = sql;
+	}
+
+	public void prepare() throws IOException {
+		session.setIdle(false);
+		ProxyBuffer proxyBuf = session.proxyBuffer;
+		// 关闭语句和预处理语句的报文
+		session.ensureBufferCapacity(MySQLPacket.packetHeaderSize * 3 + 5 * 2 + 1 + sql.length);
+		proxyBuf.reset();
+		writeClose(proxyBuf, session.removePreparedStatement(key));
+		writeClose(proxyBuf, session.evictPreparedStatement(MAX_STATEMENTS_PER_BACKEND));
+		CommandPacket packet = new CommandPacket();
+		packet.packetId = 0;
+		packet.command = MySQLPacket.COM_STMT_PREPARE;
+		packet.arg = sql;
+		packet.write(proxyBuf);
+		proxyBuf.flip();
+		proxyBuf.readIndex = proxyBuf.writeIndex;
+		session.beginQuery();
+		try {
+			session.writeToChannel();
+		} catch (IOException e) {
+			logger.warn("send prepare statement to {} error. {}", session.getMySQLMetaBean(), e.getMessage());
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * COM_STMT_CLOSE 没有响应, 与预处理语句一起发送
+	 */
+	private static void writeClose(ProxyBuffer proxyBuf, long statementId) {
+		if (statementId < 0) {
+			return;
+		}
+		CommandPacket close = new CommandPacket();
+		close.packetId = 0;
+		close.command = MySQLPacket.COM_STMT_CLOSE;
+		close.arg = new byte[] { (byte) statementId, (byte) (statementId >>> 8), (byte) (statementId >>> 16),
+				(byte) (statementId >>> 24) };
+		close.write(proxyBuf);
+	}
+
+	@Override
+	public void onSocketRead(MySQLSession session) throws IOException {
+		try {
+			if (!session.readFromChannel()) {
+				return;
+			}
+		} catch (IOException e) {
+			fail(e.getMessage());
+			return;
+		}
+		ProxyBuffer proxyBuf = session.proxyBuffer;
+		MySQLPackageInf packageInf = session.curMSQLPackgInf;
+		for (;;) {
+			AbstractMySQLSession.CurrPacketType packetType = session.resolveMySQLPackage(proxyBuf, packageInf, true);
+			if (packetType != AbstractMySQLSession.CurrPacketType.Full) {
+				if (packetType == AbstractMySQLSession.CurrPacketType.LongHalfPacket
+						&& packageInf.pkgLength > proxyBuf.getBuffer().capacity()) {
+					proxyBuf.readMark = packageInf.startPos;
+					proxyBuf.readIndex = packageInf.startPos;
+					try {
+						session.ensureFreeSpaceOfReadBuffer();
+					} catch (IllegalArgumentException e) {
+						fail(e.getMessage());
+						return;
+					}
+				}
+				break;
+			}
+			if (packets.isEmpty() && packageInf.pkgType == MySQLPacket.ERROR_PACKET) {
+				proxyBuf.readIndex = packageInf.startPos;
+				errPkg = new ErrorPacket();
+				errPkg.read(proxyBuf);
+				complete();
+				return;
+			}
+			byte[] packet = proxyBuf.getBytes(packageInf.startPos, packageInf.pkgLength);
+			if (packets.isEmpty()) {
+				statementId = PreparedStatementMeta.statementId(packet);
+				packetCount = PreparedStatementMeta.packetCount(packet);
+			}
+			packets.add(packet);
+			if (packets.size() == packetCount) {
+				meta = new PreparedStatementMeta(key, sql, packets);
+				session.putPreparedStatement(key, statementId);
+				complete();
+				return;
+			}
+		}
+		proxyBuf.readMark = proxyBuf.readIndex;
+	}
+
+	private void complete() throws IOException {
+		session.endQuery(true);
+		// 预处理不改变事务状态
+		boolean inTransaction = session.hasFlag(SessionKeyEnum.SESSION_KEY_TRANSACTION_FLAG);
+		session.setIdle(!inTransaction);
+		session.proxyBuffer.reset();
+		finished(true);
+	}
+
+	private void fail(String message) throws IOException {
+		session.endQuery(false);
+		errPkg = new ErrorPacket();
+		errPkg.packetId = 1;
+		errPkg.errno = ErrorCode.ERR_CONNECT_SOCKET;
+		errPkg.message = message;
+		finished(false);
+	}
+
+	@Override
+	public void onSocketClosed(MySQLSession session, boolean normal) {
+		try {
+			fail("backend connection closed");
+		} catch (IOException e) {
+			logger.warn("prepare statement on closed backend error. {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * 成功时为语句在该连接上的元数据, 后端返回错误时为 null
+	 */
+	public PreparedStatementMeta getMeta() {
+		return meta;
+	}
+
+	public long getStatementId() {
+		return statementId;
+	}
+}
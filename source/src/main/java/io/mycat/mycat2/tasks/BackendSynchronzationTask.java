@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 
 import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLMetaBean;
 import io.mycat.mysql.packet.ErrorPacket;
 import io.mycat.mysql.packet.MySQLPacket;
 import io.mycat.mysql.packet.QueryPacket;
@@ -31,6 +32,7 @@ public class BackendSynchronzationTask extends AbstractBackendIOTask<MySQLSessio
     }
 
     public void syncState(MycatSession mycatSession,MySQLSession mySQLSession) throws IOException {
+        MySQLMetaBean metaBean = mySQLSession.getMySQLMetaBean();
         ProxyBuffer proxyBuf = mySQLSession.proxyBuffer;
         proxyBuf.reset();
         QueryPacket queryPacket = new QueryPacket();
@@ -61,6 +63,8 @@ public class BackendSynchronzationTask extends AbstractBackendIOTask<MySQLSessio
         }
         if (syncCmdNum > 0) {
         	logger.debug("synchronzation state [{}]to bakcend.session={}",queryPacket.sql,mySQLSession.toString());
+            // 必须等待同步结果再发送客户端请求, 同步失败时请求不能在状态错误的连接上执行
+            metaBean.stateSyncRoundTrip();
             queryPacket.write(proxyBuf);
             proxyBuf.flip();
             proxyBuf.readIndex = proxyBuf.writeIndex;
@@ -93,6 +97,12 @@ public class BackendSynchronzationTask extends AbstractBackendIOTask<MySQLSessio
     	return syncCmdNum;
     }
 
+    private void updateState(MySQLSession session) {
+        session.autoCommit = mycatSession.autoCommit;
+        session.isolation = mycatSession.isolation;
+        session.charSet.charsetIndex = mycatSession.charSet.charsetIndex;
+    }
+
     @Override
     public void onSocketRead(MySQLSession session) throws IOException {
         session.proxyBuffer.reset();        
@@ -126,13 +136,13 @@ public class BackendSynchronzationTask extends AbstractBackendIOTask<MySQLSessio
         }
 
         if (isAllOK) {
-            session.autoCommit = mycatSession.autoCommit;
-            session.isolation = mycatSession.isolation;
-            session.charSet.charsetIndex = mycatSession.charSet.charsetIndex;
+            updateState(session);
             logger.debug("synchronzation state task end ");
             finished(true);
         } else {
             errPkg = new ErrorPacket();
+            // 错误包已经标记为读取, 从包头开始解析
+            session.proxyBuffer.readIndex = session.curMSQLPackgInf.startPos;
             errPkg.read(session.proxyBuffer);
             logger.error("backend state sync Error.Err No. " + errPkg.errno + "," + errPkg.message);
             finished(false);
@@ -1,7 +1,6 @@
 package io.mycat.mycat2.tasks;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
@@ -10,9 +9,10 @@ import org.slf4j.LoggerFactory;
 
 import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.beans.MySQLPackageInf;
-import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mycat2.hbt.BinaryRow;
 import io.mycat.mycat2.hbt.MyFunction;
 import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mycat2.hbt.RowBatch;
 import io.mycat.mycat2.hbt.SqlMeta;
 import io.mycat.mysql.packet.ErrorPacket;
 import io.mycat.mysql.packet.MySQLPacket;
@@ -29,6 +29,7 @@ public class RowStream extends BackendIOTaskWithResultSet<MySQLSession> {
     MyFunction onEnd ;
 
     private ResultSetMeta resultSetMeta;
+    private final RowBatch rowBatch = new RowBatch();
     
 	public RowStream(MySQLSession optSession, SqlMeta sqlMeta,
 	        Function<ResultSetMeta, ResultSetMeta> onHeader,Function<List<byte[]>, List<byte[]>> onRowData, MyFunction onEnd) {
@@ -42,7 +43,7 @@ public class RowStream extends BackendIOTaskWithResultSet<MySQLSession> {
 	}
 	public void fetchStream() {
 		/*设置为忙*/
-		session.getSessionAttrMap().put(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey(), false);
+		session.setIdle(false);
         ProxyBuffer proxyBuf = session.proxyBuffer;
         proxyBuf.reset();
         QueryPacket queryPacket = new QueryPacket();
@@ -96,14 +97,9 @@ public class RowStream extends BackendIOTaskWithResultSet<MySQLSession> {
 		ProxyBuffer proxyBuffer = session.proxyBuffer;
         MySQLPackageInf curMQLPackgInf = session.curMSQLPackgInf;
         int rowDataIndex = curMQLPackgInf.startPos + MySQLPacket.packetHeaderSize;
-        int fieldCount = resultSetMeta.getFiledCount();
-        int tmpReadIndex = proxyBuffer.readIndex;
-        proxyBuffer.readIndex = rowDataIndex;
-        ArrayList<byte[]> row = new ArrayList<byte[]>(fieldCount);
-		for(int i = 0; i < fieldCount; i++) {
-			row.add(proxyBuffer.readLenencBytes());
-		}
-        proxyBuffer.readIndex = tmpReadIndex;
+        // 行报文内容整体拷贝, 列在用到时才解析
+        BinaryRow row = rowBatch.copyRow(proxyBuffer, rowDataIndex,
+                curMQLPackgInf.pkgLength - MySQLPacket.packetHeaderSize, resultSetMeta.getFiledCount());
 		onRowData.apply(row);
 	}
 
@@ -115,11 +111,11 @@ public class RowStream extends BackendIOTaskWithResultSet<MySQLSession> {
 		        MySQLPackageInf curMQLPackgInf = session.curMSQLPackgInf;
 		        session.proxyBuffer.readIndex = curMQLPackgInf.startPos;
 				this.errPkg.read(session.proxyBuffer);
-				session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+				session.clearIdle();
 				revertPreBuffer();
 		        callBack.finished(session, this, success, this.errPkg);
 			} else {
-				session.getSessionAttrMap().remove(SessionKeyEnum.SESSION_KEY_CONN_IDLE_FLAG.getKey());
+				session.clearIdle();
 				revertPreBuffer();
 				callBack.finished(session, null, success, null);
 			}
@@ -7,13 +7,11 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.HashMap;
-import java.util.Map;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.console.SessionKeyEnum;
 import io.mycat.proxy.buffer.BufferPool;
 
 /**
@@ -51,10 +49,16 @@ public abstract class AbstractSession implements Session {
 	// Session是否关闭
 	private boolean closed;
 
+	private static final int SESSION_KEY_COUNT = SessionKeyEnum.values().length;
+
+	/**
+	 * Session会话属性，下标为 {@link SessionKeyEnum#ordinal()}，不能放置大量对象与数据
+	 */
+	private final Object[] sessionAttrs = new Object[SESSION_KEY_COUNT];
 	/**
-	 * Session会话属性，不能放置大量对象与数据
+	 * 只表示有无的会话标识，第 {@link SessionKeyEnum#ordinal()} 位
 	 */
-	private final Map<String, Object> sessionAttrMap = new HashMap<String, Object>();
+	private long sessionFlags;
 
 	public AbstractSession(BufferPool bufferPool, Selector selector, SocketChannel channel) throws IOException {
 		this(bufferPool, selector, channel, SelectionKey.OP_READ);
@@ -322,8 +326,30 @@ public abstract class AbstractSession implements Session {
 		logger.info("add session attr:" + attrName + " value:" + value);
 	}
 
-	public Map<String, Object> getSessionAttrMap() {
-		return sessionAttrMap;
+	public Object getAttr(SessionKeyEnum key) {
+		return sessionAttrs[key.ordinal()];
+	}
+
+	public void setAttr(SessionKeyEnum key, Object value) {
+		sessionAttrs[key.ordinal()] = value;
+	}
+
+	public Object removeAttr(SessionKeyEnum key) {
+		Object value = sessionAttrs[key.ordinal()];
+		sessionAttrs[key.ordinal()] = null;
+		return value;
+	}
+
+	public boolean hasFlag(SessionKeyEnum key) {
+		return (sessionFlags & (1L << key.ordinal())) != 0;
+	}
+
+	public void setFlag(SessionKeyEnum key, boolean value) {
+		if (value) {
+			sessionFlags |= 1L << key.ordinal();
+		} else {
+			sessionFlags &= ~(1L << key.ordinal());
+		}
 	}
 
 	public int getSessionId() {
@@ -1,10 +1,11 @@
 package io.mycat.proxy;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
-import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,15 +13,22 @@ import org.slf4j.LoggerFactory;
 import io.mycat.mycat2.MySQLSession;
 import io.mycat.mycat2.MycatSession;
 import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.conf.HeartbeatConfig;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
 import io.mycat.mycat2.beans.conf.SchemaBean;
+import io.mycat.mycat2.cmds.stmt.PreparedStatementCache;
+import io.mycat.mycat2.hbt.planner.HBTPlanCache;
 import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mycat2.sqlparser.BufferSQLParser;
 import io.mycat.mycat2.tasks.AsynTaskCallBack;
 import io.mycat.mycat2.tasks.BackendConCreateTask;
+import io.mycat.mycat2.tasks.BackendKillQueryTask;
 import io.mycat.mycat2.tasks.BackendSynchemaTask;
 import io.mycat.mycat2.tasks.BackendSynchronzationTask;
 import io.mycat.mysql.packet.ErrorPacket;
 import io.mycat.proxy.buffer.BufferPool;
 import io.mycat.util.ErrorCode;
+import io.mycat.util.TimeUtil;
 
 /**
  *  mycat 多个Session会话
@@ -30,53 +38,252 @@ import io.mycat.util.ErrorCode;
 public class MycatReactorThread extends ProxyReactorThread<MycatSession> {
 	
 	protected final static Logger logger = LoggerFactory.getLogger(MycatReactorThread.class);
+
+	// 获取空闲连接时,最多检查最近归还的连接数量,查找状态与前端一致的连接
+	private static final int MAX_STATE_MATCH_SCAN = 8;
 	
-	// 存放后端连接的map
-	protected Map<MySQLMetaBean, LinkedList<MySQLSession>> mySQLSessionMap = new HashMap<>();
+	// 存放后端空闲连接的map, 每个MetaBean一个队列,队尾为最近归还的连接
+	protected Map<MySQLMetaBean, ArrayDeque<MySQLSession>> mySQLSessionMap = new HashMap<>();
+
+	// 绑定在前端会话上的空闲连接, 每个MetaBean一个链表, 表头为空闲最久的连接. 连接数已满时从中取出
+	private final Map<MySQLMetaBean, CachedIdleList> cachedIdleSessions = new HashMap<>();
+
+	/**
+	 * 以 MySQLSession 自身为节点的双向链表, 每条语句完成时都会登记, 登记和取消登记不分配对象
+	 */
+	private static class CachedIdleList {
+		MySQLSession head;
+		MySQLSession tail;
+
+		void add(MySQLSession session) {
+			if (session.cachedIdle) {
+				return;
+			}
+			session.cachedIdle = true;
+			session.cachedIdlePrev = tail;
+			session.cachedIdleNext = null;
+			if (tail == null) {
+				head = session;
+			} else {
+				tail.cachedIdleNext = session;
+			}
+			tail = session;
+		}
+
+		void remove(MySQLSession session) {
+			if (!session.cachedIdle) {
+				return;
+			}
+			MySQLSession prev = session.cachedIdlePrev;
+			MySQLSession next = session.cachedIdleNext;
+			if (prev == null) {
+				head = next;
+			} else {
+				prev.cachedIdleNext = next;
+			}
+			if (next == null) {
+				tail = prev;
+			} else {
+				next.cachedIdlePrev = prev;
+			}
+			session.cachedIdle = false;
+			session.cachedIdlePrev = null;
+			session.cachedIdleNext = null;
+		}
+	}
+
+	/**
+	 * 当前reactor上所有前端会话共用的sql解析器,解析结果保存在各自session的sqlContext中
+	 */
+	private final BufferSQLParser sqlParser = new BufferSQLParser();
+
+	/**
+	 * 当前reactor上所有前端会话共用的预处理语句元数据缓存,第一次使用时创建
+	 */
+	private PreparedStatementCache stmtCache;
+	private HBTPlanCache planCache;
 
 	public MycatReactorThread(BufferPool bufPool) throws IOException {
 		super(bufPool);
 	}
 	
+	/**
+	 * 获取当前线程可用的sql解析器. reactor线程复用线程内的解析器,其他线程每次新建
+	 */
+	public static BufferSQLParser currentSQLParser() {
+		Thread thread = Thread.currentThread();
+		if (thread instanceof MycatReactorThread) {
+			return ((MycatReactorThread) thread).sqlParser;
+		}
+		return new BufferSQLParser();
+	}
+
+	/**
+	 * 获取当前线程可用的预处理语句元数据缓存. 只在reactor线程中缓存,其他线程每次新建
+	 */
+	public static PreparedStatementCache currentStatementCache() {
+		Thread thread = Thread.currentThread();
+		if (thread instanceof MycatReactorThread) {
+			MycatReactorThread reactor = (MycatReactorThread) thread;
+			if (reactor.stmtCache == null) {
+				reactor.stmtCache = newStatementCache();
+			}
+			return reactor.stmtCache;
+		}
+		return newStatementCache();
+	}
+
+	private static PreparedStatementCache newStatementCache() {
+		ProxyConfig proxyConfig = ProxyRuntime.INSTANCE.getConfig().getConfig(ConfigEnum.PROXY);
+		return new PreparedStatementCache(proxyConfig.getProxy().getStmtCacheSize());
+	}
+
+	/**
+	 * 获取当前线程可用的执行计划缓存. 只在reactor线程中缓存,其他线程每次新建
+	 */
+	public static HBTPlanCache currentHBTPlanCache() {
+		Thread thread = Thread.currentThread();
+		if (thread instanceof MycatReactorThread) {
+			MycatReactorThread reactor = (MycatReactorThread) thread;
+			if (reactor.planCache == null) {
+				reactor.planCache = newHBTPlanCache();
+			}
+			return reactor.planCache;
+		}
+		return newHBTPlanCache();
+	}
+
+	private static HBTPlanCache newHBTPlanCache() {
+		ProxyConfig proxyConfig = ProxyRuntime.INSTANCE.getConfig().getConfig(ConfigEnum.PROXY);
+		return new HBTPlanCache(proxyConfig.getProxy().getHbtPlanCacheSize());
+	}
+
 	public void clearMySQLMetaBeanSession(MySQLMetaBean mySQLMetaBean,String reason){
 		LinkedList<MycatSession> sessions = getAllSessions();
 		if(sessions!=null){
 			sessions.stream().forEach(f->f.unbindBackend(mySQLMetaBean, reason));
 		}
+		ArrayDeque<MySQLSession> idleSessions = mySQLSessionMap.get(mySQLMetaBean);
+		if (idleSessions != null) {
+			MySQLSession mysqlSession;
+			while ((mysqlSession = idleSessions.pollFirst()) != null) {
+				mySQLMetaBean.getIdleCount().decrementAndGet();
+				if (!mysqlSession.isClosed()) {
+					mysqlSession.close(true, reason);
+				}
+			}
+		}
 	}
 	
 	public void addMySQLSession(MySQLMetaBean mySQLMetaBean, MySQLSession mySQLSession) {
-		LinkedList<MySQLSession> mySQLSessionList = mySQLSessionMap.get(mySQLMetaBean);
-		if (mySQLSessionList == null) {
-			mySQLSessionList = new LinkedList<>();
-			mySQLSessionMap.put(mySQLMetaBean, mySQLSessionList);
+		if (mySQLSession.isKillPending()) {
+			// KILL QUERY 完成后再放入空闲队列, 以免中止下一个使用者的语句
+			mySQLSession.runAfterKill(() -> addMySQLSession(mySQLMetaBean, mySQLSession));
+			return;
+		}
+		ArrayDeque<MySQLSession> idleSessions = mySQLSessionMap.get(mySQLMetaBean);
+		if (idleSessions == null) {
+			idleSessions = new ArrayDeque<>();
+			mySQLSessionMap.put(mySQLMetaBean, idleSessions);
 		}
 		mySQLSession.proxyBuffer.reset();  //想reactor 中放入mysqlession 时，需要做一次reset
-		mySQLSessionList.add(mySQLSession);
+		mySQLSession.setIdleSince(TimeUtil.currentTimeMillis());
+		idleSessions.addLast(mySQLSession);
+		mySQLMetaBean.getIdleCount().incrementAndGet();
 	}
-	
+
 	/**
-	 * 统计后端正在使用的连接数
-     */
-	private int getUsingBackendConCounts(MySQLMetaBean mySQLMetaBean) {
-		return allSessions.stream()
-//				.filter(session -> session instanceof MycatSession)
-				.map(session -> {
-					MycatSession mycatSession = (MycatSession) session;
-					return mycatSession.getBackendConCounts(mySQLMetaBean);
-				})
-				.reduce(0, (sum, count) -> sum += count, (sum1, sum2) -> sum1 + sum2);
+	 * 从当前reactor的空闲队列中取出最近归还的连接, 已关闭的连接直接丢弃
+	 * @param mySQLMetaBean
+	 * @return 没有空闲连接时返回null
+	 */
+	private MySQLSession pollIdleSession(MySQLMetaBean mySQLMetaBean) {
+		ArrayDeque<MySQLSession> idleSessions = mySQLSessionMap.get(mySQLMetaBean);
+		if (idleSessions == null) {
+			return null;
+		}
+		MySQLSession mysqlSession;
+		while ((mysqlSession = idleSessions.pollLast()) != null) {
+			mySQLMetaBean.getIdleCount().decrementAndGet();
+			if (!mysqlSession.isClosed()) {
+				return mysqlSession;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 从当前reactor的空闲队列中取出连接, 优先选择状态指纹与前端会话一致的连接, 以免同步状态.
+	 * 最近归还的若干连接中没有一致的连接时, 取最近归还的连接
+	 */
+	private MySQLSession pollIdleSession(MySQLMetaBean mySQLMetaBean, MycatSession mycatSession) {
+		ArrayDeque<MySQLSession> idleSessions = mySQLSessionMap.get(mySQLMetaBean);
+		if (idleSessions == null || idleSessions.size() < 2) {
+			return pollIdleSession(mySQLMetaBean);
+		}
+		boolean withTransactionState = !mySQLMetaBean.isSlaveNode();
+		int fingerprint = mycatSession.stateFingerprint(withTransactionState);
+		Iterator<MySQLSession> it = idleSessions.descendingIterator();
+		for (int i = 0; i < MAX_STATE_MATCH_SCAN && it.hasNext(); i++) {
+			MySQLSession mysqlSession = it.next();
+			if (!mysqlSession.isClosed() && mysqlSession.stateFingerprint(withTransactionState) == fingerprint) {
+				it.remove();
+				mySQLMetaBean.getIdleCount().decrementAndGet();
+				return mysqlSession;
+			}
+		}
+		return pollIdleSession(mySQLMetaBean);
 	}
 	
+	/**
+	 * 登记绑定在前端会话上的空闲连接, 由 MySQLSession 在闲置状态变化时调用
+	 */
+	public void addCachedIdleSession(MySQLMetaBean mySQLMetaBean, MySQLSession mySQLSession) {
+		CachedIdleList sessions = cachedIdleSessions.get(mySQLMetaBean);
+		if (sessions == null) {
+			sessions = new CachedIdleList();
+			cachedIdleSessions.put(mySQLMetaBean, sessions);
+		}
+		sessions.add(mySQLSession);
+	}
+
+	public void removeCachedIdleSession(MySQLMetaBean mySQLMetaBean, MySQLSession mySQLSession) {
+		CachedIdleList sessions = cachedIdleSessions.get(mySQLMetaBean);
+		if (sessions != null) {
+			sessions.remove(mySQLSession);
+		}
+	}
+
+	/**
+	 * 取出其他前端会话上空闲最久的连接, 并从原来的前端会话解除绑定
+	 * @param exclude 不取该前端会话上的连接, 可以为null
+	 * @return 没有可用连接时返回null
+	 */
+	private MySQLSession pollCachedIdleSession(MySQLMetaBean mySQLMetaBean, MycatSession exclude) {
+		CachedIdleList sessions = cachedIdleSessions.get(mySQLMetaBean);
+		if (sessions == null) {
+			return null;
+		}
+		MySQLSession next = sessions.head;
+		while (next != null) {
+			MySQLSession mysqlSession = next;
+			next = mysqlSession.cachedIdleNext;
+			MycatSession owner = mysqlSession.getMycatSession();
+			if (owner != null && owner == exclude) {
+				continue;
+			}
+			sessions.remove(mysqlSession);
+			if (owner != null && !mysqlSession.isClosed() && mysqlSession.isIdleMarked()) {
+				owner.unbindBeckend(mysqlSession);
+				return mysqlSession;
+			}
+		}
+		return null;
+	}
 	
 	public void createSession(MySQLMetaBean mySQLMetaBean, SchemaBean schema, AsynTaskCallBack<MySQLSession> callBack) throws IOException {
-		int count = Stream.of(ProxyRuntime.INSTANCE.getReactorThreads())
-						.map(session -> ((MycatReactorThread)session).mySQLSessionMap.get(mySQLMetaBean))
-						.filter(list -> list != null)
-						.reduce(0, (sum, list) -> sum += list.size(), (sum1, sum2) -> sum1 + sum2);
-		int backendCounts = getUsingBackendConCounts(mySQLMetaBean);
-		logger.debug("all session backend count is {},reactor backend count is {},metabean max con is {}",backendCounts,count,mySQLMetaBean.getDsMetaBean().getMaxCon());
-		if (count + backendCounts + 1 > mySQLMetaBean.getDsMetaBean().getMaxCon()) {
+		if (!mySQLMetaBean.tryAcquireConnection()) {
+			logger.debug("backend connection count reaches max con {} for {}", mySQLMetaBean.getDsMetaBean().getMaxCon(), mySQLMetaBean);
 			ErrorPacket errPkg = new ErrorPacket();
 			errPkg.packetId = 1;
 			errPkg.errno  = ErrorCode.ER_UNKNOWN_ERROR;
@@ -84,13 +291,88 @@ public class MycatReactorThread extends ProxyReactorThread<MycatSession> {
 			callBack.finished(null, null, false, errPkg);
 			return;
 		}
+		final long startTime = TimeUtil.currentTimeMillis();
 		try {
-			new BackendConCreateTask(bufPool, selector, mySQLMetaBean, schema,callBack);
+			new BackendConCreateTask(bufPool, selector, mySQLMetaBean, schema, (optSession, sender, exeSucces, retVal) -> {
+				mySQLMetaBean.addPoolWaitMillis(TimeUtil.currentTimeMillis() - startTime);
+				if (!exeSucces && optSession != null && !optSession.isClosed()) {
+					// 创建失败的连接关闭时释放名额
+					optSession.close(false, "backend connection create failed");
+				}
+				callBack.finished(optSession, sender, exeSucces, retVal);
+			});
 		} catch (Exception e) {
-			e.printStackTrace();
+			// 连接还未建立, session 未创建
+			mySQLMetaBean.releaseConnection();
+			logger.error("error to create backend connection for {}", mySQLMetaBean, e);
+			ErrorPacket errPkg = new ErrorPacket();
+			errPkg.packetId = 1;
+			errPkg.errno  = ErrorCode.ERR_CONNECT_SOCKET;
+			errPkg.message = "backend connect failed " + e.getMessage();
+			callBack.finished(null, null, false, errPkg);
 		}
 		
 	}
+
+	/**
+	 * 空闲连接检查, 由各reactor线程定时执行.
+	 * 1. 回收空闲超时的连接, 连接总数不低于minCon
+	 * 2. 空闲连接不足minCon时预先创建连接, 缺少的数量由各reactor平均分担
+	 */
+	public void checkIdleBackends() {
+		HeartbeatConfig heartbeatConfig = ProxyRuntime.INSTANCE.getConfig().getConfig(ConfigEnum.HEARTBEAT);
+		long idleTimeout = heartbeatConfig.getHeartbeat().getIdleTimeout();
+		long now = TimeUtil.currentTimeMillis();
+		mySQLSessionMap.forEach((metaBean, idleSessions) -> {
+			// 队首为最早归还的连接
+			Iterator<MySQLSession> it = idleSessions.iterator();
+			while (it.hasNext()) {
+				MySQLSession mysqlSession = it.next();
+				if (mysqlSession.isClosed()) {
+					it.remove();
+					metaBean.getIdleCount().decrementAndGet();
+				} else if (now - mysqlSession.getIdleSince() > idleTimeout
+						&& metaBean.getConnectionCount() > metaBean.getDsMetaBean().getMinCon()) {
+					it.remove();
+					metaBean.getIdleCount().decrementAndGet();
+					metaBean.poolEvict();
+					mysqlSession.close(true, "backend connection idle timeout");
+				} else {
+					break;
+				}
+			}
+		});
+
+		ProxyRuntime runtime = ProxyRuntime.INSTANCE;
+		int reactorSize = runtime.getNioReactorThreads();
+		runtime.getConfig().getMysqlRepMap().values().forEach(repBean -> {
+			repBean.getMetaBeans().forEach(metaBean -> {
+				if (!metaBean.charsetLoaded || metaBean.getHeartbeat() == null || !metaBean.isAlive()) {
+					return;
+				}
+				int deficit = metaBean.getDsMetaBean().getMinCon() - metaBean.getConnectionCount();
+				int count = (deficit + reactorSize - 1) / reactorSize;
+				for (int i = 0; i < count; i++) {
+					prewarmSession(metaBean);
+				}
+			});
+		});
+	}
+
+	private void prewarmSession(MySQLMetaBean metaBean) {
+		try {
+			createSession(metaBean, null, (optSession, sender, exeSucces, retVal) -> {
+				if (exeSucces) {
+					optSession.setDefaultChannelRead(metaBean.isSlaveNode());
+					optSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+					optSession.change2ReadOpts();
+					addMySQLSession(metaBean, optSession);
+				}
+			});
+		} catch (IOException e) {
+			logger.error("error to create idle backend connection for {}", metaBean, e);
+		}
+	}
 	
 	/**
 	 * 从当前reactor中获取连接
@@ -102,33 +384,27 @@ public class MycatReactorThread extends ProxyReactorThread<MycatSession> {
 	 */
 	public void getMySQLSession(MycatSession currMycatSession,boolean runOnSlave,MySQLMetaBean targetMetaBean,AsynTaskCallBack<MySQLSession> callback) throws IOException {
 		
-		MySQLSession mysqlSession = null;
-		// 3. 从当前ator 其他mycatSession 中获取连接
-		LinkedList<MycatSession> mycatSessions = getAllSessions();
-		mysqlSession = mycatSessions.stream()
-				.filter(f -> !f.equals(currMycatSession))
-                .map(mycatSession->mycatSession.getCurrCachedSession(targetMetaBean, runOnSlave,true))
-                .filter(session -> session != null).findFirst().orElse(null);
-        if (mysqlSession != null) {
-			logger.debug("Use reactor cached backend connections for {}  {}",
+		// 3. 从当前reactor的空闲队列中获取已经建立的连接
+		MySQLSession mysqlSession = pollIdleSession(targetMetaBean, currMycatSession);
+		if (mysqlSession != null) {
+			logger.debug("Using the existing session in the datasource  for {}. {}:{}",
 					(runOnSlave ? "read" : "write"),
-					mysqlSession);
-            mysqlSession.getMycatSession().unbindBeckend(mysqlSession);
-            currMycatSession.bindBackend(mysqlSession);
-            syncAndExecute(mysqlSession,callback);
-            return;
-        }
-
-        //4. 从ds中获取已经建立的连接
+					mysqlSession.getMySQLMetaBean().getDsMetaBean().getIp(),
+					mysqlSession.getMySQLMetaBean().getDsMetaBean().getPort());
+			targetMetaBean.poolHit();
+			currMycatSession.bindBackend(mysqlSession);
+			syncAndExecute(mysqlSession,callback);
+			return;
+		}
 
-		LinkedList<MySQLSession> mySQLSessionList = mySQLSessionMap.get(targetMetaBean);
-		if (mySQLSessionList != null && !mySQLSessionList.isEmpty()) {
-			mysqlSession = mySQLSessionList.removeLast();
-			if(mysqlSession!=null && mysqlSession.isIDLE()){
-				logger.debug("Using the existing session in the datasource  for {}. {}:{}",
+		// 4. 连接数已满时, 从当前reactor 其他mycatSession 中获取空闲连接
+		if (targetMetaBean.getConnectionCount() >= targetMetaBean.getDsMetaBean().getMaxCon()) {
+			mysqlSession = pollCachedIdleSession(targetMetaBean, currMycatSession);
+			if (mysqlSession != null) {
+				logger.debug("Use reactor cached backend connections for {}  {}",
 						(runOnSlave ? "read" : "write"),
-						mysqlSession.getMySQLMetaBean().getDsMetaBean().getIp(),
-						mysqlSession.getMySQLMetaBean().getDsMetaBean().getPort());
+						mysqlSession);
+				targetMetaBean.poolHit();
 				currMycatSession.bindBackend(mysqlSession);
 				syncAndExecute(mysqlSession,callback);
 				return;
@@ -139,6 +415,7 @@ public class MycatReactorThread extends ProxyReactorThread<MycatSession> {
 		if(logger.isDebugEnabled()){
 			logger.debug("create new connection for "+(runOnSlave?"read":"write"));
 		}
+		targetMetaBean.poolMiss();
     	
 		createSession(targetMetaBean, currMycatSession.schema, (optSession, Sender, exeSucces, retVal) -> {
 
@@ -166,6 +443,46 @@ public class MycatReactorThread extends ProxyReactorThread<MycatSession> {
 		});
 	}
 	
+	/**
+	 * 使用当前reactor中另外的连接在后端执行 KILL QUERY, 中止指定连接上正在执行的语句.
+	 * 被中止的连接返回错误后继续可用, 执行 KILL 的连接成功后归还到空闲队列.
+	 * 语句可能在 KILL 到达之前结束, KILL 完成之前目标连接不执行新的语句, 也不归还到空闲队列
+	 */
+	public void killQuery(MySQLSession target) {
+		// 语句已经结束, 或者连接已经归还, 不能再中止
+		if (target.isClosed() || target.isIDLE()) {
+			return;
+		}
+		MySQLMetaBean metaBean = target.getMySQLMetaBean();
+		long threadId = target.getThreadId();
+		target.killStarted();
+		try {
+			getMysqlSession(metaBean, (killSession, sender, success, result) -> {
+				if (!success) {
+					if (killSession != null) {
+						killSession.close(false, "kill query error");
+					}
+					target.killFinished();
+					return;
+				}
+				BackendKillQueryTask task = new BackendKillQueryTask(killSession, threadId);
+				task.setCallback((optSession, sder, killed, rv) -> {
+					optSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+					if (killed) {
+						addMySQLSession(metaBean, optSession);
+					} else {
+						optSession.close(false, "kill query error");
+					}
+					target.killFinished();
+				});
+				task.kill();
+			});
+		} catch (IOException e) {
+			logger.warn("kill query {} on {} error. {}", threadId, metaBean, e.getMessage());
+			target.killFinished();
+		}
+	}
+
 	/**
 	 *  用于心跳 时，获取可用连接
 	 * @param mySQLMetaBean
@@ -173,39 +490,35 @@ public class MycatReactorThread extends ProxyReactorThread<MycatSession> {
 	 * @throws IOException
 	 */
 	public void getMysqlSession(MySQLMetaBean mySQLMetaBean,AsynTaskCallBack<MySQLSession> callback) throws IOException{
-		MySQLSession mysqlSession = null;
-		// 3. 从当前ator 其他mycatSession 中获取连接
-		LinkedList<MycatSession> mycatSessions = getAllSessions();
-		mysqlSession = mycatSessions.stream()
-                .map(mycatSession->mycatSession.getMySQLSession(mySQLMetaBean))
-                .filter(session -> session != null).findFirst().orElse(null);
-        if (mysqlSession != null) {
-        	if (logger.isDebugEnabled()) {
-    			logger.debug("Use front sessionMap cached backend connections.{}",mysqlSession);
-    		}
-        	
-        	mysqlSession.getMycatSession().unbindBeckend(mysqlSession);
-            callback.finished(mysqlSession, null, true, null);
-            return;
-        }
-        
-        //4. 从ds中获取已经建立的连接
-        LinkedList<MySQLSession> mySQLSessionList = mySQLSessionMap.get(mySQLMetaBean);
-  		if (mySQLSessionList != null && !mySQLSessionList.isEmpty()) {
-  			mysqlSession = mySQLSessionList.removeLast();
-  			if(mysqlSession!=null){
-  				if(logger.isDebugEnabled()){
-  					logger.debug("Using the existing session in the datasource .{} \n {}",mysqlSession.getMySQLMetaBean(),mysqlSession);
-  				}
-  				callback.finished(mysqlSession, null, true, null);
-  				return;
-  			}
-  		}
+		// 3. 从当前reactor的空闲队列中获取已经建立的连接
+		MySQLSession mysqlSession = pollIdleSession(mySQLMetaBean);
+		if (mysqlSession != null) {
+			if(logger.isDebugEnabled()){
+				logger.debug("Using the existing session in the datasource .{} \n {}",mysqlSession.getMySQLMetaBean(),mysqlSession);
+			}
+			mySQLMetaBean.poolHit();
+			callback.finished(mysqlSession, null, true, null);
+			return;
+		}
+
+		// 4. 连接数已满时, 从当前reactor 其他mycatSession 中获取空闲连接
+		if (mySQLMetaBean.getConnectionCount() >= mySQLMetaBean.getDsMetaBean().getMaxCon()) {
+			mysqlSession = pollCachedIdleSession(mySQLMetaBean, null);
+			if (mysqlSession != null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Use front sessionMap cached backend connections.{}",mysqlSession);
+				}
+				mySQLMetaBean.poolHit();
+				callback.finished(mysqlSession, null, true, null);
+				return;
+			}
+		}
   		
           // 5. 新建连接
   		if(logger.isDebugEnabled()){
   			logger.debug("create new connection ");
   		}
+  		mySQLMetaBean.poolMiss();
       	
   		createSession(mySQLMetaBean, null, (optSession, Sender, exeSucces, retVal) -> {
 
@@ -229,6 +542,31 @@ public class MycatReactorThread extends ProxyReactorThread<MycatSession> {
 	 */
 	public void syncAndExecute(MySQLSession mysqlSession,AsynTaskCallBack<MySQLSession> callback) throws IOException {
 		MycatSession mycatSession = mysqlSession.getMycatSession();
+		MySQLMetaBean metaBean = mysqlSession.getMySQLMetaBean();
+		// 同步和执行语句期间连接不能转给其他前端会话, 响应读取完成后重新标记为空闲
+		mysqlSession.setIdle(false);
+		if (mysqlSession.isKillPending()) {
+			// 上一条语句的 KILL QUERY 还未完成, 完成后再执行, 以免新的语句被中止
+			mysqlSession.runAfterKill(() -> {
+				try {
+					syncAndExecute(mysqlSession, callback);
+				} catch (IOException e) {
+					logger.warn("execute on {} after kill query error. {}", mysqlSession, e.getMessage());
+					mysqlSession.close(false, e.getMessage());
+					mycatSession.close(false, e.getMessage());
+				}
+			});
+			return;
+		}
+		boolean withTransactionState = !metaBean.isSlaveNode();
+		if (mycatSession.stateFingerprint(withTransactionState) == mysqlSession.stateFingerprint(withTransactionState)) {
+			// 状态一致,不需要同步. 不创建同步任务,也不占用新的 buffer
+			metaBean.stateSyncSkipped();
+			mycatSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+			mysqlSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+			syncSchemaToBackend(mysqlSession, callback);
+			return;
+		}
 		BackendSynchronzationTask backendSynchronzationTask = new BackendSynchronzationTask(mycatSession,mysqlSession);
 		backendSynchronzationTask.setCallback((optSession, sender, exeSucces, rv) -> {
 			//恢复默认的Handler
@@ -238,6 +576,8 @@ public class MycatReactorThread extends ProxyReactorThread<MycatSession> {
 				syncSchemaToBackend(optSession,callback);
 			} else {
 				ErrorPacket errPkg = (ErrorPacket) rv;
+				// 部分同步语句可能已经生效, 连接状态未知, 不能再归还给连接池
+				optSession.close(false, errPkg.message);
 				mycatSession.close(true, errPkg.message);
 			}
 		});
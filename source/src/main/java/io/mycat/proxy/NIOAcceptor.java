@@ -8,11 +8,15 @@ package io.mycat.proxy;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
 import java.net.StandardSocketOptions;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,12 +36,20 @@ import io.mycat.proxy.man.MyCluster.ClusterState;
 
 public class NIOAcceptor extends ProxyReactorThread<Session> {
 	private final static Logger logger = LoggerFactory.getLogger(NIOAcceptor.class);
+	// 未接受连接的队列长度, 默认的50在大量客户端同时重连时会导致SYN被丢弃后重传
+	private final static int ACCEPT_BACKLOG = 2048;
+	private final static SocketOption<Boolean> SO_REUSEPORT = findReusePortOption();
 	protected SessionManager<AdminSession> adminSessionMan;
 
 	private ServerSocketChannel proxyServerSocketChannel;
 	private ServerSocketChannel clusterServerSocketChannel;
 	private ServerSocketChannel loadBalanceServerSocketChannel;
 
+	// 前端连接由各reactor直接接受, 不经过acceptor转交
+	private boolean reactorAccept;
+	// 使用SO_REUSEPORT时为其他reactor额外打开的监听通道
+	private final List<ServerSocketChannel> reactorServerSocketChannels = new ArrayList<>();
+
 	public NIOAcceptor(BufferPool bufferPool) throws IOException {
 		super(bufferPool);
 		this.setName("NIO-Acceptor");
@@ -77,7 +89,14 @@ public class NIOAcceptor extends ProxyReactorThread<Session> {
 	}
 
 	public void stopServerChannel(boolean clusterServer) {
-		ServerSocketChannel socketChannel = clusterServer ? clusterServerSocketChannel : proxyServerSocketChannel;
+		closeServerChannel(clusterServer ? clusterServerSocketChannel : proxyServerSocketChannel);
+		if (!clusterServer) {
+			reactorServerSocketChannels.forEach(this::closeServerChannel);
+			reactorServerSocketChannels.clear();
+		}
+	}
+
+	private void closeServerChannel(ServerSocketChannel socketChannel) {
 		if (socketChannel != null && socketChannel.isOpen()) {
 			logger.warn("ServerSocketChannel close, {}", socketChannel);
 			try {
@@ -88,6 +107,54 @@ public class NIOAcceptor extends ProxyReactorThread<Session> {
 		}
 	}
 
+	/**
+	 * 前端端口已经打开并且开启了reactor直接接受连接时, 把监听通道交给各reactor.
+	 * 支持SO_REUSEPORT时每个reactor绑定自己的监听通道, 由内核分配连接;
+	 * 否则所有reactor共享同一个监听通道, 连接由先调用accept的reactor取得
+	 */
+	public void startReactorAccept(ProxyReactorThread<?>[] reactors) throws IOException {
+		if (!reactorAccept || proxyServerSocketChannel == null || !proxyServerSocketChannel.isOpen()) {
+			return;
+		}
+		boolean reusePort = isReusePortSupported(proxyServerSocketChannel);
+		SocketAddress address = proxyServerSocketChannel.getLocalAddress();
+		logger.info("reactors accept proxy connections on {}, SO_REUSEPORT {}", address, reusePort);
+		for (int i = 0; i < reactors.length; i++) {
+			ServerSocketChannel serverChannel = proxyServerSocketChannel;
+			if (i > 0 && reusePort) {
+				serverChannel = bindServerChannel(address);
+				reactorServerSocketChannels.add(serverChannel);
+			}
+			reactors[i].registerServerChannel(serverChannel, ServerType.MYCAT);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> findReusePortOption() {
+		// JDK 9 开始才有 StandardSocketOptions.SO_REUSEPORT
+		try {
+			return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static boolean isReusePortSupported(ServerSocketChannel serverChannel) {
+		return SO_REUSEPORT != null && serverChannel.supportedOptions().contains(SO_REUSEPORT);
+	}
+
+	private ServerSocketChannel bindServerChannel(SocketAddress address) throws IOException {
+		final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		if (reactorAccept && isReusePortSupported(serverChannel)) {
+			// 必须在bind之前设置, 之后其他reactor才能绑定同一个端口
+			serverChannel.setOption(SO_REUSEPORT, true);
+		}
+		serverChannel.bind(address, ACCEPT_BACKLOG);
+		serverChannel.configureBlocking(false);
+		return serverChannel;
+	}
+
 	protected void processAcceptKey(ReactorEnv reactorEnv, SelectionKey curKey) throws IOException {
 		ServerSocketChannel serverSocket = (ServerSocketChannel) curKey.channel();
 		// 接收通道，设置为非阻塞模式
@@ -205,12 +272,10 @@ public class NIOAcceptor extends ProxyReactorThread<Session> {
 
 	private void openServerChannel(Selector selector, String bindIp, int bindPort, ServerType serverType)
 			throws IOException {
-		final ServerSocketChannel serverChannel = ServerSocketChannel.open();
-		final InetSocketAddress isa = new InetSocketAddress(bindIp, bindPort);
-		serverChannel.bind(isa);
-		serverChannel.configureBlocking(false);
-		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
-		serverChannel.register(selector, SelectionKey.OP_ACCEPT, serverType);
+		final ServerSocketChannel serverChannel = bindServerChannel(new InetSocketAddress(bindIp, bindPort));
+		if (serverType != ServerType.MYCAT || !reactorAccept) {
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT, serverType);
+		}
 		if (serverType == ServerType.CLUSTER) {
 			logger.info("open cluster server port on {}:{}", bindIp, bindPort);
 			clusterServerSocketChannel = serverChannel;
@@ -227,6 +292,14 @@ public class NIOAcceptor extends ProxyReactorThread<Session> {
 		return this.selector;
 	}
 
+	public boolean isReactorAccept() {
+		return reactorAccept;
+	}
+
+	public void setReactorAccept(boolean reactorAccept) {
+		this.reactorAccept = reactorAccept;
+	}
+
 	public enum ServerType {
 		CLUSTER, LOAD_BALANCER, MYCAT;
 	}
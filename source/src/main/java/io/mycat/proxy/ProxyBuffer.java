@@ -204,6 +204,14 @@ public class ProxyBuffer {
 		return bytes;
 	}
 
+	/**
+	 * 拷贝数据到已有的数组中, 不新建数组
+	 */
+	public void getBytes(int index, byte[] dst, int offset, int length) {
+		buffer.position(index);
+		buffer.get(dst, offset, length);
+	}
+
 	public byte getByte(int index) {
 		buffer.position(index);
 		byte b = buffer.get();
@@ -388,6 +396,13 @@ public class ProxyBuffer {
 		return this;
 	}
 
+	public ProxyBuffer writeBytes(byte[] bytes, int offset, int length) {
+		buffer.position(writeIndex);
+		buffer.put(bytes, offset, length);
+		writeIndex += length;
+		return this;
+	}
+
 	public ProxyBuffer writeLenencBytes(byte[] bytes) {
 		putLenencInt(writeIndex, bytes.length);
 		int offset = getLenencLength(bytes.length);
@@ -1,13 +1,18 @@
 package io.mycat.proxy;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.net.ConnectException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,12 +27,26 @@ import io.mycat.proxy.buffer.BufferPool;
  */
 public class ProxyReactorThread<T extends Session> extends Thread {
 	protected final static long SELECTOR_TIMEOUT = 100;
+	// 一次可接受事件最多接受的连接数, 避免连接风暴时其他会话的读写得不到处理
+	protected final static int MAX_ACCEPT_PER_EVENT = 64;
+	// 一次循环中IO占用的时间百分比, 其余时间执行任务
+	protected final static int IO_RATIO = 50;
+	// 执行多少个任务后检查一次是否超出时间
+	private final static int JOB_CHECK_INTERVAL = 64;
+	// 时间轮的槽数, 刻度与select超时相同
+	private final static int TIMER_WHEEL_SIZE = 512;
 	protected final SessionManager<T> sessionMan;
 	protected final static Logger logger = LoggerFactory.getLogger(ProxyReactorThread.class);
 	protected final Selector selector;
 	protected final BufferPool bufPool;
 	protected ConcurrentLinkedQueue<Runnable> pendingJobs = new ConcurrentLinkedQueue<Runnable>();
 	protected LinkedList<T> allSessions = new LinkedList<T>();
+	// 替换后的已选择key集合, 替换失败时为null, 使用selector默认的集合
+	private final SelectedKeySet selectedKeys;
+	// 本次select之后是否已经唤醒过, 避免其他线程连续提交任务时重复调用wakeup
+	private final AtomicBoolean wakenUp = new AtomicBoolean();
+	// 会话的各种超时任务, 由事件循环推进
+	protected final TimerWheel timerWheel = new TimerWheel(SELECTOR_TIMEOUT, TIMER_WHEEL_SIZE);
 
 
 	public Selector getSelector() {
@@ -38,42 +57,163 @@ public class ProxyReactorThread<T extends Session> extends Thread {
 		return allSessions;
 	}
 
+	public BufferPool getBufPool() {
+		return bufPool;
+	}
+
+	/**
+	 * 当前reactor的时间轮, 只能在reactor线程中使用
+	 */
+	public TimerWheel getTimerWheel() {
+		return timerWheel;
+	}
+
+	/**
+	 * 当前线程为reactor时返回其时间轮, 否则返回null
+	 */
+	public static TimerWheel currentTimerWheel() {
+		Thread thread = Thread.currentThread();
+		return thread instanceof ProxyReactorThread ? ((ProxyReactorThread<?>) thread).timerWheel : null;
+	}
+
+	/**
+	 * 在reactor线程中按固定间隔重复执行的任务, 由时间轮调度
+	 */
+	public void addCronNIOJob(Runnable job, long periodMillis) {
+		Runnable cronJob = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					job.run();
+				} finally {
+					timerWheel.schedule(this, periodMillis);
+				}
+			}
+		};
+		addNIOJob(() -> timerWheel.schedule(cronJob, periodMillis));
+	}
+
 	@SuppressWarnings("unchecked")
 	public ProxyReactorThread(BufferPool bufPool) throws IOException {
 		this.bufPool = bufPool;
+		// 每个reactor独占自己的bufferpool
+		this.bufPool.bindOwner(this);
 		this.selector = Selector.open();
+		this.selectedKeys = replaceSelectedKeys(selector);
 		sessionMan = (SessionManager<T>) ProxyRuntime.INSTANCE.getSessionManager();
 	}
 
 	public void acceptNewSocketChannel(Object keyAttachement, final SocketChannel socketChannel) throws IOException {
-		pendingJobs.offer(() -> {
+		addNIOJob(() -> registerNewSocketChannel(keyAttachement, socketChannel));
+	}
+
+	/**
+	 * 用数组实现的集合替换selector内部的已选择key集合, 依赖JDK的实现类, 不能访问时保持不变
+	 */
+	private static SelectedKeySet replaceSelectedKeys(Selector selector) {
+		try {
+			Class<?> implClass = Class.forName("sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+			if (!implClass.isAssignableFrom(selector.getClass())) {
+				return null;
+			}
+			Field selectedKeysField = implClass.getDeclaredField("selectedKeys");
+			Field publicSelectedKeysField = implClass.getDeclaredField("publicSelectedKeys");
+			selectedKeysField.setAccessible(true);
+			publicSelectedKeysField.setAccessible(true);
+			SelectedKeySet keySet = new SelectedKeySet();
+			selectedKeysField.set(selector, keySet);
+			publicSelectedKeysField.set(selector, keySet);
+			return keySet;
+		} catch (Exception e) {
+			logger.info("use default selected key set of {}, {}", selector.getClass().getName(), e.toString());
+			return null;
+		}
+	}
+
+	private void registerNewSocketChannel(Object keyAttachement, SocketChannel socketChannel) {
+		try {
+			T session = sessionMan.createSession(keyAttachement, this.bufPool, selector, socketChannel, true);
+			allSessions.add(session);
+		} catch (Exception e) {
+			logger.warn("regist new connection err " + e);
+		}
+	}
+
+	/**
+	 * 由当前reactor直接接受监听端口上的连接, 不再经过acceptor转交. 注册在reactor线程中执行
+	 * 
+	 * @param serverChannel
+	 *            监听的通道, 可以同时注册到多个reactor上
+	 * @param keyAttachement
+	 *            新连接创建会话时使用的附加信息
+	 */
+	public void registerServerChannel(ServerSocketChannel serverChannel, Object keyAttachement) {
+		addNIOJob(() -> {
 			try {
-				T session = sessionMan.createSession(keyAttachement, this.bufPool, selector, socketChannel, true);
-				allSessions.add(session);
-			} catch (Exception e) {
-				logger.warn("regist new connection err " + e);
+				serverChannel.register(selector, SelectionKey.OP_ACCEPT, keyAttachement);
+			} catch (ClosedChannelException e) {
+				logger.warn("register server channel err " + e);
 			}
 		});
 	}
 
+	/**
+	 * 提交在reactor线程中执行的任务, 其他线程提交时唤醒阻塞的select, 一次select期间只唤醒一次
+	 */
 	public void addNIOJob(Runnable job) {
 		pendingJobs.offer(job);
+		if (Thread.currentThread() != this && wakenUp.compareAndSet(false, true)) {
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * 等待执行的任务数, 用于估计reactor的繁忙程度
+	 */
+	public int getPendingJobCount() {
+		return pendingJobs.size();
 	}
 
-	private void processNIOJob() {
+	/**
+	 * 执行任务直到队列为空或者超过截止时间, 剩余的任务在下一次循环执行
+	 */
+	private void processNIOJob(long deadline) {
 		Runnable nioJob = null;
+		int count = 0;
 		while ((nioJob = pendingJobs.poll()) != null) {
 			try {
 				nioJob.run();
 			} catch (Exception e) {
 				logger.warn("run nio job err ", e);
 			}
+			if (++count % JOB_CHECK_INTERVAL == 0 && System.nanoTime() - deadline >= 0) {
+				break;
+			}
 		}
-
 	}
 
+	/**
+	 * 接受直接注册在reactor上的监听端口的连接. 多个reactor共享同一个监听通道时, 
+	 * 每个连接只会被其中一个reactor取到, 其他reactor的accept返回null
+	 */
 	protected void processAcceptKey(ReactorEnv reactorEnv, SelectionKey curKey) throws IOException {
-
+		ServerSocketChannel serverSocket = (ServerSocketChannel) curKey.channel();
+		for (int i = 0; i < MAX_ACCEPT_PER_EVENT; i++) {
+			SocketChannel socketChannel;
+			try {
+				socketChannel = serverSocket.accept();
+			} catch (IOException e) {
+				// 例如文件句柄耗尽, 监听通道继续可用, 不能取消
+				logger.warn("accept new connection err " + e);
+				return;
+			}
+			if (socketChannel == null) {
+				return;
+			}
+			socketChannel.configureBlocking(false);
+			logger.debug("new Client connected: {}", socketChannel);
+			registerNewSocketChannel(curKey.attachment(), socketChannel);
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -107,57 +247,83 @@ public class ProxyReactorThread<T extends Session> extends Thread {
 	}
 
 	public void run() {
-		long ioTimes = 0;
 		ReactorEnv reactorEnv = new ReactorEnv();
 		while (true) {
 			try {
-				selector.select(SELECTOR_TIMEOUT);
-				final Set<SelectionKey> keys = selector.selectedKeys();
-				// logger.info("handler keys ,total " + selected);
-				if (keys.isEmpty()) {
-					if (!pendingJobs.isEmpty()) {
-						ioTimes = 0;
-						this.processNIOJob();
-					}
-					continue;
-				} else if ((ioTimes > 5) & !pendingJobs.isEmpty()) {
-					ioTimes = 0;
-					this.processNIOJob();
+				wakenUp.set(false);
+				// 有待执行的任务时不阻塞, 之后提交的任务会唤醒select
+				if (pendingJobs.isEmpty()) {
+					selector.select(SELECTOR_TIMEOUT);
+				} else {
+					selector.selectNow();
 				}
-				ioTimes++;
-				for (final SelectionKey key : keys) {
-					try {
-						int readdyOps = key.readyOps();
-						reactorEnv.curSession = null;
-						// 如果当前收到连接请求
-						if ((readdyOps & SelectionKey.OP_ACCEPT) != 0) {
-							processAcceptKey(reactorEnv, key);
-						}
-						// 如果当前连接事件
-						else if ((readdyOps & SelectionKey.OP_CONNECT) != 0) {
-							this.processConnectKey(reactorEnv, key);
-						} else if ((readdyOps & SelectionKey.OP_READ) != 0) {
-							this.processReadKey(reactorEnv, key);
-
-						} else if ((readdyOps & SelectionKey.OP_WRITE) != 0) {
-							this.processWriteKey(reactorEnv, key);
-						}
-					} catch (Exception e) {
-						logger.warn("Socket IO err :", e);
-						key.cancel();
-						if (reactorEnv.curSession != null) {
-							reactorEnv.curSession.close(false, "Socket IO err:" + e);
-							this.allSessions.remove(reactorEnv.curSession);
-							reactorEnv.curSession = null;
-						}
-					}
-				}
-				keys.clear();
+				long ioStart = System.nanoTime();
+				int ioKeys = processSelectedKeys(reactorEnv);
+				long ioTime = System.nanoTime() - ioStart;
+				// 任务与IO按时间分配, 没有IO事件时任务最多执行一个select超时周期
+				long jobTime = ioKeys == 0 ? TimeUnit.MILLISECONDS.toNanos(SELECTOR_TIMEOUT)
+						: ioTime * (100 - IO_RATIO) / IO_RATIO;
+				processNIOJob(System.nanoTime() + jobTime);
+				timerWheel.advance();
 			} catch (IOException e) {
 				logger.warn("caugh error ", e);
 			}
+		}
+	}
+
+	private int processSelectedKeys(ReactorEnv reactorEnv) {
+		if (selectedKeys != null) {
+			int count = selectedKeys.size();
+			for (int i = 0; i < count; i++) {
+				processKey(reactorEnv, selectedKeys.get(i));
+			}
+			selectedKeys.reset();
+			return count;
+		}
+		final Set<SelectionKey> keys = selector.selectedKeys();
+		int count = keys.size();
+		for (final SelectionKey key : keys) {
+			processKey(reactorEnv, key);
+		}
+		keys.clear();
+		return count;
+	}
 
+	/**
+	 * 处理一个key上本次select就绪的所有事件. 读写事件处理前检查key仍然有效并且仍然关注该事件,
+	 * 前面的处理可能已经关闭了会话或者切换了读写
+	 */
+	private void processKey(ReactorEnv reactorEnv, SelectionKey key) {
+		try {
+			int readdyOps = key.readyOps();
+			reactorEnv.curSession = null;
+			// 如果当前收到连接请求
+			if ((readdyOps & SelectionKey.OP_ACCEPT) != 0) {
+				processAcceptKey(reactorEnv, key);
+				return;
+			}
+			// 如果当前连接事件
+			if ((readdyOps & SelectionKey.OP_CONNECT) != 0) {
+				this.processConnectKey(reactorEnv, key);
+			}
+			if ((readdyOps & SelectionKey.OP_READ) != 0 && isInterested(key, SelectionKey.OP_READ)) {
+				this.processReadKey(reactorEnv, key);
+			}
+			if ((readdyOps & SelectionKey.OP_WRITE) != 0 && isInterested(key, SelectionKey.OP_WRITE)) {
+				this.processWriteKey(reactorEnv, key);
+			}
+		} catch (Exception e) {
+			logger.warn("Socket IO err :", e);
+			key.cancel();
+			if (reactorEnv.curSession != null) {
+				reactorEnv.curSession.close(false, "Socket IO err:" + e);
+				this.allSessions.remove(reactorEnv.curSession);
+				reactorEnv.curSession = null;
+			}
 		}
+	}
 
+	private static boolean isInterested(SelectionKey key, int ops) {
+		return key.isValid() && (key.interestOps() & ops) != 0;
 	}
 }
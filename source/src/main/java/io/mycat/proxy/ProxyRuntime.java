@@ -140,6 +140,19 @@ public class ProxyRuntime {
 		}
 	}
 
+	/**
+	 * 启动后端连接空闲检查任务, 由各reactor的时间轮调度
+	 */
+	public void startBackendIdleCheck() {
+		HeartbeatConfig heartbeatConfig = config.getConfig(ConfigEnum.HEARTBEAT);
+		long period = Math.max(1000L, heartbeatConfig.getHeartbeat().getReplicaIdleCheckPeriod());
+		for (ProxyReactorThread<?> reactor : getReactorThreads()) {
+			if (reactor instanceof MycatReactorThread) {
+				reactor.addCronNIOJob(((MycatReactorThread) reactor)::checkIdleBackends, period);
+			}
+		}
+	}
+
 	public void addBusinessJob(Runnable job) {
 		businessExecutor.execute(job);
 	}
@@ -0,0 +1,76 @@
+package io.mycat.proxy;
+
+import java.nio.channels.SelectionKey;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 替换 Selector 内部基于 HashSet 的已选择key集合, select 时只在数组末尾追加, 遍历和清空不需要哈希和迭代器.
+ * 同一次 select 中同一个 key 只会加入一次, 所以不需要去重
+ *
+ */
+final class SelectedKeySet extends AbstractSet<SelectionKey> {
+	private SelectionKey[] keys = new SelectionKey[1024];
+	private int size;
+
+	@Override
+	public boolean add(SelectionKey key) {
+		if (key == null) {
+			return false;
+		}
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size << 1);
+		}
+		keys[size++] = key;
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return false;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	SelectionKey get(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * 处理完成后清空, 同时释放对key的引用
+	 */
+	void reset() {
+		Arrays.fill(keys, 0, size, null);
+		size = 0;
+	}
+
+	@Override
+	public Iterator<SelectionKey> iterator() {
+		return new Iterator<SelectionKey>() {
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < size;
+			}
+
+			@Override
+			public SelectionKey next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return keys[index++];
+			}
+		};
+	}
+}
@@ -0,0 +1,176 @@
+package io.mycat.proxy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 哈希时间轮, 每个reactor一个, 由reactor的事件循环推进.
+ * 超时任务按到期的刻度放入对应的槽, 槽内为双向链表, 添加和取消都是O(1), 推进时只检查经过的槽.
+ * 只能在所属的reactor线程中使用, 不需要同步
+ *
+ */
+public final class TimerWheel {
+	private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+	private final long tickNanos;
+	private final int mask;
+	private final Timeout[] wheel;
+	private final long startNanos;
+	// 下一个要处理的刻度
+	private long currentTick;
+	private int size;
+
+	/**
+	 * @param tickMillis
+	 *            每个刻度的毫秒数, 即超时的精度
+	 * @param wheelSize
+	 *            槽的数量, 调整为2的幂
+	 */
+	public TimerWheel(long tickMillis, int wheelSize) {
+		this(tickMillis, wheelSize, System.nanoTime());
+	}
+
+	TimerWheel(long tickMillis, int wheelSize, long startNanos) {
+		int normalized = Integer.highestOneBit(Math.max(wheelSize, 1) * 2 - 1);
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.mask = normalized - 1;
+		this.wheel = new Timeout[normalized];
+		this.startNanos = startNanos;
+	}
+
+	/**
+	 * 在指定的毫秒数之后执行任务
+	 */
+	public Timeout schedule(Runnable task, long delayMillis) {
+		return schedule(task, delayMillis, System.nanoTime());
+	}
+
+	Timeout schedule(Runnable task, long delayMillis, long nowNanos) {
+		long deadline = nowNanos - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+		// 向上取整, 不会早于指定时间执行
+		long deadlineTick = Math.max((deadline + tickNanos - 1) / tickNanos, currentTick);
+		Timeout timeout = new Timeout(this, task, deadlineTick);
+		link(timeout);
+		return timeout;
+	}
+
+	/**
+	 * 执行到期的任务
+	 * 
+	 * @return 执行的任务数
+	 */
+	public int advance() {
+		return advance(System.nanoTime());
+	}
+
+	int advance(long nowNanos) {
+		long targetTick = (nowNanos - startNanos) / tickNanos;
+		if (targetTick < currentTick) {
+			return 0;
+		}
+		long firstTick = currentTick;
+		// 超过一圈没有推进时, 每个槽只需要检查一次
+		long lastTick = Math.min(targetTick, firstTick + wheel.length - 1);
+		// 先推进刻度, 任务执行时新加入的任务不会早于下一个刻度
+		currentTick = targetTick + 1;
+		int expired = 0;
+		for (long tick = firstTick; tick <= lastTick; tick++) {
+			expired += expire((int) (tick & mask), targetTick);
+		}
+		return expired;
+	}
+
+	private int expire(int slot, long targetTick) {
+		int expired = 0;
+		Timeout timeout = wheel[slot];
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			if (timeout.deadlineTick <= targetTick) {
+				unlink(timeout);
+				expired++;
+				try {
+					timeout.task.run();
+				} catch (Exception e) {
+					logger.warn("run timeout task err ", e);
+				}
+				// 任务中取消了下一个任务时从头检查, 已经检查过的任务都未到期
+				if (next != null && next.slot < 0) {
+					next = wheel[slot];
+				}
+			}
+			timeout = next;
+		}
+		return expired;
+	}
+
+	private void link(Timeout timeout) {
+		int slot = (int) (timeout.deadlineTick & mask);
+		timeout.slot = slot;
+		timeout.next = wheel[slot];
+		if (timeout.next != null) {
+			timeout.next.prev = timeout;
+		}
+		wheel[slot] = timeout;
+		size++;
+	}
+
+	private void unlink(Timeout timeout) {
+		if (timeout.prev != null) {
+			timeout.prev.next = timeout.next;
+		} else {
+			wheel[timeout.slot] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.prev = timeout.prev;
+		}
+		timeout.prev = null;
+		timeout.next = null;
+		timeout.slot = -1;
+		size--;
+	}
+
+	/**
+	 * 等待执行的任务数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 时间轮中的一个任务
+	 */
+	public static final class Timeout {
+		private final TimerWheel timerWheel;
+		private final Runnable task;
+		private final long deadlineTick;
+		private Timeout prev;
+		private Timeout next;
+		// 所在的槽, 已执行或者已取消时为-1
+		private int slot = -1;
+
+		private Timeout(TimerWheel timerWheel, Runnable task, long deadlineTick) {
+			this.timerWheel = timerWheel;
+			this.task = task;
+			this.deadlineTick = deadlineTick;
+		}
+
+		/**
+		 * 取消未执行的任务
+		 * 
+		 * @return 任务已经执行或者已经取消时返回false
+		 */
+		public boolean cancel() {
+			if (slot < 0) {
+				return false;
+			}
+			timerWheel.unlink(this);
+			return true;
+		}
+
+		public boolean isPending() {
+			return slot >= 0;
+		}
+	}
+}
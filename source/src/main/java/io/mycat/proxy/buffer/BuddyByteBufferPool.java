@@ -0,0 +1,334 @@
+package io.mycat.proxy.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于伙伴算法(buddy)的DirectByteBuffer池.
+ *
+ * 所有页的chunk统一编号,按 2^order 个chunk 划分大小级别,每个级别维护一个空闲链表(用数组实现的双向链表,不产生对象)。
+ * 分配时从所需级别向上查找第一个非空链表并逐级拆分,回收时与伙伴块逐级合并,
+ * 分配与回收的开销只与级别数(log2(每页chunk数))相关,与页的占用率无关。
+ * 块不会跨页,超过一页大小或者堆外内存耗尽时分配堆内内存。
+ *
+ * 绑定了owner线程(reactor线程)后,owner线程的分配与回收不加锁;其他线程归还的buffer放入回收队列,
+ * 由owner线程在下次分配时统一回收,其他线程的分配请求直接分配堆内内存,不会访问池内部状态。
+ * 未绑定owner时所有操作通过CAS标志互斥。
+ *
+ * 分配出去的buffer登记在 allocatedBlocks 中以定位所在的块,不依赖 DirectBuffer 的地址;
+ * 每个块首chunk在 allocatedBits 中记录是否已分配,回收不在池中或已经回收(包括已合并到上级块)的buffer会被拒绝。
+ */
+public class BuddyByteBufferPool implements BufferPool {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BuddyByteBufferPool.class);
+
+	private static final byte NOT_FREE = -1;
+	private static final int NIL = -1;
+
+	private final ByteBuffer[] allPages;
+	/**
+	 * 分配出去的buffer -> 块首chunk, 按对象标识查找
+	 */
+	private final Map<ByteBuffer, Integer> allocatedBlocks;
+	private final int chunkSize;
+	private final int pageSize;
+	private final short pageCount;
+	private final int chunksPerPage;
+	private final int maxOrder;
+
+	/**
+	 * 每个空闲块首chunk上记录该块的级别,非空闲块首或非块首为 NOT_FREE
+	 */
+	private final byte[] freeOrder;
+	private final int[] next;
+	private final int[] prev;
+	private final int[] freeHeads;
+	/**
+	 * 每个chunk一位,已分配块的块首chunk置位
+	 */
+	private final long[] allocatedBits;
+
+	private final AtomicBoolean allocLockStatus = new AtomicBoolean(false);
+	private volatile Thread owner;
+	/**
+	 * 非owner线程归还的buffer
+	 */
+	private final ConcurrentLinkedQueue<ByteBuffer> remoteRecycleQueue = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 统计信息,只由owner线程(或持有锁的线程)修改
+	 */
+	private long usedBytes;
+	private long allocateTimes;
+	private long heapAllocateTimes;
+	private long remoteRecycleTimes;
+
+	public BuddyByteBufferPool(int pageSize, short chunkSize, short pageCount) {
+		if (chunkSize <= 0 || pageSize < chunkSize) {
+			throw new IllegalArgumentException("invalid buffer pool settings. pageSize " + pageSize + ",chunkSize " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		this.pageSize = pageSize;
+		this.pageCount = pageCount;
+		this.chunksPerPage = pageSize / chunkSize;
+		this.maxOrder = 31 - Integer.numberOfLeadingZeros(chunksPerPage);
+
+		int totalChunks = chunksPerPage * pageCount;
+		freeOrder = new byte[totalChunks];
+		next = new int[totalChunks];
+		prev = new int[totalChunks];
+		freeHeads = new int[maxOrder + 1];
+		allocatedBits = new long[(totalChunks + 63) >>> 6];
+		Arrays.fill(freeOrder, NOT_FREE);
+		Arrays.fill(freeHeads, NIL);
+
+		allPages = new ByteBuffer[pageCount];
+		// 按最多同时分配的块数预留容量, 运行时不再扩容
+		allocatedBlocks = new IdentityHashMap<>(totalChunks);
+		for (int i = 0; i < pageCount; i++) {
+			allPages[i] = ByteBuffer.allocateDirect(pageSize);
+			initPageFreeBlocks(i * chunksPerPage);
+		}
+	}
+
+	/**
+	 * 将一页拆成尽可能大的对齐块放入空闲链表, 每页chunk数不是2的幂时末尾会留下较小的块
+	 */
+	private void initPageFreeBlocks(int pageStart) {
+		int offset = 0;
+		while (offset < chunksPerPage) {
+			int order = maxOrder;
+			while ((offset & ((1 << order) - 1)) != 0 || offset + (1 << order) > chunksPerPage) {
+				order--;
+			}
+			pushFree(pageStart + offset, order);
+			offset += 1 << order;
+		}
+	}
+
+	@Override
+	public ByteBuffer allocate() {
+		return allocate(chunkSize);
+	}
+
+	@Override
+	public void bindOwner(Thread ownerThread) {
+		this.owner = ownerThread;
+	}
+
+	@Override
+	public ByteBuffer allocate(int size) {
+		final Thread ownerThread = owner;
+		if (ownerThread == null) {
+			lock();
+			try {
+				return doAllocate(size);
+			} finally {
+				allocLockStatus.set(false);
+			}
+		} else if (ownerThread == Thread.currentThread()) {
+			drainRemoteRecycleQueue();
+			return doAllocate(size);
+		}
+		// 非owner线程,不访问池内部状态
+		return ByteBuffer.allocate(size);
+	}
+
+	@Override
+	public void recycle(ByteBuffer theBuf) {
+		if (!theBuf.isDirect()) {
+			theBuf.clear();
+			return;
+		}
+		final Thread ownerThread = owner;
+		if (ownerThread == null) {
+			lock();
+			try {
+				doRecycle(theBuf);
+			} finally {
+				allocLockStatus.set(false);
+			}
+		} else if (ownerThread == Thread.currentThread()) {
+			doRecycle(theBuf);
+		} else {
+			remoteRecycleQueue.offer(theBuf);
+		}
+	}
+
+	private void drainRemoteRecycleQueue() {
+		ByteBuffer theBuf;
+		while ((theBuf = remoteRecycleQueue.poll()) != null) {
+			remoteRecycleTimes++;
+			doRecycle(theBuf);
+		}
+	}
+
+	private ByteBuffer doAllocate(int size) {
+		final int theChunkCount = size / chunkSize + (size % chunkSize == 0 ? 0 : 1);
+		int chunk = NIL;
+		int order = 0;
+		// 超过一页大小,分配堆内 内存,用完释放
+		if (theChunkCount <= chunksPerPage) {
+			order = orderOf(theChunkCount);
+			chunk = allocateBlock(order);
+		}
+		// 如果堆外内存，没有可用空间,分配 堆内内存
+		if (chunk == NIL) {
+			heapAllocateTimes++;
+			return ByteBuffer.allocate(size);
+		}
+		ByteBuffer byteBuf = sliceOf(chunk, order);
+		allocatedBlocks.put(byteBuf, chunk);
+		allocatedBits[chunk >>> 6] |= 1L << chunk;
+		allocateTimes++;
+		usedBytes += byteBuf.capacity();
+		return byteBuf;
+	}
+
+	private void doRecycle(ByteBuffer theBuf) {
+		Integer block = allocatedBlocks.remove(theBuf);
+		if (block == null) {
+			LOGGER.warn("warning ,not recycled buffer, not allocated from this pool or recycled twice " + theBuf);
+			return;
+		}
+		final int chunk = block;
+		if ((allocatedBits[chunk >>> 6] & (1L << chunk)) == 0) {
+			LOGGER.warn("warning ,buffer recycled twice " + theBuf);
+			return;
+		}
+		allocatedBits[chunk >>> 6] &= ~(1L << chunk);
+		final int capacity = theBuf.capacity();
+		freeBlock(chunk, Integer.numberOfTrailingZeros(capacity / chunkSize));
+		usedBytes -= capacity;
+	}
+
+	private int allocateBlock(int order) {
+		int found = order;
+		while (found <= maxOrder && freeHeads[found] == NIL) {
+			found++;
+		}
+		if (found > maxOrder) {
+			return NIL;
+		}
+		int chunk = freeHeads[found];
+		removeFree(chunk, found);
+		// 逐级拆分,右半部分放回空闲链表
+		while (found > order) {
+			found--;
+			pushFree(chunk + (1 << found), found);
+		}
+		return chunk;
+	}
+
+	private void freeBlock(int chunk, int order) {
+		int pageStart = chunk - chunk % chunksPerPage;
+		int local = chunk - pageStart;
+		while (order < maxOrder) {
+			int buddy = local ^ (1 << order);
+			if (buddy + (1 << order) > chunksPerPage || freeOrder[pageStart + buddy] != order) {
+				break;
+			}
+			removeFree(pageStart + buddy, order);
+			local = Math.min(local, buddy);
+			order++;
+		}
+		pushFree(pageStart + local, order);
+	}
+
+	private void pushFree(int chunk, int order) {
+		int head = freeHeads[order];
+		next[chunk] = head;
+		prev[chunk] = NIL;
+		if (head != NIL) {
+			prev[head] = chunk;
+		}
+		freeHeads[order] = chunk;
+		freeOrder[chunk] = (byte) order;
+	}
+
+	private void removeFree(int chunk, int order) {
+		int p = prev[chunk];
+		int n = next[chunk];
+		if (p != NIL) {
+			next[p] = n;
+		} else {
+			freeHeads[order] = n;
+		}
+		if (n != NIL) {
+			prev[n] = p;
+		}
+		freeOrder[chunk] = NOT_FREE;
+	}
+
+	private ByteBuffer sliceOf(int chunk, int order) {
+		// slice 会修改页的 position/limit,需要独占访问
+		ByteBuffer page = allPages[chunk / chunksPerPage];
+		int offStart = (chunk % chunksPerPage) * chunkSize;
+		page.limit(offStart + (chunkSize << order));
+		page.position(offStart);
+		return page.slice();
+	}
+
+	private static int orderOf(int theChunkCount) {
+		return theChunkCount <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(theChunkCount - 1);
+	}
+
+	private void lock() {
+		while (!allocLockStatus.compareAndSet(false, true)) {
+			Thread.yield();
+		}
+	}
+
+	@Override
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	@Override
+	public long getAllocateTimes() {
+		return allocateTimes;
+	}
+
+	@Override
+	public long getHeapAllocateTimes() {
+		return heapAllocateTimes;
+	}
+
+	@Override
+	public long getRemoteRecycleTimes() {
+		return remoteRecycleTimes;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public short getPageCount() {
+		return pageCount;
+	}
+
+	@Override
+	public long capacity() {
+		return (long) pageSize * pageCount;
+	}
+
+	/**
+	 * 当前已分配出去的堆外内存大小
+	 */
+	@Override
+	public long size() {
+		return usedBytes;
+	}
+
+	@Override
+	public int getSharedOptsCount() {
+		return 0;
+	}
+}
@@ -71,11 +71,28 @@ public class BufferPooLFactory {
 		}
 		
 		IntStream.range(0, poolCount).forEach(f->{
-			bufferPools.add(new DirectByteBufferPool(proxybean.getBufferPoolPageSize(),
-					proxybean.getBufferPoolChunkSize(),
-					proxybean.getBufferPoolPageNumber()));
+			bufferPools.add(createBufferPool(proxybean));
 		});
 	}
+
+	/**
+	 * 按配置的 bufferPoolType 创建一个新的 bufferpool
+	 * @param proxybean
+	 * @return
+	 */
+	public static BufferPool createBufferPool(ProxyBean proxybean) {
+		switch (proxybean.getBufferPoolType()) {
+		case PAGE:
+			return new DirectByteBufferPool(proxybean.getBufferPoolPageSize(),
+					proxybean.getBufferPoolChunkSize(),
+					proxybean.getBufferPoolPageNumber());
+		case BUDDY:
+		default:
+			return new BuddyByteBufferPool(proxybean.getBufferPoolPageSize(),
+					proxybean.getBufferPoolChunkSize(),
+					proxybean.getBufferPoolPageNumber());
+		}
+	}
 	
 	/**
 	 * @return
@@ -1,7 +1,6 @@
 package io.mycat.proxy.buffer;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.ConcurrentHashMap;
 /**
  * 缓冲池
  *
@@ -15,8 +14,23 @@ public interface BufferPool {
     public ByteBuffer allocate(int size);
     public void recycle(ByteBuffer theBuf);
     public long capacity();
+    /**
+     * 当前已分配出去的堆外内存大小
+     */
     public long size();
     public  int getSharedOptsCount();
     public int getChunkSize();
-    public ConcurrentHashMap<Long,Long> getNetDirectMemoryUsage();
+    /**
+     * 绑定所属的reactor线程,池可以据此省去线程间的同步
+     */
+    public void bindOwner(Thread owner);
+    public long getAllocateTimes();
+    /**
+     * 堆外内存不足或超出一页大小时分配堆内内存的次数
+     */
+    public long getHeapAllocateTimes();
+    /**
+     * 由非owner线程归还的buffer数量
+     */
+    public long getRemoteRecycleTimes();
 }
@@ -1,8 +1,8 @@
 package io.mycat.proxy.buffer;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,9 +25,11 @@ public class DirectByteBufferPool implements BufferPool{
     private final  int pageSize;
     private final short pageCount;
     /**
-     * 记录对线程ID->该线程的所使用Direct Buffer的size
+     * 已分配出去的堆外内存大小
      */
-    private final ConcurrentHashMap<Long,Long> memoryUsage;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong allocateTimes = new AtomicLong();
+    private final AtomicLong heapAllocateTimes = new AtomicLong();
 
     public DirectByteBufferPool(int pageSize, short chunkSize, short pageCount) {
         allPages = new ByteBufferPage[pageCount];
@@ -38,7 +40,6 @@ public class DirectByteBufferPool implements BufferPool{
         for (int i = 0; i < pageCount; i++) {
             allPages[i] = new ByteBufferPage(ByteBuffer.allocateDirect(pageSize), chunkSize);
         }
-        memoryUsage = new ConcurrentHashMap<>();
     }
 
     /**
@@ -70,6 +71,7 @@ public class DirectByteBufferPool implements BufferPool{
     	final int theChunkCount = size / chunkSize + (size % chunkSize == 0 ? 0 : 1);
     	// 如果大于一个chunk 的大小.分配堆内 内存,用完释放, 不再 使用堆外内存
     	if(theChunkCount > 1){
+    		heapAllocateTimes.incrementAndGet();
     		return  ByteBuffer.allocate(size);
     	}
         int selectedPage =  prevAllocatedPage.incrementAndGet() % allPages.length;
@@ -77,20 +79,13 @@ public class DirectByteBufferPool implements BufferPool{
         if (byteBuf == null) {
             byteBuf = allocateBuffer(theChunkCount, selectedPage, allPages.length);
         }
-        final long threadId = Thread.currentThread().getId();
-
-        if(byteBuf !=null){
-            if (memoryUsage.containsKey(threadId)){
-                memoryUsage.put(threadId,memoryUsage.get(threadId)+byteBuf.capacity());
-            }else {
-                memoryUsage.put(threadId,(long)byteBuf.capacity());
-            }
-        }
-        
         //如果堆外内存，没有可用空间,分配 堆内内存,一段时间后,还在使用,看情况再转成堆外内存
         if(byteBuf==null){
+            heapAllocateTimes.incrementAndGet();
             return  ByteBuffer.allocate(size);
         }
+        allocateTimes.incrementAndGet();
+        usedBytes.addAndGet(byteBuf.capacity());
         return byteBuf;
     }
 
@@ -112,13 +107,10 @@ public class DirectByteBufferPool implements BufferPool{
                 break;
             }
         }
-        final long threadId = Thread.currentThread().getId();
-
-        if (memoryUsage.containsKey(threadId)){
-            memoryUsage.put(threadId,memoryUsage.get(threadId)-size);
-        }
         if (recycled == false) {
             LOGGER.warn("warning ,not recycled buffer " + theBuf);
+        } else {
+            usedBytes.addAndGet(-size);
         }
     }
 
@@ -137,9 +129,26 @@ public class DirectByteBufferPool implements BufferPool{
         return chunkSize;
     }
 	
-	 @Override
-    public ConcurrentHashMap<Long,Long> getNetDirectMemoryUsage() {
-        return memoryUsage;
+    /**
+     * 页上的CAS标志已经保证了线程安全,不需要owner
+     */
+    @Override
+    public void bindOwner(Thread owner) {
+    }
+
+    @Override
+    public long getAllocateTimes() {
+        return allocateTimes.get();
+    }
+
+    @Override
+    public long getHeapAllocateTimes() {
+        return heapAllocateTimes.get();
+    }
+
+    @Override
+    public long getRemoteRecycleTimes() {
+        return 0;
     }
 
     public int getPageSize() {
@@ -155,7 +164,7 @@ public class DirectByteBufferPool implements BufferPool{
     }
 
     public long size(){
-        return  (long) pageSize * chunkSize * pageCount;
+        return usedBytes.get();
     }
 
     //TODO
@@ -42,6 +42,8 @@ public class AdminCommandResovler {
 
 		LeaderNotifyPacketCommand notifyCommand = LeaderNotifyPacketCommand.INSTANCE;
 		adminCommandMap.put(ManagePacket.PKG_LEADER_NOTIFY, notifyCommand);
+
+		adminCommandMap.put(ManagePacket.PKG_NODE_LOAD, NodeLoadPacketCommand.INSTANCE);
 	}
 
 	public AdminCommand resolveCommand(byte pkgType) {
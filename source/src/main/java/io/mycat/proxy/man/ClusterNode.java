@@ -1,6 +1,7 @@
 package io.mycat.proxy.man;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.mycat.proxy.man.MyCluster.ClusterState;
 
@@ -29,6 +30,10 @@ public class ClusterNode implements Comparable<ClusterNode> {
 	private long lastClusterStateTime;
 	//mycat的port
 	public int proxyPort;
+	//最近一次上报的负载
+	private volatile NodeLoad load;
+	//最近一次上报之后分配到该节点的连接数
+	private final AtomicInteger assignedSinceReport = new AtomicInteger();
 
 	public ClusterNode(String id, String ip, int port) {
 		super();
@@ -90,6 +95,26 @@ public class ClusterNode implements Comparable<ClusterNode> {
 		this.lastClusterStateTime=clusterStateTime;
 	}
 
+	public NodeLoad getLoad() {
+		return load;
+	}
+
+	/**
+	 * 更新负载, 新的负载已经包含之前分配的连接, 重新计数
+	 */
+	public void setLoad(NodeLoad load) {
+		this.load = load;
+		assignedSinceReport.set(0);
+	}
+
+	public int getAssignedSinceReport() {
+		return assignedSinceReport.get();
+	}
+
+	public void incAssigned() {
+		assignedSinceReport.incrementAndGet();
+	}
+
 	public long getNodeStartTime() {
 		return nodeStartTime;
 	}
@@ -34,6 +34,8 @@ public abstract class ManagePacket {
 
 	public static final byte PKG_LEADER_NOTIFY = 13;
 
+	public static final byte PKG_NODE_LOAD = 14;
+
 	protected byte pkgType;
 	// 长度最长为2字节的short，即65535，长度包括包头3个字节在内
 	protected int pkgLength;
@@ -83,6 +85,9 @@ public abstract class ManagePacket {
 		case 13:
 			str = "PKG_LEADER_NOTIFY";
 			break;
+		case 14:
+			str = "PKG_NODE_LOAD";
+			break;
 		default:
 			break;
 		}
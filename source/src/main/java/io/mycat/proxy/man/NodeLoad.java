@@ -0,0 +1,51 @@
+package io.mycat.proxy.man;
+
+/**
+ * 集群节点上报的负载信息, 由负载均衡器选择新连接的目标节点
+ */
+public class NodeLoad {
+	// 前端会话数
+	private final int activeSessions;
+	// 各reactor待执行任务数之和
+	private final int reactorQueueDepth;
+	// 上一个上报周期内语句响应时间的99分位(微秒)
+	private final long p99LatencyMicros;
+	// 系统平均负载除以cpu核数, 以千分比表示, 取不到时为0
+	private final int cpuLoad;
+	// 本地收到或者生成该信息的时间
+	private final long updateTime;
+
+	public NodeLoad(int activeSessions, int reactorQueueDepth, long p99LatencyMicros, int cpuLoad, long updateTime) {
+		this.activeSessions = activeSessions;
+		this.reactorQueueDepth = reactorQueueDepth;
+		this.p99LatencyMicros = p99LatencyMicros;
+		this.cpuLoad = cpuLoad;
+		this.updateTime = updateTime;
+	}
+
+	public int getActiveSessions() {
+		return activeSessions;
+	}
+
+	public int getReactorQueueDepth() {
+		return reactorQueueDepth;
+	}
+
+	public long getP99LatencyMicros() {
+		return p99LatencyMicros;
+	}
+
+	public int getCpuLoad() {
+		return cpuLoad;
+	}
+
+	public long getUpdateTime() {
+		return updateTime;
+	}
+
+	@Override
+	public String toString() {
+		return "NodeLoad [activeSessions=" + activeSessions + ", reactorQueueDepth=" + reactorQueueDepth
+				+ ", p99LatencyMicros=" + p99LatencyMicros + ", cpuLoad=" + cpuLoad + ", updateTime=" + updateTime + "]";
+	}
+}
@@ -0,0 +1,124 @@
+package io.mycat.proxy.man;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.mycat.proxy.ProxyReactorThread;
+import io.mycat.proxy.ProxyRuntime;
+import io.mycat.proxy.man.packet.NodeLoadPacket;
+
+/**
+ * 统计本节点的负载并定期发送给集群中的其他节点, 负载均衡器据此选择新连接的目标节点.
+ * 响应时间按2的幂分桶计数, 每个上报周期结束时计算99分位并清空
+ */
+public class NodeLoadReporter {
+	private static final Logger logger = LoggerFactory.getLogger(NodeLoadReporter.class);
+
+	public static final NodeLoadReporter INSTANCE = new NodeLoadReporter();
+
+	// 超过几个上报周期没有收到负载信息, 认为该节点的负载未知
+	private static final int STALE_PERIODS = 3;
+
+	// 第i个桶统计[2^i, 2^(i+1))微秒的响应
+	private final AtomicLongArray latencyBuckets = new AtomicLongArray(64);
+	private volatile long reportPeriodMillis = TimeUnit.SECONDS.toMillis(2);
+	private boolean started;
+
+	/**
+	 * 在acceptor线程中定期上报负载, 只需要启动一次
+	 */
+	public void start(int periodSeconds, ProxyReactorThread<?> nioThread) {
+		if (started) {
+			return;
+		}
+		started = true;
+		reportPeriodMillis = TimeUnit.SECONDS.toMillis(periodSeconds);
+		ProxyRuntime.INSTANCE.addCronNIOJob(this::report, periodSeconds, periodSeconds, nioThread);
+	}
+
+	/**
+	 * 记录一个前端语句的响应时间
+	 */
+	public void recordLatency(long elapsedNanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos) | 1;
+		latencyBuckets.incrementAndGet(63 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/**
+	 * 计算上一个周期的99分位响应时间(取所在桶的上限)并清空计数, 没有语句时为0
+	 */
+	long collectP99Micros() {
+		long[] counts = new long[latencyBuckets.length()];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = latencyBuckets.getAndSet(i, 0);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long threshold = total - total / 100;
+		long sum = 0;
+		for (int i = 0; i < counts.length; i++) {
+			sum += counts[i];
+			if (sum >= threshold) {
+				return i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * 采集本节点当前的负载
+	 */
+	public NodeLoad collect() {
+		int sessions = 0;
+		int queueDepth = 0;
+		ProxyReactorThread<?>[] reactors = ProxyRuntime.INSTANCE.getReactorThreads();
+		if (reactors != null) {
+			for (ProxyReactorThread<?> reactor : reactors) {
+				if (reactor != null) {
+					sessions += reactor.getAllSessions().size();
+					queueDepth += reactor.getPendingJobCount();
+				}
+			}
+		}
+		double loadAverage = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+		int cpuLoad = loadAverage < 0 ? 0
+				: (int) (loadAverage * 1000 / Runtime.getRuntime().availableProcessors());
+		return new NodeLoad(sessions, queueDepth, collectP99Micros(), cpuLoad, System.currentTimeMillis());
+	}
+
+	/**
+	 * 更新本节点的负载并发送给所有连接中的节点
+	 */
+	public void report() {
+		MyCluster cluster = ProxyRuntime.INSTANCE.getMyCLuster();
+		if (cluster == null) {
+			return;
+		}
+		NodeLoad load = collect();
+		cluster.getMyNode().setLoad(load);
+		NodeLoadPacket packet = new NodeLoadPacket(cluster.getMyNodeId(), load);
+		for (AdminSession session : ProxyRuntime.INSTANCE.getAdminSessionManager().getAllSessions()) {
+			if (session.isChannelOpen()) {
+				try {
+					session.answerClientNow(packet);
+				} catch (Exception e) {
+					logger.warn("send load to node {} err {}", session.getNodeId(), e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * 负载信息是否足够新, 可以用于选择节点
+	 */
+	public boolean isFresh(NodeLoad load, long now) {
+		return load != null && now - load.getUpdateTime() <= reportPeriodMillis * STALE_PERIODS;
+	}
+}
@@ -0,0 +1,33 @@
+package io.mycat.proxy.man.cmds;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.mycat.proxy.man.AdminCommand;
+import io.mycat.proxy.man.AdminSession;
+import io.mycat.proxy.man.ClusterNode;
+import io.mycat.proxy.man.packet.NodeLoadPacket;
+
+/**
+ * 处理其他节点上报的负载信息, 更新到对应的集群节点上
+ */
+public class NodeLoadPacketCommand implements AdminCommand {
+	private static final Logger logger = LoggerFactory.getLogger(NodeLoadPacketCommand.class);
+
+	public static final NodeLoadPacketCommand INSTANCE = new NodeLoadPacketCommand();
+
+	@Override
+	public void handlerPkg(AdminSession session, byte cmdType) throws IOException {
+		NodeLoadPacket pkg = new NodeLoadPacket();
+		pkg.resolve(session.readingBuffer);
+		ClusterNode node = session.cluster().findNode(pkg.getNodeId());
+		if (node == null) {
+			logger.warn("receive load of unknown node {}", pkg.getNodeId());
+			return;
+		}
+		node.setLoad(pkg.toNodeLoad(System.currentTimeMillis()));
+		logger.debug("node {} load {}", node.id, node.getLoad());
+	}
+}
@@ -0,0 +1,58 @@
+package io.mycat.proxy.man.packet;
+
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.proxy.man.ManagePacket;
+import io.mycat.proxy.man.NodeLoad;
+
+/**
+ * 节点定期向集群中其他节点发送的负载信息报文
+ */
+public class NodeLoadPacket extends ManagePacket {
+	private String nodeId;
+	private int activeSessions;
+	private int reactorQueueDepth;
+	private long p99LatencyMicros;
+	private int cpuLoad;
+
+	public NodeLoadPacket(String nodeId, NodeLoad load) {
+		super(ManagePacket.PKG_NODE_LOAD);
+		this.nodeId = nodeId;
+		this.activeSessions = load.getActiveSessions();
+		this.reactorQueueDepth = load.getReactorQueueDepth();
+		this.p99LatencyMicros = load.getP99LatencyMicros();
+		this.cpuLoad = load.getCpuLoad();
+	}
+
+	public NodeLoadPacket() {
+		super(ManagePacket.PKG_NODE_LOAD);
+	}
+
+	@Override
+	public void resolveBody(ProxyBuffer buffer) {
+		nodeId = buffer.readNULString();
+		activeSessions = (int) buffer.readFixInt(4);
+		reactorQueueDepth = (int) buffer.readFixInt(4);
+		p99LatencyMicros = buffer.readFixInt(8);
+		cpuLoad = (int) buffer.readFixInt(4);
+	}
+
+	@Override
+	public void writeBody(ProxyBuffer buffer) {
+		buffer.writeNULString(nodeId);
+		buffer.writeFixInt(4, activeSessions);
+		buffer.writeFixInt(4, reactorQueueDepth);
+		buffer.writeFixInt(8, p99LatencyMicros);
+		buffer.writeFixInt(4, cpuLoad);
+	}
+
+	/**
+	 * 转换为负载信息, 更新时间为收到报文的本地时间, 不依赖节点间的时钟同步
+	 */
+	public NodeLoad toNodeLoad(long receivedTime) {
+		return new NodeLoad(activeSessions, reactorQueueDepth, p99LatencyMicros, cpuLoad, receivedTime);
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+}
@@ -0,0 +1,102 @@
+package io.mycat.util;
+
+import java.util.Arrays;
+
+/**
+ * 以 int 为 key 的 HashMap, 查找时不需要装箱. 开放寻址, 不支持删除和 null 值, 非线程安全
+ *
+ * @param <V>
+ */
+public class IntObjectHashMap<V> {
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	public IntObjectHashMap() {
+		this(16);
+	}
+
+	public IntObjectHashMap(int expectedSize) {
+		int capacity = 2;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		keys = new int[capacity];
+		values = new Object[capacity];
+	}
+
+	/**
+	 * 复制一份, 用于写时复制的场景
+	 */
+	public IntObjectHashMap(IntObjectHashMap<V> other) {
+		keys = Arrays.copyOf(other.keys, other.keys.length);
+		values = Arrays.copyOf(other.values, other.values.length);
+		size = other.size;
+	}
+
+	private static int index(int key, int mask) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int mask = keys.length - 1;
+		for (int i = index(key, mask);; i = (i + 1) & mask) {
+			Object value = values[i];
+			if (value == null) {
+				return null;
+			}
+			if (keys[i] == key) {
+				return (V) value;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value");
+		}
+		int mask = keys.length - 1;
+		for (int i = index(key, mask);; i = (i + 1) & mask) {
+			Object old = values[i];
+			if (old == null) {
+				keys[i] = key;
+				values[i] = value;
+				if (++size * 2 > keys.length) {
+					rehash(keys.length << 1);
+				}
+				return null;
+			}
+			if (keys[i] == key) {
+				values[i] = value;
+				return (V) old;
+			}
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] == null) {
+				continue;
+			}
+			int i = index(oldKeys[j], mask);
+			while (values[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+}
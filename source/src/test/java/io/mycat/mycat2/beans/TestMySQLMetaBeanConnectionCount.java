@@ -0,0 +1,65 @@
+package io.mycat.mycat2.beans;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
+import junit.framework.Assert;
+
+public class TestMySQLMetaBeanConnectionCount {
+
+    private MySQLMetaBean newMetaBean(int maxCon) {
+        DatasourceMetaBean dsMetaBean = new DatasourceMetaBean();
+        dsMetaBean.setMaxCon(maxCon);
+        MySQLMetaBean metaBean = new MySQLMetaBean();
+        metaBean.setDsMetaBean(dsMetaBean);
+        return metaBean;
+    }
+
+    @Test
+    public void testAcquireRespectsMaxCon() {
+        MySQLMetaBean metaBean = newMetaBean(2);
+        Assert.assertTrue(metaBean.tryAcquireConnection());
+        Assert.assertTrue(metaBean.tryAcquireConnection());
+        Assert.assertFalse(metaBean.tryAcquireConnection());
+        Assert.assertEquals(2, metaBean.getConnectionCount());
+        Assert.assertEquals(1, metaBean.getPoolRejects());
+        metaBean.releaseConnection();
+        Assert.assertTrue(metaBean.tryAcquireConnection());
+        Assert.assertEquals(2, metaBean.getConnectionCount());
+    }
+
+    @Test
+    public void testConcurrentAcquireNeverExceedsMaxCon() throws Exception {
+        int maxCon = 100;
+        int threads = 8;
+        MySQLMetaBean metaBean = newMetaBean(maxCon);
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 50; j++) {
+                    if (metaBean.tryAcquireConnection()) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assert.assertEquals(maxCon, acquired.get());
+        Assert.assertEquals(maxCon, metaBean.getConnectionCount());
+        Assert.assertEquals(threads * 50 - maxCon, metaBean.getPoolRejects());
+    }
+}
@@ -0,0 +1,100 @@
+package io.mycat.mycat2.beans;
+
+import org.junit.Test;
+
+import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
+import io.mycat.mycat2.beans.conf.ReplicaBean;
+import io.mycat.mycat2.beans.heartbeat.DBHeartbeat;
+import junit.framework.Assert;
+
+public class TestMySQLRepBeanLoadBalance {
+
+    private MySQLMetaBean newMetaBean(MySQLRepBean repBean, int slaveThreshold) {
+        DatasourceMetaBean dsMetaBean = new DatasourceMetaBean();
+        dsMetaBean.setSlaveThreshold(slaveThreshold);
+        MySQLMetaBean metaBean = new MySQLMetaBean();
+        metaBean.setDsMetaBean(dsMetaBean);
+        metaBean.prepareHeartBeat(repBean, DBHeartbeat.INIT_STATUS);
+        repBean.getMetaBeans().add(metaBean);
+        return metaBean;
+    }
+
+    @Test
+    public void testLatencyEwma() {
+        MySQLMetaBean metaBean = new MySQLMetaBean();
+        metaBean.updateLatency(8000);
+        Assert.assertEquals(8000, metaBean.getLatencyEwma());
+        metaBean.updateLatency(16000);
+        Assert.assertEquals(9000, metaBean.getLatencyEwma());
+
+        metaBean.queryStarted();
+        metaBean.queryStarted();
+        Assert.assertEquals(9000 * 3, metaBean.getLoadScore());
+        metaBean.queryFinished(-1);
+        Assert.assertEquals(9000, metaBean.getLatencyEwma());
+        Assert.assertEquals(1, metaBean.getInflightQueries());
+    }
+
+    @Test
+    public void testChooseLowerLoad() {
+        MySQLRepBean repBean = new MySQLRepBean();
+        MySQLMetaBean fast = newMetaBean(repBean, -1);
+        MySQLMetaBean slow = newMetaBean(repBean, -1);
+        MySQLMetaBean busy = newMetaBean(repBean, -1);
+        fast.updateLatency(1000);
+        slow.updateLatency(50000);
+        busy.updateLatency(1000);
+        for (int i = 0; i < 100; i++) {
+            busy.queryStarted();
+        }
+        MySQLMetaBean[] nodes = { fast, slow, busy };
+        for (int i = 0; i < 1000; i++) {
+            // 负载最大的节点不会被选中
+            Assert.assertNotSame(busy, MySQLRepBean.chooseByLoad(nodes));
+        }
+        Assert.assertSame(fast, MySQLRepBean.chooseByLoad(new MySQLMetaBean[] { slow, fast }));
+        Assert.assertSame(slow, MySQLRepBean.chooseByLoad(new MySQLMetaBean[] { slow }));
+        Assert.assertNull(MySQLRepBean.chooseByLoad(new MySQLMetaBean[0]));
+    }
+
+    @Test
+    public void testReplicationLagPenalty() {
+        MySQLRepBean repBean = new MySQLRepBean();
+        MySQLMetaBean lagging = newMetaBean(repBean, 10);
+        MySQLMetaBean synced = newMetaBean(repBean, 10);
+        lagging.updateLatency(1000);
+        synced.updateLatency(1500);
+        Assert.assertSame(lagging, MySQLRepBean.chooseByLoad(new MySQLMetaBean[] { lagging, synced }));
+        lagging.getHeartbeat().setSlaveBehindMaster(5);
+        Assert.assertEquals(1500, lagging.getLoadScore());
+        lagging.getHeartbeat().setSlaveBehindMaster(8);
+        Assert.assertSame(synced, MySQLRepBean.chooseByLoad(new MySQLMetaBean[] { lagging, synced }));
+    }
+
+    @Test
+    public void testReadNodesFollowHeartbeat() {
+        MySQLRepBean repBean = new MySQLRepBean();
+        ReplicaBean replicaBean = new ReplicaBean();
+        replicaBean.setRepType(ReplicaBean.RepTypeEnum.MASTER_SLAVE);
+        replicaBean.setBalanceType(ReplicaBean.BalanceTypeEnum.BALANCE_ALL);
+        repBean.setReplicaBean(replicaBean);
+        MySQLMetaBean master = newMetaBean(repBean, -1);
+        MySQLMetaBean slave = newMetaBean(repBean, -1);
+        master.setSlaveNode(false);
+
+        Assert.assertNull(repBean.getBalanceMetaBean(true));
+        master.getHeartbeat().setStatus(DBHeartbeat.OK_STATUS);
+        Assert.assertSame(master, repBean.getBalanceMetaBean(true));
+
+        slave.getHeartbeat().setStatus(DBHeartbeat.OK_STATUS);
+        master.updateLatency(100000);
+        slave.updateLatency(1000);
+        Assert.assertSame(slave, repBean.getBalanceMetaBean(true));
+
+        replicaBean.setBalanceType(ReplicaBean.BalanceTypeEnum.BALANCE_ALL_READ);
+        Assert.assertSame(slave, repBean.getBalanceMetaBean(true));
+        slave.getHeartbeat().setStatus(DBHeartbeat.ERROR_STATUS);
+        // 从节点不可用时使用主节点
+        Assert.assertSame(master, repBean.getBalanceMetaBean(true));
+    }
+}
@@ -0,0 +1,88 @@
+package io.mycat.mycat2.bufferTest;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import io.mycat.proxy.buffer.BufferPool;
+import io.mycat.proxy.buffer.DirectByteBufferPool;
+
+/**
+ * DirectByteBufferPool 与 BuddyByteBufferPool 在多线程竞争下的分配/回收对比
+ */
+@BenchmarkMode(Mode.Throughput)//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 5)//预热的迭代次数
+@Threads(4)//测试线程数量
+@State(Scope.Benchmark)//所有线程共享同一个pool
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class BufferPoolBenchmark {
+
+    @Param({"PAGE", "BUDDY"})
+    String poolType;
+
+    /**
+     * 预先占用的chunk比例,模拟大量session在线时的页占用率
+     */
+    @Param({"0", "90"})
+    int occupancy;
+
+    BufferPool pool;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BufferPoolBenchmark.class.getSimpleName())
+                .forks(1)
+                .addProfiler(GCProfiler.class)    // report GC time
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void init() {
+        int pageSize = 1024 * 1024 * 4;
+        short chunkSize = 1024 * 4 * 2;
+        short pageCount = 16;
+        if ("PAGE".equals(poolType)) {
+            pool = new DirectByteBufferPool(pageSize, chunkSize, pageCount);
+        } else {
+            pool = new BuddyByteBufferPool(pageSize, chunkSize, pageCount);
+        }
+        long chunks = pool.capacity() / chunkSize * occupancy / 100;
+        for (long i = 0; i < chunks; i++) {
+            pool.allocate();
+        }
+    }
+
+    @Benchmark
+    public void allocateOneChunk(Blackhole bh) {
+        ByteBuffer buffer = pool.allocate();
+        bh.consume(buffer);
+        pool.recycle(buffer);
+    }
+
+    @Benchmark
+    public void allocateMultiChunk(Blackhole bh) {
+        ByteBuffer buffer = pool.allocate(pool.getChunkSize() * 3);
+        bh.consume(buffer);
+        pool.recycle(buffer);
+    }
+}
@@ -0,0 +1,158 @@
+package io.mycat.mycat2.bufferTest;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import junit.framework.Assert;
+
+public class TestBuddyByteBufferPool {
+
+    @Test
+    public void testAllocateRoundsUpToPowerOfTwoChunks() {
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(256 * 16, (short) 256, (short) 1);
+        ByteBuffer one = pool.allocate(1);
+        ByteBuffer three = pool.allocate(256 * 3);
+        ByteBuffer eight = pool.allocate(256 * 8);
+        Assert.assertTrue(one.isDirect());
+        Assert.assertTrue(three.isDirect());
+        Assert.assertTrue(eight.isDirect());
+        Assert.assertEquals(256, one.capacity());
+        Assert.assertEquals(256 * 4, three.capacity());
+        Assert.assertEquals(256 * 8, eight.capacity());
+        Assert.assertEquals(256 * 13, pool.size());
+        pool.recycle(one);
+        pool.recycle(three);
+        pool.recycle(eight);
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testAllocateWithDifferentAddress() {
+        int size = 256;
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(size * 4, (short) 256, (short) 2);
+        List<ByteBuffer> buffs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ByteBuffer byteBuffer = pool.allocate(size);
+            Assert.assertTrue("Should have enough memory", byteBuffer.isDirect());
+            while (byteBuffer.hasRemaining()) {
+                byteBuffer.put((byte) i);
+            }
+            buffs.add(byteBuffer);
+        }
+        Assert.assertFalse("Should out of memory", pool.allocate(size).isDirect());
+        // 写入的内容互不覆盖, 即各个buffer的地址不同
+        for (int i = 0; i < buffs.size(); i++) {
+            ByteBuffer byteBuffer = buffs.get(i);
+            for (int j = 0; j < size; j++) {
+                Assert.assertEquals("Allocate with same address", i, byteBuffer.get(j));
+            }
+        }
+        for (ByteBuffer buff : buffs) {
+            pool.recycle(buff);
+        }
+    }
+
+    @Test
+    public void testRecycleMergesBuddies() {
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(256 * 8, (short) 256, (short) 1);
+        List<ByteBuffer> buffs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            buffs.add(pool.allocate(256));
+        }
+        for (ByteBuffer buff : buffs) {
+            pool.recycle(buff);
+        }
+        // 所有块合并后,才能再分配出一整页
+        ByteBuffer whole = pool.allocate(256 * 8);
+        Assert.assertTrue(whole.isDirect());
+        Assert.assertEquals(256 * 8, whole.capacity());
+        pool.recycle(whole);
+    }
+
+    @Test
+    public void testRecycleTwiceAfterMerge() {
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(256 * 2, (short) 256, (short) 1);
+        ByteBuffer a = pool.allocate(256);
+        ByteBuffer b = pool.allocate(256);
+        pool.recycle(a);
+        pool.recycle(b);
+        // a 已经与 b 合并为整页, 再次回收被拒绝
+        pool.recycle(a);
+        Assert.assertEquals(0, pool.size());
+        ByteBuffer whole = pool.allocate(256 * 2);
+        Assert.assertTrue(whole.isDirect());
+        Assert.assertFalse("double free must not give out memory twice", pool.allocate(256).isDirect());
+        // 不是从池中分配的buffer
+        pool.recycle(ByteBuffer.allocateDirect(256));
+        pool.recycle(whole.duplicate());
+        Assert.assertEquals(256 * 2, pool.size());
+        pool.recycle(whole);
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testNonPowerOfTwoPage() {
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(256 * 6, (short) 256, (short) 1);
+        ByteBuffer four = pool.allocate(256 * 4);
+        ByteBuffer two = pool.allocate(256 * 2);
+        Assert.assertTrue(four.isDirect());
+        Assert.assertTrue(two.isDirect());
+        Assert.assertFalse(pool.allocate(256).isDirect());
+        pool.recycle(four);
+        pool.recycle(two);
+        Assert.assertFalse("larger than a page", pool.allocate(256 * 8).isDirect());
+    }
+
+    @Test
+    public void testRemoteRecycleReturnsToOwner() throws Exception {
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(256 * 4, (short) 256, (short) 1);
+        pool.bindOwner(Thread.currentThread());
+        List<ByteBuffer> buffs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            buffs.add(pool.allocate(256));
+        }
+        ByteBuffer[] remoteAllocated = new ByteBuffer[1];
+        Thread other = new Thread(() -> {
+            remoteAllocated[0] = pool.allocate(256);
+            for (ByteBuffer buff : buffs) {
+                pool.recycle(buff);
+            }
+        });
+        other.start();
+        other.join();
+        // 非owner线程的分配不占用池内存
+        Assert.assertFalse(remoteAllocated[0].isDirect());
+        Assert.assertEquals(256 * 4, pool.size());
+        // owner 下次分配时回收其他线程归还的buffer
+        ByteBuffer whole = pool.allocate(256 * 4);
+        Assert.assertTrue(whole.isDirect());
+        Assert.assertEquals(4, pool.getRemoteRecycleTimes());
+        Assert.assertEquals(5, pool.getAllocateTimes());
+        pool.recycle(whole);
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testDataIsolation() {
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(1024 * 1024, (short) 512, (short) 4);
+        ByteBuffer a = pool.allocate(1000);
+        ByteBuffer b = pool.allocate(1000);
+        while (a.hasRemaining()) {
+            a.put((byte) 1);
+        }
+        while (b.hasRemaining()) {
+            b.put((byte) 2);
+        }
+        a.flip();
+        while (a.hasRemaining()) {
+            Assert.assertEquals(1, a.get());
+        }
+        pool.recycle(a);
+        pool.recycle(b);
+        Assert.assertEquals(0, pool.size());
+    }
+}
@@ -0,0 +1,83 @@
+package io.mycat.mycat2.cmds;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.mycat.mycat2.MycatConfig;
+import io.mycat.mycat2.beans.conf.ProxyBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
+import io.mycat.proxy.ConfigEnum;
+import io.mycat.proxy.ProxyRuntime;
+
+/**
+ * 半双工与全双工透传大结果集的查询吞吐对比(queries/s).
+ * 请求经过真实的 reactor 事件循环, mock MySQL server 每次返回约 4MB 的结果集.
+ * 客户端 socket 接收缓冲区较小, 前端经常写不完, 半双工时读取后端要等前端写完
+ */
+@BenchmarkMode(Mode.Throughput)//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 5)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Thread)//该状态为每个线程独享
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class FullDuplexPassthroughBenchmark {
+
+    private static final int ROWS = 16 * 1024;
+    private static final int ROW_SIZE = 256;
+
+    @Param({ "false", "true" })
+    boolean fullDuplex;
+
+    LoopbackPassthrough loopback;
+    ByteBuffer received;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(FullDuplexPassthroughBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void init() throws Exception {
+        ProxyBean proxyBean = new ProxyBean();
+        proxyBean.setFullDuplexPassthrough(fullDuplex);
+        ProxyConfig proxyConfig = new ProxyConfig();
+        proxyConfig.setProxy(proxyBean);
+        MycatConfig config = new MycatConfig();
+        config.putConfig(ConfigEnum.PROXY, proxyConfig, 1);
+        ProxyRuntime.INSTANCE.setConfig(config);
+
+        loopback = new LoopbackPassthrough(ROWS, ROW_SIZE, 64 * 1024);
+        received = ByteBuffer.allocate(loopback.resultSet.length);
+    }
+
+    @TearDown
+    public void destroy() throws Exception {
+        loopback.close();
+    }
+
+    @Benchmark
+    public ByteBuffer query() throws Exception {
+        loopback.query(received, 64 * 1024, 0);
+        return received;
+    }
+}
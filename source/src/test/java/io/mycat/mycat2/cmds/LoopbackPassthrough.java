@@ -0,0 +1,217 @@
+package io.mycat.mycat2.cmds;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.MycatSessionManager;
+import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.DNBean;
+import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
+import io.mycat.mycat2.beans.conf.ReplicaBean;
+import io.mycat.mycat2.beans.conf.SchemaBean;
+import io.mycat.mycat2.beans.heartbeat.DBHeartbeat;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyRuntime;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import io.mycat.util.ExecutorUtil;
+
+/**
+ * 回环地址上的透传环境. 前后端会话由真实的 reactor 事件循环驱动, mock MySQL 服务端对每个 COM_QUERY
+ * 返回同一个结果集, 调用方作为客户端发送查询并读取完整的结果集.
+ * 透传方式由调用方在 ProxyRuntime 的配置中指定
+ */
+class LoopbackPassthrough implements Closeable {
+
+    private static final String SQL = "select id, name from orders";
+
+    final BuddyByteBufferPool pool;
+    final MycatReactorThread reactor;
+    /* 服务端返回的结果集, 客户端应该原样收到 */
+    final byte[] resultSet;
+    private final ByteBuffer query;
+    private final ServerSocketChannel server;
+    private final SocketChannel client;
+    private final SocketChannel backendServer;
+    private final Thread mockServer;
+
+    /**
+     * @param rows 结果集的行数
+     * @param rowSize 每行数据的字节数
+     * @param clientReceiveBuffer 客户端 socket 接收缓冲区大小, 小于等于0时使用系统默认值
+     */
+    LoopbackPassthrough(int rows, int rowSize, int clientReceiveBuffer) throws Exception {
+        // 动态注解的文件监听任务提交到业务线程池, 单独运行时 ProxyRuntime 未初始化
+        Field executor = ProxyRuntime.class.getDeclaredField("businessExecutor");
+        executor.setAccessible(true);
+        if (executor.get(ProxyRuntime.INSTANCE) == null) {
+            executor.set(ProxyRuntime.INSTANCE, ExecutorUtil.create("BusinessExecutor", 1));
+        }
+        resultSet = resultSet(rows, rowSize);
+        byte[] sql = SQL.getBytes(StandardCharsets.UTF_8);
+        query = ByteBuffer.allocate(MySQLPacket.packetHeaderSize + 1 + sql.length);
+        query.put((byte) (sql.length + 1)).put((byte) 0).put((byte) 0).put((byte) 0);
+        query.put(MySQLPacket.COM_QUERY).put(sql).flip();
+
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open();
+        if (clientReceiveBuffer > 0) {
+            client.socket().setReceiveBufferSize(clientReceiveBuffer);
+        }
+        client.connect(server.getLocalAddress());
+        SocketChannel frontChannel = server.accept();
+        SocketChannel backendChannel = SocketChannel.open(server.getLocalAddress());
+        backendServer = server.accept();
+        frontChannel.configureBlocking(false);
+        backendChannel.configureBlocking(false);
+
+        mockServer = new Thread(this::serve, "mock-mysql");
+        mockServer.setDaemon(true);
+        mockServer.start();
+
+        pool = new BuddyByteBufferPool(1024 * 1024, (short) 1024, (short) 8);
+        reactor = new MycatReactorThread(pool);
+        reactor.setDaemon(true);
+        reactor.start();
+        CountDownLatch ready = new CountDownLatch(1);
+        reactor.addNIOJob(() -> {
+            try {
+                bind(frontChannel, backendChannel);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            ready.countDown();
+        });
+        if (!ready.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("reactor not ready");
+        }
+    }
+
+    private static byte[] resultSet(int rows, int rowSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 + rows * (MySQLPacket.packetHeaderSize + 3 + rowSize));
+        byte seq = 1;
+        // 列数, 列定义, EOF
+        buffer.put(new byte[] { 1, 0, 0, seq++, 1 });
+        buffer.put(new byte[] { 10, 0, 0, seq++, 3, 'd', 'e', 'f', 0, 0, 0, 1, 'a', 0 });
+        buffer.put(new byte[] { 5, 0, 0, seq++, (byte) 0xfe, 0, 0, 2, 0 });
+        for (int row = 0; row < rows; row++) {
+            int length = rowSize + 3;
+            buffer.put((byte) length).put((byte) (length >>> 8)).put((byte) (length >>> 16)).put(seq++);
+            buffer.put((byte) 0xfc).put((byte) rowSize).put((byte) (rowSize >>> 8));
+            for (int i = 0; i < rowSize; i++) {
+                buffer.put((byte) ('a' + (row + i) % 26));
+            }
+        }
+        buffer.put(new byte[] { 5, 0, 0, seq, (byte) 0xfe, 0, 0, 2, 0 });
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 在 reactor 线程中建立前后端会话, 后端连接已经绑定到前端
+     */
+    private void bind(SocketChannel frontChannel, SocketChannel backendChannel) throws IOException {
+        ReplicaBean replicaBean = new ReplicaBean();
+        replicaBean.setName("loopback");
+        replicaBean.setRepType(ReplicaBean.RepTypeEnum.SINGLE_NODE);
+        MySQLRepBean repBean = new MySQLRepBean();
+        repBean.setReplicaBean(replicaBean);
+        DatasourceMetaBean dsMetaBean = new DatasourceMetaBean();
+        dsMetaBean.setMaxCon(10);
+        MySQLMetaBean metaBean = new MySQLMetaBean();
+        metaBean.setDsMetaBean(dsMetaBean);
+        metaBean.setSlaveNode(false);
+        metaBean.prepareHeartBeat(repBean, DBHeartbeat.OK_STATUS);
+        repBean.getMetaBeans().add(metaBean);
+        ProxyRuntime.INSTANCE.getConfig().getMysqlRepMap().put("loopback", repBean);
+
+        DNBean dnBean = new DNBean();
+        dnBean.setDatabase("test");
+        dnBean.setReplica("loopback");
+        SchemaBean schema = new SchemaBean();
+        schema.setName("test");
+        schema.setSchemaType(SchemaBean.SchemaTypeEnum.DB_IN_ONE_SERVER);
+        schema.setDefaultDN(dnBean);
+
+        MycatSession front = new MycatSession(pool, reactor.getSelector(), frontChannel);
+        front.schema = schema;
+        front.setSessionManager(new MycatSessionManager());
+        front.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        MySQLSession backend = new MySQLSession(pool, reactor.getSelector(), backendChannel);
+        backend.setMySQLMetaBean(metaBean);
+        backend.setDatabase("test");
+        backend.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        front.bindBackend(backend);
+        front.change2ReadOpts();
+    }
+
+    /**
+     * mock MySQL 服务端, 每收到一个 COM_QUERY 返回一次结果集
+     */
+    private void serve() {
+        ByteBuffer in = ByteBuffer.allocate(1024);
+        ByteBuffer out = ByteBuffer.wrap(resultSet);
+        try {
+            while (true) {
+                in.clear().limit(query.limit());
+                while (in.hasRemaining()) {
+                    if (backendServer.read(in) < 0) {
+                        return;
+                    }
+                }
+                out.clear();
+                while (out.hasRemaining()) {
+                    backendServer.write(out);
+                }
+            }
+        } catch (IOException e) {
+            // 关闭时连接断开
+        }
+    }
+
+    /**
+     * 发送一次查询, 把收到的结果集读入 received
+     *
+     * @param received 容量不小于结果集大小
+     * @param chunk 每次最多读取的字节数
+     * @param pauseMillis 每次读取后暂停的时间, 模拟处理较慢的客户端
+     */
+    void query(ByteBuffer received, int chunk, long pauseMillis) throws IOException, InterruptedException {
+        query.rewind();
+        while (query.hasRemaining()) {
+            client.write(query);
+        }
+        received.clear();
+        while (received.position() < resultSet.length) {
+            received.limit(Math.min(resultSet.length, received.position() + chunk));
+            if (client.read(received) < 0) {
+                throw new IOException("front connection closed");
+            }
+            if (pauseMillis > 0) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+        received.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+        backendServer.close();
+        server.close();
+    }
+}
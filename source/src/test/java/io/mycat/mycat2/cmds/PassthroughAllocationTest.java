@@ -0,0 +1,239 @@
+package io.mycat.mycat2.cmds;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatConfig;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.DNBean;
+import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
+import io.mycat.mycat2.beans.conf.ProxyBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
+import io.mycat.mycat2.beans.conf.ReplicaBean;
+import io.mycat.mycat2.beans.conf.SchemaBean;
+import io.mycat.mycat2.beans.heartbeat.DBHeartbeat;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.ConfigEnum;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyRuntime;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import io.mycat.util.ExecutorUtil;
+import junit.framework.Assert;
+
+/**
+ * 透传一条 COM_QUERY 的完整过程: 前端读取 → 解析路由 → 取得后端连接 → 写往后端 → 读取后端响应 → 写往前端.
+ * 后端连接已经绑定且状态一致时, 稳定状态下 reactor 线程不应再产生垃圾
+ */
+@SuppressWarnings("restriction")
+public class PassthroughAllocationTest {
+
+    private static final String SQL = "select id, name from orders where id = 1 and status in ('a', 'b') limit 10";
+
+    /**
+     * 配置了全局动态注解时, 带表的语句不能进入流水线
+     */
+    private static final String PIPELINED_SQL = "select 1, 'a', @@version_comment limit 1";
+
+    private static final byte[] OK = { 7, 0, 0, 1, 0, 0, 0, 2, 0, 0, 0 };
+
+    private MycatConfig prevConfig;
+    private ProxyBean proxyBean;
+    private BuddyByteBufferPool pool;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private SocketChannel backendServer;
+    private SocketChannel frontChannel;
+    private SocketChannel backendChannel;
+
+    @Before
+    public void setUp() throws Exception {
+        // 动态注解的文件监听任务提交到业务线程池, 单独运行测试时 ProxyRuntime 未初始化
+        Field executor = ProxyRuntime.class.getDeclaredField("businessExecutor");
+        executor.setAccessible(true);
+        if (executor.get(ProxyRuntime.INSTANCE) == null) {
+            executor.set(ProxyRuntime.INSTANCE, ExecutorUtil.create("BusinessExecutor", 1));
+        }
+        prevConfig = ProxyRuntime.INSTANCE.getConfig();
+        MycatConfig config = new MycatConfig();
+        ProxyConfig proxyConfig = new ProxyConfig();
+        proxyBean = new ProxyBean();
+        proxyConfig.setProxy(proxyBean);
+        config.putConfig(ConfigEnum.PROXY, proxyConfig, 1);
+        ProxyRuntime.INSTANCE.setConfig(config);
+
+        pool = new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1);
+        selector = Selector.open();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        frontChannel = server.accept();
+        backendChannel = SocketChannel.open(server.getLocalAddress());
+        backendServer = server.accept();
+        frontChannel.configureBlocking(false);
+        backendChannel.configureBlocking(false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ProxyRuntime.INSTANCE.setConfig(prevConfig);
+        client.close();
+        backendServer.close();
+        frontChannel.close();
+        backendChannel.close();
+        server.close();
+        selector.close();
+    }
+
+    private static ByteBuffer queryPackets(String text, int statements) {
+        byte[] sql = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer packets = ByteBuffer.allocateDirect((MySQLPacket.packetHeaderSize + 1 + sql.length) * statements);
+        for (int i = 0; i < statements; i++) {
+            packets.put((byte) (sql.length + 1)).put((byte) 0).put((byte) 0).put((byte) 0);
+            packets.put(MySQLPacket.COM_QUERY).put(sql);
+        }
+        packets.flip();
+        return packets;
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("closed");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 在 reactor 线程中建立会话并执行透传, 返回稳定状态下每条语句分配的字节数
+     */
+    private long passthroughAllocation(String sql, int statements, int warmup, int measure) throws Exception {
+        long[] result = new long[1];
+        Throwable[] error = new Throwable[1];
+        MycatReactorThread reactor = new MycatReactorThread(pool) {
+            @Override
+            public void run() {
+                try {
+                    result[0] = runCycles(sql, statements, warmup, measure);
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        };
+        reactor.start();
+        reactor.join();
+        if (error[0] != null) {
+            throw new AssertionError(error[0]);
+        }
+        return result[0];
+    }
+
+    private long runCycles(String sql, int statements, int warmup, int measure) throws IOException {
+        ReplicaBean replicaBean = new ReplicaBean();
+        replicaBean.setName("test");
+        replicaBean.setRepType(ReplicaBean.RepTypeEnum.SINGLE_NODE);
+        MySQLRepBean repBean = new MySQLRepBean();
+        repBean.setReplicaBean(replicaBean);
+        DatasourceMetaBean dsMetaBean = new DatasourceMetaBean();
+        dsMetaBean.setMaxCon(10);
+        MySQLMetaBean metaBean = new MySQLMetaBean();
+        metaBean.setDsMetaBean(dsMetaBean);
+        metaBean.setSlaveNode(false);
+        metaBean.prepareHeartBeat(repBean, DBHeartbeat.OK_STATUS);
+        repBean.getMetaBeans().add(metaBean);
+        ProxyRuntime.INSTANCE.getConfig().getMysqlRepMap().put("test", repBean);
+
+        DNBean dnBean = new DNBean();
+        dnBean.setDatabase("test");
+        dnBean.setReplica("test");
+        SchemaBean schema = new SchemaBean();
+        schema.setName("test");
+        schema.setSchemaType(SchemaBean.SchemaTypeEnum.DB_IN_ONE_SERVER);
+        schema.setDefaultDN(dnBean);
+
+        MycatSession mycatSession = new MycatSession(pool, selector, frontChannel);
+        mycatSession.schema = schema;
+        mycatSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        MySQLSession mysqlSession = new MySQLSession(pool, selector, backendChannel);
+        mysqlSession.setMySQLMetaBean(metaBean);
+        mysqlSession.setDatabase("test");
+        mysqlSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        mycatSession.bindBackend(mysqlSession);
+
+        ByteBuffer query = queryPackets(sql, statements);
+        ByteBuffer received = ByteBuffer.allocateDirect(query.limit());
+        ByteBuffer ok = ByteBuffer.allocateDirect(OK.length * statements);
+        for (int i = 0; i < statements; i++) {
+            ok.put(OK);
+        }
+        ByteBuffer response = ByteBuffer.allocateDirect(ok.capacity());
+
+        com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = 0;
+        for (int i = 0; i < warmup + measure; i++) {
+            if (i == warmup) {
+                before = mxBean.getThreadAllocatedBytes(threadId);
+            }
+            writeFully(client, query);
+            DefaultMycatSessionHandler.INSTANCE.onSocketRead(mycatSession);
+            // 后端收到原样透传的语句
+            readFully(backendServer, received);
+            if (i == 0) {
+                Assert.assertEquals(0, received.compareTo((ByteBuffer) query.rewind()));
+            }
+            writeFully(backendServer, ok);
+            DefaultMycatSessionHandler.INSTANCE.onSocketRead(mysqlSession);
+            // 前端收到后端的响应
+            readFully(client, response);
+            if (i == 0) {
+                Assert.assertEquals(0, response.compareTo((ByteBuffer) ok.rewind()));
+                Assert.assertSame(mysqlSession, mycatSession.curBackend);
+            }
+            // 与 reactor 一样每轮 select, 让 selector 应用积累的 interestOps 变更
+            selector.selectNow();
+            selector.selectedKeys().clear();
+        }
+        return (mxBean.getThreadAllocatedBytes(threadId) - before) / measure / statements;
+    }
+
+    @Test
+    public void testSteadyStateAllocatesNothing() throws Exception {
+        long perStatement = passthroughAllocation(SQL, 1, 100000, 50000);
+        // JIT 编译等一次性的分配平均到每条语句不足一个对象
+        Assert.assertTrue("allocated " + perStatement + " bytes per statement", perStatement < 8);
+    }
+
+    /**
+     * 流水线模式下, 判断后续语句能否跟随透传时也不产生垃圾
+     */
+    @Test
+    public void testPipelinedSteadyStateAllocatesNothing() throws Exception {
+        proxyBean.setPipelineQuery(true);
+        long perStatement = passthroughAllocation(PIPELINED_SQL, 2, 50000, 25000);
+        Assert.assertTrue("allocated " + perStatement + " bytes per statement", perStatement < 8);
+    }
+}
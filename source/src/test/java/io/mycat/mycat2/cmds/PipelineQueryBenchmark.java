@@ -0,0 +1,143 @@
+package io.mycat.mycat2.cmds;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.mycat.mysql.packet.MySQLPacket;
+
+/**
+ * 单个连接上逐条执行与流水线执行 COM_QUERY 的语句吞吐对比(statements/s).
+ * mock MySQL server 对每个 COM_QUERY 返回一个 OK 包, 用来衡量流水线模式节省的往返时间
+ */
+@BenchmarkMode(Mode.Throughput)//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 5)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Thread)//该状态为每个线程独享
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class PipelineQueryBenchmark {
+
+    private static final int BATCH = 16;
+    private static final byte[] OK = {7, 0, 0, 1, 0, 0, 0, 2, 0, 0, 0};
+
+    ServerSocketChannel server;
+    Thread mockServer;
+    SocketChannel client;
+    ByteBuffer query;
+    ByteBuffer batchQuery;
+    ByteBuffer response = ByteBuffer.allocate(OK.length * BATCH);
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PipelineQueryBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void init() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        mockServer = new Thread(this::serve, "mock-mysql");
+        mockServer.setDaemon(true);
+        mockServer.start();
+        client = SocketChannel.open(server.getLocalAddress());
+        client.socket().setTcpNoDelay(true);
+
+        byte[] sql = "select 1".getBytes(StandardCharsets.UTF_8);
+        query = ByteBuffer.allocate(MySQLPacket.packetHeaderSize + 1 + sql.length);
+        query.put((byte) (sql.length + 1)).put((byte) 0).put((byte) 0).put((byte) 0)
+                .put(MySQLPacket.COM_QUERY).put(sql).flip();
+        batchQuery = ByteBuffer.allocate(query.limit() * BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batchQuery.put(query.duplicate());
+        }
+        batchQuery.flip();
+    }
+
+    @TearDown
+    public void destroy() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    /**
+     * 每个 COM_QUERY 返回一个 OK 包
+     */
+    private void serve() {
+        try (SocketChannel channel = server.accept()) {
+            channel.socket().setTcpNoDelay(true);
+            ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+            ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(in) > 0) {
+                in.flip();
+                while (in.remaining() >= MySQLPacket.packetHeaderSize) {
+                    int pos = in.position();
+                    int length = (in.get(pos) & 0xff) | (in.get(pos + 1) & 0xff) << 8 | (in.get(pos + 2) & 0xff) << 16;
+                    if (in.remaining() < MySQLPacket.packetHeaderSize + length) {
+                        break;
+                    }
+                    in.position(pos + MySQLPacket.packetHeaderSize + length);
+                    out.put(OK);
+                }
+                in.compact();
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                out.clear();
+            }
+        } catch (IOException e) {
+            // benchmark 结束时连接关闭
+        }
+    }
+
+    private void readResponses(int count) throws IOException {
+        response.clear().limit(OK.length * count);
+        while (response.hasRemaining()) {
+            client.read(response);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void oneByOne() throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            query.rewind();
+            client.write(query);
+            readResponses(1);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void pipelined() throws IOException {
+        batchQuery.rewind();
+        while (batchQuery.hasRemaining()) {
+            client.write(batchQuery);
+        }
+        readResponses(BATCH);
+    }
+}
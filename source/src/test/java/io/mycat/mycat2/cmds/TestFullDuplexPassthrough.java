@@ -0,0 +1,307 @@
+package io.mycat.mycat2.cmds;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatConfig;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.MycatSessionManager;
+import io.mycat.mycat2.beans.conf.ProxyBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
+import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.proxy.ConfigEnum;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyRuntime;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import junit.framework.Assert;
+
+/**
+ * 全双工透传: 前端写不完的 buffer 转交到积压队列, 由前端可写事件 gathering write 写出.
+ * 积压达到上限时暂停读取后端, 写出后恢复; 结果集结束后写完积压数据再结束命令; 关闭时回收积压的 buffer
+ */
+public class TestFullDuplexPassthrough {
+
+    private static final int MAX_PENDING = 2;
+    private static final int PENDING_SIZE = 32 * 1024;
+
+    /**
+     * 在拥有 buffer pool 的 reactor 线程中执行
+     */
+    interface ReactorTask {
+        void run() throws Exception;
+    }
+
+    private MycatConfig prevConfig;
+    private ProxyBean proxyBean;
+    private BuddyByteBufferPool pool;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private SocketChannel frontChannel;
+    private SocketChannel backendChannel;
+    private SocketChannel backendServer;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private int written;
+
+    @Before
+    public void setUp() throws IOException {
+        prevConfig = ProxyRuntime.INSTANCE.getConfig();
+        proxyBean = new ProxyBean();
+        proxyBean.setFullDuplexPassthrough(true);
+        proxyBean.setMaxPendingWriteBuffers(MAX_PENDING);
+        ProxyConfig proxyConfig = new ProxyConfig();
+        proxyConfig.setProxy(proxyBean);
+        MycatConfig config = new MycatConfig();
+        config.putConfig(ConfigEnum.PROXY, proxyConfig, 1);
+        ProxyRuntime.INSTANCE.setConfig(config);
+
+        pool = new BuddyByteBufferPool(1024 * 256, (short) 1024, (short) 2);
+        selector = Selector.open();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        // 收发缓冲区都很小, 客户端不读取时前端很快写不动
+        client = SocketChannel.open();
+        client.socket().setReceiveBufferSize(4096);
+        client.connect(server.getLocalAddress());
+        frontChannel = server.accept();
+        frontChannel.socket().setSendBufferSize(4096);
+        backendChannel = SocketChannel.open(server.getLocalAddress());
+        backendServer = server.accept();
+        client.configureBlocking(false);
+        frontChannel.configureBlocking(false);
+        backendChannel.configureBlocking(false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ProxyRuntime.INSTANCE.setConfig(prevConfig);
+        client.close();
+        frontChannel.close();
+        backendChannel.close();
+        backendServer.close();
+        server.close();
+        selector.close();
+    }
+
+    private void inReactor(ReactorTask task) throws Exception {
+        Throwable[] error = new Throwable[1];
+        MycatReactorThread reactor = new MycatReactorThread(pool) {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        };
+        reactor.start();
+        reactor.join();
+        if (error[0] != null) {
+            throw new AssertionError(error[0]);
+        }
+    }
+
+    private MycatSession front() throws IOException {
+        MycatSession session = new MycatSession(pool, selector, frontChannel);
+        session.setSessionManager(new MycatSessionManager());
+        session.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        return session;
+    }
+
+    private MySQLSession bindBackend(MycatSession front) throws IOException {
+        MySQLSession backend = new MySQLSession(pool, selector, backendChannel);
+        backend.bind2MycatSession(front);
+        backend.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        front.curBackend = backend;
+        return backend;
+    }
+
+    /**
+     * 从池中分配 buffer, 填入后续的数据, 转交到前端的积压队列
+     */
+    private void addPending(MycatSession session, int size) {
+        ByteBuffer buffer = pool.allocate(size);
+        buffer.put(data(size)).flip();
+        session.addPendingWrite(buffer);
+    }
+
+    private byte[] data(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ((written + i) % 251);
+        }
+        written += size;
+        return bytes;
+    }
+
+    /**
+     * 客户端读取当前可以读到的数据
+     */
+    private void clientRead() throws IOException {
+        readBuffer.clear();
+        int n;
+        while ((n = client.read(readBuffer)) > 0) {
+            received.write(readBuffer.array(), 0, n);
+            readBuffer.clear();
+        }
+    }
+
+    private void assertReceivedAll() throws Exception {
+        for (int i = 0; i < 100 && received.size() < written; i++) {
+            clientRead();
+            Thread.sleep(10);
+        }
+        byte[] bytes = received.toByteArray();
+        Assert.assertEquals(written, bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != (byte) (i % 251)) {
+                Assert.fail("unexpected byte at " + i);
+            }
+        }
+    }
+
+    private static int interestOps(SocketChannel channel, Selector selector) {
+        return channel.keyFor(selector).interestOps();
+    }
+
+    @Test
+    public void testPartialGatheringWrite() throws Exception {
+        inReactor(() -> {
+            MycatSession session = front();
+            long used = pool.size();
+            for (int i = 0; i < 3; i++) {
+                addPending(session, PENDING_SIZE);
+            }
+            ByteBuffer current = ByteBuffer.wrap(data(1024));
+            // socket 缓冲区放不下全部数据
+            Assert.assertFalse(session.writePendingToChannel(current));
+            Assert.assertTrue(session.hasPendingWrites());
+            Assert.assertTrue(current.hasRemaining());
+            // 已经写完的积压 buffer 立即回收, 部分写出的 buffer 保留剩余数据
+            Assert.assertEquals(used + session.getPendingWriteCount() * PENDING_SIZE, pool.size());
+
+            // 客户端读取后继续写出, 积压数据在 current 之前按顺序到达
+            while (!session.writePendingToChannel(current)) {
+                clientRead();
+            }
+            Assert.assertFalse(session.hasPendingWrites());
+            Assert.assertEquals(used, pool.size());
+            assertReceivedAll();
+        });
+    }
+
+    @Test
+    public void testBackendPausedAtMaxPending() throws Exception {
+        inReactor(() -> {
+            MycatSession session = front();
+            MySQLSession backend = bindBackend(session);
+            // 结果集还在传输
+            session.setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, true);
+
+            addPending(session, PENDING_SIZE);
+            session.waitPendingWritable(MAX_PENDING, false);
+            Assert.assertEquals(SelectionKey.OP_WRITE, interestOps(frontChannel, selector));
+            Assert.assertFalse(session.isCurBufOwner());
+            // 积压未达到上限, 后端继续读取
+            Assert.assertEquals(SelectionKey.OP_READ, interestOps(backendChannel, selector));
+
+            addPending(session, PENDING_SIZE);
+            session.waitPendingWritable(MAX_PENDING, false);
+            Assert.assertEquals(0, interestOps(backendChannel, selector));
+
+            // 前端可写, 但一个 buffer 也没有写完时保持暂停
+            session.writeToChannel();
+            Assert.assertEquals(MAX_PENDING, session.getPendingWriteCount());
+            Assert.assertEquals(0, interestOps(backendChannel, selector));
+
+            // 积压低于上限后恢复读取后端
+            while (session.getPendingWriteCount() >= MAX_PENDING) {
+                clientRead();
+                session.writeToChannel();
+            }
+            Assert.assertEquals(SelectionKey.OP_READ, interestOps(backendChannel, selector));
+
+            // 积压全部写完, 前端等待后端的数据
+            while (session.hasPendingWrites()) {
+                clientRead();
+                session.writeToChannel();
+            }
+            Assert.assertEquals(0, interestOps(frontChannel, selector));
+            Assert.assertEquals(SelectionKey.OP_READ, interestOps(backendChannel, selector));
+            assertReceivedAll();
+            session.close(true, "test");
+        });
+    }
+
+    @Test
+    public void testEndOfResultWithPendingBuffers() throws Exception {
+        inReactor(() -> {
+            MycatSession session = front();
+            MySQLSession backend = bindBackend(session);
+            session.curSQLCommand = DirectPassthrouhCmd.INSTANCE;
+            // 后端结果集已经读完, 还有一个 buffer 没有写出
+            session.setFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG, false);
+            addPending(session, PENDING_SIZE);
+            session.waitPendingWritable(MAX_PENDING, true);
+            Assert.assertEquals(0, interestOps(backendChannel, selector));
+
+            while (session.hasPendingWrites()) {
+                clientRead();
+                session.writeToChannel();
+            }
+            // 积压写完后走写完成流程, 前端重新读取下一条命令
+            Assert.assertTrue(session.isCurBufOwner());
+            Assert.assertEquals(SelectionKey.OP_READ, interestOps(frontChannel, selector));
+            Assert.assertEquals(0, interestOps(backendChannel, selector));
+            Assert.assertFalse(backend.isClosed());
+            assertReceivedAll();
+        });
+    }
+
+    @Test
+    public void testClosingRecyclesPendingBuffers() throws Exception {
+        inReactor(() -> {
+            long used = pool.size();
+            MycatSession session = front();
+            for (int i = 0; i < 3; i++) {
+                addPending(session, PENDING_SIZE);
+            }
+            Assert.assertTrue(pool.size() > used + 3 * PENDING_SIZE - 1);
+            session.close(false, "test");
+            Assert.assertFalse(session.hasPendingWrites());
+            Assert.assertEquals(used, pool.size());
+        });
+    }
+
+    /**
+     * 真实的事件循环中, 慢速客户端收到的结果集与后端返回的完全一致, 半双工与全双工相同
+     */
+    @Test
+    public void testStreamsResultSetToSlowClient() throws Exception {
+        for (boolean fullDuplex : new boolean[] { false, true }) {
+            proxyBean.setFullDuplexPassthrough(fullDuplex);
+            try (LoopbackPassthrough loopback = new LoopbackPassthrough(2000, 300, 4096)) {
+                ByteBuffer result = ByteBuffer.allocate(loopback.resultSet.length);
+                for (int i = 0; i < 2; i++) {
+                    loopback.query(result, 8192, i == 0 ? 1 : 0);
+                    Assert.assertTrue(Arrays.equals(loopback.resultSet,
+                            Arrays.copyOf(result.array(), result.limit())));
+                }
+            }
+        }
+    }
+}
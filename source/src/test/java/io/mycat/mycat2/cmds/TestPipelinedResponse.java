@@ -0,0 +1,100 @@
+package io.mycat.mycat2.cmds;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.cmds.pkgread.CommQueryHandler;
+import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import junit.framework.Assert;
+
+/**
+ * 流水线模式下,同一个后端连接上连续的多个响应按顺序依次解析
+ */
+public class TestPipelinedResponse {
+
+    private static final byte[] OK = {7, 0, 0, 1, 0, 0, 0, 2, 0, 0, 0};
+
+    private static final byte[] RESULT_SET = {
+            1, 0, 0, 1, 1,                                   // column count
+            10, 0, 0, 2, 3, 'd', 'e', 'f', 0, 0, 0, 1, 'a', 0, // column definition
+            5, 0, 0, 3, (byte) 0xfe, 0, 0, 2, 0,             // eof
+            2, 0, 0, 4, 1, '1',                              // row
+            5, 0, 0, 5, (byte) 0xfe, 0, 0, 2, 0 };           // eof
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private MycatSession mycatSession;
+    private MySQLSession mysqlSession;
+
+    @Before
+    public void setUp() throws IOException {
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1);
+        selector = Selector.open();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel accepted = server.accept();
+        accepted.configureBlocking(false);
+        client.configureBlocking(false);
+        mycatSession = new MycatSession(pool, selector, accepted);
+        mysqlSession = new MySQLSession(pool, selector, client);
+        mysqlSession.bind2MycatSession(mycatSession);
+        mycatSession.curBackend = mysqlSession;
+        mycatSession.commandHandler = CommQueryHandler.INSTANCE;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        selector.close();
+    }
+
+    @Test
+    public void testOkThenResultSetThenOk() throws IOException {
+        ProxyBuffer buffer = mycatSession.proxyBuffer;
+        buffer.writeBytes(OK);
+        buffer.writeBytes(RESULT_SET);
+        buffer.writeBytes(OK);
+        mycatSession.setPipelinedResponses(2);
+
+        int responses = 0;
+        do {
+            while (mycatSession.commandHandler.procss(mysqlSession)) {
+            }
+            responses++;
+        } while (mycatSession.nextPipelinedResponse(mysqlSession));
+
+        Assert.assertEquals(3, responses);
+        Assert.assertEquals(0, mycatSession.getPipelinedResponses());
+        Assert.assertEquals(buffer.writeIndex, mysqlSession.curMSQLPackgInf.endPos);
+        Assert.assertFalse(mycatSession.hasFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG));
+        Assert.assertTrue(mysqlSession.isIdleMarked());
+    }
+
+    @Test
+    public void testWaitForRemainingResponses() throws IOException {
+        ProxyBuffer buffer = mycatSession.proxyBuffer;
+        buffer.writeBytes(OK);
+        mycatSession.setPipelinedResponses(1);
+
+        while (mycatSession.commandHandler.procss(mysqlSession)) {
+        }
+        // 后续响应还没有到达,保持传输未结束的状态等待读取后端
+        Assert.assertFalse(mycatSession.nextPipelinedResponse(mysqlSession));
+        Assert.assertEquals(0, mycatSession.getPipelinedResponses());
+        Assert.assertTrue(mycatSession.hasFlag(SessionKeyEnum.SESSION_KEY_TRANSFER_OVER_FLAG));
+        Assert.assertFalse(mysqlSession.isIdleMarked());
+    }
+}
@@ -0,0 +1,126 @@
+package io.mycat.mycat2.cmds.cache.mapcache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 缓存的结果集写往客户端的吞吐对比(次/s).
+ * copyThroughBuffer 按 ProxyBuffer 的大小逐块读入 buffer 再写往 socket, transferTo 直接把文件区域写往 socket.
+ * 接收端只读取并丢弃数据
+ */
+@BenchmarkMode(Mode.Throughput)//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 3)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Thread)//该状态为每个线程独享
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class CacheTransferBenchmark {
+
+    /* 与默认的 bufferPoolChunkSize 相同 */
+    private static final int CHUNK_SIZE = 1024 * 4 * 2;
+
+    @Param({"1048576", "10485760", "104857600"})
+    int resultSize;
+
+    File file;
+    RandomAccessFile randomFile;
+    FileChannel fileChannel;
+    ServerSocketChannel server;
+    Thread receiver;
+    SocketChannel client;
+    ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(CacheTransferBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void init() throws IOException {
+        file = File.createTempFile("mycat_cache_", ".mapfile");
+        randomFile = new RandomAccessFile(file, "rw");
+        fileChannel = randomFile.getChannel();
+        ByteBuffer data = ByteBuffer.allocate(1024 * 1024);
+        ThreadLocalRandom.current().nextBytes(data.array());
+        for (long pos = 0; pos < resultSize; pos += data.capacity()) {
+            data.clear();
+            fileChannel.write(data, pos);
+        }
+
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        receiver = new Thread(this::drain, "cache-client");
+        receiver.setDaemon(true);
+        receiver.start();
+        client = SocketChannel.open(server.getLocalAddress());
+    }
+
+    @TearDown
+    public void destroy() throws IOException {
+        client.close();
+        server.close();
+        randomFile.close();
+        file.delete();
+    }
+
+    private void drain() {
+        try (SocketChannel channel = server.accept()) {
+            ByteBuffer in = ByteBuffer.allocateDirect(256 * 1024);
+            while (channel.read(in) >= 0) {
+                in.clear();
+            }
+        } catch (IOException e) {
+            // benchmark 结束时连接关闭
+        }
+    }
+
+    @Benchmark
+    public long copyThroughBuffer() throws IOException {
+        long pos = 0;
+        while (pos < resultSize) {
+            chunk.clear();
+            pos += fileChannel.read(chunk, pos);
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                client.write(chunk);
+            }
+        }
+        return pos;
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        long pos = 0;
+        while (pos < resultSize) {
+            pos += fileChannel.transferTo(pos, resultSize - pos, client);
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,180 @@
+package io.mycat.mycat2.cmds.cache.mapcache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.mycat.mycat2.beans.SqlCacheMapFileBean;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.BufferSQLParser;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyBuffer;
+import junit.framework.Assert;
+
+public class TestCacheManager {
+
+    private static final String SCHEMA = "db1";
+
+    private final List<CacheManager> managers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (CacheManager manager : managers) {
+            for (String table : new String[] { "t1", "t2", "t3" }) {
+                manager.invalidate(SCHEMA, table);
+            }
+        }
+        // 删除创建缓存文件时建立的空目录
+        File dir = new File(MapFileCacheImp.class.getClassLoader().getResource("cachefile").getPath());
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private CacheManager newManager(long limit) {
+        CacheManager manager = new CacheManager(limit);
+        managers.add(manager);
+        return manager;
+    }
+
+    private BufferSQLContext parse(String sql) {
+        BufferSQLParser parser = MycatReactorThread.currentSQLParser();
+        BufferSQLContext context = new BufferSQLContext();
+        parser.parse(sql.getBytes(), context);
+        return context;
+    }
+
+    private SQLFingerprint cache(CacheManager manager, String sql, int dataSize) throws Exception {
+        BufferSQLContext context = parse(sql);
+        SQLFingerprint key = SQLFingerprint.of(context, SCHEMA);
+        manager.createCache(key, sql, CacheManager.getTables(context, SCHEMA), 60, 1024);
+        Assert.assertTrue(manager.begin(key));
+        ProxyBuffer buffer = new ProxyBuffer(ByteBuffer.allocate(1024));
+        for (int i = 0; i < dataSize; i++) {
+            buffer.getBuffer().put((byte) i);
+        }
+        buffer.readMark = 0;
+        buffer.readIndex = dataSize;
+        manager.putCacheData(key, buffer);
+        manager.getCacheBean(key).getCacheMapFile().setCacheAvailable(true);
+        Assert.assertTrue(manager.commit(key));
+        return key;
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        CacheManager manager = newManager(1024 * 1024);
+        SQLFingerprint key = cache(manager, "select * from t1 where id = 1", 100);
+        Assert.assertTrue(manager.cacheExists(key));
+        Assert.assertEquals(100, manager.getUsedBytes());
+
+        ProxyBuffer buffer = new ProxyBuffer(ByteBuffer.allocate(1024));
+        Assert.assertEquals(100, manager.getCacheValue(buffer, key, 0));
+        Assert.assertEquals(100, buffer.getBuffer().position());
+        Assert.assertEquals(99, buffer.getBuffer().get(99));
+    }
+
+    @Test
+    public void testTransferRetainedFileAfterClean() throws Exception {
+        CacheManager manager = newManager(1024 * 1024);
+        SQLFingerprint key = cache(manager, "select * from t1 where id = 1", 100);
+        SqlCacheMapFileBean mapFile = manager.retainCacheFile(key);
+        Assert.assertNotNull(mapFile);
+
+        // 正在写往前端时缓存被更新, 旧文件在写完之前仍然可以读取
+        Assert.assertTrue(manager.begin(key));
+        manager.cleanCacheData(key);
+        Assert.assertTrue(manager.commit(key));
+        Assert.assertNotSame(mapFile, manager.getCacheBean(key).getCacheMapFile());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(100, mapFile.getChannel().transferTo(0, mapFile.getPutOption(), Channels.newChannel(out)));
+        Assert.assertEquals(99, out.toByteArray()[99]);
+
+        MapFileCacheImp.INSTANCE.release(mapFile);
+        Assert.assertFalse(new File(mapFile.getFileName()).exists());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        CacheManager manager = newManager(250);
+        SQLFingerprint key1 = cache(manager, "select * from t1 where id = 1", 100);
+        SQLFingerprint key2 = cache(manager, "select * from t1 where id = 2", 100);
+        // 访问第一个缓存, 第二个成为最久未访问的缓存
+        manager.getCacheValue(new ProxyBuffer(ByteBuffer.allocate(1024)), key1, 0);
+        SQLFingerprint key3 = cache(manager, "select * from t1 where id = 3", 100);
+
+        Assert.assertTrue(manager.cacheExists(key1));
+        Assert.assertFalse(manager.cacheExists(key2));
+        Assert.assertTrue(manager.cacheExists(key3));
+        Assert.assertEquals(2, manager.size());
+        Assert.assertEquals(200, manager.getUsedBytes());
+    }
+
+    @Test
+    public void testEvictAfterInvalidate() throws Exception {
+        CacheManager manager = newManager(250);
+        SQLFingerprint key1 = cache(manager, "select * from t1 where id = 1", 100);
+        SQLFingerprint key2 = cache(manager, "select * from t2 where id = 1", 100);
+        // 失效的缓存同时移出访问顺序, 之后从剩下的缓存中淘汰
+        manager.invalidate(parse("delete from t1 where id = 1"), SCHEMA);
+        SQLFingerprint key3 = cache(manager, "select * from t2 where id = 3", 100);
+        SQLFingerprint key4 = cache(manager, "select * from t2 where id = 4", 100);
+
+        Assert.assertFalse(manager.cacheExists(key1));
+        Assert.assertFalse(manager.cacheExists(key2));
+        Assert.assertTrue(manager.cacheExists(key3));
+        Assert.assertTrue(manager.cacheExists(key4));
+        Assert.assertEquals(200, manager.getUsedBytes());
+    }
+
+    @Test
+    public void testInvalidateByModifySQL() throws Exception {
+        CacheManager manager = newManager(1024 * 1024);
+        SQLFingerprint key1 = cache(manager, "select * from t1 where id = 1", 10);
+        SQLFingerprint key2 = cache(manager, "select * from t2 where id = 1", 10);
+        SQLFingerprint key3 = cache(manager, "select * from t1 join t3 on t1.id = t3.id", 10);
+
+        manager.invalidate(parse("select * from t1"), SCHEMA);
+        Assert.assertEquals(3, manager.size());
+
+        manager.invalidate(parse("update T1 set name = 'a' where id = 1"), SCHEMA);
+        Assert.assertFalse(manager.cacheExists(key1));
+        Assert.assertTrue(manager.cacheExists(key2));
+        Assert.assertFalse(manager.cacheExists(key3));
+        Assert.assertEquals(10, manager.getUsedBytes());
+
+        manager.invalidate(parse("insert into t2 (id) values (2)"), SCHEMA);
+        Assert.assertFalse(manager.cacheExists(key2));
+        Assert.assertEquals(0, manager.size());
+        Assert.assertEquals(0, manager.getUsedBytes());
+    }
+
+    @Test
+    public void testInvalidateBySchema() throws Exception {
+        CacheManager manager = newManager(1024 * 1024);
+        SQLFingerprint key1 = cache(manager, "select * from t1 where id = 1", 10);
+        SQLFingerprint key2 = cache(manager, "select * from DB2.t1 where id = 1", 10);
+        Assert.assertEquals("db2.t1", manager.getCacheBean(key2).getTables()[0]);
+
+        // 其他 schema 的同名表不影响
+        manager.invalidate(parse("update t1 set name = 'a'"), "db3");
+        Assert.assertEquals(2, manager.size());
+        manager.invalidate(parse("update `db2`.t1 set name = 'a'"), SCHEMA);
+        Assert.assertTrue(manager.cacheExists(key1));
+        Assert.assertFalse(manager.cacheExists(key2));
+        manager.invalidate(parse("delete from db1.t1 where id = 1"), "db2");
+        Assert.assertFalse(manager.cacheExists(key1));
+    }
+}
@@ -0,0 +1,60 @@
+package io.mycat.mycat2.cmds.cache.mapcache;
+
+import org.junit.Test;
+
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.BufferSQLParser;
+import io.mycat.proxy.MycatReactorThread;
+import junit.framework.Assert;
+
+public class TestSQLFingerprint {
+
+    private SQLFingerprint fingerprint(String sql, String schema) {
+        BufferSQLParser parser = MycatReactorThread.currentSQLParser();
+        BufferSQLContext context = new BufferSQLContext();
+        parser.parse(sql.getBytes(), context);
+        return SQLFingerprint.of(context, schema);
+    }
+
+    private SQLFingerprint fingerprint(String sql) {
+        return fingerprint(sql, "db1");
+    }
+
+    @Test
+    public void testIgnoreWhitespaceCommentAndKeywordCase() {
+        SQLFingerprint expect = fingerprint("SELECT id, name FROM user WHERE id = 1 AND name = 'a b'");
+        Assert.assertEquals(expect, fingerprint("select id,name from user where id=1 and name='a b'"));
+        Assert.assertEquals(expect, fingerprint("select  id ,\n\tname from user /* comment */ where id = 1 and name = 'a b'"));
+        Assert.assertEquals(expect, fingerprint("select id, name from user -- comment\n where id = 1 and name = 'a b'"));
+        Assert.assertEquals(expect.hashCode(),
+                fingerprint("select id, name from user where id = 1 and name = 'a b'").hashCode());
+    }
+
+    @Test
+    public void testLiteralsAreKept() {
+        SQLFingerprint expect = fingerprint("select * from user where id = 1 and name = 'abc'");
+        Assert.assertFalse(expect.equals(fingerprint("select * from user where id = 2 and name = 'abc'")));
+        Assert.assertFalse(expect.equals(fingerprint("select * from user where id = 1 and name = 'abd'")));
+        Assert.assertFalse(expect.equals(fingerprint("select * from user where id = 1 and name = 'ABC'")));
+        Assert.assertFalse(expect.equals(fingerprint("select * from user where id = 1 and name = 'a bc'")));
+        // 解析器记录的字符串长度不含转义字符, 转义之后的内容也要参与计算
+        Assert.assertFalse(fingerprint("select * from user where name = 'a\\'xyz'")
+                .equals(fingerprint("select * from user where name = 'a\\'xab'")));
+    }
+
+    @Test
+    public void testOperatorsOutsideTokens() {
+        Assert.assertFalse(fingerprint("select * from user where id = 1")
+                .equals(fingerprint("select * from user where id != 1")));
+        Assert.assertFalse(fingerprint("select * from user where id % 2 = 1")
+                .equals(fingerprint("select * from user where id & 2 = 1")));
+        Assert.assertFalse(fingerprint("select * from user where id = 1")
+                .equals(fingerprint("select * from user where id = 1 /*!40001 SQL_NO_CACHE */")));
+    }
+
+    @Test
+    public void testSchema() {
+        Assert.assertFalse(fingerprint("select * from user", "db1").equals(fingerprint("select * from user", "db2")));
+        Assert.assertEquals(fingerprint("select * from user", null), fingerprint("select * from user", null));
+    }
+}
@@ -0,0 +1,183 @@
+package io.mycat.mycat2.cmds.multinode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.cmds.ShardingMultiDNCmd;
+import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.BufferSQLParser;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import io.mycat.util.ErrorCode;
+import junit.framework.Assert;
+
+/**
+ * 某个节点在结果集中途出错时, 其他未结束的节点被 KILL QUERY
+ */
+public class TestMultiDNExecution {
+
+    private final List<SocketChannel> channels = new ArrayList<>();
+    private final List<MySQLSession> killed = new ArrayList<>();
+    private Selector selector;
+    private ServerSocketChannel server;
+    private MycatSession mycatSession;
+    private MySQLSession[] backends;
+    private MultiDNExecution execution;
+
+    private SocketChannel accept() throws IOException {
+        SocketChannel client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel accepted = server.accept();
+        client.configureBlocking(false);
+        accepted.configureBlocking(false);
+        channels.add(client);
+        channels.add(accepted);
+        return accepted;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1);
+        selector = Selector.open();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        mycatSession = new MycatSession(pool, selector, accept());
+        backends = new MySQLSession[2];
+        for (int i = 0; i < backends.length; i++) {
+            MySQLMetaBean metaBean = new MySQLMetaBean();
+            metaBean.setRepBean(new MySQLRepBean());
+            backends[i] = new MySQLSession(pool, selector, accept());
+            backends[i].setMySQLMetaBean(metaBean);
+            backends[i].bind2MycatSession(mycatSession);
+        }
+        BufferSQLContext context = new BufferSQLContext();
+        new BufferSQLParser().parse("select id from orders".getBytes(StandardCharsets.UTF_8), context);
+        MergeSpec spec = MergeSpec.parse(context);
+        execution = new MultiDNExecution(mycatSession, new MySQLRepBean[2], spec) {
+            @Override
+            void acquire(int shard) throws IOException {
+                onBackend(shard, backends[shard], true);
+            }
+
+            @Override
+            void killQuery(MySQLSession mysqlSession) {
+                killed.add(mysqlSession);
+            }
+        };
+        mycatSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        mycatSession.curSQLCommand = ShardingMultiDNCmd.INSTANCE;
+        mycatSession.setAttr(SessionKeyEnum.SESSION_KEY_MULTI_DN_EXECUTION, execution);
+        execution.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        server.close();
+        selector.close();
+    }
+
+    private static byte[] packet(byte[] payload) {
+        byte[] packet = new byte[MySQLPacket.packetHeaderSize + payload.length];
+        packet[0] = (byte) payload.length;
+        System.arraycopy(payload, 0, packet, MySQLPacket.packetHeaderSize, payload.length);
+        return packet;
+    }
+
+    private static byte[] lenenc(String... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] column(String name) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] names = lenenc("def", "db", "orders", "orders", name, name);
+        out.write(names, 0, names.length);
+        out.write(0x0c);
+        out.write(new byte[] { 33, 0, 11, 0, 0, 0, 3, 0, 0, 0, 0, 0 }, 0, 12);
+        return packet(out.toByteArray());
+    }
+
+    private static byte[] eof() {
+        return packet(new byte[] { (byte) 0xfe, 0, 0, 2, 0 });
+    }
+
+    private static byte[] error(int errno, String message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xff);
+        out.write(errno & 0xff);
+        out.write(errno >>> 8);
+        byte[] state = "#HY000".getBytes(StandardCharsets.UTF_8);
+        out.write(state, 0, state.length);
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+        return packet(out.toByteArray());
+    }
+
+    private void header(int shard) throws IOException {
+        execution.onPacket(shard, packet(new byte[] { 1 }));
+        execution.onPacket(shard, column("id"));
+        execution.onPacket(shard, eof());
+    }
+
+    @Test
+    public void testErrorPacketKillsOtherShards() throws IOException {
+        header(0);
+        execution.onPacket(0, packet(lenenc("1")));
+        header(1);
+        execution.onPacket(1, packet(lenenc("2")));
+        // 第二个节点在行数据中途出错
+        execution.onPacket(1, error(ErrorCode.ER_UNKNOWN_ERROR, "disk full"));
+        Assert.assertTrue(execution.getMerger().isFinished(1));
+        Assert.assertEquals(1, killed.size());
+        Assert.assertSame(backends[0], killed.get(0));
+
+        // 被中止的节点返回错误后结束, 不再重复 KILL
+        execution.onPacket(0, error(ErrorCode.ER_QUERY_INTERRUPTED, "Query execution was interrupted"));
+        Assert.assertTrue(execution.getMerger().isAllFinished());
+        Assert.assertEquals(1, killed.size());
+    }
+
+    @Test
+    public void testClosedShardKillsOtherShards() throws IOException {
+        header(0);
+        execution.onPacket(0, packet(lenenc("1")));
+        header(1);
+        execution.onShardFailed(1, ErrorCode.ERR_CONNECT_SOCKET, "data node connection closed");
+        Assert.assertTrue(backends[1].isClosed());
+        Assert.assertEquals(1, killed.size());
+        Assert.assertSame(backends[0], killed.get(0));
+    }
+
+    @Test
+    public void testFinishedShardNotKilled() throws IOException {
+        header(0);
+        execution.onPacket(0, eof());
+        header(1);
+        execution.onPacket(1, error(ErrorCode.ER_UNKNOWN_ERROR, "disk full"));
+        Assert.assertTrue(killed.isEmpty());
+        Assert.assertTrue(execution.getMerger().isAllFinished());
+    }
+}
@@ -0,0 +1,249 @@
+package io.mycat.mycat2.cmds.multinode;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.BufferSQLParser;
+import io.mycat.mysql.Fields;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.util.ErrorCode;
+import junit.framework.Assert;
+
+/**
+ * 多个节点的响应合并
+ */
+public class TestResultMerger {
+
+    private final BufferSQLParser parser = new BufferSQLParser();
+    private final BufferSQLContext context = new BufferSQLContext();
+    private final List<byte[]> output = new ArrayList<>();
+
+    private ResultMerger merger(String sql, int shards) {
+        parser.parse(sql.getBytes(StandardCharsets.UTF_8), context);
+        MergeSpec spec = MergeSpec.parse(context);
+        Assert.assertNotNull(spec);
+        return new ResultMerger(shards, spec, output::add);
+    }
+
+    private static byte[] packet(int... payload) {
+        byte[] packet = new byte[MySQLPacket.packetHeaderSize + payload.length];
+        packet[0] = (byte) payload.length;
+        for (int i = 0; i < payload.length; i++) {
+            packet[MySQLPacket.packetHeaderSize + i] = (byte) payload[i];
+        }
+        return packet;
+    }
+
+    private static byte[] packet(ByteArrayOutputStream payload) {
+        byte[] data = payload.toByteArray();
+        byte[] packet = new byte[MySQLPacket.packetHeaderSize + data.length];
+        packet[0] = (byte) data.length;
+        System.arraycopy(data, 0, packet, MySQLPacket.packetHeaderSize, data.length);
+        return packet;
+    }
+
+    private static void lenenc(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] column(String name, int type) {
+        return column(name, type, 0);
+    }
+
+    private static byte[] column(String name, int type, int flags) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        lenenc(out, "def");
+        lenenc(out, "db");
+        lenenc(out, "orders");
+        lenenc(out, "orders");
+        lenenc(out, name);
+        lenenc(out, name);
+        out.write(0x0c);
+        out.write(new byte[] { 33, 0, 11, 0, 0, 0, (byte) type, (byte) flags, (byte) (flags >>> 8), 0, 0, 0 }, 0, 12);
+        return packet(out);
+    }
+
+    private static byte[] row(String... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String value : values) {
+            lenenc(out, value);
+        }
+        return packet(out);
+    }
+
+    private static byte[] eof() {
+        return packet(0xfe, 0, 0, 2, 0);
+    }
+
+    private static byte[] ok(int affectedRows, int insertId) {
+        return packet(0, affectedRows, insertId, 2, 0, 0, 0);
+    }
+
+    private void header(ResultMerger merger, int shard) {
+        header(merger, shard, 0);
+    }
+
+    /**
+     * @param nameFlags name 列的标志位, 二进制排序规则时包含 BINARY_FLAG
+     */
+    private void header(ResultMerger merger, int shard, int nameFlags) {
+        merger.onPacket(shard, packet(2));
+        merger.onPacket(shard, column("id", Fields.FIELD_TYPE_LONG));
+        merger.onPacket(shard, column("name", Fields.FIELD_TYPE_VAR_STRING, nameFlags));
+        merger.onPacket(shard, eof());
+    }
+
+    /**
+     * 列数, 两个列定义和 EOF 之后到结束 EOF 之前的行
+     */
+    private List<String> rowIds() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 4; i < output.size() - 1; i++) {
+            ids.add(new String(ResultMerger.decodeRow(output.get(i), 2).get(0), StandardCharsets.UTF_8));
+        }
+        return ids;
+    }
+
+    private void assertSequence() {
+        for (int i = 0; i < output.size(); i++) {
+            Assert.assertEquals(i + 1, output.get(i)[3]);
+        }
+    }
+
+    @Test
+    public void testStreamWithoutOrder() {
+        ResultMerger merger = merger("select id, name from orders", 2);
+        header(merger, 0);
+        // 列定义和第一个节点的行在另一个节点返回之前输出
+        Assert.assertEquals(4, output.size());
+        merger.onPacket(0, row("1", "a"));
+        Assert.assertEquals(5, output.size());
+        Assert.assertTrue(merger.getFirstRowNanos() > 0);
+        merger.onPacket(0, eof());
+        Assert.assertTrue(merger.isFinished(0));
+        Assert.assertFalse(merger.isAllFinished());
+
+        header(merger, 1);
+        merger.onPacket(1, row("2", "b"));
+        merger.onPacket(1, eof());
+        Assert.assertTrue(merger.isAllFinished());
+        Assert.assertTrue(merger.getFirstRowNanos() <= merger.getFinishNanos(1));
+        Assert.assertEquals(7, output.size());
+        Assert.assertTrue(ResultMerger.isEof(output.get(6)));
+        Assert.assertEquals(2, merger.getSentRows());
+        assertSequence();
+    }
+
+    @Test
+    public void testMergeOk() {
+        ResultMerger merger = merger("update orders set status = 1 where status = 0", 3);
+        merger.onPacket(0, ok(2, 0));
+        merger.onPacket(2, ok(1, 0));
+        Assert.assertTrue(output.isEmpty());
+        merger.onPacket(1, ok(3, 0));
+        Assert.assertEquals(1, output.size());
+        byte[] ok = output.get(0);
+        Assert.assertEquals(MySQLPacket.OK_PACKET, ok[MySQLPacket.packetHeaderSize]);
+        Assert.assertEquals(6, ok[MySQLPacket.packetHeaderSize + 1]);
+        assertSequence();
+    }
+
+    @Test
+    public void testOrderByWithLimit() {
+        ResultMerger merger = merger("select id, name from orders order by id desc limit 1, 3", 2);
+        header(merger, 0);
+        merger.onPacket(0, row("9", "a"));
+        merger.onPacket(0, row("4", "b"));
+        // 另一个节点还没有返回行, 不能确定顺序
+        Assert.assertEquals(4, output.size());
+        header(merger, 1);
+        merger.onPacket(1, row("10", "c"));
+        merger.onPacket(1, row("8", "d"));
+        merger.onPacket(1, row("7", "e"));
+        Assert.assertTrue(merger.isLimitReached());
+        merger.onPacket(0, eof());
+        merger.onPacket(1, eof());
+        Assert.assertTrue(merger.isAllFinished());
+        Assert.assertEquals(8, output.size());
+        Assert.assertTrue(ResultMerger.isEof(output.get(7)));
+        Assert.assertEquals("[9, 8, 7]", rowIds().toString());
+        assertSequence();
+    }
+
+    @Test
+    public void testOrderByPosition() {
+        ResultMerger merger = merger("select id, name from orders order by 2", 2);
+        header(merger, 0, Fields.BINARY_FLAG);
+        header(merger, 1, Fields.BINARY_FLAG);
+        merger.onPacket(0, row("1", "b"));
+        merger.onPacket(1, row("2", "a"));
+        merger.onPacket(1, eof());
+        merger.onPacket(0, eof());
+        Assert.assertEquals("[2, 1]", rowIds().toString());
+    }
+
+    @Test
+    public void testOrderByNonBinaryCollationRejected() {
+        // utf8_general_ci 下 'a' 与 'B' 的顺序和字节序不同, 不能按字节归并
+        ResultMerger merger = merger("select id, name from orders order by name", 2);
+        header(merger, 0);
+        Assert.assertTrue(merger.hasError());
+        byte[] error = output.get(output.size() - 1);
+        Assert.assertEquals(MySQLPacket.ERROR_PACKET, error[MySQLPacket.packetHeaderSize]);
+        Assert.assertEquals(ErrorCode.ER_NOT_SUPPORTED_YET, (error[MySQLPacket.packetHeaderSize + 1] & 0xff)
+                | (error[MySQLPacket.packetHeaderSize + 2] & 0xff) << 8);
+
+        Assert.assertFalse(ResultMerger.isByteOrdered(Fields.FIELD_TYPE_STRING, Fields.ENUM_FLAG | Fields.BINARY_FLAG));
+        Assert.assertTrue(ResultMerger.isByteOrdered(Fields.FIELD_TYPE_BLOB, Fields.BLOB_FLAG | Fields.BINARY_FLAG));
+        Assert.assertTrue(ResultMerger.isByteOrdered(Fields.FIELD_TYPE_DATETIME, Fields.BINARY_FLAG));
+    }
+
+    @Test
+    public void testErrorSentOnce() {
+        ResultMerger merger = merger("select id, name from orders", 2);
+        header(merger, 0);
+        merger.onPacket(0, row("1", "a"));
+        merger.onShardFailed(1, ErrorCode.ERR_CONNECT_SOCKET, "closed");
+        Assert.assertTrue(merger.hasError());
+        int size = output.size();
+        Assert.assertEquals(MySQLPacket.ERROR_PACKET, output.get(size - 1)[MySQLPacket.packetHeaderSize]);
+        merger.onPacket(0, row("2", "b"));
+        merger.onPacket(0, eof());
+        Assert.assertTrue(merger.isAllFinished());
+        Assert.assertEquals(size, output.size());
+        assertSequence();
+    }
+
+    @Test
+    public void testColumnCountMismatch() {
+        ResultMerger merger = merger("select * from orders", 2);
+        header(merger, 0);
+        merger.onPacket(1, packet(1));
+        merger.onPacket(1, column("id", Fields.FIELD_TYPE_LONG));
+        merger.onPacket(1, eof());
+        Assert.assertTrue(merger.hasError());
+    }
+
+    @Test
+    public void testUnmergeable() {
+        String[] sqls = { "select count(*) from orders", "select distinct status from orders",
+                "select status from orders group by status", "select * from orders where id in (select 1)",
+                "update orders set status = 1 limit 1" };
+        for (String sql : sqls) {
+            parser.parse(sql.getBytes(StandardCharsets.UTF_8), context);
+            Assert.assertNull(sql, MergeSpec.parse(context));
+        }
+        parser.parse("select * from orders limit 10 offset 20".getBytes(StandardCharsets.UTF_8), context);
+        MergeSpec spec = MergeSpec.parse(context);
+        Assert.assertEquals(20, spec.getOffset());
+        Assert.assertEquals(10, spec.getCount());
+        Assert.assertEquals("select * from orders limit 30", new String(spec.getSql(), StandardCharsets.UTF_8));
+    }
+}
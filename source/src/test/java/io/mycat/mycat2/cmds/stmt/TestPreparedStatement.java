@@ -0,0 +1,489 @@
+package io.mycat.mycat2.cmds.stmt;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatConfig;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.MycatSessionManager;
+import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
+import io.mycat.mycat2.beans.conf.ProxyBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
+import io.mycat.mycat2.beans.conf.ReplicaBean;
+import io.mycat.mycat2.cmds.ComStmtExecuteCmd;
+import io.mycat.mycat2.cmds.pkgread.ComStmtExecuteHeaderHandler;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mycat2.tasks.BackendStmtPrepareTask;
+import io.mycat.mysql.packet.MySQLPacket;
+import io.mycat.proxy.ConfigEnum;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.proxy.ProxyRuntime;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import io.mycat.util.ErrorCode;
+import junit.framework.Assert;
+
+/**
+ * 预处理语句的元数据缓存和执行报文的转换.
+ * 前端的语句在不同的后端连接上执行: statement id 的转换, 连接上没有该语句时重新预处理,
+ * 表结构变化后返回 ER_NEED_REPREPARE, 语句数达到上限时关闭最久未使用的语句
+ */
+public class TestPreparedStatement {
+
+    private static final byte[] SQL = "select a from t where id = ?".getBytes(StandardCharsets.UTF_8);
+
+    // statement id 为 7, 1 列, 1 个参数
+    private static final byte[] PREPARE_OK = {12, 0, 0, 1, 0, 7, 0, 0, 0, 1, 0, 1, 0, 0, 0, 0};
+    private static final byte[] PARAM_DEF = {3, 0, 0, 2, 3, 'd', 'e'};
+    private static final byte[] PARAM_EOF = {5, 0, 0, 3, (byte) 0xfe, 0, 0, 2, 0};
+    private static final byte[] COLUMN_DEF = {3, 0, 0, 4, 3, 'd', 'e'};
+    private static final byte[] COLUMN_EOF = {5, 0, 0, 5, (byte) 0xfe, 0, 0, 2, 0};
+
+    /**
+     * 在拥有 buffer pool 的 reactor 线程中执行
+     */
+    interface ReactorTask {
+        void run() throws Exception;
+    }
+
+    private MycatConfig prevConfig;
+    private BuddyByteBufferPool pool;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private final List<SocketChannel> channels = new ArrayList<>();
+    /* 最近一次建立的连接的对端 */
+    private SocketChannel peer;
+    private MySQLMetaBean metaBean;
+
+    @Before
+    public void setUp() throws IOException {
+        prevConfig = ProxyRuntime.INSTANCE.getConfig();
+        ProxyConfig proxyConfig = new ProxyConfig();
+        proxyConfig.setProxy(new ProxyBean());
+        MycatConfig config = new MycatConfig();
+        config.putConfig(ConfigEnum.PROXY, proxyConfig, 1);
+        ProxyRuntime.INSTANCE.setConfig(config);
+
+        pool = new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1);
+        selector = Selector.open();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+
+        ReplicaBean replicaBean = new ReplicaBean();
+        replicaBean.setName("repl");
+        MySQLRepBean repBean = new MySQLRepBean();
+        repBean.setReplicaBean(replicaBean);
+        DatasourceMetaBean dsMetaBean = new DatasourceMetaBean();
+        dsMetaBean.setMaxCon(2);
+        metaBean = new MySQLMetaBean();
+        metaBean.setDsMetaBean(dsMetaBean);
+        metaBean.setRepBean(repBean);
+        metaBean.setSlaveNode(false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ProxyRuntime.INSTANCE.setConfig(prevConfig);
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        server.close();
+        selector.close();
+    }
+
+    private void inReactor(ReactorTask task) throws Exception {
+        Throwable[] error = new Throwable[1];
+        MycatReactorThread reactor = new MycatReactorThread(pool) {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        };
+        reactor.start();
+        reactor.join();
+        if (error[0] != null) {
+            throw new AssertionError(error[0]);
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+        peer = server.accept();
+        peer.configureBlocking(false);
+        channels.add(channel);
+        channels.add(peer);
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    private MycatSession front() throws IOException {
+        MycatSession session = new MycatSession(pool, selector, connect());
+        session.setSessionManager(new MycatSessionManager());
+        session.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        session.curSQLCommand = ComStmtExecuteCmd.INSTANCE;
+        return session;
+    }
+
+    private MySQLSession backend() throws IOException {
+        MySQLSession backend = new MySQLSession(pool, selector, connect());
+        backend.setMySQLMetaBean(metaBean);
+        backend.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        return backend;
+    }
+
+    private PreparedStatementMeta meta(String schema) {
+        List<byte[]> packets = Arrays.asList(PREPARE_OK, PARAM_DEF, PARAM_EOF, COLUMN_DEF, COLUMN_EOF);
+        return new PreparedStatementMeta(PreparedStatementMeta.key(schema, SQL), SQL, packets);
+    }
+
+    /**
+     * 客户端发送的 COM_STMT_EXECUTE 报文内容, 绑定一个 int 参数
+     */
+    private static byte[] execute(long statementId) {
+        return new byte[] {0x17, (byte) statementId, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 3, 0, 5, 0, 0, 0};
+    }
+
+    /**
+     * 后端对 COM_STMT_PREPARE 的响应, 每个参数和列一个定义包
+     */
+    private static byte[] prepareResponse(long statementId, int params) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        byte[] ok = PREPARE_OK.clone();
+        ok[5] = (byte) statementId;
+        ok[11] = (byte) params;
+        buffer.put(ok);
+        byte seq = 2;
+        for (int i = 0; i < params; i++) {
+            buffer.put(new byte[] {3, 0, 0, seq++, 3, 'd', 'e'});
+        }
+        buffer.put(new byte[] {5, 0, 0, seq++, (byte) 0xfe, 0, 0, 2, 0});
+        buffer.put(new byte[] {3, 0, 0, seq++, 3, 'd', 'e'});
+        buffer.put(new byte[] {5, 0, 0, seq, (byte) 0xfe, 0, 0, 2, 0});
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static byte[] needReprepare() {
+        byte[] message = "Prepared statement needs to be re-prepared".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer err = ByteBuffer.allocate(4 + 9 + message.length);
+        err.put((byte) (9 + message.length)).put((byte) 0).put((byte) 0).put((byte) 1);
+        err.put((byte) 0xff).put((byte) ErrorCode.ER_NEED_REPREPARE).put((byte) (ErrorCode.ER_NEED_REPREPARE >>> 8))
+                .put((byte) '#').put("HY000".getBytes(StandardCharsets.UTF_8)).put(message);
+        return err.array();
+    }
+
+    private static void write(SocketChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 从对端读取 count 个完整的报文, 返回报文内容
+     */
+    private static List<byte[]> readPackets(SocketChannel channel, int count) throws Exception {
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        List<byte[]> packets = new ArrayList<>();
+        for (int i = 0; i < 100 && packets.size() < count; i++) {
+            channel.read(in);
+            in.flip();
+            while (in.remaining() >= 4) {
+                int length = (in.get(in.position()) & 0xff) | (in.get(in.position() + 1) & 0xff) << 8
+                        | (in.get(in.position() + 2) & 0xff) << 16;
+                if (in.remaining() < 4 + length) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.position(in.position() + 4);
+                in.get(payload);
+                packets.add(payload);
+            }
+            in.compact();
+            if (packets.size() < count) {
+                Thread.sleep(10);
+            }
+        }
+        Assert.assertEquals(count, packets.size());
+        return packets;
+    }
+
+    private static int errno(byte[] payload) {
+        Assert.assertEquals((byte) 0xff, payload[0]);
+        return (payload[1] & 0xff) | (payload[2] & 0xff) << 8;
+    }
+
+    /**
+     * 后端返回预处理的响应, 驱动连接读取直到预处理完成
+     */
+    private void answerPrepare(MySQLSession backend, SocketChannel backendPeer, byte[] response) throws Exception {
+        write(backendPeer, response);
+        for (int i = 0; i < 100 && backend.getCurNIOHandler() instanceof BackendStmtPrepareTask; i++) {
+            Thread.sleep(10);
+            backend.getCurNIOHandler().onSocketRead(backend);
+        }
+        Assert.assertSame(DefaultMycatSessionHandler.INSTANCE, backend.getCurNIOHandler());
+    }
+
+    @Test
+    public void testPrepareOk() {
+        Assert.assertEquals(7, PreparedStatementMeta.statementId(PREPARE_OK));
+        Assert.assertEquals(5, PreparedStatementMeta.packetCount(PREPARE_OK));
+        PreparedStatementMeta meta = meta("db1");
+        Assert.assertEquals(1, meta.getParamCount());
+        Assert.assertEquals(1, meta.getColumnCount());
+        Assert.assertFalse(meta.getKey().equals(meta("db2").getKey()));
+    }
+
+    @Test
+    public void testWriteResponse() {
+        PreparedStatementMeta meta = meta("db1");
+        ProxyBuffer buffer = new ProxyBuffer(ByteBuffer.allocate(meta.getResponseSize()));
+        meta.writeResponse(buffer, 300);
+        Assert.assertEquals(meta.getResponseSize(), buffer.writeIndex);
+        byte[] okPacket = buffer.getBytes(0, PREPARE_OK.length);
+        Assert.assertEquals(300, PreparedStatementMeta.statementId(okPacket));
+        for (int i = 0, pos = 0; i < 5; i++) {
+            Assert.assertEquals(i + 1, buffer.getByte(pos + 3));
+            pos += 4 + buffer.getByte(pos);
+        }
+        // 缓存的响应不被修改
+        Assert.assertEquals(7, PreparedStatementMeta.statementId(PREPARE_OK));
+    }
+
+    @Test
+    public void testExecuteKeepsBoundTypes() {
+        ClientStatement statement = new ClientStatement(1, meta("db1"));
+        // 命令, id, flags, iteration count, null bitmap, new params bound, 类型, 值
+        byte[] first = {0x17, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 3, 0, 5, 0, 0, 0};
+        byte[] backend = statement.toBackendExecute(first, 9);
+        Assert.assertEquals(9, ClientStatement.statementId(backend));
+        Assert.assertEquals(first.length, backend.length);
+        Assert.assertEquals(1, ClientStatement.statementId(first));
+
+        byte[] second = {0x17, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 6, 0, 0, 0};
+        backend = statement.toBackendExecute(second, 9);
+        byte[] expected = {0x17, 9, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 3, 0, 6, 0, 0, 0};
+        Assert.assertTrue(Arrays.equals(expected, backend));
+    }
+
+    @Test
+    public void testLongData() {
+        ClientStatement statement = new ClientStatement(1, meta("db1"));
+        statement.addLongData(new byte[] {0x18, 1, 0, 0, 0, 0, 0, 'x'});
+        List<byte[]> data = statement.pollLongData();
+        Assert.assertEquals(1, data.size());
+        Assert.assertTrue(Arrays.equals(new byte[] {0, 0, 'x'}, data.get(0)));
+        Assert.assertNull(statement.pollLongData());
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsed() {
+        PreparedStatementCache cache = new PreparedStatementCache(2);
+        PreparedStatementMeta a = meta("a");
+        PreparedStatementMeta b = meta("b");
+        cache.put(a);
+        cache.put(b);
+        cache.get(a.getKey());
+        cache.put(meta("c"));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get(a.getKey()));
+        Assert.assertNull(cache.get(b.getKey()));
+
+        PreparedStatementCache disabled = new PreparedStatementCache(0);
+        disabled.put(a);
+        Assert.assertEquals(0, disabled.size());
+    }
+
+    @Test
+    public void testExecuteRemapsStatementId() throws Exception {
+        inReactor(() -> {
+            MycatSession front = front();
+            ClientStatement statement = front.addPreparedStatement(meta("db1"));
+            String key = statement.getMeta().getKey();
+            MySQLSession first = backend();
+            SocketChannel firstPeer = peer;
+            first.putPreparedStatement(key, 7);
+            MySQLSession second = backend();
+            SocketChannel secondPeer = peer;
+            second.putPreparedStatement(key, 9);
+
+            // 同一个前端语句在两个后端连接上使用各自的 statement id
+            front.bindBackend(first);
+            ComStmtExecuteCmd.INSTANCE.executeOn(front, first, statement, execute(statement.getId()));
+            byte[] executed = readPackets(firstPeer, 1).get(0);
+            Assert.assertEquals(MySQLPacket.COM_STMT_EXECUTE, executed[0]);
+            Assert.assertEquals(7, ClientStatement.statementId(executed));
+
+            front.takeBufferOwnerOnly();
+            front.bindBackend(second);
+            ComStmtExecuteCmd.INSTANCE.executeOn(front, second, statement, execute(statement.getId()));
+            executed = readPackets(secondPeer, 1).get(0);
+            Assert.assertEquals(9, ClientStatement.statementId(executed));
+            Assert.assertSame(statement, front.getExecutingStatement());
+        });
+    }
+
+    @Test
+    public void testLazyPrepareOnOtherBackend() throws Exception {
+        inReactor(() -> {
+            MycatSession front = front();
+            ClientStatement statement = front.addPreparedStatement(meta("db1"));
+            String key = statement.getMeta().getKey();
+            // 语句在其他连接上预处理过, 这次取到的连接上还没有
+            MySQLSession other = backend();
+            other.putPreparedStatement(key, 7);
+            MySQLSession backend = backend();
+            SocketChannel backendPeer = peer;
+            front.bindBackend(backend);
+
+            ComStmtExecuteCmd.INSTANCE.executeOn(front, backend, statement, execute(statement.getId()));
+            byte[] prepare = readPackets(backendPeer, 1).get(0);
+            Assert.assertEquals(MySQLPacket.COM_STMT_PREPARE, prepare[0]);
+            Assert.assertTrue(Arrays.equals(SQL, Arrays.copyOfRange(prepare, 1, prepare.length)));
+
+            answerPrepare(backend, backendPeer, prepareResponse(9, 1));
+            byte[] executed = readPackets(backendPeer, 1).get(0);
+            Assert.assertEquals(MySQLPacket.COM_STMT_EXECUTE, executed[0]);
+            Assert.assertEquals(9, ClientStatement.statementId(executed));
+            Assert.assertEquals(9, backend.getPreparedStatementId(key));
+            Assert.assertEquals(7, other.getPreparedStatementId(key));
+            Assert.assertFalse(statement.isInvalid());
+        });
+    }
+
+    @Test
+    public void testNeedReprepareAfterShapeChanged() throws Exception {
+        inReactor(() -> {
+            MycatSession front = front();
+            SocketChannel client = peer;
+            ClientStatement statement = front.addPreparedStatement(meta("db1"));
+            String key = statement.getMeta().getKey();
+            MySQLSession backend = backend();
+            SocketChannel backendPeer = peer;
+            front.bindBackend(backend);
+
+            ComStmtExecuteCmd.INSTANCE.executeOn(front, backend, statement, execute(statement.getId()));
+            readPackets(backendPeer, 1);
+            // 表结构变化, 重新预处理得到 2 个参数
+            answerPrepare(backend, backendPeer, prepareResponse(9, 2));
+            Assert.assertEquals(ErrorCode.ER_NEED_REPREPARE, errno(readPackets(client, 1).get(0)));
+            Assert.assertTrue(statement.isInvalid());
+            Assert.assertEquals(2, MycatReactorThread.currentStatementCache().get(key).getParamCount());
+
+            // 失效的语句不再发往后端, 直接返回 ER_NEED_REPREPARE
+            byte[] payload = execute(statement.getId());
+            ProxyBuffer buffer = front.proxyBuffer;
+            buffer.reset();
+            buffer.writeFixInt(3, payload.length);
+            buffer.writeByte((byte) 0);
+            buffer.writeBytes(payload);
+            front.curMSQLPackgInf.startPos = 0;
+            front.curMSQLPackgInf.endPos = buffer.writeIndex;
+            Assert.assertFalse(ComStmtExecuteCmd.INSTANCE.procssSQL(front));
+            Assert.assertEquals(ErrorCode.ER_NEED_REPREPARE, errno(readPackets(client, 1).get(0)));
+            Assert.assertEquals(0, backendPeer.read(ByteBuffer.allocate(64)));
+        });
+    }
+
+    @Test
+    public void testBackendNeedReprepare() throws Exception {
+        inReactor(() -> {
+            MycatSession front = front();
+            SocketChannel client = peer;
+            ClientStatement statement = front.addPreparedStatement(meta("db1"));
+            String key = statement.getMeta().getKey();
+            MycatReactorThread.currentStatementCache().put(statement.getMeta());
+            MySQLSession backend = backend();
+            SocketChannel backendPeer = peer;
+            backend.putPreparedStatement(key, 9);
+            front.bindBackend(backend);
+            front.commandHandler = ComStmtExecuteHeaderHandler.INSTANCE;
+
+            ComStmtExecuteCmd.INSTANCE.executeOn(front, backend, statement, execute(statement.getId()));
+            readPackets(backendPeer, 1);
+            // 执行期间表结构发生变化, 后端返回的错误透传给客户端
+            write(backendPeer, needReprepare());
+            for (int i = 0; i < 100 && !statement.isInvalid(); i++) {
+                Thread.sleep(10);
+                backend.getCurNIOHandler().onSocketRead(backend);
+            }
+            Assert.assertEquals(ErrorCode.ER_NEED_REPREPARE, errno(readPackets(client, 1).get(0)));
+            Assert.assertTrue(statement.isInvalid());
+            // 缓存的元数据过期, 重新预处理时从后端读取
+            Assert.assertNull(MycatReactorThread.currentStatementCache().get(key));
+        });
+    }
+
+    @Test
+    public void testEvictionClosesLeastRecentlyUsed() throws Exception {
+        inReactor(() -> {
+            MycatSession front = front();
+            ClientStatement statement = front.addPreparedStatement(meta("db1"));
+            MySQLSession backend = backend();
+            SocketChannel backendPeer = peer;
+            for (int i = 0; i < BackendStmtPrepareTask.MAX_STATEMENTS_PER_BACKEND; i++) {
+                backend.putPreparedStatement("k" + i, 100 + i);
+            }
+            backend.getPreparedStatementId("k0");
+            front.bindBackend(backend);
+
+            // 语句数达到上限, 预处理之前关闭最久未使用的 k1
+            ComStmtExecuteCmd.INSTANCE.executeOn(front, backend, statement, execute(statement.getId()));
+            List<byte[]> packets = readPackets(backendPeer, 2);
+            Assert.assertEquals(MySQLPacket.COM_STMT_CLOSE, packets.get(0)[0]);
+            Assert.assertEquals(101, ClientStatement.statementId(packets.get(0)));
+            Assert.assertEquals(MySQLPacket.COM_STMT_PREPARE, packets.get(1)[0]);
+            Assert.assertEquals(-1, backend.getPreparedStatementId("k1"));
+            Assert.assertEquals(100, backend.getPreparedStatementId("k0"));
+
+            answerPrepare(backend, backendPeer, prepareResponse(200, 1));
+            Assert.assertEquals(200, backend.getPreparedStatementId(statement.getMeta().getKey()));
+        });
+    }
+
+    @Test
+    public void testReprepareClosesReplacedStatement() throws Exception {
+        inReactor(() -> {
+            MySQLSession backend = backend();
+            SocketChannel backendPeer = peer;
+            String key = PreparedStatementMeta.key("db1", SQL);
+            backend.putPreparedStatement(key, 5);
+
+            // 客户端再次预处理同一条语句, 连接上原来的语句关闭, 避免后端语句泄漏
+            BackendStmtPrepareTask task = new BackendStmtPrepareTask(backend, key, SQL);
+            boolean[] prepared = {false};
+            task.setCallback((session, sender, success, result) -> prepared[0] = success && result == null);
+            task.prepare();
+            List<byte[]> packets = readPackets(backendPeer, 2);
+            Assert.assertEquals(MySQLPacket.COM_STMT_CLOSE, packets.get(0)[0]);
+            Assert.assertEquals(5, ClientStatement.statementId(packets.get(0)));
+            Assert.assertEquals(MySQLPacket.COM_STMT_PREPARE, packets.get(1)[0]);
+
+            write(backendPeer, prepareResponse(8, 1));
+            for (int i = 0; i < 100 && !prepared[0]; i++) {
+                Thread.sleep(10);
+                backend.getCurNIOHandler().onSocketRead(backend);
+            }
+            Assert.assertTrue(prepared[0]);
+            Assert.assertEquals(8, backend.getPreparedStatementId(key));
+        });
+    }
+}
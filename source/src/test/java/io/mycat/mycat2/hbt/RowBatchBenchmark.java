@@ -0,0 +1,105 @@
+package io.mycat.mycat2.hbt;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.mycat.mysql.packet.RowDataPacket;
+import io.mycat.proxy.ProxyBuffer;
+
+/**
+ * HBT 读取后端行数据、取关联字段并输出给前端的开销, 对比每行 List + 每列 byte[] 的实现(legacy)与 {@link BinaryRow}.
+ * 分配速率用 -prof gc 查看, legacy 取出关联字段后计算哈希, binaryRow 在内存块上计算
+ */
+@BenchmarkMode(Mode.Throughput)//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 3)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Thread)//该状态为每个线程独享
+@Measurement(iterations = 5)
+public class RowBatchBenchmark {
+
+    private static final int FIELD_COUNT = 5;
+
+    ProxyBuffer in;
+    int[] rowStarts;
+    int[] rowLengths;
+    ProxyBuffer out;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(RowBatchBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void init() {
+        in = new ProxyBuffer(ByteBuffer.allocate(1024 * 1024));
+        out = new ProxyBuffer(ByteBuffer.allocate(1024 * 1024));
+        rowStarts = new int[5000];
+        rowLengths = new int[rowStarts.length];
+        for (int i = 0; i < rowStarts.length; i++) {
+            rowStarts[i] = in.writeIndex;
+            in.writeLenencBytes(("1DDA8F5EC0A82CB2000008171773" + i).getBytes());
+            in.writeLenencBytes("single".getBytes());
+            in.writeLenencBytes("2017-11-01 10:00:00".getBytes());
+            in.writeLenencBytes(Integer.toString(i % 10).getBytes());
+            in.writeLenencBytes(("1DDA8E99C0A82CB200000543452550" + i).getBytes());
+            rowLengths[i] = in.writeIndex - rowStarts[i];
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        out.reset();
+        for (int i = 0; i < rowStarts.length; i++) {
+            in.readIndex = rowStarts[i];
+            List<byte[]> row = new ArrayList<>(FIELD_COUNT);
+            for (int j = 0; j < FIELD_COUNT; j++) {
+                row.add(in.readLenencBytes());
+            }
+            blackhole.consume(Arrays.hashCode(row.get(0)));
+            RowDataPacket packet = new RowDataPacket(FIELD_COUNT);
+            for (byte[] value : row) {
+                packet.add(value);
+            }
+            packet.packetId = 1;
+            packet.write(out);
+        }
+    }
+
+    @Benchmark
+    public void binaryRow(Blackhole blackhole) {
+        out.reset();
+        RowBatch batch = new RowBatch();
+        for (int i = 0; i < rowStarts.length; i++) {
+            BinaryRow row = batch.copyRow(in, rowStarts[i], rowLengths[i], FIELD_COUNT);
+            // 关联字段直接在内存块上计算哈希, 不拷贝
+            blackhole.consume(row.hashColumn(0));
+            out.writeFixInt(3, row.payloadLength());
+            out.writeByte((byte) 1);
+            row.writePayload(out);
+        }
+    }
+}
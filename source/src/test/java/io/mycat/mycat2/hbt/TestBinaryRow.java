@@ -0,0 +1,100 @@
+package io.mycat.mycat2.hbt;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import io.mycat.proxy.ProxyBuffer;
+import junit.framework.Assert;
+
+/**
+ * 行数据原样拷贝到内存块, 按列读取和整行输出
+ */
+public class TestBinaryRow {
+
+    /**
+     * 文本协议的行报文内容
+     */
+    private static ProxyBuffer payload(byte[]... values) {
+        ProxyBuffer buffer = new ProxyBuffer(ByteBuffer.allocate(4096));
+        for (byte[] value : values) {
+            if (value == null) {
+                buffer.writeByte((byte) 0xfb);
+            } else {
+                buffer.writeLenencBytes(value);
+            }
+        }
+        return buffer;
+    }
+
+    @Test
+    public void testReadColumns() {
+        byte[] longValue = new byte[300];
+        Arrays.fill(longValue, (byte) 'x');
+        ProxyBuffer buffer = payload("1".getBytes(), null, longValue, new byte[0], "end".getBytes());
+        BinaryRow row = new RowBatch().copyRow(buffer, 0, buffer.writeIndex, 5);
+
+        Assert.assertEquals(5, row.size());
+        Assert.assertEquals("end", new String(row.get(4)));
+        Assert.assertEquals("1", new String(row.get(0)));
+        Assert.assertNull(row.get(1));
+        Assert.assertEquals(-1, row.columnLength(1));
+        Assert.assertTrue(Arrays.equals(longValue, row.get(2)));
+        Assert.assertEquals(0, row.get(3).length);
+        // 不缓存读取过的列, 每次拷贝
+        Assert.assertNotSame(row.get(2), row.get(2));
+        Assert.assertEquals(buffer.writeIndex, row.payloadLength());
+    }
+
+    @Test
+    public void testColumnAccess() {
+        ProxyBuffer buffer = payload("abc".getBytes(), null, "-12.50".getBytes(), new byte[0]);
+        BinaryRow row = new RowBatch().copyRow(buffer, 0, buffer.writeIndex, 4);
+        ProxyBuffer other = payload("3".getBytes(), "abc".getBytes(), "-12.5".getBytes(), null);
+        BinaryRow row2 = new RowBatch().copyRow(other, 0, other.writeIndex, 4);
+
+        Assert.assertEquals(Arrays.hashCode("abc".getBytes()), row.hashColumn(0));
+        Assert.assertEquals(0, row.hashColumn(1));
+        Assert.assertEquals(Arrays.hashCode(new byte[0]), row.hashColumn(3));
+        Assert.assertTrue(row.columnEquals(0, "abc".getBytes()));
+        Assert.assertFalse(row.columnEquals(0, "ab".getBytes()));
+        Assert.assertTrue(row.columnEquals(1, (byte[]) null));
+        Assert.assertTrue(row.columnEquals(0, row2, 1));
+        Assert.assertFalse(row.columnEquals(2, row2, 2));
+        Assert.assertFalse(row.columnEquals(3, row2, 3));
+
+        Assert.assertEquals(0, row.compareColumn(2, row2, RowComparator.COMPARE_DECIMAL));
+        Assert.assertTrue(row.compareColumn(2, "-13".getBytes(), RowComparator.COMPARE_DECIMAL) > 0);
+        Assert.assertTrue(row.compareColumn(0, "abd".getBytes(), RowComparator.COMPARE_BYTES) < 0);
+        Assert.assertTrue(row.compareColumn(1, row2, RowComparator.COMPARE_BYTES) < 0);
+        Assert.assertTrue(row.compareColumn(3, row2, RowComparator.COMPARE_BYTES) > 0);
+    }
+
+    @Test
+    public void testWritePayload() {
+        ProxyBuffer buffer = payload("a".getBytes(), null, "bc".getBytes());
+        BinaryRow row = new RowBatch().copyRow(buffer, 0, buffer.writeIndex, 3);
+        ProxyBuffer out = new ProxyBuffer(ByteBuffer.allocate(64));
+        row.writePayload(out);
+        Assert.assertTrue(Arrays.equals(buffer.getBytes(0, buffer.writeIndex), out.getBytes(0, out.writeIndex)));
+    }
+
+    @Test
+    public void testRowsShareSlab() {
+        RowBatch batch = new RowBatch(64);
+        ProxyBuffer buffer = payload("12345".getBytes());
+        BinaryRow[] rows = new BinaryRow[20];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = batch.copyRow(buffer, 0, buffer.writeIndex, 1);
+        }
+        // 大行单独分配
+        byte[] big = new byte[100];
+        ProxyBuffer bigBuffer = payload(big);
+        BinaryRow bigRow = batch.copyRow(bigBuffer, 0, bigBuffer.writeIndex, 1);
+        for (BinaryRow row : rows) {
+            Assert.assertEquals("12345", new String(row.get(0)));
+        }
+        Assert.assertEquals(100, bigRow.get(0).length);
+    }
+}
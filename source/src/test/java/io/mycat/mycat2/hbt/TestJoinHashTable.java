@@ -0,0 +1,98 @@
+package io.mycat.mycat2.hbt;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.mycat.mysql.Fields;
+import io.mycat.proxy.ProxyBuffer;
+import junit.framework.Assert;
+
+public class TestJoinHashTable {
+
+    private static List<byte[]> row(String... values) {
+        List<byte[]> row = new ArrayList<>();
+        for (String value : values) {
+            row.add(value == null ? null : value.getBytes());
+        }
+        return row;
+    }
+
+    @Test
+    public void testMatchKeepsInsertOrder() {
+        JoinHashTable table = new JoinHashTable(0);
+        table.add(row("1", "a"));
+        table.add(row("2", "b"));
+        table.add(row("1", "c"));
+        Assert.assertEquals(2, table.keyCount());
+        Assert.assertEquals(3, table.rowCount());
+
+        List<String> matched = new ArrayList<>();
+        Assert.assertTrue(table.forEachMatch("1".getBytes(), r -> matched.add(new String(r.get(1)))));
+        Assert.assertEquals(Arrays.asList("a", "c"), matched);
+        Assert.assertFalse(table.forEachMatch("3".getBytes(), r -> matched.add(new String(r.get(1)))));
+        Assert.assertEquals(2, matched.size());
+    }
+
+    @Test
+    public void testManyKeys() {
+        JoinHashTable table = new JoinHashTable(0);
+        for (int i = 0; i < 50000; i++) {
+            String key = Integer.toString(i % 20000);
+            table.add(row(key, Integer.toString(i)));
+        }
+        Assert.assertEquals(20000, table.keyCount());
+        Assert.assertEquals("19999", new String(table.getKeys().get(19999)));
+        for (int i = 0; i < 20000; i++) {
+            int[] count = new int[1];
+            table.forEachMatch(Integer.toString(i).getBytes(), r -> count[0]++);
+            Assert.assertEquals(i < 10000 ? 3 : 2, count[0]);
+        }
+        Assert.assertTrue(table.memoryUsed() > 0);
+    }
+
+    @Test
+    public void testBinaryRowKey() {
+        RowBatch batch = new RowBatch();
+        ProxyBuffer buffer = new ProxyBuffer(ByteBuffer.allocate(256));
+        JoinHashTable table = new JoinHashTable(1);
+        String[][] values = { { "a", "1" }, { "b", null }, { "c", "2" }, { "d", "1" } };
+        for (String[] value : values) {
+            buffer.reset();
+            buffer.writeLenencBytes(value[0].getBytes());
+            if (value[1] == null) {
+                buffer.writeByte((byte) 0xfb);
+            } else {
+                buffer.writeLenencBytes(value[1].getBytes());
+            }
+            Assert.assertEquals(value[1] != null, table.add(batch.copyRow(buffer, 0, buffer.writeIndex, 2)));
+        }
+        Assert.assertEquals(2, table.keyCount());
+        Assert.assertEquals("1", new String(table.getKey(0)));
+
+        // b表的行为 BinaryRow 或普通的行时匹配结果相同
+        buffer.reset();
+        buffer.writeLenencBytes("1".getBytes());
+        BinaryRow probe = batch.copyRow(buffer, 0, buffer.writeIndex, 1);
+        List<String> matched = new ArrayList<>();
+        Assert.assertTrue(table.forEachMatch(probe, 0, r -> matched.add(new String(r.get(0)))));
+        Assert.assertTrue(table.forEachMatch(row("x", "1"), 1, r -> matched.add(new String(r.get(0)))));
+        Assert.assertEquals(Arrays.asList("a", "d", "a", "d"), matched);
+        Assert.assertFalse(table.forEachMatch(row("x", null), 1, r -> matched.add(new String(r.get(0)))));
+    }
+
+    @Test
+    public void testInListSql() {
+        JoinMeta joinMeta = new JoinMeta("a.id", "b.aid", null, 10);
+        SqlMeta sqlMeta = new SqlMeta("select aid, name from b", "b");
+        List<byte[]> keys = Arrays.asList("1".getBytes(), "2".getBytes());
+        Assert.assertEquals("select aid, name from b where aid in (1,2) ",
+                joinMeta.getSql(keys, Fields.FIELD_TYPE_LONG, sqlMeta));
+        keys = Arrays.asList("x".getBytes(), "o'k".getBytes());
+        Assert.assertEquals("select aid, name from b where aid in ('x','o\\'k') ",
+                joinMeta.getSql(keys, Fields.FIELD_TYPE_VAR_STRING, sqlMeta));
+    }
+}
@@ -0,0 +1,119 @@
+package io.mycat.mycat2.hbt.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.mycat.mycat2.hbt.CountFunction;
+import io.mycat.mycat2.hbt.GroupPairKey;
+import io.mycat.mycat2.hbt.GroupPairKeyMeta;
+import io.mycat.mycat2.hbt.OutFunction;
+import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mysql.Fields;
+
+/**
+ * COUNT(*) GROUP BY 的耗时, 对比保存每组所有行的实现(legacy)与按组累加聚合状态的 GroupByPipeline.
+ * 数据在测试方法中按固定规则生成
+ */
+@BenchmarkMode(Mode.SingleShotTime)//基准测试类型
+@OutputTimeUnit(TimeUnit.MILLISECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 2)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Thread)//该状态为每个线程独享
+@Measurement(iterations = 5)
+public class GroupByPipelineBenchmark {
+
+    @Param({ "1000000", "5000000" })
+    int rows;
+
+    @Param({ "100", "100000" })
+    int groups;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(GroupByPipelineBenchmark.class.getSimpleName())
+                .forks(1)
+                .jvmArgs("-Xmx4g")
+                .build();
+        new Runner(opt).run();
+    }
+
+    private static ResultSetMeta header() {
+        return new ResultSetMeta(new ArrayList<>(Arrays.asList("k", "v")),
+                new int[] { Fields.FIELD_TYPE_LONG, Fields.FIELD_TYPE_VAR_STRING });
+    }
+
+    private List<byte[]> row(int i) {
+        List<byte[]> row = new ArrayList<>(2);
+        row.add(Integer.toString(i % groups).getBytes());
+        row.add(("value" + i).getBytes());
+        return row;
+    }
+
+    @Benchmark
+    public long hashAggregate() {
+        long[] count = new long[1];
+        ReferenceHBTPipeline source = new ReferenceHBTPipeline(null);
+        ResultSetMeta header = header();
+        new ReferenceHBTPipeline(new GroupByPipeline(source, new GroupPairKeyMeta("k"), header,
+                Arrays.asList(new OutFunction(0), new CountFunction()))) {
+            @Override
+            public ResultSetMeta onHeader(ResultSetMeta header) {
+                return header;
+            }
+
+            @Override
+            public List<byte[]> onRowData(List<byte[]> row) {
+                count[0]++;
+                return null;
+            }
+
+            @Override
+            public void onEnd() {
+            }
+        };
+        source.onHeader(header);
+        for (int i = 0; i < rows; i++) {
+            source.onRowData(row(i));
+        }
+        source.onEnd();
+        return count[0];
+    }
+
+    /**
+     * 原来的实现: 按 GroupPairKey 保存每组所有行, 结束时再计算 count
+     */
+    @Benchmark
+    public long legacyGroupRows() {
+        GroupPairKeyMeta keyMeta = new GroupPairKeyMeta("k");
+        keyMeta.init(header());
+        Map<GroupPairKey, List<List<byte[]>>> groupMap = new HashMap<>();
+        for (int i = 0; i < rows; i++) {
+            List<byte[]> row = row(i);
+            groupMap.computeIfAbsent(keyMeta.apply(row), key -> new ArrayList<>()).add(row);
+        }
+        long count = 0;
+        for (List<List<byte[]>> rowList : groupMap.values()) {
+            count += Integer.toString(rowList.size()).length();
+        }
+        return count;
+    }
+}
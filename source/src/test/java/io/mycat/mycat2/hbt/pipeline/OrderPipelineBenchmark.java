@@ -0,0 +1,111 @@
+package io.mycat.mycat2.hbt.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SortOrder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.mycat.mycat2.hbt.OrderMeta;
+import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mysql.Fields;
+
+/**
+ * OrderPipeline 排序耗时, 分别测试随机数据与 8 个分片各自有序的数据, 以及内存足够与需要写入临时文件两种情况.
+ * 数据在测试方法中按固定种子生成, 10M 行时需要 -Xmx4g 以上
+ */
+@BenchmarkMode(Mode.SingleShotTime)//基准测试类型
+@OutputTimeUnit(TimeUnit.MILLISECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 1)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Thread)//该状态为每个线程独享
+@Measurement(iterations = 3)
+public class OrderPipelineBenchmark {
+
+    private static final int DATA_NODES = 8;
+
+    @Param({ "1000000", "10000000" })
+    int rows;
+
+    /* 64M 时 1M 行全部在内存中排序, 8M 时需要写入临时文件 */
+    @Param({ "67108864", "8388608" })
+    long memoryLimit;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(OrderPipelineBenchmark.class.getSimpleName())
+                .forks(1)
+                .jvmArgs("-Xmx6g")
+                .build();
+        new Runner(opt).run();
+    }
+
+    private static class CountPipeline extends ReferenceHBTPipeline {
+        long count;
+
+        CountPipeline(ReferenceHBTPipeline upStream) {
+            super(upStream);
+        }
+
+        @Override
+        public ResultSetMeta onHeader(ResultSetMeta header) {
+            return header;
+        }
+
+        @Override
+        public List<byte[]> onRowData(List<byte[]> row) {
+            count++;
+            return null;
+        }
+
+        @Override
+        public void onEnd() {
+        }
+    }
+
+    private long sort(boolean presorted) {
+        ReferenceHBTPipeline source = new ReferenceHBTPipeline(null);
+        OrderMeta orderMeta = new OrderMeta(Arrays.asList("id"), Arrays.asList(SortOrder.ASCENDING));
+        CountPipeline sink = new CountPipeline(new OrderPipeline(source, orderMeta, memoryLimit));
+        source.onHeader(new ResultSetMeta(new ArrayList<>(Arrays.asList("id", "name")),
+                new int[] { Fields.FIELD_TYPE_LONGLONG, Fields.FIELD_TYPE_VAR_STRING }));
+        Random random = new Random(1);
+        int perNode = rows / DATA_NODES;
+        for (int i = 0; i < rows; i++) {
+            long id = presorted ? (long) (i % perNode) * DATA_NODES + i / perNode : random.nextInt(Integer.MAX_VALUE);
+            List<byte[]> row = new ArrayList<>(2);
+            row.add(Long.toString(id).getBytes());
+            row.add(("name" + i).getBytes());
+            source.onRowData(row);
+        }
+        source.onEnd();
+        return sink.count;
+    }
+
+    @Benchmark
+    public long randomRows() {
+        return sort(false);
+    }
+
+    @Benchmark
+    public long presortedDataNodes() {
+        return sort(true);
+    }
+}
@@ -0,0 +1,135 @@
+package io.mycat.mycat2.hbt.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.mycat.mycat2.hbt.AggregateFunction;
+import io.mycat.mycat2.hbt.AvgFunction;
+import io.mycat.mycat2.hbt.CountFunction;
+import io.mycat.mycat2.hbt.GroupPairKeyMeta;
+import io.mycat.mycat2.hbt.MaxFunction;
+import io.mycat.mycat2.hbt.MinFunction;
+import io.mycat.mycat2.hbt.OutFunction;
+import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mycat2.hbt.SumFunction;
+import io.mycat.mysql.Fields;
+import junit.framework.Assert;
+
+public class TestGroupByPipeline {
+
+    static class CollectPipeline extends ReferenceHBTPipeline {
+        final List<List<byte[]>> rows = new ArrayList<>();
+
+        CollectPipeline(ReferenceHBTPipeline upStream) {
+            super(upStream);
+        }
+
+        @Override
+        public ResultSetMeta onHeader(ResultSetMeta header) {
+            return header;
+        }
+
+        @Override
+        public List<byte[]> onRowData(List<byte[]> row) {
+            rows.add(row);
+            return null;
+        }
+
+        @Override
+        public void onEnd() {
+        }
+    }
+
+    private static List<byte[]> row(String... values) {
+        List<byte[]> row = new ArrayList<>();
+        for (String value : values) {
+            row.add(value == null ? null : value.getBytes());
+        }
+        return row;
+    }
+
+    private static List<String> strings(List<byte[]> row) {
+        List<String> values = new ArrayList<>();
+        for (byte[] value : row) {
+            values.add(value == null ? null : new String(value));
+        }
+        return values;
+    }
+
+    private List<List<byte[]>> group(ResultSetMeta header, List<List<byte[]>> rows, GroupPairKeyMeta keyMeta,
+            List<AggregateFunction> functions) {
+        ReferenceHBTPipeline source = new ReferenceHBTPipeline(null);
+        GroupByPipeline group = new GroupByPipeline(source, keyMeta, header, functions);
+        CollectPipeline sink = new CollectPipeline(group);
+        source.onHeader(header);
+        for (List<byte[]> row : rows) {
+            source.onRowData(row);
+        }
+        source.onEnd();
+        return sink.rows;
+    }
+
+    @Test
+    public void testAggregates() {
+        ResultSetMeta header = new ResultSetMeta(new ArrayList<>(Arrays.asList("name", "age", "score")),
+                new int[] { Fields.FIELD_TYPE_VAR_STRING, Fields.FIELD_TYPE_LONG, Fields.FIELD_TYPE_NEW_DECIMAL });
+        List<List<byte[]>> rows = Arrays.asList(row("a", "10", "1.5"), row("b", "7", null), row("a", "9", "2.25"),
+                row(null, "1", "3"), row("a", null, "-1"), row(null, "2", null));
+        List<List<byte[]>> result = group(header, rows, new GroupPairKeyMeta("name"),
+                Arrays.asList(new OutFunction(0), new CountFunction(), new CountFunction("age"), new SumFunction("score"),
+                        new MinFunction("age"), new MaxFunction("age"), new AvgFunction("age")));
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(Arrays.asList("a", "3", "2", "2.75", "9", "10", "9.5000"), strings(result.get(0)));
+        Assert.assertEquals(Arrays.asList("b", "1", "1", null, "7", "7", "7.0000"), strings(result.get(1)));
+        Assert.assertEquals(Arrays.asList(null, "2", "2", "3", "1", "2", "1.5000"), strings(result.get(2)));
+    }
+
+    @Test
+    public void testMergePartialAggregates() {
+        // 两个分片分别返回的 count sum min 结果
+        ResultSetMeta header = new ResultSetMeta(new ArrayList<>(Arrays.asList("k", "cnt", "total", "low")),
+                new int[] { Fields.FIELD_TYPE_VAR_STRING, Fields.FIELD_TYPE_LONGLONG, Fields.FIELD_TYPE_LONGLONG,
+                        Fields.FIELD_TYPE_LONG });
+        List<List<byte[]>> rows = Arrays.asList(row("x", "3", "30", "-5"), row("y", "1", "4", "4"),
+                row("x", "2", "9223372036854775807", "2"), row("y", "5", "6", "1"));
+        List<List<byte[]>> result = group(header, rows, new GroupPairKeyMeta("k"),
+                Arrays.asList(new OutFunction(0), CountFunction.partial("cnt"), new SumFunction("total"),
+                        new MinFunction("low"), new AvgFunction("total", "cnt")));
+        Assert.assertEquals(Arrays.asList("x", "5", "9223372036854775837", "-5", "1844674407370955167.4000"),
+                strings(result.get(0)));
+        Assert.assertEquals(Arrays.asList("y", "6", "10", "1", "1.6667"), strings(result.get(1)));
+    }
+
+    @Test
+    public void testManyGroups() {
+        ResultSetMeta header = new ResultSetMeta(new ArrayList<>(Arrays.asList("k1", "k2")),
+                new int[] { Fields.FIELD_TYPE_LONG, Fields.FIELD_TYPE_VAR_STRING });
+        List<List<byte[]>> rows = new ArrayList<>();
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            String k1 = Integer.toString(i % 5000);
+            String k2 = i % 3 == 0 ? null : "v" + (i % 7);
+            rows.add(row(k1, k2));
+            expected.merge(k1 + "|" + k2, 1, Integer::sum);
+        }
+        List<List<byte[]>> result = group(header, rows, new GroupPairKeyMeta("k1", "k2"),
+                Arrays.asList(new OutFunction(0, 1), new CountFunction()));
+        Assert.assertEquals(expected.size(), result.size());
+        for (List<byte[]> row : result) {
+            List<String> values = strings(row);
+            Assert.assertEquals(expected.get(values.get(0) + "|" + values.get(1)).intValue(),
+                    Integer.parseInt(values.get(2)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutputMetaRequired() {
+        new GroupByPipeline(new ReferenceHBTPipeline(null), new GroupPairKeyMeta("k"), (List<String>) null,
+                Arrays.asList(new OutFunction(0), new CountFunction()));
+    }
+}
@@ -0,0 +1,121 @@
+package io.mycat.mycat2.hbt.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatConfig;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.ProxyBean;
+import io.mycat.mycat2.beans.conf.ProxyConfig;
+import io.mycat.mycat2.hbt.JoinMeta;
+import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mycat2.hbt.RowMeta;
+import io.mycat.mycat2.hbt.SqlMeta;
+import io.mycat.mycat2.tasks.AsynTaskCallBack;
+import io.mycat.mysql.Fields;
+import io.mycat.proxy.ConfigEnum;
+import io.mycat.proxy.ProxyRuntime;
+import junit.framework.Assert;
+
+/**
+ * join 批次的并发窗口按复制组分别计算, 慢的复制组不影响其他复制组开始新的批次
+ */
+public class TestJoinPipeline {
+
+    private static final int WINDOW = 2;
+
+    private MycatConfig prevConfig;
+    private final List<MySQLRepBean> acquired = new ArrayList<>();
+    private MySQLRepBean node0;
+    private MySQLRepBean node1;
+    private JoinPipeline join;
+    private TestOrderPipeline.CollectPipeline sink;
+
+    @Before
+    public void setUp() {
+        prevConfig = ProxyRuntime.INSTANCE.getConfig();
+        ProxyBean proxyBean = new ProxyBean();
+        proxyBean.setJoinBatchWindow(WINDOW);
+        ProxyConfig proxyConfig = new ProxyConfig();
+        proxyConfig.setProxy(proxyBean);
+        MycatConfig config = new MycatConfig();
+        config.putConfig(ConfigEnum.PROXY, proxyConfig, 1);
+        ProxyRuntime.INSTANCE.setConfig(config);
+
+        node0 = new MySQLRepBean();
+        node1 = new MySQLRepBean();
+        TestLimitPipeline.SourcePipeline source = new TestLimitPipeline.SourcePipeline();
+        SqlMeta sqlMeta = new SqlMeta("select id, v from b", "b", new MySQLRepBean[] { node0, node1 });
+        ResultSetMeta header = new ResultSetMeta(new ArrayList<>(Arrays.asList("id", "name")),
+                new int[] { Fields.FIELD_TYPE_LONGLONG, Fields.FIELD_TYPE_VAR_STRING });
+        join = new JoinPipeline(source, null, sqlMeta, new RowMeta(), JoinMeta.of("id", "id", "id", 1), header,
+                (aRow, bRow, out) -> out.addAll(aRow)) {
+            @Override
+            void acquire(MySQLRepBean node, AsynTaskCallBack<MySQLSession> callback) {
+                acquired.add(node);
+            }
+        };
+        sink = new TestOrderPipeline.CollectPipeline(join);
+        // 每个关联字段值一个批次
+        List<List<byte[]>> rows = new ArrayList<>();
+        for (int i = 0; i < WINDOW + 1; i++) {
+            rows.add(new ArrayList<>(Arrays.asList(Integer.toString(i).getBytes(), ("n" + i).getBytes())));
+        }
+        source.produce(rows);
+    }
+
+    @After
+    public void tearDown() {
+        ProxyRuntime.INSTANCE.setConfig(prevConfig);
+    }
+
+    private int acquired(MySQLRepBean node) {
+        int count = 0;
+        for (MySQLRepBean bean : acquired) {
+            if (bean == node) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testWindowPerNode() {
+        JoinPipeline.NodeWindow[] windows = join.getNodeWindows();
+        Assert.assertEquals(2, windows.length);
+        for (JoinPipeline.NodeWindow window : windows) {
+            Assert.assertEquals(WINDOW, window.inFlight);
+            Assert.assertEquals(1, window.pending.size());
+        }
+        Assert.assertEquals(WINDOW, acquired(node0));
+        Assert.assertEquals(WINDOW, acquired(node1));
+
+        // node0 的批次完成后, 不等待 node1 就开始排队的批次
+        join.onBatchFinish(windows[0]);
+        Assert.assertEquals(WINDOW, windows[0].inFlight);
+        Assert.assertTrue(windows[0].pending.isEmpty());
+        Assert.assertEquals(WINDOW + 1, acquired(node0));
+        Assert.assertEquals(WINDOW, acquired(node1));
+        Assert.assertEquals(1, windows[1].pending.size());
+    }
+
+    @Test
+    public void testEndAfterAllNodesFinished() {
+        JoinPipeline.NodeWindow[] windows = join.getNodeWindows();
+        for (int i = 0; i < WINDOW + 1; i++) {
+            join.onBatchFinish(windows[0]);
+        }
+        Assert.assertEquals(0, windows[0].inFlight);
+        Assert.assertFalse(sink.ended);
+        for (int i = 0; i < WINDOW + 1; i++) {
+            join.onBatchFinish(windows[1]);
+        }
+        Assert.assertTrue(sink.ended);
+    }
+}
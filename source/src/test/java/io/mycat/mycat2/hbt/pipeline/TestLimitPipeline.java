@@ -0,0 +1,117 @@
+package io.mycat.mycat2.hbt.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.SortOrder;
+
+import org.junit.Test;
+
+import io.mycat.mycat2.hbt.OrderMeta;
+import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mycat2.hbt.RowMeta;
+import io.mycat.mycat2.hbt.SqlMeta;
+import io.mycat.mysql.Fields;
+import junit.framework.Assert;
+
+/**
+ * LIMIT 下推到排序和后端语句, 满足后取消上游
+ */
+public class TestLimitPipeline {
+
+    /**
+     * 记录取消, 取消后不再产生数据
+     */
+    static class SourcePipeline extends ReferenceHBTPipeline {
+        int produced;
+
+        SourcePipeline() {
+            super(null);
+        }
+
+        void produce(List<List<byte[]>> rows) {
+            onHeader(header());
+            for (List<byte[]> row : rows) {
+                if (isCancelled()) {
+                    break;
+                }
+                produced++;
+                onRowData(row);
+            }
+            onEnd();
+        }
+    }
+
+    private static ResultSetMeta header() {
+        return new ResultSetMeta(new ArrayList<>(Arrays.asList("id", "name")),
+                new int[] { Fields.FIELD_TYPE_LONGLONG, Fields.FIELD_TYPE_VAR_STRING });
+    }
+
+    private static List<byte[]> row(String id, String name) {
+        return new ArrayList<>(Arrays.asList(id.getBytes(), name.getBytes()));
+    }
+
+    private static List<String> names(List<List<byte[]>> rows) {
+        List<String> names = new ArrayList<>();
+        for (List<byte[]> row : rows) {
+            names.add(new String(row.get(1)));
+        }
+        return names;
+    }
+
+    @Test
+    public void testLimitCancelsUpstream() {
+        List<List<byte[]>> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            rows.add(row(Integer.toString(i), "n" + i));
+        }
+        SourcePipeline source = new SourcePipeline();
+        LimitPipeline limit = new LimitPipeline(new SkipPipeline(source, 2), 3);
+        TestOrderPipeline.CollectPipeline sink = new TestOrderPipeline.CollectPipeline(limit);
+        source.produce(rows);
+        Assert.assertEquals(Arrays.asList("n2", "n3", "n4"), names(sink.rows));
+        Assert.assertEquals(5, source.produced);
+        Assert.assertTrue(sink.ended);
+    }
+
+    @Test
+    public void testTopN() {
+        Random random = new Random(11);
+        List<List<byte[]>> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rows.add(row(Integer.toString(random.nextInt(100)), "n" + i));
+        }
+        OrderMeta asc = new OrderMeta(Arrays.asList("id"), Arrays.asList(SortOrder.ASCENDING));
+
+        SourcePipeline fullSource = new SourcePipeline();
+        TestOrderPipeline.CollectPipeline full = new TestOrderPipeline.CollectPipeline(
+                new OrderPipeline(fullSource, asc, Long.MAX_VALUE));
+        fullSource.produce(rows);
+
+        SourcePipeline source = new SourcePipeline();
+        OrderPipeline order = new OrderPipeline(source, asc, Long.MAX_VALUE);
+        TestOrderPipeline.CollectPipeline sink = new TestOrderPipeline.CollectPipeline(
+                new LimitPipeline(new SkipPipeline(order, 5), 20));
+        source.produce(rows);
+        // 排序值相同的行保持到达顺序, 与整体排序的结果一致
+        Assert.assertEquals(names(full.rows.subList(5, 25)), names(sink.rows));
+        Assert.assertEquals(5000, source.produced);
+    }
+
+    @Test
+    public void testLimitPushdownToSql() {
+        HeaderHBTPipeline header = new HeaderHBTPipeline(null, new SqlMeta("select * from t;", "t"), new RowMeta());
+        new LimitPipeline(new SkipPipeline(header, 10), 5);
+        Assert.assertEquals("select * from t limit 15", header.sqlMeta.sql);
+
+        Assert.assertNull(new SqlMeta("select * from t limit 3", "t").limit(5));
+        Assert.assertNull(new SqlMeta("select * from t for update", "t").limit(5));
+
+        // 中间的管道可能改变行数时(如关联、分组)不能下推
+        header = new HeaderHBTPipeline(null, new SqlMeta("select * from t", "t"), new RowMeta());
+        new LimitPipeline(new ReferenceHBTPipeline(header), 5);
+        Assert.assertEquals("select * from t", header.sqlMeta.sql);
+    }
+}
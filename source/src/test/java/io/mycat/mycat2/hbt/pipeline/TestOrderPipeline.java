@@ -0,0 +1,150 @@
+package io.mycat.mycat2.hbt.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.SortOrder;
+
+import org.junit.Test;
+
+import io.mycat.mycat2.hbt.OrderMeta;
+import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mycat2.hbt.RowComparator;
+import io.mycat.mysql.Fields;
+import junit.framework.Assert;
+
+public class TestOrderPipeline {
+
+    /**
+     * 收集排序结果
+     */
+    static class CollectPipeline extends ReferenceHBTPipeline {
+        final List<List<byte[]>> rows = new ArrayList<>();
+        boolean ended;
+
+        CollectPipeline(ReferenceHBTPipeline upStream) {
+            super(upStream);
+        }
+
+        @Override
+        public ResultSetMeta onHeader(ResultSetMeta header) {
+            return header;
+        }
+
+        @Override
+        public List<byte[]> onRowData(List<byte[]> row) {
+            rows.add(row);
+            return null;
+        }
+
+        @Override
+        public void onEnd() {
+            ended = true;
+        }
+    }
+
+    private static ResultSetMeta header() {
+        return new ResultSetMeta(new ArrayList<>(Arrays.asList("id", "name")),
+                new int[] { Fields.FIELD_TYPE_LONGLONG, Fields.FIELD_TYPE_VAR_STRING });
+    }
+
+    private static List<byte[]> row(String id, String name) {
+        return new ArrayList<>(Arrays.asList(id == null ? null : id.getBytes(), name == null ? null : name.getBytes()));
+    }
+
+    private static List<String> ids(List<List<byte[]>> rows) {
+        List<String> ids = new ArrayList<>();
+        for (List<byte[]> row : rows) {
+            ids.add(row.get(0) == null ? null : new String(row.get(0)));
+        }
+        return ids;
+    }
+
+    private CollectPipeline sort(List<List<byte[]>> rows, OrderMeta orderMeta, long memoryLimit) {
+        ReferenceHBTPipeline source = new ReferenceHBTPipeline(null);
+        OrderPipeline order = new OrderPipeline(source, orderMeta, memoryLimit);
+        CollectPipeline sink = new CollectPipeline(order);
+        source.onHeader(header());
+        for (List<byte[]> row : rows) {
+            source.onRowData(row);
+        }
+        source.onEnd();
+        Assert.assertTrue(sink.ended);
+        return sink;
+    }
+
+    @Test
+    public void testNumericOrderAndNulls() {
+        List<List<byte[]>> rows = Arrays.asList(row("10", "a"), row("9", "b"), row(null, "c"), row("-3", "d"),
+                row("100", "e"), row("-20", "f"), row("0", "g"));
+        OrderMeta asc = new OrderMeta(Arrays.asList("id"), Arrays.asList(SortOrder.ASCENDING));
+        Assert.assertEquals(Arrays.asList(null, "-20", "-3", "0", "9", "10", "100"),
+                ids(sort(rows, asc, Long.MAX_VALUE).rows));
+
+        OrderMeta desc = new OrderMeta(Arrays.asList("id"), Arrays.asList(SortOrder.DESCENDING));
+        Assert.assertEquals(Arrays.asList("100", "10", "9", "0", "-3", "-20", null),
+                ids(sort(rows, desc, Long.MAX_VALUE).rows));
+    }
+
+    @Test
+    public void testMultiColumnOrder() {
+        List<List<byte[]>> rows = Arrays.asList(row("1", "b"), row("2", "a"), row("1", "a"), row("2", "c"));
+        OrderMeta orderMeta = new OrderMeta(Arrays.asList("name", "id"),
+                Arrays.asList(SortOrder.ASCENDING, SortOrder.DESCENDING));
+        Assert.assertEquals(Arrays.asList("2", "1", "1", "2"), ids(sort(rows, orderMeta, Long.MAX_VALUE).rows));
+    }
+
+    @Test
+    public void testMergePresortedRuns() {
+        // 三个分片各自有序的结果依次到达
+        List<List<byte[]>> rows = new ArrayList<>();
+        for (int node = 0; node < 3; node++) {
+            for (int i = 0; i < 100; i++) {
+                rows.add(row(Integer.toString(i * 3 + node), "node" + node));
+            }
+        }
+        OrderMeta asc = new OrderMeta(Arrays.asList("id"), Arrays.asList(SortOrder.ASCENDING));
+        List<String> ids = ids(sort(rows, asc, Long.MAX_VALUE).rows);
+        Assert.assertEquals(300, ids.size());
+        for (int i = 0; i < 300; i++) {
+            Assert.assertEquals(Integer.toString(i), ids.get(i));
+        }
+    }
+
+    @Test
+    public void testSpillToFiles() {
+        Random random = new Random(7);
+        List<List<byte[]>> rows = new ArrayList<>();
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            long id = random.nextLong() % 1000000;
+            rows.add(row(Long.toString(id), "name" + i));
+            expected.add(id);
+        }
+        Collections.sort(expected);
+        OrderMeta asc = new OrderMeta(Arrays.asList("id"), Arrays.asList(SortOrder.ASCENDING));
+        // 每个临时文件约 1000 行
+        List<List<byte[]>> sorted = sort(rows, asc, 100 * 1000).rows;
+        Assert.assertEquals(expected.size(), sorted.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).longValue(), Long.parseLong(new String(sorted.get(i).get(0))));
+            Assert.assertNotNull(sorted.get(i).get(1));
+        }
+    }
+
+    @Test
+    public void testCompareDecimal() {
+        Assert.assertTrue(RowComparator.compareDecimal("1.5".getBytes(), "1.25".getBytes()) > 0);
+        Assert.assertTrue(RowComparator.compareDecimal("-1.5".getBytes(), "-1.25".getBytes()) < 0);
+        Assert.assertTrue(RowComparator.compareDecimal("0.01".getBytes(), "0".getBytes()) > 0);
+        Assert.assertTrue(RowComparator.compareDecimal("18446744073709551615".getBytes(),
+                "9223372036854775807".getBytes()) > 0);
+        Assert.assertEquals(0, RowComparator.compareDecimal("2.10".getBytes(), "2.1".getBytes()));
+        Assert.assertEquals(0, RowComparator.compareDecimal("-0.0".getBytes(), "0".getBytes()));
+        Assert.assertTrue(RowComparator.compareBytes("abc".getBytes(), "abd".getBytes()) < 0);
+        Assert.assertTrue(RowComparator.compareBytes("ab".getBytes(), "abc".getBytes()) < 0);
+    }
+}
@@ -0,0 +1,185 @@
+package io.mycat.mycat2.hbt.pipeline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.cmds.HBTDemoCmd2;
+import io.mycat.mycat2.console.SessionKeyEnum;
+import io.mycat.mycat2.hbt.ResultSetMeta;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.mysql.Fields;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import junit.framework.Assert;
+
+/**
+ * 前端 socket 写满时暂停上游, 可写后继续输出, 结果集完整且报文序号连续
+ */
+public class TestOutPipeline {
+
+    /**
+     * 记录暂停和恢复的次数
+     */
+    static class SourcePipeline extends ReferenceHBTPipeline {
+        int pauses;
+        int resumes;
+
+        SourcePipeline() {
+            super(null);
+        }
+
+        @Override
+        public void pause() {
+            pauses++;
+        }
+
+        @Override
+        public void resume() {
+            resumes++;
+        }
+    }
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private MycatSession mycatSession;
+
+    @Before
+    public void setUp() throws IOException {
+        BuddyByteBufferPool pool = new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1);
+        selector = Selector.open();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel accepted = server.accept();
+        accepted.configureBlocking(false);
+        client.configureBlocking(false);
+        mycatSession = new MycatSession(pool, selector, accepted);
+        mycatSession.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        mycatSession.curSQLCommand = HBTDemoCmd2.INSTANCE;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        selector.close();
+    }
+
+    private static List<byte[]> row(int i) {
+        byte[] value = new byte[200];
+        Arrays.fill(value, (byte) 'x');
+        return new ArrayList<>(Arrays.asList(String.valueOf(i).getBytes(), value));
+    }
+
+    private boolean outputting() {
+        return mycatSession.getAttr(SessionKeyEnum.SESSION_KEY_HBT_OUT_PIPELINE) != null;
+    }
+
+    @Test
+    public void testBackpressure() throws IOException {
+        SourcePipeline source = new SourcePipeline();
+        OutPipeline out = new OutPipeline(source, mycatSession);
+        source.onHeader(new ResultSetMeta(new ArrayList<>(Arrays.asList("id", "value")),
+                new int[] { Fields.FIELD_TYPE_LONG, Fields.FIELD_TYPE_VAR_STRING }));
+        int rows = 0;
+        while (!out.isPaused() && rows < 1000000) {
+            source.onRowData(row(rows++));
+        }
+        Assert.assertTrue(out.isPaused());
+        Assert.assertEquals(1, source.pauses);
+        // 暂停前已经读到的数据继续交给下游
+        for (int i = 0; i < 10; i++) {
+            source.onRowData(row(rows++));
+        }
+        source.onEnd();
+        Assert.assertTrue(outputting());
+
+        byte[] data = receive();
+        Assert.assertFalse(outputting());
+        Assert.assertEquals(1, source.resumes);
+        // 列数, 2个列定义, EOF, 行, EOF
+        Assert.assertEquals(1 + 2 + 1 + rows + 1, countPackets(data));
+    }
+
+    /**
+     * 列定义超过前端 buffer 大小时分多次发送
+     */
+    @Test
+    public void testLargeHeader() throws IOException {
+        int columns = 2000;
+        List<String> names = new ArrayList<>();
+        int[] types = new int[columns];
+        char[] name = new char[60];
+        Arrays.fill(name, 'c');
+        for (int i = 0; i < columns; i++) {
+            names.add(new String(name) + i);
+            types[i] = Fields.FIELD_TYPE_VAR_STRING;
+        }
+        Assert.assertTrue(columns * name.length * 2 > mycatSession.proxyBuffer.getBuffer().capacity());
+        SourcePipeline source = new SourcePipeline();
+        new OutPipeline(source, mycatSession);
+        source.onHeader(new ResultSetMeta(names, types));
+        source.onEnd();
+
+        byte[] data = receive();
+        Assert.assertFalse(outputting());
+        Assert.assertEquals(source.pauses, source.resumes);
+        // 列数, 列定义, EOF, EOF
+        Assert.assertEquals(1 + columns + 1 + 1, countPackets(data));
+    }
+
+    /**
+     * 读取前端收到的数据直到结果集发送完成
+     */
+    private byte[] receive() throws IOException {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        ByteBuffer readBuf = ByteBuffer.allocate(1024 * 64);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            readBuf.clear();
+            int n = client.read(readBuf);
+            if (n > 0) {
+                received.write(readBuf.array(), 0, n);
+            } else if (!outputting()) {
+                break;
+            }
+            if (outputting() && mycatSession.proxyBuffer.isInReading()) {
+                // 模拟可写事件
+                mycatSession.writeToChannel();
+            }
+        }
+        return received.toByteArray();
+    }
+
+    /**
+     * 检查报文序号连续且最后一个报文为 EOF, 返回报文个数
+     */
+    private static int countPackets(byte[] data) {
+        int pos = 0;
+        int seq = 1;
+        int packets = 0;
+        int lastType = 0;
+        while (pos < data.length) {
+            int length = (data[pos] & 0xff) | (data[pos + 1] & 0xff) << 8 | (data[pos + 2] & 0xff) << 16;
+            Assert.assertEquals((byte) seq++, data[pos + 3]);
+            lastType = data[pos + 4] & 0xff;
+            pos += 4 + length;
+            packets++;
+        }
+        Assert.assertEquals(data.length, pos);
+        Assert.assertEquals(0xfe, lastType);
+        return packets;
+    }
+}
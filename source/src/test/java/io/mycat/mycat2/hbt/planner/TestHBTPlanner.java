@@ -0,0 +1,180 @@
+package io.mycat.mycat2.hbt.planner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SortOrder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.SchemaBean;
+import io.mycat.mycat2.beans.conf.ShardingRuleBean;
+import io.mycat.mycat2.beans.conf.ShardingRuleConfig;
+import io.mycat.mycat2.beans.conf.TableDefBean;
+import io.mycat.mycat2.cmds.cache.mapcache.SQLFingerprint;
+import io.mycat.mycat2.route.ShardingRouter;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.BufferSQLParser;
+import junit.framework.Assert;
+
+/**
+ * 跨复制组的 select 规划为 HBT 管道: 下发的 sql、关联顺序、聚合拆分
+ */
+public class TestHBTPlanner {
+
+    private final BufferSQLParser parser = new BufferSQLParser();
+    private final BufferSQLContext context = new BufferSQLContext();
+    private ShardingRouter router;
+    private MySQLRepBean defaultNode;
+
+    private static TableDefBean table(String name, String key, String rule, String store, long estimatedRows) {
+        TableDefBean table = new TableDefBean();
+        table.setName(name);
+        table.setShardingKey(key);
+        table.setShardingRule(rule);
+        table.setStore(store);
+        table.setEstimatedRows(estimatedRows);
+        return table;
+    }
+
+    @Before
+    public void init() {
+        Map<String, MySQLRepBean> repMap = new HashMap<>();
+        repMap.put("repl0", new MySQLRepBean());
+        repMap.put("repl1", new MySQLRepBean());
+        repMap.put("global", new MySQLRepBean());
+        defaultNode = new MySQLRepBean();
+
+        SchemaBean schema = new SchemaBean();
+        schema.setName("multidb");
+        schema.setSchemaType(SchemaBean.SchemaTypeEnum.DB_IN_MULTI_SERVER);
+        schema.setTables(Arrays.asList(table("orders", "id", "mod-long", "repl0,repl1", 1000000),
+                table("users", "id", "mod-long", "repl0,repl1", 1000),
+                table("dict", null, null, "global", 10)));
+        ShardingRuleBean rule = new ShardingRuleBean();
+        rule.setName("mod-long");
+        rule.setAlgorithm("mod-hash");
+        Map<String, String> params = new HashMap<>();
+        params.put("count", "2");
+        rule.setParams(params);
+        List<ShardingRuleBean> rules = new ArrayList<>();
+        rules.add(rule);
+        ShardingRuleConfig ruleConfig = new ShardingRuleConfig();
+        ruleConfig.setShardingRules(rules);
+        router = ShardingRouter.build(schema, ruleConfig, repMap);
+    }
+
+    private HBTPlan plan(String sql) {
+        parser.parse(sql.getBytes(StandardCharsets.UTF_8), context);
+        return HBTPlanner.INSTANCE.plan(context, router, defaultNode);
+    }
+
+    private List<String> labels(HBTPlan plan) {
+        List<String> labels = new ArrayList<>();
+        for (SqlTemplate label : plan.labels) {
+            labels.add(label.render(context));
+        }
+        return labels;
+    }
+
+    @Test
+    public void testJoinPushdown() {
+        HBTPlan plan = plan("select o.id, u.name as user_name from orders o join users u on o.user_id = u.id "
+                + "where o.amount > 100 and u.city = 'bj'");
+        // 过滤后 users 更小, 先读取
+        Assert.assertEquals(2, plan.legs.size());
+        Assert.assertEquals("select `u`.`name` as `u.name`, `u`.`id` as `u.id` from users `u` where (u.city = 'bj')",
+                plan.legSql(0, context));
+        Assert.assertEquals("select `o`.`id` as `o.id`, `o`.`user_id` as `o.user_id` from orders `o` "
+                + "where (o.amount > 100)", plan.legSql(1, context));
+        HBTPlan.JoinStep join = plan.joins.get(0);
+        Assert.assertEquals("u.id", join.leftKey);
+        Assert.assertEquals("o.user_id", join.rightKey);
+        Assert.assertEquals("`o`.`user_id`", join.rightColumn.render(context));
+        Assert.assertFalse(join.hashJoin);
+        Assert.assertNull(plan.groupKeys);
+        Assert.assertTrue(Arrays.equals(new int[] { 2, 0 }, plan.projection));
+        Assert.assertEquals(Arrays.asList("id", "user_name"), labels(plan));
+    }
+
+    @Test
+    public void testJoinOrderAndResidual() {
+        HBTPlan plan = plan("select u.name, d.title, count(*) from users u join orders o on o.user_id = u.id "
+                + "and u.city = o.city join dict d on d.code = o.status group by u.name, d.title");
+        // dict 最小, orders 只与 dict 有关联条件
+        Assert.assertEquals("dict", plan.legs.get(0).table);
+        Assert.assertEquals("orders", plan.legs.get(1).table);
+        Assert.assertEquals("users", plan.legs.get(2).table);
+        Assert.assertFalse(plan.joins.get(0).hashJoin);
+        // users 比已经关联的结果小, 一次读取做 hash join
+        Assert.assertTrue(plan.joins.get(1).hashJoin);
+        Assert.assertEquals("o.user_id", plan.joins.get(1).leftKey);
+        Assert.assertEquals(2, plan.residual.length);
+        List<String> layout = new ArrayList<>();
+        for (HBTPlan.Leg leg : plan.legs) {
+            layout.addAll(leg.columns);
+        }
+        Assert.assertEquals("u.city", layout.get(plan.residual[0]));
+        Assert.assertEquals("o.city", layout.get(plan.residual[1]));
+        // 关联之后分组
+        Assert.assertFalse(plan.split);
+        Assert.assertTrue(Arrays.equals(new String[] { "u.name", "d.title" }, plan.groupKeys));
+        Assert.assertEquals(Arrays.asList("#0", "#1", "#2"), plan.groupNames);
+        Assert.assertEquals(Arrays.asList("name", "title", "count(*)"), labels(plan));
+    }
+
+    @Test
+    public void testSplitAggregate() {
+        HBTPlan plan = plan("select user_id, count(*), avg(amount) as a from orders where status = 1 "
+                + "group by user_id order by 2 desc, max(amount) limit 10");
+        Assert.assertTrue(plan.split);
+        Assert.assertEquals(1, plan.legs.size());
+        Assert.assertEquals("select `user_id` as `orders.user_id`, count(*) as `#p1`, sum(`amount`) as `#p2`, "
+                + "count(`amount`) as `#c2`, max(`amount`) as `#p3` from orders where (status = 1) group by `user_id`",
+                plan.legSql(0, context));
+        Assert.assertEquals(Arrays.asList("#1", "#3"), plan.orderNames);
+        Assert.assertEquals(Arrays.asList(SortOrder.DESCENDING, SortOrder.ASCENDING), plan.sortOrders);
+        Assert.assertEquals(10, context.getHashArray().getHash(plan.countToken));
+        // 排序使用的 max(amount) 不输出
+        Assert.assertTrue(Arrays.equals(new int[] { 0, 1, 2 }, plan.projection));
+        Assert.assertEquals(Arrays.asList("user_id", "count(*)", "a"), labels(plan));
+    }
+
+    @Test
+    public void testPlanReusedWithOtherLiterals() {
+        String sql = "select o.id, u.name from orders o, users u where o.user_id = u.id and u.city = 'bj' limit 3";
+        String other = "select o.id, u.name from orders o, users u where o.user_id = u.id and u.city = 'shanghai' limit 20";
+        HBTPlan plan = plan(sql);
+        SQLFingerprint key = SQLFingerprint.normalized(context, "multidb");
+        int tokenCount = SelectQuery.tokenCount(context);
+
+        parser.parse(other.getBytes(StandardCharsets.UTF_8), context);
+        Assert.assertEquals(key, SQLFingerprint.normalized(context, "multidb"));
+        Assert.assertEquals(tokenCount, SelectQuery.tokenCount(context));
+        Assert.assertEquals("select `u`.`name` as `u.name`, `u`.`id` as `u.id` from users `u` "
+                + "where (u.city = 'shanghai')", plan.legSql(0, context));
+        Assert.assertEquals(20, context.getHashArray().getHash(plan.countToken));
+    }
+
+    @Test
+    public void testUnsupported() {
+        // 在一个复制组上执行
+        Assert.assertNull(plan("select * from dict d join config c on d.id = c.id"));
+        Assert.assertNull(plan("select * from orders o join users u on o.user_id = u.id"));
+        Assert.assertNull(plan("select o.id from orders o left join users u on o.user_id = u.id"));
+        Assert.assertNull(plan("select o.id from orders o join users u on o.user_id = u.id where o.id in (select 1)"));
+        Assert.assertNull(plan("select o.id, u.name from orders o, users u"));
+        Assert.assertNull(plan("select id from orders o join users u on o.user_id = u.id"));
+        Assert.assertNull(plan("select o.id from orders o join users u on o.user_id + 1 = u.id"));
+        Assert.assertNull(plan("select distinct user_id from orders"));
+        Assert.assertNull(plan("select user_id, count(*) from orders group by user_id having count(*) > 1"));
+        Assert.assertNull(plan("select o.id from orders o join users u on o.user_id = u.id for update"));
+        Assert.assertNull(plan("select upper(o.id) from orders o join users u on o.user_id = u.id"));
+    }
+}
@@ -0,0 +1,101 @@
+package io.mycat.mycat2.loadbalance;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.mycat.proxy.ProxyBuffer;
+import io.mycat.proxy.man.ClusterNode;
+import io.mycat.proxy.man.ClusterNode.NodeState;
+import io.mycat.proxy.man.ManagePacket;
+import io.mycat.proxy.man.NodeLoad;
+import io.mycat.proxy.man.packet.NodeLoadPacket;
+import junit.framework.Assert;
+
+/**
+ * 按节点上报的负载选择节点
+ */
+public class TestNodeLoadStrategy {
+
+    private static ClusterNode node(String id, NodeLoad load) {
+        ClusterNode node = new ClusterNode(id, "127.0.0.1", 9066);
+        node.setState(NodeState.Online);
+        if (load != null) {
+            node.setLoad(load);
+        }
+        return node;
+    }
+
+    private static NodeLoad load(int sessions, int queueDepth, long p99, int cpuLoad) {
+        return new NodeLoad(sessions, queueDepth, p99, cpuLoad, System.currentTimeMillis());
+    }
+
+    @Test
+    public void testPacket() {
+        ProxyBuffer buffer = new ProxyBuffer(ByteBuffer.allocate(256));
+        new NodeLoadPacket("leader-2", load(12, 3, 4095, 750)).writeTo(buffer);
+        Assert.assertEquals(ManagePacket.PKG_NODE_LOAD, buffer.getByte(2));
+        buffer.readIndex = 0;
+        NodeLoadPacket packet = new NodeLoadPacket();
+        packet.resolve(buffer);
+        Assert.assertEquals("leader-2", packet.getNodeId());
+        NodeLoad load = packet.toNodeLoad(100L);
+        Assert.assertEquals(12, load.getActiveSessions());
+        Assert.assertEquals(3, load.getReactorQueueDepth());
+        Assert.assertEquals(4095, load.getP99LatencyMicros());
+        Assert.assertEquals(750, load.getCpuLoad());
+        Assert.assertEquals(100L, load.getUpdateTime());
+    }
+
+    @Test
+    public void testResponseTime() {
+        ClusterNode fast = node("leader-1", load(10, 0, 1000, 900));
+        ClusterNode slow = node("leader-2", load(10, 0, 8000, 100));
+        List<ClusterNode> nodes = Arrays.asList(fast, slow);
+        ResponseTimeStrategy strategy = new ResponseTimeStrategy();
+        Assert.assertSame(fast, strategy.getNode(nodes, null));
+        Assert.assertEquals(1, fast.getAssignedSinceReport());
+    }
+
+    @Test
+    public void testCapacity() {
+        ClusterNode idle = node("leader-1", load(10, 0, 8000, 100));
+        ClusterNode busy = node("leader-2", load(10, 0, 1000, 900));
+        ClusterNode backlogged = node("leader-3", load(1, 50, 1000, 0));
+        List<ClusterNode> nodes = Arrays.asList(idle, busy, backlogged);
+        Assert.assertSame(idle, new CapacityStrategy().getNode(nodes, null));
+    }
+
+    @Test
+    public void testAssignedBetweenReports() {
+        ClusterNode a = node("leader-1", load(0, 0, 1000, 0));
+        ClusterNode b = node("leader-2", load(3, 0, 1000, 0));
+        List<ClusterNode> nodes = Arrays.asList(a, b);
+        ResponseTimeStrategy strategy = new ResponseTimeStrategy();
+        for (int i = 0; i < 9; i++) {
+            strategy.getNode(nodes, null);
+        }
+        // 两次上报之间新连接在节点间分摊, 不会全部分配到最初最空闲的节点
+        Assert.assertEquals(6, a.getAssignedSinceReport());
+        Assert.assertEquals(3, b.getAssignedSinceReport());
+        a.setLoad(load(6, 0, 1000, 0));
+        Assert.assertEquals(0, a.getAssignedSinceReport());
+    }
+
+    @Test
+    public void testUnknownLoad() {
+        ClusterNode offline = node("leader-1", load(0, 0, 1, 0));
+        offline.setState(NodeState.Offline);
+        ClusterNode stale = node("leader-2", new NodeLoad(0, 0, 1, 0, System.currentTimeMillis() - 60000));
+        ClusterNode unknown = node("leader-3", null);
+        List<ClusterNode> nodes = Arrays.asList(offline, stale, unknown);
+        CapacityStrategy strategy = new CapacityStrategy();
+        for (int i = 0; i < 100; i++) {
+            // 没有可用的负载信息时在在线节点中随机选择
+            Assert.assertNotSame(offline, strategy.getNode(nodes, null));
+        }
+        Assert.assertNull(strategy.getNode(Arrays.asList(offline), null));
+    }
+}
@@ -0,0 +1,136 @@
+package io.mycat.mycat2.route;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.SchemaBean;
+import io.mycat.mycat2.beans.conf.ShardingRuleBean;
+import io.mycat.mycat2.beans.conf.ShardingRuleConfig;
+import io.mycat.mycat2.beans.conf.TableDefBean;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.BufferSQLParser;
+
+/**
+ * 每条语句的路由开销: parse 只解析, parseAndRoute 解析后按分片规则路由, 两者之差为路由本身的开销.
+ * 路由不创建对象, gc.alloc.rate.norm 应与只解析时相同
+ */
+@BenchmarkMode(Mode.AverageTime)//基准测试类型
+@OutputTimeUnit(TimeUnit.NANOSECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 5)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Thread)//该状态为每个线程独享
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class ShardingRouterBenchmark {
+
+    @Param({ "mod-hash", "range", "date", "enum", "consistent-hash" })
+    String algorithm;
+
+    byte[] select;
+    byte[] insert;
+    BufferSQLContext context;
+    BufferSQLParser parser;
+    ShardingRouter router;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ShardingRouterBenchmark.class.getSimpleName())
+                .forks(1)
+                .addProfiler(GCProfiler.class)    // report GC time
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void init() {
+        Map<String, String> params = new HashMap<>();
+        String value;
+        switch (algorithm) {
+        case "range":
+            params.put("ranges", "0-4999=0,5000-9999=1,10000-14999=2,15000-19999=3");
+            value = "12345";
+            break;
+        case "date":
+            params.put("beginDate", "2017-01-01");
+            params.put("partitionDay", "90");
+            params.put("endDate", "2017-12-31");
+            value = "'2017-08-15 10:00:00'";
+            break;
+        case "enum":
+            params.put("mapping", "beijing=0,shanghai=1,guangzhou=2,shenzhen=3");
+            params.put("type", "1");
+            value = "'guangzhou'";
+            break;
+        default:
+            params.put("count", "4");
+            value = "12345";
+            break;
+        }
+        ShardingRuleBean rule = new ShardingRuleBean();
+        rule.setName("rule");
+        rule.setAlgorithm(algorithm);
+        rule.setParams(params);
+        ShardingRuleConfig ruleConfig = new ShardingRuleConfig();
+        ruleConfig.setShardingRules(Arrays.asList(rule));
+
+        TableDefBean table = new TableDefBean();
+        table.setName("orders");
+        table.setShardingKey("sharding_id");
+        table.setShardingRule("rule");
+        table.setStore("repl0,repl1,repl2,repl3");
+        SchemaBean schema = new SchemaBean();
+        schema.setName("multidb");
+        schema.setSchemaType(SchemaBean.SchemaTypeEnum.DB_IN_MULTI_SERVER);
+        schema.setTables(Arrays.asList(table));
+        Map<String, MySQLRepBean> repMap = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            repMap.put("repl" + i, new MySQLRepBean());
+        }
+        router = ShardingRouter.build(schema, ruleConfig, repMap);
+
+        select = ("SELECT id, status, amount FROM orders WHERE status = 1 AND sharding_id = " + value
+                + " ORDER BY id LIMIT 10").getBytes(StandardCharsets.UTF_8);
+        insert = ("INSERT INTO orders (id, sharding_id, status, amount) VALUES (1, " + value + ", 1, 100)")
+                .getBytes(StandardCharsets.UTF_8);
+        context = new BufferSQLContext();
+        parser = new BufferSQLParser();
+    }
+
+    @Benchmark
+    public int parseSelect() {
+        parser.parse(select, context);
+        return context.getSQLCount();
+    }
+
+    @Benchmark
+    public MySQLRepBean parseAndRouteSelect() {
+        parser.parse(select, context);
+        return router.route(context);
+    }
+
+    @Benchmark
+    public MySQLRepBean parseAndRouteInsert() {
+        parser.parse(insert, context);
+        return router.route(context);
+    }
+}
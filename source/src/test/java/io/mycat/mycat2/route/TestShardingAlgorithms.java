@@ -0,0 +1,159 @@
+package io.mycat.mycat2.route;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import io.mycat.mycat2.beans.conf.ShardingRuleBean;
+import io.mycat.mycat2.sqlparser.byteArrayInterface.DefaultByteArray;
+import junit.framework.Assert;
+
+public class TestShardingAlgorithms {
+
+    private static ShardingAlgorithm compile(String algorithm, String... params) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < params.length; i += 2) {
+            map.put(params[i], params[i + 1]);
+        }
+        ShardingRuleBean bean = new ShardingRuleBean();
+        bean.setName("rule");
+        bean.setAlgorithm(algorithm);
+        bean.setParams(map);
+        return ShardingRouter.compile(bean);
+    }
+
+    private static int calculate(ShardingAlgorithm algorithm, String literal) {
+        byte[] bytes = ("'" + literal + "'").getBytes(StandardCharsets.UTF_8);
+        return algorithm.calculate(new DefaultByteArray(bytes), 1, bytes.length - 1);
+    }
+
+    @Test
+    public void testMod() {
+        ShardingAlgorithm mod = compile("mod-hash", "count", "4");
+        Assert.assertEquals(3, mod.calculate(7));
+        Assert.assertEquals(1, mod.calculate(-7));
+        Assert.assertEquals(3, calculate(mod, "7"));
+        int partition = calculate(mod, "abc");
+        Assert.assertTrue(partition >= 0 && partition < 4);
+        Assert.assertEquals(partition, calculate(mod, "abc"));
+    }
+
+    @Test
+    public void testRange() {
+        ShardingAlgorithm range = compile("org.opencloudb.route.function.AutoPartitionByLong",
+                "ranges", "1000-1999=1,0-999=0,2000-2999=2");
+        Assert.assertEquals(0, range.calculate(0));
+        Assert.assertEquals(1, range.calculate(1999));
+        Assert.assertEquals(2, range.calculate(2000));
+        Assert.assertEquals(ShardingAlgorithm.NO_PARTITION, range.calculate(3000));
+        Assert.assertEquals(ShardingAlgorithm.NO_PARTITION, range.calculate(-1));
+        Assert.assertEquals(1, calculate(range, "1500"));
+        Assert.assertEquals(ShardingAlgorithm.NO_PARTITION, calculate(range, "15a"));
+
+        ShardingAlgorithm withDefault = compile("range", "ranges", "0-999=0", "defaultNode", "3");
+        Assert.assertEquals(3, withDefault.calculate(5000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverlappingRange() {
+        compile("range", "ranges", "0-1000=0,1000-1999=1");
+    }
+
+    @Test
+    public void testDate() {
+        ShardingAlgorithm date = compile("date", "beginDate", "2017-01-01", "partitionDay", "10");
+        Assert.assertEquals(0, calculate(date, "2017-01-01"));
+        Assert.assertEquals(0, calculate(date, "2017-01-10 23:59:59"));
+        Assert.assertEquals(1, calculate(date, "2017-01-11"));
+        Assert.assertEquals(5, calculate(date, "2017/02/20"));
+        Assert.assertEquals(5, date.calculate(20170220));
+        Assert.assertEquals(ShardingAlgorithm.NO_PARTITION, calculate(date, "2016-12-31"));
+        Assert.assertEquals(ShardingAlgorithm.NO_PARTITION, calculate(date, "2017-13-01"));
+        Assert.assertEquals(ShardingAlgorithm.NO_PARTITION, calculate(date, "abc"));
+
+        ShardingAlgorithm cycle = compile("date", "beginDate", "2017-01-01", "endDate", "2017-01-02");
+        Assert.assertEquals(0, calculate(cycle, "2017-01-03"));
+        Assert.assertEquals(1, calculate(cycle, "2017-01-04"));
+    }
+
+    @Test
+    public void testEnum() {
+        ShardingAlgorithm longEnum = compile("enum", "mapping", "10000=0,10010=1,-5=2");
+        Assert.assertEquals(0, longEnum.calculate(10000));
+        Assert.assertEquals(1, calculate(longEnum, "10010"));
+        Assert.assertEquals(2, longEnum.calculate(-5));
+        Assert.assertEquals(ShardingAlgorithm.NO_PARTITION, longEnum.calculate(1));
+
+        ShardingAlgorithm stringEnum = compile("PartitionByFileMap", "mapping", "beijing=0,shanghai=1", "type", "1",
+                "defaultNode", "2");
+        Assert.assertEquals(0, calculate(stringEnum, "beijing"));
+        Assert.assertEquals(1, calculate(stringEnum, "shanghai"));
+        Assert.assertEquals(2, calculate(stringEnum, "shenzhen"));
+        Assert.assertEquals(2, stringEnum.calculate(10));
+    }
+
+    @Test
+    public void testConsistentHash() {
+        ShardingAlgorithm murmur = compile("consistent-hash", "count", "3");
+        int[] counts = new int[3];
+        for (int i = 0; i < 30000; i++) {
+            int partition = murmur.calculate(i);
+            Assert.assertEquals(partition, calculate(murmur, String.valueOf(i)));
+            counts[partition]++;
+        }
+        for (int count : counts) {
+            Assert.assertTrue(count > 5000);
+        }
+        // 增加分片时只有部分数据迁移
+        ShardingAlgorithm more = compile("consistent-hash", "count", "4");
+        int moved = 0;
+        for (int i = 0; i < 30000; i++) {
+            if (murmur.calculate(i) != more.calculate(i)) {
+                moved++;
+            }
+        }
+        Assert.assertTrue(moved < 15000);
+    }
+
+    /**
+     * 1.x 的 PartitionByMurmurHash: 虚拟节点放入 TreeMap, 按字符串的 UTF-16 字符计算 hash
+     */
+    private static int version1(int count, int seed, String value) {
+        HashFunction hash = Hashing.murmur3_32(seed);
+        TreeMap<Integer, Integer> bucketMap = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder shardName = new StringBuilder("SHARD-").append(i);
+            for (int n = 0; n < 160; n++) {
+                bucketMap.put(hash.hashUnencodedChars(shardName.append("-NODE-").append(n)).asInt(), i);
+            }
+        }
+        SortedMap<Integer, Integer> tail = bucketMap.tailMap(hash.hashUnencodedChars(value).asInt());
+        return tail.isEmpty() ? bucketMap.get(bucketMap.firstKey()) : tail.get(tail.firstKey());
+    }
+
+    @Test
+    public void testConsistentHashSameAsVersion1() {
+        ShardingAlgorithm murmur = compile("org.opencloudb.route.function.PartitionByMurmurHash",
+                "count", "5", "seed", "7");
+        for (int i = 0; i < 500; i++) {
+            Assert.assertEquals(version1(5, 7, String.valueOf(i)), murmur.calculate(i));
+        }
+        // 长度为奇数和偶数的字符串, 多字节的 utf8 字符和补充平面的字符
+        String[] values = { "a", "ab", "abc", "user-10086", "北京", "上海市", "é", "x\uD83D\uDE00", "\uD83D\uDE00y" };
+        for (String value : values) {
+            Assert.assertEquals(value, version1(5, 7, value), calculate(murmur, value));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownAlgorithm() {
+        compile("unknown", "count", "2");
+    }
+}
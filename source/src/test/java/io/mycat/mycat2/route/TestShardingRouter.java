@@ -0,0 +1,188 @@
+package io.mycat.mycat2.route;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.SchemaBean;
+import io.mycat.mycat2.beans.conf.ShardingRuleBean;
+import io.mycat.mycat2.beans.conf.ShardingRuleConfig;
+import io.mycat.mycat2.beans.conf.TableDefBean;
+import io.mycat.mycat2.sqlparser.BufferSQLContext;
+import io.mycat.mycat2.sqlparser.BufferSQLParser;
+import junit.framework.Assert;
+
+public class TestShardingRouter {
+
+    private final Map<String, MySQLRepBean> repMap = new HashMap<>();
+    private final BufferSQLParser parser = new BufferSQLParser();
+    private final BufferSQLContext context = new BufferSQLContext();
+    private ShardingRouter router;
+    private MySQLRepBean node0;
+    private MySQLRepBean node1;
+    private MySQLRepBean global;
+
+    private static TableDefBean table(String name, String key, String rule, String store) {
+        TableDefBean table = new TableDefBean();
+        table.setName(name);
+        table.setShardingKey(key);
+        table.setShardingRule(rule);
+        table.setStore(store);
+        return table;
+    }
+
+    private static ShardingRuleBean rule(String name, String algorithm, String param, String value) {
+        ShardingRuleBean rule = new ShardingRuleBean();
+        rule.setName(name);
+        rule.setAlgorithm(algorithm);
+        Map<String, String> params = new HashMap<>();
+        params.put(param, value);
+        rule.setParams(params);
+        return rule;
+    }
+
+    @Before
+    public void init() {
+        node0 = new MySQLRepBean();
+        node1 = new MySQLRepBean();
+        global = new MySQLRepBean();
+        repMap.put("repl0", node0);
+        repMap.put("repl1", node1);
+        repMap.put("global", global);
+
+        SchemaBean schema = new SchemaBean();
+        schema.setName("multidb");
+        schema.setSchemaType(SchemaBean.SchemaTypeEnum.DB_IN_MULTI_SERVER);
+        schema.setTables(Arrays.asList(table("orders", "id", "mod-long", "repl0, repl1"),
+                table("order_items", "order_id", "mod-long", "repl0,repl1"),
+                table("users", "name", "city-enum", "repl0,repl1"),
+                table("dict", null, null, "global")));
+        List<ShardingRuleBean> rules = new ArrayList<>();
+        rules.add(rule("mod-long", "mod-hash", "count", "2"));
+        rules.add(rule("city-enum", "enum", "mapping", "beijing=0,shanghai=1"));
+        rules.get(1).getParams().put("type", "1");
+        ShardingRuleConfig ruleConfig = new ShardingRuleConfig();
+        ruleConfig.setShardingRules(rules);
+        router = ShardingRouter.build(schema, ruleConfig, repMap);
+    }
+
+    private MySQLRepBean route(String sql) {
+        parser.parse(sql.getBytes(StandardCharsets.UTF_8), context);
+        return router.route(context);
+    }
+
+    @Test
+    public void testIdentifierHash() {
+        parser.parse("select Order_Items.ID$2 from order_items".getBytes(StandardCharsets.UTF_8), context);
+        Assert.assertEquals(ShardingRouter.identifierHash("order_items"), context.getSQLTableHash(0, 0));
+        Assert.assertEquals(ShardingRouter.identifierHash("ID$2"), ShardingRouter.identifierHash("id$2"));
+        Assert.assertEquals(context.getHashArray().getHash(3), ShardingRouter.identifierHash("ID$2"));
+    }
+
+    @Test
+    public void testPointQuery() {
+        Assert.assertSame(node1, route("select * from orders where id = 1"));
+        Assert.assertSame(node0, route("SELECT * FROM orders WHERE status = 'paid' AND id = 2 ORDER BY id"));
+        Assert.assertSame(node1, route("select * from orders where id = 3 and (status = 1 or status = 2) limit 10"));
+        Assert.assertSame(node1, route("select * from orders where id = -3"));
+        Assert.assertSame(node0, route("update orders set status = 1 where id = 4"));
+        Assert.assertSame(node1, route("delete from orders where id = 5;"));
+        Assert.assertSame(node1, route("select * from users where name = 'shanghai'"));
+        Assert.assertSame(node0, route("select * from users u where u.name = \"beijing\""));
+    }
+
+    @Test
+    public void testInList() {
+        Assert.assertSame(node0, route("select * from orders where id in (2, 4, 6)"));
+        Assert.assertNull(route("select * from orders where id in (1, 2)"));
+    }
+
+    @Test
+    public void testNoSinglePartition() {
+        Assert.assertNull(route("select * from orders"));
+        Assert.assertNull(route("select * from orders where id > 1"));
+        Assert.assertNull(route("select * from orders where id = 1 or id = 3"));
+        Assert.assertNull(route("select * from orders where id = 1 || status = 1"));
+        Assert.assertNull(route("select * from orders where id = 1 + 1"));
+        Assert.assertNull(route("select * from orders where id = 1.5"));
+        Assert.assertNull(route("select * from orders where id = 0x10"));
+        Assert.assertNull(route("select * from orders where uid = 1"));
+        Assert.assertNull(route("select * from users where name = 'bei\\'jing'"));
+        Assert.assertNull(route("select * from users where name = 'shenzhen'"));
+        Assert.assertNull(route("select * from orders where status in (select id from orders where id = 1)"));
+        Assert.assertNull(route("select * from orders where id = 1; select * from orders where id = 1"));
+    }
+
+    @Test
+    public void testJoin() {
+        Assert.assertSame(node1, route("select * from orders o join order_items i on o.id = i.order_id "
+                + "where o.id = 1 and i.order_id = 1"));
+        Assert.assertNull(route("select * from orders o join order_items i on o.id = i.order_id "
+                + "where o.id = 1 and i.order_id = 2"));
+        // 不分片的表在其他节点上时不能在一个节点上执行
+        Assert.assertNull(route("select * from orders o, dict d where o.id = 1"));
+        Assert.assertSame(global, route("select * from dict"));
+        Assert.assertSame(node0, route("select * from orders where id = 2 and code in (select code from unknown)"));
+    }
+
+    @Test
+    public void testKeyQualifier() {
+        // 另一个表的同名字段不能用于路由
+        Assert.assertNull(route("select * from orders a join orders b on a.status = b.status where b.id = 5"));
+        Assert.assertSame(node1, route("select * from orders a join orders b on a.status = b.status "
+                + "where b.id = 5 and a.id = 3"));
+        Assert.assertNull(route("select * from orders join order_items where id = 1 and order_id = 1"));
+        Assert.assertNull(route("select * from orders o, dict d where d.id = 1"));
+        Assert.assertNull(route("select * from orders o where x.id = 1"));
+        Assert.assertSame(node1, route("select * from orders as o where o.id = 1"));
+        Assert.assertSame(node1, route("select * from orders where orders.id = 1"));
+        Assert.assertSame(node1, route("delete from orders where orders.id = 1"));
+    }
+
+    @Test
+    public void testInsert() {
+        Assert.assertSame(node1, route("insert into orders (status, id) values ('new', 7)"));
+        Assert.assertSame(node0, route("insert into orders(id, status) values (2, now()), (4, concat('a', 'b'))"));
+        Assert.assertNull(route("insert into orders (id, status) values (1, 'a'), (2, 'b')"));
+        Assert.assertSame(node1, route("replace into orders set status = 'new', id = 9"));
+        Assert.assertNull(route("insert into orders values (1, 'a')"));
+        Assert.assertNull(route("insert into orders (id) select id from orders"));
+        Assert.assertSame(node0, route("insert into users (id, name) values (1, 'beijing')"));
+    }
+
+    @Test
+    public void testContainsTable() {
+        parser.parse("insert into orders values (1, 'a')".getBytes(StandardCharsets.UTF_8), context);
+        Assert.assertTrue(router.containsTable(context));
+        parser.parse("select * from unknown where id = 1; update dict set v = 1".getBytes(StandardCharsets.UTF_8), context);
+        Assert.assertTrue(router.containsTable(context));
+        parser.parse("set autocommit = 0".getBytes(StandardCharsets.UTF_8), context);
+        Assert.assertFalse(router.containsTable(context));
+        parser.parse("select * from unknown".getBytes(StandardCharsets.UTF_8), context);
+        Assert.assertFalse(router.containsTable(context));
+    }
+
+    private MySQLRepBean[] scatter(String sql) {
+        parser.parse(sql.getBytes(StandardCharsets.UTF_8), context);
+        return router.scatterNodes(context);
+    }
+
+    @Test
+    public void testScatterNodes() {
+        Assert.assertTrue(Arrays.equals(new MySQLRepBean[] { node0, node1 }, scatter("select * from orders order by id desc")));
+        Assert.assertTrue(Arrays.equals(new MySQLRepBean[] { node0, node1 },
+                scatter("select * from orders o join order_items i on o.id = i.order_id")));
+        Assert.assertNotNull(scatter("delete from orders where status = 0"));
+        Assert.assertNull(scatter("select * from orders o, dict d"));
+        Assert.assertNull(scatter("select * from dict"));
+        Assert.assertNull(scatter("insert into orders (id) values (1)"));
+        Assert.assertNull(scatter("select * from orders; select * from orders"));
+    }
+}
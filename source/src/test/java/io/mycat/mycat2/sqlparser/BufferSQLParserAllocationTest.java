@@ -0,0 +1,42 @@
+package io.mycat.mycat2.sqlparser;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import io.mycat.proxy.MycatReactorThread;
+import junit.framework.Assert;
+
+/**
+ * reactor 线程复用 sqlparser 后,稳定状态下解析 sql 不应再产生垃圾
+ */
+@SuppressWarnings("restriction")
+public class BufferSQLParserAllocationTest {
+
+    private static final String SQL = "SELECT a FROM ab , ee.ff AS f,(SELECT a FROM `schema_bb`.`tbl_bb`,(SELECT a FROM ccc AS c, `dddd`)) limit 10;";
+
+    @Test
+    public void testReusedParserAllocatesNothing() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        byte[] bytes = SQL.getBytes(StandardCharsets.UTF_8);
+        buffer.put(bytes);
+        BufferSQLParser parser = MycatReactorThread.currentSQLParser();
+        BufferSQLContext context = new BufferSQLContext();
+        for (int i = 0; i < 20000; i++) {
+            parser.parse(buffer, 0, bytes.length, context);
+        }
+        Assert.assertEquals(5, context.getTableCount());
+
+        com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = mxBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10000; i++) {
+            parser.parse(buffer, 0, bytes.length, context);
+        }
+        long allocated = mxBean.getThreadAllocatedBytes(threadId) - before;
+        // 只允许统计调用本身的少量分配, 每条sql新建解析器时这里会是数十MB
+        Assert.assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
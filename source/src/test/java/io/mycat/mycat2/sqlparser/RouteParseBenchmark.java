@@ -0,0 +1,81 @@
+package io.mycat.mycat2.sqlparser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.mycat.mycat2.MySQLCommand;
+import io.mycat.mycat2.cmds.DirectPassthrouhCmd;
+import io.mycat.mycat2.cmds.interceptor.SQLAnnotationChain;
+import io.mycat.proxy.MycatReactorThread;
+
+/**
+ * 路由阶段每条sql新建解析器/注解链 与 复用 reactor 线程解析器和 session 注解链的对比,
+ * 复用时 gc.alloc.rate.norm 应接近 0
+ */
+@BenchmarkMode(Mode.Throughput)//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 5)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Thread)//该状态为每个线程独享
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class RouteParseBenchmark {
+
+    ByteBuffer buffer;
+    int length;
+    BufferSQLContext context;
+    BufferSQLParser parser;
+    SQLAnnotationChain chain;
+    MySQLCommand command = DirectPassthrouhCmd.INSTANCE;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(RouteParseBenchmark.class.getSimpleName())
+                .forks(1)
+                .addProfiler(GCProfiler.class)    // report GC time
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void init() {
+        byte[] bytes = "SELECT a FROM ab , ee.ff AS f,(SELECT a FROM `schema_bb`.`tbl_bb`,(SELECT a FROM ccc AS c, `dddd`));"
+                .getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.allocateDirect(1024);
+        buffer.put(bytes);
+        length = bytes.length;
+        context = new BufferSQLContext();
+        parser = MycatReactorThread.currentSQLParser();
+        chain = new SQLAnnotationChain();
+    }
+
+    @Benchmark
+    public void newParserPerQuery(Blackhole bh) {
+        BufferSQLParser perQuery = new BufferSQLParser();
+        perQuery.parse(buffer, 0, length, context);
+        bh.consume(new SQLAnnotationChain().setTarget(command).build());
+    }
+
+    @Benchmark
+    public void reusedParser(Blackhole bh) {
+        parser.parse(buffer, 0, length, context);
+        bh.consume(chain.reset().setTarget(command).build());
+    }
+}
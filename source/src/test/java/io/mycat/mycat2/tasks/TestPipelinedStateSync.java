@@ -0,0 +1,159 @@
+package io.mycat.mycat2.tasks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.MycatSessionManager;
+import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
+import io.mycat.mysql.AutoCommit;
+import io.mycat.proxy.MycatReactorThread;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import junit.framework.Assert;
+
+/**
+ * 后端连接状态同步. 同步语句的响应返回之前不发送客户端请求, 同步失败时请求不会执行
+ */
+public class TestPipelinedStateSync {
+
+    private static final byte[] SYNC_OK = {7, 0, 0, 1, 0, 0, 0, 10, 0, 0, 0};
+
+    private static final byte[] SYNC_ERR = {
+            9, 0, 0, 1, (byte) 0xff, 0x48, 0x04, 'b', 'a', 'd', ' ', 'v', 'a' };
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private SocketChannel accepted;
+    private SocketChannel front;
+    private MySQLMetaBean metaBean;
+    private MySQLSession mysqlSession;
+    private MycatSession mycatSession;
+    private BuddyByteBufferPool pool;
+    private int executed;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1);
+        selector = Selector.open();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        accepted = server.accept();
+        client.configureBlocking(false);
+        mysqlSession = new MySQLSession(pool, selector, client);
+        metaBean = new MySQLMetaBean();
+        metaBean.setSlaveNode(false);
+        metaBean.setDsMetaBean(new DatasourceMetaBean());
+        mysqlSession.setMySQLMetaBean(metaBean);
+
+        front = SocketChannel.open(server.getLocalAddress());
+        SocketChannel frontAccepted = server.accept();
+        frontAccepted.configureBlocking(false);
+        mycatSession = new MycatSession(pool, selector, frontAccepted);
+        mycatSession.setSessionManager(new MycatSessionManager());
+        mycatSession.autoCommit = AutoCommit.OFF;
+        mysqlSession.bind2MycatSession(mycatSession);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        accepted.close();
+        client.close();
+        front.close();
+        server.close();
+        selector.close();
+    }
+
+    private void send(byte[]... packets) throws IOException {
+        for (byte[] packet : packets) {
+            ByteBuffer buffer = ByteBuffer.wrap(packet);
+            while (buffer.hasRemaining()) {
+                accepted.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * 在 reactor 线程中同步前端状态, 读取后端对同步语句的响应直到任务结束
+     */
+    private void syncAndRespond(byte[] response) throws Exception {
+        Throwable[] error = new Throwable[1];
+        MycatReactorThread reactor = new MycatReactorThread(pool) {
+            @Override
+            public void run() {
+                try {
+                    syncAndRespond(this, response);
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        };
+        reactor.start();
+        reactor.join();
+        if (error[0] != null) {
+            throw new AssertionError(error[0]);
+        }
+    }
+
+    private void syncAndRespond(MycatReactorThread reactor, byte[] response) throws Exception {
+        reactor.syncAndExecute(mysqlSession, (session, sender, success, result) -> executed++);
+        // 后端先收到同步语句, 在同步完成之前不会收到客户端的请求
+        ByteBuffer sync = ByteBuffer.allocate(1024);
+        accepted.configureBlocking(false);
+        for (int i = 0; i < 100 && sync.position() == 0; i++) {
+            accepted.read(sync);
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(new String(sync.array(), 5, sync.position() - 5).contains("autocommit"));
+        send(response);
+        for (int i = 0; i < 100 && mysqlSession.getCurNIOHandler() instanceof BackendSynchronzationTask; i++) {
+            mysqlSession.getCurNIOHandler().onSocketRead(mysqlSession);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testSyncWaitsForResponse() throws Exception {
+        syncAndRespond(SYNC_OK);
+        Assert.assertEquals(1, executed);
+        Assert.assertEquals(AutoCommit.OFF, mysqlSession.autoCommit);
+        Assert.assertEquals(1, metaBean.getStateSyncRoundTrips());
+    }
+
+    @Test
+    public void testSyncErrorAbortsStatement() throws Exception {
+        syncAndRespond(SYNC_ERR);
+        // 同步失败, 客户端请求不会在状态错误的连接上执行
+        Assert.assertEquals(0, executed);
+        Assert.assertEquals(AutoCommit.ON, mysqlSession.autoCommit);
+        Assert.assertTrue(mycatSession.isClosed());
+        Assert.assertTrue(mysqlSession.isClosed());
+        Assert.assertTrue(accepted.read(ByteBuffer.allocate(1024)) <= 0);
+    }
+
+    @Test
+    public void testStateFingerprint() throws Exception {
+        SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+        server.accept().close();
+        channel.configureBlocking(false);
+        MySQLSession other = new MySQLSession(mysqlSession.bufPool, selector, channel);
+        Assert.assertEquals(mysqlSession.stateFingerprint(true), other.stateFingerprint(true));
+        other.autoCommit = AutoCommit.OFF;
+        Assert.assertTrue(mysqlSession.stateFingerprint(true) != other.stateFingerprint(true));
+        // 从节点不比较事务相关状态
+        Assert.assertEquals(mysqlSession.stateFingerprint(false), other.stateFingerprint(false));
+        other.charSet.charsetIndex = 33;
+        Assert.assertTrue(mysqlSession.stateFingerprint(false) != other.stateFingerprint(false));
+        other.close(true, "test");
+    }
+}
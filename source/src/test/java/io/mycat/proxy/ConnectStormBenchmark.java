@@ -0,0 +1,172 @@
+package io.mycat.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.mycat.proxy.NIOAcceptor.ServerType;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import io.mycat.proxy.buffer.BufferPool;
+
+/**
+ * 大量客户端同时连接时, 从发起连接到所有连接都在 reactor 上创建会话的耗时(ms).
+ * acceptor: NIOAcceptor 接受后经 reactor 的任务队列转交; reactor: 各 reactor 直接接受.
+ * 10k 个回环连接两端共占用 2 万个文件句柄, 运行前需要调大 ulimit -n
+ */
+@BenchmarkMode(Mode.SingleShotTime)//基准测试类型
+@OutputTimeUnit(TimeUnit.MILLISECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 3)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Benchmark)
+@Measurement(iterations = 10)
+public class ConnectStormBenchmark {
+
+    private static final int CLIENT_THREADS = 8;
+    private static final int REACTORS = 4;
+
+    @Param({"acceptor", "reactor"})
+    String mode;
+
+    @Param({"10000"})
+    int connections;
+
+    NIOAcceptor acceptor;
+    InetSocketAddress address;
+    final AtomicInteger accepted = new AtomicInteger();
+    final Queue<SocketChannel> serverChannels = new ConcurrentLinkedQueue<>();
+    SocketChannel[] clients;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ConnectStormBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+
+    /**
+     * 只注册到 reactor 的 selector 上, 不读写
+     */
+    class StormSessionManager implements SessionManager<Session> {
+        @Override
+        public Session createSession(Object keyAttachement, BufferPool bufPool, Selector nioSelector,
+                                     SocketChannel channel, boolean isAcceptedCon) throws IOException {
+            channel.register(nioSelector, 0);
+            serverChannels.add(channel);
+            accepted.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public Collection<Session> getAllSessions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public NIOHandler getDefaultSessionHandler() {
+            return null;
+        }
+
+        @Override
+        public void removeSession(Session session) {
+        }
+    }
+
+    @Setup
+    public void init() throws IOException {
+        clients = new SocketChannel[connections];
+        ProxyRuntime runtime = ProxyRuntime.INSTANCE;
+        runtime.setSessionManager(new StormSessionManager());
+        ProxyReactorThread<?>[] reactors = new ProxyReactorThread<?>[REACTORS];
+        for (int i = 0; i < REACTORS; i++) {
+            reactors[i] = new ProxyReactorThread<>(new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1));
+            reactors[i].setDaemon(true);
+            reactors[i].start();
+        }
+        runtime.setReactorThreads(reactors);
+        runtime.setNioReactorThreads(REACTORS);
+
+        acceptor = new NIOAcceptor(new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1));
+        acceptor.setDaemon(true);
+        acceptor.start();
+        acceptor.setReactorAccept("reactor".equals(mode));
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        address = new InetSocketAddress("127.0.0.1", port);
+        acceptor.startServerChannel(address.getHostString(), port, ServerType.MYCAT);
+        acceptor.startReactorAccept(reactors);
+    }
+
+    @TearDown
+    public void destroy() {
+        acceptor.stopServerChannel(false);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeConnections() throws IOException {
+        for (int i = 0; i < connections; i++) {
+            if (clients[i] != null) {
+                clients[i].close();
+                clients[i] = null;
+            }
+        }
+        SocketChannel channel;
+        while ((channel = serverChannels.poll()) != null) {
+            channel.close();
+        }
+        accepted.set(0);
+    }
+
+    @Benchmark
+    public int connectStorm() throws Exception {
+        Thread[] threads = new Thread[CLIENT_THREADS];
+        for (int t = 0; t < CLIENT_THREADS; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = first; i < connections; i += CLIENT_THREADS) {
+                        clients[i] = SocketChannel.open(address);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }, "storm-client-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        while (accepted.get() < connections) {
+            Thread.yield();
+        }
+        return accepted.get();
+    }
+}
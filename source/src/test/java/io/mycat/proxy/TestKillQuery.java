@@ -0,0 +1,218 @@
+package io.mycat.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
+import io.mycat.mycat2.beans.conf.ReplicaBean;
+import io.mycat.mycat2.net.DefaultMycatSessionHandler;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import junit.framework.Assert;
+
+/**
+ * KILL QUERY 异步发送, 被中止的语句可能在 KILL 到达之前结束.
+ * KILL 完成之前连接不能归还到空闲队列, 也不能执行新的语句, 否则中止的是下一条语句
+ */
+public class TestKillQuery {
+
+    private static final long THREAD_ID = 42;
+
+    interface ReactorTask {
+        void run(MycatReactorThread reactor) throws Exception;
+    }
+
+    private BuddyByteBufferPool pool;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private final List<SocketChannel> channels = new ArrayList<>();
+    private SocketChannel killPeer;
+    private MySQLMetaBean metaBean;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1);
+        selector = Selector.open();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+
+        ReplicaBean replicaBean = new ReplicaBean();
+        replicaBean.setName("repl");
+        MySQLRepBean repBean = new MySQLRepBean();
+        repBean.setReplicaBean(replicaBean);
+        DatasourceMetaBean dsMetaBean = new DatasourceMetaBean();
+        dsMetaBean.setMaxCon(2);
+        metaBean = new MySQLMetaBean();
+        metaBean.setDsMetaBean(dsMetaBean);
+        metaBean.setRepBean(repBean);
+        metaBean.setSlaveNode(false);
+        // 执行语句的连接和执行 KILL 的连接
+        Assert.assertTrue(metaBean.tryAcquireConnection());
+        Assert.assertTrue(metaBean.tryAcquireConnection());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        server.close();
+        selector.close();
+    }
+
+    private void inReactor(ReactorTask task) throws Exception {
+        Throwable[] error = new Throwable[1];
+        MycatReactorThread reactor = new MycatReactorThread(pool) {
+            @Override
+            public void run() {
+                try {
+                    task.run(this);
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        };
+        reactor.start();
+        reactor.join();
+        if (error[0] != null) {
+            throw new AssertionError(error[0]);
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+        SocketChannel peer = server.accept();
+        channels.add(channel);
+        channels.add(peer);
+        channel.configureBlocking(false);
+        killPeer = peer;
+        return channel;
+    }
+
+    private MySQLSession backend() throws IOException {
+        MySQLSession backend = new MySQLSession(pool, selector, connect());
+        backend.setMySQLMetaBean(metaBean);
+        backend.setCurNIOHandler(DefaultMycatSessionHandler.INSTANCE);
+        return backend;
+    }
+
+    /**
+     * 空闲队列中用于执行 KILL 的连接
+     */
+    private MySQLSession killSession(MycatReactorThread reactor) throws IOException {
+        MySQLSession killSession = backend();
+        reactor.addMySQLSession(metaBean, killSession);
+        return killSession;
+    }
+
+    /**
+     * 后端读取 KILL QUERY, 返回语句已经结束的错误, 驱动执行 KILL 的连接读取响应
+     */
+    private void answerKill(MySQLSession killSession, MySQLSession target) throws Exception {
+        ByteBuffer in = ByteBuffer.allocate(256);
+        killPeer.configureBlocking(false);
+        for (int i = 0; i < 100 && !new String(in.array(), 0, in.position(), StandardCharsets.UTF_8)
+                .contains("KILL QUERY " + THREAD_ID); i++) {
+            killPeer.read(in);
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(new String(in.array(), 0, in.position(), StandardCharsets.UTF_8)
+                .endsWith("KILL QUERY " + THREAD_ID));
+
+        byte[] message = ("Unknown thread id: " + THREAD_ID).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer err = ByteBuffer.allocate(4 + 9 + message.length);
+        int length = 9 + message.length;
+        err.put((byte) length).put((byte) 0).put((byte) 0).put((byte) 1);
+        err.put((byte) 0xff).put((byte) 0x46).put((byte) 0x04).put((byte) '#')
+                .put("HY000".getBytes(StandardCharsets.UTF_8)).put(message).flip();
+        while (err.hasRemaining()) {
+            killPeer.write(err);
+        }
+        for (int i = 0; i < 100 && target.isKillPending(); i++) {
+            Thread.sleep(10);
+            killSession.getCurNIOHandler().onSocketRead(killSession);
+        }
+        Assert.assertFalse(target.isKillPending());
+    }
+
+    private MySQLSession pollIdle(MycatReactorThread reactor) throws IOException {
+        MySQLSession[] got = new MySQLSession[1];
+        reactor.getMysqlSession(metaBean, (session, sender, success, result) -> got[0] = success ? session : null);
+        return got[0];
+    }
+
+    @Test
+    public void testNoKillAfterStatementFinished() throws Exception {
+        inReactor(reactor -> {
+            MySQLSession killSession = killSession(reactor);
+            MySQLSession target = backend();
+            target.setThreadId(THREAD_ID);
+            target.setIdle(true);
+            reactor.killQuery(target);
+            Assert.assertFalse(target.isKillPending());
+            // 执行 KILL 的连接没有被使用
+            Assert.assertSame(killSession, pollIdle(reactor));
+        });
+    }
+
+    @Test
+    public void testReturnedBeforeKillCompletes() throws Exception {
+        inReactor(reactor -> {
+            MycatSession front = new MycatSession(pool, selector, connect());
+            MySQLSession target = backend();
+            target.setThreadId(THREAD_ID);
+            front.bindBackend(target);
+            MySQLSession killSession = killSession(reactor);
+
+            reactor.killQuery(target);
+            Assert.assertTrue(target.isKillPending());
+            // 语句在 KILL 到达之前结束, 连接归还
+            target.setIdle(true);
+            front.unbindAllBackend();
+            Assert.assertNull(target.getMycatSession());
+            Assert.assertNull(pollIdle(reactor));
+
+            answerKill(killSession, target);
+            // KILL 完成后两个连接都回到空闲队列
+            MySQLSession first = pollIdle(reactor);
+            MySQLSession second = pollIdle(reactor);
+            Assert.assertTrue(first == target && second == killSession || first == killSession && second == target);
+        });
+    }
+
+    @Test
+    public void testNextStatementWaitsForKill() throws Exception {
+        inReactor(reactor -> {
+            MycatSession front = new MycatSession(pool, selector, connect());
+            MySQLSession target = backend();
+            target.setThreadId(THREAD_ID);
+            front.bindBackend(target);
+            MySQLSession killSession = killSession(reactor);
+
+            reactor.killQuery(target);
+            // 语句在 KILL 到达之前结束, 同一个前端会话执行下一条语句
+            target.setIdle(true);
+            Assert.assertNull(pollIdle(reactor));
+            int[] executed = { 0 };
+            reactor.syncAndExecute(target, (session, sender, success, result) -> executed[0]++);
+            Assert.assertEquals(0, executed[0]);
+
+            answerKill(killSession, target);
+            Assert.assertEquals(1, executed[0]);
+            Assert.assertSame(front, target.getMycatSession());
+        });
+    }
+}
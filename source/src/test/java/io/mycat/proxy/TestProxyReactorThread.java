@@ -0,0 +1,146 @@
+package io.mycat.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import junit.framework.Assert;
+
+/**
+ * reactor 事件循环: 任务唤醒, 已选择key集合, 同一个key上多个就绪事件
+ */
+public class TestProxyReactorThread {
+
+    private static ProxyReactorThread<Session> startReactor() throws IOException {
+        ProxyReactorThread<Session> reactor = new ProxyReactorThread<>(
+                new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1));
+        reactor.setDaemon(true);
+        reactor.start();
+        return reactor;
+    }
+
+    /**
+     * 只记录读写事件的会话
+     */
+    static class CountingSession implements Session, NIOHandler<CountingSession> {
+        final SocketChannel channel;
+        final Selector selector;
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+        final CountDownLatch handled = new CountDownLatch(2);
+
+        CountingSession(SocketChannel channel, Selector selector) {
+            this.channel = channel;
+            this.selector = selector;
+        }
+
+        @Override
+        public SocketChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !channel.isOpen();
+        }
+
+        @Override
+        public <T extends Session> SessionManager<T> getMySessionManager() {
+            return null;
+        }
+
+        @Override
+        public NIOHandler getCurNIOHandler() {
+            return this;
+        }
+
+        @Override
+        public void close(boolean normal, String hint) {
+        }
+
+        @Override
+        public void onConnect(SelectionKey curKey, CountingSession session, boolean success, String msg) {
+        }
+
+        @Override
+        public void onSocketRead(CountingSession session) throws IOException {
+            channel.read(ByteBuffer.allocate(64));
+            reads.incrementAndGet();
+            handled.countDown();
+        }
+
+        @Override
+        public void onSocketWrite(CountingSession session) throws IOException {
+            channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+            writes.incrementAndGet();
+            handled.countDown();
+        }
+
+        @Override
+        public void onWriteFinished(CountingSession s) {
+        }
+
+        @Override
+        public void onSocketClosed(CountingSession session, boolean normal) {
+        }
+    }
+
+    @Test
+    public void testSelectedKeySet() throws IOException {
+        ProxyReactorThread<Session> reactor = startReactor();
+        // JDK 9 之后默认不能访问 sun.nio.ch, 使用 selector 默认的集合
+        if ("1.8".equals(System.getProperty("java.specification.version"))) {
+            Assert.assertTrue(reactor.getSelector().selectedKeys() instanceof SelectedKeySet);
+        }
+    }
+
+    @Test
+    public void testJobWakeup() throws Exception {
+        ProxyReactorThread<Session> reactor = startReactor();
+        long total = 0;
+        for (int i = 0; i < 10; i++) {
+            // 等待 reactor 进入阻塞的 select
+            Thread.sleep(20);
+            CountDownLatch done = new CountDownLatch(1);
+            long start = System.nanoTime();
+            reactor.addNIOJob(done::countDown);
+            Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+            total += System.nanoTime() - start;
+        }
+        // 不唤醒时每个任务平均要等半个 select 超时周期
+        Assert.assertTrue("total " + total, total < TimeUnit.MILLISECONDS.toNanos(ProxyReactorThread.SELECTOR_TIMEOUT * 2));
+    }
+
+    @Test
+    public void testAllReadyOps() throws Exception {
+        ProxyReactorThread<Session> reactor = startReactor();
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+             SocketChannel client = SocketChannel.open(server.getLocalAddress());
+             SocketChannel accepted = server.accept()) {
+            client.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+            accepted.configureBlocking(false);
+            CountingSession session = new CountingSession(accepted, reactor.getSelector());
+            // 注册时读写都已就绪, 同一次 select 中都要处理
+            reactor.addNIOJob(() -> {
+                try {
+                    accepted.register(reactor.getSelector(), SelectionKey.OP_READ | SelectionKey.OP_WRITE, session);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Assert.assertTrue(session.handled.await(1, TimeUnit.SECONDS));
+            Assert.assertEquals(1, session.reads.get());
+            Assert.assertEquals(1, session.writes.get());
+        }
+    }
+}
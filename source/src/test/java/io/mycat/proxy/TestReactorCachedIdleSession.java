@@ -0,0 +1,168 @@
+package io.mycat.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mycat.mycat2.MySQLSession;
+import io.mycat.mycat2.MycatSession;
+import io.mycat.mycat2.beans.MySQLMetaBean;
+import io.mycat.mycat2.beans.MySQLRepBean;
+import io.mycat.mycat2.beans.conf.DatasourceMetaBean;
+import io.mycat.mycat2.beans.conf.ReplicaBean;
+import io.mycat.mycat2.cmds.DirectPassthrouhCmd;
+import io.mycat.proxy.buffer.BuddyByteBufferPool;
+import junit.framework.Assert;
+
+/**
+ * 连接数已满时, 从当前reactor登记的空闲连接中取出其他前端会话上空闲最久的连接, 不遍历所有前端会话
+ */
+public class TestReactorCachedIdleSession {
+
+    interface ReactorTask {
+        void run(MycatReactorThread reactor) throws Exception;
+    }
+
+    private BuddyByteBufferPool pool;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private final List<SocketChannel> channels = new ArrayList<>();
+    private MySQLMetaBean metaBean;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new BuddyByteBufferPool(1024 * 64, (short) 1024, (short) 1);
+        selector = Selector.open();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+
+        ReplicaBean replicaBean = new ReplicaBean();
+        replicaBean.setName("repl");
+        MySQLRepBean repBean = new MySQLRepBean();
+        repBean.setReplicaBean(replicaBean);
+        DatasourceMetaBean dsMetaBean = new DatasourceMetaBean();
+        dsMetaBean.setMaxCon(2);
+        metaBean = new MySQLMetaBean();
+        metaBean.setDsMetaBean(dsMetaBean);
+        metaBean.setRepBean(repBean);
+        metaBean.setSlaveNode(false);
+        // 连接数已满
+        Assert.assertTrue(metaBean.tryAcquireConnection());
+        Assert.assertTrue(metaBean.tryAcquireConnection());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        server.close();
+        selector.close();
+    }
+
+    private void inReactor(ReactorTask task) throws Exception {
+        Throwable[] error = new Throwable[1];
+        MycatReactorThread reactor = new MycatReactorThread(pool) {
+            @Override
+            public void run() {
+                try {
+                    task.run(this);
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        };
+        reactor.start();
+        reactor.join();
+        if (error[0] != null) {
+            throw new AssertionError(error[0]);
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+        channels.add(channel);
+        channels.add(server.accept());
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    private MycatSession front() throws IOException {
+        return new MycatSession(pool, selector, connect());
+    }
+
+    /**
+     * 绑定到前端会话, 语句执行完成的后端连接
+     */
+    private MySQLSession idleBackend(MycatSession front) throws IOException {
+        MySQLSession backend = new MySQLSession(pool, selector, connect());
+        backend.setMySQLMetaBean(metaBean);
+        front.bindBackend(backend);
+        backend.setIdle(true);
+        return backend;
+    }
+
+    @Test
+    public void testTakeLongestIdleFromOtherSession() throws Exception {
+        inReactor(reactor -> {
+            MycatSession owner = front();
+            MycatSession other = front();
+            MySQLSession first = idleBackend(owner);
+            MySQLSession second = idleBackend(other);
+            MycatSession current = front();
+
+            MySQLSession[] got = new MySQLSession[1];
+            reactor.getMySQLSession(current, false, metaBean, (session, sender, success, result) -> {
+                Assert.assertTrue(success);
+                got[0] = session;
+            });
+            Assert.assertSame(first, got[0]);
+            Assert.assertSame(current, first.getMycatSession());
+            Assert.assertEquals(1, current.getBackendConCounts(metaBean));
+            Assert.assertEquals(0, owner.getBackendConCounts(metaBean));
+            // 执行语句期间不再登记为空闲, 下一次取到另一个前端会话上的连接
+            Assert.assertFalse(first.isIdleMarked());
+            reactor.getMysqlSession(metaBean, (session, sender, success, result) -> got[0] = session);
+            Assert.assertSame(second, got[0]);
+            Assert.assertNull(second.getMycatSession());
+        });
+    }
+
+    @Test
+    public void testBusyClosedAndOwnBackendsNotTaken() throws Exception {
+        inReactor(reactor -> {
+            MycatSession owner = front();
+            MySQLSession busy = idleBackend(owner);
+            busy.setIdle(false);
+            MySQLSession closed = idleBackend(front());
+            closed.close(false, "test");
+            // 关闭时释放的名额被其他连接占用
+            Assert.assertTrue(metaBean.tryAcquireConnection());
+            MycatSession current = front();
+            MySQLSession own = idleBackend(current);
+
+            // 没有可以转给 current 的连接, 新建连接被拒绝, 向客户端返回错误
+            current.curSQLCommand = DirectPassthrouhCmd.INSTANCE;
+            boolean[] called = { false };
+            reactor.getMySQLSession(current, false, metaBean, (session, sender, success, result) -> called[0] = true);
+            Assert.assertFalse(called[0]);
+            Assert.assertSame(owner, busy.getMycatSession());
+            Assert.assertSame(current, own.getMycatSession());
+            Assert.assertTrue(own.isIdleMarked());
+
+            // 心跳等不属于前端会话的请求可以使用 current 上的连接
+            MySQLSession[] got = new MySQLSession[1];
+            reactor.getMysqlSession(metaBean, (session, sender, success, result) -> got[0] = session);
+            Assert.assertSame(own, got[0]);
+            Assert.assertNull(own.getMycatSession());
+            Assert.assertSame(owner, busy.getMycatSession());
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package io.mycat.proxy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * 时间轮: 到期执行, 取消, 超过一圈的任务, 执行中加入和取消任务
+ */
+public class TestTimerWheel {
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    @Test
+    public void testExpireAtDeadline() {
+        TimerWheel wheel = new TimerWheel(100, 8, 0);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(() -> fired.add("a"), 250, 0);
+        wheel.schedule(() -> fired.add("b"), 300, 0);
+        Assert.assertEquals(2, wheel.size());
+
+        Assert.assertEquals(0, wheel.advance(millis(200)));
+        // 不会早于指定时间执行
+        Assert.assertEquals(0, wheel.advance(millis(299)));
+        // 250ms 向上取整到 300ms 的刻度, 同一个槽中后加入的先执行
+        Assert.assertEquals(2, wheel.advance(millis(300)));
+        Assert.assertEquals("[b, a]", fired.toString());
+        Assert.assertEquals(0, wheel.size());
+        Assert.assertEquals(0, wheel.advance(millis(1000)));
+    }
+
+    @Test
+    public void testCancel() {
+        TimerWheel wheel = new TimerWheel(100, 8, 0);
+        List<String> fired = new ArrayList<>();
+        TimerWheel.Timeout a = wheel.schedule(() -> fired.add("a"), 100, 0);
+        TimerWheel.Timeout b = wheel.schedule(() -> fired.add("b"), 100, 0);
+        Assert.assertTrue(a.isPending());
+        Assert.assertTrue(a.cancel());
+        Assert.assertFalse(a.cancel());
+        Assert.assertFalse(a.isPending());
+        Assert.assertEquals(1, wheel.size());
+
+        Assert.assertEquals(1, wheel.advance(millis(100)));
+        Assert.assertEquals("[b]", fired.toString());
+        Assert.assertFalse(b.isPending());
+        Assert.assertFalse(b.cancel());
+    }
+
+    @Test
+    public void testMultipleRounds() {
+        TimerWheel wheel = new TimerWheel(100, 8, 0);
+        List<String> fired = new ArrayList<>();
+        // 与 100ms 的任务在同一个槽, 需要转两圈
+        wheel.schedule(() -> fired.add("long"), 1700, 0);
+        wheel.schedule(() -> fired.add("short"), 100, 0);
+
+        Assert.assertEquals(1, wheel.advance(millis(100)));
+        Assert.assertEquals(0, wheel.advance(millis(900)));
+        Assert.assertEquals(0, wheel.advance(millis(1600)));
+        Assert.assertEquals(1, wheel.advance(millis(1700)));
+        Assert.assertEquals("[short, long]", fired.toString());
+
+        // 很久没有推进, 到期的任务一次全部执行
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule(() -> fired.add("late"), i * 100, millis(1700));
+        }
+        Assert.assertEquals(20, wheel.advance(millis(10000)));
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testScheduleWhileExpiring() {
+        TimerWheel wheel = new TimerWheel(100, 8, 0);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(() -> {
+            fired.add("a");
+            // 到期时间已过的任务也在下一个刻度执行, 不会在本次推进中执行
+            wheel.schedule(() -> fired.add("b"), 0, millis(100));
+            wheel.schedule(() -> fired.add("c"), 800, millis(100));
+        }, 100, 0);
+
+        Assert.assertEquals(1, wheel.advance(millis(100)));
+        Assert.assertEquals("[a]", fired.toString());
+        Assert.assertEquals(1, wheel.advance(millis(200)));
+        Assert.assertEquals(0, wheel.advance(millis(800)));
+        Assert.assertEquals(1, wheel.advance(millis(900)));
+        Assert.assertEquals("[a, b, c]", fired.toString());
+    }
+
+    @Test
+    public void testCancelInTask() {
+        TimerWheel wheel = new TimerWheel(100, 8, 0);
+        List<String> fired = new ArrayList<>();
+        TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[3];
+        // 同一个槽中后加入的在前面
+        timeouts[0] = wheel.schedule(() -> fired.add("0"), 100, 0);
+        timeouts[1] = wheel.schedule(() -> fired.add("1"), 900, 0);
+        timeouts[2] = wheel.schedule(() -> {
+            fired.add("2");
+            timeouts[1].cancel();
+        }, 100, 0);
+
+        Assert.assertEquals(2, wheel.advance(millis(100)));
+        Assert.assertEquals("[2, 0]", fired.toString());
+        Assert.assertEquals(0, wheel.size());
+
+        // 任务抛出异常不影响其他任务
+        wheel.schedule(() -> fired.add("3"), 100, millis(100));
+        wheel.schedule(() -> {
+            throw new IllegalStateException("test");
+        }, 100, millis(100));
+        Assert.assertEquals(2, wheel.advance(millis(200)));
+        Assert.assertEquals("[2, 0, 3]", fired.toString());
+    }
+}